@@ -34,6 +34,7 @@ public final class MappingSpec {
   private String headerEntityGeneratedIdField;
   private boolean hasLines = false;
   private String lineTable;
+  private boolean compactFields = false;
   private List<String> headerEntityTransientFields;
   private List<RifField> headerEntityAdditionalDatabaseFields;
   private List<InnerJoinRelationship> innerJoinRelationship;
@@ -200,6 +201,26 @@ public final class MappingSpec {
     return this;
   }
 
+  /**
+   * @return <code>true</code> if the generated {@link Entity}s should store their fixed-scale
+   *     monetary, date, and optional single-character fields as compact primitives (<code>long
+   *     </code> cents, <code>int</code> epoch days, and <code>char</code>s), rather than as {@link
+   *     java.math.BigDecimal}s, {@link java.time.LocalDate}s, and {@link Character}s, <code>false
+   *     </code> if not
+   */
+  public boolean getCompactFields() {
+    return compactFields;
+  }
+
+  /**
+   * @param compactFields the new value for {@link #getCompactFields()}
+   * @return this {@link MappingSpec} instance, for call-chaining purposes
+   */
+  public MappingSpec setCompactFields(boolean compactFields) {
+    this.compactFields = compactFields;
+    return this;
+  }
+
   /**
    * @return the ClassName of the JPA {@link IdClass} for the {@link #getLineEntity()} {@link
    *     Entity}, if any
@@ -275,6 +296,14 @@ public final class MappingSpec {
     return ClassName.get(packageName, headerEntity + "CsvWriter");
   }
 
+  /**
+   * @return the {@link ClassName} for the class to be built that will contain JDBC
+   *     <code>INSERT</code> binding code for the layout
+   */
+  public ClassName getJdbcBinderClass() {
+    return ClassName.get(packageName, headerEntity + "JdbcBinder");
+  }
+
   /** @see java.lang.Object#toString() */
   @Override
   public String toString() {
@@ -293,6 +322,8 @@ public final class MappingSpec {
     builder.append(hasLines);
     builder.append(", lineTable=");
     builder.append(lineTable);
+    builder.append(", compactFields=");
+    builder.append(compactFields);
     builder.append("]");
     return builder.toString();
   }
@@ -24,6 +24,11 @@ import java.io.Writer;
 import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -50,6 +55,7 @@ import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.ForeignKey;
@@ -69,6 +75,8 @@ import javax.tools.FileObject;
 import javax.tools.StandardLocation;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
 /**
  * This <code>javac</code> annotation {@link Processor} reads in an Excel file that details a RIF
@@ -85,6 +93,13 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
   private static final String DATA_DICTIONARY_LINK =
       "https://bluebutton.cms.gov/resources/variables/";
 
+  /**
+   * The runtime class (in the same package as the generated entities) that holds the sentinels,
+   * conversions, and JPA converters for {@link MappingSpec#getCompactFields()} layouts.
+   */
+  private static final ClassName COMPACT_VALUES_CLASS =
+      ClassName.get("gov.cms.bfd.model.rif", "CompactValues");
+
   private final List<String> logMessages = new LinkedList<>();
 
   /** @see javax.annotation.processing.AbstractProcessor#getSupportedAnnotationTypes() */
@@ -185,7 +200,7 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntityIdField("beneficiaryId")
               .setHeaderEntityAdditionalDatabaseFields(
                   createDetailsForAdditionalDatabaseFields(
-                      Arrays.asList("hicnUnhashed", "mbiHash")))
+                      Arrays.asList("hicnUnhashed", "mbiHash", "lastUpdated")))
               .setInnerJoinRelationship(
                   Arrays.asList(
                       new InnerJoinRelationship(
@@ -243,6 +258,8 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("PartDEvent")
               .setHeaderTable("PartDEvents")
               .setHeaderEntityIdField("eventId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(Arrays.asList("lastUpdated")))
               .setHasLines(false));
       mappingSpecs.add(
           new MappingSpec(annotatedPackage.getQualifiedName().toString())
@@ -250,14 +267,19 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("CarrierClaim")
               .setHeaderTable("CarrierClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(Arrays.asList("lastUpdated")))
               .setHasLines(true)
-              .setLineTable("CarrierClaimLines"));
+              .setLineTable("CarrierClaimLines")
+              .setCompactFields(true));
       mappingSpecs.add(
           new MappingSpec(annotatedPackage.getQualifiedName().toString())
               .setRifLayout(RifLayout.parse(spreadsheetWorkbook, annotation.inpatientSheet()))
               .setHeaderEntity("InpatientClaim")
               .setHeaderTable("InpatientClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(Arrays.asList("lastUpdated")))
               .setHasLines(true)
               .setLineTable("InpatientClaimLines"));
       mappingSpecs.add(
@@ -266,6 +288,8 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("OutpatientClaim")
               .setHeaderTable("OutpatientClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(Arrays.asList("lastUpdated")))
               .setHasLines(true)
               .setLineTable("OutpatientClaimLines"));
       mappingSpecs.add(
@@ -274,6 +298,8 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("HHAClaim")
               .setHeaderTable("HHAClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(Arrays.asList("lastUpdated")))
               .setHasLines(true)
               .setLineTable("HHAClaimLines"));
       mappingSpecs.add(
@@ -282,6 +308,8 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("DMEClaim")
               .setHeaderTable("DMEClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(Arrays.asList("lastUpdated")))
               .setHasLines(true)
               .setLineTable("DMEClaimLines"));
       mappingSpecs.add(
@@ -290,6 +318,8 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("HospiceClaim")
               .setHeaderTable("HospiceClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(Arrays.asList("lastUpdated")))
               .setHasLines(true)
               .setLineTable("HospiceClaimLines"));
       mappingSpecs.add(
@@ -298,6 +328,8 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("SNFClaim")
               .setHeaderTable("SNFClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(Arrays.asList("lastUpdated")))
               .setHasLines(true)
               .setLineTable("SNFClaimLines"));
     } finally {
@@ -348,6 +380,13 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
      * files, for use with PostgreSQL's copy APIs.
      */
     generateCsvWriter(mappingSpec, headerEntity, lineEntity);
+
+    /*
+     * Finally, create code that can be used to insert the JPA Entity directly via JDBC, bypassing
+     * the ORM. This can't (easily) support database-generated IDs, so those layouts are skipped.
+     */
+    if (mappingSpec.getHeaderEntityGeneratedIdField() == null)
+      generateJdbcBinder(mappingSpec, headerEntity, lineEntity);
   }
 
   /**
@@ -503,27 +542,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
         fieldIndex++) {
       RifField rifField = rifLayout.getRifFields().get(fieldIndex);
 
-      FieldSpec lineField =
-          FieldSpec.builder(
-                  selectJavaFieldType(rifField), rifField.getJavaFieldName(), Modifier.PRIVATE)
-              .addAnnotations(createAnnotations(mappingSpec, rifField))
-              .build();
+      FieldSpec lineField = createEntityField(mappingSpec, rifField);
       lineEntity.addField(lineField);
-
-      MethodSpec.Builder lineFieldGetter =
-          MethodSpec.methodBuilder(calculateGetterName(lineField))
-              .addModifiers(Modifier.PUBLIC)
-              .returns(selectJavaPropertyType(rifField));
-      addGetterStatement(rifField, lineField, lineFieldGetter);
-      lineEntity.addMethod(lineFieldGetter.build());
-
-      MethodSpec.Builder lineFieldSetter =
-          MethodSpec.methodBuilder(calculateSetterName(lineField))
-              .addModifiers(Modifier.PUBLIC)
-              .returns(void.class)
-              .addParameter(selectJavaPropertyType(rifField), lineField.name);
-      addSetterStatement(rifField, lineField, lineFieldSetter);
-      lineEntity.addMethod(lineFieldSetter.build());
+      addEntityAccessors(lineEntity, mappingSpec, rifField, lineField);
     }
 
     TypeSpec lineEntityFinal = lineEntity.build();
@@ -617,27 +638,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
         fieldIndex++) {
       RifField rifField = mappingSpec.getRifLayout().getRifFields().get(fieldIndex);
 
-      FieldSpec headerField =
-          FieldSpec.builder(
-                  selectJavaFieldType(rifField), rifField.getJavaFieldName(), Modifier.PRIVATE)
-              .addAnnotations(createAnnotations(mappingSpec, rifField))
-              .build();
+      FieldSpec headerField = createEntityField(mappingSpec, rifField);
       headerEntityClass.addField(headerField);
-
-      MethodSpec.Builder headerFieldGetter =
-          MethodSpec.methodBuilder(calculateGetterName(headerField))
-              .addModifiers(Modifier.PUBLIC)
-              .returns(selectJavaPropertyType(rifField));
-      addGetterStatement(rifField, headerField, headerFieldGetter);
-      headerEntityClass.addMethod(headerFieldGetter.build());
-
-      MethodSpec.Builder headerFieldSetter =
-          MethodSpec.methodBuilder(calculateSetterName(headerField))
-              .addModifiers(Modifier.PUBLIC)
-              .returns(void.class)
-              .addParameter(selectJavaPropertyType(rifField), headerField.name);
-      addSetterStatement(rifField, headerField, headerFieldSetter);
-      headerEntityClass.addMethod(headerFieldSetter.build());
+      addEntityAccessors(headerEntityClass, mappingSpec, rifField, headerField);
     }
 
     /*
@@ -689,6 +692,14 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
           AnnotationSpec.builder(OrderBy.class)
               .addMember("value", "$S", mappingSpec.getLineEntityLineNumberField() + " ASC")
               .build());
+      /*
+       * When the lines aren't fetch-joined, load all of the lines for the claims returned by a
+       * query in a single follow-up query, rather than one query per claim.
+       */
+      childField.addAnnotation(
+          AnnotationSpec.builder(Fetch.class)
+              .addMember("value", "$T.SUBSELECT", FetchMode.class)
+              .build());
       headerEntityClass.addField(childField.build());
 
       MethodSpec childGetter =
@@ -780,13 +791,44 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
     // Grab some common types we'll need.
     ClassName csvRecordType = ClassName.get("org.apache.commons.csv", "CSVRecord");
     ClassName parseUtilsType = ClassName.get("gov.cms.bfd.model.rif.parse", "RifParsingUtils");
+    ClassName invalidFileFormatType =
+        ClassName.get("gov.cms.bfd.model.rif.parse", "InvalidRifFileFormatException");
+    int columnCount = mappingSpec.getRifLayout().getRifFields().size();
+
+    /*
+     * Generate a method that maps each column to its index in a particular RIF file, from that
+     * file's header. This is only run once per file, so that the parsing method doesn't have to
+     * look each column up by name (through a Map) for every single record.
+     */
+    MethodSpec.Builder columnIndexesMethod =
+        MethodSpec.methodBuilder("computeColumnIndexes")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .returns(int[].class)
+            .addParameter(
+                ParameterizedTypeName.get(Map.class, String.class, Integer.class), "headerMap");
+    columnIndexesMethod.addStatement("$T.requireNonNull(headerMap)", Objects.class);
+    columnIndexesMethod.addStatement("int[] columnIndexes = new int[$L]", columnCount);
+    columnIndexesMethod.beginControlFlow(
+        "for ($T column : $T.values())", mappingSpec.getColumnEnum(), mappingSpec.getColumnEnum());
+    columnIndexesMethod.addStatement(
+        "$T columnIndex = headerMap.get(column.name())", Integer.class);
+    columnIndexesMethod
+        .beginControlFlow("if (columnIndex == null)")
+        .addStatement(
+            "throw new $T($S + column.name())", invalidFileFormatType, "Missing RIF column: ")
+        .endControlFlow();
+    columnIndexesMethod.addStatement("columnIndexes[column.ordinal()] = columnIndex");
+    columnIndexesMethod.endControlFlow();
+    columnIndexesMethod.addStatement("return columnIndexes");
+    parsingClass.addMethod(columnIndexesMethod.build());
 
     MethodSpec.Builder parseMethod =
         MethodSpec.methodBuilder("parseRif")
             .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
             .returns(mappingSpec.getHeaderEntity())
             .addParameter(
-                ParameterizedTypeName.get(ClassName.get(List.class), csvRecordType), "csvRecords");
+                ParameterizedTypeName.get(ClassName.get(List.class), csvRecordType), "csvRecords")
+            .addParameter(int[].class, "columnIndexes");
 
     parseMethod.addComment("Verify the inputs.");
     parseMethod.addStatement("$T.requireNonNull(csvRecords)", Objects.class);
@@ -794,6 +836,10 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
         .beginControlFlow("if (csvRecords.size() < 1)")
         .addStatement("throw new $T()", IllegalArgumentException.class)
         .endControlFlow();
+    parseMethod
+        .beginControlFlow("if (columnIndexes.length != $L)", columnCount)
+        .addStatement("throw new $T()", IllegalArgumentException.class)
+        .endControlFlow();
 
     parseMethod.addCode("\n$1T header = new $1T();\n", mappingSpec.getHeaderEntity());
 
@@ -848,13 +894,12 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
         recordName = "headerRecord";
       }
 
-      // Determine which parsing utility method to use.
+      // Determine which parsing utility method to use, if any.
       String parseUtilsMethodName;
       if (rifField.getRifColumnType() == RifColumnType.CHAR
           && rifField.getRifColumnLength().orElse(Integer.MAX_VALUE) > 1) {
-        // Handle a String field.
-        parseUtilsMethodName =
-            rifField.isRifColumnOptional() ? "parseOptionalString" : "parseString";
+        // Handle a String field, which (if required) needs no parsing at all.
+        parseUtilsMethodName = rifField.isRifColumnOptional() ? "parseOptionalString" : null;
       } else if (rifField.getRifColumnType() == RifColumnType.CHAR
           && rifField.getRifColumnLength().orElse(Integer.MAX_VALUE) == 1) {
         // Handle a Character field.
@@ -887,15 +932,17 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
       valueAssignmentArgs.put("record", recordName);
       valueAssignmentArgs.put("parseUtilsType", parseUtilsType);
       valueAssignmentArgs.put("parseUtilsMethod", parseUtilsMethodName);
+      valueAssignmentArgs.put("columnIndex", fieldIndex);
       valueAssignmentArgs.put("columnEnumType", mappingSpec.getColumnEnum());
       valueAssignmentArgs.put("columnEnumConstant", rifField.getRifColumnName());
+      String valueFormat = "$record:L.get(columnIndexes[$columnIndex:L])";
+      if (parseUtilsMethodName != null)
+        valueFormat = "$parseUtilsType:T.$parseUtilsMethod:L(" + valueFormat + ")";
       parseMethod.addCode(
           CodeBlock.builder()
               .addNamed(
-                  "$entity:L.$entitySetter:L("
-                      + "$parseUtilsType:T.$parseUtilsMethod:L("
-                      + "$record:L.get("
-                      + "$columnEnumType:T.$columnEnumConstant:L)));\n",
+                  "$entity:L.$entitySetter:L(" + valueFormat + "); "
+                      + "// $columnEnumType:T.$columnEnumConstant:L\n",
                   valueAssignmentArgs)
               .build());
     }
@@ -1097,6 +1144,278 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
     return code.toString();
   }
 
+  /**
+   * Generates a Java class that can bind the JPA Entities for a layout directly into JDBC {@link
+   * PreparedStatement} batches. Inserting new records this way skips all of Hibernate's per-entity
+   * overhead (its session cache, dirty tracking, cascades over the lines, etc.), which adds up on
+   * the loader's highest-volume write path.
+   *
+   * @param mappingSpec the {@link MappingSpec} of the layout to generate code for
+   * @param headerEntity the Java {@link Entity} that was generated for the header fields
+   * @param lineEntity the Java {@link Entity} that was generated for the line fields, if any
+   * @return the Java JDBC binding class that was generated
+   * @throws IOException An {@link IOException} may be thrown if errors are encountered trying to
+   *     generate source files.
+   */
+  private TypeSpec generateJdbcBinder(
+      MappingSpec mappingSpec, TypeSpec headerEntity, Optional<TypeSpec> lineEntity)
+      throws IOException {
+    TypeSpec.Builder jdbcBinderClass =
+        TypeSpec.classBuilder(mappingSpec.getJdbcBinderClass())
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+    // Generate the header binding.
+    List<FieldSpec> headerColumnFields =
+        headerEntity.fieldSpecs.stream()
+            .filter(RifLayoutsProcessor::isColumnField)
+            .collect(Collectors.toList());
+    jdbcBinderClass.addField(
+        FieldSpec.builder(
+                String.class,
+                "HEADER_INSERT_SQL",
+                Modifier.PUBLIC,
+                Modifier.STATIC,
+                Modifier.FINAL)
+            .initializer(
+                "$S", calculateInsertSql(mappingSpec.getHeaderTable(), headerColumnFields))
+            .build());
+    MethodSpec.Builder bindHeaderMethod =
+        MethodSpec.methodBuilder("bindHeader")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addParameter(PreparedStatement.class, "statement")
+            .addParameter(mappingSpec.getHeaderEntity(), "entity")
+            .addException(SQLException.class);
+    for (int i = 0; i < headerColumnFields.size(); i++) {
+      FieldSpec field = headerColumnFields.get(i);
+      addBindStatement(
+          bindHeaderMethod,
+          i + 1,
+          field,
+          calculatePropertyValueType(field, headerEntity),
+          calculateFieldValueCode("entity", field, headerEntity));
+    }
+    bindHeaderMethod.addStatement("statement.addBatch()");
+    jdbcBinderClass.addMethod(bindHeaderMethod.build());
+
+    // Generate the line binding.
+    if (mappingSpec.getHasLines()) {
+      FieldSpec parentField =
+          lineEntity.get().fieldSpecs.stream()
+              .filter(f -> f.name.equals(mappingSpec.getLineEntityParentField()))
+              .findAny()
+              .get();
+      FieldSpec headerIdField =
+          headerEntity.fieldSpecs.stream()
+              .filter(f -> f.name.equals(mappingSpec.getHeaderEntityIdField()))
+              .findAny()
+              .get();
+      List<FieldSpec> lineColumnFields =
+          lineEntity.get().fieldSpecs.stream()
+              .filter(f -> f == parentField || isColumnField(f))
+              .collect(Collectors.toList());
+      jdbcBinderClass.addField(
+          FieldSpec.builder(
+                  String.class,
+                  "LINE_INSERT_SQL",
+                  Modifier.PUBLIC,
+                  Modifier.STATIC,
+                  Modifier.FINAL)
+              .initializer("$S", calculateInsertSql(mappingSpec.getLineTable(), lineColumnFields))
+              .build());
+      MethodSpec.Builder bindLinesMethod =
+          MethodSpec.methodBuilder("bindLines")
+              .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+              .addParameter(PreparedStatement.class, "statement")
+              .addParameter(mappingSpec.getHeaderEntity(), "entity")
+              .addException(SQLException.class);
+      bindLinesMethod.beginControlFlow(
+          "for ($T lineEntity : entity.getLines())", mappingSpec.getLineEntity());
+      for (int i = 0; i < lineColumnFields.size(); i++) {
+        FieldSpec field = lineColumnFields.get(i);
+        if (field == parentField)
+          addBindStatement(
+              bindLinesMethod,
+              i + 1,
+              field,
+              headerIdField.type,
+              String.format(
+                  "lineEntity.%s().%s()",
+                  calculateGetterName(parentField), calculateGetterName(headerIdField)));
+        else
+          addBindStatement(
+              bindLinesMethod,
+              i + 1,
+              field,
+              calculatePropertyValueType(field, lineEntity.get()),
+              calculateFieldValueCode("lineEntity", field, lineEntity.get()));
+      }
+      bindLinesMethod.addStatement("statement.addBatch()");
+      bindLinesMethod.endControlFlow();
+      jdbcBinderClass.addMethod(bindLinesMethod.build());
+    }
+
+    // Generate a method that binds and executes everything in one go.
+    MethodSpec.Builder insertMethod =
+        MethodSpec.methodBuilder("insert")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addParameter(Connection.class, "connection")
+            .addParameter(
+                ParameterizedTypeName.get(ClassName.get(List.class), mappingSpec.getHeaderEntity()),
+                "entities")
+            .addException(SQLException.class);
+    insertMethod.beginControlFlow(
+        "try ($T statement = connection.prepareStatement(HEADER_INSERT_SQL))",
+        PreparedStatement.class);
+    insertMethod.addStatement(
+        "for ($T entity : entities) bindHeader(statement, entity)", mappingSpec.getHeaderEntity());
+    insertMethod.addStatement("statement.executeBatch()");
+    insertMethod.endControlFlow();
+    if (mappingSpec.getHasLines()) {
+      insertMethod.beginControlFlow(
+          "try ($T statement = connection.prepareStatement(LINE_INSERT_SQL))",
+          PreparedStatement.class);
+      insertMethod.addStatement(
+          "for ($T entity : entities) bindLines(statement, entity)", mappingSpec.getHeaderEntity());
+      insertMethod.addStatement("statement.executeBatch()");
+      insertMethod.endControlFlow();
+    }
+    jdbcBinderClass.addMethod(insertMethod.build());
+
+    TypeSpec jdbcBinderClassFinal = jdbcBinderClass.build();
+    JavaFile jdbcBinderClassFile =
+        JavaFile.builder(mappingSpec.getPackageName(), jdbcBinderClassFinal).build();
+    jdbcBinderClassFile.writeTo(processingEnv.getFiler());
+
+    return jdbcBinderClassFinal;
+  }
+
+  /**
+   * @param field the JPA entity {@link FieldSpec} to check
+   * @return <code>true</code> if the specified field is mapped to a (non-generated) {@link Column},
+   *     <code>false</code> if it's transient, a relationship, etc.
+   */
+  private static boolean isColumnField(FieldSpec field) {
+    ClassName columnType = ClassName.get(Column.class);
+    ClassName generatedValueType = ClassName.get(GeneratedValue.class);
+    return field.annotations.stream().anyMatch(a -> a.type.equals(columnType))
+        && field.annotations.stream().noneMatch(a -> a.type.equals(generatedValueType));
+  }
+
+  /**
+   * @param tableName the name of the SQL table to insert into
+   * @param columnFields the JPA entity {@link FieldSpec}s for the columns to insert, in order
+   * @return a parameterized SQL <code>INSERT</code> statement for the specified table and columns
+   */
+  private static String calculateInsertSql(String tableName, List<FieldSpec> columnFields) {
+    return String.format(
+        "insert into \"%s\" (%s) values (%s)",
+        tableName,
+        columnFields.stream().map(f -> "\"" + f.name + "\"").collect(Collectors.joining(", ")),
+        columnFields.stream().map(f -> "?").collect(Collectors.joining(", ")));
+  }
+
+  /**
+   * Used in {@link #generateJdbcBinder(MappingSpec, TypeSpec, Optional)} and generates the code to
+   * get the specified field's (possibly <code>null</code>) value from its entity.
+   *
+   * @param instanceName the name of the object that the value will be pulled from
+   * @param field the field to generate the code for
+   * @param entity the JPA entity {@link TypeSpec} that the field is part of
+   * @return the code to get the specified field's value
+   */
+  private static String calculateFieldValueCode(
+      String instanceName, FieldSpec field, TypeSpec entity) {
+    String getterName = calculateGetterName(field);
+    boolean optional =
+        entity.methodSpecs.stream()
+            .filter(m -> m.name.equals(getterName))
+            .anyMatch(
+                m ->
+                    m.returnType instanceof ParameterizedTypeName
+                        && ((ParameterizedTypeName) m.returnType)
+                            .rawType.equals(ClassName.get(Optional.class)));
+    return String.format("%s.%s()%s", instanceName, getterName, optional ? ".orElse(null)" : "");
+  }
+
+  /**
+   * Used in {@link #generateJdbcBinder(MappingSpec, TypeSpec, Optional)} to determine the type of
+   * the value returned by {@link #calculateFieldValueCode(String, FieldSpec, TypeSpec)}, which (for
+   * {@link MappingSpec#getCompactFields()} layouts) won't always match the field's own type.
+   *
+   * @param field the field to determine the value type of
+   * @param entity the JPA entity {@link TypeSpec} that the field is part of
+   * @return the {@link TypeName} of the specified field's getter, unwrapped from its {@link
+   *     Optional}, if any
+   */
+  private static TypeName calculatePropertyValueType(FieldSpec field, TypeSpec entity) {
+    String getterName = calculateGetterName(field);
+    TypeName getterType =
+        entity.methodSpecs.stream()
+            .filter(m -> m.name.equals(getterName))
+            .findAny()
+            .map(m -> m.returnType)
+            .orElse(field.type);
+    if (getterType instanceof ParameterizedTypeName
+        && ((ParameterizedTypeName) getterType).rawType.equals(ClassName.get(Optional.class)))
+      return ((ParameterizedTypeName) getterType).typeArguments.get(0);
+    return getterType;
+  }
+
+  /**
+   * Adds a statement to the specified method that binds a field's value to a {@link
+   * PreparedStatement} parameter.
+   *
+   * @param method the method to add the statement to
+   * @param parameterIndex the (one-based) index of the {@link PreparedStatement} parameter to bind
+   * @param field the field being bound
+   * @param valueType the {@link TypeName} of the value being bound
+   * @param valueCode the code that gets the (possibly <code>null</code>) value to bind
+   */
+  private static void addBindStatement(
+      MethodSpec.Builder method,
+      int parameterIndex,
+      FieldSpec field,
+      TypeName valueType,
+      String valueCode) {
+    if (valueType.equals(TypeName.INT))
+      method.addStatement("statement.setInt($L, $L)", parameterIndex, valueCode);
+    else if (valueType.equals(ClassName.get(Integer.class)))
+      method.addStatement(
+          "statement.setObject($L, $L, $T.INTEGER)", parameterIndex, valueCode, Types.class);
+    else if (valueType.equals(ClassName.get(String.class)))
+      method.addStatement("statement.setString($L, $L)", parameterIndex, valueCode);
+    else if (valueType.equals(TypeName.CHAR))
+      method.addStatement(
+          "statement.setString($L, $T.valueOf($L))", parameterIndex, String.class, valueCode);
+    else if (valueType.equals(ClassName.get(Character.class)))
+      method.addStatement(
+          "statement.setString($L, $T.toString($L, null))",
+          parameterIndex,
+          Objects.class,
+          valueCode);
+    else if (valueType.equals(ClassName.get(BigDecimal.class)))
+      method.addStatement("statement.setBigDecimal($L, $L)", parameterIndex, valueCode);
+    else if (valueType.equals(ClassName.get(LocalDate.class))) {
+      String valueName = field.name + "Value";
+      method.addStatement("$T $L = $L", LocalDate.class, valueName, valueCode);
+      method.addStatement(
+          "statement.setDate($L, $L != null ? $T.valueOf($L) : null)",
+          parameterIndex,
+          valueName,
+          java.sql.Date.class,
+          valueName);
+    } else if (valueType.equals(ClassName.get(Instant.class))) {
+      String valueName = field.name + "Value";
+      method.addStatement("$T $L = $L", Instant.class, valueName, valueCode);
+      method.addStatement(
+          "statement.setTimestamp($L, $L != null ? $T.from($L) : null)",
+          parameterIndex,
+          valueName,
+          Timestamp.class,
+          valueName);
+    } else throw new IllegalArgumentException("Unhandled field type: " + field);
+  }
+
   /**
    * @param fields the fields that should be hashed
    * @return a new <code>hashCode()</code> implementation that uses the specified fields
@@ -1151,6 +1470,122 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
     return hashCodeMethod.build();
   }
 
+  /**
+   * @param mappingSpec the {@link MappingSpec} for the specified {@link RifField}
+   * @param rifField the {@link RifField} to create the JPA entity field for
+   * @return the {@link FieldSpec} for the JPA entity field that will store the specified {@link
+   *     RifField}, which will be a compact primitive (with an {@link Convert} adapter for its
+   *     column), if {@link #selectCompactFieldType(MappingSpec, RifField)} selects one
+   */
+  private static FieldSpec createEntityField(MappingSpec mappingSpec, RifField rifField) {
+    Optional<CompactFieldType> compactType = selectCompactFieldType(mappingSpec, rifField);
+    TypeName fieldType =
+        compactType.isPresent() ? compactType.get().fieldType : selectJavaFieldType(rifField);
+
+    FieldSpec.Builder entityField =
+        FieldSpec.builder(fieldType, rifField.getJavaFieldName(), Modifier.PRIVATE)
+            .addAnnotations(createAnnotations(mappingSpec, rifField));
+    if (compactType.isPresent())
+      entityField.addAnnotation(
+          AnnotationSpec.builder(Convert.class)
+              .addMember(
+                  "converter",
+                  "$T.class",
+                  COMPACT_VALUES_CLASS.nestedClass(compactType.get().converterClassName))
+              .build());
+    return entityField.build();
+  }
+
+  /**
+   * Adds the getter and setter for the specified JPA entity field. For compact fields, the getter
+   * and setter keep the same {@link #selectJavaPropertyType(RifField)} signature as always, and an
+   * additional allocation-free getter is added for the raw primitive value.
+   *
+   * @param entity the JPA entity to add the accessors to
+   * @param mappingSpec the {@link MappingSpec} for the specified {@link RifField}
+   * @param rifField the {@link RifField} that the field represents
+   * @param entityField the JPA entity field to add accessors for
+   */
+  private static void addEntityAccessors(
+      TypeSpec.Builder entity, MappingSpec mappingSpec, RifField rifField, FieldSpec entityField) {
+    Optional<CompactFieldType> compactType = selectCompactFieldType(mappingSpec, rifField);
+
+    MethodSpec.Builder entityGetter =
+        MethodSpec.methodBuilder(calculateGetterName(entityField))
+            .addModifiers(Modifier.PUBLIC)
+            .returns(selectJavaPropertyType(rifField));
+    MethodSpec.Builder entitySetter =
+        MethodSpec.methodBuilder(calculateSetterName(entityField))
+            .addModifiers(Modifier.PUBLIC)
+            .returns(void.class)
+            .addParameter(selectJavaPropertyType(rifField), entityField.name);
+
+    if (!compactType.isPresent()) {
+      addGetterStatement(rifField, entityField, entityGetter);
+      addSetterStatement(rifField, entityField, entitySetter);
+      entity.addMethod(entityGetter.build());
+      entity.addMethod(entitySetter.build());
+      return;
+    }
+
+    entityGetter.addStatement(
+        "return $T.$L($N)",
+        COMPACT_VALUES_CLASS,
+        rifField.isRifColumnOptional()
+            ? compactType.get().loadOptionalMethodName
+            : compactType.get().loadMethodName,
+        entityField);
+    entitySetter.addStatement(
+        "this.$N = $T.$L($N)",
+        entityField,
+        COMPACT_VALUES_CLASS,
+        compactType.get().storeMethodName,
+        entityField);
+    entity.addMethod(entityGetter.build());
+    entity.addMethod(entitySetter.build());
+
+    MethodSpec.Builder compactGetter =
+        MethodSpec.methodBuilder(calculateGetterName(entityField) + compactType.get().getterSuffix)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(compactType.get().fieldType)
+            .addStatement("return $N", entityField);
+    if (rifField.isRifColumnOptional())
+      compactGetter.addJavadoc(
+          "@return the raw value of {@link #$L()}, or {@link $T#$L} if it's absent\n",
+          calculateGetterName(entityField),
+          COMPACT_VALUES_CLASS,
+          compactType.get().absentConstantName);
+    else
+      compactGetter.addJavadoc(
+          "@return the raw value of {@link #$L()}\n", calculateGetterName(entityField));
+    entity.addMethod(compactGetter.build());
+  }
+
+  /**
+   * @param mappingSpec the {@link MappingSpec} for the specified {@link RifField}
+   * @param rifField the {@link RifField} to select the compact representation of
+   * @return the {@link CompactFieldType} that the specified {@link RifField} should be stored as,
+   *     or {@link Optional#empty()} if it should be stored as its usual {@link
+   *     #selectJavaFieldType(RifField)}
+   */
+  private static Optional<CompactFieldType> selectCompactFieldType(
+      MappingSpec mappingSpec, RifField rifField) {
+    if (!mappingSpec.getCompactFields()) return Optional.empty();
+    if (mappingSpec.getHeaderEntityTransientFields().contains(rifField.getJavaFieldName()))
+      return Optional.empty();
+
+    TypeName fieldType = selectJavaFieldType(rifField);
+    if (fieldType.equals(ClassName.get(BigDecimal.class))
+        && rifField.getRifColumnScale().orElse(Integer.MAX_VALUE) == 2
+        && rifField.getRifColumnLength().orElse(Integer.MAX_VALUE) <= 18)
+      return Optional.of(CompactFieldType.CENTS);
+    else if (fieldType.equals(ClassName.get(LocalDate.class)))
+      return Optional.of(CompactFieldType.EPOCH_DAY);
+    else if (fieldType.equals(ClassName.get(Character.class)))
+      return Optional.of(CompactFieldType.CHAR);
+    else return Optional.empty();
+  }
+
   /**
    * @param rifField the {@link RifField} to select the corresponding Java type for
    * @return the {@link TypeName} of the Java type that should be used to represent the specified
@@ -1306,6 +1741,20 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
         addlDatabaseFields.add(mbiHash);
         continue;
       }
+      if (additionalDatabaseField.contentEquals("lastUpdated")) {
+        RifField lastUpdated =
+            new RifField(
+                "LAST_UPDATED",
+                RifColumnType.TIMESTAMP,
+                Optional.of(20),
+                Optional.of(0),
+                Boolean.TRUE,
+                new URL(DATA_DICTIONARY_LINK + "lastUpdated"),
+                "LAST_UPDATED",
+                "lastUpdated");
+        addlDatabaseFields.add(lastUpdated);
+        continue;
+      }
     }
     return addlDatabaseFields;
   }
@@ -1467,4 +1916,72 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
       throw new UncheckedIOException(e);
     }
   }
+
+  /**
+   * Enumerates the compact primitive representations that {@link MappingSpec#getCompactFields()}
+   * layouts can store their fields as. The method, class, and constant names here all refer to
+   * members of {@link #COMPACT_VALUES_CLASS}.
+   */
+  private static enum CompactFieldType {
+    /** Fixed-scale monetary amounts, stored as <code>long</code> cents. */
+    CENTS(
+        TypeName.LONG,
+        "Cents",
+        "CentsConverter",
+        "ABSENT_CENTS",
+        "toCents",
+        "centsToDecimal",
+        "centsToOptionalDecimal"),
+
+    /** Dates, stored as <code>int</code> epoch days. */
+    EPOCH_DAY(
+        TypeName.INT,
+        "EpochDay",
+        "EpochDayConverter",
+        "ABSENT_EPOCH_DAY",
+        "toEpochDay",
+        "epochDayToDate",
+        "epochDayToOptionalDate"),
+
+    /** Optional single-character codes, stored as <code>char</code>s. */
+    CHAR(TypeName.CHAR, "Char", "CharConverter", "ABSENT_CHAR", "toChar", null, "charToOptional");
+
+    private final TypeName fieldType;
+    private final String getterSuffix;
+    private final String converterClassName;
+    private final String absentConstantName;
+    private final String storeMethodName;
+    private final String loadMethodName;
+    private final String loadOptionalMethodName;
+
+    /**
+     * Enum constant constructor.
+     *
+     * @param fieldType the primitive type of the entity field
+     * @param getterSuffix the suffix to add to the name of the raw primitive value's getter
+     * @param converterClassName the simple name of the JPA converter to use for the field
+     * @param absentConstantName the name of the sentinel constant for absent values
+     * @param storeMethodName the name of the method that converts property values to field values
+     * @param loadMethodName the name of the method that converts field values to required property
+     *     values, if supported
+     * @param loadOptionalMethodName the name of the method that converts field values to {@link
+     *     Optional} property values
+     */
+    private CompactFieldType(
+        TypeName fieldType,
+        String getterSuffix,
+        String converterClassName,
+        String absentConstantName,
+        String storeMethodName,
+        String loadMethodName,
+        String loadOptionalMethodName) {
+      this.fieldType = fieldType;
+      this.getterSuffix = getterSuffix;
+      this.converterClassName = converterClassName;
+      this.absentConstantName = absentConstantName;
+      this.storeMethodName = storeMethodName;
+      this.loadMethodName = loadMethodName;
+      this.loadOptionalMethodName = loadOptionalMethodName;
+    }
+  }
 }
@@ -0,0 +1,271 @@
+package gov.cms.bfd.model.rif;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.Optional;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+
+/**
+ * A narrow, denormalized summary of a single claim/event (e.g. a {@link CarrierClaim} or a {@link
+ * PartDEvent}), recording just its beneficiary, type, ID, dates, and load timestamp. One of these
+ * is maintained by the pipeline for every claim/event that it loads, in the same transaction, so
+ * that all of a beneficiary's claims can be found, counted, and paged through with a single indexed
+ * query, rather than having to query every claim table.
+ *
+ * <p>Unlike the other entities in this package, this one is not generated from the RIF layouts,
+ * as it doesn't correspond to any RIF file.
+ */
+@Entity
+@IdClass(BeneficiaryClaimIndex.BeneficiaryClaimIndexId.class)
+@Table(name = "`BeneficiaryClaimIndex`")
+public class BeneficiaryClaimIndex {
+  @Id
+  @Column(name = "`claimType`", nullable = false, length = 10)
+  @Enumerated(EnumType.STRING)
+  private RifFileType claimType;
+
+  @Id
+  @Column(name = "`claimId`", nullable = false, length = 15)
+  private String claimId;
+
+  @Column(name = "`beneficiaryId`", nullable = false, length = 15)
+  private String beneficiaryId;
+
+  @Column(name = "`dateFrom`", nullable = false)
+  private LocalDate dateFrom;
+
+  @Column(name = "`dateThrough`", nullable = false)
+  private LocalDate dateThrough;
+
+  @Column(name = "`lastUpdated`", nullable = true)
+  private Instant lastUpdated;
+
+  /**
+   * @param record the RIF record (e.g. a {@link CarrierClaim}, {@link PartDEvent}, etc.) to create
+   *     a {@link BeneficiaryClaimIndex} for, whose <code>lastUpdated</code> value (if any) should
+   *     already be set
+   * @return a new {@link BeneficiaryClaimIndex} for the specified claim/event record, or {@link
+   *     Optional#empty()} if the record isn't a claim/event (e.g. it's a {@link Beneficiary})
+   */
+  public static Optional<BeneficiaryClaimIndex> from(Object record) {
+    BeneficiaryClaimIndex entry = new BeneficiaryClaimIndex();
+    if (record instanceof CarrierClaim) {
+      CarrierClaim claim = (CarrierClaim) record;
+      entry.claimType = RifFileType.CARRIER;
+      entry.claimId = claim.getClaimId();
+      entry.beneficiaryId = claim.getBeneficiaryId();
+      entry.dateFrom = claim.getDateFrom();
+      entry.dateThrough = claim.getDateThrough();
+      entry.lastUpdated = claim.getLastUpdated().orElse(null);
+    } else if (record instanceof DMEClaim) {
+      DMEClaim claim = (DMEClaim) record;
+      entry.claimType = RifFileType.DME;
+      entry.claimId = claim.getClaimId();
+      entry.beneficiaryId = claim.getBeneficiaryId();
+      entry.dateFrom = claim.getDateFrom();
+      entry.dateThrough = claim.getDateThrough();
+      entry.lastUpdated = claim.getLastUpdated().orElse(null);
+    } else if (record instanceof HHAClaim) {
+      HHAClaim claim = (HHAClaim) record;
+      entry.claimType = RifFileType.HHA;
+      entry.claimId = claim.getClaimId();
+      entry.beneficiaryId = claim.getBeneficiaryId();
+      entry.dateFrom = claim.getDateFrom();
+      entry.dateThrough = claim.getDateThrough();
+      entry.lastUpdated = claim.getLastUpdated().orElse(null);
+    } else if (record instanceof HospiceClaim) {
+      HospiceClaim claim = (HospiceClaim) record;
+      entry.claimType = RifFileType.HOSPICE;
+      entry.claimId = claim.getClaimId();
+      entry.beneficiaryId = claim.getBeneficiaryId();
+      entry.dateFrom = claim.getDateFrom();
+      entry.dateThrough = claim.getDateThrough();
+      entry.lastUpdated = claim.getLastUpdated().orElse(null);
+    } else if (record instanceof InpatientClaim) {
+      InpatientClaim claim = (InpatientClaim) record;
+      entry.claimType = RifFileType.INPATIENT;
+      entry.claimId = claim.getClaimId();
+      entry.beneficiaryId = claim.getBeneficiaryId();
+      entry.dateFrom = claim.getDateFrom();
+      entry.dateThrough = claim.getDateThrough();
+      entry.lastUpdated = claim.getLastUpdated().orElse(null);
+    } else if (record instanceof OutpatientClaim) {
+      OutpatientClaim claim = (OutpatientClaim) record;
+      entry.claimType = RifFileType.OUTPATIENT;
+      entry.claimId = claim.getClaimId();
+      entry.beneficiaryId = claim.getBeneficiaryId();
+      entry.dateFrom = claim.getDateFrom();
+      entry.dateThrough = claim.getDateThrough();
+      entry.lastUpdated = claim.getLastUpdated().orElse(null);
+    } else if (record instanceof PartDEvent) {
+      // Part D events only have the one date that's meaningful for searches.
+      PartDEvent event = (PartDEvent) record;
+      entry.claimType = RifFileType.PDE;
+      entry.claimId = event.getEventId();
+      entry.beneficiaryId = event.getBeneficiaryId();
+      entry.dateFrom = event.getPrescriptionFillDate();
+      entry.dateThrough = event.getPrescriptionFillDate();
+      entry.lastUpdated = event.getLastUpdated().orElse(null);
+    } else if (record instanceof SNFClaim) {
+      SNFClaim claim = (SNFClaim) record;
+      entry.claimType = RifFileType.SNF;
+      entry.claimId = claim.getClaimId();
+      entry.beneficiaryId = claim.getBeneficiaryId();
+      entry.dateFrom = claim.getDateFrom();
+      entry.dateThrough = claim.getDateThrough();
+      entry.lastUpdated = claim.getLastUpdated().orElse(null);
+    } else {
+      return Optional.empty();
+    }
+    return Optional.of(entry);
+  }
+
+  /**
+   * @return the {@link RifFileType} of the claim/event, which will be one of the claim/event types,
+   *     e.g. {@link RifFileType#CARRIER}
+   */
+  public RifFileType getClaimType() {
+    return claimType;
+  }
+
+  /** @param claimType the new value for {@link #getClaimType()} */
+  public void setClaimType(RifFileType claimType) {
+    this.claimType = claimType;
+  }
+
+  /**
+   * @return the claim/event's ID, e.g. {@link CarrierClaim#getClaimId()} or {@link
+   *     PartDEvent#getEventId()}
+   */
+  public String getClaimId() {
+    return claimId;
+  }
+
+  /** @param claimId the new value for {@link #getClaimId()} */
+  public void setClaimId(String claimId) {
+    this.claimId = claimId;
+  }
+
+  /** @return the ID of the {@link Beneficiary} that the claim/event is for */
+  public String getBeneficiaryId() {
+    return beneficiaryId;
+  }
+
+  /** @param beneficiaryId the new value for {@link #getBeneficiaryId()} */
+  public void setBeneficiaryId(String beneficiaryId) {
+    this.beneficiaryId = beneficiaryId;
+  }
+
+  /**
+   * @return the claim's <code>dateFrom</code> value, or the {@link
+   *     PartDEvent#getPrescriptionFillDate()} for Part D events
+   */
+  public LocalDate getDateFrom() {
+    return dateFrom;
+  }
+
+  /** @param dateFrom the new value for {@link #getDateFrom()} */
+  public void setDateFrom(LocalDate dateFrom) {
+    this.dateFrom = dateFrom;
+  }
+
+  /**
+   * @return the claim's <code>dateThrough</code> value, or the {@link
+   *     PartDEvent#getPrescriptionFillDate()} for Part D events
+   */
+  public LocalDate getDateThrough() {
+    return dateThrough;
+  }
+
+  /** @param dateThrough the new value for {@link #getDateThrough()} */
+  public void setDateThrough(LocalDate dateThrough) {
+    this.dateThrough = dateThrough;
+  }
+
+  /**
+   * @return the claim/event's <code>lastUpdated</code> value, which will be empty for claims/events
+   *     loaded before that column was added
+   */
+  public Optional<Instant> getLastUpdated() {
+    return Optional.ofNullable(lastUpdated);
+  }
+
+  /** @param lastUpdated the new value for {@link #getLastUpdated()} */
+  public void setLastUpdated(Optional<Instant> lastUpdated) {
+    this.lastUpdated = lastUpdated.orElse(null);
+  }
+
+  /** @see java.lang.Object#toString() */
+  @Override
+  public String toString() {
+    return "BeneficiaryClaimIndex [claimType="
+        + claimType
+        + ", claimId="
+        + claimId
+        + ", beneficiaryId="
+        + beneficiaryId
+        + ", dateFrom="
+        + dateFrom
+        + ", dateThrough="
+        + dateThrough
+        + ", lastUpdated="
+        + lastUpdated
+        + "]";
+  }
+
+  /** The JPA {@link IdClass} for {@link BeneficiaryClaimIndex}. */
+  public static final class BeneficiaryClaimIndexId implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private RifFileType claimType;
+
+    private String claimId;
+
+    /** Constructs a new (blank) {@link BeneficiaryClaimIndexId}, as required by JPA. */
+    public BeneficiaryClaimIndexId() {}
+
+    /**
+     * Constructs a new {@link BeneficiaryClaimIndexId}.
+     *
+     * @param claimType the value to use for {@link #getClaimType()}
+     * @param claimId the value to use for {@link #getClaimId()}
+     */
+    public BeneficiaryClaimIndexId(RifFileType claimType, String claimId) {
+      this.claimType = claimType;
+      this.claimId = claimId;
+    }
+
+    /** @return the {@link BeneficiaryClaimIndex#getClaimType()} value */
+    public RifFileType getClaimType() {
+      return claimType;
+    }
+
+    /** @return the {@link BeneficiaryClaimIndex#getClaimId()} value */
+    public String getClaimId() {
+      return claimId;
+    }
+
+    /** @see java.lang.Object#hashCode() */
+    @Override
+    public int hashCode() {
+      return Objects.hash(claimType, claimId);
+    }
+
+    /** @see java.lang.Object#equals(java.lang.Object) */
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (obj == null || getClass() != obj.getClass()) return false;
+      BeneficiaryClaimIndexId other = (BeneficiaryClaimIndexId) obj;
+      return claimType == other.claimType && Objects.equals(claimId, other.claimId);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package gov.cms.bfd.model.rif;
+
+import java.io.Serializable;
+import java.util.Objects;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+
+/**
+ * The precomputed, gzipped FHIR JSON for a single claim/event (e.g. a {@link CarrierClaim} or a
+ * {@link PartDEvent}), as produced by a particular version of the server's transformers. These are
+ * written by the server the first time it transforms each claim/event, and deleted by the pipeline
+ * whenever it updates the claim/event that they were produced from.
+ *
+ * <p>Like {@link BeneficiaryClaimIndex}, this entity is not generated from the RIF layouts, as it
+ * doesn't correspond to any RIF file.
+ */
+@Entity
+@IdClass(ClaimFhirDocument.ClaimFhirDocumentId.class)
+@Table(name = "`ClaimFhirDocuments`")
+public class ClaimFhirDocument {
+  @Id
+  @Column(name = "`claimType`", nullable = false, length = 10)
+  @Enumerated(EnumType.STRING)
+  private RifFileType claimType;
+
+  @Id
+  @Column(name = "`claimId`", nullable = false, length = 15)
+  private String claimId;
+
+  @Column(name = "`transformerVersion`", nullable = false, length = 64)
+  private String transformerVersion;
+
+  @Column(name = "`document`", nullable = false)
+  private byte[] document;
+
+  /**
+   * @return the {@link RifFileType} of the claim/event, which will be one of the claim/event types,
+   *     e.g. {@link RifFileType#CARRIER}
+   */
+  public RifFileType getClaimType() {
+    return claimType;
+  }
+
+  /** @param claimType the new value for {@link #getClaimType()} */
+  public void setClaimType(RifFileType claimType) {
+    this.claimType = claimType;
+  }
+
+  /**
+   * @return the claim/event's ID, e.g. {@link CarrierClaim#getClaimId()} or {@link
+   *     PartDEvent#getEventId()}
+   */
+  public String getClaimId() {
+    return claimId;
+  }
+
+  /** @param claimId the new value for {@link #getClaimId()} */
+  public void setClaimId(String claimId) {
+    this.claimId = claimId;
+  }
+
+  /**
+   * @return an opaque identifier for the version of the server's transformers that produced the
+   *     {@link #getDocument()}, which is only valid for that same version
+   */
+  public String getTransformerVersion() {
+    return transformerVersion;
+  }
+
+  /** @param transformerVersion the new value for {@link #getTransformerVersion()} */
+  public void setTransformerVersion(String transformerVersion) {
+    this.transformerVersion = transformerVersion;
+  }
+
+  /** @return the gzipped, UTF-8 FHIR JSON for the claim/event */
+  public byte[] getDocument() {
+    return document;
+  }
+
+  /** @param document the new value for {@link #getDocument()} */
+  public void setDocument(byte[] document) {
+    this.document = document;
+  }
+
+  /** @see java.lang.Object#toString() */
+  @Override
+  public String toString() {
+    return "ClaimFhirDocument [claimType="
+        + claimType
+        + ", claimId="
+        + claimId
+        + ", transformerVersion="
+        + transformerVersion
+        + ", document.length="
+        + (document != null ? document.length : null)
+        + "]";
+  }
+
+  /** The JPA {@link IdClass} for {@link ClaimFhirDocument}. */
+  public static final class ClaimFhirDocumentId implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private RifFileType claimType;
+
+    private String claimId;
+
+    /** Constructs a new (blank) {@link ClaimFhirDocumentId}, as required by JPA. */
+    public ClaimFhirDocumentId() {}
+
+    /**
+     * Constructs a new {@link ClaimFhirDocumentId}.
+     *
+     * @param claimType the value to use for {@link #getClaimType()}
+     * @param claimId the value to use for {@link #getClaimId()}
+     */
+    public ClaimFhirDocumentId(RifFileType claimType, String claimId) {
+      this.claimType = claimType;
+      this.claimId = claimId;
+    }
+
+    /** @return the {@link ClaimFhirDocument#getClaimType()} value */
+    public RifFileType getClaimType() {
+      return claimType;
+    }
+
+    /** @return the {@link ClaimFhirDocument#getClaimId()} value */
+    public String getClaimId() {
+      return claimId;
+    }
+
+    /** @see java.lang.Object#hashCode() */
+    @Override
+    public int hashCode() {
+      return Objects.hash(claimType, claimId);
+    }
+
+    /** @see java.lang.Object#equals(java.lang.Object) */
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (obj == null || getClass() != obj.getClass()) return false;
+      ClaimFhirDocumentId other = (ClaimFhirDocumentId) obj;
+      return claimType == other.claimType && Objects.equals(claimId, other.claimId);
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package gov.cms.bfd.model.rif;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * Contains the sentinels, conversions, and JPA {@link AttributeConverter}s used by the generated
+ * JPA entities whose layouts store some of their fields as compact primitives (see <code>
+ * MappingSpec.getCompactFields()</code> in the codegen module), rather than as {@link BigDecimal}s,
+ * {@link LocalDate}s, and {@link Character}s. Those entities keep their {@link Optional}-based
+ * accessors, but also expose the raw primitive values, which can be read without allocating.
+ *
+ * <p>The {@link Optional}-based accessors share cached instances for the most common values
+ * (every ASCII code, and zero amounts), so they only allocate for present, non-zero amounts and
+ * for dates, which need a new {@link BigDecimal} or {@link LocalDate} anyways. Code that's
+ * sensitive to allocations (e.g. the server's transformers) should still prefer the raw accessors.
+ */
+public final class CompactValues {
+  /** The sentinel <code>long</code> cents value that marks an absent monetary amount. */
+  public static final long ABSENT_CENTS = Long.MIN_VALUE;
+
+  /** The sentinel <code>int</code> epoch day value that marks an absent date. */
+  public static final int ABSENT_EPOCH_DAY = Integer.MIN_VALUE;
+
+  /** The sentinel <code>char</code> value that marks an absent single-character code. */
+  public static final char ABSENT_CHAR = '\0';
+
+  /** The fixed scale of the monetary amounts that are stored as cents. */
+  private static final int CENTS_SCALE = 2;
+
+  /** The cached result of {@link #centsToDecimal(long)} for zero amounts. */
+  private static final BigDecimal ZERO_DECIMAL = BigDecimal.valueOf(0L, CENTS_SCALE);
+
+  /** The cached result of {@link #centsToOptionalDecimal(long)} for zero amounts. */
+  private static final Optional<BigDecimal> ZERO_OPTIONAL_DECIMAL = Optional.of(ZERO_DECIMAL);
+
+  /** The cached results of {@link #charToOptional(char)} for each ASCII code. */
+  private static final List<Optional<Character>> ASCII_CHARS = createAsciiChars();
+
+  /** Prevents instantiation of this utility class. */
+  private CompactValues() {}
+
+  /**
+   * @param amount the monetary amount to convert
+   * @return the specified amount, in cents (rounded half-up, just as the <code>numeric(n, 2)
+   *     </code> columns for these amounts would)
+   */
+  public static long toCents(BigDecimal amount) {
+    return amount.setScale(CENTS_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+  }
+
+  /**
+   * @param amount the (possibly absent) monetary amount to convert
+   * @return the specified amount, in cents, or {@link #ABSENT_CENTS}
+   */
+  public static long toCents(Optional<BigDecimal> amount) {
+    return amount.isPresent() ? toCents(amount.get()) : ABSENT_CENTS;
+  }
+
+  /**
+   * @param cents the monetary amount to convert, in cents
+   * @return the specified amount, as a {@link BigDecimal} with a scale of two
+   */
+  public static BigDecimal centsToDecimal(long cents) {
+    if (cents == 0L) return ZERO_DECIMAL;
+    return BigDecimal.valueOf(cents, CENTS_SCALE);
+  }
+
+  /**
+   * @param cents the monetary amount to convert, in cents, or {@link #ABSENT_CENTS}
+   * @return the specified amount, as a {@link BigDecimal} with a scale of two, if present
+   */
+  public static Optional<BigDecimal> centsToOptionalDecimal(long cents) {
+    if (cents == ABSENT_CENTS) return Optional.empty();
+    if (cents == 0L) return ZERO_OPTIONAL_DECIMAL;
+    return Optional.of(centsToDecimal(cents));
+  }
+
+  /**
+   * @param date the date to convert
+   * @return the specified date, as a {@link LocalDate#toEpochDay()} value
+   */
+  public static int toEpochDay(LocalDate date) {
+    return Math.toIntExact(date.toEpochDay());
+  }
+
+  /**
+   * @param date the (possibly absent) date to convert
+   * @return the specified date, as a {@link LocalDate#toEpochDay()} value, or {@link
+   *     #ABSENT_EPOCH_DAY}
+   */
+  public static int toEpochDay(Optional<LocalDate> date) {
+    return date.isPresent() ? toEpochDay(date.get()) : ABSENT_EPOCH_DAY;
+  }
+
+  /**
+   * @param epochDay the {@link LocalDate#toEpochDay()} value to convert
+   * @return the specified date
+   */
+  public static LocalDate epochDayToDate(int epochDay) {
+    return LocalDate.ofEpochDay(epochDay);
+  }
+
+  /**
+   * @param epochDay the {@link LocalDate#toEpochDay()} value to convert, or {@link
+   *     #ABSENT_EPOCH_DAY}
+   * @return the specified date, if present
+   */
+  public static Optional<LocalDate> epochDayToOptionalDate(int epochDay) {
+    return epochDay == ABSENT_EPOCH_DAY ? Optional.empty() : Optional.of(epochDayToDate(epochDay));
+  }
+
+  /**
+   * @param code the (possibly absent) single-character code to convert
+   * @return the specified code, or {@link #ABSENT_CHAR}
+   */
+  public static char toChar(Optional<Character> code) {
+    return code.isPresent() ? code.get() : ABSENT_CHAR;
+  }
+
+  /**
+   * @param code the single-character code to convert, or {@link #ABSENT_CHAR}
+   * @return the specified code, if present
+   */
+  public static Optional<Character> charToOptional(char code) {
+    if (code == ABSENT_CHAR) return Optional.empty();
+    if (code < ASCII_CHARS.size()) return ASCII_CHARS.get(code);
+    return Optional.of(code);
+  }
+
+  /** @return the {@link Optional}s to use for {@link #ASCII_CHARS} */
+  private static List<Optional<Character>> createAsciiChars() {
+    List<Optional<Character>> asciiChars = new ArrayList<>(128);
+    for (char code = 0; code < 128; code++) asciiChars.add(Optional.of(code));
+    return Collections.unmodifiableList(asciiChars);
+  }
+
+  /** Maps <code>long</code> cents entity fields to nullable <code>numeric</code> columns. */
+  @Converter
+  public static final class CentsConverter implements AttributeConverter<Long, BigDecimal> {
+    /** @see javax.persistence.AttributeConverter#convertToDatabaseColumn(java.lang.Object) */
+    @Override
+    public BigDecimal convertToDatabaseColumn(Long cents) {
+      return cents == null || cents == ABSENT_CENTS ? null : centsToDecimal(cents);
+    }
+
+    /** @see javax.persistence.AttributeConverter#convertToEntityAttribute(java.lang.Object) */
+    @Override
+    public Long convertToEntityAttribute(BigDecimal amount) {
+      return amount == null ? ABSENT_CENTS : toCents(amount);
+    }
+  }
+
+  /** Maps <code>int</code> epoch day entity fields to nullable <code>date</code> columns. */
+  @Converter
+  public static final class EpochDayConverter implements AttributeConverter<Integer, LocalDate> {
+    /** @see javax.persistence.AttributeConverter#convertToDatabaseColumn(java.lang.Object) */
+    @Override
+    public LocalDate convertToDatabaseColumn(Integer epochDay) {
+      return epochDay == null || epochDay == ABSENT_EPOCH_DAY ? null : epochDayToDate(epochDay);
+    }
+
+    /** @see javax.persistence.AttributeConverter#convertToEntityAttribute(java.lang.Object) */
+    @Override
+    public Integer convertToEntityAttribute(LocalDate date) {
+      return date == null ? ABSENT_EPOCH_DAY : toEpochDay(date);
+    }
+  }
+
+  /** Maps <code>char</code> entity fields to nullable <code>char(1)</code> columns. */
+  @Converter
+  public static final class CharConverter implements AttributeConverter<Character, Character> {
+    /** @see javax.persistence.AttributeConverter#convertToDatabaseColumn(java.lang.Object) */
+    @Override
+    public Character convertToDatabaseColumn(Character code) {
+      return code == null || code == ABSENT_CHAR ? null : code;
+    }
+
+    /** @see javax.persistence.AttributeConverter#convertToEntityAttribute(java.lang.Object) */
+    @Override
+    public Character convertToEntityAttribute(Character code) {
+      return code == null ? ABSENT_CHAR : code;
+    }
+  }
+}
@@ -24,6 +24,15 @@ public final class RifParsingUtils {
   public static final CSVFormat CSV_FORMAT =
       CSVFormat.EXCEL.withHeader().withDelimiter('|').withEscape('\\');
 
+  private static final DateTimeFormatter RIF_DATE_FORMATTER =
+      new DateTimeFormatterBuilder()
+          .parseCaseInsensitive()
+          .appendPattern("dd-MMM-yyyy")
+          .toFormatter();
+
+  private static final DateTimeFormatter RIF_DATE_FORMATTER_COMPACT =
+      new DateTimeFormatterBuilder().parseCaseInsensitive().appendPattern("yyyyMMdd").toFormatter();
+
   private static final DateTimeFormatter RIF_TIMESTAMP_FORMATTER =
       new DateTimeFormatterBuilder()
           .parseCaseInsensitive()
@@ -165,25 +174,15 @@ public final class RifParsingUtils {
      * to read, and ensures that this parsing is standardized.
      */
 
-    DateTimeFormatter rifDateFormatter;
     /*
      * Incoming dates usually are in the format of dd-MMM-yyyy (01-MAR-2019). There
      * are a couple instances where a date may come in the format of yyyyMMdd
-     * (20190301). Thus the reason for the following code.
+     * (20190301). Thus the reason for the following code. This is called for
+     * millions of values per file, so the check is done by hand, rather than with a
+     * regex, and the formatters are built only once.
      */
-    if (dateText.matches("\\d{8}")) {
-      rifDateFormatter =
-          new DateTimeFormatterBuilder()
-              .parseCaseInsensitive()
-              .appendPattern("yyyyMMdd")
-              .toFormatter();
-    } else {
-      rifDateFormatter =
-          new DateTimeFormatterBuilder()
-              .parseCaseInsensitive()
-              .appendPattern("dd-MMM-yyyy")
-              .toFormatter();
-    }
+    DateTimeFormatter rifDateFormatter =
+        isEightDigits(dateText) ? RIF_DATE_FORMATTER_COMPACT : RIF_DATE_FORMATTER;
 
     try {
       LocalDate dateFrom = LocalDate.parse(dateText, rifDateFormatter);
@@ -194,6 +193,20 @@ public final class RifParsingUtils {
     }
   }
 
+  /**
+   * @param text the text to check
+   * @return <code>true</code> if the specified text consists of exactly eight ASCII digits, <code>
+   *     false</code> if not
+   */
+  private static boolean isEightDigits(String text) {
+    if (text.length() != 8) return false;
+    for (int i = 0; i < 8; i++) {
+      char c = text.charAt(i);
+      if (c < '0' || c > '9') return false;
+    }
+    return true;
+  }
+
   /**
    * @param timestampText the timestamp string to parse
    * @return the specified text as a {@link Instant}, parsed using {@link #RIF_TIMESTAMP_FORMATTER}
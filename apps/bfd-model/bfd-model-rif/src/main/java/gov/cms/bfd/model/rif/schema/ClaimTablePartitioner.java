@@ -0,0 +1,701 @@
+package gov.cms.bfd.model.rif.schema;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts the claim and claim line tables (e.g. <code>CarrierClaims</code> and <code>
+ * CarrierClaimLines</code>) into PostgreSQL hash-partitioned tables. This is an explicit,
+ * operational step (see {@link DatabaseSchemaManager#partitionClaimTables(DataSource, int)}), not a
+ * schema migration, as it has to copy every claim row.
+ *
+ * <p>The claim tables are partitioned by <code>beneficiaryId</code>, so that the per-beneficiary
+ * queries only have to search one partition. This has some costs, though:
+ *
+ * <ul>
+ *   <li>PostgreSQL requires the partition key to be part of every primary key (and unique index),
+ *       so the claim tables' primary keys become (claim ID, <code>beneficiaryId</code>), which
+ *       would only keep claim IDs unique per beneficiary. To still keep them globally unique, each
+ *       claim table gets an unpartitioned IDs table (e.g. <code>CarrierClaimIds</code>), with just
+ *       its claim IDs (as the primary key) and their <code>beneficiaryId</code>s, which a trigger
+ *       keeps in step with the claim table. Every claim insert therefore also writes a row to that
+ *       table, and fails (just as it did before) if its claim ID is already in use.
+ *   <li>Foreign keys can't reference the partitioned claim tables by claim ID, so the claim line
+ *       tables' foreign keys reference the IDs tables instead. These are deferred until commit, as
+ *       the trigger only adds the IDs at the end of each statement.
+ *   <li>The claim line tables don't have a <code>beneficiaryId</code> column, so they can't be
+ *       partitioned alongside their claims. They're only ever queried by their <code>parentClaim
+ *       </code>, so they're partitioned by that instead: loading a claim's lines searches the one
+ *       line partition that its claim ID hashes to, but a beneficiary's claim lines are spread
+ *       across all of them.
+ *   <li>Queries that find claims by their claim ID alone (e.g. an EOB read) have to look in every
+ *       partition's claim ID index. Queries that also know the claim's beneficiary should filter by
+ *       it as well (as the EOB searches do), so that only one partition needs to be searched.
+ * </ul>
+ *
+ * <p>The tables otherwise keep their names, columns, indexes, and grants, so none of the entities
+ * need to change.
+ *
+ * <p>Each claim type is converted in turn, as follows:
+ *
+ * <ol>
+ *   <li>Empty partitioned copies of the claim and claim line tables are created alongside them.
+ *   <li>The original tables are locked against writes (but not reads) for the rest of the
+ *       conversion, so the pipeline must not be running.
+ *   <li>Each partition is copied on its own connection, in parallel.
+ *   <li>The IDs table is created from the original claim table, along with its trigger.
+ *   <li>The constraints, indexes, and grants are recreated on the copies, which are then analyzed.
+ *   <li>The original tables are dropped and the copies renamed in their place, which only blocks
+ *       reads for as long as that takes.
+ * </ol>
+ *
+ * <p>A claim type that fails partway through is left as it was, and will be started over the next
+ * time this is run. Claim types that have already been partitioned are skipped.
+ *
+ * <p>This requires PostgreSQL 11 or later, which is the first version to support primary keys and
+ * foreign keys on partitioned tables.
+ */
+final class ClaimTablePartitioner {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClaimTablePartitioner.class);
+
+  /**
+   * The number of hash partitions to split each table into. Changing this for tables that have
+   * already been partitioned would require repartitioning them.
+   */
+  static final int PARTITION_COUNT = 16;
+
+  /** The first PostgreSQL major version that can be partitioned by this class. */
+  private static final int MINIMUM_POSTGRESQL_VERSION = 11;
+
+  /** The column that all of the claim tables are partitioned by. */
+  private static final String CLAIMS_PARTITION_COLUMN = "beneficiaryId";
+
+  /** The column that all of the claim line tables are partitioned by. */
+  private static final String LINES_PARTITION_COLUMN = "parentClaim";
+
+  /**
+   * The suffix that the partitioned copies of the tables (and their constraints and indexes) are
+   * created with, until they're renamed to replace the originals.
+   */
+  private static final String STAGED_SUFFIX = "_staged";
+
+  /** PostgreSQL's maximum identifier length, beyond which identifiers are silently truncated. */
+  private static final int MAX_IDENTIFIER_LENGTH = 63;
+
+  /** The claim (or event) tables to partition, each with its key column and lines table. */
+  private static final List<ClaimTable> CLAIM_TABLES =
+      Arrays.asList(
+          new ClaimTable("CarrierClaims", "claimId", "CarrierClaimLines"),
+          new ClaimTable("DMEClaims", "claimId", "DMEClaimLines"),
+          new ClaimTable("HHAClaims", "claimId", "HHAClaimLines"),
+          new ClaimTable("HospiceClaims", "claimId", "HospiceClaimLines"),
+          new ClaimTable("InpatientClaims", "claimId", "InpatientClaimLines"),
+          new ClaimTable("OutpatientClaims", "claimId", "OutpatientClaimLines"),
+          new ClaimTable("PartDEvents", "eventId", null),
+          new ClaimTable("SNFClaims", "claimId", "SNFClaimLines"));
+
+  /** Prevents instantiation of this utility class. */
+  private ClaimTablePartitioner() {}
+
+  /**
+   * @param connection the {@link Connection} to the database to check
+   * @return <code>true</code> if the database supports the partitioning done by {@link
+   *     #partition(DataSource, int)}, <code>false</code> if it doesn't
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  static boolean isSupported(Connection connection) throws SQLException {
+    return connection.getMetaData().getDatabaseProductName().equals("PostgreSQL")
+        && connection.getMetaData().getDatabaseMajorVersion() >= MINIMUM_POSTGRESQL_VERSION;
+  }
+
+  /**
+   * @return the names of all of the tables that {@link #partition(DataSource, int)} partitions,
+   *     claim tables first
+   */
+  static List<String> getTableNames() {
+    List<String> tableNames = new ArrayList<>();
+    for (ClaimTable claimTable : CLAIM_TABLES) tableNames.add(claimTable.tableName);
+    for (ClaimTable claimTable : CLAIM_TABLES)
+      if (claimTable.linesTableName != null) tableNames.add(claimTable.linesTableName);
+    return tableNames;
+  }
+
+  /**
+   * Partitions all of the claim and claim line tables that haven't already been, logging progress
+   * as it goes.
+   *
+   * @param dataSource the {@link DataSource} for the database to partition the tables of, which
+   *     must be one that {@link #isSupported(Connection)}, and must allow at least <code>
+   *     threads + 1</code> connections at once
+   * @param threads the number of partitions to copy in parallel
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  static void partition(DataSource dataSource, int threads) throws SQLException {
+    if (threads < 1) throw new IllegalArgumentException();
+
+    List<ClaimTable> claimTables = new ArrayList<>();
+    try (Connection connection = dataSource.getConnection()) {
+      if (!isSupported(connection))
+        throw new IllegalArgumentException(
+            "Claim table partitioning requires PostgreSQL " + MINIMUM_POSTGRESQL_VERSION + "+.");
+      for (ClaimTable claimTable : CLAIM_TABLES)
+        if (!isPartitioned(connection, claimTable.tableName)) claimTables.add(claimTable);
+    }
+    LOGGER.info(
+        "Partitioning claim tables: {} of {} claim types still to partition, into {} partitions"
+            + " each, with {} threads.",
+        claimTables.size(),
+        CLAIM_TABLES.size(),
+        PARTITION_COUNT,
+        threads);
+
+    AtomicInteger threadCount = new AtomicInteger(0);
+    ExecutorService copyExecutor =
+        Executors.newFixedThreadPool(
+            threads,
+            r -> {
+              Thread thread =
+                  new Thread(
+                      r,
+                      ClaimTablePartitioner.class.getSimpleName()
+                          + "-"
+                          + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      long startNanos = System.nanoTime();
+      for (int i = 0; i < claimTables.size(); i++) {
+        ClaimTable claimTable = claimTables.get(i);
+        LOGGER.info(
+            "Partitioning claim tables: starting '{}' ({} of {}).",
+            claimTable.tableName,
+            i + 1,
+            claimTables.size());
+        partition(dataSource, copyExecutor, claimTable);
+        LOGGER.info(
+            "Partitioning claim tables: finished '{}' ({} of {}), {}s elapsed so far.",
+            claimTable.tableName,
+            i + 1,
+            claimTables.size(),
+            TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+      }
+    } finally {
+      copyExecutor.shutdownNow();
+    }
+    LOGGER.info("Partitioning claim tables: complete.");
+  }
+
+  /**
+   * Partitions the specified claim table and its lines table (if any).
+   *
+   * @param dataSource the {@link DataSource} to use
+   * @param copyExecutor the {@link ExecutorService} to copy partitions on
+   * @param claimTable the {@link ClaimTable} to partition
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private static void partition(
+      DataSource dataSource, ExecutorService copyExecutor, ClaimTable claimTable)
+      throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      connection.setAutoCommit(true);
+
+      // Start over from scratch if an earlier attempt left its copies behind.
+      if (claimTable.linesTableName != null)
+        execute(
+            connection, "drop table if exists " + quote(claimTable.linesTableName + STAGED_SUFFIX));
+      execute(connection, "drop table if exists " + quote(claimTable.tableName + STAGED_SUFFIX));
+
+      // The copies are committed right away, so that the copying connections can see them.
+      createStagedTable(connection, claimTable.tableName, CLAIMS_PARTITION_COLUMN);
+      if (claimTable.linesTableName != null)
+        createStagedTable(connection, claimTable.linesTableName, LINES_PARTITION_COLUMN);
+
+      connection.setAutoCommit(false);
+      try {
+        /*
+         * Blocks any inserts, updates, or deletes until the originals are replaced, as they'd
+         * otherwise be lost. Reads can carry on, though, until the final swap.
+         */
+        execute(
+            connection,
+            String.format("lock table %s in share mode", String.join(", ", quoteAll(claimTable))));
+
+        StagedObjects stagedObjects = new StagedObjects();
+        readStagedObjects(connection, claimTable, claimTable.tableName, stagedObjects);
+        if (claimTable.linesTableName != null)
+          readStagedObjects(connection, claimTable, claimTable.linesTableName, stagedObjects);
+
+        copyPartitions(dataSource, copyExecutor, claimTable);
+        createIdsTable(connection, claimTable);
+
+        LOGGER.info(
+            "Partitioning claim tables: recreating {} constraints, indexes, and grants for '{}'.",
+            stagedObjects.createStatements.size(),
+            claimTable.tableName);
+        for (String createStatement : stagedObjects.createStatements)
+          execute(connection, createStatement);
+        execute(connection, "analyze " + quote(claimTable.tableName + STAGED_SUFFIX));
+        if (claimTable.linesTableName != null)
+          execute(connection, "analyze " + quote(claimTable.linesTableName + STAGED_SUFFIX));
+
+        // Reads of the originals are only blocked from here until the commit.
+        execute(
+            connection,
+            String.format(
+                "lock table %s in access exclusive mode", String.join(", ", quoteAll(claimTable))));
+        // The lines table goes first, as it holds the foreign key to the claim table.
+        if (claimTable.linesTableName != null)
+          execute(connection, "drop table " + quote(claimTable.linesTableName));
+        execute(connection, "drop table " + quote(claimTable.tableName));
+        renameStagedTable(connection, claimTable.tableName);
+        if (claimTable.linesTableName != null)
+          renameStagedTable(connection, claimTable.linesTableName);
+        for (String renameStatement : stagedObjects.renameStatements)
+          execute(connection, renameStatement);
+
+        connection.commit();
+      } catch (SQLException | RuntimeException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(true);
+      }
+    }
+  }
+
+  /**
+   * Creates an empty, hash-partitioned copy of the specified table, with the same columns, and all
+   * of its partitions.
+   *
+   * @param connection the {@link Connection} to use
+   * @param tableName the name of the table to create a partitioned copy of
+   * @param partitionColumn the name of the column to partition by
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private static void createStagedTable(
+      Connection connection, String tableName, String partitionColumn) throws SQLException {
+    String stagedTableName = tableName + STAGED_SUFFIX;
+    execute(
+        connection,
+        String.format(
+            "create table %s (like %s including defaults) partition by hash (%s)",
+            quote(stagedTableName), quote(tableName), quote(partitionColumn)));
+    for (int remainder = 0; remainder < PARTITION_COUNT; remainder++)
+      execute(
+          connection,
+          String.format(
+              "create table %s partition of %s for values with (modulus %d, remainder %d)",
+              quote(getPartitionName(tableName, remainder)),
+              quote(stagedTableName),
+              PARTITION_COUNT,
+              remainder));
+  }
+
+  /**
+   * Creates the specified claim table's IDs table, filled from the original claim table, and the
+   * trigger that will keep it in step with the partitioned copy from then on. This has to be done
+   * after the rows have been copied, so that the trigger doesn't fire for all of them.
+   *
+   * @param connection the {@link Connection} to use, which must hold the locks on the original
+   *     tables
+   * @param claimTable the {@link ClaimTable} to create the IDs table for
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private static void createIdsTable(Connection connection, ClaimTable claimTable)
+      throws SQLException {
+    String idsTableName = getIdsTableName(claimTable.tableName);
+    LOGGER.info("Partitioning claim tables: creating '{}'.", idsTableName);
+    execute(
+        connection,
+        String.format(
+            "create table %s as select %s, %s from %s",
+            quote(idsTableName),
+            quote(claimTable.keyColumn),
+            quote(CLAIMS_PARTITION_COLUMN),
+            quote(claimTable.tableName)));
+    execute(
+        connection,
+        String.format(
+            "alter table %s add constraint %s primary key (%s)",
+            quote(idsTableName),
+            quote(idsTableName + "_pkey"),
+            quote(claimTable.keyColumn)));
+    execute(
+        connection,
+        String.format(
+            "alter table %s alter column %s set not null",
+            quote(idsTableName),
+            quote(CLAIMS_PARTITION_COLUMN)));
+
+    /*
+     * Updates are handled as a delete and an insert, which is also how PostgreSQL reports any that
+     * move a row to another partition. The function runs as its owner, so that the pipeline doesn't
+     * need to be granted access to the IDs table.
+     */
+    String triggerName = idsTableName + "_trigger";
+    execute(
+        connection,
+        String.format(
+            "create or replace function %1$s() returns trigger language plpgsql security definer"
+                + " set search_path from current as $$ begin"
+                + " if tg_op <> 'INSERT' then delete from %2$s where %3$s = old.%3$s; end if;"
+                + " if tg_op <> 'DELETE' then"
+                + " insert into %2$s (%3$s, %4$s) values (new.%3$s, new.%4$s); end if;"
+                + " return null; end $$",
+            quote(triggerName),
+            quote(idsTableName),
+            quote(claimTable.keyColumn),
+            quote(CLAIMS_PARTITION_COLUMN)));
+    execute(
+        connection,
+        String.format(
+            "create trigger %s after insert or update of %s, %s or delete on %s"
+                + " for each row execute procedure %s()",
+            quote(triggerName),
+            quote(claimTable.keyColumn),
+            quote(CLAIMS_PARTITION_COLUMN),
+            quote(claimTable.tableName + STAGED_SUFFIX),
+            quote(triggerName)));
+  }
+
+  /**
+   * Copies all of the specified claim type's rows into their partitions, with one task (and
+   * connection) per partition.
+   *
+   * @param dataSource the {@link DataSource} to use
+   * @param copyExecutor the {@link ExecutorService} to run the copies on
+   * @param claimTable the {@link ClaimTable} to copy the rows of
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private static void copyPartitions(
+      DataSource dataSource, ExecutorService copyExecutor, ClaimTable claimTable)
+      throws SQLException {
+    CompletionService<Integer> copies = new ExecutorCompletionService<>(copyExecutor);
+    List<Future<Integer>> copyFutures = new ArrayList<>();
+    for (int remainder = 0; remainder < PARTITION_COUNT; remainder++) {
+      int copyRemainder = remainder;
+      copyFutures.add(
+          copies.submit(
+              () ->
+                  copyPartition(
+                      dataSource, claimTable.tableName, CLAIMS_PARTITION_COLUMN, copyRemainder)));
+      if (claimTable.linesTableName != null)
+        copyFutures.add(
+            copies.submit(
+                () ->
+                    copyPartition(
+                        dataSource,
+                        claimTable.linesTableName,
+                        LINES_PARTITION_COLUMN,
+                        copyRemainder)));
+    }
+
+    long startNanos = System.nanoTime();
+    long rowCount = 0L;
+    try {
+      for (int i = 0; i < copyFutures.size(); i++) {
+        rowCount += copies.take().get();
+        LOGGER.info(
+            "Partitioning claim tables: copied {} of {} partitions for '{}', {} rows in {}s.",
+            i + 1,
+            copyFutures.size(),
+            claimTable.tableName,
+            rowCount,
+            TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      for (Future<Integer> copyFuture : copyFutures) copyFuture.cancel(true);
+    }
+  }
+
+  /**
+   * Copies the rows from the specified original table that belong in the specified partition of
+   * its partitioned copy. Each of these scans the whole original table, but PostgreSQL's
+   * synchronized sequential scans let the ones running at the same time share most of those reads.
+   *
+   * @param dataSource the {@link DataSource} to use
+   * @param tableName the name of the original table
+   * @param partitionColumn the name of the column that the table is being partitioned by
+   * @param remainder the hash remainder of the partition to copy
+   * @return the number of rows that were copied
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private static int copyPartition(
+      DataSource dataSource, String tableName, String partitionColumn, int remainder)
+      throws SQLException {
+    // satisfies_hash_partition(...) is what PostgreSQL itself uses for hash partition constraints.
+    String sql =
+        String.format(
+            "insert into %s select * from %s"
+                + " where satisfies_hash_partition(cast(? as regclass), %d, %d, %s)",
+            quote(getPartitionName(tableName, remainder)),
+            quote(tableName),
+            PARTITION_COUNT,
+            remainder,
+            quote(partitionColumn));
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(sql)) {
+      connection.setAutoCommit(true);
+      statement.setString(1, quote(tableName + STAGED_SUFFIX));
+      return statement.executeUpdate();
+    }
+  }
+
+  /**
+   * Reads the specified original table's constraints, indexes, and grants, and records the
+   * statements that will recreate them on its partitioned copy, and then give them their original
+   * names back once that copy has replaced the original.
+   *
+   * @param connection the {@link Connection} to use
+   * @param claimTable the {@link ClaimTable} being partitioned
+   * @param tableName the name of the table to read, which is either the {@link ClaimTable}'s claim
+   *     table or its lines table
+   * @param stagedObjects the {@link StagedObjects} to add the statements to
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private static void readStagedObjects(
+      Connection connection, ClaimTable claimTable, String tableName, StagedObjects stagedObjects)
+      throws SQLException {
+    String stagedTableName = tableName + STAGED_SUFFIX;
+    boolean isClaimTable = tableName.equals(claimTable.tableName);
+
+    // Primary keys go first, so that they're in place for any foreign keys.
+    try (PreparedStatement statement =
+        connection.prepareStatement(
+            "select conname, contype, pg_get_constraintdef(oid),"
+                + " confrelid = cast(? as regclass)"
+                + " from pg_constraint where conrelid = cast(? as regclass)"
+                + " order by case contype when 'p' then 0 when 'u' then 1 when 'f' then 3"
+                + " else 2 end, conname")) {
+      statement.setString(1, quote(claimTable.tableName));
+      statement.setString(2, quote(tableName));
+      try (ResultSet results = statement.executeQuery()) {
+        while (results.next()) {
+          String name = results.getString(1);
+          String type = results.getString(2);
+          String definition = results.getString(3);
+          boolean referencesClaimTable = results.getBoolean(4);
+
+          // Foreign keys can't reference the partitioned claim tables, so use the IDs tables.
+          if ("f".equals(type) && referencesClaimTable)
+            definition =
+                String.format(
+                    "foreign key (%s) references %s (%s) deferrable initially deferred",
+                    quote(LINES_PARTITION_COLUMN),
+                    quote(getIdsTableName(claimTable.tableName)),
+                    quote(claimTable.keyColumn));
+          // Newer PostgreSQL versions also list not-null constraints, which came along already.
+          if ("n".equals(type)) continue;
+          if ("p".equals(type) && isClaimTable)
+            definition =
+                String.format(
+                    "primary key (%s, %s)",
+                    quote(claimTable.keyColumn), quote(CLAIMS_PARTITION_COLUMN));
+
+          stagedObjects.createStatements.add(
+              String.format(
+                  "alter table %s add constraint %s %s",
+                  quote(stagedTableName), quote(getStagedName(name)), definition));
+          stagedObjects.renameStatements.add(
+              String.format(
+                  "alter table %s rename constraint %s to %s",
+                  quote(tableName), quote(getStagedName(name)), quote(name)));
+        }
+      }
+    }
+
+    // The indexes that back constraints are already covered above.
+    try (PreparedStatement statement =
+        connection.prepareStatement(
+            "select c.relname, i.indisunique,"
+                + " substring(pg_get_indexdef(i.indexrelid) from ' USING .*$')"
+                + " from pg_index i join pg_class c on c.oid = i.indexrelid"
+                + " where i.indrelid = cast(? as regclass)"
+                + " and not exists (select 1 from pg_constraint k where k.conindid = i.indexrelid)"
+                + " order by c.relname")) {
+      statement.setString(1, quote(tableName));
+      try (ResultSet results = statement.executeQuery()) {
+        while (results.next()) {
+          String name = results.getString(1);
+          stagedObjects.createStatements.add(
+              String.format(
+                  "create %sindex %s on %s%s",
+                  results.getBoolean(2) ? "unique " : "",
+                  quote(getStagedName(name)),
+                  quote(stagedTableName),
+                  results.getString(3)));
+          stagedObjects.renameStatements.add(
+              String.format(
+                  "alter index %s rename to %s", quote(getStagedName(name)), quote(name)));
+        }
+      }
+    }
+
+    try (PreparedStatement statement =
+        connection.prepareStatement(
+            "select grantee, privilege_type from information_schema.role_table_grants"
+                + " where table_schema = current_schema() and table_name = ?"
+                + " and grantee <> grantor")) {
+      statement.setString(1, tableName);
+      try (ResultSet results = statement.executeQuery()) {
+        while (results.next()) {
+          String grantee = results.getString(1);
+          stagedObjects.createStatements.add(
+              String.format(
+                  "grant %s on %s to %s",
+                  results.getString(2),
+                  quote(stagedTableName),
+                  "PUBLIC".equals(grantee) ? grantee : quote(grantee)));
+        }
+      }
+    }
+  }
+
+  /**
+   * @param connection the {@link Connection} to use
+   * @param tableName the name of the table to check
+   * @return <code>true</code> if the specified table is already partitioned, <code>false</code> if
+   *     it isn't
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  static boolean isPartitioned(Connection connection, String tableName) throws SQLException {
+    try (PreparedStatement statement =
+        connection.prepareStatement(
+            "select relkind from pg_class where oid = cast(? as regclass)")) {
+      statement.setString(1, quote(tableName));
+      try (ResultSet results = statement.executeQuery()) {
+        return results.next() && "p".equals(results.getString(1));
+      }
+    }
+  }
+
+  /**
+   * @param connection the {@link Connection} to use
+   * @param tableName the name of the original table to rename the partitioned copy of over
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private static void renameStagedTable(Connection connection, String tableName)
+      throws SQLException {
+    execute(
+        connection,
+        String.format(
+            "alter table %s rename to %s", quote(tableName + STAGED_SUFFIX), quote(tableName)));
+  }
+
+  /**
+   * @param tableName the name of the original table
+   * @param remainder the hash remainder of the partition
+   * @return the name of the specified partition of the specified table
+   */
+  static String getPartitionName(String tableName, int remainder) {
+    return tableName + "_p" + remainder;
+  }
+
+  /**
+   * @param tableName the name of a claim (or event) table
+   * @return the name of the unpartitioned table that keeps the specified claim table's IDs unique
+   *     once it's been partitioned, e.g. <code>CarrierClaimIds</code> for <code>CarrierClaims
+   *     </code>
+   */
+  static String getIdsTableName(String tableName) {
+    return tableName.substring(0, tableName.length() - 1) + "Ids";
+  }
+
+  /**
+   * @param name the name of a constraint or index on one of the original tables
+   * @return the name to give the corresponding constraint or index on the partitioned copy
+   */
+  private static String getStagedName(String name) {
+    String stagedName = name + STAGED_SUFFIX;
+    if (stagedName.length() > MAX_IDENTIFIER_LENGTH)
+      throw new IllegalStateException("Name is too long to stage: " + name);
+    return stagedName;
+  }
+
+  /**
+   * @param connection the {@link Connection} to use
+   * @param sql the SQL statement to run
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private static void execute(Connection connection, String sql) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+
+  /**
+   * @param claimTable the {@link ClaimTable} to get the tables of
+   * @return the quoted names of the specified {@link ClaimTable}'s original claim and lines tables
+   */
+  private static List<String> quoteAll(ClaimTable claimTable) {
+    List<String> quotedNames = new ArrayList<>();
+    quotedNames.add(quote(claimTable.tableName));
+    if (claimTable.linesTableName != null) quotedNames.add(quote(claimTable.linesTableName));
+    return quotedNames;
+  }
+
+  /**
+   * @param identifier the SQL identifier (e.g. a table name) to quote
+   * @return the specified identifier, as a quoted (and thus case-sensitive) SQL identifier
+   */
+  static String quote(String identifier) {
+    return "\"" + identifier.replace("\"", "\"\"") + "\"";
+  }
+
+  /** Describes one of the claim (or event) tables to be partitioned. */
+  private static final class ClaimTable {
+    private final String tableName;
+    private final String keyColumn;
+    private final String linesTableName;
+
+    /**
+     * Constructs a new {@link ClaimTable}.
+     *
+     * @param tableName the name of the claim table
+     * @param keyColumn the name of the claim table's original primary key column
+     * @param linesTableName the name of the claim table's lines table, or <code>null</code> if it
+     *     doesn't have one
+     */
+    ClaimTable(String tableName, String keyColumn, String linesTableName) {
+      this.tableName = tableName;
+      this.keyColumn = keyColumn;
+      this.linesTableName = linesTableName;
+    }
+  }
+
+  /**
+   * Collects the SQL statements needed to recreate the constraints, indexes, and grants of a claim
+   * type's original tables on their partitioned copies.
+   */
+  private static final class StagedObjects {
+    /** The statements that recreate everything on the copies, under their staged names. */
+    private final List<String> createStatements = new ArrayList<>();
+
+    /** The statements that restore the original names, once the copies have been renamed. */
+    private final List<String> renameStatements = new ArrayList<>();
+  }
+}
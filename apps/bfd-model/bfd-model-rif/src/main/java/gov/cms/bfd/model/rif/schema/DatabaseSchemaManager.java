@@ -7,6 +7,9 @@ import java.util.HashMap;
 import java.util.Map;
 import javax.sql.DataSource;
 import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.MigrationInfo;
+import org.flywaydb.core.api.MigrationState;
 import org.flywaydb.core.internal.dbsupport.DbSupport;
 import org.flywaydb.core.internal.dbsupport.DbSupportFactory;
 import org.flywaydb.core.internal.dbsupport.SqlScript;
@@ -36,6 +39,60 @@ public final class DatabaseSchemaManager {
   public static void createOrUpdateSchema(DataSource dataSource) {
     LOGGER.info("Schema create/upgrade: running...");
 
+    Flyway flyway = createFlyway(dataSource);
+    flyway.migrate();
+
+    LOGGER.info("Schema create/upgrade: complete.");
+  }
+
+  /**
+   * Checks whether or not the specified database's schema is exactly the one that the migrations
+   * bundled with this build would produce, without inspecting the schema itself. This is done by
+   * comparing the per-migration checksums that were recorded in Flyway's metadata table when {@link
+   * #createOrUpdateSchema(DataSource)} applied them against the bundled migrations: every bundled
+   * migration must have been applied successfully, with a matching checksum, and no others may
+   * have been.
+   *
+   * <p>This costs a single query against the metadata table, and so is much cheaper than having
+   * Hibernate validate each entity's table and columns against the database's metadata. It can't
+   * detect manual changes made to the schema outside of the migrations, though.
+   *
+   * @param dataSource the JDBC {@link DataSource} for the database whose schema should be checked
+   * @return <code>true</code> if the database's schema matches the bundled migrations, <code>false
+   *     </code> if it doesn't (or might not)
+   */
+  public static boolean isSchemaCurrent(DataSource dataSource) {
+    Flyway flyway = createFlyway(dataSource);
+    flyway.setIgnoreFutureMigrations(false);
+
+    for (MigrationInfo migration : flyway.info().all()) {
+      MigrationState state = migration.getState();
+      if (!state.isApplied() || !state.isResolved() || state.isFailed()) {
+        LOGGER.info(
+            "Schema check: migration '{}' is '{}'.",
+            migration.getVersion(),
+            state.getDisplayName());
+        return false;
+      }
+    }
+
+    // Catches any checksum mismatches between the applied and bundled migrations.
+    try {
+      flyway.validate();
+    } catch (FlywayException e) {
+      LOGGER.info("Schema check: failed validation.", e);
+      return false;
+    }
+
+    LOGGER.info("Schema check: current.");
+    return true;
+  }
+
+  /**
+   * @param dataSource the JDBC {@link DataSource} for the database whose schema will be managed
+   * @return a {@link Flyway} instance configured to manage the specified database's schema
+   */
+  private static Flyway createFlyway(DataSource dataSource) {
     Flyway flyway = new Flyway();
 
     // Trying to prevent career-limiting mistakes.
@@ -43,9 +100,32 @@ public final class DatabaseSchemaManager {
 
     flyway.setDataSource(dataSource);
     flyway.setPlaceholders(createScriptPlaceholdersMap(dataSource));
-    flyway.migrate();
+    return flyway;
+  }
 
-    LOGGER.info("Schema create/upgrade: complete.");
+  /**
+   * Hash-partitions any of the claim and claim line tables that haven't already been, via {@link
+   * ClaimTablePartitioner}, copying their rows across in parallel. This isn't part of {@link
+   * #createOrUpdateSchema(DataSource)}, as it has to copy every claim row: it should only be run
+   * deliberately, while the pipeline is stopped (it blocks writes to each claim type's tables while
+   * converting them, but not reads).
+   *
+   * <p>Partitioning the claim tables by beneficiary makes each claim insert also write to an
+   * unpartitioned IDs table (which keeps claim IDs unique, and which the claim lines' foreign keys
+   * now reference), and makes queries that find claims by ID alone search every partition. See
+   * {@link ClaimTablePartitioner} for the details.
+   *
+   * @param dataSource the JDBC {@link DataSource} for the database whose tables should be
+   *     partitioned, which must be PostgreSQL 11 or later, and must allow at least <code>
+   *     threads + 1</code> connections at once
+   * @param threads the number of partitions to copy in parallel
+   */
+  public static void partitionClaimTables(DataSource dataSource, int threads) {
+    try {
+      ClaimTablePartitioner.partition(dataSource, threads);
+    } catch (SQLException e) {
+      throw new UncheckedSqlException(e);
+    }
   }
 
   /**
@@ -83,6 +163,7 @@ public final class DatabaseSchemaManager {
     try (Connection connection = dataSource.getConnection()) {
       if (connection.getMetaData().getDatabaseProductName().equals("HSQL Database Engine")) {
         placeholders.put("type.int4", "integer");
+        placeholders.put("type.bytes", "varbinary(16777216)");
         placeholders.put("logic.tablespaces-escape", "--");
         placeholders.put("logic.drop-tablespaces-escape", "--");
         placeholders.put("logic.alter-column-type", "");
@@ -91,6 +172,7 @@ public final class DatabaseSchemaManager {
         placeholders.put("logic.sequence-increment", "increment by");
       } else {
         placeholders.put("type.int4", "int4");
+        placeholders.put("type.bytes", "bytea");
         placeholders.put("logic.tablespaces-escape", "--");
         placeholders.put("logic.drop-tablespaces-escape", "");
         placeholders.put("logic.alter-column-type", "type");
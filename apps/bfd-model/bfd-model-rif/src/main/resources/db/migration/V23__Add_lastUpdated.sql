@@ -0,0 +1,27 @@
+/*
+ * Adds a "lastUpdated" column to the beneficiary and claim tables, recording when each row was
+ * last inserted or updated by the pipeline, so that partners can ask for just the records that
+ * have changed since their last sync (via the "_lastUpdated" search parameter).
+ *
+ * The column doesn't have a default value to avoid updating every row on migration. The pipeline
+ * server will populate the column as records are loaded. Rows loaded before this migration will
+ * be left null, and are treated as never having been updated.
+ */
+
+alter table "Beneficiaries" add column "lastUpdated" timestamp;
+
+alter table "CarrierClaims" add column "lastUpdated" timestamp;
+
+alter table "DMEClaims" add column "lastUpdated" timestamp;
+
+alter table "HHAClaims" add column "lastUpdated" timestamp;
+
+alter table "HospiceClaims" add column "lastUpdated" timestamp;
+
+alter table "InpatientClaims" add column "lastUpdated" timestamp;
+
+alter table "OutpatientClaims" add column "lastUpdated" timestamp;
+
+alter table "PartDEvents" add column "lastUpdated" timestamp;
+
+alter table "SNFClaims" add column "lastUpdated" timestamp;
@@ -0,0 +1,34 @@
+/*
+ * Adds indexes to support "_lastUpdated" searches. The claim searches are always also restricted
+ * to a single beneficiary, so those indexes lead with "beneficiaryId".
+ *
+ * These are kept separate from the V23 migration that added the columns, as PostgreSQL can't
+ * create indexes concurrently inside of the same transaction.
+ */
+
+create index ${logic.index-create-concurrently} "Beneficiaries_lastUpdated_idx"
+    on "Beneficiaries" ("lastUpdated");
+
+create index ${logic.index-create-concurrently} "CarrierClaims_beneficiaryId_lastUpdated_idx"
+    on "CarrierClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "DMEClaims_beneficiaryId_lastUpdated_idx"
+    on "DMEClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "HHAClaims_beneficiaryId_lastUpdated_idx"
+    on "HHAClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "HospiceClaims_beneficiaryId_lastUpdated_idx"
+    on "HospiceClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "InpatientClaims_beneficiaryId_lastUpdated_idx"
+    on "InpatientClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "OutpatientClaims_beneficiaryId_lastUpdated_idx"
+    on "OutpatientClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "PartDEvents_beneficiaryId_lastUpdated_idx"
+    on "PartDEvents" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "SNFClaims_beneficiaryId_lastUpdated_idx"
+    on "SNFClaims" ("beneficiaryId", "lastUpdated");
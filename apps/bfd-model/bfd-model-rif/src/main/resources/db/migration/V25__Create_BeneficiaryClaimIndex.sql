@@ -0,0 +1,21 @@
+/*
+ * Creates the "BeneficiaryClaimIndex" table, which holds one narrow row per claim/event, recording
+ * just its beneficiary, type, ID, dates, and load timestamp. The pipeline maintains it in the same
+ * transaction as the claims themselves, so that EOB searches can find, count, and page through a
+ * beneficiary's claims with a single indexed query, rather than one query per claim table.
+ *
+ * The table is new and empty, so its index doesn't need to be created concurrently (unlike V24's).
+ */
+
+create table "BeneficiaryClaimIndex" (
+  "claimType" varchar(10) not null,
+  "claimId" varchar(15) not null,
+  "beneficiaryId" varchar(15) not null,
+  "dateFrom" date not null,
+  "dateThrough" date not null,
+  "lastUpdated" timestamp,
+  constraint "BeneficiaryClaimIndex_pkey" primary key ("claimType", "claimId")
+);
+
+create index "BeneficiaryClaimIndex_beneficiaryId_lastUpdated_idx"
+    on "BeneficiaryClaimIndex" ("beneficiaryId", "lastUpdated");
@@ -0,0 +1,17 @@
+/*
+ * Creates the "ClaimFhirDocuments" table, which holds the gzipped FHIR JSON of each claim/event's
+ * ExplanationOfBenefit, as previously produced by the server's transformers. This allows the server
+ * to write those documents straight into its responses, rather than having to query all of the
+ * claim's lines and transform it again on every request.
+ *
+ * Documents are only valid for the "transformerVersion" (i.e. server build) that produced them, and
+ * the pipeline deletes a claim's document whenever it updates that claim.
+ */
+
+create table "ClaimFhirDocuments" (
+  "claimType" varchar(10) not null,
+  "claimId" varchar(15) not null,
+  "transformerVersion" varchar(64) not null,
+  "document" ${type.bytes} not null,
+  constraint "ClaimFhirDocuments_pkey" primary key ("claimType", "claimId")
+);
@@ -0,0 +1,14 @@
+/*
+ * Creates the "FixupProgress" table, where the pipeline's idle-time fixups (e.g. filling in the
+ * "mbiHash" columns) record how far through their tables they've gotten, so that a restart picks
+ * up where they left off, rather than scanning those tables again from the beginning.
+ */
+
+create table "FixupProgress" (
+  "fixupName" varchar(64) not null,
+  "lastKey" varchar(64),
+  "completed" boolean not null,
+  "rowsFixed" bigint not null,
+  "lastUpdated" timestamp not null,
+  constraint "FixupProgress_pkey" primary key ("fixupName")
+);
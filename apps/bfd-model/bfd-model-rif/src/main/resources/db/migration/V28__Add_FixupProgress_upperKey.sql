@@ -0,0 +1,8 @@
+/*
+ * Adds an "upperKey" column to the "FixupProgress" table, so that each fixup's table can be split
+ * into several key ranges (partitions) that are worked through in parallel, each with its own row.
+ * The "lastKey" column records how far each range has gotten, and "upperKey" where it ends (null
+ * for the last range, which runs to the end of the table).
+ */
+
+alter table "FixupProgress" add column "upperKey" varchar(64);
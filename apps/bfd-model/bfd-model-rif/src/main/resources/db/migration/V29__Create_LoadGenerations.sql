@@ -0,0 +1,19 @@
+/*
+ * Creates the "LoadGenerations" table, a durable marker of how many times the pipeline has changed
+ * the data that the API serves. Every pipeline transaction that writes such data also increments
+ * one of these counters, so the sum of them changes exactly when that data does (and only once it
+ * has been committed), which lets the server tell when its cached resources have gone stale.
+ *
+ * The counter is split across a fixed set of slots, each of which is only ever updated in place, so
+ * that the pipeline's concurrent loader threads don't all have to queue up on the same row lock.
+ */
+
+create table "LoadGenerations" (
+  "slot" integer not null,
+  "generation" bigint not null,
+  constraint "LoadGenerations_pkey" primary key ("slot")
+);
+
+insert into "LoadGenerations" ("slot", "generation") values
+  (0, 0), (1, 0), (2, 0), (3, 0), (4, 0), (5, 0), (6, 0), (7, 0),
+  (8, 0), (9, 0), (10, 0), (11, 0), (12, 0), (13, 0), (14, 0), (15, 0);
@@ -0,0 +1,36 @@
+/*
+ * Adds indexes that cover the EOB searches' ID queries, which select just the IDs of a single
+ * beneficiary's claims/events (to count and page through them, without loading them all). With
+ * these, PostgreSQL can answer those queries from the indexes alone, rather than also having to
+ * visit each matching row in the table.
+ *
+ * The existing single-column "beneficiaryId" indexes are left in place for now: these make them
+ * redundant, but they can only be dropped once these have been built.
+ */
+
+create index ${logic.index-create-concurrently} "CarrierClaims_beneficiaryId_claimId_idx"
+    on "CarrierClaims" ("beneficiaryId", "claimId");
+
+create index ${logic.index-create-concurrently} "DMEClaims_beneficiaryId_claimId_idx"
+    on "DMEClaims" ("beneficiaryId", "claimId");
+
+create index ${logic.index-create-concurrently} "HHAClaims_beneficiaryId_claimId_idx"
+    on "HHAClaims" ("beneficiaryId", "claimId");
+
+create index ${logic.index-create-concurrently} "HospiceClaims_beneficiaryId_claimId_idx"
+    on "HospiceClaims" ("beneficiaryId", "claimId");
+
+create index ${logic.index-create-concurrently} "InpatientClaims_beneficiaryId_claimId_idx"
+    on "InpatientClaims" ("beneficiaryId", "claimId");
+
+create index ${logic.index-create-concurrently} "OutpatientClaims_beneficiaryId_claimId_idx"
+    on "OutpatientClaims" ("beneficiaryId", "claimId");
+
+create index ${logic.index-create-concurrently} "PartDEvents_beneficiaryId_eventId_idx"
+    on "PartDEvents" ("beneficiaryId", "eventId");
+
+create index ${logic.index-create-concurrently} "SNFClaims_beneficiaryId_claimId_idx"
+    on "SNFClaims" ("beneficiaryId", "claimId");
+
+create index ${logic.index-create-concurrently} "BeneficiaryClaimIndex_beneficiaryId_claimType_claimId_idx"
+    on "BeneficiaryClaimIndex" ("beneficiaryId", "claimType", "claimId");
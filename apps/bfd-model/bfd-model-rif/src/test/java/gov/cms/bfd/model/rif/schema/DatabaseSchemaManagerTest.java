@@ -1,10 +1,33 @@
 package gov.cms.bfd.model.rif.schema;
 
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.sql.DataSource;
+import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 /** Unit tests for {@link gov.cms.bfd.model.rif.schema.DatabaseSchemaManager}. */
 public final class DatabaseSchemaManagerTest {
+  /** The number of beneficiaries (each with one of every claim type) to partition the claims of. */
+  private static final int PARTITIONED_BENEFICIARY_COUNT = 50;
+
   /**
    * Verifies that {@link gov.cms.bfd.model.rif.schema.DatabaseSchemaManager} runs correctly against
    * an HSQL database.
@@ -16,4 +39,234 @@ public final class DatabaseSchemaManagerTest {
     // Ensure that this runs without errors.
     DatabaseSchemaManager.createOrUpdateSchema(testDbDataSource);
   }
+
+  /**
+   * Verifies that {@link gov.cms.bfd.model.rif.schema.DatabaseSchemaManager#partitionClaimTables(
+   * DataSource, int)} partitions all of the claim and claim line tables of a migrated PostgreSQL
+   * database, keeps all of their rows, still keeps claim IDs unique and claim lines tied to their
+   * claims, and lets the per-beneficiary queries be pruned to a single partition. This is skipped
+   * for other databases (e.g. HSQL), which don't support partitioning.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void partitionClaimTables() throws SQLException {
+    DataSource testDbDataSource = DatabaseTestHelper.getTestDatabaseAfterClean();
+    try (Connection connection = testDbDataSource.getConnection()) {
+      Assume.assumeTrue(ClaimTablePartitioner.isSupported(connection));
+    }
+    DatabaseSchemaManager.createOrUpdateSchema(testDbDataSource);
+
+    List<String> tableNames = ClaimTablePartitioner.getTableNames();
+    Map<String, Integer> expectedRowCounts = new HashMap<>();
+    try (Connection connection = testDbDataSource.getConnection()) {
+      for (int i = 0; i < PARTITIONED_BENEFICIARY_COUNT; i++) {
+        String beneficiaryId = "" + i;
+        insertRow(
+            connection, "Beneficiaries", Collections.singletonMap("beneficiaryId", beneficiaryId));
+        for (String tableName : tableNames) {
+          Map<String, Object> values = new HashMap<>();
+          if (tableName.endsWith("ClaimLines")) {
+            values.put("parentClaim", beneficiaryId);
+          } else {
+            values.put(tableName.equals("PartDEvents") ? "eventId" : "claimId", beneficiaryId);
+            values.put("beneficiaryId", beneficiaryId);
+          }
+          insertRow(connection, tableName, values);
+        }
+      }
+      for (String tableName : tableNames)
+        expectedRowCounts.put(tableName, countRows(connection, tableName));
+    }
+
+    DatabaseSchemaManager.partitionClaimTables(testDbDataSource, 4);
+    // Verify that running it again (once everything's been partitioned) is harmless.
+    DatabaseSchemaManager.partitionClaimTables(testDbDataSource, 4);
+
+    try (Connection connection = testDbDataSource.getConnection()) {
+      for (String tableName : tableNames) {
+        Assert.assertTrue(tableName, ClaimTablePartitioner.isPartitioned(connection, tableName));
+        Assert.assertEquals(
+            tableName, expectedRowCounts.get(tableName), countRows(connection, tableName));
+      }
+
+      // Each claim table's IDs table should have all of its claim IDs.
+      for (String tableName : tableNames) {
+        if (tableName.endsWith("ClaimLines")) continue;
+        Assert.assertEquals(
+            tableName,
+            expectedRowCounts.get(tableName),
+            countRows(connection, ClaimTablePartitioner.getIdsTableName(tableName)));
+      }
+
+      // Claim IDs should still be unique across beneficiaries, not just within each one.
+      Map<String, Object> duplicateClaim = new HashMap<>();
+      duplicateClaim.put("claimId", "1");
+      duplicateClaim.put("beneficiaryId", "2");
+      assertInsertFails(connection, "CarrierClaims", duplicateClaim);
+
+      // Claim lines should still need to belong to an existing claim.
+      assertInsertFails(
+          connection,
+          "CarrierClaimLines",
+          Collections.singletonMap("parentClaim", "" + PARTITIONED_BENEFICIARY_COUNT));
+
+      // New claims should be added to the IDs table.
+      Map<String, Object> newClaim = new HashMap<>();
+      newClaim.put("claimId", "" + PARTITIONED_BENEFICIARY_COUNT);
+      newClaim.put("beneficiaryId", "1");
+      insertRow(connection, "CarrierClaims", newClaim);
+      insertRow(
+          connection,
+          "CarrierClaimLines",
+          Collections.singletonMap("parentClaim", "" + PARTITIONED_BENEFICIARY_COUNT));
+      Assert.assertEquals(
+          expectedRowCounts.get("CarrierClaims") + 1,
+          countRows(connection, ClaimTablePartitioner.getIdsTableName("CarrierClaims")));
+
+      // The original indexes should still be there, under their original names.
+      Assert.assertTrue(
+          indexExists(connection, "CarrierClaims", "CarrierClaims_beneficiaryId_lastUpdated_idx"));
+
+      // Only the one partition that the beneficiary's claims are in should need to be searched.
+      try (Statement statement = connection.createStatement();
+          ResultSet results =
+              statement.executeQuery(
+                  "explain select * from \"CarrierClaims\" where \"beneficiaryId\" = '1'")) {
+        Set<String> partitionsScanned = new HashSet<>();
+        while (results.next()) {
+          Matcher partitionMatcher =
+              Pattern.compile("CarrierClaims_p[0-9]+").matcher(results.getString(1));
+          while (partitionMatcher.find()) partitionsScanned.add(partitionMatcher.group());
+        }
+        Assert.assertEquals(partitionsScanned.toString(), 1, partitionsScanned.size());
+      }
+    }
+    Assert.assertTrue(DatabaseSchemaManager.isSchemaCurrent(testDbDataSource));
+  }
+
+  /**
+   * Verifies that {@link gov.cms.bfd.model.rif.schema.DatabaseSchemaManager#isSchemaCurrent(
+   * DataSource)} only reports a database's schema as current once it's been fully migrated.
+   */
+  @Test
+  public void isSchemaCurrent() {
+    DataSource testDbDataSource = DatabaseTestHelper.getTestDatabaseAfterClean();
+    Assert.assertFalse(DatabaseSchemaManager.isSchemaCurrent(testDbDataSource));
+
+    DatabaseSchemaManager.createOrUpdateSchema(testDbDataSource);
+    Assert.assertTrue(DatabaseSchemaManager.isSchemaCurrent(testDbDataSource));
+  }
+
+  /**
+   * Inserts a row into the specified table, using the specified values, and a placeholder value of
+   * the appropriate type for each other <code>not null</code> column.
+   *
+   * @param connection the {@link Connection} to use
+   * @param tableName the name of the table to insert into
+   * @param values the values to use for specific columns, by column name
+   * @throws SQLException (indicates test failure)
+   */
+  private static void insertRow(Connection connection, String tableName, Map<String, ?> values)
+      throws SQLException {
+    List<String> columnNames = new ArrayList<>();
+    List<Object> columnValues = new ArrayList<>();
+    try (ResultSet columns = connection.getMetaData().getColumns(null, null, tableName, null)) {
+      while (columns.next()) {
+        String columnName = columns.getString("COLUMN_NAME");
+        Object value = values.get(columnName);
+        if (value == null && columns.getInt("NULLABLE") == DatabaseMetaData.columnNoNulls)
+          value = createPlaceholderValue(columns.getInt("DATA_TYPE"));
+        if (value == null) continue;
+        columnNames.add("\"" + columnName + "\"");
+        columnValues.add(value);
+      }
+    }
+
+    String sql =
+        String.format(
+            "insert into \"%s\" (%s) values (%s)",
+            tableName,
+            String.join(", ", columnNames),
+            String.join(", ", Collections.nCopies(columnNames.size(), "?")));
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      for (int i = 0; i < columnValues.size(); i++) statement.setObject(i + 1, columnValues.get(i));
+      statement.executeUpdate();
+    }
+  }
+
+  /**
+   * Verifies that {@link #insertRow(Connection, String, Map)} fails for the specified row.
+   *
+   * @param connection the {@link Connection} to use, which must be in auto-commit mode
+   * @param tableName the name of the table to insert into
+   * @param values the values to use for specific columns, by column name
+   */
+  private static void assertInsertFails(
+      Connection connection, String tableName, Map<String, ?> values) {
+    try {
+      insertRow(connection, tableName, values);
+      Assert.fail("Insert into " + tableName + " should have failed: " + values);
+    } catch (SQLException e) {
+      // This is expected.
+    }
+  }
+
+  /**
+   * @param dataType the {@link Types} constant for the column to create a value for
+   * @return a placeholder value for a column of the specified type
+   */
+  private static Object createPlaceholderValue(int dataType) {
+    switch (dataType) {
+      case Types.CHAR:
+      case Types.VARCHAR:
+        return "1";
+      case Types.DATE:
+        return Date.valueOf("2020-01-01");
+      case Types.TIMESTAMP:
+        return Timestamp.valueOf("2020-01-01 00:00:00");
+      case Types.BIT:
+      case Types.BOOLEAN:
+        return Boolean.FALSE;
+      default:
+        return 1;
+    }
+  }
+
+  /**
+   * @param connection the {@link Connection} to use
+   * @param tableName the name of the table to count the rows of
+   * @return the number of rows in the specified table
+   * @throws SQLException (indicates test failure)
+   */
+  private static int countRows(Connection connection, String tableName) throws SQLException {
+    try (Statement statement = connection.createStatement();
+        ResultSet results =
+            statement.executeQuery(
+                "select count(*) from " + ClaimTablePartitioner.quote(tableName))) {
+      results.next();
+      return results.getInt(1);
+    }
+  }
+
+  /**
+   * @param connection the {@link Connection} to use
+   * @param tableName the name of the table to check
+   * @param indexName the name of the index to look for
+   * @return <code>true</code> if the specified table has the specified index, <code>false</code> if
+   *     not
+   * @throws SQLException (indicates test failure)
+   */
+  private static boolean indexExists(Connection connection, String tableName, String indexName)
+      throws SQLException {
+    try (PreparedStatement statement =
+        connection.prepareStatement(
+            "select 1 from pg_indexes where tablename = ? and indexname = ?")) {
+      statement.setString(1, tableName);
+      statement.setString(2, indexName);
+      try (ResultSet results = statement.executeQuery()) {
+        return results.next();
+      }
+    }
+  }
 }
@@ -0,0 +1,84 @@
+package gov.cms.bfd.pipeline.app;
+
+import com.zaxxer.hikari.HikariDataSource;
+import gov.cms.bfd.model.rif.schema.DatabaseSchemaManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A separate entry point for the pipeline application, which hash-partitions the database's claim
+ * and claim line tables (see {@link DatabaseSchemaManager#partitionClaimTables(
+ * javax.sql.DataSource, int)}) and then exits. This is never done automatically: it copies every
+ * claim row, so it should be run deliberately, in place of {@link S3ToDatabaseLoadApp}, while the
+ * regular pipeline is stopped. The API servers can keep running throughout. Partitioning also has
+ * ongoing costs for loads and some queries, which are described there.
+ *
+ * <p>This accepts the same environment variables for its database configuration as {@link
+ * S3ToDatabaseLoadApp} does (see {@link AppConfiguration}), and copies {@link
+ * AppConfiguration#ENV_VAR_KEY_LOADER_THREADS} partitions at a time.
+ */
+public final class ClaimTablePartitioningApp {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClaimTablePartitioningApp.class);
+
+  /**
+   * This method is the one that will get called when users launch the application from the command
+   * line.
+   *
+   * @param args (should be empty, as this application accepts configuration via environment
+   *     variables)
+   */
+  public static void main(String[] args) {
+    String databaseUrl =
+        readRequiredEnvironmentVariable(AppConfiguration.ENV_VAR_KEY_DATABASE_URL, false);
+    String databaseUsername =
+        readRequiredEnvironmentVariable(AppConfiguration.ENV_VAR_KEY_DATABASE_USERNAME, true);
+    String databasePassword =
+        readRequiredEnvironmentVariable(AppConfiguration.ENV_VAR_KEY_DATABASE_PASSWORD, true);
+    String threadsText =
+        readRequiredEnvironmentVariable(AppConfiguration.ENV_VAR_KEY_LOADER_THREADS, false);
+    int threads;
+    try {
+      threads = Integer.parseInt(threadsText);
+    } catch (NumberFormatException e) {
+      threads = -1;
+    }
+    if (threads < 1) {
+      System.err.println(
+          String.format(
+              "Invalid value for configuration environment variable '%s': '%s'",
+              AppConfiguration.ENV_VAR_KEY_LOADER_THREADS, threadsText));
+      System.exit(S3ToDatabaseLoadApp.EXIT_CODE_BAD_CONFIG);
+    }
+
+    // One connection per copying thread, plus the one that coordinates them.
+    try (HikariDataSource dataSource = new HikariDataSource()) {
+      dataSource.setMaximumPoolSize(threads + 1);
+      dataSource.setJdbcUrl(databaseUrl);
+      dataSource.setUsername(databaseUsername);
+      dataSource.setPassword(databasePassword);
+
+      LOGGER.info("Partitioning claim tables, with {} threads...", threads);
+      DatabaseSchemaManager.partitionClaimTables(dataSource, threads);
+      LOGGER.info("Partitioned claim tables.");
+    }
+  }
+
+  /**
+   * Reads the specified environment variable, or exits with {@link
+   * S3ToDatabaseLoadApp#EXIT_CODE_BAD_CONFIG} if it's missing.
+   *
+   * @param name the name of the environment variable to read
+   * @param emptyAllowed <code>true</code> if the environment variable may be set to an empty value,
+   *     <code>false</code> if not
+   * @return the value of the specified environment variable
+   */
+  private static String readRequiredEnvironmentVariable(String name, boolean emptyAllowed) {
+    String value = System.getenv(name);
+    if (value == null || (!emptyAllowed && value.isEmpty())) {
+      System.err.println(
+          String.format("Missing value for configuration environment variable '%s'.", name));
+      System.exit(S3ToDatabaseLoadApp.EXIT_CODE_BAD_CONFIG);
+    }
+    return value;
+  }
+}
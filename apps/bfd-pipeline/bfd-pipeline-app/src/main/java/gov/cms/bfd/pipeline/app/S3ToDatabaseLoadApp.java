@@ -17,6 +17,7 @@ import gov.cms.bfd.pipeline.rif.load.RifRecordLoadResult;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -146,10 +147,13 @@ public final class S3ToDatabaseLoadApp {
             handleUncaughtException(error);
           }
 
-          /** Called when no RIF files are available to process. */
+          /**
+           * Called when no RIF files are available to process. The idle tasks will yield as soon
+           * as new RIF files arrive.
+           */
           @Override
-          public void noDataAvailable() {
-            rifLoader.doIdleTask();
+          public void noDataAvailable(BooleanSupplier newDataAvailable) {
+            rifLoader.doIdleTask(newDataAvailable);
             DataSetMonitorListener.super.noDataAvailable();
           }
         };
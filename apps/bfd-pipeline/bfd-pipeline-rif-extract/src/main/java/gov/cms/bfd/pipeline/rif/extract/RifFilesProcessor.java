@@ -40,6 +40,7 @@ import gov.cms.bfd.pipeline.rif.extract.exceptions.UnsupportedRifFileTypeExcepti
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.function.BiFunction;
@@ -70,41 +71,72 @@ public final class RifFilesProcessor {
 
     CSVParser parser = RifParsingUtils.createCsvParser(file);
 
+    /*
+     * The file's header is only checked once, up front, and then each record's columns are read by
+     * index, which is much faster than looking each one up by name.
+     */
+    Map<String, Integer> headerMap = parser.getHeaderMap();
+
     boolean isGrouped;
     BiFunction<RifFileEvent, List<CSVRecord>, RifRecordEvent<?>> recordParser;
     if (file.getFileType() == RifFileType.BENEFICIARY) {
       isGrouped = false;
-      recordParser = RifFilesProcessor::buildBeneficiaryEvent;
+      int[] columnIndexes = BeneficiaryParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) -> buildBeneficiaryEvent(fileEvent, csvRecords, columnIndexes);
     } else if (file.getFileType() == RifFileType.BENEFICIARY_HISTORY) {
       isGrouped = false;
-      recordParser = RifFilesProcessor::buildBeneficiaryHistoryEvent;
+      int[] columnIndexes = BeneficiaryHistoryParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) ->
+              buildBeneficiaryHistoryEvent(fileEvent, csvRecords, columnIndexes);
     } else if (file.getFileType() == RifFileType.MEDICARE_BENEFICIARY_ID_HISTORY) {
       isGrouped = false;
-      recordParser = RifFilesProcessor::buildMedicareBeneficiaryIdHistoryEvent;
+      int[] columnIndexes = MedicareBeneficiaryIdHistoryParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) ->
+              buildMedicareBeneficiaryIdHistoryEvent(fileEvent, csvRecords, columnIndexes);
     } else if (file.getFileType() == RifFileType.PDE) {
       isGrouped = false;
-      recordParser = RifFilesProcessor::buildPartDEvent;
+      int[] columnIndexes = PartDEventParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) -> buildPartDEvent(fileEvent, csvRecords, columnIndexes);
     } else if (file.getFileType() == RifFileType.CARRIER) {
       isGrouped = true;
-      recordParser = RifFilesProcessor::buildCarrierClaimEvent;
+      int[] columnIndexes = CarrierClaimParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) -> buildCarrierClaimEvent(fileEvent, csvRecords, columnIndexes);
     } else if (file.getFileType() == RifFileType.INPATIENT) {
       isGrouped = true;
-      recordParser = RifFilesProcessor::buildInpatientClaimEvent;
+      int[] columnIndexes = InpatientClaimParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) -> buildInpatientClaimEvent(fileEvent, csvRecords, columnIndexes);
     } else if (file.getFileType() == RifFileType.OUTPATIENT) {
       isGrouped = true;
-      recordParser = RifFilesProcessor::buildOutpatientClaimEvent;
+      int[] columnIndexes = OutpatientClaimParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) ->
+              buildOutpatientClaimEvent(fileEvent, csvRecords, columnIndexes);
     } else if (file.getFileType() == RifFileType.SNF) {
       isGrouped = true;
-      recordParser = RifFilesProcessor::buildSNFClaimEvent;
+      int[] columnIndexes = SNFClaimParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) -> buildSNFClaimEvent(fileEvent, csvRecords, columnIndexes);
     } else if (file.getFileType() == RifFileType.HOSPICE) {
       isGrouped = true;
-      recordParser = RifFilesProcessor::buildHospiceClaimEvent;
+      int[] columnIndexes = HospiceClaimParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) -> buildHospiceClaimEvent(fileEvent, csvRecords, columnIndexes);
     } else if (file.getFileType() == RifFileType.HHA) {
       isGrouped = true;
-      recordParser = RifFilesProcessor::buildHHAClaimEvent;
+      int[] columnIndexes = HHAClaimParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) -> buildHHAClaimEvent(fileEvent, csvRecords, columnIndexes);
     } else if (file.getFileType() == RifFileType.DME) {
       isGrouped = true;
-      recordParser = RifFilesProcessor::buildDMEClaimEvent;
+      int[] columnIndexes = DMEClaimParser.computeColumnIndexes(headerMap);
+      recordParser =
+          (fileEvent, csvRecords) -> buildDMEClaimEvent(fileEvent, csvRecords, columnIndexes);
     } else {
       throw new UnsupportedRifFileTypeException("Unsupported file type:" + file.getFileType());
     }
@@ -162,17 +194,18 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFileEvent} being processed
    * @param csvRecords the {@link CSVRecord} to be mapped (in a single-element {@link List}), which
    *     must be from a {@link RifFileType#BENEFICIARY} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<Beneficiary> buildBeneficiaryEvent(
-      RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (csvRecords.size() != 1) throw new BadCodeMonkeyException();
     CSVRecord csvRecord = csvRecords.get(0);
 
     if (LOGGER.isTraceEnabled()) LOGGER.trace(csvRecord.toString());
 
     RecordAction recordAction = RecordAction.match(csvRecord.get("DML_IND"));
-    Beneficiary beneficiaryRow = BeneficiaryParser.parseRif(csvRecords);
+    Beneficiary beneficiaryRow = BeneficiaryParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<Beneficiary>(fileEvent, recordAction, beneficiaryRow);
   }
 
@@ -180,17 +213,19 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFileEvent} being processed
    * @param csvRecords the {@link CSVRecord} to be mapped (in a single-element {@link List}), which
    *     must be from a {@link RifFileType#BENEFICIARY_HISTORY} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<BeneficiaryHistory> buildBeneficiaryHistoryEvent(
-      RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (csvRecords.size() != 1) throw new BadCodeMonkeyException();
     CSVRecord csvRecord = csvRecords.get(0);
 
     if (LOGGER.isTraceEnabled()) LOGGER.trace(csvRecord.toString());
 
     RecordAction recordAction = RecordAction.match(csvRecord.get("DML_IND"));
-    BeneficiaryHistory beneficiaryHistoryRow = BeneficiaryHistoryParser.parseRif(csvRecords);
+    BeneficiaryHistory beneficiaryHistoryRow =
+        BeneficiaryHistoryParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<BeneficiaryHistory>(fileEvent, recordAction, beneficiaryHistoryRow);
   }
 
@@ -198,10 +233,12 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFileEvent} being processed
    * @param csvRecords the {@link CSVRecord} to be mapped (in a single-element {@link List}), which
    *     must be from a {@link RifFileType#Medicare_Beneficiary_Id_History} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<MedicareBeneficiaryIdHistory>
-      buildMedicareBeneficiaryIdHistoryEvent(RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      buildMedicareBeneficiaryIdHistoryEvent(
+          RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (csvRecords.size() != 1) throw new BadCodeMonkeyException();
     CSVRecord csvRecord = csvRecords.get(0);
 
@@ -209,7 +246,7 @@ public final class RifFilesProcessor {
 
     RecordAction recordAction = RecordAction.INSERT;
     MedicareBeneficiaryIdHistory medicareBeneficiaryIdHistoryRow =
-        MedicareBeneficiaryIdHistoryParser.parseRif(csvRecords);
+        MedicareBeneficiaryIdHistoryParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<MedicareBeneficiaryIdHistory>(
         fileEvent, recordAction, medicareBeneficiaryIdHistoryRow);
   }
@@ -218,17 +255,18 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFilesEvent} being processed
    * @param csvRecords the {@link CSVRecord}s to be mapped, which must be from a {@link
    *     RifFileType#PDE} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<PartDEvent> buildPartDEvent(
-      RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (csvRecords.size() != 1) throw new BadCodeMonkeyException();
     if (LOGGER.isTraceEnabled()) LOGGER.trace(csvRecords.toString());
 
     CSVRecord csvRecord = csvRecords.get(0);
 
     RecordAction recordAction = RecordAction.match(csvRecord.get("DML_IND"));
-    PartDEvent partDEvent = PartDEventParser.parseRif(csvRecords);
+    PartDEvent partDEvent = PartDEventParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<PartDEvent>(fileEvent, recordAction, partDEvent);
   }
 
@@ -236,16 +274,17 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFileEvent} being processed that is being processed
    * @param csvRecords the {@link CSVRecord}s to be mapped, which must be from a {@link
    *     RifFileType#INPATIENT} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<InpatientClaim> buildInpatientClaimEvent(
-      RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (LOGGER.isTraceEnabled()) LOGGER.trace(csvRecords.toString());
 
     CSVRecord firstCsvRecord = csvRecords.get(0);
 
     RecordAction recordAction = RecordAction.match(firstCsvRecord.get("DML_IND"));
-    InpatientClaim claim = InpatientClaimParser.parseRif(csvRecords);
+    InpatientClaim claim = InpatientClaimParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<InpatientClaim>(fileEvent, recordAction, claim);
   }
 
@@ -253,16 +292,17 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFileEvent} being processed that is being processed
    * @param csvRecords the {@link CSVRecord}s to be mapped, which must be from a {@link
    *     RifFileType#OUTPATIENT} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<OutpatientClaim> buildOutpatientClaimEvent(
-      RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (LOGGER.isTraceEnabled()) LOGGER.trace(csvRecords.toString());
 
     CSVRecord firstCsvRecord = csvRecords.get(0);
 
     RecordAction recordAction = RecordAction.match(firstCsvRecord.get("DML_IND"));
-    OutpatientClaim claim = OutpatientClaimParser.parseRif(csvRecords);
+    OutpatientClaim claim = OutpatientClaimParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<OutpatientClaim>(fileEvent, recordAction, claim);
   }
 
@@ -270,16 +310,17 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFileEvent} being processed
    * @param csvRecords the {@link CSVRecord}s to be mapped, which must be from a {@link
    *     RifFileType#CARRIER} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<CarrierClaim> buildCarrierClaimEvent(
-      RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (LOGGER.isTraceEnabled()) LOGGER.trace(csvRecords.toString());
 
     CSVRecord firstCsvRecord = csvRecords.get(0);
 
     RecordAction recordAction = RecordAction.match(firstCsvRecord.get("DML_IND"));
-    CarrierClaim claim = CarrierClaimParser.parseRif(csvRecords);
+    CarrierClaim claim = CarrierClaimParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<CarrierClaim>(fileEvent, recordAction, claim);
   }
 
@@ -287,16 +328,17 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFileEvent} being processed
    * @param csvRecords the {@link CSVRecord}s to be mapped, which must be from a {@link
    *     RifFileType#SNF} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<SNFClaim> buildSNFClaimEvent(
-      RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (LOGGER.isTraceEnabled()) LOGGER.trace(csvRecords.toString());
 
     CSVRecord firstCsvRecord = csvRecords.get(0);
 
     RecordAction recordAction = RecordAction.match(firstCsvRecord.get("DML_IND"));
-    SNFClaim claim = SNFClaimParser.parseRif(csvRecords);
+    SNFClaim claim = SNFClaimParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<SNFClaim>(fileEvent, recordAction, claim);
   }
 
@@ -304,16 +346,17 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFileEvent} being processed
    * @param csvRecords the {@link CSVRecord}s to be mapped, which must be from a {@link
    *     RifFileType#HOSPICE} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<HospiceClaim> buildHospiceClaimEvent(
-      RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (LOGGER.isTraceEnabled()) LOGGER.trace(csvRecords.toString());
 
     CSVRecord firstCsvRecord = csvRecords.get(0);
 
     RecordAction recordAction = RecordAction.match(firstCsvRecord.get("DML_IND"));
-    HospiceClaim claim = HospiceClaimParser.parseRif(csvRecords);
+    HospiceClaim claim = HospiceClaimParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<HospiceClaim>(fileEvent, recordAction, claim);
   }
 
@@ -321,16 +364,17 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFileEvent} being processed
    * @param csvRecords the {@link CSVRecord}s to be mapped, which must be from a {@link
    *     RifFileType#HHA} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<HHAClaim> buildHHAClaimEvent(
-      RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (LOGGER.isTraceEnabled()) LOGGER.trace(csvRecords.toString());
 
     CSVRecord firstCsvRecord = csvRecords.get(0);
 
     RecordAction recordAction = RecordAction.match(firstCsvRecord.get("DML_IND"));
-    HHAClaim claim = HHAClaimParser.parseRif(csvRecords);
+    HHAClaim claim = HHAClaimParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<HHAClaim>(fileEvent, recordAction, claim);
   }
 
@@ -338,16 +382,17 @@ public final class RifFilesProcessor {
    * @param fileEvent the {@link RifFileEvent} being processed
    * @param csvRecords the {@link CSVRecord}s to be mapped, which must be from a {@link
    *     RifFileType#DME} {@link RifFile}
+   * @param columnIndexes the index of each RIF column in the file being processed
    * @return a {@link RifRecordEvent} built from the specified {@link CSVRecord}s
    */
   private static RifRecordEvent<DMEClaim> buildDMEClaimEvent(
-      RifFileEvent fileEvent, List<CSVRecord> csvRecords) {
+      RifFileEvent fileEvent, List<CSVRecord> csvRecords, int[] columnIndexes) {
     if (LOGGER.isTraceEnabled()) LOGGER.trace(csvRecords.toString());
 
     CSVRecord firstCsvRecord = csvRecords.get(0);
 
     RecordAction recordAction = RecordAction.match(firstCsvRecord.get("DML_IND"));
-    DMEClaim claim = DMEClaimParser.parseRif(csvRecords);
+    DMEClaim claim = DMEClaimParser.parseRif(csvRecords, columnIndexes);
     return new RifRecordEvent<DMEClaim>(fileEvent, recordAction, claim);
   }
 }
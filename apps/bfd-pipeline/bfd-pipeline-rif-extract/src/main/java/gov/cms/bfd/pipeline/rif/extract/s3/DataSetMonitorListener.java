@@ -1,6 +1,7 @@
 package gov.cms.bfd.pipeline.rif.extract.s3;
 
 import gov.cms.bfd.model.rif.RifFilesEvent;
+import java.util.function.BooleanSupplier;
 
 /**
  * Implementations of this event/callback interface can receive the events fired by a {@link
@@ -15,6 +16,23 @@ public interface DataSetMonitorListener {
     // Default is a no-op, as this is really only used in tests.
   }
 
+  /**
+   * This callback will be fired when the {@link DataSetMonitorWorker} has checked the S3 bucket for
+   * a new data set, and not found one. Implementations that use this idle time for long-running
+   * work should poll the specified {@link BooleanSupplier} as they go, and return promptly once it
+   * reports that a new data set has arrived.
+   *
+   * <p>By default, this just calls {@link #noDataAvailable()}.
+   *
+   * @param newDataAvailable re-checks the S3 bucket, and returns <code>true</code> if a new data set
+   *     has arrived since (this is relatively expensive, so shouldn't be called more than every few
+   *     seconds). Any exceptions that it throws (e.g. for an invalid manifest) should be allowed to
+   *     propagate out of this method.
+   */
+  default void noDataAvailable(BooleanSupplier newDataAvailable) {
+    noDataAvailable();
+  }
+
   /**
    * This callback will be fired when a new {@link RifFilesEvent} data set is available for
    * processing. It's this method's responsibility to actually <em>do</em> that processing,
@@ -113,7 +113,16 @@ public final class DataSetMonitorWorker implements Runnable {
     // If no manifest was found, we're done (until next time).
     if (dataSetQueue.isEmpty()) {
       LOGGER.debug(LOG_MESSAGE_NO_DATA_SETS);
-      listener.noDataAvailable();
+      /*
+       * Any errors from re-checking S3 (e.g. for an invalid manifest) aren't handled here: they're
+       * bubbled up through the listener and out of this worker, just as they are for the check
+       * above.
+       */
+      listener.noDataAvailable(
+          () -> {
+            dataSetQueue.updatePendingDataSets();
+            return !dataSetQueue.isEmpty();
+          });
       return;
     }
 
@@ -0,0 +1,98 @@
+package gov.cms.bfd.pipeline.rif.extract;
+
+import gov.cms.bfd.model.rif.CarrierClaim;
+import gov.cms.bfd.model.rif.CarrierClaimColumn;
+import gov.cms.bfd.model.rif.CarrierClaimParser;
+import gov.cms.bfd.model.rif.parse.RifParsingUtils;
+import gov.cms.bfd.model.rif.samples.StaticRifResource;
+import java.io.IOException;
+import java.util.List;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A rough benchmark that compares reading every RIF column from each {@link CSVRecord} by name
+ * (which requires a header map lookup per column) against reading them by the precomputed indexes
+ * from {@link CarrierClaimParser#computeColumnIndexes(java.util.Map)}, and also times the full
+ * generated {@link CarrierClaimParser#parseRif(List, int[])}, logging the average latency of each.
+ */
+public final class RifFilesProcessorBenchmarkIT {
+  private static final Logger LOGGER = LoggerFactory.getLogger(RifFilesProcessorBenchmarkIT.class);
+
+  /** The number of times to read the claim for each run, after a single warm-up run. */
+  private static final int ITERATIONS = 100000;
+
+  /**
+   * Runs the benchmark for {@link StaticRifResource#SAMPLE_A_CARRIER}.
+   *
+   * @throws IOException (indicates test failure)
+   */
+  @Test
+  public void compareNameAndIndexColumnAccess() throws IOException {
+    List<CSVRecord> csvRecords;
+    int[] columnIndexes;
+    try (CSVParser parser =
+        RifParsingUtils.createCsvParser(StaticRifResource.SAMPLE_A_CARRIER.toRifFile())) {
+      columnIndexes = CarrierClaimParser.computeColumnIndexes(parser.getHeaderMap());
+      csvRecords = parser.getRecords();
+    }
+    Assert.assertFalse(csvRecords.isEmpty());
+
+    // Warm up.
+    long checksum = readByName(csvRecords) + readByIndex(csvRecords, columnIndexes);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) checksum += readByName(csvRecords);
+    long byNameNanos = (System.nanoTime() - start) / ITERATIONS;
+
+    start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) checksum += readByIndex(csvRecords, columnIndexes);
+    long byIndexNanos = (System.nanoTime() - start) / ITERATIONS;
+
+    for (int i = 0; i < ITERATIONS; i++) CarrierClaimParser.parseRif(csvRecords, columnIndexes);
+    start = System.nanoTime();
+    CarrierClaim claim = null;
+    for (int i = 0; i < ITERATIONS; i++)
+      claim = CarrierClaimParser.parseRif(csvRecords, columnIndexes);
+    long parseNanos = (System.nanoTime() - start) / ITERATIONS;
+    Assert.assertEquals(csvRecords.size(), claim.getLines().size());
+
+    LOGGER.info(
+        "Reading {} columns from {} records: by name took {} ns/claim; by index took {} ns/claim;"
+            + " full parse took {} ns/claim (checksum: {}).",
+        CarrierClaimColumn.values().length,
+        csvRecords.size(),
+        byNameNanos,
+        byIndexNanos,
+        parseNanos,
+        checksum);
+  }
+
+  /**
+   * @param csvRecords the {@link CSVRecord}s to read
+   * @return the total length of every column value, so that the reads can't be optimized away
+   */
+  private static long readByName(List<CSVRecord> csvRecords) {
+    long totalLength = 0;
+    for (CSVRecord csvRecord : csvRecords)
+      for (CarrierClaimColumn column : CarrierClaimColumn.values())
+        totalLength += csvRecord.get(column).length();
+    return totalLength;
+  }
+
+  /**
+   * @param csvRecords the {@link CSVRecord}s to read
+   * @param columnIndexes the index of each RIF column in the records' file
+   * @return the total length of every column value, so that the reads can't be optimized away
+   */
+  private static long readByIndex(List<CSVRecord> csvRecords, int[] columnIndexes) {
+    long totalLength = 0;
+    for (CSVRecord csvRecord : csvRecords)
+      for (int columnIndex : columnIndexes) totalLength += csvRecord.get(columnIndex).length();
+    return totalLength;
+  }
+}
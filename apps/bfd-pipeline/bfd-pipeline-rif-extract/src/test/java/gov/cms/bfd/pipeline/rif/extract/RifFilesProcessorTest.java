@@ -324,7 +324,7 @@ public final class RifFilesProcessorTest {
     Assert.assertEquals("61026", claimGroup.getCarrierNumber());
     Assert.assertEquals("1", claimGroup.getPaymentDenialCode());
     Assert.assertEquals(new BigDecimal("199.99"), claimGroup.getPaymentAmount());
-    Assert.assertEquals(new BigDecimal("0"), claimGroup.getPrimaryPayerPaidAmount());
+    Assert.assertEquals(new BigDecimal("0.00"), claimGroup.getPrimaryPayerPaidAmount());
     Assert.assertEquals("1234534", claimGroup.getReferringPhysicianUpin().get());
     Assert.assertEquals("8765676", claimGroup.getReferringPhysicianNpi().get());
     Assert.assertEquals(new Character('A'), claimGroup.getProviderAssignmentIndicator().get());
@@ -374,14 +374,14 @@ public final class RifFilesProcessorTest {
     Assert.assertTrue(claimLine.getHcpcsInitialModifierCode().isPresent());
     Assert.assertFalse(claimLine.getHcpcsSecondModifierCode().isPresent());
     Assert.assertEquals("T2D", claimLine.getBetosCode().get());
-    Assert.assertEquals(new BigDecimal("37.5"), claimLine.getPaymentAmount());
-    Assert.assertEquals(new BigDecimal("0"), claimLine.getBeneficiaryPaymentAmount());
-    Assert.assertEquals(new BigDecimal("37.5"), claimLine.getProviderPaymentAmount());
-    Assert.assertEquals(new BigDecimal("0"), claimLine.getBeneficiaryPartBDeductAmount());
+    Assert.assertEquals(new BigDecimal("37.50"), claimLine.getPaymentAmount());
+    Assert.assertEquals(new BigDecimal("0.00"), claimLine.getBeneficiaryPaymentAmount());
+    Assert.assertEquals(new BigDecimal("37.50"), claimLine.getProviderPaymentAmount());
+    Assert.assertEquals(new BigDecimal("0.00"), claimLine.getBeneficiaryPartBDeductAmount());
     Assert.assertTrue(claimLine.getPrimaryPayerCode().isPresent());
-    Assert.assertEquals(new BigDecimal("0"), claimLine.getPrimaryPayerPaidAmount());
+    Assert.assertEquals(new BigDecimal("0.00"), claimLine.getPrimaryPayerPaidAmount());
     Assert.assertEquals(new BigDecimal("9.57"), claimLine.getCoinsuranceAmount());
-    Assert.assertEquals(new BigDecimal("75"), claimLine.getSubmittedChargeAmount());
+    Assert.assertEquals(new BigDecimal("75.00"), claimLine.getSubmittedChargeAmount());
     Assert.assertEquals(new BigDecimal("47.84"), claimLine.getAllowedChargeAmount());
     Assert.assertEquals("A", claimLine.getProcessingIndicatorCode().get());
     Assert.assertEquals(new Character('0'), claimLine.getPaymentCode().get());
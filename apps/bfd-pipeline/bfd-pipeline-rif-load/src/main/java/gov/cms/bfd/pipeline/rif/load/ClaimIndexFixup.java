@@ -0,0 +1,128 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import gov.cms.bfd.model.rif.BeneficiaryClaimIndex;
+import gov.cms.bfd.model.rif.RifFileType;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link KeysetFixup} that backfills the {@link BeneficiaryClaimIndex} entries for a claim/event
+ * table's rows, for the claims/events that were loaded before that table was added.
+ */
+final class ClaimIndexFixup implements KeysetFixup {
+  private final RifFileType claimType;
+  private final String tableName;
+  private final String keyColumn;
+  private final String dateFromColumn;
+  private final String dateThroughColumn;
+
+  /**
+   * Constructs a new {@link ClaimIndexFixup}.
+   *
+   * @param claimType the {@link RifFileType} of the claims/events in the table
+   * @param tableName the value to use for {@link #getTableName()}
+   * @param keyColumn the value to use for {@link #getKeyColumn()}
+   * @param dateFromColumn the column to use for {@link BeneficiaryClaimIndex#getDateFrom()}
+   * @param dateThroughColumn the column to use for {@link BeneficiaryClaimIndex#getDateThrough()}
+   */
+  ClaimIndexFixup(
+      RifFileType claimType,
+      String tableName,
+      String keyColumn,
+      String dateFromColumn,
+      String dateThroughColumn) {
+    this.claimType = claimType;
+    this.tableName = tableName;
+    this.keyColumn = keyColumn;
+    this.dateFromColumn = dateFromColumn;
+    this.dateThroughColumn = dateThroughColumn;
+  }
+
+  /**
+   * @return a {@link ClaimIndexFixup} for each of the claim/event tables, matching the entries
+   *     created by {@link BeneficiaryClaimIndex#from(Object)}
+   */
+  static List<ClaimIndexFixup> forAllClaimTypes() {
+    return Arrays.asList(
+        new ClaimIndexFixup(
+            RifFileType.CARRIER, "CarrierClaims", "claimId", "dateFrom", "dateThrough"),
+        new ClaimIndexFixup(RifFileType.DME, "DMEClaims", "claimId", "dateFrom", "dateThrough"),
+        new ClaimIndexFixup(RifFileType.HHA, "HHAClaims", "claimId", "dateFrom", "dateThrough"),
+        new ClaimIndexFixup(
+            RifFileType.HOSPICE, "HospiceClaims", "claimId", "dateFrom", "dateThrough"),
+        new ClaimIndexFixup(
+            RifFileType.INPATIENT, "InpatientClaims", "claimId", "dateFrom", "dateThrough"),
+        new ClaimIndexFixup(
+            RifFileType.OUTPATIENT, "OutpatientClaims", "claimId", "dateFrom", "dateThrough"),
+        new ClaimIndexFixup(
+            RifFileType.PDE,
+            "PartDEvents",
+            "eventId",
+            "prescriptionFillDate",
+            "prescriptionFillDate"),
+        new ClaimIndexFixup(RifFileType.SNF, "SNFClaims", "claimId", "dateFrom", "dateThrough"));
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getName() */
+  @Override
+  public String getName() {
+    return tableName + ".claimIndex";
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getTableName() */
+  @Override
+  public String getTableName() {
+    return tableName;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getKeyColumn() */
+  @Override
+  public String getKeyColumn() {
+    return keyColumn;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#hasTextKey() */
+  @Override
+  public boolean hasTextKey() {
+    return true;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getColumns() */
+  @Override
+  public List<String> getColumns() {
+    return Arrays.asList("beneficiaryId", dateFromColumn, dateThroughColumn, "lastUpdated");
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getCondition() */
+  @Override
+  public String getCondition() {
+    return String.format(
+        "not exists (select 1 from \"BeneficiaryClaimIndex\" i where i.\"claimType\" = '%s'"
+            + " and i.\"claimId\" = \"%s\".\"%s\")",
+        claimType.name(), tableName, keyColumn);
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getUpdateSql() */
+  @Override
+  public String getUpdateSql() {
+    return "insert into \"BeneficiaryClaimIndex\" (\"claimType\", \"claimId\", \"beneficiaryId\","
+        + " \"dateFrom\", \"dateThrough\", \"lastUpdated\") values (?, ?, ?, ?, ?, ?)";
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#computeUpdate(java.lang.Object[]) */
+  @Override
+  public Object[] computeUpdate(Object[] row) {
+    return new Object[] {claimType.name(), row[0], row[1], row[2], row[3], row[4]};
+  }
+
+  /**
+   * The server only searches the {@link BeneficiaryClaimIndex} once this backfill is complete, so
+   * filling it in doesn't change any of the data that's served.
+   *
+   * @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#isServedData()
+   */
+  @Override
+  public boolean isServedData() {
+    return false;
+  }
+}
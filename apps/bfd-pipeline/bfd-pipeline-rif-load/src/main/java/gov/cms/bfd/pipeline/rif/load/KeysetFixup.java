@@ -0,0 +1,85 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import java.util.List;
+
+/**
+ * Describes a fixup (or backfill) of a single table's rows, e.g. filling in a newly added derived
+ * column. These are registered with a {@link KeysetFixupEngine}, which splits the table's key
+ * range into partitions and runs a {@link KeysetFixupRunner} for each, walking them in primary key
+ * order, one batch of keys at a time, so that each batch only needs an index range scan, and so
+ * that their progress can be saved and resumed.
+ */
+public interface KeysetFixup {
+  /**
+   * @return the unique name of this fixup, which its progress is saved under, and so must not
+   *     change once it's been run (at most 60 characters)
+   */
+  String getName();
+
+  /** @return the name of the table to fix up */
+  String getTableName();
+
+  /**
+   * @return the name of the table's (single-column) primary key, which its rows will be walked in
+   *     the order of
+   */
+  String getKeyColumn();
+
+  /**
+   * @return <code>true</code> if {@link #getKeyColumn()} is a text (e.g. <code>varchar</code>)
+   *     column, <code>false</code> if it's a <code>bigint</code> column
+   */
+  boolean hasTextKey();
+
+  /**
+   * @return the {@link #getKeyColumn()} value (as text) that this fixup should start after, or
+   *     <code>null</code> to start at the beginning of the table
+   */
+  default String getKeyRangeStart() {
+    return null;
+  }
+
+  /**
+   * @return the last {@link #getKeyColumn()} value (as text) that this fixup should include, or
+   *     <code>null</code> to run through to the end of the table
+   */
+  default String getKeyRangeEnd() {
+    return null;
+  }
+
+  /**
+   * @return the names of the (other) columns that {@link #computeUpdate(Object[])} needs to read
+   */
+  List<String> getColumns();
+
+  /**
+   * @return the SQL condition that identifies the rows that need to be fixed up, e.g. <code>
+   *     "mbiHash" is null</code>
+   */
+  String getCondition();
+
+  /**
+   * @return the parameterized SQL statement that will fix up a single row, with its parameters as
+   *     returned by {@link #computeUpdate(Object[])}
+   */
+  String getUpdateSql();
+
+  /**
+   * Computes the {@link #getUpdateSql()} parameters for a row, e.g. by hashing one of its columns.
+   * This may be called from multiple threads at once.
+   *
+   * @param row the row to fix up, as its {@link #getKeyColumn()} value followed by its {@link
+   *     #getColumns()} values
+   * @return the {@link #getUpdateSql()} parameters that will fix up the specified row
+   */
+  Object[] computeUpdate(Object[] row);
+
+  /**
+   * @return <code>true</code> if the API serves the data that this fixup changes, in which case
+   *     each batch that fixes up any rows will also mark a new load generation (see {@link
+   *     RifLoader#markLoadGeneration(java.sql.Connection)}), <code>false</code> if it doesn't
+   */
+  default boolean isServedData() {
+    return true;
+  }
+}
@@ -0,0 +1,438 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import javax.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the {@link KeysetFixup}s that have been {@link #register(KeysetFixup)}ed with it, one after
+ * another, in time slices during the pipeline's idle periods.
+ *
+ * <p>The first time each {@link KeysetFixup} is run, its key range is split into (roughly) equal
+ * partitions, each of which gets its own <code>FixupProgress</code> row. Each time slice then runs
+ * a {@link KeysetFixupRunner} for each of the incomplete partitions in parallel, throttled by a
+ * shared {@link RowBudget}. A time slice ends early, after the batches in progress, whenever the
+ * caller reports that new data is waiting to be loaded.
+ */
+public final class KeysetFixupEngine {
+  private static final Logger LOGGER = LoggerFactory.getLogger(KeysetFixupEngine.class);
+
+  /** Tables with fewer rows per partition than this will be split into fewer partitions. */
+  private static final int MIN_PARTITION_ROWS = 10000;
+
+  /** How often to ask whether new data is waiting, while partitions are running, by default. */
+  private static final Duration DEFAULT_YIELD_CHECK_INTERVAL = Duration.ofSeconds(5);
+
+  private static final String SQL_SELECT_PROGRESS =
+      "select \"fixupName\", \"lastKey\", \"upperKey\", \"completed\" from \"FixupProgress\""
+          + " where \"fixupName\" like ? order by \"fixupName\"";
+  private static final String SQL_INSERT_PROGRESS =
+      "insert into \"FixupProgress\" (\"fixupName\", \"lastKey\", \"upperKey\", \"completed\","
+          + " \"rowsFixed\", \"lastUpdated\") values (?, ?, ?, ?, 0, ?)";
+
+  private final EntityManagerFactory entityManagerFactory;
+  private final MetricRegistry metricRegistry;
+  private final ExecutorService executorService;
+  private final int partitionCount;
+  private final RowBudget rowBudget;
+  private final Duration yieldCheckInterval;
+  private final List<KeysetFixup> fixups = new ArrayList<>();
+
+  private int currentFixupIndex = 0;
+  private List<KeysetFixupRunner> currentPartitions = null;
+
+  /**
+   * Constructs a new {@link KeysetFixupEngine}.
+   *
+   * @param entityManagerFactory the {@link EntityManagerFactory} for the database to fix up
+   * @param metricRegistry the {@link MetricRegistry} to record each fixup's rates in
+   * @param executorService the {@link ExecutorService} to run partitions on, which must not be the
+   *     one running this {@link KeysetFixupEngine}
+   * @param partitionCount the number of partitions to split each fixup's key range into
+   * @param maxRowsPerSecond the maximum number of rows per second to read across all partitions,
+   *     or <code>0</code> for no limit
+   */
+  public KeysetFixupEngine(
+      EntityManagerFactory entityManagerFactory,
+      MetricRegistry metricRegistry,
+      ExecutorService executorService,
+      int partitionCount,
+      int maxRowsPerSecond) {
+    this(
+        entityManagerFactory,
+        metricRegistry,
+        executorService,
+        partitionCount,
+        maxRowsPerSecond,
+        DEFAULT_YIELD_CHECK_INTERVAL);
+  }
+
+  /**
+   * Constructs a new {@link KeysetFixupEngine}. This variant is only intended for tests.
+   *
+   * @param entityManagerFactory the {@link EntityManagerFactory} for the database to fix up
+   * @param metricRegistry the {@link MetricRegistry} to record each fixup's rates in
+   * @param executorService the {@link ExecutorService} to run partitions on, which must not be the
+   *     one running this {@link KeysetFixupEngine}
+   * @param partitionCount the number of partitions to split each fixup's key range into
+   * @param maxRowsPerSecond the maximum number of rows per second to read across all partitions,
+   *     or <code>0</code> for no limit
+   * @param yieldCheckInterval how often to ask whether new data is waiting, while partitions are
+   *     running
+   */
+  KeysetFixupEngine(
+      EntityManagerFactory entityManagerFactory,
+      MetricRegistry metricRegistry,
+      ExecutorService executorService,
+      int partitionCount,
+      int maxRowsPerSecond,
+      Duration yieldCheckInterval) {
+    this.entityManagerFactory = entityManagerFactory;
+    this.metricRegistry = metricRegistry;
+    this.executorService = executorService;
+    this.partitionCount = Math.max(1, partitionCount);
+    this.rowBudget = new RowBudget(maxRowsPerSecond);
+    this.yieldCheckInterval = yieldCheckInterval;
+  }
+
+  /**
+   * Adds the specified {@link KeysetFixup} to the end of the ones to be run.
+   *
+   * @param fixup the {@link KeysetFixup} to register
+   */
+  public void register(KeysetFixup fixup) {
+    if (fixup.getName().length() > 60)
+      throw new IllegalArgumentException("Fixup name too long: " + fixup.getName());
+    fixups.add(fixup);
+  }
+
+  /** @return <code>true</code> if all of the registered {@link KeysetFixup}s are complete */
+  public boolean isComplete() {
+    return currentFixupIndex >= fixups.size();
+  }
+
+  /**
+   * Runs the registered {@link KeysetFixup}s for a single time slice, or until they're complete, or
+   * until new data is waiting to be loaded, whichever comes first.
+   *
+   * @param timeSlice the (approximate) maximum amount of time to run for
+   * @param newDataAvailable returns <code>true</code> when new data is waiting to be loaded, and so
+   *     the time slice should end as soon as possible (this will only be called from the calling
+   *     thread). If it throws an exception, the partitions will be stopped, and then that exception
+   *     will be rethrown, unless it was caused by an {@link InterruptedException}, which is treated
+   *     as a request to yield.
+   * @return <code>true</code> if all of the registered {@link KeysetFixup}s are now complete
+   */
+  public boolean run(Duration timeSlice, BooleanSupplier newDataAvailable) {
+    Instant deadline = Instant.now().plus(timeSlice);
+    AtomicBoolean yieldRequested = new AtomicBoolean(false);
+
+    while (!isComplete() && Instant.now().isBefore(deadline) && !yieldRequested.get()) {
+      KeysetFixup fixup = fixups.get(currentFixupIndex);
+      if (currentPartitions == null) currentPartitions = loadOrCreatePartitions(fixup);
+
+      List<Future<Boolean>> futures = new ArrayList<>();
+      for (KeysetFixupRunner partition : currentPartitions) {
+        if (partition.isCompleted()) continue;
+        futures.add(
+            executorService.submit(() -> partition.run(deadline, yieldRequested::get, rowBudget)));
+      }
+      waitForPartitions(futures, yieldCheckInterval, newDataAvailable, yieldRequested);
+
+      if (currentPartitions.stream().allMatch(KeysetFixupRunner::isCompleted)) {
+        LOGGER.info("Fixup '{}' is complete.", fixup.getName());
+        currentFixupIndex++;
+        currentPartitions = null;
+      }
+    }
+
+    if (yieldRequested.get()) LOGGER.info("Fixups yielding, as new data is available.");
+    return isComplete();
+  }
+
+  /**
+   * Waits for the specified partitions to finish, periodically checking whether new data is
+   * waiting, and asking the partitions to stop if so. If a partition fails or the check for new
+   * data does, the other partitions are also asked to stop, and are waited for (so that they're not
+   * left running), before the first such error is thrown.
+   *
+   * @param futures the {@link Future}s of the partitions to wait for
+   * @param yieldCheckInterval how often to call the {@link BooleanSupplier}
+   * @param newDataAvailable returns <code>true</code> when new data is waiting to be loaded
+   * @param yieldRequested will be set to <code>true</code> if new data is waiting to be loaded
+   */
+  private static void waitForPartitions(
+      List<Future<Boolean>> futures,
+      Duration yieldCheckInterval,
+      BooleanSupplier newDataAvailable,
+      AtomicBoolean yieldRequested) {
+    RuntimeException error = null;
+    boolean interrupted = false;
+    for (Future<Boolean> future : futures) {
+      while (true) {
+        try {
+          future.get(yieldCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+          break;
+        } catch (TimeoutException e) {
+          if (yieldRequested.get()) continue;
+          try {
+            if (isNewDataAvailable(newDataAvailable)) yieldRequested.set(true);
+          } catch (RuntimeException newDataError) {
+            yieldRequested.set(true);
+            if (error == null) error = newDataError;
+          }
+        } catch (InterruptedException e) {
+          // Keep waiting (rather than spinning on the interrupt), and restore it once done.
+          yieldRequested.set(true);
+          interrupted = true;
+        } catch (ExecutionException e) {
+          // Let the other partitions finish their batches first.
+          yieldRequested.set(true);
+          if (error == null) error = new IllegalStateException(e.getCause());
+          break;
+        }
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+    if (error != null) throw error;
+  }
+
+  /**
+   * @param newDataAvailable returns <code>true</code> when new data is waiting to be loaded
+   * @return the result of the specified {@link BooleanSupplier}, or <code>true</code> if it was
+   *     interrupted
+   * @throws RuntimeException any other errors from the {@link BooleanSupplier}, e.g. for an invalid
+   *     data set manifest, will be bubbled up
+   */
+  private static boolean isNewDataAvailable(BooleanSupplier newDataAvailable) {
+    try {
+      return newDataAvailable.getAsBoolean();
+    } catch (RuntimeException e) {
+      if (!(e.getCause() instanceof InterruptedException)) throw e;
+      LOGGER.info("Interrupted while checking for new data; yielding.");
+      return true;
+    }
+  }
+
+  /**
+   * Loads the partitions of the specified {@link KeysetFixup}, first creating them if they don't
+   * yet exist.
+   *
+   * @param fixup the {@link KeysetFixup} to load the partitions of
+   * @return the {@link KeysetFixupRunner}s for the partitions of the specified {@link KeysetFixup}
+   */
+  private List<KeysetFixupRunner> loadOrCreatePartitions(KeysetFixup fixup) {
+    Meter readMeter =
+        metricRegistry.meter(
+            MetricRegistry.name(getClass().getSimpleName(), fixup.getName(), "rowsRead"));
+    Meter fixedMeter =
+        metricRegistry.meter(
+            MetricRegistry.name(getClass().getSimpleName(), fixup.getName(), "rowsFixed"));
+
+    return KeysetFixupRunner.runInTransaction(
+        entityManagerFactory,
+        connection -> {
+          if (!hasPartitions(connection, fixup)) createPartitions(connection, fixup);
+
+          List<KeysetFixupRunner> partitions = new ArrayList<>();
+          try (PreparedStatement statement = connection.prepareStatement(SQL_SELECT_PROGRESS)) {
+            statement.setString(1, fixup.getName() + "#%");
+            try (ResultSet results = statement.executeQuery()) {
+              while (results.next()) {
+                if (!results.getString(1).startsWith(fixup.getName() + "#")) continue;
+                partitions.add(
+                    new KeysetFixupRunner(
+                        fixup,
+                        results.getString(1),
+                        results.getString(2),
+                        results.getString(3),
+                        results.getBoolean(4),
+                        entityManagerFactory,
+                        readMeter,
+                        fixedMeter));
+              }
+            }
+          }
+          LOGGER.info(
+              "Fixup '{}': {} of {} partitions remaining.",
+              fixup.getName(),
+              partitions.stream().filter(p -> !p.isCompleted()).count(),
+              partitions.size());
+          return partitions;
+        });
+  }
+
+  /**
+   * @param connection the {@link Connection} to use
+   * @param fixup the {@link KeysetFixup} to check
+   * @return <code>true</code> if the specified {@link KeysetFixup}'s partitions have already been
+   *     created
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private static boolean hasPartitions(Connection connection, KeysetFixup fixup)
+      throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(SQL_SELECT_PROGRESS)) {
+      statement.setString(1, fixup.getName() + "#%");
+      try (ResultSet results = statement.executeQuery()) {
+        while (results.next())
+          if (results.getString(1).startsWith(fixup.getName() + "#")) return true;
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Splits the specified {@link KeysetFixup}'s key range into partitions with (roughly) equal
+   * numbers of rows, and creates a <code>FixupProgress</code> row for each. This costs two passes
+   * over the table's primary key index, but only has to be done once per {@link KeysetFixup}.
+   *
+   * @param connection the {@link Connection} to use
+   * @param fixup the {@link KeysetFixup} to create the partitions of
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private void createPartitions(Connection connection, KeysetFixup fixup) throws SQLException {
+    long rowCount;
+    try (PreparedStatement statement =
+        prepareRangeStatement(connection, fixup, "count(*)", fixup.getKeyRangeStart(), "")) {
+      try (ResultSet results = statement.executeQuery()) {
+        results.next();
+        rowCount = results.getLong(1);
+      }
+    }
+
+    long partitions = Math.max(1, Math.min(partitionCount, rowCount / MIN_PARTITION_ROWS));
+    long partitionRows = rowCount / partitions;
+    List<String> lowerKeys = new ArrayList<>();
+    lowerKeys.add(fixup.getKeyRangeStart());
+    // Each boundary is found by skipping ahead from the previous one, for one pass in total.
+    String key = KeysetFixupRunner.quote(fixup.getKeyColumn());
+    for (int i = 1; i < partitions; i++) {
+      try (PreparedStatement statement =
+          prepareRangeStatement(
+              connection,
+              fixup,
+              key,
+              lowerKeys.get(i - 1),
+              " order by " + key + " limit 1 offset " + (partitionRows - 1))) {
+        try (ResultSet results = statement.executeQuery()) {
+          if (!results.next()) break;
+          lowerKeys.add(results.getString(1));
+        }
+      }
+    }
+
+    Timestamp now = Timestamp.from(Instant.now());
+    try (PreparedStatement insert = connection.prepareStatement(SQL_INSERT_PROGRESS)) {
+      for (int i = 0; i < lowerKeys.size(); i++) {
+        insert.setString(1, String.format("%s#%02d", fixup.getName(), i));
+        insert.setString(2, lowerKeys.get(i));
+        insert.setString(
+            3, i + 1 < lowerKeys.size() ? lowerKeys.get(i + 1) : fixup.getKeyRangeEnd());
+        insert.setBoolean(4, false);
+        insert.setTimestamp(5, now);
+        insert.addBatch();
+      }
+      insert.executeBatch();
+    }
+    LOGGER.info(
+        "Fixup '{}': split {} rows into {} partitions.",
+        fixup.getName(),
+        rowCount,
+        lowerKeys.size());
+  }
+
+  /**
+   * @param connection the {@link Connection} to use
+   * @param fixup the {@link KeysetFixup} being partitioned
+   * @param selectList the SQL select list to use
+   * @param lowerKey the key to start after, or <code>null</code> for the start of the table
+   * @param suffix the SQL to append to the query, e.g. an <code>order by</code> clause
+   * @return a {@link PreparedStatement} (with its parameters bound) that selects the specified
+   *     {@link KeysetFixup}'s rows, from after the specified key to the end of its key range
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private static PreparedStatement prepareRangeStatement(
+      Connection connection, KeysetFixup fixup, String selectList, String lowerKey, String suffix)
+      throws SQLException {
+    String key = KeysetFixupRunner.quote(fixup.getKeyColumn());
+    StringBuilder sql = new StringBuilder("select ").append(selectList);
+    sql.append(" from ").append(KeysetFixupRunner.quote(fixup.getTableName()));
+    sql.append(" where 1 = 1");
+    if (lowerKey != null) sql.append(" and ").append(key).append(" > ?");
+    if (fixup.getKeyRangeEnd() != null) sql.append(" and ").append(key).append(" <= ?");
+    sql.append(suffix);
+
+    PreparedStatement statement = connection.prepareStatement(sql.toString());
+    int parameterIndex = 1;
+    if (lowerKey != null) KeysetFixupRunner.setKey(statement, parameterIndex++, fixup, lowerKey);
+    if (fixup.getKeyRangeEnd() != null)
+      KeysetFixupRunner.setKey(statement, parameterIndex, fixup, fixup.getKeyRangeEnd());
+    return statement;
+  }
+
+  /**
+   * A simple, shared throttle on the number of rows read per second, which the partitions all
+   * consume from. Each {@link #consume(int, BooleanSupplier)} call pays for its rows by waiting
+   * until the rows consumed before it would have been read at the allowed rate.
+   */
+  static final class RowBudget {
+    private final long nanosPerRow;
+    private long nextFreeNanos = System.nanoTime();
+
+    /**
+     * Constructs a new {@link RowBudget}.
+     *
+     * @param maxRowsPerSecond the maximum number of rows per second, or <code>0</code> for no limit
+     */
+    RowBudget(int maxRowsPerSecond) {
+      this.nanosPerRow = maxRowsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxRowsPerSecond : 0;
+    }
+
+    /**
+     * Records that the specified number of rows have been read, first waiting until the budget
+     * allows for that.
+     *
+     * @param rows the number of rows that were read
+     * @param stopRequested returns <code>true</code> if the wait should be cut short
+     */
+    void consume(int rows, BooleanSupplier stopRequested) {
+      if (nanosPerRow == 0) return;
+
+      long waitUntilNanos;
+      synchronized (this) {
+        long nowNanos = System.nanoTime();
+        waitUntilNanos = nextFreeNanos;
+        nextFreeNanos = Math.max(nextFreeNanos, nowNanos) + rows * nanosPerRow;
+      }
+
+      long remainingNanos;
+      while ((remainingNanos = waitUntilNanos - System.nanoTime()) > 0
+          && !stopRequested.getAsBoolean()) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(100)));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+}
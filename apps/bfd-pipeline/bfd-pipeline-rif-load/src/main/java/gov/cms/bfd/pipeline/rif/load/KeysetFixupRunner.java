@@ -0,0 +1,302 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.Meter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a single partition (key range) of a {@link KeysetFixup}, one time slice at a time, saving
+ * its progress in the <code>FixupProgress</code> table after every batch, so that it can be resumed
+ * after a restart. These are created and run by {@link KeysetFixupEngine}.
+ *
+ * <p>Each batch reads the next range of keys after the last batch's (<code>"key" &gt; ? order by
+ * "key" limit ?</code>), which only needs an index range scan, regardless of how many of those rows
+ * need to be fixed up. The updates for the rows that do are then applied as a single JDBC batch, in
+ * the same transaction as the progress. The batch size adapts to keep each batch close to {@link
+ * #TARGET_BATCH_DURATION}.
+ *
+ * <p>Instances are not thread-safe, and are expected to be run by a single thread at a time.
+ */
+final class KeysetFixupRunner {
+  private static final Logger LOGGER = LoggerFactory.getLogger(KeysetFixupRunner.class);
+
+  /** The number of rows in the first batch, before it's adapted. */
+  static final int INITIAL_BATCH_SIZE = 1000;
+
+  /** The minimum number of rows in each batch. */
+  static final int MIN_BATCH_SIZE = 100;
+
+  /** The maximum number of rows in each batch. */
+  static final int MAX_BATCH_SIZE = 50000;
+
+  /** The duration that each batch's size is adapted to aim for. */
+  static final Duration TARGET_BATCH_DURATION = Duration.ofSeconds(2);
+
+  private static final String SQL_UPDATE_PROGRESS =
+      "update \"FixupProgress\" set \"lastKey\" = ?, \"completed\" = ?,"
+          + " \"rowsFixed\" = \"rowsFixed\" + ?, \"lastUpdated\" = ? where \"fixupName\" = ?";
+
+  private final KeysetFixup fixup;
+  private final String progressName;
+  private final String upperKey;
+  private final EntityManagerFactory entityManagerFactory;
+  private final Meter readMeter;
+  private final Meter fixedMeter;
+
+  private String lastKey;
+  private boolean completed;
+  private int batchSize = INITIAL_BATCH_SIZE;
+
+  /**
+   * Constructs a new {@link KeysetFixupRunner}.
+   *
+   * @param fixup the {@link KeysetFixup} to run
+   * @param progressName the <code>FixupProgress</code> row to save this partition's progress in
+   * @param lastKey the last key that this partition has already been run through (or that it starts
+   *     after), or <code>null</code> if it starts at the beginning of the table
+   * @param upperKey the last key that this partition includes, or <code>null</code> if it runs to
+   *     the end of the table
+   * @param completed <code>true</code> if this partition has already been completed
+   * @param entityManagerFactory the {@link EntityManagerFactory} for the database to fix up
+   * @param readMeter the {@link Meter} to mark with the number of rows read
+   * @param fixedMeter the {@link Meter} to mark with the number of rows fixed up
+   */
+  KeysetFixupRunner(
+      KeysetFixup fixup,
+      String progressName,
+      String lastKey,
+      String upperKey,
+      boolean completed,
+      EntityManagerFactory entityManagerFactory,
+      Meter readMeter,
+      Meter fixedMeter) {
+    this.fixup = fixup;
+    this.progressName = progressName;
+    this.lastKey = lastKey;
+    this.upperKey = upperKey;
+    this.completed = completed;
+    this.entityManagerFactory = entityManagerFactory;
+    this.readMeter = readMeter;
+    this.fixedMeter = fixedMeter;
+  }
+
+  /** @return the number of rows that the next batch will read (at most) */
+  int getBatchSize() {
+    return batchSize;
+  }
+
+  /** @return <code>true</code> if this partition has been completed */
+  boolean isCompleted() {
+    return completed;
+  }
+
+  /**
+   * Runs batches of this partition until it's complete, the specified deadline has passed, or it's
+   * asked to stop (a batch in progress will always be finished first).
+   *
+   * @param deadline the time after which no new batches should be started
+   * @param stopRequested returns <code>true</code> when no new batches should be started
+   * @param rowBudget the {@link KeysetFixupEngine.RowBudget} to throttle the rows read against
+   * @return <code>true</code> if this partition is now complete, <code>false</code> if it isn't
+   */
+  boolean run(
+      Instant deadline, BooleanSupplier stopRequested, KeysetFixupEngine.RowBudget rowBudget) {
+    while (!completed && Instant.now().isBefore(deadline) && !stopRequested.getAsBoolean()) {
+      long startNanos = System.nanoTime();
+      BatchResult result = runInTransaction(this::runBatch);
+      lastKey = result.lastKey;
+      completed = result.completed;
+      readMeter.mark(result.rowsRead);
+      fixedMeter.mark(result.rowsFixed);
+      adaptBatchSize(Duration.ofNanos(System.nanoTime() - startNanos));
+      LOGGER.debug(
+          "Fixup '{}' batch: read {} rows, fixed {}, through key '{}'.",
+          progressName,
+          result.rowsRead,
+          result.rowsFixed,
+          lastKey);
+
+      if (!completed) rowBudget.consume(result.rowsRead, stopRequested);
+    }
+
+    if (completed) LOGGER.info("Fixup '{}' is complete.", progressName);
+    return completed;
+  }
+
+  /**
+   * Grows or shrinks {@link #batchSize}, based on how long the last batch took.
+   *
+   * @param batchDuration how long the last batch took
+   */
+  void adaptBatchSize(Duration batchDuration) {
+    if (batchDuration.compareTo(TARGET_BATCH_DURATION.dividedBy(2)) < 0)
+      batchSize = Math.min(MAX_BATCH_SIZE, batchSize * 2);
+    else if (batchDuration.compareTo(TARGET_BATCH_DURATION.multipliedBy(2)) > 0)
+      batchSize = Math.max(MIN_BATCH_SIZE, batchSize / 2);
+  }
+
+  /**
+   * Reads the next batch of rows, fixes up the ones that need it, and saves the progress.
+   *
+   * @param connection the {@link Connection} to use
+   * @return the {@link BatchResult}
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  private BatchResult runBatch(Connection connection) throws SQLException {
+    List<Object[]> rows = new ArrayList<>();
+    String batchLastKey = lastKey;
+    int rowsRead = 0;
+    try (PreparedStatement statement = connection.prepareStatement(createSelectSql())) {
+      int parameterIndex = 1;
+      if (lastKey != null) setKey(statement, parameterIndex++, fixup, lastKey);
+      if (upperKey != null) setKey(statement, parameterIndex++, fixup, upperKey);
+      statement.setInt(parameterIndex, batchSize);
+      try (ResultSet results = statement.executeQuery()) {
+        int columnCount = fixup.getColumns().size() + 1;
+        while (results.next()) {
+          rowsRead++;
+          batchLastKey = results.getString(1);
+          if (results.getInt(columnCount + 1) == 0) continue;
+
+          Object[] row = new Object[columnCount];
+          for (int i = 0; i < columnCount; i++) row[i] = results.getObject(i + 1);
+          rows.add(row);
+        }
+      }
+    }
+    boolean batchCompleted = rowsRead < batchSize;
+
+    if (!rows.isEmpty()) {
+      try (PreparedStatement update = connection.prepareStatement(fixup.getUpdateSql())) {
+        for (Object[] row : rows) {
+          Object[] parameters = fixup.computeUpdate(row);
+          for (int i = 0; i < parameters.length; i++) update.setObject(i + 1, parameters[i]);
+          update.addBatch();
+        }
+        update.executeBatch();
+      }
+      if (fixup.isServedData()) RifLoader.markLoadGeneration(connection);
+    }
+
+    try (PreparedStatement update = connection.prepareStatement(SQL_UPDATE_PROGRESS)) {
+      update.setString(1, batchLastKey);
+      update.setBoolean(2, batchCompleted);
+      update.setLong(3, rows.size());
+      update.setTimestamp(4, Timestamp.from(Instant.now()));
+      update.setString(5, progressName);
+      if (update.executeUpdate() != 1)
+        throw new IllegalStateException("Fixup progress row missing: " + progressName);
+    }
+
+    return new BatchResult(rowsRead, rows.size(), batchLastKey, batchCompleted);
+  }
+
+  /**
+   * @return the SQL to select the next batch of rows, with their keys, the {@link
+   *     KeysetFixup#getColumns()}, and a flag for whether or not they need to be fixed up
+   */
+  private String createSelectSql() {
+    String key = quote(fixup.getKeyColumn());
+    StringBuilder sql = new StringBuilder("select ").append(key);
+    for (String column : fixup.getColumns()) sql.append(", ").append(quote(column));
+    sql.append(", case when (").append(fixup.getCondition()).append(") then 1 else 0 end");
+    sql.append(" from ").append(quote(fixup.getTableName())).append(" where 1 = 1");
+    if (lastKey != null) sql.append(" and ").append(key).append(" > ?");
+    if (upperKey != null) sql.append(" and ").append(key).append(" <= ?");
+    sql.append(" order by ").append(key).append(" limit ?");
+    return sql.toString();
+  }
+
+  /**
+   * Runs the specified work in a new transaction, which will be committed if it succeeds, or rolled
+   * back if it doesn't.
+   *
+   * @param work the work to run
+   * @return the result of the work
+   */
+  private <T> T runInTransaction(ReturningWork<T> work) {
+    return runInTransaction(entityManagerFactory, work);
+  }
+
+  /**
+   * Runs the specified work in a new transaction, which will be committed if it succeeds, or rolled
+   * back if it doesn't.
+   *
+   * @param entityManagerFactory the {@link EntityManagerFactory} for the database to use
+   * @param work the work to run
+   * @return the result of the work
+   */
+  static <T> T runInTransaction(EntityManagerFactory entityManagerFactory, ReturningWork<T> work) {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    EntityTransaction txn = null;
+    try {
+      txn = entityManager.getTransaction();
+      txn.begin();
+      T result = entityManager.unwrap(Session.class).doReturningWork(work);
+      txn.commit();
+      return result;
+    } finally {
+      if (txn != null && txn.isActive()) txn.rollback();
+      entityManager.close();
+    }
+  }
+
+  /**
+   * @param statement the {@link PreparedStatement} to set the parameter of
+   * @param parameterIndex the index of the parameter to set
+   * @param fixup the {@link KeysetFixup} whose {@link KeysetFixup#getKeyColumn()} is being set
+   * @param key the key value to set, as text
+   * @throws SQLException (any errors encountered will be bubbled up)
+   */
+  static void setKey(PreparedStatement statement, int parameterIndex, KeysetFixup fixup, String key)
+      throws SQLException {
+    if (fixup.hasTextKey()) statement.setString(parameterIndex, key);
+    else statement.setLong(parameterIndex, Long.parseLong(key));
+  }
+
+  /**
+   * @param identifier the SQL identifier (e.g. a table name) to quote
+   * @return the specified identifier, as a quoted (and thus case-sensitive) SQL identifier
+   */
+  static String quote(String identifier) {
+    return "\"" + identifier + "\"";
+  }
+
+  /** The results of a single batch. */
+  private static final class BatchResult {
+    private final int rowsRead;
+    private final int rowsFixed;
+    private final String lastKey;
+    private final boolean completed;
+
+    /**
+     * Constructs a new {@link BatchResult}.
+     *
+     * @param rowsRead the number of rows read
+     * @param rowsFixed the number of rows fixed up
+     * @param lastKey the last key read, if any
+     * @param completed <code>true</code> if the partition is now complete
+     */
+    BatchResult(int rowsRead, int rowsFixed, String lastKey, boolean completed) {
+      this.rowsRead = rowsRead;
+      this.rowsFixed = rowsFixed;
+      this.lastKey = lastKey;
+      this.completed = completed;
+    }
+  }
+}
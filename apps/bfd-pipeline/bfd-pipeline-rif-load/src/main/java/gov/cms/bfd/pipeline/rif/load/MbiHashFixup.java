@@ -0,0 +1,89 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import java.util.Collections;
+import java.util.List;
+import javax.crypto.SecretKeyFactory;
+
+/**
+ * A {@link KeysetFixup} that fills in the <code>mbiHash</code> column of a table's rows (e.g. the
+ * <code>Beneficiaries</code> table), for the rows that were loaded before that column was added.
+ */
+final class MbiHashFixup implements KeysetFixup {
+  private final String tableName;
+  private final String keyColumn;
+  private final boolean textKey;
+  private final LoadAppOptions options;
+  private final SecretKeyFactory secretKeyFactory;
+
+  /**
+   * Constructs a new {@link MbiHashFixup}.
+   *
+   * @param tableName the value to use for {@link #getTableName()}
+   * @param keyColumn the value to use for {@link #getKeyColumn()}
+   * @param textKey the value to use for {@link #hasTextKey()}
+   * @param options the {@link LoadAppOptions} with the hashing settings to use
+   * @param secretKeyFactory the {@link SecretKeyFactory} to hash with
+   */
+  MbiHashFixup(
+      String tableName,
+      String keyColumn,
+      boolean textKey,
+      LoadAppOptions options,
+      SecretKeyFactory secretKeyFactory) {
+    this.tableName = tableName;
+    this.keyColumn = keyColumn;
+    this.textKey = textKey;
+    this.options = options;
+    this.secretKeyFactory = secretKeyFactory;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getName() */
+  @Override
+  public String getName() {
+    return tableName + ".mbiHash";
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getTableName() */
+  @Override
+  public String getTableName() {
+    return tableName;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getKeyColumn() */
+  @Override
+  public String getKeyColumn() {
+    return keyColumn;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#hasTextKey() */
+  @Override
+  public boolean hasTextKey() {
+    return textKey;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getColumns() */
+  @Override
+  public List<String> getColumns() {
+    return Collections.singletonList("medicareBeneficiaryId");
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getCondition() */
+  @Override
+  public String getCondition() {
+    return "\"mbiHash\" is null and \"medicareBeneficiaryId\" is not null";
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getUpdateSql() */
+  @Override
+  public String getUpdateSql() {
+    return String.format(
+        "update \"%s\" set \"mbiHash\" = ? where \"%s\" = ?", tableName, keyColumn);
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#computeUpdate(java.lang.Object[]) */
+  @Override
+  public Object[] computeUpdate(Object[] row) {
+    String mbiHash = RifLoader.computeMbiHash(options, secretKeyFactory, (String) row[1]);
+    return new Object[] {mbiHash, row[0]};
+  }
+}
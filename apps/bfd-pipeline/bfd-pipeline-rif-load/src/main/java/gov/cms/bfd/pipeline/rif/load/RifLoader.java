@@ -7,17 +7,37 @@ import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import com.zaxxer.hikari.HikariDataSource;
 import com.zaxxer.hikari.pool.HikariProxyConnection;
 import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.BeneficiaryClaimIndex;
 import gov.cms.bfd.model.rif.BeneficiaryCsvWriter;
 import gov.cms.bfd.model.rif.BeneficiaryHistory;
+import gov.cms.bfd.model.rif.BeneficiaryJdbcBinder;
 import gov.cms.bfd.model.rif.CarrierClaim;
 import gov.cms.bfd.model.rif.CarrierClaimCsvWriter;
+import gov.cms.bfd.model.rif.CarrierClaimJdbcBinder;
 import gov.cms.bfd.model.rif.CarrierClaimLine;
+import gov.cms.bfd.model.rif.ClaimFhirDocument;
+import gov.cms.bfd.model.rif.ClaimFhirDocument_;
+import gov.cms.bfd.model.rif.DMEClaim;
+import gov.cms.bfd.model.rif.DMEClaimJdbcBinder;
+import gov.cms.bfd.model.rif.HHAClaim;
+import gov.cms.bfd.model.rif.HHAClaimJdbcBinder;
+import gov.cms.bfd.model.rif.HospiceClaim;
+import gov.cms.bfd.model.rif.HospiceClaimJdbcBinder;
+import gov.cms.bfd.model.rif.InpatientClaim;
+import gov.cms.bfd.model.rif.InpatientClaimJdbcBinder;
+import gov.cms.bfd.model.rif.MedicareBeneficiaryIdHistory;
+import gov.cms.bfd.model.rif.OutpatientClaim;
+import gov.cms.bfd.model.rif.OutpatientClaimJdbcBinder;
+import gov.cms.bfd.model.rif.PartDEvent;
+import gov.cms.bfd.model.rif.PartDEventJdbcBinder;
 import gov.cms.bfd.model.rif.RecordAction;
 import gov.cms.bfd.model.rif.RifFileEvent;
 import gov.cms.bfd.model.rif.RifFileRecords;
 import gov.cms.bfd.model.rif.RifFileType;
 import gov.cms.bfd.model.rif.RifFilesEvent;
 import gov.cms.bfd.model.rif.RifRecordEvent;
+import gov.cms.bfd.model.rif.SNFClaim;
+import gov.cms.bfd.model.rif.SNFClaimJdbcBinder;
 import gov.cms.bfd.model.rif.schema.DatabaseSchemaManager;
 import gov.cms.bfd.pipeline.rif.load.RifRecordLoadResult.LoadAction;
 import java.io.File;
@@ -28,10 +48,15 @@ import java.io.UncheckedIOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -39,9 +64,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -54,7 +81,9 @@ import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 import javax.persistence.Table;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
 import javax.sql.DataSource;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.csv.CSVFormat;
@@ -79,6 +108,30 @@ public final class RifLoader implements AutoCloseable {
    */
   private static final int RECORD_BATCH_SIZE = 100;
 
+  /**
+   * The {@link RifFileType}s that have a generated <code>*JdbcBinder</code>, and so can have their
+   * {@link RecordAction#INSERT}s written directly via JDBC, bypassing Hibernate. (The others use
+   * database-generated IDs, which the binders don't support.)
+   */
+  private static final Set<RifFileType> JDBC_INSERT_FILE_TYPES =
+      EnumSet.complementOf(
+          EnumSet.of(RifFileType.BENEFICIARY_HISTORY, RifFileType.MEDICARE_BENEFICIARY_ID_HISTORY));
+
+  /** The SQL used by {@link #insertClaimIndexEntries(Connection, List)}. */
+  private static final String CLAIM_INDEX_INSERT_SQL =
+      "insert into \"BeneficiaryClaimIndex\" (\"claimType\", \"claimId\", \"beneficiaryId\","
+          + " \"dateFrom\", \"dateThrough\", \"lastUpdated\") values (?, ?, ?, ?, ?, ?)";
+
+  /**
+   * The number of rows (slots) in the <code>LoadGenerations</code> table, which {@link
+   * #markLoadGeneration(Connection)} spreads its updates across.
+   */
+  private static final int LOAD_GENERATION_SLOTS = 16;
+
+  /** The SQL used by {@link #markLoadGeneration(Connection)}. */
+  private static final String SQL_MARK_LOAD_GENERATION =
+      "update \"LoadGenerations\" set \"generation\" = \"generation\" + 1 where \"slot\" = ?";
+
   private static final Logger LOGGER = LoggerFactory.getLogger(RifLoader.class);
   private static final Logger LOGGER_RECORD_COUNTS =
       LoggerFactory.getLogger(RifLoader.class.getName() + ".recordCounts");
@@ -89,6 +142,7 @@ public final class RifLoader implements AutoCloseable {
   private final EntityManagerFactory entityManagerFactory;
   private final SecretKeyFactory secretKeyFactory;
   private final RifLoaderIdleTasks idleTasks;
+  private volatile boolean jdbcInsertsAllowed;
 
   /**
    * Constructs a new {@link RifLoader} instance.
@@ -108,6 +162,7 @@ public final class RifLoader implements AutoCloseable {
     this.secretKeyFactory = createSecretKeyFactory();
     this.idleTasks =
         new RifLoaderIdleTasks(options, appMetrics, entityManagerFactory, secretKeyFactory);
+    this.jdbcInsertsAllowed = true;
   }
 
   /**
@@ -119,6 +174,18 @@ public final class RifLoader implements AutoCloseable {
     return idleTasks;
   }
 
+  /**
+   * Allows or prevents the direct JDBC inserts (via the generated <code>*JdbcBinder</code>s) that
+   * are used for batches of new records when {@link LoadAppOptions#isIdempotencyRequired()} is
+   * <code>false</code>. Only intended for tests, which compare the results against Hibernate's.
+   *
+   * @param jdbcInsertsAllowed <code>false</code> to send all records through Hibernate, <code>true
+   *     </code> (the default) to use JDBC inserts wherever possible
+   */
+  void setJdbcInsertsAllowed(boolean jdbcInsertsAllowed) {
+    this.jdbcInsertsAllowed = jdbcInsertsAllowed;
+  }
+
   /**
    * @param options the {@link LoadAppOptions} to use
    * @param metrics the {@link MetricRegistry} to use
@@ -140,6 +207,13 @@ public final class RifLoader implements AutoCloseable {
       dataSource.setJdbcUrl(options.getDatabaseUrl());
       dataSource.setUsername(options.getDatabaseUsername());
       dataSource.setPassword(String.valueOf(options.getDatabasePassword()));
+
+      /*
+       * Have the PostgreSQL driver rewrite each batch of single-row INSERTs into multi-row ones,
+       * which cuts down the number of statements the server has to parse and execute.
+       */
+      if (options.getDatabaseUrl().startsWith("jdbc:postgresql:"))
+        dataSource.addDataSourceProperty("reWriteBatchedInserts", "true");
     }
 
     dataSource.setRegisterMbeans(true);
@@ -257,6 +331,15 @@ public final class RifLoader implements AutoCloseable {
     idleTasks.doIdleTask();
   }
 
+  /**
+   * Do the idle tasks on the database, ending early if new data arrives.
+   *
+   * @param newDataAvailable returns <code>true</code> when new data is waiting to be loaded
+   */
+  public void doIdleTask(BooleanSupplier newDataAvailable) {
+    idleTasks.doIdleTask(newDataAvailable);
+  }
+
   /**
    * Consumes the input {@link Stream} of {@link RifRecordEvent}s, pushing each {@link
    * RifRecordEvent}'s record to the database, and passing the result for each of those bundles to
@@ -445,6 +528,25 @@ public final class RifLoader implements AutoCloseable {
             .timer(MetricRegistry.name(getClass().getSimpleName(), "recordBatches", "failed"))
             .time();
 
+    /*
+     * Every record in the batch gets stamped with the same "lastUpdated" value, which is then used
+     * by the server's "_lastUpdated" search parameter.
+     */
+    Instant batchTimestamp = Instant.now();
+
+    /*
+     * Batches made up entirely of new records (which is nearly all of them) are inserted directly
+     * via JDBC, using the generated *JdbcBinders, rather than going through Hibernate. Batches with
+     * any updates in them still go through Hibernate, as the updates could depend on the inserts.
+     */
+    boolean jdbcInsertsEnabled =
+        jdbcInsertsAllowed
+            && !options.isIdempotencyRequired()
+            && JDBC_INSERT_FILE_TYPES.contains(rifFileType)
+            && recordsBatch.stream().allMatch(r -> r.getRecordAction() == RecordAction.INSERT);
+    List<Object> jdbcInserts = new ArrayList<>(jdbcInsertsEnabled ? recordsBatch.size() : 0);
+    List<String> updatedClaimIds = new ArrayList<>();
+
     EntityManager entityManager = null;
 
     // TODO: refactor the following to be less of an indented mess
@@ -474,7 +576,9 @@ public final class RifLoader implements AutoCloseable {
 
           if (recordInDb == null) {
             loadAction = LoadAction.INSERTED;
+            setLastUpdated(record, batchTimestamp);
             entityManager.persist(record);
+            BeneficiaryClaimIndex.from(record).ifPresent(entityManager::persist);
             Object recordInDbAfterUpdate = entityManager.find(record.getClass(), recordId);
           } else {
             loadAction = LoadAction.DID_NOTHING;
@@ -482,7 +586,12 @@ public final class RifLoader implements AutoCloseable {
         } else if (strategy == LoadStrategy.INSERT_UPDATE_NON_IDEMPOTENT) {
           if (rifRecordEvent.getRecordAction().equals(RecordAction.INSERT)) {
             loadAction = LoadAction.INSERTED;
-            entityManager.persist(record);
+            setLastUpdated(record, batchTimestamp);
+            if (jdbcInsertsEnabled) jdbcInserts.add(record);
+            else {
+              entityManager.persist(record);
+              BeneficiaryClaimIndex.from(record).ifPresent(entityManager::persist);
+            }
           } else if (rifRecordEvent.getRecordAction().equals(RecordAction.UPDATE)) {
             loadAction = LoadAction.UPDATED;
 
@@ -494,7 +603,13 @@ public final class RifLoader implements AutoCloseable {
               updateBeneficaryHistory(entityManager, (Beneficiary) record);
             }
 
+            setLastUpdated(record, batchTimestamp);
             entityManager.merge(record);
+            Optional<BeneficiaryClaimIndex> claimIndexEntry = BeneficiaryClaimIndex.from(record);
+            if (claimIndexEntry.isPresent()) {
+              entityManager.merge(claimIndexEntry.get());
+              updatedClaimIds.add(claimIndexEntry.get().getClaimId());
+            }
           } else {
             throw new BadCodeMonkeyException(
                 String.format(
@@ -511,6 +626,15 @@ public final class RifLoader implements AutoCloseable {
         loadResults.add(new RifRecordLoadResult(rifRecordEvent, loadAction));
       }
 
+      if (!jdbcInserts.isEmpty())
+        insertViaJdbc(entityManager, rifFileType, jdbcInserts, fileEventMetrics);
+      if (!updatedClaimIds.isEmpty())
+        deleteClaimFhirDocuments(entityManager, rifFileType, updatedClaimIds);
+
+      // Done last, to keep the slot's row lock for as short a time as possible.
+      if (loadResults.stream().anyMatch(r -> r.getLoadAction() != LoadAction.DID_NOTHING))
+        entityManager.unwrap(Session.class).doWork(RifLoader::markLoadGeneration);
+
       entityManager.getTransaction().commit();
 
       // Update the metrics now that things have been pushed.
@@ -549,6 +673,157 @@ public final class RifLoader implements AutoCloseable {
     }
   }
 
+  /**
+   * Inserts the specified records using the generated <code>*JdbcBinder</code> for their type, via
+   * the specified {@link EntityManager}'s JDBC {@link Connection} (and thus as part of its current
+   * transaction).
+   *
+   * @param entityManager the {@link EntityManager} to use
+   * @param rifFileType the {@link RifFileType} of the records to insert, which must be one of the
+   *     {@link #JDBC_INSERT_FILE_TYPES}
+   * @param records the RIF records (e.g. {@link Beneficiary}s, {@link CarrierClaim}s, etc.) to
+   *     insert, all of which must be of the type specified by the {@link RifFileType}
+   * @param metrics the {@link MetricRegistry} to use
+   */
+  @SuppressWarnings("unchecked")
+  private void insertViaJdbc(
+      EntityManager entityManager,
+      RifFileType rifFileType,
+      List<?> records,
+      MetricRegistry metrics) {
+    Timer.Context timerJdbcInserts =
+        metrics.timer(MetricRegistry.name(getClass().getSimpleName(), "jdbcInserts")).time();
+
+    Session session = entityManager.unwrap(Session.class);
+    session.doWork(
+        new Work() {
+          /** @see org.hibernate.jdbc.Work#execute(java.sql.Connection) */
+          @Override
+          public void execute(Connection connection) throws SQLException {
+            if (rifFileType == RifFileType.BENEFICIARY)
+              BeneficiaryJdbcBinder.insert(connection, (List<Beneficiary>) records);
+            else if (rifFileType == RifFileType.PDE)
+              PartDEventJdbcBinder.insert(connection, (List<PartDEvent>) records);
+            else if (rifFileType == RifFileType.CARRIER)
+              CarrierClaimJdbcBinder.insert(connection, (List<CarrierClaim>) records);
+            else if (rifFileType == RifFileType.DME)
+              DMEClaimJdbcBinder.insert(connection, (List<DMEClaim>) records);
+            else if (rifFileType == RifFileType.HHA)
+              HHAClaimJdbcBinder.insert(connection, (List<HHAClaim>) records);
+            else if (rifFileType == RifFileType.HOSPICE)
+              HospiceClaimJdbcBinder.insert(connection, (List<HospiceClaim>) records);
+            else if (rifFileType == RifFileType.INPATIENT)
+              InpatientClaimJdbcBinder.insert(connection, (List<InpatientClaim>) records);
+            else if (rifFileType == RifFileType.OUTPATIENT)
+              OutpatientClaimJdbcBinder.insert(connection, (List<OutpatientClaim>) records);
+            else if (rifFileType == RifFileType.SNF)
+              SNFClaimJdbcBinder.insert(connection, (List<SNFClaim>) records);
+            else throw new BadCodeMonkeyException("Unhandled record type: " + rifFileType);
+
+            if (rifFileType != RifFileType.BENEFICIARY)
+              insertClaimIndexEntries(connection, records);
+          }
+        });
+
+    timerJdbcInserts.stop();
+  }
+
+  /**
+   * Inserts a {@link BeneficiaryClaimIndex} entry for each of the specified claim/event records, as
+   * a single JDBC batch. This is the JDBC equivalent of persisting each {@link
+   * BeneficiaryClaimIndex#from(Object)} entry, for use alongside the generated <code>*JdbcBinder
+   * </code>s.
+   *
+   * @param connection the JDBC {@link Connection} to use
+   * @param records the RIF records to insert {@link BeneficiaryClaimIndex} entries for, which will
+   *     be ignored if they're not claims/events (e.g. {@link Beneficiary}s)
+   * @throws SQLException Any {@link SQLException}s encountered will be bubbled up.
+   */
+  static void insertClaimIndexEntries(Connection connection, List<?> records) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(CLAIM_INDEX_INSERT_SQL)) {
+      int batchSize = 0;
+      for (Object record : records) {
+        Optional<BeneficiaryClaimIndex> entry = BeneficiaryClaimIndex.from(record);
+        if (!entry.isPresent()) continue;
+
+        statement.setString(1, entry.get().getClaimType().name());
+        statement.setString(2, entry.get().getClaimId());
+        statement.setString(3, entry.get().getBeneficiaryId());
+        statement.setDate(4, Date.valueOf(entry.get().getDateFrom()));
+        statement.setDate(5, Date.valueOf(entry.get().getDateThrough()));
+        statement.setTimestamp(6, entry.get().getLastUpdated().map(Timestamp::from).orElse(null));
+        statement.addBatch();
+        batchSize++;
+      }
+      if (batchSize > 0) statement.executeBatch();
+    }
+  }
+
+  /**
+   * Marks a new load generation, by incrementing one of the <code>LoadGenerations</code> counters
+   * (see <code>V29__Create_LoadGenerations.sql</code>). This must be called in the same transaction
+   * as every write of data that the API serves, so that the server's caches (which watch the sum of
+   * those counters) can tell exactly when that data has changed.
+   *
+   * @param connection the JDBC {@link Connection} to use, whose current transaction the counter
+   *     will be incremented in
+   * @throws SQLException Any {@link SQLException}s encountered will be bubbled up.
+   */
+  static void markLoadGeneration(Connection connection) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(SQL_MARK_LOAD_GENERATION)) {
+      // Spread the loader threads across the slots, so they rarely wait on each other's locks.
+      int slot = (int) (Thread.currentThread().getId() % LOAD_GENERATION_SLOTS);
+      statement.setInt(1, slot);
+      if (statement.executeUpdate() != 1)
+        throw new IllegalStateException("Load generation row missing: " + slot);
+    }
+  }
+
+  /**
+   * Deletes the server's {@link ClaimFhirDocument}s for the specified claims/events (if they have
+   * any), as those will no longer match the claims/events once they've been updated. This is run
+   * once per batch, as a single statement, whether or not the server has its documents enabled:
+   * the pipeline can't tell, and skipping it would leave stale documents behind to be served once
+   * they are.
+   *
+   * @param entityManager the {@link EntityManager} to use
+   * @param claimType the {@link RifFileType} of the claims/events being updated
+   * @param claimIds the IDs of the claims/events being updated
+   */
+  private static void deleteClaimFhirDocuments(
+      EntityManager entityManager, RifFileType claimType, List<String> claimIds) {
+    CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+    CriteriaDelete<ClaimFhirDocument> delete =
+        criteriaBuilder.createCriteriaDelete(ClaimFhirDocument.class);
+    Root<ClaimFhirDocument> root = delete.from(ClaimFhirDocument.class);
+    delete.where(
+        criteriaBuilder.equal(root.get(ClaimFhirDocument_.claimType), claimType),
+        root.get(ClaimFhirDocument_.claimId).in(claimIds));
+    entityManager.createQuery(delete).executeUpdate();
+  }
+
+  /**
+   * Sets the <code>lastUpdated</code> field of the specified record, if it has one.
+   *
+   * @param record the RIF record (e.g. a {@link Beneficiary}, {@link CarrierClaim}, etc.) to update
+   * @param lastUpdated the {@link Instant} to record as the time that the record was last loaded
+   */
+  static void setLastUpdated(Object record, Instant lastUpdated) {
+    Optional<Instant> value = Optional.of(lastUpdated);
+    if (record instanceof Beneficiary) ((Beneficiary) record).setLastUpdated(value);
+    else if (record instanceof CarrierClaim) ((CarrierClaim) record).setLastUpdated(value);
+    else if (record instanceof DMEClaim) ((DMEClaim) record).setLastUpdated(value);
+    else if (record instanceof HHAClaim) ((HHAClaim) record).setLastUpdated(value);
+    else if (record instanceof HospiceClaim) ((HospiceClaim) record).setLastUpdated(value);
+    else if (record instanceof InpatientClaim) ((InpatientClaim) record).setLastUpdated(value);
+    else if (record instanceof OutpatientClaim) ((OutpatientClaim) record).setLastUpdated(value);
+    else if (record instanceof PartDEvent) ((PartDEvent) record).setLastUpdated(value);
+    else if (record instanceof SNFClaim) ((SNFClaim) record).setLastUpdated(value);
+    else if (record instanceof BeneficiaryHistory || record instanceof MedicareBeneficiaryIdHistory)
+      return;
+    else throw new BadCodeMonkeyException("Unhandled record type: " + record.getClass());
+  }
+
   /**
    * Ensures that a {@link BeneficiaryHistory} record is created for the specified {@link
    * Beneficiary}, if that {@link Beneficiary} already exists and is just being updated.
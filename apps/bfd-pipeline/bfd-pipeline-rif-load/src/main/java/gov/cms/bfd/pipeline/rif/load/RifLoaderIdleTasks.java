@@ -1,10 +1,10 @@
 package gov.cms.bfd.pipeline.rif.load;
 
-import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -14,16 +14,11 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Function;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import javax.crypto.SecretKeyFactory;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import org.hibernate.SessionFactory;
-import org.hibernate.StatelessSession;
-import org.hibernate.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,8 +34,12 @@ public class RifLoaderIdleTasks {
    * maintenance tasks in future.
    *
    * There are about a billion mbiHash fields to fill. So time was spent to come up with
-   * a fast method to fixup fields. In the end, batching large number of updates and doing these
-   * batches in parallel worked well enough.
+   * a fast method to fixup fields. Each fixup is a KeysetFixup, registered with the
+   * KeysetFixupEngine, which splits its table's key range into partitions and runs a
+   * KeysetFixupRunner for each, in parallel. Each runner walks its partition in primary key order
+   * (so each batch is an index range scan), applies the updates as a single JDBC batch, and saves
+   * its progress in the FixupProgress table (so a restart doesn't start over). New derived
+   * columns only need a new KeysetFixup to be registered.
    *
    * There is a hierarchy in the names and concepts used in this class.
    *
@@ -49,10 +48,11 @@ public class RifLoaderIdleTasks {
    *    A task can take many time slices to complete.
    *  Executor - Within a time slice, work is given to an executor.
    *    Instead of another interface, a generic Callable interface is used.
-   *  Partition - Fixup work is divide among partitions of a table.
-   *    Partitions are numbered 0 ... PARTITION_COUNT-1;
-   *    Each partition is given its own executor.
-   *  Batch - A group of records to update in one DB transaction. All records come from a single partition.
+   *  Fixup - Within a time slice, the fixups task runs the KeysetFixupEngine on the calling
+   *    thread, which in turn runs each partition on the executors, and yields early if new data
+   *    arrives.
+   *  Batch - A range of keys to read and update in one DB transaction. Its size adapts to the
+   *    time that the previous batch took.
    */
 
   /** Time slice that a task can take before returning/yielding to the main pipeline */
@@ -64,17 +64,17 @@ public class RifLoaderIdleTasks {
   /** Max amount of time before a timeout occurs. */
   private static final int MAX_EXECUTOR_TIME_SECONDS = 300; // Allow for large table scans
 
-  /** The record count of a db update batch */
-  private static final int BATCH_COUNT = 100;
-
   /** An executor list that does no work and always completes */
   private static final List<Callable<Boolean>> NULL_EXECUTORS = Collections.emptyList();
 
   private static final Logger LOGGER = LoggerFactory.getLogger(RifLoaderIdleTasks.class);
 
-  /** The number of partitions to run by default. It is an option. */
+  /** The number of fixup threads to run by default. It is an option. */
   public static final int DEFAULT_PARTITION_COUNT = 20;
 
+  /** The maximum number of rows per second that the fixups may read, across all threads. */
+  private static final int FIXUP_MAX_ROWS_PER_SECOND = 100000;
+
   /** Enum to tell what the current task is being executed. */
   public enum Task {
     /** The initial task which is executed after startup */
@@ -83,11 +83,8 @@ public class RifLoaderIdleTasks {
     /** After the initial task, this general fixup is run. */
     POST_STARTUP,
 
-    /** A sub-task to fixup Beneficiaries table */
-    POST_STARTUP_FIXUP_BENEFICIARIES,
-
-    /** A sub-task to fixup BeneficiariesHistory table */
-    POST_STARTUP_FIXUP_BENEFICIARY_HISTORY,
+    /** A sub-task to run the {@link KeysetFixup}s registered with the {@link KeysetFixupEngine} */
+    POST_STARTUP_FIXUPS,
 
     /** Run the normal task */
     NORMAL,
@@ -96,11 +93,9 @@ public class RifLoaderIdleTasks {
   /* Hashing entities */
   private final LoadAppOptions options;
   private final EntityManagerFactory entityManagerFactory;
-  private final SecretKeyFactory secretKeyFactory;
 
-  /* Metrics */
-  private final Meter beneficaryMeter;
-  private final Meter historyMeter;
+  /* Fixups */
+  private final KeysetFixupEngine fixupEngine;
 
   /* Thread pool for post startup tasks */
   private final ExecutorService executorService;
@@ -123,12 +118,22 @@ public class RifLoaderIdleTasks {
       final SecretKeyFactory secretKeyFactory) {
     this.options = options;
     this.entityManagerFactory = entityManagerFactory;
-    this.secretKeyFactory = secretKeyFactory;
-
-    this.beneficaryMeter = appMetrics.meter("fixups.beneficiary.rate");
-    this.historyMeter = appMetrics.meter("fixups.beneficiary_history.rate");
 
     this.executorService = Executors.newFixedThreadPool(options.getFixupThreads());
+
+    this.fixupEngine =
+        new KeysetFixupEngine(
+            entityManagerFactory,
+            appMetrics,
+            executorService,
+            options.getFixupThreads(),
+            FIXUP_MAX_ROWS_PER_SECOND);
+    fixupEngine.register(
+        new MbiHashFixup("Beneficiaries", "beneficiaryId", true, options, secretKeyFactory));
+    fixupEngine.register(
+        new MbiHashFixup(
+            "BeneficiariesHistory", "beneficiaryHistoryId", false, options, secretKeyFactory));
+    ClaimIndexFixup.forAllClaimTypes().forEach(fixupEngine::register);
   }
 
   /**
@@ -140,14 +145,40 @@ public class RifLoaderIdleTasks {
     return currentTask;
   }
 
+  /**
+   * @return the {@link KeysetFixupEngine} that runs the {@link Task#POST_STARTUP_FIXUPS}, which
+   *     additional {@link KeysetFixup}s can be registered with (before that task starts)
+   */
+  public KeysetFixupEngine getFixupEngine() {
+    return fixupEngine;
+  }
+
   /**
    * Run the current idle task. This method is expected to be called whenever no RIF files are
    * present for process. It will respect the TASK_TIME_LIMIT to allow checking of RIF files and to
    * not interfer with RIF file processing.
    */
   public void doIdleTask() {
-    List<Callable<Boolean>> executors = getTaskExecutors(currentTask);
-    boolean isTaskDone = doExecutors(executors);
+    doIdleTask(() -> false);
+  }
+
+  /**
+   * Run the current idle task, as {@link #doIdleTask()} does, but end its time slice early if new
+   * data arrives.
+   *
+   * @param newDataAvailable returns <code>true</code> when new RIF files are waiting to be
+   *     processed, and so the time slice should end as soon as possible. Any exceptions that it
+   *     throws will be bubbled up (once the fixups in progress have stopped).
+   */
+  public void doIdleTask(BooleanSupplier newDataAvailable) {
+    boolean isTaskDone;
+    switch (currentTask) {
+      case POST_STARTUP_FIXUPS:
+        isTaskDone = doFixups(newDataAvailable);
+        break;
+      default:
+        isTaskDone = doExecutors(getTaskExecutors(currentTask));
+    }
     if (isTaskDone) {
       currentTask = getNextTask();
     }
@@ -164,10 +195,6 @@ public class RifLoaderIdleTasks {
         return Collections.singletonList(this::doInitialTask);
       case POST_STARTUP:
         return NULL_EXECUTORS;
-      case POST_STARTUP_FIXUP_BENEFICIARIES:
-        return makeExecutorsForPartitions(this::fixupBeneficiaryExecutor);
-      case POST_STARTUP_FIXUP_BENEFICIARY_HISTORY:
-        return makeExecutorsForPartitions(this::fixupHistoryExecutor);
       case NORMAL:
         return NULL_EXECUTORS;
       default:
@@ -176,15 +203,47 @@ public class RifLoaderIdleTasks {
   }
 
   /**
-   * Form a list of executors, one for each partition
+   * Run the fixups for one time slice, on the calling thread (their partitions are run by the
+   * executors). Failures of the fixups themselves are logged, and they'll be retried in the next
+   * time slice, but failures of the specified {@link BooleanSupplier} (e.g. for an invalid data set
+   * manifest) are bubbled up, as they would be if they'd happened outside of the idle tasks.
    *
-   * @param executor for a single partition
-   * @return the list of executors
+   * @param newDataAvailable returns <code>true</code> when the time slice should end early
+   * @return true if the fixups are complete
    */
-  private List<Callable<Boolean>> makeExecutorsForPartitions(Function<Integer, Boolean> executor) {
-    return IntStream.range(0, options.getFixupThreads())
-        .mapToObj((partition) -> (Callable<Boolean>) () -> executor.apply(partition))
-        .collect(Collectors.toList());
+  private boolean doFixups(BooleanSupplier newDataAvailable) {
+    final Instant startTime = Instant.now();
+    LOGGER.debug("Started a time slice: {}", currentTask);
+
+    List<RuntimeException> newDataErrors = new ArrayList<>(1);
+    BooleanSupplier newDataAvailableChecked =
+        () -> {
+          try {
+            return newDataAvailable.getAsBoolean();
+          } catch (RuntimeException ex) {
+            newDataErrors.add(ex);
+            throw ex;
+          }
+        };
+
+    boolean isTaskDone;
+    try {
+      isTaskDone = fixupEngine.run(TIME_SLICE_LIMIT, newDataAvailableChecked);
+    } catch (RuntimeException ex) {
+      if (newDataErrors.contains(ex)) throw ex;
+      LOGGER.error("Error executing in sub-task {}", getCurrentTask());
+      LOGGER.error("Exception executing a task", ex);
+      isTaskDone = false;
+    }
+
+    LOGGER.debug(
+        "Finished a time slice: {}, {} millis",
+        currentTask,
+        startTime.until(Instant.now(), ChronoUnit.MILLIS));
+    if (isTaskDone) {
+      LOGGER.info("Finished idle task: {}", currentTask);
+    }
+    return isTaskDone;
   }
 
   /**
@@ -232,14 +291,12 @@ public class RifLoaderIdleTasks {
         return Task.POST_STARTUP;
       case POST_STARTUP:
         if (options.isFixupsEnabled()) {
-          return Task.POST_STARTUP_FIXUP_BENEFICIARIES;
+          return Task.POST_STARTUP_FIXUPS;
         } else {
           LOGGER.info("PostStartup fixups are not enabled.");
           return Task.NORMAL;
         }
-      case POST_STARTUP_FIXUP_BENEFICIARIES:
-        return Task.POST_STARTUP_FIXUP_BENEFICIARY_HISTORY;
-      case POST_STARTUP_FIXUP_BENEFICIARY_HISTORY:
+      case POST_STARTUP_FIXUPS:
         return Task.NORMAL;
       case NORMAL:
       default:
@@ -274,197 +331,4 @@ public class RifLoaderIdleTasks {
 
     return true;
   }
-
-  /**
-   * Executor for the Beneficiaries table.
-   *
-   * @param partition to work on
-   * @return true if done with the work on this partition
-   */
-  public Boolean fixupBeneficiaryExecutor(final Integer partition) {
-    LOGGER.debug("Start a Beneficiary executor: partition {}", partition);
-    final AtomicInteger counter = new AtomicInteger(0);
-    final Boolean isDone =
-        doBatches(
-            session ->
-                fixupBatch(session, "Beneficiaries", "beneficiaryId", true, partition, counter));
-    beneficaryMeter.mark(counter.get());
-    LOGGER.debug("Finished a Beneficiary executor: {}, count {}", partition, counter.get());
-    return isDone;
-  }
-
-  /**
-   * Executor for the BeneficiariesHistory table.
-   *
-   * @param partition to work on
-   * @return true if done with the work on this partition
-   */
-  public Boolean fixupHistoryExecutor(final Integer partition) {
-    LOGGER.debug("Start a BeneficiariesHistory partition {}", partition);
-    final AtomicInteger counter = new AtomicInteger(0);
-    final Boolean isDone =
-        doBatches(
-            session ->
-                fixupBatch(
-                    session,
-                    "BeneficiariesHistory",
-                    "beneficiaryHistoryId",
-                    false,
-                    partition,
-                    counter));
-    historyMeter.mark(counter.get());
-    LOGGER.debug("Finished a History executor: {}, count {}", partition, counter.get());
-    return isDone;
-  }
-
-  /**
-   * Break up the work into a series of batches of record to update. Each batch is done in a
-   * transaction. After each batch, check the amount of time taken. Return after the
-   * TIME_SLICE_LIMIT is reached or the work is done.
-   *
-   * @param batchWorker does the work. Return the isDone value from the worker.
-   * @return the return value from the last batchWorker.
-   */
-  public boolean doBatches(final Function<StatelessSession, Boolean> batchWorker) {
-    // Use the stateless sessions to avoid the overhead of Hibernates caches which are not needed in
-    // this bulk update use-case
-    final Instant startTime = Instant.now();
-    final SessionFactory sf = entityManagerFactory.unwrap(SessionFactory.class);
-    final StatelessSession statelessSession = sf.openStatelessSession();
-    Transaction txn = null;
-    try {
-      boolean isDone = false;
-      while (!isDone && inPeriod(startTime, TIME_SLICE_LIMIT)) {
-        txn = statelessSession.beginTransaction();
-        isDone = batchWorker.apply(statelessSession);
-        txn.commit();
-      }
-      return isDone;
-    } finally {
-      if (statelessSession.isOpen()) {
-        if (txn != null && txn.isActive()) {
-          txn.rollback();
-        }
-        statelessSession.close();
-      }
-    }
-  }
-
-  /**
-   * Fixup a batch of records. Executed in the context of a transaction.
-   *
-   * @param session to use
-   * @param tableName to fetch from
-   * @param idName of the table
-   * @param hasTextId is true if the id is a varchar, false if the id is a bigint
-   * @param partition to fetch from
-   * @param counter to increment with the record count
-   * @return the number of records fixed up;
-   */
-  private boolean fixupBatch(
-      final StatelessSession session,
-      final String tableName,
-      final String idName,
-      final boolean hasTextId,
-      final int partition,
-      final AtomicInteger counter) {
-    List<Object[]> rows = fetchBatchRows(session, tableName, idName, hasTextId, partition);
-    if (rows.size() == 0) return true;
-    updateBatchMbiHash(session, rows, tableName, idName, hasTextId);
-    counter.addAndGet(rows.size());
-    return false;
-  }
-
-  /**
-   * Fetch the rows of a batch. Each row contains the tableId and a medicareBeneficiaryId.
-   *
-   * @param session to use
-   * @param tableName to fetch from
-   * @param idName of the table
-   * @param hasTextId is true if the id is a varchar, false if the id is a bigint
-   * @param partition to fetch from
-   * @return a list of rows
-   */
-  @SuppressWarnings("unchecked")
-  private List<Object[]> fetchBatchRows(
-      final StatelessSession session,
-      final String tableName,
-      final String idName,
-      final boolean hasTextId,
-      final int partition) {
-    final String select =
-        "SELECT b.\""
-            + idName
-            + "\", b.\"medicareBeneficiaryId\" "
-            + "FROM \""
-            + tableName
-            + "\" b "
-            + "WHERE b.\"mbiHash\" IS NULL AND b.\"medicareBeneficiaryId\" IS NOT NULL AND "
-            + (hasTextId
-                ? "MOD(CAST(b.\""
-                    + idName
-                    + "\" AS numeric), "
-                    + options.getFixupThreads()
-                    + ") = "
-                    + partition
-                : "MOD(b.\"" + idName + "\", " + options.getFixupThreads() + ") = " + partition);
-
-    return session.createNativeQuery(select).setMaxResults(BATCH_COUNT).getResultList();
-  }
-
-  /**
-   * Update the mbiHash field of the batch.
-   *
-   * @param session to use
-   * @param rows rows of id and medicareBeneficiaryId tuples
-   * @param tableName to update
-   * @param idName of the table
-   * @param hasTextId is true if the id is a varchar, false if the id is a bigint
-   */
-  private void updateBatchMbiHash(
-      final StatelessSession session,
-      final List<Object[]> rows,
-      String tableName,
-      String idName,
-      boolean hasTextId) {
-    final int rowSize = 100; // 64 for hash and 14 for MBI
-    StringBuilder update = new StringBuilder(rows.size() * rowSize + rowSize);
-
-    /*
-     * Developer Note:
-     * VALUES is a allows single statement update statement to update mulitple values.
-     * It's a common operator, but does not work on HSQLDB.
-     */
-    update
-        .append("UPDATE \"")
-        .append(tableName)
-        .append("\" b SET \"mbiHash\" = mbi_hash FROM (VALUES ");
-    for (int i = 0; i < rows.size(); i++) {
-      Object[] row = rows.get(i);
-      String mbi = (String) row[1];
-      String mbiHash = RifLoader.computeMbiHash(options, secretKeyFactory, mbi);
-      if (i > 0) update.append(",");
-      update
-          .append(hasTextId ? "('" : "(")
-          .append(row[0].toString())
-          .append(hasTextId ? "','" : ",'")
-          .append(mbiHash)
-          .append("')");
-    }
-    update.append(") AS t(id, mbi_hash) WHERE b.\"").append(idName).append("\" = id");
-
-    session.createNativeQuery(update.toString()).executeUpdate();
-  }
-
-  /**
-   * Any time left in this time slice?
-   *
-   * @param start of the period
-   * @param period duration
-   * @return true iff current period is less than the passed in period duration;
-   */
-  private static boolean inPeriod(final Instant start, final Duration period) {
-    Instant nowInstant = Instant.now();
-    return start.compareTo(nowInstant) <= 0 && start.plus(period).isAfter(nowInstant);
-  }
 }
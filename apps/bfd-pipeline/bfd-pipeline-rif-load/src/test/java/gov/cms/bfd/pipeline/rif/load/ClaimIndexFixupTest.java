@@ -0,0 +1,196 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.RifFileType;
+import gov.cms.bfd.model.rif.schema.DatabaseTestHelper;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link ClaimIndexFixup}. */
+public final class ClaimIndexFixupTest {
+  /**
+   * Verifies that {@link ClaimIndexFixup#forAllClaimTypes()} covers each claim/event type once,
+   * under a valid name, and that each one maps its columns onto the <code>BeneficiaryClaimIndex
+   * </code> columns in the right order.
+   */
+  @Test
+  public void forAllClaimTypes() {
+    Date dateFrom = Date.valueOf("2020-01-01");
+    Date dateThrough = Date.valueOf("2020-01-31");
+    Timestamp lastUpdated = Timestamp.valueOf("2020-02-01 00:00:00");
+
+    Set<String> claimTypes = new HashSet<>();
+    Set<String> names = new HashSet<>();
+    for (ClaimIndexFixup fixup : ClaimIndexFixup.forAllClaimTypes()) {
+      Assert.assertTrue(fixup.getName(), names.add(fixup.getName()));
+      Assert.assertTrue(fixup.getName(), fixup.getName().length() <= 60);
+      Assert.assertFalse(fixup.getName(), fixup.isServedData());
+
+      Object[] row = new Object[] {"claim", "beneficiary", dateFrom, dateThrough, lastUpdated};
+      Assert.assertEquals(row.length, 1 + fixup.getColumns().size());
+      Object[] update = fixup.computeUpdate(row);
+      claimTypes.add((String) update[0]);
+      Assert.assertArrayEquals(
+          new Object[] {update[0], "claim", "beneficiary", dateFrom, dateThrough, lastUpdated},
+          update);
+    }
+
+    Set<RifFileType> expectedClaimTypes = EnumSet.allOf(RifFileType.class);
+    expectedClaimTypes.remove(RifFileType.BENEFICIARY);
+    expectedClaimTypes.remove(RifFileType.BENEFICIARY_HISTORY);
+    expectedClaimTypes.remove(RifFileType.MEDICARE_BENEFICIARY_ID_HISTORY);
+    Assert.assertEquals(
+        expectedClaimTypes.stream().map(RifFileType::name).collect(Collectors.toSet()),
+        claimTypes);
+  }
+
+  /**
+   * Verifies that running the <code>CarrierClaims</code> {@link ClaimIndexFixup} adds the missing
+   * <code>BeneficiaryClaimIndex</code> entries for its claims, and leaves the existing ones alone.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void backfillsMissingEntries() throws SQLException {
+    DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterCleanAndSchema();
+    try (Connection connection = dataSource.getConnection()) {
+      insertRow(connection, "Beneficiaries", Collections.singletonMap("beneficiaryId", "1"));
+      for (int i = 1; i <= 3; i++) {
+        Map<String, Object> claim = new HashMap<>();
+        claim.put("claimId", "" + i);
+        claim.put("beneficiaryId", "1");
+        claim.put("dateFrom", Date.valueOf("2020-01-0" + i));
+        claim.put("dateThrough", Date.valueOf("2020-02-0" + i));
+        insertRow(connection, "CarrierClaims", claim);
+      }
+
+      Map<String, Object> existingEntry = new HashMap<>();
+      existingEntry.put("claimType", RifFileType.CARRIER.name());
+      existingEntry.put("claimId", "2");
+      existingEntry.put("beneficiaryId", "1");
+      existingEntry.put("dateFrom", Date.valueOf("2000-01-01"));
+      existingEntry.put("dateThrough", Date.valueOf("2000-01-01"));
+      insertRow(connection, "BeneficiaryClaimIndex", existingEntry);
+    }
+
+    EntityManagerFactory entityManagerFactory = RifLoader.createEntityManagerFactory(dataSource);
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      KeysetFixupEngine engine =
+          new KeysetFixupEngine(entityManagerFactory, new MetricRegistry(), executorService, 1, 0);
+      ClaimIndexFixup.forAllClaimTypes().stream()
+          .filter(f -> f.getTableName().equals("CarrierClaims"))
+          .forEach(engine::register);
+      Assert.assertTrue(engine.run(Duration.ofMinutes(5), () -> false));
+    } finally {
+      executorService.shutdownNow();
+      entityManagerFactory.close();
+    }
+
+    List<String> entries = new ArrayList<>();
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet results =
+            statement.executeQuery(
+                "select \"claimType\", \"claimId\", \"beneficiaryId\", \"dateFrom\","
+                    + " \"dateThrough\" from \"BeneficiaryClaimIndex\" order by \"claimId\"")) {
+      while (results.next())
+        entries.add(
+            String.format(
+                "%s:%s:%s:%s:%s",
+                results.getString(1),
+                results.getString(2),
+                results.getString(3),
+                results.getDate(4),
+                results.getDate(5)));
+    }
+    Assert.assertEquals(
+        Arrays.asList(
+            "CARRIER:1:1:2020-01-01:2020-02-01",
+            "CARRIER:2:1:2000-01-01:2000-01-01",
+            "CARRIER:3:1:2020-01-03:2020-02-03"),
+        entries);
+  }
+
+  /**
+   * Inserts a row into the specified table, using the specified values, and a placeholder value of
+   * the appropriate type for each other <code>not null</code> column.
+   *
+   * @param connection the {@link Connection} to use
+   * @param tableName the name of the table to insert into
+   * @param values the values to use for specific columns, by column name
+   * @throws SQLException (indicates test failure)
+   */
+  private static void insertRow(Connection connection, String tableName, Map<String, ?> values)
+      throws SQLException {
+    List<String> columnNames = new ArrayList<>();
+    List<Object> columnValues = new ArrayList<>();
+    try (ResultSet columns = connection.getMetaData().getColumns(null, null, tableName, null)) {
+      while (columns.next()) {
+        String columnName = columns.getString("COLUMN_NAME");
+        Object value = values.get(columnName);
+        if (value == null && columns.getInt("NULLABLE") == DatabaseMetaData.columnNoNulls)
+          value = createPlaceholderValue(columns.getInt("DATA_TYPE"));
+        if (value == null) continue;
+        columnNames.add("\"" + columnName + "\"");
+        columnValues.add(value);
+      }
+    }
+
+    String sql =
+        String.format(
+            "insert into \"%s\" (%s) values (%s)",
+            tableName,
+            String.join(", ", columnNames),
+            String.join(", ", Collections.nCopies(columnNames.size(), "?")));
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      for (int i = 0; i < columnValues.size(); i++) statement.setObject(i + 1, columnValues.get(i));
+      statement.executeUpdate();
+    }
+  }
+
+  /**
+   * @param dataType the {@link Types} constant for the column to create a value for
+   * @return a placeholder value for a column of the specified type
+   */
+  private static Object createPlaceholderValue(int dataType) {
+    switch (dataType) {
+      case Types.CHAR:
+      case Types.VARCHAR:
+        return "1";
+      case Types.DATE:
+        return Date.valueOf("2020-01-01");
+      case Types.TIMESTAMP:
+        return Timestamp.valueOf("2020-01-01 00:00:00");
+      case Types.BIT:
+      case Types.BOOLEAN:
+        return Boolean.FALSE;
+      default:
+        return 1;
+    }
+  }
+}
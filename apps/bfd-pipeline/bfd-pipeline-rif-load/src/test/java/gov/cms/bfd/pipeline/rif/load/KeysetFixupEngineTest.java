@@ -0,0 +1,394 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.schema.DatabaseTestHelper;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link KeysetFixupEngine} (and the {@link KeysetFixupRunner}s that it runs), which
+ * run a simple {@link KeysetFixup} against a table of test rows in the test database.
+ */
+public final class KeysetFixupEngineTest {
+  /** The name of the table of test rows that {@link TestFixup} fixes up. */
+  private static final String TABLE_NAME = "KeysetFixupTestRows";
+
+  /** A time slice long enough that none of these tests should ever run out of it. */
+  private static final Duration LONG_TIME_SLICE = Duration.ofMinutes(5);
+
+  private DataSource dataSource;
+  private EntityManagerFactory entityManagerFactory;
+  private ExecutorService executorService;
+
+  /** Creates the schema in a clean test database, along with the {@link ExecutorService}. */
+  @Before
+  public void setup() {
+    dataSource = DatabaseTestHelper.getTestDatabaseAfterCleanAndSchema();
+    entityManagerFactory = RifLoader.createEntityManagerFactory(dataSource);
+    executorService = Executors.newFixedThreadPool(4);
+  }
+
+  /** Closes the {@link EntityManagerFactory} and the {@link ExecutorService}. */
+  @After
+  public void cleanup() {
+    if (executorService != null) executorService.shutdownNow();
+    if (entityManagerFactory != null) entityManagerFactory.close();
+  }
+
+  /**
+   * Verifies that {@link KeysetFixupEngine#run(Duration, BooleanSupplier)} splits a fixup's table
+   * into partitions, fixes up every row, and records each partition as completed.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void runFixesEveryRow() throws SQLException {
+    createRows(25000);
+    KeysetFixupEngine engine = createEngine(4, 0, Duration.ofSeconds(5));
+
+    Assert.assertTrue(engine.run(LONG_TIME_SLICE, () -> false));
+
+    Assert.assertTrue(engine.isComplete());
+    Assert.assertEquals(25000, countFixedRows("1 = 1"));
+    // There are only enough rows for two partitions of at least 10000 rows each.
+    Assert.assertEquals(
+        Arrays.asList(TestFixup.NAME + "#00", TestFixup.NAME + "#01"),
+        new ArrayList<>(readProgress().keySet()));
+    Assert.assertTrue(readProgress().values().stream().allMatch(Boolean::booleanValue));
+  }
+
+  /**
+   * Verifies that {@link KeysetFixupEngine#run(Duration, BooleanSupplier)} picks up where the saved
+   * <code>FixupProgress</code> rows left off, skipping completed partitions and the keys that the
+   * others have already been run through, rather than starting over.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void runResumesFromSavedProgress() throws SQLException {
+    createRows(1000);
+    insertProgress(TestFixup.NAME + "#00", null, "500", true);
+    insertProgress(TestFixup.NAME + "#01", "700", null, false);
+    KeysetFixupEngine engine = createEngine(4, 0, Duration.ofSeconds(5));
+
+    Assert.assertTrue(engine.run(LONG_TIME_SLICE, () -> false));
+
+    Assert.assertEquals(0, countFixedRows("\"id\" <= 700"));
+    Assert.assertEquals(300, countFixedRows("\"id\" > 700"));
+    Assert.assertEquals(2, readProgress().size());
+    Assert.assertTrue(readProgress().values().stream().allMatch(Boolean::booleanValue));
+  }
+
+  /**
+   * Verifies that {@link KeysetFixupEngine#run(Duration, BooleanSupplier)} stops early (and saves
+   * its progress) once new data is available, and that a new {@link KeysetFixupEngine} (as after a
+   * restart) then finishes the job from there.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void runYieldsWhenNewDataIsAvailable() throws SQLException {
+    createRows(20000);
+    // Throttled so that it would take at least 10 seconds, if it didn't yield.
+    KeysetFixupEngine engine = createEngine(1, 2000, Duration.ofMillis(10));
+    AtomicInteger newDataChecks = new AtomicInteger(0);
+
+    // New data "arrives" once the first batch has been committed.
+    Assert.assertFalse(
+        engine.run(
+            LONG_TIME_SLICE,
+            () -> {
+              newDataChecks.incrementAndGet();
+              try {
+                return countFixedRows("1 = 1") > 0;
+              } catch (SQLException e) {
+                throw new IllegalStateException(e);
+              }
+            }));
+
+    Assert.assertFalse(engine.isComplete());
+    Assert.assertTrue(newDataChecks.get() > 0);
+    int fixedRows = countFixedRows("1 = 1");
+    Assert.assertTrue("" + fixedRows, fixedRows > 0 && fixedRows < 20000);
+    Assert.assertEquals(1, readProgress().size());
+    Assert.assertFalse(readProgress().values().iterator().next());
+
+    KeysetFixupEngine restartedEngine = createEngine(1, 0, Duration.ofMillis(10));
+    Assert.assertTrue(restartedEngine.run(LONG_TIME_SLICE, () -> false));
+    Assert.assertEquals(20000, countFixedRows("1 = 1"));
+    Assert.assertTrue(readProgress().values().iterator().next());
+  }
+
+  /**
+   * Verifies that {@link KeysetFixupEngine#run(Duration, BooleanSupplier)} stops its partitions and
+   * then rethrows the error, when the check for new data fails (e.g. for an invalid manifest),
+   * rather than treating that as new data being available.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void runPropagatesNewDataCheckFailures() throws SQLException {
+    createRows(20000);
+    // Throttled so that it would take at least 10 seconds, if it didn't stop.
+    KeysetFixupEngine engine = createEngine(1, 2000, Duration.ofMillis(10));
+    IllegalStateException newDataError = new IllegalStateException("invalid manifest");
+
+    try {
+      engine.run(
+          LONG_TIME_SLICE,
+          () -> {
+            throw newDataError;
+          });
+      Assert.fail("The new data check's error should have been rethrown.");
+    } catch (IllegalStateException e) {
+      Assert.assertSame(newDataError, e);
+    }
+
+    // The partition should have been stopped (and waited for), with its progress saved.
+    Assert.assertFalse(engine.isComplete());
+    Assert.assertTrue(countFixedRows("1 = 1") < 20000);
+    Assert.assertFalse(readProgress().values().iterator().next());
+    KeysetFixupEngine restartedEngine = createEngine(1, 0, Duration.ofMillis(10));
+    Assert.assertTrue(restartedEngine.run(LONG_TIME_SLICE, () -> false));
+    Assert.assertEquals(20000, countFixedRows("1 = 1"));
+  }
+
+  /**
+   * Verifies that {@link KeysetFixupEngine#run(Duration, BooleanSupplier)} treats an interrupted
+   * check for new data as a request to yield, rather than as an error.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void runYieldsWhenNewDataCheckIsInterrupted() throws SQLException {
+    createRows(20000);
+    KeysetFixupEngine engine = createEngine(1, 2000, Duration.ofMillis(10));
+
+    Assert.assertFalse(
+        engine.run(
+            LONG_TIME_SLICE,
+            () -> {
+              throw new RuntimeException(new InterruptedException());
+            }));
+
+    Assert.assertFalse(engine.isComplete());
+    Assert.assertTrue(countFixedRows("1 = 1") < 20000);
+  }
+
+  /**
+   * Verifies that {@link KeysetFixupRunner#adaptBatchSize(Duration)} grows the batch size after
+   * fast batches, shrinks it after slow ones, leaves it alone after ones close to the target, and
+   * keeps it within its limits.
+   */
+  @Test
+  public void adaptBatchSize() {
+    KeysetFixupRunner runner =
+        new KeysetFixupRunner(null, TestFixup.NAME + "#00", null, null, false, null, null, null);
+    Assert.assertEquals(KeysetFixupRunner.INITIAL_BATCH_SIZE, runner.getBatchSize());
+
+    runner.adaptBatchSize(KeysetFixupRunner.TARGET_BATCH_DURATION);
+    Assert.assertEquals(KeysetFixupRunner.INITIAL_BATCH_SIZE, runner.getBatchSize());
+
+    runner.adaptBatchSize(Duration.ZERO);
+    Assert.assertEquals(KeysetFixupRunner.INITIAL_BATCH_SIZE * 2, runner.getBatchSize());
+    for (int i = 0; i < 20; i++) runner.adaptBatchSize(Duration.ZERO);
+    Assert.assertEquals(KeysetFixupRunner.MAX_BATCH_SIZE, runner.getBatchSize());
+
+    Duration slowBatch = KeysetFixupRunner.TARGET_BATCH_DURATION.multipliedBy(3);
+    runner.adaptBatchSize(slowBatch);
+    Assert.assertEquals(KeysetFixupRunner.MAX_BATCH_SIZE / 2, runner.getBatchSize());
+    for (int i = 0; i < 20; i++) runner.adaptBatchSize(slowBatch);
+    Assert.assertEquals(KeysetFixupRunner.MIN_BATCH_SIZE, runner.getBatchSize());
+  }
+
+  /**
+   * @param partitionCount the number of partitions to split the fixup into
+   * @param maxRowsPerSecond the maximum number of rows per second to read, or <code>0</code>
+   * @param yieldCheckInterval how often to check for new data
+   * @return a new {@link KeysetFixupEngine}, with a {@link TestFixup} registered
+   */
+  private KeysetFixupEngine createEngine(
+      int partitionCount, int maxRowsPerSecond, Duration yieldCheckInterval) {
+    KeysetFixupEngine engine =
+        new KeysetFixupEngine(
+            entityManagerFactory,
+            new MetricRegistry(),
+            executorService,
+            partitionCount,
+            maxRowsPerSecond,
+            yieldCheckInterval);
+    engine.register(new TestFixup());
+    return engine;
+  }
+
+  /**
+   * Creates the {@link #TABLE_NAME} table, with the specified number of rows, none of which have
+   * been fixed up yet.
+   *
+   * @param rowCount the number of rows to create, which will have the IDs <code>1</code> through
+   *     <code>rowCount</code>
+   * @throws SQLException (indicates test failure)
+   */
+  private void createRows(int rowCount) throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute(
+            String.format(
+                "create table \"%s\" (\"id\" bigint not null, \"value\" varchar(16) not null,"
+                    + " \"fixed\" varchar(32), primary key (\"id\"))",
+                TABLE_NAME));
+      }
+      try (PreparedStatement insert =
+          connection.prepareStatement(
+              String.format("insert into \"%s\" (\"id\", \"value\") values (?, ?)", TABLE_NAME))) {
+        for (int id = 1; id <= rowCount; id++) {
+          insert.setLong(1, id);
+          insert.setString(2, "value" + id);
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+    }
+  }
+
+  /**
+   * @param condition the SQL condition to filter the rows by
+   * @return the number of rows matching the specified condition that have been (correctly) fixed
+   *     up
+   * @throws SQLException (indicates test failure)
+   */
+  private int countFixedRows(String condition) throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet results =
+            statement.executeQuery(
+                String.format(
+                    "select count(*) from \"%s\" where \"fixed\" = \"value\" || '-fixed' and %s",
+                    TABLE_NAME, condition))) {
+      results.next();
+      return results.getInt(1);
+    }
+  }
+
+  /**
+   * @param fixupName the <code>FixupProgress</code> name of the partition
+   * @param lastKey the key that the partition has been run through, or <code>null</code>
+   * @param upperKey the last key in the partition, or <code>null</code>
+   * @param completed whether or not the partition has been completed
+   * @throws SQLException (indicates test failure)
+   */
+  private void insertProgress(String fixupName, String lastKey, String upperKey, boolean completed)
+      throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement insert =
+            connection.prepareStatement(
+                "insert into \"FixupProgress\" (\"fixupName\", \"lastKey\", \"upperKey\","
+                    + " \"completed\", \"rowsFixed\", \"lastUpdated\")"
+                    + " values (?, ?, ?, ?, 0, ?)")) {
+      insert.setString(1, fixupName);
+      insert.setString(2, lastKey);
+      insert.setString(3, upperKey);
+      insert.setBoolean(4, completed);
+      insert.setTimestamp(5, Timestamp.from(Instant.now()));
+      insert.executeUpdate();
+    }
+  }
+
+  /**
+   * @return whether or not each of the {@link TestFixup}'s partitions has been completed, by their
+   *     <code>FixupProgress</code> names, in order
+   * @throws SQLException (indicates test failure)
+   */
+  private Map<String, Boolean> readProgress() throws SQLException {
+    Map<String, Boolean> progress = new TreeMap<>();
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet results =
+            statement.executeQuery(
+                "select \"fixupName\", \"completed\" from \"FixupProgress\"")) {
+      while (results.next()) progress.put(results.getString(1), results.getBoolean(2));
+    }
+    return progress;
+  }
+
+  /** A {@link KeysetFixup} that sets each {@link #TABLE_NAME} row's "fixed" column. */
+  private static final class TestFixup implements KeysetFixup {
+    /** The value of {@link #getName()}. */
+    private static final String NAME = "KeysetFixupEngineTest";
+
+    /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getName() */
+    @Override
+    public String getName() {
+      return NAME;
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getTableName() */
+    @Override
+    public String getTableName() {
+      return TABLE_NAME;
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getKeyColumn() */
+    @Override
+    public String getKeyColumn() {
+      return "id";
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#hasTextKey() */
+    @Override
+    public boolean hasTextKey() {
+      return false;
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getColumns() */
+    @Override
+    public List<String> getColumns() {
+      return Arrays.asList("value");
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getCondition() */
+    @Override
+    public String getCondition() {
+      return "\"fixed\" is null";
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#getUpdateSql() */
+    @Override
+    public String getUpdateSql() {
+      return String.format("update \"%s\" set \"fixed\" = ? where \"id\" = ?", TABLE_NAME);
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#computeUpdate(java.lang.Object[]) */
+    @Override
+    public Object[] computeUpdate(Object[] row) {
+      return new Object[] {row[1] + "-fixed", row[0]};
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.KeysetFixup#isServedData() */
+    @Override
+    public boolean isServedData() {
+      return false;
+    }
+  }
+}
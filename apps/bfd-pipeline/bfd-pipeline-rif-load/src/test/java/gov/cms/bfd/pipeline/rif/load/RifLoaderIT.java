@@ -3,6 +3,8 @@ package gov.cms.bfd.pipeline.rif.load;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Slf4jReporter;
 import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.BeneficiaryClaimIndex;
+import gov.cms.bfd.model.rif.BeneficiaryClaimIndex.BeneficiaryClaimIndexId;
 import gov.cms.bfd.model.rif.BeneficiaryHistory;
 import gov.cms.bfd.model.rif.BeneficiaryHistory_;
 import gov.cms.bfd.model.rif.CarrierClaim;
@@ -14,13 +16,23 @@ import gov.cms.bfd.model.rif.samples.StaticRifResource;
 import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
 import gov.cms.bfd.model.rif.schema.DatabaseTestHelper;
 import gov.cms.bfd.pipeline.rif.extract.RifFilesProcessor;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -40,14 +52,23 @@ import org.slf4j.LoggerFactory;
 public final class RifLoaderIT {
   private static final Logger LOGGER = LoggerFactory.getLogger(RifLoaderIT.class);
 
+  /**
+   * The columns that {@link #readTables(DataSource)} skips, as their values legitimately differ
+   * from one load to the next: timestamps, and IDs from database sequences (which depend on the
+   * order that the loader threads get to each record in).
+   */
+  private static final List<String> UNCOMPARABLE_COLUMNS =
+      Arrays.asList("lastUpdated", "beneficiaryHistoryId");
+
   /**
    * Runs {@link gov.cms.bfd.pipeline.rif.load.RifLoader} against the {@link
-   * StaticRifResourceGroup#SAMPLE_A} data.
+   * StaticRifResourceGroup#SAMPLE_A} data, and verifies that it marked a new load generation.
    */
   @Test
   public void loadSampleA() {
     DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterClean();
     loadSample(dataSource, StaticRifResourceGroup.SAMPLE_A);
+    Assert.assertTrue(readLoadGeneration(dataSource) > 0);
   }
 
   /**
@@ -148,8 +169,33 @@ public final class RifLoaderIT {
     loadSample(dataSource, StaticRifResourceGroup.SAMPLE_MCT_UPDATE_3);
   }
 
-  /** Tests the RifLoaderIdleTasks class with a Sample. Note: only works with Postgres. */
-  @Ignore
+  /**
+   * Runs {@link gov.cms.bfd.pipeline.rif.load.RifLoader} against several of the samples with
+   * {@link LoadAppOptions#isIdempotencyRequired()} turned off, once with the direct JDBC inserts
+   * and once with just Hibernate, and verifies that both loads leave exactly the same rows in the
+   * database.
+   */
+  @Test
+  public void loadSamplesNonIdempotently() {
+    List<List<StaticRifResourceGroup>> sampleSets =
+        Arrays.asList(
+            Arrays.asList(StaticRifResourceGroup.SAMPLE_A),
+            Arrays.asList(StaticRifResourceGroup.SAMPLE_A, StaticRifResourceGroup.SAMPLE_U),
+            Arrays.asList(StaticRifResourceGroup.SAMPLE_MCT));
+    for (List<StaticRifResourceGroup> sampleSet : sampleSets) {
+      Map<String, List<String>> hibernateRows = loadSamplesNonIdempotently(sampleSet, false);
+      Map<String, List<String>> jdbcRows = loadSamplesNonIdempotently(sampleSet, true);
+
+      Assert.assertEquals(hibernateRows.keySet(), jdbcRows.keySet());
+      for (String table : hibernateRows.keySet())
+        Assert.assertEquals(
+            String.format("Rows differ for %s in table '%s'.", sampleSet, table),
+            hibernateRows.get(table),
+            jdbcRows.get(table));
+    }
+  }
+
+  /** Tests the RifLoaderIdleTasks class with a Sample. */
   @Test
   public void runIdleTasks() {
     final DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterClean();
@@ -157,7 +203,7 @@ public final class RifLoaderIT {
     RifLoader loader = createLoader(dataSource, true);
 
     // The sample are loaded with mbiHash set, clear them for this test
-    clearMbiHash(loader);
+    clearMbiHash(dataSource);
     final String selectBeneficiary = "select b from Beneficiary b where b.mbiHash is null";
     EntityManager em = RifLoader.createEntityManagerFactory(dataSource).createEntityManager();
     Assert.assertFalse(
@@ -168,6 +214,12 @@ public final class RifLoaderIT {
         "Should not be empty now",
         em.createQuery(selectHistory, BeneficiaryHistory.class).getResultList().isEmpty());
 
+    // Also clear the claim index, which should be backfilled
+    final String selectClaimIndex = "select count(*) from BeneficiaryClaimIndex";
+    final Long claimIndexCount = em.createQuery(selectClaimIndex, Long.class).getSingleResult();
+    Assert.assertNotEquals("Should not be empty yet", Long.valueOf(0), claimIndexCount);
+    executeUpdates(dataSource, "delete from BeneficiaryClaimIndex");
+
     // Run the initial task
     Assert.assertEquals(
         "Should be running the initial task",
@@ -182,17 +234,10 @@ public final class RifLoaderIT {
         loader.getIdleTasks().getCurrentTask());
     loader.doIdleTask();
 
-    // Run the post startup beneficiary task
+    // Run the post startup fixups task
     Assert.assertEquals(
-        "Should be running the post-startup task",
-        RifLoaderIdleTasks.Task.POST_STARTUP_FIXUP_BENEFICIARIES,
-        loader.getIdleTasks().getCurrentTask());
-    loader.doIdleTask();
-
-    // Run the post startup beneficiary history task
-    Assert.assertEquals(
-        "Should be running the post-startup task",
-        RifLoaderIdleTasks.Task.POST_STARTUP_FIXUP_BENEFICIARY_HISTORY,
+        "Should be running the post-startup fixups task",
+        RifLoaderIdleTasks.Task.POST_STARTUP_FIXUPS,
         loader.getIdleTasks().getCurrentTask());
     loader.doIdleTask();
 
@@ -207,6 +252,10 @@ public final class RifLoaderIT {
     Assert.assertTrue(
         "Should all mbiHash should have been filled",
         em.createQuery(selectHistory, BeneficiaryHistory.class).getResultList().isEmpty());
+    Assert.assertEquals(
+        "Expect the claim index entries to have been backfilled",
+        claimIndexCount,
+        em.createQuery(selectClaimIndex, Long.class).getSingleResult());
 
     loader.close();
   }
@@ -263,7 +312,7 @@ public final class RifLoaderIT {
     final RifLoader loader = createLoader(dataSource, true);
 
     // The sample are loaded with mbiHash set, clear them for this test
-    clearMbiHash(loader);
+    clearMbiHash(dataSource);
 
     // Run the initial task
     Assert.assertEquals(
@@ -296,6 +345,20 @@ public final class RifLoaderIT {
    * @param sampleGroup the {@link StaticRifResourceGroup} to load
    */
   private void loadSample(DataSource dataSource, StaticRifResourceGroup sampleGroup) {
+    loadSample(sampleGroup, RifLoaderTestUtils.getLoadOptions(dataSource), true);
+  }
+
+  /**
+   * Runs {@link gov.cms.bfd.pipeline.rif.load.RifLoader} against the specified {@link
+   * StaticRifResourceGroup}.
+   *
+   * @param sampleGroup the {@link StaticRifResourceGroup} to load
+   * @param options the {@link LoadAppOptions} to load with
+   * @param jdbcInsertsAllowed the value to use for {@link RifLoader#setJdbcInsertsAllowed(boolean)}
+   * @return the number of record batches that were inserted directly via JDBC
+   */
+  private long loadSample(
+      StaticRifResourceGroup sampleGroup, LoadAppOptions options, boolean jdbcInsertsAllowed) {
     // Generate the sample RIF data to feed through the pipeline.
     List<StaticRifResource> sampleResources =
         Arrays.stream(sampleGroup.getResources()).collect(Collectors.toList());
@@ -308,13 +371,14 @@ public final class RifLoaderIT {
     // Create the processors that will handle each stage of the pipeline.
     MetricRegistry appMetrics = new MetricRegistry();
     RifFilesProcessor processor = new RifFilesProcessor();
-    LoadAppOptions options = RifLoaderTestUtils.getLoadOptions(dataSource);
     RifLoader loader = new RifLoader(appMetrics, options);
+    loader.setJdbcInsertsAllowed(jdbcInsertsAllowed);
 
     // Link up the pipeline and run it.
     LOGGER.info("Loading RIF records...");
     AtomicInteger failureCount = new AtomicInteger(0);
     AtomicInteger loadCount = new AtomicInteger(0);
+    long jdbcInsertBatches = 0;
     for (RifFileEvent rifFileEvent : rifFilesEvent.getFileEvents()) {
       RifFileRecords rifFileRecords = processor.produceRecords(rifFileEvent);
       loader.process(
@@ -327,6 +391,11 @@ public final class RifLoaderIT {
             loadCount.incrementAndGet();
           });
       Slf4jReporter.forRegistry(rifFileEvent.getEventMetrics()).outputTo(LOGGER).build().report();
+      jdbcInsertBatches +=
+          rifFileEvent
+              .getEventMetrics()
+              .timer(MetricRegistry.name(RifLoader.class.getSimpleName(), "jdbcInserts"))
+              .getCount();
     }
     LOGGER.info("Loaded RIF records: '{}'.", loadCount.get());
     Slf4jReporter.forRegistry(appMetrics).outputTo(LOGGER).build().report();
@@ -364,6 +433,104 @@ public final class RifLoaderIT {
     }
     LOGGER.info("All records found in DB.");
     loader.close();
+    return jdbcInsertBatches;
+  }
+
+  /**
+   * Loads the specified {@link StaticRifResourceGroup}s (in order) into a freshly-cleaned test DB,
+   * with {@link LoadAppOptions#isIdempotencyRequired()} turned off.
+   *
+   * @param sampleGroups the {@link StaticRifResourceGroup}s to load
+   * @param jdbcInsertsAllowed the value to use for {@link RifLoader#setJdbcInsertsAllowed(boolean)}
+   * @return the resulting rows in the database, as returned by {@link #readTables(DataSource)}
+   */
+  private Map<String, List<String>> loadSamplesNonIdempotently(
+      List<StaticRifResourceGroup> sampleGroups, boolean jdbcInsertsAllowed) {
+    DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterClean();
+    LoadAppOptions defaultOptions = RifLoaderTestUtils.getLoadOptions(dataSource);
+    LoadAppOptions options =
+        new LoadAppOptions(
+            defaultOptions.getHicnHashIterations(),
+            defaultOptions.getHicnHashPepper(),
+            defaultOptions.getDatabaseDataSource(),
+            defaultOptions.getLoaderThreads(),
+            false,
+            defaultOptions.isFixupsEnabled(),
+            defaultOptions.getFixupThreads());
+
+    long jdbcInsertBatches = 0;
+    for (StaticRifResourceGroup sampleGroup : sampleGroups)
+      jdbcInsertBatches += loadSample(sampleGroup, options, jdbcInsertsAllowed);
+
+    // Make sure that each load actually went down the path it was supposed to.
+    Assert.assertEquals(jdbcInsertsAllowed, jdbcInsertBatches > 0);
+
+    return readTables(dataSource);
+  }
+
+  /**
+   * @param dataSource the {@link DataSource} for the test DB to read from
+   * @return the sum of the <code>LoadGenerations</code> counters, as read by the server's caches
+   */
+  private static long readLoadGeneration(DataSource dataSource) {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet results =
+            statement.executeQuery("select sum(\"generation\") from \"LoadGenerations\"")) {
+      results.next();
+      return results.getLong(1);
+    } catch (SQLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @param dataSource the {@link DataSource} for the test DB to read from
+   * @return the (sorted) contents of each of the BFD tables in the specified DB, keyed by table
+   *     name, with each row rendered as a {@link String} of its column values (other than the
+   *     {@link #UNCOMPARABLE_COLUMNS})
+   */
+  private static Map<String, List<String>> readTables(DataSource dataSource) {
+    Map<String, List<String>> tables = new TreeMap<>();
+    try (Connection connection = dataSource.getConnection()) {
+      List<String> tableNames = new ArrayList<>();
+      try (ResultSet tablesResults =
+          connection.getMetaData().getTables(null, null, "%", new String[] {"TABLE"})) {
+        while (tablesResults.next()) {
+          String tableName = tablesResults.getString("TABLE_NAME");
+          if (!"public".equalsIgnoreCase(tablesResults.getString("TABLE_SCHEM"))) continue;
+          if ("schema_version".equalsIgnoreCase(tableName)) continue;
+          // Its counters are spread across slots by loader thread, so they'll never match.
+          if ("LoadGenerations".equalsIgnoreCase(tableName)) continue;
+          tableNames.add(tableName);
+        }
+      }
+
+      for (String tableName : tableNames) {
+        List<String> rows = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+            ResultSet rowsResults = statement.executeQuery("select * from \"" + tableName + "\"")) {
+          ResultSetMetaData rowsMetaData = rowsResults.getMetaData();
+          while (rowsResults.next()) {
+            StringBuilder row = new StringBuilder();
+            for (int column = 1; column <= rowsMetaData.getColumnCount(); column++) {
+              String columnName = rowsMetaData.getColumnName(column);
+              if (UNCOMPARABLE_COLUMNS.stream().anyMatch(columnName::equalsIgnoreCase)) continue;
+              row.append(columnName)
+                  .append('=')
+                  .append(Objects.toString(rowsResults.getObject(column)))
+                  .append(", ");
+            }
+            rows.add(row.toString());
+          }
+        }
+        Collections.sort(rows);
+        tables.put(tableName, rows);
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException(e);
+    }
+    return tables;
   }
 
   /**
@@ -426,6 +593,20 @@ public final class RifLoaderIT {
           Object recordId = entityManagerFactory.getPersistenceUnitUtil().getIdentifier(record);
           Object recordFromDb = entityManager.find(record.getClass(), recordId);
           Assert.assertNotNull(recordFromDb);
+
+          // Claims/events should also all have an entry in the BeneficiaryClaimIndex.
+          Optional<BeneficiaryClaimIndex> claimIndexEntry = BeneficiaryClaimIndex.from(record);
+          if (claimIndexEntry.isPresent()) {
+            BeneficiaryClaimIndex claimIndexEntryFromDb =
+                entityManager.find(
+                    BeneficiaryClaimIndex.class,
+                    new BeneficiaryClaimIndexId(
+                        claimIndexEntry.get().getClaimType(), claimIndexEntry.get().getClaimId()));
+            Assert.assertNotNull(claimIndexEntryFromDb);
+            Assert.assertEquals(
+                claimIndexEntry.get().getBeneficiaryId(), claimIndexEntryFromDb.getBeneficiaryId());
+            Assert.assertTrue(claimIndexEntryFromDb.getLastUpdated().isPresent());
+          }
         }
       }
     } finally {
@@ -457,16 +638,35 @@ public final class RifLoaderIT {
   /**
    * Clear the MBI hash fields in the db
    *
-   * @param loader the loader and the db connection within
+   * @param dataSource the {@link DataSource} of the db
    */
-  private static void clearMbiHash(final RifLoader loader) {
-    loader
-        .getIdleTasks()
-        .doBatches(
-            (session) -> {
-              session.createQuery("update Beneficiary set mbiHash = null").executeUpdate();
-              session.createQuery("update BeneficiaryHistory set mbiHash = null").executeUpdate();
-              return true;
-            });
+  private static void clearMbiHash(DataSource dataSource) {
+    executeUpdates(
+        dataSource,
+        "update Beneficiary set mbiHash = null",
+        "update BeneficiaryHistory set mbiHash = null");
+  }
+
+  /**
+   * Runs the specified JPQL updates (or deletes) in a single transaction.
+   *
+   * @param dataSource the {@link DataSource} of the db to update
+   * @param updates the JPQL statements to run
+   */
+  private static void executeUpdates(DataSource dataSource, String... updates) {
+    EntityManagerFactory entityManagerFactory = RifLoader.createEntityManagerFactory(dataSource);
+    EntityManager entityManager = null;
+    try {
+      entityManager = entityManagerFactory.createEntityManager();
+      entityManager.getTransaction().begin();
+      for (String update : updates) entityManager.createQuery(update).executeUpdate();
+      entityManager.getTransaction().commit();
+    } finally {
+      if (entityManager != null) {
+        if (entityManager.getTransaction().isActive()) entityManager.getTransaction().rollback();
+        entityManager.close();
+      }
+      entityManagerFactory.close();
+    }
   }
 }
@@ -169,6 +169,7 @@ BFD_PORT="${serverPortHttps}" \
 	"-DbfdServer.db.username=" \
 	"-DbfdServer.db.password=" \
 	"-DbfdServer.db.schema.apply=true" \
+	"-DbfdServer.export.dir=${workDirectory}/export" \
 	-jar "${serverLauncher}" \
 	>"${serverLog}" 2>&1 \
 	&
@@ -0,0 +1,166 @@
+package gov.cms.bfd.server.war;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A latency-based limit on the number of concurrent in-flight requests, along with a short queue
+ * for requests that arrive while the limit has been reached. Used by {@link
+ * ConcurrencyLimitFilter}.
+ *
+ * <p>The limit adapts (in the manner of TCP Vegas or Netflix's "gradient" limiters) to the latency
+ * of the requests that have completed: while requests are taking about as long as the fastest
+ * recently-seen ones, the limit creeps up; as they start taking longer (i.e. as they start
+ * competing with each other for threads, connections, or CPU), the limit is cut back in proportion.
+ * The fastest latency is periodically forgotten, so that the limit can recover after a change in
+ * the workload.
+ *
+ * <p>A request that returns a thousand resources will naturally take far longer than one that
+ * returns a single resource, even on an idle server, so latencies are only ever compared against
+ * those of requests that returned a similar number of resources: the fastest latency is tracked
+ * separately for each power-of-two bucket of result counts. Otherwise, a mix of small and large
+ * results would look just like contention, and the limit would be cut for no reason.
+ *
+ * <p>All state is guarded by this object's monitor, as each acquire/release is cheap compared to
+ * the requests themselves.
+ */
+public final class AdaptiveConcurrencyLimit {
+  /** How much slower than the minimum latency a request can be before the limit is cut. */
+  private static final double LATENCY_TOLERANCE = 2.0;
+
+  /** The weight that each new limit is given, when averaged in with the current limit. */
+  private static final double SMOOTHING = 0.2;
+
+  /** The number of samples after which the minimum latency will be forgotten. */
+  private static final int MIN_LATENCY_RESET_SAMPLES = 1000;
+
+  /**
+   * The number of result count buckets that the minimum latency is tracked for: one for empty
+   * results, and then one per power of two.
+   */
+  private static final int RESULT_COUNT_BUCKETS = Integer.SIZE;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final int maxQueued;
+  private double limit;
+  private int inFlight;
+  private int queued;
+  private final long[] minLatencyNanos;
+  private int sampleCount;
+
+  /**
+   * Constructs a new {@link AdaptiveConcurrencyLimit}.
+   *
+   * @param minLimit the lowest that the limit may be cut to
+   * @param initialLimit the starting limit
+   * @param maxLimit the highest that the limit may be raised to
+   * @param maxQueued the maximum number of requests that may wait for a slot at any one time
+   */
+  public AdaptiveConcurrencyLimit(int minLimit, int initialLimit, int maxLimit, int maxQueued) {
+    if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit || maxQueued < 0)
+      throw new IllegalArgumentException();
+
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.maxQueued = maxQueued;
+    this.limit = initialLimit;
+    this.inFlight = 0;
+    this.queued = 0;
+    this.minLatencyNanos = new long[RESULT_COUNT_BUCKETS];
+    Arrays.fill(minLatencyNanos, Long.MAX_VALUE);
+    this.sampleCount = 0;
+  }
+
+  /**
+   * Acquires an in-flight slot, waiting (briefly) for one to free up if the limit has already been
+   * reached. Every successful call must be followed by a call to {@link #release(long, int)}.
+   *
+   * @param maxWaitMilliseconds the maximum number of milliseconds to wait for a slot
+   * @return <code>true</code> if a slot was acquired, or <code>false</code> if the request should
+   *     be rejected, as the queue was full or no slot freed up in time
+   * @throws InterruptedException Any {@link InterruptedException}s encountered while waiting will
+   *     be bubbled up.
+   */
+  public synchronized boolean tryAcquire(long maxWaitMilliseconds) throws InterruptedException {
+    if (inFlight < getLimit()) {
+      inFlight++;
+      return true;
+    }
+    if (queued >= maxQueued || maxWaitMilliseconds <= 0) return false;
+
+    queued++;
+    try {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMilliseconds);
+      while (inFlight >= getLimit()) {
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) return false;
+        TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+      }
+      inFlight++;
+      return true;
+    } finally {
+      queued--;
+    }
+  }
+
+  /**
+   * Releases an in-flight slot acquired by {@link #tryAcquire(long)}, and updates the limit based
+   * on how long the request took, compared to the fastest recent request that returned a similar
+   * number of resources.
+   *
+   * @param latencyNanos the number of nanoseconds that the request took to handle
+   * @param resultCount the number of resources that the request returned
+   */
+  public synchronized void release(long latencyNanos, int resultCount) {
+    int inFlightAtCompletion = inFlight;
+    inFlight--;
+
+    if (++sampleCount >= MIN_LATENCY_RESET_SAMPLES) {
+      sampleCount = 0;
+      Arrays.fill(minLatencyNanos, Long.MAX_VALUE);
+    }
+    int bucket = computeResultCountBucket(resultCount);
+    long minLatencyNanosForBucket = Math.min(minLatencyNanos[bucket], Math.max(1L, latencyNanos));
+    minLatencyNanos[bucket] = minLatencyNanosForBucket;
+
+    double gradient =
+        Math.max(0.5, Math.min(1.0, LATENCY_TOLERANCE * minLatencyNanosForBucket / latencyNanos));
+    double newLimit = limit * gradient + Math.sqrt(limit);
+
+    /*
+     * Don't raise the limit when the server isn't actually using most of it: a quiet server's
+     * latencies say nothing about how it will behave when busy.
+     */
+    if (newLimit > limit && inFlightAtCompletion < limit / 2) newLimit = limit;
+    limit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+    limit = Math.max(minLimit, Math.min(maxLimit, limit));
+
+    notifyAll();
+  }
+
+  /**
+   * @param resultCount the number of resources that a request returned
+   * @return the index of the {@link #minLatencyNanos} bucket for the specified result count: <code>
+   *     0</code> for empty (or unknown) results, <code>1</code> for a single resource, <code>2
+   *     </code> for two or three, and so on
+   */
+  static int computeResultCountBucket(int resultCount) {
+    return resultCount <= 0 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(resultCount);
+  }
+
+  /** @return the current (whole) number of requests that may be in flight at once */
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  /** @return the number of requests currently in flight */
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  /** @return the number of requests currently waiting for a slot */
+  public synchronized int getQueued() {
+    return queued;
+  }
+}
@@ -0,0 +1,186 @@
+package gov.cms.bfd.server.war;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically resizes the application's {@link HikariDataSource} connection pools, within
+ * configured bounds, based on how saturated they are.
+ *
+ * <p>Each pool starts out at its lower bound. Whenever threads are found waiting for a connection,
+ * the pool is grown by that many connections (up to its upper bound). Whenever a pool's peak usage
+ * over the last {@link #SHRINK_WINDOW_CHECKS} checks has stayed below half of its size, it is
+ * shrunk by one connection (down to its lower bound). Hikari itself takes care of actually opening
+ * and retiring the connections as the pool's size changes.
+ *
+ * <p>This is intended for deployments where many server instances share one database, where the
+ * fixed-size default pools would otherwise be too large in aggregate when idle, and too small on
+ * any one busy instance.
+ */
+public final class AdaptivePoolSizer implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+
+  /** The number of consecutive checks that a pool's peak usage is tracked across. */
+  static final int SHRINK_WINDOW_CHECKS = 12;
+
+  private final MetricRegistry metricRegistry;
+  private final boolean enabled;
+  private final long checkIntervalMilliseconds;
+  private final List<ManagedPool> pools;
+  private ScheduledExecutorService executor;
+
+  /**
+   * Constructs a new {@link AdaptivePoolSizer}.
+   *
+   * @param metricRegistry the {@link MetricRegistry} to record each pool's current size in
+   * @param enabled <code>true</code> if pools should be resized, <code>false</code> if {@link
+   *     #manage(HikariDataSource, int, int)} should just leave them at their upper bound
+   * @param checkIntervalMilliseconds the number of milliseconds between each check of the pools'
+   *     saturation
+   */
+  public AdaptivePoolSizer(
+      MetricRegistry metricRegistry, boolean enabled, long checkIntervalMilliseconds) {
+    this.metricRegistry = metricRegistry;
+    this.enabled = enabled;
+    this.checkIntervalMilliseconds = checkIntervalMilliseconds;
+    this.pools = new CopyOnWriteArrayList<>();
+    this.executor = null;
+  }
+
+  /**
+   * Configures the specified pool's size, and (if enabled) starts managing it.
+   *
+   * @param poolingDataSource the (not yet started) {@link HikariDataSource} to manage
+   * @param minSize the minimum number of connections that the pool should be shrunk to
+   * @param maxSize the maximum number of connections that the pool should be grown to
+   */
+  public synchronized void manage(HikariDataSource poolingDataSource, int minSize, int maxSize) {
+    if (!enabled) {
+      poolingDataSource.setMaximumPoolSize(maxSize);
+      return;
+    }
+
+    int lowerBound = Math.max(1, Math.min(minSize, maxSize));
+    poolingDataSource.setMaximumPoolSize(lowerBound);
+    poolingDataSource.setMinimumIdle(lowerBound);
+
+    ManagedPool pool = new ManagedPool(poolingDataSource, lowerBound, maxSize);
+    pools.add(pool);
+    metricRegistry.register(
+        MetricRegistry.name(getClass().getSimpleName(), "" + (pools.size() - 1), "size"),
+        (Gauge<Integer>) () -> pool.dataSource.getMaximumPoolSize());
+
+    if (executor == null) {
+      executor =
+          Executors.newSingleThreadScheduledExecutor(
+              r -> {
+                Thread thread = new Thread(r, AdaptivePoolSizer.class.getSimpleName());
+                thread.setDaemon(true);
+                return thread;
+              });
+      executor.scheduleWithFixedDelay(
+          this::checkPools,
+          checkIntervalMilliseconds,
+          checkIntervalMilliseconds,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /** Checks (and, if needed, resizes) each of the managed pools. */
+  private void checkPools() {
+    for (ManagedPool pool : pools) {
+      try {
+        pool.check();
+      } catch (RuntimeException e) {
+        // Don't let one failure stop all future checks.
+        LOGGER.warn("Unable to check connection pool: {}", pool.dataSource.getPoolName(), e);
+      }
+    }
+  }
+
+  /**
+   * @param currentSize the pool's current maximum size
+   * @param pendingThreads the number of threads currently waiting for a connection
+   * @param peakActive the peak number of active connections over the last {@link
+   *     #SHRINK_WINDOW_CHECKS} checks, or <code>-1</code> if there haven't yet been that many
+   * @param minSize the lower bound for the pool's size
+   * @param maxSize the upper bound for the pool's size
+   * @return the size that the pool should now be
+   */
+  static int computePoolSize(
+      int currentSize, int pendingThreads, int peakActive, int minSize, int maxSize) {
+    if (pendingThreads > 0) return Math.min(maxSize, currentSize + pendingThreads);
+    if (peakActive >= 0 && peakActive < currentSize / 2) return Math.max(minSize, currentSize - 1);
+    return currentSize;
+  }
+
+  /** @see java.io.Closeable#close() */
+  @Override
+  public synchronized void close() {
+    if (executor != null) executor.shutdownNow();
+  }
+
+  /** Tracks the state of one of the {@link HikariDataSource}s being managed. */
+  private static final class ManagedPool {
+    private final HikariDataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final int[] recentActive;
+    private int checkCount;
+
+    /**
+     * Constructs a new {@link ManagedPool}.
+     *
+     * @param dataSource the {@link HikariDataSource} to manage
+     * @param minSize the lower bound for the pool's size
+     * @param maxSize the upper bound for the pool's size
+     */
+    private ManagedPool(HikariDataSource dataSource, int minSize, int maxSize) {
+      this.dataSource = dataSource;
+      this.minSize = minSize;
+      this.maxSize = maxSize;
+      this.recentActive = new int[SHRINK_WINDOW_CHECKS];
+      this.checkCount = 0;
+    }
+
+    /** Samples this pool's saturation, and resizes it if needed. */
+    private void check() {
+      HikariPoolMXBean poolStats = dataSource.getHikariPoolMXBean();
+      if (poolStats == null) return; // The pool hasn't been started yet.
+
+      recentActive[checkCount % SHRINK_WINDOW_CHECKS] = poolStats.getActiveConnections();
+      checkCount++;
+      int peakActive = -1;
+      if (checkCount >= SHRINK_WINDOW_CHECKS)
+        for (int active : recentActive) peakActive = Math.max(peakActive, active);
+
+      HikariConfigMXBean poolConfig = dataSource.getHikariConfigMXBean();
+      int currentSize = poolConfig.getMaximumPoolSize();
+      int newSize =
+          computePoolSize(
+              currentSize, poolStats.getThreadsAwaitingConnection(), peakActive, minSize, maxSize);
+      if (newSize == currentSize) return;
+
+      LOGGER.info(
+          "Resizing connection pool '{}' from {} to {} connection(s).",
+          dataSource.getPoolName(),
+          currentSize,
+          newSize);
+      poolConfig.setMaximumPoolSize(newSize);
+
+      // Start tracking the peak usage over again, at the new size.
+      checkCount = 0;
+    }
+  }
+}
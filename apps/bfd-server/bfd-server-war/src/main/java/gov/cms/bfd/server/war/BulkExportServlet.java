@@ -0,0 +1,265 @@
+package gov.cms.bfd.server.war;
+
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.api.Constants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import gov.cms.bfd.server.war.stu3.providers.BulkExportJob;
+import gov.cms.bfd.server.war.stu3.providers.BulkExporter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.hl7.fhir.dstu3.model.InstantType;
+import org.springframework.web.context.ContextLoaderListener;
+
+/**
+ * A {@link Servlet} that implements the asynchronous request pattern from the <a
+ * href="https://github.com/HL7/bulk-data/blob/master/spec/export/index.md">FHIR Bulk Data Access
+ * spec</a>, on top of {@link BulkExporter}:
+ *
+ * <ul>
+ *   <li><code>GET [base]/$export</code> kicks off a new (system-level) export job, and responds
+ *       with a <code>202 Accepted</code> and a <code>Content-Location</code> header pointing at the
+ *       job's status URL. The <code>_type</code>, <code>_since</code>, <code>_outputFormat</code>,
+ *       and (BFD-specific) <code>excludeSAMHSA</code> parameters are supported.
+ *   <li><code>GET {@value #EXPORT_PATH}/{@value #JOBS_PATH}[jobId]</code> polls the job's status,
+ *       responding with a <code>202 Accepted</code> (and an <code>X-Progress</code> header) while
+ *       it is running, and with a <code>200 OK</code> and a JSON manifest of the output files once
+ *       it has completed.
+ *   <li><code>GET {@value #EXPORT_PATH}/{@value #JOBS_PATH}[jobId]/[fileName]</code> downloads one
+ *       of the job's output files.
+ *   <li><code>DELETE {@value #EXPORT_PATH}/{@value #JOBS_PATH}[jobId]</code> cancels the job and
+ *       deletes its output files.
+ * </ul>
+ *
+ * <p>This isn't a HAPI operation, as HAPI (in the version we're using) has no support for
+ * asynchronous operations or for streaming files out.
+ */
+public final class BulkExportServlet extends HttpServlet {
+  private static final long serialVersionUID = 1L;
+
+  /** The path (relative to the application's context) that kicks off new exports. */
+  static final String KICKOFF_PATH = "/v1/fhir/$export";
+
+  /** The path (relative to the application's context) of all of the jobs' status URLs. */
+  static final String EXPORT_PATH = "/v1/export";
+
+  /** The path (relative to {@link #EXPORT_PATH}) of each job's status URL. */
+  static final String JOBS_PATH = "/jobs/";
+
+  /** The number of seconds that clients are asked to wait between each status check. */
+  private static final int RETRY_AFTER_SECONDS = 5;
+
+  private static final String CONTENT_TYPE_NDJSON = "application/fhir+ndjson";
+
+  private transient BulkExporter bulkExporter;
+
+  /** @see javax.servlet.GenericServlet#init() */
+  @Override
+  public void init() throws ServletException {
+    this.bulkExporter =
+        ContextLoaderListener.getCurrentWebApplicationContext().getBean(BulkExporter.class);
+  }
+
+  /**
+   * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest,
+   *     javax.servlet.http.HttpServletResponse)
+   */
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    if (KICKOFF_PATH.equals(req.getServletPath())) {
+      kickoff(req, resp);
+      return;
+    }
+
+    String[] jobPath = parseJobPath(req);
+    if (jobPath == null) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    Optional<BulkExportJob> job = bulkExporter.findJob(jobPath[0]);
+    if (!job.isPresent()) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    if (jobPath.length == 1) writeStatus(req, resp, job.get());
+    else writeOutputFile(resp, job.get(), jobPath[1]);
+  }
+
+  /**
+   * @see javax.servlet.http.HttpServlet#doDelete(javax.servlet.http.HttpServletRequest,
+   *     javax.servlet.http.HttpServletResponse)
+   */
+  @Override
+  protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    String[] jobPath = parseJobPath(req);
+    if (jobPath == null || jobPath.length != 1 || !bulkExporter.cancelJob(jobPath[0])) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+  }
+
+  /**
+   * Handles <code>$export</code> kickoff requests.
+   *
+   * @param req the {@link HttpServletRequest} being handled
+   * @param resp the {@link HttpServletResponse} to write to
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private void kickoff(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    String outputFormat = req.getParameter("_outputFormat");
+    if (outputFormat != null
+        && !Arrays.asList(CONTENT_TYPE_NDJSON, "application/ndjson", "ndjson")
+            .contains(outputFormat)) {
+      resp.sendError(
+          HttpServletResponse.SC_BAD_REQUEST, "Unsupported _outputFormat: " + outputFormat);
+      return;
+    }
+
+    Set<String> resourceTypes = new LinkedHashSet<>(BulkExporter.SUPPORTED_RESOURCE_TYPES);
+    String typeParam = req.getParameter("_type");
+    if (typeParam != null && !typeParam.trim().isEmpty()) {
+      resourceTypes = new LinkedHashSet<>(Arrays.asList(typeParam.trim().split("\\s*,\\s*")));
+      if (!BulkExporter.SUPPORTED_RESOURCE_TYPES.containsAll(resourceTypes)) {
+        resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported _type: " + typeParam);
+        return;
+      }
+    }
+
+    Optional<Instant> since = Optional.empty();
+    String sinceParam = req.getParameter("_since");
+    if (sinceParam != null && !sinceParam.trim().isEmpty()) {
+      try {
+        since = Optional.of(new InstantType(sinceParam.trim()).getValue().toInstant());
+      } catch (DataFormatException | IllegalArgumentException e) {
+        resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid _since: " + sinceParam);
+        return;
+      }
+    }
+
+    boolean excludeSamhsa = Boolean.parseBoolean(req.getParameter("excludeSAMHSA"));
+
+    StringBuffer request = req.getRequestURL();
+    if (req.getQueryString() != null) request.append('?').append(req.getQueryString());
+    BulkExportJob job =
+        bulkExporter.startJob(request.toString(), resourceTypes, since, excludeSamhsa);
+
+    resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+    resp.setHeader(Constants.HEADER_CONTENT_LOCATION, createJobUrl(req, job));
+  }
+
+  /**
+   * Handles job status requests.
+   *
+   * @param req the {@link HttpServletRequest} being handled
+   * @param resp the {@link HttpServletResponse} to write to
+   * @param job the {@link BulkExportJob} to report the status of
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private static void writeStatus(
+      HttpServletRequest req, HttpServletResponse resp, BulkExportJob job) throws IOException {
+    BulkExportJob.Status status = job.getStatus();
+    if (status == BulkExportJob.Status.IN_PROGRESS) {
+      resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+      resp.setHeader("X-Progress", String.format("%d%% complete", job.getPercentComplete()));
+      resp.setHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+      return;
+    } else if (status == BulkExportJob.Status.CANCELLED) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    } else if (status == BulkExportJob.Status.FAILED) {
+      resp.sendError(
+          HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+          "Export failed: " + job.getError().orElse("unknown error"));
+      return;
+    }
+
+    ObjectMapper objectMapper = new ObjectMapper();
+    ObjectNode manifest = objectMapper.createObjectNode();
+    manifest.put("transactionTime", job.getTransactionTime().toString());
+    manifest.put("request", job.getRequest());
+    manifest.put("requiresAccessToken", false);
+    ArrayNode output = manifest.putArray("output");
+    for (String fileName : job.getOutputFileNames()) {
+      output
+          .addObject()
+          .put("type", BulkExporter.parseOutputFileResourceType(fileName))
+          .put("url", createJobUrl(req, job) + "/" + fileName);
+    }
+    manifest.putArray("error");
+
+    resp.setStatus(HttpServletResponse.SC_OK);
+    resp.setContentType(Constants.CT_JSON);
+    resp.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+    objectMapper.writeValue(resp.getOutputStream(), manifest);
+  }
+
+  /**
+   * Handles output file download requests.
+   *
+   * @param resp the {@link HttpServletResponse} to write to
+   * @param job the {@link BulkExportJob} that the output file is from
+   * @param fileName the name of the output file to download
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private void writeOutputFile(HttpServletResponse resp, BulkExportJob job, String fileName)
+      throws IOException {
+    Optional<Path> outputFile = bulkExporter.getOutputFile(job, fileName);
+    if (job.getStatus() != BulkExportJob.Status.COMPLETE || !outputFile.isPresent()) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    resp.setStatus(HttpServletResponse.SC_OK);
+    resp.setContentType(CONTENT_TYPE_NDJSON);
+    resp.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+    resp.setContentLengthLong(Files.size(outputFile.get()));
+    Files.copy(outputFile.get(), resp.getOutputStream());
+  }
+
+  /**
+   * @param req the {@link HttpServletRequest} to parse
+   * @return the job ID and (optionally) output file name from the specified request's path, or
+   *     <code>null</code> if it isn't a job URL
+   */
+  private static String[] parseJobPath(HttpServletRequest req) {
+    String pathInfo = req.getPathInfo();
+    if (!EXPORT_PATH.equals(req.getServletPath())
+        || pathInfo == null
+        || !pathInfo.startsWith(JOBS_PATH)) return null;
+
+    String[] jobPath = pathInfo.substring(JOBS_PATH.length()).split("/");
+    if (jobPath.length < 1 || jobPath.length > 2 || jobPath[0].isEmpty()) return null;
+    return jobPath;
+  }
+
+  /**
+   * @param req the {@link HttpServletRequest} being handled
+   * @param job the {@link BulkExportJob} to get the status URL of
+   * @return the absolute URL of the specified job's status
+   */
+  private static String createJobUrl(HttpServletRequest req, BulkExportJob job) {
+    return String.format(
+        "%s://%s:%d%s%s%s%s",
+        req.getScheme(),
+        req.getServerName(),
+        req.getServerPort(),
+        req.getContextPath(),
+        EXPORT_PATH,
+        JOBS_PATH,
+        job.getId());
+  }
+}
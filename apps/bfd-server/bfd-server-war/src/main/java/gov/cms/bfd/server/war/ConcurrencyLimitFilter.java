@@ -0,0 +1,237 @@
+package gov.cms.bfd.server.war;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.servlet.InstrumentedFilter;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.core.env.Environment;
+import org.springframework.web.context.ContextLoaderListener;
+
+/**
+ * Limits the number of concurrent in-flight requests for each {@link EndpointClass}, so that a
+ * burst of expensive requests (e.g. EOB searches) can't tie up every server thread and slow down
+ * everything else along with it. Each class gets its own {@link AdaptiveConcurrencyLimit}.
+ * Requests that arrive once a class' limit has been reached wait briefly for a slot, and are
+ * rejected with a <code>503 Service Unavailable</code> (and a <code>Retry-After</code> header) if
+ * none frees up in time.
+ *
+ * <p>The admin endpoints (metrics, health checks, etc.) are never limited, so that the server's
+ * health can still be checked while it's shedding load. Nor are the bulk <code>$export</code>
+ * endpoints: their jobs run in {@link gov.cms.bfd.server.war.stu3.providers.BulkExporter}'s own
+ * bounded pool, and their long-running file downloads would otherwise hold slots for minutes and
+ * skew the latencies that the limits adapt to.
+ *
+ * <p>Each request's latency is reported to its class' limit along with the number of resources that
+ * it returned, which {@link OperationMetricsInterceptor} stores in the {@link
+ * #ATTRIBUTE_RESOURCE_COUNT} request attribute, so that a search that legitimately returns
+ * thousands of claims isn't mistaken for a sign of overload.
+ *
+ * <p>This {@link Filter} must be declared after the <code>RequestResponseLoggingFilter</code> and
+ * the {@link InstrumentedFilter} in the {@code web.xml}, so that rejected requests are still
+ * logged and counted. It is disabled unless {@link SpringConfiguration#PROP_CONCURRENCY_ENABLED}
+ * is set.
+ */
+public final class ConcurrencyLimitFilter implements Filter {
+  /** The number of seconds that rejected clients are asked to wait before retrying. */
+  static final int RETRY_AFTER_SECONDS = 1;
+
+  /**
+   * The {@link ServletRequest} attribute that the number of resources returned by each request is
+   * stored in, as an {@link Integer}. Requests that don't set it (e.g. because they failed) are
+   * treated as having returned a single resource.
+   */
+  static final String ATTRIBUTE_RESOURCE_COUNT =
+      ConcurrencyLimitFilter.class.getName() + ".resourceCount";
+
+  private boolean enabled;
+  private long queueMaxMilliseconds;
+  private final Map<EndpointClass, LimitedEndpoint> endpoints = new EnumMap<>(EndpointClass.class);
+
+  /** @see javax.servlet.Filter#init(javax.servlet.FilterConfig) */
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+    Environment springEnv =
+        ContextLoaderListener.getCurrentWebApplicationContext().getEnvironment();
+    this.enabled =
+        Boolean.parseBoolean(
+            springEnv.getProperty(SpringConfiguration.PROP_CONCURRENCY_ENABLED, "false"));
+    this.queueMaxMilliseconds =
+        Long.parseLong(
+            springEnv.getProperty(SpringConfiguration.PROP_CONCURRENCY_QUEUE_MAX, "100"));
+
+    MetricRegistry metricRegistry =
+        (MetricRegistry)
+            filterConfig.getServletContext().getAttribute(InstrumentedFilter.REGISTRY_ATTRIBUTE);
+    for (EndpointClass endpointClass : EndpointClass.values())
+      if (endpointClass.isLimited())
+        endpoints.put(endpointClass, new LimitedEndpoint(endpointClass, metricRegistry));
+  }
+
+  /**
+   * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse,
+   *     javax.servlet.FilterChain)
+   */
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    LimitedEndpoint endpoint =
+        enabled && request instanceof HttpServletRequest
+            ? endpoints.get(EndpointClass.classify((HttpServletRequest) request))
+            : null;
+    if (endpoint == null) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    boolean acquired;
+    Timer.Context queueTimer = endpoint.queueTime.time();
+    try {
+      acquired = endpoint.limit.tryAcquire(queueMaxMilliseconds);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      acquired = false;
+    } finally {
+      queueTimer.stop();
+    }
+
+    if (!acquired) {
+      endpoint.rejections.mark();
+      HttpServletResponse servletResponse = (HttpServletResponse) response;
+      servletResponse.setHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+      servletResponse.sendError(
+          HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+          "The server is currently overloaded. Please try again later.");
+      return;
+    }
+
+    long start = System.nanoTime();
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      endpoint.limit.release(System.nanoTime() - start, getResourceCount(request));
+    }
+  }
+
+  /**
+   * @param request the {@link ServletRequest} that has been handled
+   * @return the number of resources that the specified request returned, as recorded in its {@link
+   *     #ATTRIBUTE_RESOURCE_COUNT} attribute, or <code>1</code> if that wasn't recorded
+   */
+  static int getResourceCount(ServletRequest request) {
+    Object resourceCount = request.getAttribute(ATTRIBUTE_RESOURCE_COUNT);
+    return resourceCount instanceof Integer ? (Integer) resourceCount : 1;
+  }
+
+  /** @see javax.servlet.Filter#destroy() */
+  @Override
+  public void destroy() {
+    // Nothing to do here.
+  }
+
+  /** Enumerates the classes of endpoints that are each limited separately. */
+  static enum EndpointClass {
+    /** The admin endpoints (metrics, health checks, etc.), which are never limited. */
+    ADMIN(0, 0, 0),
+
+    /**
+     * The bulk <code>$export</code> kickoff, status, and download endpoints, which are never
+     * limited.
+     */
+    EXPORT(0, 0, 0),
+
+    /** Searches for <code>ExplanationOfBenefit</code>s, which are by far the most expensive. */
+    EOB(4, 20, 200),
+
+    /** All other requests, e.g. <code>Patient</code> reads and <code>Coverage</code> searches. */
+    DEFAULT(8, 100, 1000);
+
+    private final int minLimit;
+    private final int initialLimit;
+    private final int maxLimit;
+
+    /**
+     * Enum constant constructor.
+     *
+     * @param minLimit the lowest that this class' concurrency limit may be cut to, or <code>0
+     *     </code> if it isn't limited
+     * @param initialLimit this class' starting concurrency limit
+     * @param maxLimit the highest that this class' concurrency limit may be raised to
+     */
+    private EndpointClass(int minLimit, int initialLimit, int maxLimit) {
+      this.minLimit = minLimit;
+      this.initialLimit = initialLimit;
+      this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @return <code>true</code> if requests of this class should be limited, <code>false</code> if
+     *     not
+     */
+    boolean isLimited() {
+      return minLimit > 0;
+    }
+
+    /**
+     * @return a new {@link AdaptiveConcurrencyLimit} for this class, which will let up to as many
+     *     requests queue as it initially lets through
+     */
+    AdaptiveConcurrencyLimit createLimit() {
+      return new AdaptiveConcurrencyLimit(minLimit, initialLimit, maxLimit, initialLimit);
+    }
+
+    /**
+     * @param request the {@link HttpServletRequest} to classify
+     * @return the {@link EndpointClass} that the specified request belongs to
+     */
+    static EndpointClass classify(HttpServletRequest request) {
+      String path = request.getRequestURI().substring(request.getContextPath().length());
+      if (path.startsWith("/metrics")) return ADMIN;
+      if (path.startsWith(BulkExportServlet.EXPORT_PATH + "/")
+          || path.startsWith(BulkExportServlet.KICKOFF_PATH)
+          || path.endsWith("/$export")) return EXPORT;
+      if (path.startsWith("/v1/fhir/ExplanationOfBenefit")) return EOB;
+      return DEFAULT;
+    }
+  }
+
+  /** Tracks the {@link AdaptiveConcurrencyLimit} and metrics for one {@link EndpointClass}. */
+  private static final class LimitedEndpoint {
+    private final AdaptiveConcurrencyLimit limit;
+    private final Timer queueTime;
+    private final Meter rejections;
+
+    /**
+     * Constructs a new {@link LimitedEndpoint}.
+     *
+     * @param endpointClass the {@link EndpointClass} being limited
+     * @param metricRegistry the {@link MetricRegistry} to record this class' metrics in
+     */
+    private LimitedEndpoint(EndpointClass endpointClass, MetricRegistry metricRegistry) {
+      this.limit = endpointClass.createLimit();
+
+      String metricPrefix =
+          MetricRegistry.name(
+              ConcurrencyLimitFilter.class.getSimpleName(), endpointClass.name().toLowerCase());
+      metricRegistry.register(
+          MetricRegistry.name(metricPrefix, "in_flight"), (Gauge<Integer>) limit::getInFlight);
+      metricRegistry.register(
+          MetricRegistry.name(metricPrefix, "queued"), (Gauge<Integer>) limit::getQueued);
+      metricRegistry.register(
+          MetricRegistry.name(metricPrefix, "limit"), (Gauge<Integer>) limit::getLimit);
+      this.queueTime = metricRegistry.timer(MetricRegistry.name(metricPrefix, "queue_time"));
+      this.rejections = metricRegistry.meter(MetricRegistry.name(metricPrefix, "rejections"));
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package gov.cms.bfd.server.war;
+
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import java.sql.SQLTransientConnectionException;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * A HAPI {@link InterceptorAdapter} that turns failures to get a database connection from the
+ * (saturated) connection pool into fast <code>503 Service Unavailable</code> responses, rather than
+ * the generic <code>500 Internal Server Error</code>s they'd otherwise be reported as.
+ *
+ * <p>Combined with a connection wait limit (see {@link
+ * SpringConfiguration#PROP_DB_CONNECTIONS_WAIT_MAX}) that's much shorter than the query timeout,
+ * this lets the server shed load quickly when it's overwhelmed, and tells clients that they can
+ * (and should) retry later.
+ */
+public final class ConnectionPoolSaturationInterceptor extends InterceptorAdapter {
+  /** The number of seconds that clients are asked to wait before retrying. */
+  static final int RETRY_AFTER_SECONDS = 1;
+
+  /**
+   * The (constant part of the) message of the {@link SQLTransientConnectionException}s that
+   * HikariCP throws when a request for a connection times out.
+   */
+  static final String HIKARI_POOL_TIMEOUT_MESSAGE =
+      "Connection is not available, request timed out after";
+
+  private final Meter requestsShed;
+
+  /**
+   * Constructs a new {@link ConnectionPoolSaturationInterceptor}.
+   *
+   * @param metricRegistry the {@link MetricRegistry} to record the number of shed requests in
+   */
+  public ConnectionPoolSaturationInterceptor(MetricRegistry metricRegistry) {
+    this.requestsShed =
+        metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "requests_shed"));
+  }
+
+  /**
+   * @see
+   *     ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter#preProcessOutgoingException(RequestDetails,
+   *     Throwable, HttpServletRequest)
+   */
+  @Override
+  public BaseServerResponseException preProcessOutgoingException(
+      RequestDetails theRequestDetails,
+      Throwable theException,
+      HttpServletRequest theServletRequest) {
+    if (!isPoolTimeout(theException)) return null;
+
+    requestsShed.mark();
+    UnclassifiedServerFailureException unavailableException =
+        new UnclassifiedServerFailureException(
+            503, "The server is currently overloaded. Please try again later.");
+    unavailableException.addResponseHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+    return unavailableException;
+  }
+
+  /**
+   * @param exception the {@link Throwable} to check
+   * @return <code>true</code> if the specified {@link Throwable} was (ultimately) caused by a
+   *     timeout waiting for a database connection from the pool, <code>false</code> if not
+   */
+  static boolean isPoolTimeout(Throwable exception) {
+    for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+      if (isHikariPoolTimeout(cause)) return true;
+      if (cause.getCause() == cause) break;
+    }
+    return false;
+  }
+
+  /**
+   * @param exception the {@link Throwable} to check (but not its causes)
+   * @return <code>true</code> if the specified {@link Throwable} is the one that HikariCP throws
+   *     when its <code>connectionTimeout</code> expires while waiting for one of the pool's (busy)
+   *     connections to be returned, <code>false</code> if not
+   */
+  static boolean isHikariPoolTimeout(Throwable exception) {
+    /*
+     * Other drivers and pools throw SQLTransientConnectionExceptions, too, so the message has to be
+     * checked. And if HikariCP couldn't open new connections to the database while it was waiting,
+     * it attaches that failure as the cause: the database itself is failing, which isn't something
+     * that shedding load will help with.
+     */
+    return exception instanceof SQLTransientConnectionException
+        && exception.getMessage() != null
+        && exception.getMessage().contains(HIKARI_POOL_TIMEOUT_MESSAGE)
+        && exception.getCause() == null;
+  }
+}
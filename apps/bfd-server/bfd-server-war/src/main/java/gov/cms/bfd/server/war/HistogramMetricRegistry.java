@@ -0,0 +1,64 @@
+package gov.cms.bfd.server.war;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * A {@link MetricRegistry} whose {@link Timer}s and {@link Histogram}s are all backed by {@link
+ * LogLinearReservoir}s, so that their tail percentiles are accurate, and which looks up existing
+ * metrics by name without any extra allocation, as the application does so on every request.
+ */
+public final class HistogramMetricRegistry extends MetricRegistry {
+  private final ConcurrentMap<String, Metric> metricsByName = new ConcurrentHashMap<>();
+
+  /** @see com.codahale.metrics.MetricRegistry#timer(java.lang.String) */
+  @Override
+  public Timer timer(String name) {
+    return getOrAdd(name, Timer.class, () -> new Timer(new LogLinearReservoir()));
+  }
+
+  /** @see com.codahale.metrics.MetricRegistry#histogram(java.lang.String) */
+  @Override
+  public Histogram histogram(String name) {
+    return getOrAdd(name, Histogram.class, () -> new Histogram(new LogLinearReservoir()));
+  }
+
+  /** @see com.codahale.metrics.MetricRegistry#remove(java.lang.String) */
+  @Override
+  public boolean remove(String name) {
+    metricsByName.remove(name);
+    return super.remove(name);
+  }
+
+  /**
+   * @param name the name of the metric to get or add
+   * @param metricType the type of metric expected
+   * @param metricSupplier creates the new metric to register, if it doesn't exist yet
+   * @return the metric with the specified name, which will be created and registered if needed
+   * @throws IllegalArgumentException An {@link IllegalArgumentException} will be thrown if a
+   *     different type of metric is already registered with the specified name.
+   */
+  private <T extends Metric> T getOrAdd(
+      String name, Class<T> metricType, Supplier<T> metricSupplier) {
+    Metric metric = metricsByName.get(name);
+    if (metric == null) {
+      synchronized (metricsByName) {
+        metric = metricsByName.get(name);
+        if (metric == null) {
+          metric = getMetrics().get(name);
+          if (metric == null) metric = register(name, metricSupplier.get());
+          metricsByName.put(name, metric);
+        }
+      }
+    }
+
+    if (metricType.isInstance(metric)) return metricType.cast(metric);
+    throw new IllegalArgumentException(
+        name + " is already used for a different type of metric: " + metric.getClass());
+  }
+}
@@ -0,0 +1,318 @@
+package gov.cms.bfd.server.war;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link Reservoir} that counts every value recorded in a fixed set of log-linear buckets, in the
+ * manner of HdrHistogram: values are exact up to {@link #SUB_BUCKET_COUNT}, and are otherwise
+ * rounded to within about 1.6% of their true value. Unlike the default {@link
+ * ExponentiallyDecayingReservoir}, which keeps a (heavily biased) random sample of just 1028
+ * values, this never discards the rare slow values, so the tail percentiles that it reports (e.g.
+ * p99 and p999) are accurate.
+ *
+ * <p>Only the values recorded in the last one to two windows (see {@link #DEFAULT_WINDOW_SECONDS})
+ * are reported, so that the percentiles reflect the server's current behavior. Recording a value is
+ * just a couple of atomic increments, and each instance uses a fixed ~10KB of memory, regardless of
+ * how many values are recorded: values are capped at {@link #MAX_VALUE}, and each window's bucket
+ * counts are <code>int</code>s. The (uncapped) sum of every value ever recorded is also tracked,
+ * for {@link PrometheusMetricsServlet}'s summaries.
+ */
+public final class LogLinearReservoir implements Reservoir {
+  /** The default number of seconds that each window of values is collected over. */
+  static final long DEFAULT_WINDOW_SECONDS = 60;
+
+  /**
+   * The number of bits of precision that each value is recorded with. As values are reported as
+   * their bucket's midpoint, this keeps them within 1/64th (about 1.6%) of their true value.
+   */
+  private static final int SUB_BUCKET_BITS = 5;
+
+  /** The number of buckets that each power of two is split into. */
+  static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * The largest value that can be distinguished, which is a bit over an hour, for {@link
+   * com.codahale.metrics.Timer}s' nanoseconds. Larger values are recorded as this one.
+   */
+  static final long MAX_VALUE = (1L << 42) - 1;
+
+  /** The total number of buckets, which is enough to cover every value up to {@link #MAX_VALUE}. */
+  static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+  private final Clock clock;
+  private final long windowNanos;
+  private final AtomicIntegerArray[] windows;
+  private final LongAdder sum;
+  private volatile int currentWindow;
+  private volatile long currentWindowStartNanos;
+
+  /** Constructs a new {@link LogLinearReservoir} with the default window and {@link Clock}. */
+  public LogLinearReservoir() {
+    this(DEFAULT_WINDOW_SECONDS, TimeUnit.SECONDS, Clock.defaultClock());
+  }
+
+  /**
+   * Constructs a new {@link LogLinearReservoir}.
+   *
+   * @param window the length of each window of values
+   * @param windowUnit the {@link TimeUnit} of the specified window length
+   * @param clock the {@link Clock} to use
+   */
+  public LogLinearReservoir(long window, TimeUnit windowUnit, Clock clock) {
+    this.clock = clock;
+    this.windowNanos = windowUnit.toNanos(window);
+    this.windows =
+        new AtomicIntegerArray[] {
+          new AtomicIntegerArray(BUCKET_COUNT), new AtomicIntegerArray(BUCKET_COUNT)
+        };
+    this.sum = new LongAdder();
+    this.currentWindow = 0;
+    this.currentWindowStartNanos = clock.getTick();
+  }
+
+  /** @see com.codahale.metrics.Reservoir#update(long) */
+  @Override
+  public void update(long value) {
+    rotateWindowsIfNeeded();
+    long positiveValue = Math.max(0L, value);
+    windows[currentWindow].incrementAndGet(bucketIndex(Math.min(positiveValue, MAX_VALUE)));
+    sum.add(positiveValue);
+  }
+
+  /** @see com.codahale.metrics.Reservoir#size() */
+  @Override
+  public int size() {
+    return getSnapshot().size();
+  }
+
+  /** @see com.codahale.metrics.Reservoir#getSnapshot() */
+  @Override
+  public Snapshot getSnapshot() {
+    rotateWindowsIfNeeded();
+
+    long[] counts = new long[BUCKET_COUNT];
+    for (AtomicIntegerArray window : windows)
+      for (int i = 0; i < BUCKET_COUNT; i++) counts[i] += window.get(i);
+    return new LogLinearSnapshot(counts, sum.sum());
+  }
+
+  /**
+   * Starts a new window if the current one has expired, clearing out the oldest one to make room
+   * for it. (Any values recorded concurrently with the clearing may be lost, which is fine.)
+   */
+  private void rotateWindowsIfNeeded() {
+    long now = clock.getTick();
+    if (now - currentWindowStartNanos < windowNanos) return;
+
+    synchronized (this) {
+      long elapsedNanos = now - currentWindowStartNanos;
+      if (elapsedNanos < windowNanos) return;
+
+      int nextWindow = 1 - currentWindow;
+      clear(windows[nextWindow]);
+      // If the reservoir has been idle for a while, even the current window is stale.
+      if (elapsedNanos >= 2 * windowNanos) clear(windows[currentWindow]);
+      currentWindow = nextWindow;
+      currentWindowStartNanos = now;
+    }
+  }
+
+  /** @param window the window of bucket counts to reset to zero */
+  private static void clear(AtomicIntegerArray window) {
+    for (int i = 0; i < window.length(); i++) window.set(i, 0);
+  }
+
+  /**
+   * @param value the (non-negative) value to find the bucket of, which must not be larger than
+   *     {@link #MAX_VALUE}
+   * @return the index of the bucket that the specified value belongs in
+   */
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) return (int) value;
+
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+  }
+
+  /**
+   * @param index the index of the bucket to get the lowest value of
+   * @return the lowest value that belongs in the specified bucket
+   */
+  static long bucketLowestValue(int index) {
+    if (index < 2 * SUB_BUCKET_COUNT) return index;
+
+    int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    long subBucket = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+    return subBucket << shift;
+  }
+
+  /**
+   * @param index the index of the bucket to get the highest value of
+   * @return the highest value that belongs in the specified bucket
+   */
+  static long bucketHighestValue(int index) {
+    return bucketLowestValue(index + 1) - 1;
+  }
+
+  /**
+   * @param index the index of the bucket to get the representative value of
+   * @return the value that all of the values in the specified bucket will be reported as, which is
+   *     its midpoint
+   */
+  static long bucketMedianValue(int index) {
+    long lowest = bucketLowestValue(index);
+    return lowest + (bucketHighestValue(index) - lowest) / 2;
+  }
+
+  /**
+   * A {@link Snapshot} of the bucket counts from a {@link LogLinearReservoir}. All of its
+   * statistics are computed directly from those counts, without expanding them back out into the
+   * individual values.
+   */
+  static final class LogLinearSnapshot extends Snapshot {
+    /**
+     * The maximum number of values that {@link #getValues()} will return, which matches the sample
+     * size of the default {@link ExponentiallyDecayingReservoir}.
+     */
+    static final int MAX_VALUES = 1028;
+
+    private final long[] counts;
+    private final long sum;
+    private final long totalCount;
+    private final int minIndex;
+    private final int maxIndex;
+
+    /**
+     * Constructs a new {@link LogLinearSnapshot}.
+     *
+     * @param counts the number of values recorded in each bucket, which will be used directly
+     * @param sum the value to use for {@link #getSum()}
+     */
+    LogLinearSnapshot(long[] counts, long sum) {
+      this.counts = counts;
+      this.sum = sum;
+
+      long totalCount = 0;
+      int minIndex = -1;
+      int maxIndex = -1;
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] == 0) continue;
+        totalCount += counts[i];
+        if (minIndex < 0) minIndex = i;
+        maxIndex = i;
+      }
+      this.totalCount = totalCount;
+      this.minIndex = minIndex;
+      this.maxIndex = maxIndex;
+    }
+
+    /** @see com.codahale.metrics.Snapshot#getValue(double) */
+    @Override
+    public double getValue(double quantile) {
+      if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile))
+        throw new IllegalArgumentException(quantile + " is not in [0..1]");
+      if (totalCount == 0) return 0.0;
+
+      long rank = Math.max(1L, (long) Math.ceil(quantile * totalCount));
+      long seen = 0;
+      for (int i = minIndex; i <= maxIndex; i++) {
+        seen += counts[i];
+        if (seen >= rank) return bucketMedianValue(i);
+      }
+      return bucketMedianValue(maxIndex);
+    }
+
+    /**
+     * Note: For busy metrics, this returns the values at (at most {@link #MAX_VALUES})
+     * evenly-spaced ranks, rather than every recorded value, so it can be shorter than {@link
+     * #size()}.
+     *
+     * @see com.codahale.metrics.Snapshot#getValues()
+     */
+    @Override
+    public long[] getValues() {
+      long[] values = new long[(int) Math.min(totalCount, MAX_VALUES)];
+      int bucket = minIndex;
+      long seen = values.length > 0 ? counts[bucket] : 0L;
+      for (int valueIndex = 0; valueIndex < values.length; valueIndex++) {
+        long rank = valueIndex * totalCount / values.length + 1;
+        while (seen < rank) seen += counts[++bucket];
+        values[valueIndex] = bucketMedianValue(bucket);
+      }
+      return values;
+    }
+
+    /**
+     * @return the sum of every value ever recorded by the {@link LogLinearReservoir}, including
+     *     ones from windows that have since expired, and ones larger than {@link #MAX_VALUE}
+     */
+    long getSum() {
+      return sum;
+    }
+
+    /** @see com.codahale.metrics.Snapshot#size() */
+    @Override
+    public int size() {
+      return (int) Math.min(totalCount, Integer.MAX_VALUE);
+    }
+
+    /** @see com.codahale.metrics.Snapshot#getMax() */
+    @Override
+    public long getMax() {
+      return totalCount == 0 ? 0L : bucketHighestValue(maxIndex);
+    }
+
+    /** @see com.codahale.metrics.Snapshot#getMean() */
+    @Override
+    public double getMean() {
+      if (totalCount == 0) return 0.0;
+
+      double sum = 0.0;
+      for (int i = minIndex; i <= maxIndex; i++) sum += (double) counts[i] * bucketMedianValue(i);
+      return sum / totalCount;
+    }
+
+    /** @see com.codahale.metrics.Snapshot#getMin() */
+    @Override
+    public long getMin() {
+      return totalCount == 0 ? 0L : bucketLowestValue(minIndex);
+    }
+
+    /** @see com.codahale.metrics.Snapshot#getStdDev() */
+    @Override
+    public double getStdDev() {
+      if (totalCount <= 1) return 0.0;
+
+      double mean = getMean();
+      double sumOfSquares = 0.0;
+      for (int i = minIndex; i <= maxIndex; i++) {
+        double difference = bucketMedianValue(i) - mean;
+        sumOfSquares += counts[i] * difference * difference;
+      }
+      return Math.sqrt(sumOfSquares / (totalCount - 1));
+    }
+
+    /**
+     * Note: Like {@link #getValues()}, this only dumps a representative sample of the values.
+     *
+     * @see com.codahale.metrics.Snapshot#dump(java.io.OutputStream)
+     */
+    @Override
+    public void dump(OutputStream output) {
+      PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+      for (long value : getValues()) writer.printf("%d%n", value);
+      writer.flush();
+    }
+  }
+}
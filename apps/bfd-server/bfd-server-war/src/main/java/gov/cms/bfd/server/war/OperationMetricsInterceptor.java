@@ -0,0 +1,135 @@
+package gov.cms.bfd.server.war;
+
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import gov.cms.bfd.server.war.stu3.providers.StreamingBundle;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+/**
+ * A HAPI {@link InterceptorAdapter} that records a {@link Timer} for each resource operation (e.g.
+ * <code>OperationMetricsInterceptor.ExplanationOfBenefit.search-type</code>), along with a
+ * histogram of the number of resources returned by each, so that latency percentiles can be
+ * tracked per endpoint. Failed requests are timed separately, under a <code>failed</code> suffix.
+ * The number of resources is also passed along to the {@link ConcurrencyLimitFilter}, via the
+ * {@link ConcurrencyLimitFilter#ATTRIBUTE_RESOURCE_COUNT} request attribute.
+ *
+ * <p>Note that this interceptor must be registered before the {@link StreamingBundleInterceptor},
+ * as HAPI won't call any interceptors after that one for the responses that it takes over.
+ */
+public final class OperationMetricsInterceptor extends InterceptorAdapter {
+  /** The {@link RequestDetails#getUserData()} key that each request's start time is stored in. */
+  private static final String USER_DATA_START_NANOS =
+      OperationMetricsInterceptor.class.getName() + ".startNanos";
+
+  private final MetricRegistry metricRegistry;
+
+  /**
+   * Constructs a new {@link OperationMetricsInterceptor}.
+   *
+   * @param metricRegistry the {@link MetricRegistry} to record each operation's metrics in
+   */
+  public OperationMetricsInterceptor(MetricRegistry metricRegistry) {
+    this.metricRegistry = metricRegistry;
+  }
+
+  /**
+   * @see
+   *     ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter#incomingRequestPostProcessed(RequestDetails,
+   *     HttpServletRequest, HttpServletResponse)
+   */
+  @Override
+  public boolean incomingRequestPostProcessed(
+      RequestDetails theRequestDetails,
+      HttpServletRequest theRequest,
+      HttpServletResponse theResponse) {
+    theRequestDetails.getUserData().put(USER_DATA_START_NANOS, System.nanoTime());
+    return true;
+  }
+
+  /**
+   * @see ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter#outgoingResponse(RequestDetails,
+   *     IBaseResource, HttpServletRequest, HttpServletResponse)
+   */
+  @Override
+  public boolean outgoingResponse(
+      RequestDetails theRequestDetails,
+      IBaseResource theResponseObject,
+      HttpServletRequest theServletRequest,
+      HttpServletResponse theServletResponse) {
+    int resourceCount;
+    if (theResponseObject instanceof StreamingBundle)
+      resourceCount = ((StreamingBundle) theResponseObject).getEntrySupplierCount();
+    else if (theResponseObject instanceof Bundle)
+      resourceCount = ((Bundle) theResponseObject).getEntry().size();
+    else resourceCount = theResponseObject != null ? 1 : 0;
+
+    metricRegistry
+        .histogram(MetricRegistry.name(computeMetricPrefix(theRequestDetails), "resources"))
+        .update(resourceCount);
+    if (theServletRequest != null)
+      theServletRequest.setAttribute(
+          ConcurrencyLimitFilter.ATTRIBUTE_RESOURCE_COUNT, resourceCount);
+    return true;
+  }
+
+  /**
+   * @see
+   *     ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter#processingCompletedNormally(ServletRequestDetails)
+   */
+  @Override
+  public void processingCompletedNormally(ServletRequestDetails theRequestDetails) {
+    recordDuration(theRequestDetails, false);
+  }
+
+  /**
+   * @see ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter#handleException(RequestDetails,
+   *     BaseServerResponseException, HttpServletRequest, HttpServletResponse)
+   */
+  @Override
+  public boolean handleException(
+      RequestDetails theRequestDetails,
+      BaseServerResponseException theException,
+      HttpServletRequest theServletRequest,
+      HttpServletResponse theServletResponse) {
+    recordDuration(theRequestDetails, true);
+    return true;
+  }
+
+  /**
+   * Records the time taken by the specified request, if it hasn't already been recorded.
+   *
+   * @param requestDetails the {@link RequestDetails} of the request that has completed
+   * @param failed <code>true</code> if the request failed, <code>false</code> if not
+   */
+  private void recordDuration(RequestDetails requestDetails, boolean failed) {
+    Long startNanos = (Long) requestDetails.getUserData().remove(USER_DATA_START_NANOS);
+    if (startNanos == null) return;
+
+    String metricPrefix = computeMetricPrefix(requestDetails);
+    String timerName = failed ? MetricRegistry.name(metricPrefix, "failed") : metricPrefix;
+    metricRegistry.timer(timerName).update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param requestDetails the {@link RequestDetails} of the request to compute the prefix for
+   * @return the prefix for the names of all of the metrics recorded for the specified request's
+   *     resource type and operation, e.g. <code>OperationMetricsInterceptor.Patient.read</code>
+   */
+  private static String computeMetricPrefix(RequestDetails requestDetails) {
+    String resourceName = requestDetails.getResourceName();
+    RestOperationTypeEnum operation = requestDetails.getRestOperationType();
+    return MetricRegistry.name(
+        OperationMetricsInterceptor.class.getSimpleName(),
+        resourceName != null ? resourceName : "server",
+        operation != null ? operation.getCode() : "unknown");
+  }
+}
@@ -0,0 +1,289 @@
+package gov.cms.bfd.server.war;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.servlets.AdminServlet;
+import gov.cms.bfd.server.war.LogLinearReservoir.LogLinearSnapshot;
+import gov.cms.bfd.server.war.stu3.providers.ClaimType;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A {@link Servlet} that exposes all of the application's metrics in the <a
+ * href="https://prometheus.io/docs/instrumenting/exposition_formats/">Prometheus text format</a>,
+ * so that they can be scraped, rather than just being available via JMX or the (much more verbose)
+ * JSON output of the {@link AdminServlet}.
+ *
+ * <p>Each metric's name is its {@link MetricRegistry} name, with every character that Prometheus
+ * doesn't allow replaced by an underscore. Metrics that are recorded separately for each {@link
+ * ClaimType} are exported as a single metric with a {@link #LABEL_CLAIM_TYPE} label instead, e.g.
+ * <code>ExplanationOfBenefitResourceProvider.query.eobs_by_bene_id.carrier</code> becomes <code>
+ * ExplanationOfBenefitResourceProvider_query_eobs_by_bene_id_seconds{claim_type="carrier"}</code>.
+ * {@link Timer}s and {@link Histogram}s are exported as summaries, with the quantiles in {@link
+ * #QUANTILES}, plus the usual <code>_sum</code> and <code>_count</code>; {@link Timer}s are
+ * converted to seconds.
+ */
+public final class PrometheusMetricsServlet extends HttpServlet {
+  private static final long serialVersionUID = 1L;
+
+  /** The path (relative to the application's context) that this {@link Servlet} is mapped to. */
+  static final String PATH = "/metrics/prometheus";
+
+  /** The quantiles that are exported for each {@link Timer} and {@link Histogram}. */
+  static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99, 0.999};
+
+  /** The label that distinguishes the metrics that are recorded for each {@link ClaimType}. */
+  static final String LABEL_CLAIM_TYPE = "claim_type";
+
+  /** The (lowercase) {@link ClaimType} names, as used at the end of metric names. */
+  private static final Set<String> CLAIM_TYPE_LABEL_VALUES =
+      Arrays.stream(ClaimType.values())
+          .map(t -> t.name().toLowerCase())
+          .collect(Collectors.toSet());
+
+  private static final double SECONDS_PER_NANOSECOND = 1.0 / TimeUnit.SECONDS.toNanos(1);
+
+  private final transient MetricRegistry metricRegistry;
+
+  /**
+   * Constructs a new {@link PrometheusMetricsServlet}.
+   *
+   * @param metricRegistry the {@link MetricRegistry} to export the metrics of
+   */
+  public PrometheusMetricsServlet(MetricRegistry metricRegistry) {
+    this.metricRegistry = metricRegistry;
+  }
+
+  /**
+   * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest,
+   *     javax.servlet.http.HttpServletResponse)
+   */
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    resp.setStatus(HttpServletResponse.SC_OK);
+    resp.setContentType("text/plain; version=0.0.4");
+    resp.setCharacterEncoding("UTF-8");
+    resp.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+
+    Writer writer = resp.getWriter();
+    writeMetrics(metricRegistry, writer);
+    writer.flush();
+  }
+
+  /**
+   * @param metricRegistry the {@link MetricRegistry} to export the metrics of
+   * @param writer the {@link Writer} to write the metrics to, in the Prometheus text format
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  static void writeMetrics(MetricRegistry metricRegistry, Writer writer) throws IOException {
+    Map<String, Map<String, Double>> gauges = new TreeMap<>();
+    for (Map.Entry<String, Gauge> gauge : metricRegistry.getGauges().entrySet()) {
+      Object value = gauge.getValue().getValue();
+      double numericValue;
+      if (value instanceof Number) numericValue = ((Number) value).doubleValue();
+      else if (value instanceof Boolean) numericValue = ((Boolean) value) ? 1.0 : 0.0;
+      else continue;
+      addToFamily(gauges, gauge.getKey(), "", numericValue);
+    }
+
+    // Dropwizard counters can go down as well as up, so they're really gauges.
+    for (Map.Entry<String, Counter> counter : metricRegistry.getCounters().entrySet())
+      addToFamily(gauges, counter.getKey(), "", (double) counter.getValue().getCount());
+    writeSamples(writer, gauges, "gauge");
+
+    Map<String, Map<String, Double>> meters = new TreeMap<>();
+    for (Map.Entry<String, Meter> meter : metricRegistry.getMeters().entrySet())
+      addToFamily(meters, meter.getKey(), "_total", (double) meter.getValue().getCount());
+    writeSamples(writer, meters, "counter");
+
+    Map<String, Map<String, Histogram>> histograms = new TreeMap<>();
+    for (Map.Entry<String, Histogram> histogram : metricRegistry.getHistograms().entrySet())
+      addToFamily(histograms, histogram.getKey(), "", histogram.getValue());
+    for (Map.Entry<String, Map<String, Histogram>> family : histograms.entrySet()) {
+      writeType(writer, family.getKey(), "summary");
+      for (Map.Entry<String, Histogram> histogram : family.getValue().entrySet())
+        writeSummary(
+            writer,
+            family.getKey(),
+            histogram.getKey(),
+            histogram.getValue().getSnapshot(),
+            histogram.getValue().getCount(),
+            1.0);
+    }
+
+    Map<String, Map<String, Timer>> timers = new TreeMap<>();
+    for (Map.Entry<String, Timer> timer : metricRegistry.getTimers().entrySet())
+      addToFamily(timers, timer.getKey(), "_seconds", timer.getValue());
+    for (Map.Entry<String, Map<String, Timer>> family : timers.entrySet()) {
+      writeType(writer, family.getKey(), "summary");
+      for (Map.Entry<String, Timer> timer : family.getValue().entrySet())
+        writeSummary(
+            writer,
+            family.getKey(),
+            timer.getKey(),
+            timer.getValue().getSnapshot(),
+            timer.getValue().getCount(),
+            SECONDS_PER_NANOSECOND);
+    }
+  }
+
+  /**
+   * Adds the specified metric to the family (i.e. Prometheus metric) that it belongs to. Metrics
+   * whose {@link MetricRegistry} name ends in a {@link ClaimType} are all put into a single family,
+   * with a {@link #LABEL_CLAIM_TYPE} label to tell them apart.
+   *
+   * @param <T> the type of the metrics (or values) in the families
+   * @param families the families to add to, by Prometheus name, and then by their labels (if any)
+   * @param metricName the {@link MetricRegistry} name of the metric to add
+   * @param suffix the suffix to append to the metric's Prometheus name (e.g. for its units)
+   * @param metric the metric (or value) to add
+   */
+  private static <T> void addToFamily(
+      Map<String, Map<String, T>> families, String metricName, String suffix, T metric) {
+    String labels = "";
+    int claimTypeStart = metricName.lastIndexOf('.') + 1;
+    if (claimTypeStart > 0
+        && CLAIM_TYPE_LABEL_VALUES.contains(metricName.substring(claimTypeStart))) {
+      labels = LABEL_CLAIM_TYPE + "=\"" + metricName.substring(claimTypeStart) + "\"";
+      metricName = metricName.substring(0, claimTypeStart - 1);
+    }
+    families
+        .computeIfAbsent(computeName(metricName, suffix), k -> new TreeMap<>())
+        .put(labels, metric);
+  }
+
+  /**
+   * @param writer the {@link Writer} to write to
+   * @param families the values to write, by Prometheus name, and then by their labels (if any)
+   * @param type the Prometheus type of the metrics
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private static void writeSamples(
+      Writer writer, Map<String, Map<String, Double>> families, String type) throws IOException {
+    for (Map.Entry<String, Map<String, Double>> family : families.entrySet()) {
+      writeType(writer, family.getKey(), type);
+      for (Map.Entry<String, Double> sample : family.getValue().entrySet()) {
+        writeName(writer, family.getKey(), sample.getKey(), null);
+        writer.write(formatValue(sample.getValue()));
+        writer.write('\n');
+      }
+    }
+  }
+
+  /**
+   * @param writer the {@link Writer} to write to
+   * @param name the (already-computed) Prometheus name of the metric
+   * @param type the Prometheus type of the metric
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private static void writeType(Writer writer, String name, String type) throws IOException {
+    writer.write("# TYPE ");
+    writer.write(name);
+    writer.write(' ');
+    writer.write(type);
+    writer.write('\n');
+  }
+
+  /**
+   * Writes a sample's name and labels, followed by the space that separates them from its value.
+   *
+   * @param writer the {@link Writer} to write to
+   * @param name the (already-computed) Prometheus name of the sample
+   * @param labels the sample's labels (e.g. <code>claim_type="carrier"</code>), or an empty {@link
+   *     String}
+   * @param extraLabel another label to include (e.g. a summary's quantile), or <code>null</code>
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private static void writeName(Writer writer, String name, String labels, String extraLabel)
+      throws IOException {
+    writer.write(name);
+    if (!labels.isEmpty() || extraLabel != null) {
+      writer.write('{');
+      writer.write(labels);
+      if (!labels.isEmpty() && extraLabel != null) writer.write(',');
+      if (extraLabel != null) writer.write(extraLabel);
+      writer.write('}');
+    }
+    writer.write(' ');
+  }
+
+  /**
+   * @param writer the {@link Writer} to write to
+   * @param name the (already-computed) Prometheus name of the metric
+   * @param labels the metric's labels, as for {@link #writeName(Writer, String, String, String)}
+   * @param snapshot the {@link Snapshot} of the metric's recent values
+   * @param count the total number of values ever recorded by the metric
+   * @param scale the factor to multiply each of the {@link Snapshot}'s values by
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private static void writeSummary(
+      Writer writer, String name, String labels, Snapshot snapshot, long count, double scale)
+      throws IOException {
+    for (double quantile : QUANTILES) {
+      writeName(writer, name, labels, "quantile=\"" + quantile + "\"");
+      writer.write(formatValue(snapshot.getValue(quantile) * scale));
+      writer.write('\n');
+    }
+
+    /*
+     * Prometheus expects the sum to cover every value ever recorded, just like the count does.
+     * Only LogLinearReservoir (which HistogramMetricRegistry uses for everything) tracks that, so
+     * any other metrics just get an estimate, based on their recent values.
+     */
+    double sum =
+        snapshot instanceof LogLinearSnapshot
+            ? ((LogLinearSnapshot) snapshot).getSum()
+            : snapshot.getMean() * count;
+    writeName(writer, name + "_sum", labels, null);
+    writer.write(formatValue(sum * scale));
+    writer.write('\n');
+
+    writeName(writer, name + "_count", labels, null);
+    writer.write(Long.toString(count));
+    writer.write('\n');
+  }
+
+  /**
+   * @param metricName the {@link MetricRegistry} name of the metric
+   * @param suffix the suffix to append (e.g. for the metric's units), or an empty {@link String}
+   * @return the Prometheus name to use for the specified metric
+   */
+  static String computeName(String metricName, String suffix) {
+    StringBuilder name = new StringBuilder(metricName.length() + suffix.length() + 1);
+    if (metricName.isEmpty() || Character.isDigit(metricName.charAt(0))) name.append('_');
+    for (int i = 0; i < metricName.length(); i++) {
+      char c = metricName.charAt(i);
+      boolean allowed =
+          (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+      name.append(allowed ? c : '_');
+    }
+    name.append(suffix);
+    return name.toString();
+  }
+
+  /**
+   * @param value the value to format
+   * @return the specified value, formatted as Prometheus expects
+   */
+  private static String formatValue(double value) {
+    if (Double.isNaN(value)) return "NaN";
+    if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+    return Double.toString(value);
+  }
+}
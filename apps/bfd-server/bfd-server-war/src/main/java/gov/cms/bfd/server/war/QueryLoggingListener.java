@@ -10,10 +10,71 @@ import org.jboss.logging.MDC;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** This {@link QueryExecutionListener} records query performance data in {@link MDC}. */
+/**
+ * This {@link QueryExecutionListener} records query performance data in {@link MDC}.
+ *
+ * <p>Queries are identified by the {@link QueryType} (if any) that the code running them tagged
+ * them with, via {@link #setQueryTag(QueryType)}. Only untagged queries (e.g. Hibernate's lazy
+ * loads) have their {@link QueryType} reverse-engineered from their SQL, which is comparatively
+ * expensive. Either way, the {@link MDC} keys are always built from the fixed {@link
+ * QueryType#getQueryTypeId()}s, and are computed just once, up front.
+ */
 public final class QueryLoggingListener implements QueryExecutionListener {
   private static final Logger LOGGER = LoggerFactory.getLogger(QueryLoggingListener.class);
 
+  /** The suffixes of the {@link MDC} keys recorded for each query, indexed by the KEY_ fields. */
+  private static final String[] MDC_KEY_SUFFIXES = {
+    "query",
+    "ids",
+    "queries",
+    "size",
+    "duration_milliseconds",
+    "success",
+    "type",
+    "batch",
+    "batch_size",
+    "datasource_name"
+  };
+
+  private static final int KEY_QUERY = 0;
+  private static final int KEY_IDS = 1;
+  private static final int KEY_QUERIES = 2;
+  private static final int KEY_SIZE = 3;
+  private static final int KEY_DURATION_MILLISECONDS = 4;
+  private static final int KEY_SUCCESS = 5;
+  private static final int KEY_TYPE = 6;
+  private static final int KEY_BATCH = 7;
+  private static final int KEY_BATCH_SIZE = 8;
+  private static final int KEY_DATASOURCE_NAME = 9;
+
+  /** The {@link MDC} keys recorded for batches of several queries at once. */
+  private static final String[] MDC_KEYS_GROUP = computeMdcKeys("group");
+
+  /** The largest capacity that each thread's {@link #BUFFER} will be allowed to keep. */
+  private static final int BUFFER_CAPACITY_MAX = 64 * 1024;
+
+  /** A reusable per-thread buffer for building up the (rare) multi-query MDC values. */
+  private static final ThreadLocal<StringBuilder> BUFFER =
+      ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+  /** The {@link QueryType} that the queries currently being run on each thread are tagged with. */
+  private static final ThreadLocal<QueryType> QUERY_TAG = new ThreadLocal<>();
+
+  /**
+   * Tags all of the queries run on the current thread (until {@link #clearQueryTag()} is called)
+   * with the specified {@link QueryType}, which will be used to identify them in the {@link MDC}.
+   *
+   * @param queryType the {@link QueryType} of the queries about to be run
+   */
+  public static void setQueryTag(QueryType queryType) {
+    QUERY_TAG.set(queryType);
+  }
+
+  /** Clears the tag set (if any) by {@link #setQueryTag(QueryType)} for the current thread. */
+  public static void clearQueryTag() {
+    QUERY_TAG.remove();
+  }
+
   /**
    * @see
    *     net.ttddyy.dsproxy.listener.QueryExecutionListener#afterQuery(net.ttddyy.dsproxy.ExecutionInfo,
@@ -39,68 +100,77 @@ public final class QueryLoggingListener implements QueryExecutionListener {
       logFullQuery = true;
     }
 
-    String mdcKeyPrefix;
+    QueryType queryTag = QUERY_TAG.get();
+    String[] mdcKeys;
     if (queryInfoList.size() == 1) {
-      QueryType queryType = QueryType.computeQueryType(queryInfoList.get(0));
-      mdcKeyPrefix = queryType.getQueryTypeId();
+      QueryType queryType =
+          queryTag != null ? queryTag : QueryType.computeQueryType(queryInfoList.get(0));
+      mdcKeys = queryType.mdcKeys;
 
       if (queryType == QueryType.UNKNOWN) {
         logFullQuery = true;
       }
+
       if (execInfo.getElapsedTime() >= 1000) {
         logFullQuery = true;
       }
 
-      if (logFullQuery)
-        MDC.put(
-            computeMdcKey(String.format("%s.query", mdcKeyPrefix)),
-            queryInfoList.get(0).getQuery());
+      if (logFullQuery) MDC.put(mdcKeys[KEY_QUERY], queryInfoList.get(0).getQuery());
     } else {
-      mdcKeyPrefix = "group";
+      mdcKeys = MDC_KEYS_GROUP;
       logFullQuery = true;
 
-      StringBuilder queryIds = new StringBuilder();
-      if (queryInfoList.size() > 1) queryIds.append('[');
+      StringBuilder queryIds = getBuffer();
+      queryIds.append('[');
       for (QueryInfo queryInfo : queryInfoList) {
-        queryIds.append(QueryType.computeQueryType(queryInfo).getQueryTypeId());
+        queryIds.append(
+            (queryTag != null ? queryTag : QueryType.computeQueryType(queryInfo)).getQueryTypeId());
         queryIds.append(',');
       }
-      if (queryIds.charAt(queryIds.length() - 1) == ',')
-        queryIds.deleteCharAt(queryIds.length() - 1);
-      if (queryInfoList.size() > 1) queryIds.append(']');
-      MDC.put(computeMdcKey(String.format("%s.ids", mdcKeyPrefix)), queryIds.toString());
+      queryIds.setCharAt(queryIds.length() - 1, ']');
+      MDC.put(mdcKeys[KEY_IDS], queryIds.toString());
 
-      StringBuilder queries = new StringBuilder();
-      if (queryInfoList.size() > 1) queries.append('[');
+      StringBuilder queries = getBuffer();
+      queries.append('[');
       for (QueryInfo queryInfo : queryInfoList) {
         queries.append('[');
         queries.append(queryInfo.getQuery());
         queries.append("],");
       }
-      if (queries.charAt(queries.length() - 1) == ',') queries.deleteCharAt(queries.length() - 1);
-      if (queryInfoList.size() > 1) queries.append(']');
-      MDC.put(computeMdcKey(String.format("%s.queries", mdcKeyPrefix)), queries.toString());
+      queries.setCharAt(queries.length() - 1, ']');
+      MDC.put(mdcKeys[KEY_QUERIES], queries.toString());
     }
-    MDC.put(computeMdcKey(String.format("%s.size", mdcKeyPrefix)), queryInfoList.size());
-
-    MDC.put(
-        computeMdcKey(String.format("%s.duration_milliseconds", mdcKeyPrefix)),
-        execInfo.getElapsedTime());
-    MDC.put(computeMdcKey(String.format("%s.success", mdcKeyPrefix)), execInfo.isSuccess());
-    MDC.put(computeMdcKey(String.format("%s.type", mdcKeyPrefix)), execInfo.getStatementType());
-    MDC.put(computeMdcKey(String.format("%s.batch", mdcKeyPrefix)), execInfo.isBatch());
-    MDC.put(computeMdcKey(String.format("%s.batch_size", mdcKeyPrefix)), execInfo.getBatchSize());
-    MDC.put(
-        computeMdcKey(String.format("%s.datasource_name", mdcKeyPrefix)),
-        execInfo.getDataSourceName());
+    MDC.put(mdcKeys[KEY_SIZE], queryInfoList.size());
+
+    MDC.put(mdcKeys[KEY_DURATION_MILLISECONDS], execInfo.getElapsedTime());
+    MDC.put(mdcKeys[KEY_SUCCESS], execInfo.isSuccess());
+    MDC.put(mdcKeys[KEY_TYPE], execInfo.getStatementType());
+    MDC.put(mdcKeys[KEY_BATCH], execInfo.isBatch());
+    MDC.put(mdcKeys[KEY_BATCH_SIZE], execInfo.getBatchSize());
+    MDC.put(mdcKeys[KEY_DATASOURCE_NAME], execInfo.getDataSourceName());
   }
 
   /**
-   * @param keySuffix the suffix to build a full key for
-   * @return the key to use for {@link MDC#put(String, String)}
+   * @param queryId the {@link QueryType#getQueryTypeId()} (or other fixed ID) to compute keys for
+   * @return the {@link MDC} keys for the specified query ID, one for each of the {@link
+   *     #MDC_KEY_SUFFIXES}, in the same order
    */
-  private static String computeMdcKey(String keySuffix) {
-    return String.format("%s.%s", "database_query", keySuffix);
+  private static String[] computeMdcKeys(String queryId) {
+    String[] mdcKeys = new String[MDC_KEY_SUFFIXES.length];
+    for (int i = 0; i < MDC_KEY_SUFFIXES.length; i++)
+      mdcKeys[i] = "database_query." + queryId + "." + MDC_KEY_SUFFIXES[i];
+    return mdcKeys;
+  }
+
+  /**
+   * @return the current thread's reusable {@link StringBuilder}, emptied out and ready for use
+   *     (which must be finished before the next call to this method)
+   */
+  private static StringBuilder getBuffer() {
+    StringBuilder buffer = BUFFER.get();
+    buffer.setLength(0);
+    if (buffer.capacity() > BUFFER_CAPACITY_MAX) buffer.trimToSize();
+    return buffer;
   }
 
   /**
@@ -113,8 +183,11 @@ public final class QueryLoggingListener implements QueryExecutionListener {
     // Nothing to do here.
   }
 
-  /** Enumerates the various query types. */
-  static enum QueryType {
+  /**
+   * Enumerates the various query types. The ones without a SQL {@link Predicate} are never
+   * reverse-engineered from SQL, and are only ever set via {@link #setQueryTag(QueryType)}.
+   */
+  public static enum QueryType {
     BENE_BY_ID_OMIT_IDENTIFIERS(
         "bene_by_id.omit_hicns_and_mbis",
         (s ->
@@ -169,10 +242,17 @@ public final class QueryLoggingListener implements QueryExecutionListener {
 
     EOBS_BY_BENE_ID_SNF("eobs_by_bene_id.snf", (s -> s.contains(" from \"SNFClaims\" "))),
 
+    BENE_LAST_UPDATED("bene_last_updated", null),
+
+    EOB_IDS_BY_BENE_ID_CLAIM_INDEX("eob_ids_by_bene_id.claim_index", null),
+
+    EOB_DOCUMENTS_BY_IDS("eob_documents_by_ids", null),
+
     UNKNOWN("unknown", null);
 
     private final String id;
     private final Predicate<String> queryTextRegex;
+    private final String[] mdcKeys;
 
     /**
      * Enum constant contructor.
@@ -184,6 +264,7 @@ public final class QueryLoggingListener implements QueryExecutionListener {
     private QueryType(String id, Predicate<String> queryTextRegex) {
       this.id = id;
       this.queryTextRegex = queryTextRegex;
+      this.mdcKeys = computeMdcKeys(id);
     }
 
     /** @return a unique identifier for this {@link QueryType}, suitable for use in logs and such */
@@ -0,0 +1,416 @@
+package gov.cms.bfd.server.war;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link DataSource} that sends the application's (read-only) queries to a set of read replica
+ * databases, falling back to the primary database when no replica is available.
+ *
+ * <p>Each connection request is routed to whichever healthy replica has the fewest connections
+ * currently checked out from it ("least outstanding queries"), with ties broken round-robin. A
+ * replica that fails to provide a connection is marked unhealthy and skipped for {@link
+ * #UNHEALTHY_RETRY_MILLIS}, after which it will be tried again. If no replica is healthy (or none
+ * are configured), connections come from the primary.
+ *
+ * <p>A replica whose connection pool is merely saturated (i.e. it timed out waiting for a free
+ * connection) is not marked unhealthy, though: the next least-loaded replica is tried instead, and
+ * if none of them can provide a connection, the pool timeout is bubbled up rather than piling that
+ * load onto the primary. That lets {@link ConnectionPoolSaturationInterceptor} shed the request.
+ *
+ * <p>Each replica also gets its own {@link HealthCheck} (registered as <code>
+ * {@value #HEALTH_CHECK_NAME_PREFIX}[index]</code>), and its own gauges in the {@link
+ * MetricRegistry}.
+ *
+ * <p>Note: this must only be used for read-only workloads, as nothing here keeps a transaction's
+ * connections on the same database, and replicas may lag behind the primary. The few writes that
+ * the application does make must be wrapped in {@link #runOnPrimary(Runnable)}.
+ */
+public final class ReplicaRoutingDataSource implements DataSource, Closeable {
+  private static final org.slf4j.Logger LOGGER =
+      LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+  /** The {@link HealthCheckRegistry} name prefix that each replica's check is registered with. */
+  static final String HEALTH_CHECK_NAME_PREFIX = "database.replica.";
+
+  /** The number of milliseconds that a failed replica will be skipped for before it's retried. */
+  static final long UNHEALTHY_RETRY_MILLIS = 30 * 1000;
+
+  /** The number of seconds to wait for a replica's connection to be validated in health checks. */
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  /** Set for the threads that are currently inside {@link #runOnPrimary(Runnable)}. */
+  private static final ThreadLocal<Boolean> PRIMARY_REQUIRED =
+      ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+  /**
+   * Counts the replica connections that have been handed out to each thread (by any {@link
+   * ReplicaRoutingDataSource}). See {@link #getReplicaConnectionCount()}.
+   */
+  private static final ThreadLocal<long[]> REPLICA_CONNECTIONS =
+      ThreadLocal.withInitial(() -> new long[1]);
+
+  private final DataSource primary;
+  private final List<Replica> replicas;
+  private final AtomicInteger nextReplicaOffset;
+  private final Meter primaryFallbacks;
+  private final Meter replicaPoolTimeouts;
+
+  /**
+   * Constructs a new {@link ReplicaRoutingDataSource}.
+   *
+   * @param primary the {@link DataSource} for the primary database, which will be used when no
+   *     replica is available
+   * @param replicaDataSources the {@link DataSource}s for each of the read replica databases
+   * @param metricRegistry the {@link MetricRegistry} to record routing metrics in
+   * @param healthCheckRegistry the {@link HealthCheckRegistry} to register each replica's {@link
+   *     HealthCheck} with
+   */
+  public ReplicaRoutingDataSource(
+      DataSource primary,
+      List<DataSource> replicaDataSources,
+      MetricRegistry metricRegistry,
+      HealthCheckRegistry healthCheckRegistry) {
+    this.primary = primary;
+    this.nextReplicaOffset = new AtomicInteger(0);
+
+    List<Replica> replicas = new ArrayList<>(replicaDataSources.size());
+    for (int i = 0; i < replicaDataSources.size(); i++) {
+      Replica replica = new Replica(i, replicaDataSources.get(i));
+      replicas.add(replica);
+
+      metricRegistry.register(
+          MetricRegistry.name(getClass().getSimpleName(), "replica", "" + i, "outstanding"),
+          (Gauge<Integer>) replica.outstanding::get);
+      metricRegistry.register(
+          MetricRegistry.name(getClass().getSimpleName(), "replica", "" + i, "healthy"),
+          (Gauge<Boolean>) replica::isHealthy);
+      healthCheckRegistry.register(HEALTH_CHECK_NAME_PREFIX + i, replica.healthCheck);
+    }
+    this.replicas = Collections.unmodifiableList(replicas);
+
+    this.primaryFallbacks =
+        metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "primaryFallbacks"));
+    this.replicaPoolTimeouts =
+        metricRegistry.meter(
+            MetricRegistry.name(getClass().getSimpleName(), "replicaPoolTimeouts"));
+  }
+
+  /**
+   * Runs the specified action with all of the current thread's new connections (from any {@link
+   * ReplicaRoutingDataSource}) going to the primary database, which is required for any writes.
+   *
+   * @param action the action to run
+   */
+  public static void runOnPrimary(Runnable action) {
+    boolean primaryRequiredPreviously = PRIMARY_REQUIRED.get();
+    PRIMARY_REQUIRED.set(Boolean.TRUE);
+    try {
+      action.run();
+    } finally {
+      PRIMARY_REQUIRED.set(primaryRequiredPreviously);
+    }
+  }
+
+  /**
+   * Returns the number of replica connections that have been handed out to the current thread so
+   * far. Callers can compare this before and after some work to tell whether or not any of that
+   * work's reads went to a replica (and so may have seen stale data).
+   *
+   * @return the number of connections to a replica database (as opposed to the primary) that any
+   *     {@link ReplicaRoutingDataSource} has handed out to the current thread
+   */
+  public static long getReplicaConnectionCount() {
+    return REPLICA_CONNECTIONS.get()[0];
+  }
+
+  /** @see javax.sql.DataSource#getConnection() */
+  @Override
+  public Connection getConnection() throws SQLException {
+    return routeConnection(null, null);
+  }
+
+  /** @see javax.sql.DataSource#getConnection(java.lang.String, java.lang.String) */
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return routeConnection(username, password);
+  }
+
+  /**
+   * @param username the database username to connect with, or <code>null</code> to use each {@link
+   *     DataSource}'s default credentials
+   * @param password the database password to connect with, or <code>null</code> to use each {@link
+   *     DataSource}'s default credentials
+   * @return a {@link Connection} from the least-loaded healthy replica, or from the primary if no
+   *     replica could provide one (or if the current thread is in {@link #runOnPrimary(Runnable)})
+   * @throws SQLException Any {@link SQLException}s from the primary will be bubbled up, as will a
+   *     replica's {@link SQLTransientConnectionException} if no replica could provide a connection
+   *     and at least one of them failed because its connection pool was saturated.
+   */
+  private Connection routeConnection(String username, String password) throws SQLException {
+    if (PRIMARY_REQUIRED.get())
+      return username == null ? primary.getConnection() : primary.getConnection(username, password);
+
+    List<Replica> failedReplicas = new ArrayList<>(0);
+    SQLTransientConnectionException poolTimeout = null;
+    Replica replica;
+    while ((replica = selectReplica(failedReplicas)) != null) {
+      replica.outstanding.incrementAndGet();
+      try {
+        Connection connection =
+            username == null
+                ? replica.dataSource.getConnection()
+                : replica.dataSource.getConnection(username, password);
+        replica.markHealthy();
+        REPLICA_CONNECTIONS.get()[0]++;
+        return replica.track(connection);
+      } catch (SQLException | RuntimeException e) {
+        replica.outstanding.decrementAndGet();
+        failedReplicas.add(replica);
+        if (isPoolTimeout(e)) {
+          // The replica is fine, just busy: don't bench it, and don't hide the saturation.
+          replicaPoolTimeouts.mark();
+          if (poolTimeout == null) poolTimeout = (SQLTransientConnectionException) e;
+          else poolTimeout.addSuppressed(e);
+          continue;
+        }
+
+        replica.markUnhealthy();
+        LOGGER.warn(
+            "Unable to connect to DB replica {}; skipping it for {} ms.",
+            replica.index,
+            UNHEALTHY_RETRY_MILLIS,
+            e);
+      }
+    }
+
+    if (poolTimeout != null) throw poolTimeout;
+    if (!replicas.isEmpty()) primaryFallbacks.mark();
+    return username == null ? primary.getConnection() : primary.getConnection(username, password);
+  }
+
+  /**
+   * @param exception the {@link Exception} that a replica's {@link DataSource} failed with
+   * @return <code>true</code> if the specified {@link Exception} indicates that the replica's
+   *     connection pool timed out waiting for one of its (busy) connections to be returned, <code>
+   *     false</code> if it indicates that the replica itself is failing
+   */
+  static boolean isPoolTimeout(Exception exception) {
+    // If HikariCP couldn't open new connections to the replica, it isn't a pool timeout.
+    return ConnectionPoolSaturationInterceptor.isHikariPoolTimeout(exception);
+  }
+
+  /**
+   * @param excludedReplicas the {@link Replica}s that should not be selected, as they've already
+   *     failed for the current request
+   * @return the available {@link Replica} with the fewest outstanding connections, or <code>null
+   *     </code> if there are none
+   */
+  private Replica selectReplica(List<Replica> excludedReplicas) {
+    if (replicas.isEmpty()) return null;
+
+    long now = System.currentTimeMillis();
+    int offset = Math.floorMod(nextReplicaOffset.getAndIncrement(), replicas.size());
+    Replica selected = null;
+    int selectedOutstanding = Integer.MAX_VALUE;
+    for (int i = 0; i < replicas.size(); i++) {
+      Replica replica = replicas.get((offset + i) % replicas.size());
+      if (excludedReplicas.contains(replica) || !replica.isAvailable(now)) continue;
+
+      int outstanding = replica.outstanding.get();
+      if (outstanding < selectedOutstanding) {
+        selected = replica;
+        selectedOutstanding = outstanding;
+      }
+    }
+    return selected;
+  }
+
+  /** @see javax.sql.CommonDataSource#getLogWriter() */
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return primary.getLogWriter();
+  }
+
+  /** @see javax.sql.CommonDataSource#setLogWriter(java.io.PrintWriter) */
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    primary.setLogWriter(out);
+    for (Replica replica : replicas) replica.dataSource.setLogWriter(out);
+  }
+
+  /** @see javax.sql.CommonDataSource#setLoginTimeout(int) */
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    primary.setLoginTimeout(seconds);
+    for (Replica replica : replicas) replica.dataSource.setLoginTimeout(seconds);
+  }
+
+  /** @see javax.sql.CommonDataSource#getLoginTimeout() */
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return primary.getLoginTimeout();
+  }
+
+  /** @see javax.sql.CommonDataSource#getParentLogger() */
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return primary.getParentLogger();
+  }
+
+  /** @see java.sql.Wrapper#unwrap(java.lang.Class) */
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) return iface.cast(this);
+    return primary.unwrap(iface);
+  }
+
+  /** @see java.sql.Wrapper#isWrapperFor(java.lang.Class) */
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || primary.isWrapperFor(iface);
+  }
+
+  /**
+   * Closes the primary and all of the replica {@link DataSource}s (those that are {@link
+   * Closeable}, anyways).
+   *
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    for (Replica replica : replicas)
+      if (replica.dataSource instanceof Closeable) ((Closeable) replica.dataSource).close();
+    if (primary instanceof Closeable) ((Closeable) primary).close();
+  }
+
+  /** @return the number of connections currently checked out from each replica, in order */
+  List<Integer> getOutstandingCounts() {
+    List<Integer> outstandingCounts = new ArrayList<>(replicas.size());
+    for (Replica replica : replicas) outstandingCounts.add(replica.outstanding.get());
+    return outstandingCounts;
+  }
+
+  /** Tracks the state of one of the read replica {@link DataSource}s. */
+  private static final class Replica {
+    private final int index;
+    private final DataSource dataSource;
+    private final AtomicInteger outstanding;
+    private final HealthCheck healthCheck;
+    private volatile long unhealthyUntil;
+
+    /**
+     * Constructs a new {@link Replica}.
+     *
+     * @param index the (zero-based) position of this replica in the configured list
+     * @param dataSource the {@link DataSource} for this replica
+     */
+    private Replica(int index, DataSource dataSource) {
+      this.index = index;
+      this.dataSource = dataSource;
+      this.outstanding = new AtomicInteger(0);
+      this.unhealthyUntil = 0L;
+      this.healthCheck =
+          new HealthCheck() {
+            /** @see com.codahale.metrics.health.HealthCheck#check() */
+            @Override
+            protected Result check() throws Exception {
+              try (Connection connection = dataSource.getConnection()) {
+                if (!connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                  markUnhealthy();
+                  return Result.unhealthy("DB replica connection is not valid.");
+                }
+              } catch (SQLException e) {
+                if (!isPoolTimeout(e)) markUnhealthy();
+                return Result.unhealthy(e);
+              }
+              markHealthy();
+              return Result.healthy("%d connection(s) outstanding.", outstanding.get());
+            }
+          };
+    }
+
+    /**
+     * @return <code>true</code> if this replica isn't known to be failing, <code>false</code> if it
+     *     is
+     */
+    private boolean isHealthy() {
+      return unhealthyUntil == 0L;
+    }
+
+    /**
+     * @param now the current time, in epoch milliseconds
+     * @return <code>true</code> if this replica is healthy or is due to be retried, <code>false
+     *     </code> if it should be skipped
+     */
+    private boolean isAvailable(long now) {
+      return now >= unhealthyUntil;
+    }
+
+    /** Marks this replica as healthy. */
+    private void markHealthy() {
+      unhealthyUntil = 0L;
+    }
+
+    /** Marks this replica as unhealthy, so that it's skipped for a while. */
+    private void markUnhealthy() {
+      unhealthyUntil = System.currentTimeMillis() + UNHEALTHY_RETRY_MILLIS;
+    }
+
+    /**
+     * @param connection a {@link Connection} that was just checked out from this replica
+     * @return a proxy for the specified {@link Connection} that will decrement this replica's
+     *     outstanding count when it is closed
+     */
+    private Connection track(Connection connection) {
+      AtomicBoolean closed = new AtomicBoolean(false);
+      InvocationHandler handler =
+          (proxy, method, args) -> {
+            if ("close".equals(method.getName()) && closed.compareAndSet(false, true))
+              outstanding.decrementAndGet();
+            return invoke(connection, method, args);
+          };
+      return (Connection)
+          Proxy.newProxyInstance(
+              Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, handler);
+    }
+
+    /**
+     * @param target the object to invoke the {@link Method} on
+     * @param method the {@link Method} to invoke
+     * @param args the arguments to pass to the {@link Method}
+     * @return the result of the invocation
+     * @throws Throwable Any exceptions thrown by the {@link Method} will be unwrapped and bubbled
+     *     up.
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+}
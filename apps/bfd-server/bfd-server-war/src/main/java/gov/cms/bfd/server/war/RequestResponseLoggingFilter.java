@@ -36,6 +36,22 @@ public final class RequestResponseLoggingFilter implements Filter {
 
   private static final String REQUEST_ATTRIB_START = computeMdcKey("request_start_milliseconds");
 
+  /*
+   * The MDC keys are all computed up front (or just their prefixes, for the header keys, whose
+   * names come from clients), as this filter is run for every single request.
+   */
+  private static final String MDC_KEY_REQUEST_TYPE = computeMdcKey("request_type");
+  private static final String MDC_KEY_REQUEST_METHOD = computeMdcKey("request.http_method");
+  private static final String MDC_KEY_REQUEST_URL = computeMdcKey("request.url");
+  private static final String MDC_KEY_REQUEST_URI = computeMdcKey("request.uri");
+  private static final String MDC_KEY_REQUEST_QUERY_STRING = computeMdcKey("request.query_string");
+  private static final String MDC_KEY_REQUEST_CLIENT_DN = computeMdcKey("request.clientSSL.DN");
+  private static final String MDC_KEY_RESPONSE_STATUS = computeMdcKey("response.status");
+  private static final String MDC_KEY_RESPONSE_DURATION =
+      computeMdcKey("response.duration_milliseconds");
+  private static final String MDC_KEY_PREFIX_REQUEST_HEADER = computeMdcKey("request.header.");
+  private static final String MDC_KEY_PREFIX_RESPONSE_HEADER = computeMdcKey("response.header.");
+
   /**
    * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse,
    *     javax.servlet.FilterChain)
@@ -58,29 +74,27 @@ public final class RequestResponseLoggingFilter implements Filter {
     request.setAttribute(REQUEST_ATTRIB_START, System.currentTimeMillis());
 
     // Record the request type.
-    MDC.put(computeMdcKey("request_type"), request.getClass().getName());
+    MDC.put(MDC_KEY_REQUEST_TYPE, request.getClass().getName());
 
     if (request instanceof HttpServletRequest) {
       HttpServletRequest servletRequest = (HttpServletRequest) request;
 
       // Record the basic request components.
-      MDC.put(computeMdcKey("request.http_method"), servletRequest.getMethod());
-      MDC.put(computeMdcKey("request.url"), servletRequest.getRequestURL().toString());
-      MDC.put(computeMdcKey("request.uri"), servletRequest.getRequestURI());
-      MDC.put(computeMdcKey("request.query_string"), servletRequest.getQueryString());
-      MDC.put(
-          computeMdcKey("request.clientSSL.DN"),
-          getClientSslPrincipalDistinguishedName(servletRequest));
+      MDC.put(MDC_KEY_REQUEST_METHOD, servletRequest.getMethod());
+      MDC.put(MDC_KEY_REQUEST_URL, servletRequest.getRequestURL().toString());
+      MDC.put(MDC_KEY_REQUEST_URI, servletRequest.getRequestURI());
+      MDC.put(MDC_KEY_REQUEST_QUERY_STRING, servletRequest.getQueryString());
+      MDC.put(MDC_KEY_REQUEST_CLIENT_DN, getClientSslPrincipalDistinguishedName(servletRequest));
 
       // Record the request headers.
       Enumeration<String> headerNames = servletRequest.getHeaderNames();
       while (headerNames.hasMoreElements()) {
         String headerName = headerNames.nextElement();
+        String headerKey = MDC_KEY_PREFIX_REQUEST_HEADER + headerName;
         List<String> headerValues = Collections.list(servletRequest.getHeaders(headerName));
-        if (headerValues.isEmpty()) MDC.put(computeMdcKey("request.header." + headerName), "");
-        else if (headerValues.size() == 1)
-          MDC.put(computeMdcKey("request.header." + headerName), headerValues.get(0));
-        else MDC.put(computeMdcKey("request.header." + headerName), headerValues.toString());
+        if (headerValues.isEmpty()) MDC.put(headerKey, "");
+        else if (headerValues.size() == 1) MDC.put(headerKey, headerValues.get(0));
+        else MDC.put(headerKey, headerValues.toString());
       }
     }
   }
@@ -90,7 +104,7 @@ public final class RequestResponseLoggingFilter implements Filter {
    * @return the key to use for {@link MDC#put(String, String)}
    */
   private static String computeMdcKey(String keySuffix) {
-    return String.format("%s.%s", "http_access", keySuffix);
+    return "http_access." + keySuffix;
   }
 
   /**
@@ -135,16 +149,16 @@ public final class RequestResponseLoggingFilter implements Filter {
     if (response instanceof HttpServletResponse) {
       HttpServletResponse servletResponse = (HttpServletResponse) response;
 
-      MDC.put(computeMdcKey("response.status"), Integer.toString(servletResponse.getStatus()));
+      MDC.put(MDC_KEY_RESPONSE_STATUS, Integer.toString(servletResponse.getStatus()));
 
       // Record the response headers.
       Collection<String> headerNames = servletResponse.getHeaderNames();
       for (String headerName : headerNames) {
+        String headerKey = MDC_KEY_PREFIX_RESPONSE_HEADER + headerName;
         Collection<String> headerValues = servletResponse.getHeaders(headerName);
-        if (headerValues.isEmpty()) MDC.put(computeMdcKey("response.header." + headerName), "");
-        else if (headerValues.size() == 1)
-          MDC.put(computeMdcKey("response.header." + headerName), headerValues.iterator().next());
-        else MDC.put(computeMdcKey("response.header." + headerName), headerValues.toString());
+        if (headerValues.isEmpty()) MDC.put(headerKey, "");
+        else if (headerValues.size() == 1) MDC.put(headerKey, headerValues.iterator().next());
+        else MDC.put(headerKey, headerValues.toString());
       }
     }
 
@@ -152,7 +166,7 @@ public final class RequestResponseLoggingFilter implements Filter {
     Long requestStartMilliseconds = (Long) request.getAttribute(REQUEST_ATTRIB_START);
     if (requestStartMilliseconds != null)
       MDC.put(
-          computeMdcKey("response.duration_milliseconds"),
+          MDC_KEY_RESPONSE_DURATION,
           Long.toString(System.currentTimeMillis() - requestStartMilliseconds));
   }
 
@@ -1,10 +1,13 @@
 package gov.cms.bfd.server.war;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.codahale.metrics.servlet.InstrumentedFilter;
 import com.codahale.metrics.servlets.HealthCheckServlet;
 import com.codahale.metrics.servlets.MetricsServlet;
+import gov.cms.bfd.server.war.stu3.providers.ServerWarmup;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletContainerInitializer;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -35,6 +38,7 @@ public final class ServerInitializer implements WebApplicationInitializer {
   @Override
   public void onStartup(ServletContext servletContext) throws ServletException {
     LOGGER.info("Initializing Blue Button API backend server...");
+    long startNanos = System.nanoTime();
 
     // Create the Spring application context.
     AnnotationConfigWebApplicationContext springContext =
@@ -59,6 +63,20 @@ public final class ServerInitializer implements WebApplicationInitializer {
     cxfServletReg.setLoadOnStartup(1);
     cxfServletReg.addMapping("/v1/fhir/*");
 
+    // Register the bulk $export Servlet, which handles kickoffs, status checks, and downloads.
+    ServletRegistration.Dynamic bulkExportServletReg =
+        servletContext.addServlet("bulkExportServlet", new BulkExportServlet());
+    bulkExportServletReg.setLoadOnStartup(2);
+    bulkExportServletReg.addMapping(
+        BulkExportServlet.KICKOFF_PATH, BulkExportServlet.EXPORT_PATH + "/*");
+
+    // Register the Servlet that exposes the application's metrics for Prometheus to scrape.
+    ServletRegistration.Dynamic prometheusMetricsServletReg =
+        servletContext.addServlet(
+            "prometheusMetricsServlet",
+            new PrometheusMetricsServlet(springContext.getBean(MetricRegistry.class)));
+    prometheusMetricsServletReg.addMapping(PrometheusMetricsServlet.PATH);
+
     /*
      * Register the MetricRegistry and HealthCheckRegistry into the ServletContext,
      * so that InstrumentedFilter and AdminServlet (configured in web.xml) can work.
@@ -70,6 +88,25 @@ public final class ServerInitializer implements WebApplicationInitializer {
     servletContext.setAttribute(
         HealthCheckServlet.HEALTH_CHECK_REGISTRY, springContext.getBean(HealthCheckRegistry.class));
 
-    LOGGER.info("Initialized Blue Button API backend server.");
+    /*
+     * Kick off the warm-up in the background. Until it completes, the server's health checks will
+     * report it as not yet ready.
+     */
+    ServerWarmup serverWarmup = springContext.getBean(ServerWarmup.class);
+    boolean warmupEnabled =
+        Boolean.parseBoolean(
+            springEnv.getProperty(SpringConfiguration.PROP_WARMUP_ENABLED, Boolean.TRUE.toString()));
+    if (warmupEnabled) serverWarmup.startAsync();
+    else serverWarmup.skip();
+
+    // Record how long startup took (excluding the warm-up), e.g. to help tune autoscaling.
+    long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    springContext
+        .getBean(MetricRegistry.class)
+        .register(
+            MetricRegistry.name(getClass().getSimpleName(), "startupMillis"),
+            (Gauge<Long>) () -> startupMillis);
+
+    LOGGER.info("Initialized Blue Button API backend server in {} ms.", startupMillis);
   }
 }
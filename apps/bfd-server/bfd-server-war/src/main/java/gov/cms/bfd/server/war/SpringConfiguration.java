@@ -3,6 +3,7 @@ package gov.cms.bfd.server.war;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor;
 import ca.uhn.fhir.rest.server.interceptor.ResponseHighlighterInterceptor;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.JmxReporter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheckRegistry;
@@ -13,9 +14,11 @@ import com.zaxxer.hikari.HikariDataSource;
 import gov.cms.bfd.model.rif.schema.DatabaseSchemaManager;
 import gov.cms.bfd.model.rif.schema.DatabaseTestHelper;
 import gov.cms.bfd.model.rif.schema.DatabaseTestHelper.DataSourceComponents;
+import gov.cms.bfd.server.war.stu3.providers.ClaimFhirDocumentStore;
 import gov.cms.bfd.server.war.stu3.providers.CoverageResourceProvider;
 import gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider;
 import gov.cms.bfd.server.war.stu3.providers.PatientResourceProvider;
+import gov.cms.bfd.server.war.stu3.providers.ResourceCache;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -25,6 +28,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.PersistenceContext;
@@ -35,6 +39,8 @@ import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
 import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.jpa.HibernatePersistenceProvider;
 import org.hibernate.tool.schema.Action;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.Bean;
@@ -48,13 +54,39 @@ import org.springframework.orm.jpa.support.PersistenceAnnotationBeanPostProcesso
 @Configuration
 @ComponentScan(basePackageClasses = {ServerInitializer.class})
 public class SpringConfiguration {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SpringConfiguration.class);
+
   public static final String PROP_DB_URL = "bfdServer.db.url";
   public static final String PROP_DB_USERNAME = "bfdServer.db.username";
   public static final String PROP_DB_PASSWORD = "bfdServer.db.password";
   public static final String PROP_DB_CONNECTIONS_MAX = "bfdServer.db.connections.max";
+  public static final String PROP_DB_CONNECTIONS_MIN = "bfdServer.db.connections.min";
+  public static final String PROP_DB_CONNECTIONS_ADAPTIVE = "bfdServer.db.connections.adaptive";
+  public static final String PROP_DB_CONNECTIONS_WAIT_MAX =
+      "bfdServer.db.connections.waitMaxMillis";
+  public static final String PROP_DB_REPLICA_URLS = "bfdServer.db.replicas.urls";
   public static final String PROP_DB_SCHEMA_APPLY = "bfdServer.db.schema.apply";
+  public static final String PROP_DB_SCHEMA_FAST_START = "bfdServer.db.schema.fastStart";
+  public static final String PROP_WARMUP_ENABLED = "bfdServer.warmup.enabled";
+  public static final String PROP_EOB_LINES_FETCH_MODE = "bfdServer.eob.lines.fetchMode";
+  public static final String PROP_EOB_STREAMING_ENABLED = "bfdServer.eob.streaming.enabled";
+  public static final String PROP_EOB_PAGING_LAZY = "bfdServer.eob.paging.lazy";
+  public static final String PROP_EOB_CLAIM_INDEX_ENABLED = "bfdServer.eob.claimIndex.enabled";
+  public static final String PROP_EOB_DOCUMENTS_ENABLED = "bfdServer.eob.documents.enabled";
+  public static final String PROP_EOB_DOCUMENTS_VERSION = "bfdServer.eob.documents.version";
+  public static final String PROP_CACHE_RESOURCES_MAX = "bfdServer.cache.resources.max";
+  public static final String PROP_CACHE_GENERATION_CHECK_SECONDS =
+      "bfdServer.cache.generationCheckSeconds";
+  public static final String PROP_EXPORT_DIR = "bfdServer.export.dir";
+  public static final String PROP_EXPORT_THREADS = "bfdServer.export.threads";
+  public static final String PROP_EXPORT_RETENTION_HOURS = "bfdServer.export.retentionHours";
+  public static final String PROP_CONCURRENCY_ENABLED = "bfdServer.concurrency.enabled";
+  public static final String PROP_CONCURRENCY_QUEUE_MAX = "bfdServer.concurrency.queueMaxMillis";
   public static final int TRANSACTION_TIMEOUT = 30;
 
+  /** The number of milliseconds between each of the {@link AdaptivePoolSizer}'s checks. */
+  private static final long ADAPTIVE_POOL_CHECK_MILLISECONDS = 5 * 1000;
+
   /**
    * The {@link Bean#name()} for the {@link List} of STU3 {@link IResourceProvider} beans for the
    * application.
@@ -73,8 +105,17 @@ public class SpringConfiguration {
    * @param username the database username to use
    * @param password the database password to use
    * @param connectionsMaxText the maximum number of database connections to use
+   * @param connectionsMinText the minimum number of database connections to use, when the pool is
+   *     being sized adaptively
+   * @param connectionsWaitMaxText the maximum number of milliseconds to wait for a database
+   *     connection from the pool before giving up (and shedding the request)
    * @param schemaApplyText whether or not to create/update the DB schema
+   * @param replicaUrlsText a comma-separated list of the JDBC URLs of any read replica databases
+   *     that queries should be routed to (which use the same username and password), or an empty
+   *     {@link String} if there are none
    * @param metricRegistry the {@link MetricRegistry} for the application
+   * @param healthCheckRegistry the {@link HealthCheckRegistry} for the application
+   * @param poolSizer the {@link AdaptivePoolSizer} for the application
    * @return the {@link DataSource} that provides the application's database connection
    */
   @Bean(destroyMethod = "close")
@@ -83,77 +124,131 @@ public class SpringConfiguration {
       @Value("${" + PROP_DB_USERNAME + "}") String username,
       @Value("${" + PROP_DB_PASSWORD + "}") String password,
       @Value("${" + PROP_DB_CONNECTIONS_MAX + ":-1}") String connectionsMaxText,
+      @Value("${" + PROP_DB_CONNECTIONS_MIN + ":-1}") String connectionsMinText,
+      @Value("${" + PROP_DB_CONNECTIONS_WAIT_MAX + ":30000}") String connectionsWaitMaxText,
       @Value("${" + PROP_DB_SCHEMA_APPLY + ":false}") String schemaApplyText,
-      MetricRegistry metricRegistry) {
+      @Value("${" + PROP_DB_REPLICA_URLS + ":}") String replicaUrlsText,
+      MetricRegistry metricRegistry,
+      HealthCheckRegistry healthCheckRegistry,
+      AdaptivePoolSizer poolSizer) {
+    PoolSettings poolSettings =
+        new PoolSettings(
+            connectionsMaxText,
+            connectionsMinText,
+            connectionsWaitMaxText,
+            metricRegistry,
+            poolSizer);
     HikariDataSource poolingDataSource;
     if (url.startsWith(DatabaseTestHelper.JDBC_URL_PREFIX_BLUEBUTTON_TEST)) {
-      poolingDataSource = createTestDatabaseIfNeeded(url, connectionsMaxText, metricRegistry);
+      poolingDataSource = createTestDatabaseIfNeeded(url, poolSettings);
     } else {
       poolingDataSource = new HikariDataSource();
       poolingDataSource.setJdbcUrl(url);
       if (username != null && !username.isEmpty()) poolingDataSource.setUsername(username);
       if (password != null && !password.isEmpty()) poolingDataSource.setPassword(password);
-      configureDataSource(poolingDataSource, connectionsMaxText, metricRegistry);
+      configureDataSource(poolingDataSource, poolSettings);
     }
 
+    /*
+     * Spread the (read-only) queries across any read replicas that have been configured, each of
+     * which gets its own connection pool.
+     */
+    DataSource routingDataSource = poolingDataSource;
+    List<DataSource> replicaDataSources =
+        createReplicaDataSources(replicaUrlsText, username, password, poolSettings);
+    if (!replicaDataSources.isEmpty())
+      routingDataSource =
+          new ReplicaRoutingDataSource(
+              poolingDataSource, replicaDataSources, metricRegistry, healthCheckRegistry);
+
     // Wrap the pooled DataSource in a proxy that records performance data.
     ProxyDataSource proxyDataSource =
-        ProxyDataSourceBuilder.create(poolingDataSource)
+        ProxyDataSourceBuilder.create(routingDataSource)
             .name("BFD-Data")
             .listener(new QueryLoggingListener())
             .proxyResultSet()
             .build();
 
-    // Create/upgrade the DB schema, if specified.
+    /*
+     * Create/upgrade the DB schema, if specified. This always goes to the primary, as replicas are
+     * read-only.
+     */
     boolean schemaApply = Boolean.parseBoolean(schemaApplyText);
     if (schemaApply) {
-      DatabaseSchemaManager.createOrUpdateSchema(proxyDataSource);
+      DatabaseSchemaManager.createOrUpdateSchema(poolingDataSource);
     }
 
     return proxyDataSource;
   }
 
+  /**
+   * @param replicaUrlsText a comma-separated list of the JDBC URLs of the read replica databases,
+   *     or an empty {@link String} if there are none
+   * @param username the database username to use
+   * @param password the database password to use
+   * @param poolSettings the {@link PoolSettings} to apply to each replica's connection pool
+   * @return a separately-pooled {@link HikariDataSource} for each of the specified replicas
+   */
+  private static List<DataSource> createReplicaDataSources(
+      String replicaUrlsText,
+      String username,
+      String password,
+      PoolSettings poolSettings) {
+    List<DataSource> replicaDataSources = new ArrayList<>();
+    if (replicaUrlsText == null || replicaUrlsText.trim().isEmpty()) return replicaDataSources;
+
+    for (String replicaUrl : replicaUrlsText.trim().split("\\s*,\\s*")) {
+      HikariDataSource replicaDataSource = new HikariDataSource();
+      replicaDataSource.setPoolName("bfd-replica-" + replicaDataSources.size());
+      replicaDataSource.setJdbcUrl(replicaUrl);
+      if (username != null && !username.isEmpty()) replicaDataSource.setUsername(username);
+      if (password != null && !password.isEmpty()) replicaDataSource.setPassword(password);
+      replicaDataSource.setReadOnly(true);
+      configureDataSource(replicaDataSource, poolSettings);
+      replicaDataSources.add(replicaDataSource);
+    }
+    return replicaDataSources;
+  }
+
   /**
    * Some of the DBs we support using in local development and testing require special handling.
    * This method takes care of that.
    *
    * @param url the JDBC URL that the application was configured to use
-   * @param connectionsMaxText the maximum number of database connections to use
-   * @param metricRegistry the {@link MetricRegistry} for the application
+   * @param poolSettings the {@link PoolSettings} to apply to the connection pool
    */
   private static HikariDataSource createTestDatabaseIfNeeded(
-      String url, String connectionsMaxText, MetricRegistry metricRegistry) {
+      String url, PoolSettings poolSettings) {
     /*
      * Note: Eventually, we may add support for other test DB types, but
      * right now only in-memory HSQL DBs are supported.
      */
     if (url.endsWith(":hsqldb:mem")) {
-      return createTestDatabaseIfNeededForHsql(url, connectionsMaxText, metricRegistry);
+      return createTestDatabaseIfNeededForHsql(url, poolSettings);
     } else {
       throw new BadCodeMonkeyException("Unsupported test URL: " + url);
     }
   }
 
   /**
-   * Handles {@link #createTestDatabaseIfNeeded(String, String, MetricRegistry)} for HSQL. We need
-   * to special-case the HSQL DBs that are supported by our tests, so that they get handled
-   * correctly. Specifically, we need to ensure that the HSQL Server is started up, so that our test
-   * code can access the DB directly. In addition, we need to ensure that connection details to that
-   * HSQL server get written out somewhere that the test code can find it.
+   * Handles {@link #createTestDatabaseIfNeeded(String, PoolSettings)} for HSQL. We need to
+   * special-case the HSQL DBs that are supported by our tests, so that they get handled correctly.
+   * Specifically, we need to ensure that the HSQL Server is started up, so that our test code can
+   * access the DB directly. In addition, we need to ensure that connection details to that HSQL
+   * server get written out somewhere that the test code can find it.
    *
    * @param url the JDBC URL that the application was configured to use
-   * @param connectionsMaxText the maximum number of database connections to use
-   * @param metricRegistry the {@link MetricRegistry} for the application
+   * @param poolSettings the {@link PoolSettings} to apply to the connection pool
    */
   private static HikariDataSource createTestDatabaseIfNeededForHsql(
-      String url, String connectionsMaxText, MetricRegistry metricRegistry) {
+      String url, PoolSettings poolSettings) {
     DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterCleanAndSchema();
     DataSourceComponents dataSourceComponents = new DataSourceComponents(dataSource);
 
     // Create the DataSource to connect to that shiny new DB.
     HikariDataSource dataSourcePool = new HikariDataSource();
     dataSourcePool.setDataSource(dataSource);
-    configureDataSource(dataSourcePool, connectionsMaxText, metricRegistry);
+    configureDataSource(dataSourcePool, poolSettings);
 
     /*
      * Write out the DB properties for <code>ServerTestUtils</code> to use.
@@ -192,25 +287,19 @@ public class SpringConfiguration {
   /**
    * @param poolingDataSource the {@link HikariDataSource} to be configured, which must already have
    *     its basic connection properties (URL, username, password) configured
-   * @param connectionsMaxText the maximum number of database connections to use
-   * @param metricRegistry the {@link MetricRegistry} for the application
+   * @param poolSettings the {@link PoolSettings} to apply
    */
   private static void configureDataSource(
-      HikariDataSource poolingDataSource,
-      String connectionsMaxText,
-      MetricRegistry metricRegistry) {
-    int connectionsMax;
-    try {
-      connectionsMax = Integer.parseInt(connectionsMaxText);
-    } catch (NumberFormatException e) {
-      connectionsMax = -1;
-    }
-    if (connectionsMax < 1) {
-      // Assign a reasonable default value, if none was specified.
-      connectionsMax = Runtime.getRuntime().availableProcessors() * 5;
-    }
-
-    poolingDataSource.setMaximumPoolSize(connectionsMax);
+      HikariDataSource poolingDataSource, PoolSettings poolSettings) {
+    /*
+     * The pool will either be fixed at its maximum size, or will be grown and shrunk within its
+     * bounds by the AdaptivePoolSizer. Either way, requests that have to wait too long for a
+     * connection will fail fast, and be shed with a 503 by the
+     * ConnectionPoolSaturationInterceptor.
+     */
+    poolSettings.poolSizer.manage(
+        poolingDataSource, poolSettings.connectionsMin, poolSettings.connectionsMax);
+    poolingDataSource.setConnectionTimeout(poolSettings.connectionsWaitMaxMilliseconds);
 
     /*
      * FIXME Temporary workaround for CBBI-357: send Postgres' query planner a
@@ -223,7 +312,7 @@ public class SpringConfiguration {
           "set application_name = 'bfd-server'; set enable_seqscan = false;");
 
     poolingDataSource.setRegisterMbeans(true);
-    poolingDataSource.setMetricRegistry(metricRegistry);
+    poolingDataSource.setMetricRegistry(poolSettings.metricRegistry);
 
     /*
      * FIXME Temporary setting for BB-1233 to find the source of any possible leaks
@@ -232,6 +321,30 @@ public class SpringConfiguration {
     poolingDataSource.setLeakDetectionThreshold(60 * 1000);
   }
 
+  /**
+   * @param metricRegistry the {@link MetricRegistry} for the application
+   * @param adaptiveText whether or not the connection pools should be resized based on their
+   *     saturation, rather than being fixed at their maximum size
+   * @return the {@link AdaptivePoolSizer} for the application's connection pools
+   */
+  @Bean(destroyMethod = "close")
+  public AdaptivePoolSizer adaptivePoolSizer(
+      MetricRegistry metricRegistry,
+      @Value("${" + PROP_DB_CONNECTIONS_ADAPTIVE + ":false}") String adaptiveText) {
+    return new AdaptivePoolSizer(
+        metricRegistry, Boolean.parseBoolean(adaptiveText), ADAPTIVE_POOL_CHECK_MILLISECONDS);
+  }
+
+  /**
+   * @param metricRegistry the {@link MetricRegistry} for the application
+   * @return an {@link IServerInterceptor} that will respond with a <code>503</code> when requests
+   *     time out waiting for a database connection
+   */
+  @Bean
+  public IServerInterceptor connectionPoolSaturationInterceptor(MetricRegistry metricRegistry) {
+    return new ConnectionPoolSaturationInterceptor(metricRegistry);
+  }
+
   /**
    * @param entityManagerFactory the {@link EntityManagerFactory} to use
    * @return the {@link JpaTransactionManager} for the application
@@ -245,25 +358,57 @@ public class SpringConfiguration {
 
   /**
    * @param dataSource the {@link DataSource} for the application
+   * @param schemaFastStartText whether or not to skip Hibernate's (slow) validation of the
+   *     entities against the DB schema, whenever {@link
+   *     DatabaseSchemaManager#isSchemaCurrent(DataSource)} reports that the DB's migrations exactly
+   *     match the ones bundled with the application
+   * @param metricRegistry the {@link MetricRegistry} for the application
    * @return the {@link LocalContainerEntityManagerFactoryBean}, which ensures that other beans can
    *     safely request injection of {@link EntityManager} instances
    */
   @Bean
-  public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+  public LocalContainerEntityManagerFactoryBean entityManagerFactory(
+      DataSource dataSource,
+      @Value("${" + PROP_DB_SCHEMA_FAST_START + ":false}") String schemaFastStartText,
+      MetricRegistry metricRegistry) {
+    long startNanos = System.nanoTime();
+    boolean schemaFastStart = Boolean.parseBoolean(schemaFastStartText);
+    boolean schemaValidate =
+        !(schemaFastStart && DatabaseSchemaManager.isSchemaCurrent(dataSource));
+    if (schemaFastStart && schemaValidate)
+      LOGGER.warn("Schema fast start: schema doesn't match the bundled migrations; validating it.");
+
     LocalContainerEntityManagerFactoryBean containerEmfBean =
         new LocalContainerEntityManagerFactoryBean();
     containerEmfBean.setDataSource(dataSource);
     containerEmfBean.setPackagesToScan("gov.cms.bfd.model.rif");
     containerEmfBean.setPersistenceProvider(new HibernatePersistenceProvider());
-    containerEmfBean.setJpaProperties(jpaProperties());
+    containerEmfBean.setJpaProperties(jpaProperties(schemaValidate));
     containerEmfBean.afterPropertiesSet();
+
+    long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    LOGGER.info(
+        "Created the EntityManagerFactory in {} ms (schema validated: {}).",
+        startupMillis,
+        schemaValidate);
+    metricRegistry.register(
+        MetricRegistry.name(SpringConfiguration.class.getSimpleName(), "jpa", "startupMillis"),
+        (Gauge<Long>) () -> startupMillis);
+    metricRegistry.register(
+        MetricRegistry.name(SpringConfiguration.class.getSimpleName(), "jpa", "schemaValidated"),
+        (Gauge<Boolean>) () -> schemaValidate);
     return containerEmfBean;
   }
 
-  /** @return the {@link Properties} to configure Hibernate and JPA with */
-  private Properties jpaProperties() {
+  /**
+   * @param schemaValidate whether or not Hibernate should validate the entities against the DB
+   *     schema at startup
+   * @return the {@link Properties} to configure Hibernate and JPA with
+   */
+  private Properties jpaProperties(boolean schemaValidate) {
     Properties extraProperties = new Properties();
-    extraProperties.put(AvailableSettings.HBM2DDL_AUTO, Action.VALIDATE);
+    extraProperties.put(
+        AvailableSettings.HBM2DDL_AUTO, schemaValidate ? Action.VALIDATE : Action.NONE);
 
     /*
      * These configuration settings will set Hibernate to log all SQL
@@ -326,11 +471,12 @@ public class SpringConfiguration {
 
   /**
    * @return the {@link MetricRegistry} for the application, which can be used to collect statistics
-   *     on the application's performance
+   *     on the application's performance (its timers and histograms are backed by {@link
+   *     LogLinearReservoir}s, so that their tail percentiles are accurate)
    */
   @Bean
   public MetricRegistry metricRegistry() {
-    MetricRegistry metricRegistry = new MetricRegistry();
+    MetricRegistry metricRegistry = new HistogramMetricRegistry();
     metricRegistry.registerAll(new MemoryUsageGaugeSet());
     metricRegistry.registerAll(new GarbageCollectorMetricSet());
 
@@ -350,6 +496,43 @@ public class SpringConfiguration {
     return healthCheckRegistry;
   }
 
+  /**
+   * @param resourcesMaxText the maximum number of FHIR resources to cache, or <code>0</code> to
+   *     disable caching
+   * @param generationCheckSecondsText the minimum number of seconds between checks of whether or
+   *     not a new data set has been loaded
+   * @param metricRegistry the {@link MetricRegistry} for the application
+   * @return the {@link ResourceCache} for the application's resource providers to use
+   */
+  @Bean
+  public ResourceCache resourceCache(
+      @Value("${" + PROP_CACHE_RESOURCES_MAX + ":0}") String resourcesMaxText,
+      @Value("${" + PROP_CACHE_GENERATION_CHECK_SECONDS + ":60}") String generationCheckSecondsText,
+      MetricRegistry metricRegistry) {
+    long resourcesMax = Long.parseLong(resourcesMaxText);
+    long generationCheckSeconds = Long.parseLong(generationCheckSecondsText);
+    return new ResourceCache(metricRegistry, resourcesMax, generationCheckSeconds);
+  }
+
+  /**
+   * @param enabledText whether or not the precomputed FHIR JSON for claims/events should be stored
+   *     and used
+   * @param versionText the transformer version to store and match documents with, or an empty
+   *     {@link String} to use {@link ClaimFhirDocumentStore#computeTransformerVersion()}
+   * @param metricRegistry the {@link MetricRegistry} for the application
+   * @return the {@link ClaimFhirDocumentStore} for the application's resource providers to use
+   */
+  @Bean(destroyMethod = "close")
+  public ClaimFhirDocumentStore claimFhirDocumentStore(
+      @Value("${" + PROP_EOB_DOCUMENTS_ENABLED + ":false}") String enabledText,
+      @Value("${" + PROP_EOB_DOCUMENTS_VERSION + ":}") String versionText,
+      MetricRegistry metricRegistry) {
+    String version = versionText.trim();
+    if (version.isEmpty()) version = ClaimFhirDocumentStore.computeTransformerVersion();
+    return new ClaimFhirDocumentStore(
+        metricRegistry, Boolean.parseBoolean(enabledText.trim()), version);
+  }
+
   /**
    * @return an {@link IServerInterceptor} that will add some pretty syntax highlighting in
    *     responses when a browser is detected
@@ -359,4 +542,59 @@ public class SpringConfiguration {
     ResponseHighlighterInterceptor retVal = new ResponseHighlighterInterceptor();
     return retVal;
   }
+
+  /** Bundles up the configuration that's applied to each of the application's connection pools. */
+  private static final class PoolSettings {
+    private final int connectionsMax;
+    private final int connectionsMin;
+    private final long connectionsWaitMaxMilliseconds;
+    private final MetricRegistry metricRegistry;
+    private final AdaptivePoolSizer poolSizer;
+
+    /**
+     * Constructs a new {@link PoolSettings}, assigning reasonable default values for any settings
+     * that weren't specified.
+     *
+     * @param connectionsMaxText the maximum number of database connections to use, per pool
+     * @param connectionsMinText the minimum number of database connections to use, per pool, when
+     *     the pools are being sized adaptively
+     * @param connectionsWaitMaxText the maximum number of milliseconds to wait for a database
+     *     connection from a pool
+     * @param metricRegistry the {@link MetricRegistry} for the application
+     * @param poolSizer the {@link AdaptivePoolSizer} for the application
+     */
+    private PoolSettings(
+        String connectionsMaxText,
+        String connectionsMinText,
+        String connectionsWaitMaxText,
+        MetricRegistry metricRegistry,
+        AdaptivePoolSizer poolSizer) {
+      int connectionsMax = parseInt(connectionsMaxText, -1);
+      if (connectionsMax < 1) {
+        // Assign a reasonable default value, if none was specified.
+        connectionsMax = Runtime.getRuntime().availableProcessors() * 5;
+      }
+      int connectionsMin = parseInt(connectionsMinText, -1);
+      if (connectionsMin < 1) connectionsMin = Runtime.getRuntime().availableProcessors();
+
+      this.connectionsMax = connectionsMax;
+      this.connectionsMin = Math.min(connectionsMin, connectionsMax);
+      this.connectionsWaitMaxMilliseconds = parseInt(connectionsWaitMaxText, 30 * 1000);
+      this.metricRegistry = metricRegistry;
+      this.poolSizer = poolSizer;
+    }
+
+    /**
+     * @param text the {@link String} to parse
+     * @param defaultValue the value to return if the {@link String} can't be parsed
+     * @return the parsed value, or the specified default
+     */
+    private static int parseInt(String text, int defaultValue) {
+      try {
+        return Integer.parseInt(text);
+      } catch (NumberFormatException e) {
+        return defaultValue;
+      }
+    }
+  }
 }
@@ -0,0 +1,231 @@
+package gov.cms.bfd.server.war;
+
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.RestfulServerUtils.ResponseEncoding;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.server.war.stu3.providers.EncodedExplanationOfBenefit;
+import gov.cms.bfd.server.war.stu3.providers.StreamingBundle;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ListIterator;
+import java.util.function.Supplier;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+/**
+ * A HAPI {@link InterceptorAdapter} that writes {@link StreamingBundle} responses out directly to
+ * the servlet response, one entry at a time, rather than letting HAPI serialize the whole {@link
+ * Bundle} (and all of its entries) into a single in-memory {@link String} first.
+ *
+ * <p>The {@link Bundle}'s own elements (ID, total, links, etc.) are encoded by HAPI as usual, and
+ * the entries are then spliced in where they belong: they're the last element of a {@link Bundle}
+ * in both the JSON and XML encodings. Responses are never pretty-printed by this interceptor, as
+ * that would require each entry to be re-indented. Any {@link EncodedExplanationOfBenefit} entries
+ * are copied straight into JSON responses, without being decoded and re-encoded.
+ *
+ * <p>Note that this interceptor must be registered before any others (e.g. the
+ * ResponseHighlighterInterceptor) that might also try to take over the response.
+ *
+ * <p>Because the <code>200 OK</code> status has already been sent by the time each entry is
+ * produced, an error part-way through a streamed response can't be reported to the client as a
+ * regular error response. Instead, the failure is recorded as a request attribute, HAPI is
+ * prevented from writing an error body onto the end of the partial response, and {@link
+ * #rethrowStreamingFailure(HttpServletRequest)} is then used to let the failure escape the servlet,
+ * which causes the servlet container to abort the connection rather than ending the response
+ * cleanly. Clients will therefore see an incomplete response (e.g. a truncated chunked transfer),
+ * rather than a truncated-but-well-terminated one.
+ */
+public final class StreamingBundleInterceptor extends InterceptorAdapter {
+  /**
+   * The {@link HttpServletRequest} attribute that the failure of a partially-streamed response is
+   * recorded in.
+   */
+  static final String ATTRIBUTE_STREAMING_FAILURE =
+      StreamingBundleInterceptor.class.getName() + ".streamingFailure";
+
+  private final Histogram bytesWritten;
+
+  /**
+   * Constructs a new {@link StreamingBundleInterceptor}.
+   *
+   * @param metricRegistry the {@link MetricRegistry} to record the size of each streamed response
+   *     in
+   */
+  public StreamingBundleInterceptor(MetricRegistry metricRegistry) {
+    this.bytesWritten =
+        metricRegistry.histogram(MetricRegistry.name(getClass().getSimpleName(), "bytes_written"));
+  }
+
+  /**
+   * @see ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter#outgoingResponse(RequestDetails,
+   *     IBaseResource, HttpServletRequest, HttpServletResponse)
+   */
+  @Override
+  public boolean outgoingResponse(
+      RequestDetails theRequestDetails,
+      IBaseResource theResponseObject,
+      HttpServletRequest theServletRequest,
+      HttpServletResponse theServletResponse) {
+    if (!(theResponseObject instanceof StreamingBundle)) return true;
+    StreamingBundle bundle = (StreamingBundle) theResponseObject;
+
+    ResponseEncoding responseEncoding =
+        RestfulServerUtils.determineResponseEncodingWithDefault(theRequestDetails);
+    EncodingEnum encoding = responseEncoding != null ? responseEncoding.getEncoding() : null;
+    if (encoding != EncodingEnum.JSON && encoding != EncodingEnum.XML) {
+      // Let HAPI handle any other encodings the slow way.
+      bundle.materialize();
+      return true;
+    }
+
+    IParser parser = encoding.newParser(theRequestDetails.getServer().getFhirContext());
+    parser.setPrettyPrint(false);
+
+    CountingOutputStream responseStream = null;
+    try {
+      theServletResponse.setStatus(HttpServletResponse.SC_OK);
+      theServletResponse.setContentType(encoding.getResourceContentTypeNonLegacy());
+      theServletResponse.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+      responseStream = new CountingOutputStream(theServletResponse.getOutputStream());
+      Writer responseWriter = new OutputStreamWriter(responseStream, StandardCharsets.UTF_8);
+      writeBundle(parser, encoding, bundle, responseWriter);
+      responseWriter.flush();
+    } catch (IOException e) {
+      theServletRequest.setAttribute(ATTRIBUTE_STREAMING_FAILURE, e);
+      throw new UncheckedIOException(e);
+    } catch (RuntimeException e) {
+      theServletRequest.setAttribute(ATTRIBUTE_STREAMING_FAILURE, e);
+      throw e;
+    } finally {
+      if (responseStream != null) bytesWritten.update(responseStream.getCount());
+    }
+
+    // Tell HAPI that the response has already been handled.
+    return false;
+  }
+
+  /**
+   * @see ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter#handleException(RequestDetails,
+   *     BaseServerResponseException, HttpServletRequest, HttpServletResponse)
+   */
+  @Override
+  public boolean handleException(
+      RequestDetails theRequestDetails,
+      BaseServerResponseException theException,
+      HttpServletRequest theServletRequest,
+      HttpServletResponse theServletResponse) {
+    /*
+     * If a streamed response failed part-way through, any error response HAPI might write would
+     * just be appended to the partial response, so stop HAPI from doing so. The failure will be
+     * rethrown out of the servlet, instead.
+     */
+    return theServletRequest.getAttribute(ATTRIBUTE_STREAMING_FAILURE) == null;
+  }
+
+  /**
+   * Should be called by the servlet after HAPI has finished handling each request: if a {@link
+   * StreamingBundle} response failed part-way through being written out, this rethrows that
+   * failure, so that the servlet container will abort the (already committed) response, rather
+   * than completing it normally.
+   *
+   * @param request the {@link HttpServletRequest} that was just handled
+   * @throws IOException An {@link IOException} wrapping the streaming failure will be thrown, if
+   *     there was one.
+   */
+  static void rethrowStreamingFailure(HttpServletRequest request) throws IOException {
+    Object failure = request.getAttribute(ATTRIBUTE_STREAMING_FAILURE);
+    if (failure == null) return;
+
+    throw new IOException(
+        "Streamed response failed after it was committed; aborting it.", (Throwable) failure);
+  }
+
+  /**
+   * @param parser the {@link IParser} to encode the {@link Bundle} and its entries with
+   * @param encoding the {@link EncodingEnum} of the specified {@link IParser}, which must be
+   *     {@link EncodingEnum#JSON} or {@link EncodingEnum#XML}
+   * @param bundle the {@link StreamingBundle} to write out
+   * @param writer the {@link Writer} to write to
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  static void writeBundle(
+      IParser parser, EncodingEnum encoding, StreamingBundle bundle, Writer writer)
+      throws IOException {
+    // The copy will be a plain Bundle with no entries, which is then used as an envelope.
+    String envelope = parser.encodeResourceToString(bundle.copy());
+    int entriesIndex =
+        encoding == EncodingEnum.JSON ? envelope.lastIndexOf('}') : envelope.lastIndexOf("</");
+    writer.write(envelope, 0, entriesIndex);
+
+    boolean firstEntry = true;
+    for (ListIterator<Supplier<? extends Resource>> entrySuppliersIter = bundle.entrySuppliers();
+        entrySuppliersIter.hasNext(); ) {
+      Resource resource = entrySuppliersIter.next().get();
+      entrySuppliersIter.set(null);
+      if (resource == null) continue;
+
+      if (encoding == EncodingEnum.JSON) {
+        writer.write(firstEntry ? ",\"entry\":[{\"resource\":" : ",{\"resource\":");
+        if (resource instanceof EncodedExplanationOfBenefit)
+          writer.write(((EncodedExplanationOfBenefit) resource).getJson());
+        else parser.encodeResourceToWriter(resource, writer);
+        writer.write("}");
+      } else {
+        if (resource instanceof EncodedExplanationOfBenefit)
+          resource = ((EncodedExplanationOfBenefit) resource).decode();
+        writer.write("<entry><resource>");
+        parser.encodeResourceToWriter(resource, writer);
+        writer.write("</resource></entry>");
+      }
+      firstEntry = false;
+    }
+    if (encoding == EncodingEnum.JSON && !firstEntry) writer.write("]");
+
+    writer.write(envelope, entriesIndex, envelope.length() - entriesIndex);
+  }
+
+  /** An {@link OutputStream} wrapper that counts the number of bytes written through it. */
+  private static final class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    /** @param out the {@link OutputStream} to wrap */
+    CountingOutputStream(OutputStream out) {
+      super(out);
+      this.count = 0;
+    }
+
+    /** @return the number of bytes written through this {@link CountingOutputStream} so far */
+    long getCount() {
+      return count;
+    }
+
+    /** @see java.io.FilterOutputStream#write(int) */
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    /** @see java.io.FilterOutputStream#write(byte[], int, int) */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+}
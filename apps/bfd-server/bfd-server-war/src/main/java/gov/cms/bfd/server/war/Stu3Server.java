@@ -8,6 +8,7 @@ import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.RestfulServer;
 import ca.uhn.fhir.rest.server.interceptor.CorsInterceptor;
 import ca.uhn.fhir.rest.server.interceptor.IServerInterceptor;
+import com.codahale.metrics.MetricRegistry;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
@@ -18,6 +19,8 @@ import java.util.List;
 import java.util.Properties;
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.hl7.fhir.dstu3.hapi.rest.server.ServerCapabilityStatementProvider;
 import org.hl7.fhir.dstu3.model.CapabilityStatement;
 import org.springframework.web.context.ContextLoaderListener;
@@ -99,6 +102,16 @@ public class Stu3Server extends RestfulServer {
     List<Object> plainProviders = new ArrayList<>();
     setPlainProviders(plainProviders);
 
+    /*
+     * The StreamingBundleInterceptor has to be registered before the
+     * Spring-configured ones, as they may also try to take over responses.
+     * And the OperationMetricsInterceptor has to be registered before it, so
+     * that it still sees the responses that are streamed.
+     */
+    MetricRegistry metricRegistry = springContext.getBean(MetricRegistry.class);
+    registerInterceptor(new OperationMetricsInterceptor(metricRegistry));
+    registerInterceptor(new StreamingBundleInterceptor(metricRegistry));
+
     /*
      * Register the HAPI server interceptors that have been configured in
      * Spring.
@@ -128,4 +141,19 @@ public class Stu3Server extends RestfulServer {
     setDefaultResponseEncoding(EncodingEnum.XML);
     setDefaultPrettyPrint(true);
   }
+
+  /**
+   * @see ca.uhn.fhir.rest.server.RestfulServer#service(HttpServletRequest, HttpServletResponse)
+   */
+  @Override
+  protected void service(HttpServletRequest request, HttpServletResponse response)
+      throws ServletException, IOException {
+    super.service(request, response);
+
+    /*
+     * HAPI swallows all exceptions, but a streamed response that failed part-way through has
+     * already been committed, and so needs to be aborted by the container, instead.
+     */
+    StreamingBundleInterceptor.rethrowStreamingFailure(request);
+  }
 }
@@ -0,0 +1,160 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.Beneficiary_;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+/**
+ * Models the subset of {@link Beneficiary} fields that a particular transform actually needs, so
+ * that just those columns can be selected from the database, rather than all of the several
+ * hundred (mostly monthly) columns in that table. The {@link Beneficiary} instances that are
+ * produced are detached and only partially populated: every field outside of the projection is left
+ * <code>null</code>, so they must only be passed to the transform that the projection was built
+ * for.
+ *
+ * <p>Each transformer declares the projection(s) for its transforms right alongside them (e.g.
+ * {@link CoverageTransformer#PART_A_PROJECTION}), so that the two can be kept in sync.
+ */
+final class BeneficiaryProjection {
+  private final String name;
+  private final List<String> fieldNames;
+  private final Field[] fields;
+
+  /**
+   * Constructs a new {@link BeneficiaryProjection}.
+   *
+   * @param name the value to use for {@link #getName()}
+   * @param fieldNames the value to use for {@link #getFieldNames()}
+   */
+  BeneficiaryProjection(String name, String... fieldNames) {
+    this.name = name;
+    this.fieldNames = Collections.unmodifiableList(Arrays.asList(fieldNames));
+
+    /*
+     * Resolve all of the fields up front, so that any typos in the field names blow up right away,
+     * rather than on the first request that happens to need them.
+     */
+    this.fields = new Field[fieldNames.length];
+    for (int i = 0; i < fieldNames.length; i++) {
+      try {
+        fields[i] = Beneficiary.class.getDeclaredField(fieldNames[i]);
+        fields[i].setAccessible(true);
+      } catch (NoSuchFieldException e) {
+        throw new BadCodeMonkeyException(e);
+      }
+    }
+  }
+
+  /**
+   * @param name the value to use for {@link #getName()}
+   * @param projections the {@link BeneficiaryProjection}s to combine
+   * @return a new {@link BeneficiaryProjection} that includes all of the fields from the specified
+   *     {@link BeneficiaryProjection}s
+   */
+  static BeneficiaryProjection union(String name, BeneficiaryProjection... projections) {
+    Set<String> fieldNames = new LinkedHashSet<>();
+    for (BeneficiaryProjection projection : projections)
+      fieldNames.addAll(projection.getFieldNames());
+    return new BeneficiaryProjection(name, fieldNames.toArray(new String[fieldNames.size()]));
+  }
+
+  /**
+   * @return a short name for this {@link BeneficiaryProjection}, suitable for use in metric names
+   *     and query IDs, e.g. "<code>coverage_part_a</code>"
+   */
+  String getName() {
+    return name;
+  }
+
+  /** @return the names of the {@link Beneficiary} fields that are included in this projection */
+  List<String> getFieldNames() {
+    return fieldNames;
+  }
+
+  /**
+   * @param entityManager the {@link EntityManager} to use
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} value to find a matching {@link
+   *     Beneficiary} for
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @return a partially-populated {@link Beneficiary}, with just the fields in this projection, for
+   *     the matching database record
+   * @throws NoResultException A {@link NoResultException} will be thrown if no matching {@link
+   *     Beneficiary} can be found in the database.
+   */
+  Beneficiary find(EntityManager entityManager, String beneficiaryId, DateRangeParam lastUpdated)
+      throws NoResultException {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Tuple> criteria = builder.createTupleQuery();
+    Root<Beneficiary> root = criteria.from(Beneficiary.class);
+    List<Selection<?>> selections = new ArrayList<>(fieldNames.size());
+    for (String fieldName : fieldNames) selections.add(root.get(fieldName));
+    criteria.multiselect(selections);
+
+    Predicate wherePredicate = builder.equal(root.get(Beneficiary_.beneficiaryId), beneficiaryId);
+    if (lastUpdated != null)
+      wherePredicate =
+          builder.and(
+              wherePredicate,
+              TransformerUtils.createLastUpdatedPredicate(
+                  builder, root.get(Beneficiary_.lastUpdated), lastUpdated));
+    criteria.where(wherePredicate);
+
+    Tuple tuple = entityManager.createQuery(criteria).getSingleResult();
+    Beneficiary beneficiary = new Beneficiary();
+    for (int i = 0; i < fields.length; i++) setField(beneficiary, i, tuple.get(i));
+    return beneficiary;
+  }
+
+  /**
+   * @param source the (fully-populated) {@link Beneficiary} to copy the fields of
+   * @return a new {@link Beneficiary}, with just the fields in this projection copied over from the
+   *     specified one, exactly as though it had been loaded via {@link #find(EntityManager, String,
+   *     DateRangeParam)}
+   */
+  Beneficiary copyOf(Beneficiary source) {
+    Beneficiary beneficiary = new Beneficiary();
+    for (int i = 0; i < fields.length; i++) {
+      try {
+        setField(beneficiary, i, fields[i].get(source));
+      } catch (IllegalAccessException e) {
+        throw new BadCodeMonkeyException(e);
+      }
+    }
+    return beneficiary;
+  }
+
+  /**
+   * @param beneficiary the {@link Beneficiary} to set a field of
+   * @param fieldIndex the index (in {@link #fields}) of the field to set
+   * @param value the value to set the field to
+   */
+  private void setField(Beneficiary beneficiary, int fieldIndex, Object value) {
+    try {
+      fields[fieldIndex].set(beneficiary, value);
+    } catch (IllegalAccessException e) {
+      throw new BadCodeMonkeyException(e);
+    }
+  }
+
+  /** @see java.lang.Object#toString() */
+  @Override
+  public String toString() {
+    return "BeneficiaryProjection [name=" + name + ", fieldNames=" + fieldNames + "]";
+  }
+}
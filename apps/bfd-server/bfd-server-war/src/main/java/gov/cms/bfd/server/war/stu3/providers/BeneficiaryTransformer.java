@@ -19,6 +19,40 @@ import org.hl7.fhir.dstu3.model.Patient;
 
 /** Transforms CCW {@link Beneficiary} instances into FHIR {@link Patient} resources. */
 final class BeneficiaryTransformer {
+  /**
+   * The {@link Beneficiary} fields needed by {@link #transform(MetricRegistry, Beneficiary, List)}
+   * when no {@link PatientResourceProvider#HEADER_NAME_INCLUDE_IDENTIFIERS} are requested (the
+   * unhashed identifiers and their histories are left out).
+   */
+  static final BeneficiaryProjection PATIENT_PROJECTION =
+      new BeneficiaryProjection(
+          "patient",
+          "beneficiaryId",
+          "hicn",
+          "mbiHash",
+          "stateCode",
+          "countyCode",
+          "postalCode",
+          "birthDate",
+          "sex",
+          "race",
+          "nameGiven",
+          "nameSurname",
+          "nameMiddleInitial",
+          "beneEnrollmentReferenceYear",
+          "medicaidDualEligibilityJanCode",
+          "medicaidDualEligibilityFebCode",
+          "medicaidDualEligibilityMarCode",
+          "medicaidDualEligibilityAprCode",
+          "medicaidDualEligibilityMayCode",
+          "medicaidDualEligibilityJunCode",
+          "medicaidDualEligibilityJulCode",
+          "medicaidDualEligibilityAugCode",
+          "medicaidDualEligibilitySeptCode",
+          "medicaidDualEligibilityOctCode",
+          "medicaidDualEligibilityNovCode",
+          "medicaidDualEligibilityDecCode");
+
   /**
    * @param metricRegistry the {@link MetricRegistry} to use
    * @param beneficiary the CCW {@link Beneficiary} to transform
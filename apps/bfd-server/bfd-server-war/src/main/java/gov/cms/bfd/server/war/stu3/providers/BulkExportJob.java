@@ -0,0 +1,307 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks the status and progress of a bulk <code>$export</code> job, as run by {@link
+ * BulkExporter}.
+ *
+ * <p>Each job's state is checkpointed to a simple {@link Properties} file in the job's output
+ * directory after every chunk of records is written out, which allows jobs that were interrupted
+ * (e.g. by a server restart) to be resumed from where they left off, rather than restarted from
+ * scratch. See {@link #save(Path)} and {@link #load(Path)}.
+ *
+ * <p>Instances are shared between the threads working on each job's tasks, and so all access to
+ * their mutable state is synchronized.
+ */
+public final class BulkExportJob {
+  /** The name of the file (in each job's directory) that its state is saved to. */
+  static final String JOB_FILE_NAME = "job.properties";
+
+  private final String id;
+  private final String request;
+  private final Instant transactionTime;
+  private final Instant since;
+  private final Set<String> resourceTypes;
+  private final boolean excludeSamhsa;
+  private final Map<String, TaskProgress> tasks;
+  private Status status;
+  private String error;
+
+  /**
+   * Constructs a new {@link BulkExportJob}.
+   *
+   * @param id the value to use for {@link #getId()}
+   * @param request the value to use for {@link #getRequest()}
+   * @param transactionTime the value to use for {@link #getTransactionTime()}
+   * @param since the value to use for {@link #getSince()}
+   * @param resourceTypes the value to use for {@link #getResourceTypes()}
+   * @param excludeSamhsa the value to use for {@link #isExcludeSamhsa()}
+   * @param taskNames the names of the tasks that this job will be split into, which will each start
+   *     out with no progress
+   */
+  BulkExportJob(
+      String id,
+      String request,
+      Instant transactionTime,
+      Optional<Instant> since,
+      Set<String> resourceTypes,
+      boolean excludeSamhsa,
+      Iterable<String> taskNames) {
+    this.id = id;
+    this.request = request;
+    this.transactionTime = transactionTime;
+    this.since = since.orElse(null);
+    this.resourceTypes = Collections.unmodifiableSet(new LinkedHashSet<>(resourceTypes));
+    this.excludeSamhsa = excludeSamhsa;
+    this.tasks = new LinkedHashMap<>();
+    for (String taskName : taskNames) tasks.put(taskName, new TaskProgress());
+    this.status = Status.IN_PROGRESS;
+    this.error = null;
+  }
+
+  /** @return the unique ID of this {@link BulkExportJob} */
+  public String getId() {
+    return id;
+  }
+
+  /** @return the full URL of the <code>$export</code> request that kicked off this job */
+  public String getRequest() {
+    return request;
+  }
+
+  /**
+   * @return the time that this job was started, which (per the FHIR Bulk Data spec) is reported
+   *     back to clients so that they can use it as the <code>_since</code> of their next export
+   */
+  public Instant getTransactionTime() {
+    return transactionTime;
+  }
+
+  /**
+   * @return the <code>_since</code> value that the exported records' <code>lastUpdated</code>
+   *     values were filtered by, if any
+   */
+  public Optional<Instant> getSince() {
+    return Optional.ofNullable(since);
+  }
+
+  /** @return the FHIR resource types (e.g. "<code>Patient</code>") being exported */
+  public Set<String> getResourceTypes() {
+    return resourceTypes;
+  }
+
+  /**
+   * @return <code>true</code> if SAMHSA-related claims are being left out of this export, <code>
+   *     false</code> if not
+   */
+  public boolean isExcludeSamhsa() {
+    return excludeSamhsa;
+  }
+
+  /** @return the current {@link Status} of this job */
+  public synchronized Status getStatus() {
+    return status;
+  }
+
+  /** @return a description of why this job {@link Status#FAILED}, if it did */
+  public synchronized Optional<String> getError() {
+    return Optional.ofNullable(error);
+  }
+
+  /**
+   * @param status the new value for {@link #getStatus()}
+   * @param error the new value for {@link #getError()}
+   */
+  synchronized void setStatus(Status status, String error) {
+    this.status = status;
+    this.error = error;
+  }
+
+  /** @return the names of this job's tasks that haven't yet completed */
+  synchronized Set<String> getIncompleteTaskNames() {
+    return tasks.entrySet().stream()
+        .filter(t -> !t.getValue().complete)
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+  }
+
+  /**
+   * @return the percentage (from <code>0</code> to <code>100</code>) of this job's tasks that have
+   *     completed
+   */
+  public synchronized int getPercentComplete() {
+    if (tasks.isEmpty()) return 100;
+    long completeCount = tasks.values().stream().filter(t -> t.complete).count();
+    return (int) (completeCount * 100 / tasks.size());
+  }
+
+  /**
+   * @param taskName the name of the task to get the checkpoint for
+   * @return the ID of the last record that the specified task wrote out, if any
+   */
+  synchronized Optional<String> getLastId(String taskName) {
+    return Optional.ofNullable(tasks.get(taskName).lastId);
+  }
+
+  /**
+   * @param taskName the name of the task to get the checkpoint for
+   * @return the length (in bytes) that each of the specified task's output files had as of its
+   *     last checkpoint, keyed by file name
+   */
+  synchronized Map<String, Long> getFileLengths(String taskName) {
+    return new LinkedHashMap<>(tasks.get(taskName).fileLengths);
+  }
+
+  /**
+   * @return the (sorted) names of all of the non-empty output files that have been checkpointed for
+   *     this job so far
+   */
+  public synchronized Set<String> getOutputFileNames() {
+    return tasks.values().stream()
+        .flatMap(t -> t.fileLengths.entrySet().stream())
+        .filter(f -> f.getValue() > 0)
+        .map(Map.Entry::getKey)
+        .sorted()
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+  }
+
+  /**
+   * Records a checkpoint for the specified task. The task's output files must all have been flushed
+   * first.
+   *
+   * @param taskName the name of the task to record the checkpoint for
+   * @param lastId the ID of the last record that the task has written out
+   * @param fileLengths the current lengths (in bytes) of each of the task's output files, keyed by
+   *     file name
+   * @param complete <code>true</code> if the task has now finished, <code>false</code> if not
+   */
+  synchronized void checkpoint(
+      String taskName, String lastId, Map<String, Long> fileLengths, boolean complete) {
+    TaskProgress progress = tasks.get(taskName);
+    progress.lastId = lastId;
+    progress.fileLengths.putAll(fileLengths);
+    progress.complete = complete;
+  }
+
+  /**
+   * Writes out this job's state to a {@link #JOB_FILE_NAME} file in the specified directory. The
+   * file is written atomically, so that it's never left half-written.
+   *
+   * @param jobDirectory the directory to save this job in
+   */
+  synchronized void save(Path jobDirectory) {
+    Properties jobProps = new Properties();
+    jobProps.setProperty("id", id);
+    jobProps.setProperty("request", request);
+    jobProps.setProperty("transactionTime", transactionTime.toString());
+    if (since != null) jobProps.setProperty("since", since.toString());
+    jobProps.setProperty("resourceTypes", String.join(",", resourceTypes));
+    jobProps.setProperty("excludeSamhsa", Boolean.toString(excludeSamhsa));
+    jobProps.setProperty("status", status.name());
+    if (error != null) jobProps.setProperty("error", error);
+    jobProps.setProperty("tasks", String.join(",", tasks.keySet()));
+    for (Map.Entry<String, TaskProgress> task : tasks.entrySet()) {
+      String taskPrefix = "task." + task.getKey() + ".";
+      TaskProgress progress = task.getValue();
+      if (progress.lastId != null) jobProps.setProperty(taskPrefix + "lastId", progress.lastId);
+      jobProps.setProperty(taskPrefix + "complete", Boolean.toString(progress.complete));
+      for (Map.Entry<String, Long> fileLength : progress.fileLengths.entrySet())
+        jobProps.setProperty(
+            taskPrefix + "file." + fileLength.getKey(), Long.toString(fileLength.getValue()));
+    }
+
+    Path jobFile = jobDirectory.resolve(JOB_FILE_NAME);
+    Path jobFileTemp = jobDirectory.resolve(JOB_FILE_NAME + ".tmp");
+    try (OutputStream jobFileStream = Files.newOutputStream(jobFileTemp)) {
+      jobProps.store(jobFileStream, null);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    try {
+      Files.move(
+          jobFileTemp,
+          jobFile,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @param jobDirectory the directory that the job to load was {@link #save(Path)}d in
+   * @return the {@link BulkExportJob} that was saved in the specified directory, or {@link
+   *     Optional#empty()} if there isn't one
+   */
+  static Optional<BulkExportJob> load(Path jobDirectory) {
+    Path jobFile = jobDirectory.resolve(JOB_FILE_NAME);
+    if (!Files.isRegularFile(jobFile)) return Optional.empty();
+
+    Properties jobProps = new Properties();
+    try (InputStream jobFileStream = Files.newInputStream(jobFile)) {
+      jobProps.load(jobFileStream);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    String[] taskNames = jobProps.getProperty("tasks").split(",");
+    BulkExportJob job =
+        new BulkExportJob(
+            jobProps.getProperty("id"),
+            jobProps.getProperty("request"),
+            Instant.parse(jobProps.getProperty("transactionTime")),
+            Optional.ofNullable(jobProps.getProperty("since")).map(Instant::parse),
+            new LinkedHashSet<>(Arrays.asList(jobProps.getProperty("resourceTypes").split(","))),
+            Boolean.parseBoolean(jobProps.getProperty("excludeSamhsa")),
+            Arrays.asList(taskNames));
+    job.status = Status.valueOf(jobProps.getProperty("status"));
+    job.error = jobProps.getProperty("error");
+    for (String taskName : taskNames) {
+      String taskPrefix = "task." + taskName + ".";
+      TaskProgress progress = job.tasks.get(taskName);
+      progress.lastId = jobProps.getProperty(taskPrefix + "lastId");
+      progress.complete = Boolean.parseBoolean(jobProps.getProperty(taskPrefix + "complete"));
+      for (String propName : jobProps.stringPropertyNames())
+        if (propName.startsWith(taskPrefix + "file."))
+          progress.fileLengths.put(
+              propName.substring((taskPrefix + "file.").length()),
+              Long.parseLong(jobProps.getProperty(propName)));
+    }
+    return Optional.of(job);
+  }
+
+  /** Enumerates the possible statuses of a {@link BulkExportJob}. */
+  public static enum Status {
+    IN_PROGRESS,
+
+    COMPLETE,
+
+    FAILED,
+
+    CANCELLED;
+  }
+
+  /** Tracks the checkpointed progress of one of a {@link BulkExportJob}'s tasks. */
+  private static final class TaskProgress {
+    private String lastId = null;
+    private boolean complete = false;
+    private final Map<String, Long> fileLengths = new LinkedHashMap<>();
+  }
+}
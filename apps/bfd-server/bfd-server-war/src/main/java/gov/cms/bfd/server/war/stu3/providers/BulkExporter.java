@@ -0,0 +1,787 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.Beneficiary_;
+import gov.cms.bfd.server.war.SpringConfiguration;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import javax.persistence.metamodel.PluralAttribute;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.hl7.fhir.dstu3.model.Coverage;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs bulk <code>$export</code> jobs, which write out every {@link Patient}, {@link Coverage},
+ * and/or {@link ExplanationOfBenefit} resource in the database to <a
+ * href="http://ndjson.org/">NDJSON</a> files on local disk, for clients to download once the job
+ * has completed.
+ *
+ * <p>Each job is split into one task per database table: one for the {@link Beneficiary} table
+ * (which produces both the {@link Patient} and {@link Coverage} files) and one for each {@link
+ * ClaimType}. The tasks are run in parallel on a shared worker pool. Each task:
+ *
+ * <ol>
+ *   <li>Scrolls through its table's IDs in order, via a server-side cursor.
+ *   <li>Loads the records (and their lines) for each chunk of those IDs.
+ *   <li>Transforms the records via the same transformers used by the resource providers, and
+ *       appends the encoded resources to its output files.
+ *   <li>Checkpoints its progress (the last ID written and the length of each output file) in the
+ *       job's {@link BulkExportJob}.
+ * </ol>
+ *
+ * <p>Jobs that are interrupted (e.g. by a server restart) are resumed the next time that they're
+ * looked up via {@link #findJob(String)}, which clients will do when polling for the job's status.
+ * Each task's output files are first truncated back to their lengths as of the task's last
+ * checkpoint, and the task then picks up with the records after its checkpointed ID.
+ *
+ * <p>Each job's files (output and state) are deleted once the job is older than the configured
+ * retention period (see {@link #setRetentionHours(String)}), as measured from its {@link
+ * BulkExportJob#getTransactionTime()}: expired jobs are treated as if they don't exist by {@link
+ * #findJob(String)}, and a background sweep (started on first use, and then run every {@link
+ * #CLEANUP_INTERVAL_MINUTES} minutes) deletes them, along with any expired jobs left behind by
+ * earlier runs of the server. Jobs that are still running in this JVM are never deleted.
+ *
+ * <p>The exported files contain PHI, so the export directory must be explicitly configured (see
+ * {@link #setExportDirectory(String)}), and must only be accessible to the server's own user: the
+ * server will refuse to start otherwise. Each job's state is kept alongside its output files, in
+ * that directory, rather than in the database. This means that jobs have <strong>instance
+ * affinity</strong>: when more than one server is running, all of a client's status, download, and
+ * cancellation requests for a job must be routed to the instance that started it (e.g. via sticky
+ * sessions at the load balancer), as other instances will report the job as not found. The
+ * directory must not be shared between instances, as each resumes any interrupted jobs that it
+ * finds there, and so two instances sharing one could both run the same job at once.
+ */
+@Component
+public final class BulkExporter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkExporter.class);
+
+  /** The FHIR resource types that can be exported. */
+  public static final Set<String> SUPPORTED_RESOURCE_TYPES =
+      Collections.unmodifiableSet(
+          new LinkedHashSet<>(
+              Arrays.asList(
+                  Patient.class.getSimpleName(),
+                  Coverage.class.getSimpleName(),
+                  ExplanationOfBenefit.class.getSimpleName())));
+
+  /** The file extension used for all export output files. */
+  public static final String OUTPUT_FILE_EXTENSION = ".ndjson";
+
+  /** The name of the task that exports the {@link Beneficiary} table. */
+  private static final String TASK_BENEFICIARIES = "beneficiaries";
+
+  /** The prefix of the names of the tasks that export each {@link ClaimType}'s table. */
+  private static final String TASK_PREFIX_EOB = "eob_";
+
+  /** The number of records that are loaded, written out, and checkpointed at a time. */
+  private static final int CHUNK_SIZE = 500;
+
+  /** The number of IDs fetched at a time from the server-side cursor used by each task. */
+  private static final int ID_FETCH_SIZE = 10000;
+
+  /** The number of minutes between each sweep for expired jobs, by {@link #deleteExpiredJobs()}. */
+  static final long CLEANUP_INTERVAL_MINUTES = 60;
+
+  /** Matches valid {@link BulkExportJob#getId()} values. */
+  private static final Pattern JOB_ID_PATTERN =
+      Pattern.compile("[0-9a-f]{8}(-[0-9a-f]{4}){3}-[0-9a-f]{12}");
+
+  /** The only POSIX permissions that the export directory may have. */
+  private static final Set<PosixFilePermission> OWNER_PERMISSIONS =
+      Collections.unmodifiableSet(PosixFilePermissions.fromString("rwx------"));
+
+  /** Shared, as {@link FhirContext}s are expensive to create (but the parsers are not). */
+  private static final FhirContext FHIR_CONTEXT = FhirContext.forDstu3();
+
+  private EntityManagerFactory entityManagerFactory;
+  private MetricRegistry metricRegistry;
+  private SamhsaMatcher samhsaMatcher;
+  private Path exportDirectory;
+  private int threads = 2;
+  private Duration retention = Duration.ofHours(24);
+
+  /** The {@link BulkExportJob}s with tasks running in this JVM, keyed by their IDs. */
+  private final Map<String, BulkExportJob> runningJobs = new ConcurrentHashMap<>();
+
+  /** The worker pool that jobs' tasks are run on, which is created on first use. */
+  private ExecutorService executorService;
+
+  /** Runs the periodic {@link #deleteExpiredJobs()} sweep, and is created on first use. */
+  private ScheduledExecutorService cleanupExecutorService;
+
+  /**
+   * @param entityManagerFactory the JPA {@link EntityManagerFactory} for the application's
+   *     database, which is used to create an {@link EntityManager} for each task
+   */
+  @PersistenceUnit
+  public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+    this.entityManagerFactory = entityManagerFactory;
+  }
+
+  /** @param metricRegistry the {@link MetricRegistry} to use */
+  @Inject
+  public void setMetricRegistry(MetricRegistry metricRegistry) {
+    this.metricRegistry = metricRegistry;
+  }
+
+  /** @param samhsaMatcher the {@link SamhsaMatcher} to use */
+  @Inject
+  public void setSamhsaMatcher(SamhsaMatcher samhsaMatcher) {
+    this.samhsaMatcher = samhsaMatcher;
+  }
+
+  /**
+   * @param exportDirectoryText the path of the local directory to write each job's output files
+   *     (in a subdirectory per job) to, which will be created if it doesn't already exist, and
+   *     which must not be accessible to any other users
+   * @throws IllegalStateException if no directory was specified, or if the directory isn't secure
+   */
+  @Value("${" + SpringConfiguration.PROP_EXPORT_DIR + ":}")
+  public void setExportDirectory(String exportDirectoryText) {
+    if (exportDirectoryText.trim().isEmpty())
+      throw new IllegalStateException(
+          String.format(
+              "The bulk export directory ('%s') must be configured.",
+              SpringConfiguration.PROP_EXPORT_DIR));
+
+    Path exportDirectory = Paths.get(exportDirectoryText.trim());
+    try {
+      if (!Files.exists(exportDirectory))
+        Files.createDirectories(exportDirectory, createOwnerOnlyPermissions());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (!Files.isDirectory(exportDirectory))
+      throw new IllegalStateException(
+          String.format("The bulk export directory ('%s') is not a directory.", exportDirectory));
+    if (isPosix()) {
+      Set<PosixFilePermission> permissions;
+      try {
+        permissions = Files.getPosixFilePermissions(exportDirectory);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      if (!OWNER_PERMISSIONS.containsAll(permissions))
+        throw new IllegalStateException(
+            String.format(
+                "The bulk export directory ('%s') must only be accessible to its owner, but has"
+                    + " permissions '%s'.",
+                exportDirectory, PosixFilePermissions.toString(permissions)));
+    }
+
+    this.exportDirectory = exportDirectory;
+  }
+
+  /** @param threadsText the number of worker threads to run the export tasks on */
+  @Value("${" + SpringConfiguration.PROP_EXPORT_THREADS + ":2}")
+  public void setThreads(String threadsText) {
+    this.threads = Integer.parseInt(threadsText.trim());
+  }
+
+  /**
+   * @param retentionHoursText the number of hours that each job's files are kept for (after the job
+   *     was started), before being deleted
+   */
+  @Value("${" + SpringConfiguration.PROP_EXPORT_RETENTION_HOURS + ":24}")
+  public void setRetentionHours(String retentionHoursText) {
+    this.retention = Duration.ofHours(Long.parseLong(retentionHoursText.trim()));
+  }
+
+  /**
+   * Starts a new export job, which will run in the background.
+   *
+   * @param request the full URL of the <code>$export</code> request
+   * @param resourceTypes the FHIR resource types to export, each of which must be one of the
+   *     {@link #SUPPORTED_RESOURCE_TYPES}
+   * @param since if present, only records that were last updated at or after this time will be
+   *     exported
+   * @param excludeSamhsa <code>true</code> if SAMHSA-related claims should be left out of the
+   *     export, <code>false</code> if not
+   * @return the new {@link BulkExportJob}
+   */
+  public BulkExportJob startJob(
+      String request, Set<String> resourceTypes, Optional<Instant> since, boolean excludeSamhsa) {
+    if (resourceTypes.isEmpty() || !SUPPORTED_RESOURCE_TYPES.containsAll(resourceTypes))
+      throw new IllegalArgumentException("Unsupported resource types: " + resourceTypes);
+    scheduleCleanup();
+
+    List<String> taskNames = new ArrayList<>();
+    if (resourceTypes.contains(Patient.class.getSimpleName())
+        || resourceTypes.contains(Coverage.class.getSimpleName()))
+      taskNames.add(TASK_BENEFICIARIES);
+    if (resourceTypes.contains(ExplanationOfBenefit.class.getSimpleName()))
+      for (ClaimType claimType : ClaimType.values())
+        taskNames.add(TASK_PREFIX_EOB + claimType.name().toLowerCase());
+
+    BulkExportJob job =
+        new BulkExportJob(
+            UUID.randomUUID().toString(),
+            request,
+            Instant.now(),
+            since,
+            resourceTypes,
+            excludeSamhsa,
+            taskNames);
+    Path jobDirectory = getJobDirectory(job.getId());
+    try {
+      Files.createDirectories(jobDirectory, createOwnerOnlyPermissions());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    job.save(jobDirectory);
+
+    LOGGER.info("Starting bulk export job '{}' for: {}.", job.getId(), resourceTypes);
+    runJob(job);
+    return job;
+  }
+
+  /**
+   * Looks up the specified job, resuming it first if it's {@link
+   * BulkExportJob.Status#IN_PROGRESS} but not actually running (e.g. because the server was
+   * restarted since it was started).
+   *
+   * @param jobId the {@link BulkExportJob#getId()} of the job to find
+   * @return the matching {@link BulkExportJob}, or {@link Optional#empty()} if there isn't one (or
+   *     it has expired)
+   */
+  public Optional<BulkExportJob> findJob(String jobId) {
+    if (!JOB_ID_PATTERN.matcher(jobId).matches()) return Optional.empty();
+    scheduleCleanup();
+
+    BulkExportJob runningJob = runningJobs.get(jobId);
+    if (runningJob != null) return Optional.of(runningJob);
+
+    Optional<BulkExportJob> job = BulkExportJob.load(getJobDirectory(jobId));
+    if (job.isPresent() && isExpired(job.get(), Instant.now())) {
+      LOGGER.info("Deleting expired bulk export job '{}'.", jobId);
+      deleteJobDirectory(jobId);
+      return Optional.empty();
+    }
+    if (job.isPresent() && job.get().getStatus() == BulkExportJob.Status.IN_PROGRESS) {
+      LOGGER.info("Resuming bulk export job '{}'.", jobId);
+      runJob(job.get());
+    }
+    return job;
+  }
+
+  /**
+   * Cancels the specified job (if it's still running) and deletes its output files.
+   *
+   * @param jobId the {@link BulkExportJob#getId()} of the job to cancel
+   * @return <code>true</code> if the job was found and cancelled, <code>false</code> if it
+   *     couldn't be found
+   */
+  public boolean cancelJob(String jobId) {
+    if (!JOB_ID_PATTERN.matcher(jobId).matches()) return false;
+
+    BulkExportJob runningJob = runningJobs.get(jobId);
+    if (runningJob != null) {
+      // The job's tasks will stop at their next chunk, and its files will then be deleted.
+      runningJob.setStatus(BulkExportJob.Status.CANCELLED, null);
+      return true;
+    }
+
+    if (!BulkExportJob.load(getJobDirectory(jobId)).isPresent()) return false;
+    deleteJobDirectory(jobId);
+    return true;
+  }
+
+  /**
+   * Deletes the files of all jobs that are older than the configured retention period (and aren't
+   * still running in this JVM), including any directories left behind by jobs whose state was
+   * never saved.
+   *
+   * @return the number of jobs that were deleted
+   */
+  public int deleteExpiredJobs() {
+    if (!Files.isDirectory(exportDirectory)) return 0;
+
+    Instant now = Instant.now();
+    List<String> expiredJobIds = new ArrayList<>();
+    try (Stream<Path> jobDirectories = Files.list(exportDirectory)) {
+      for (Path jobDirectory : jobDirectories.collect(Collectors.toList())) {
+        String jobId = jobDirectory.getFileName().toString();
+        if (!JOB_ID_PATTERN.matcher(jobId).matches() || runningJobs.containsKey(jobId)) continue;
+
+        Optional<BulkExportJob> job = BulkExportJob.load(jobDirectory);
+        boolean expired =
+            job.isPresent()
+                ? isExpired(job.get(), now)
+                : Files.getLastModifiedTime(jobDirectory).toInstant().plus(retention).isBefore(now);
+        if (expired) expiredJobIds.add(jobId);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    for (String jobId : expiredJobIds) {
+      // Re-check, in case the job was resumed since it was listed.
+      if (runningJobs.containsKey(jobId)) continue;
+      LOGGER.info("Deleting expired bulk export job '{}'.", jobId);
+      deleteJobDirectory(jobId);
+    }
+    return expiredJobIds.size();
+  }
+
+  /**
+   * @param job the {@link BulkExportJob} to check
+   * @param now the current time
+   * @return <code>true</code> if the specified job is older than the configured retention period,
+   *     <code>false</code> if not
+   */
+  private boolean isExpired(BulkExportJob job, Instant now) {
+    return job.getTransactionTime().plus(retention).isBefore(now);
+  }
+
+  /**
+   * @param job the {@link BulkExportJob} to get an output file of
+   * @param fileName one of the job's {@link BulkExportJob#getOutputFileNames()}
+   * @return the {@link Path} of the specified output file, or {@link Optional#empty()} if the job
+   *     has no such output file
+   */
+  public Optional<Path> getOutputFile(BulkExportJob job, String fileName) {
+    if (!job.getOutputFileNames().contains(fileName)) return Optional.empty();
+    return Optional.of(getJobDirectory(job.getId()).resolve(fileName));
+  }
+
+  /**
+   * @param fileName one of a job's {@link BulkExportJob#getOutputFileNames()}
+   * @return the FHIR resource type of the resources in the specified output file
+   */
+  public static String parseOutputFileResourceType(String fileName) {
+    return fileName.replaceFirst("(-[a-z]+)?\\" + OUTPUT_FILE_EXTENSION + "$", "");
+  }
+
+  /** @return <code>true</code> if the local file system supports POSIX file permissions */
+  private static boolean isPosix() {
+    return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+  }
+
+  /**
+   * @return the {@link FileAttribute}s to create export directories with, so that only their owner
+   *     can access them, or none if the local file system doesn't support POSIX file permissions
+   */
+  private static FileAttribute<?>[] createOwnerOnlyPermissions() {
+    if (!isPosix()) return new FileAttribute<?>[0];
+    return new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(OWNER_PERMISSIONS)};
+  }
+
+  /**
+   * @param jobId the {@link BulkExportJob#getId()} of the job to get the directory for
+   * @return the local directory that the specified job's state and output files are stored in
+   */
+  private Path getJobDirectory(String jobId) {
+    return exportDirectory.resolve(jobId);
+  }
+
+  /**
+   * Deletes all of the specified job's local files. This is a no-op if they've already been deleted
+   * (e.g. concurrently, by {@link #deleteExpiredJobs()}).
+   *
+   * @param jobId the {@link BulkExportJob#getId()} of the job to delete all local files for
+   */
+  private void deleteJobDirectory(String jobId) {
+    try (Stream<Path> jobFiles = Files.walk(getJobDirectory(jobId))) {
+      for (Path jobFile : jobFiles.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+        Files.deleteIfExists(jobFile);
+    } catch (NoSuchFileException e) {
+      return;
+    } catch (UncheckedIOException e) {
+      // Files.walk(...) wraps any errors encountered while iterating.
+      if (e.getCause() instanceof NoSuchFileException) return;
+      throw e;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Starts the periodic {@link #deleteExpiredJobs()} sweep, if it isn't already running. The first
+   * sweep runs immediately, so that jobs left behind by earlier runs of the server are cleaned up.
+   */
+  private synchronized void scheduleCleanup() {
+    if (cleanupExecutorService != null) return;
+
+    cleanupExecutorService =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, getClass().getSimpleName() + "-cleanup");
+              thread.setDaemon(true);
+              return thread;
+            });
+    cleanupExecutorService.scheduleWithFixedDelay(
+        () -> {
+          try {
+            deleteExpiredJobs();
+          } catch (RuntimeException e) {
+            // Don't let one failure stop all future sweeps.
+            LOGGER.warn("Unable to delete expired bulk export jobs.", e);
+          }
+        },
+        0,
+        CLEANUP_INTERVAL_MINUTES,
+        TimeUnit.MINUTES);
+  }
+
+  /** @return the worker pool to run export tasks on */
+  private synchronized ExecutorService getExecutorService() {
+    if (executorService == null) {
+      AtomicInteger threadCount = new AtomicInteger(0);
+      ThreadFactory threadFactory =
+          r -> {
+            Thread thread =
+                new Thread(r, getClass().getSimpleName() + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          };
+      executorService = Executors.newFixedThreadPool(threads, threadFactory);
+    }
+    return executorService;
+  }
+
+  /**
+   * Submits all of the specified job's incomplete tasks to the worker pool, unless the job is
+   * already running.
+   *
+   * @param job the {@link BulkExportJob} to run
+   */
+  private void runJob(BulkExportJob job) {
+    if (runningJobs.putIfAbsent(job.getId(), job) != null) return;
+
+    CompletableFuture<?>[] taskFutures =
+        job.getIncompleteTaskNames().stream()
+            .map(
+                taskName ->
+                    CompletableFuture.runAsync(
+                        () -> runTask(job, createTask(job, taskName)), getExecutorService()))
+            .toArray(CompletableFuture<?>[]::new);
+    CompletableFuture.allOf(taskFutures).whenComplete((v, e) -> finishJob(job, e));
+  }
+
+  /**
+   * Records the final status of the specified job, once all of its tasks have stopped.
+   *
+   * @param job the {@link BulkExportJob} that has finished
+   * @param error the error that caused one or more of the job's tasks to fail, or <code>null
+   *     </code> if they all succeeded
+   */
+  private void finishJob(BulkExportJob job, Throwable error) {
+    try {
+      if (job.getStatus() == BulkExportJob.Status.CANCELLED) {
+        LOGGER.info("Bulk export job '{}' was cancelled.", job.getId());
+        deleteJobDirectory(job.getId());
+      } else if (error != null) {
+        LOGGER.warn("Bulk export job '{}' failed.", job.getId(), error);
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        job.setStatus(BulkExportJob.Status.FAILED, cause.toString());
+        job.save(getJobDirectory(job.getId()));
+      } else {
+        LOGGER.info("Bulk export job '{}' completed.", job.getId());
+        job.setStatus(BulkExportJob.Status.COMPLETE, null);
+        job.save(getJobDirectory(job.getId()));
+      }
+    } catch (RuntimeException e) {
+      LOGGER.warn("Unable to record the final status of bulk export job '{}'.", job.getId(), e);
+    } finally {
+      runningJobs.remove(job.getId());
+    }
+  }
+
+  /**
+   * @param job the {@link BulkExportJob} that the task is part of
+   * @param taskName the name of the task to create
+   * @return the {@link ExportTask} with the specified name, for the specified job
+   */
+  private ExportTask createTask(BulkExportJob job, String taskName) {
+    if (TASK_BENEFICIARIES.equals(taskName)) {
+      Map<String, Function<Object, List<IBaseResource>>> outputs = new LinkedHashMap<>();
+      if (job.getResourceTypes().contains(Patient.class.getSimpleName()))
+        outputs.put(
+            Patient.class.getSimpleName() + OUTPUT_FILE_EXTENSION,
+            b ->
+                Collections.<IBaseResource>singletonList(
+                    BeneficiaryTransformer.transform(
+                        metricRegistry, (Beneficiary) b, Arrays.asList(""))));
+      if (job.getResourceTypes().contains(Coverage.class.getSimpleName()))
+        outputs.put(
+            Coverage.class.getSimpleName() + OUTPUT_FILE_EXTENSION,
+            b -> CoverageTransformer.transform(metricRegistry, (Beneficiary) b));
+      return new ExportTask(
+          taskName,
+          Beneficiary.class,
+          Beneficiary_.beneficiaryId.getName(),
+          Collections.emptyList(),
+          false,
+          outputs);
+    }
+
+    for (ClaimType claimType : ClaimType.values()) {
+      if (!taskName.equals(TASK_PREFIX_EOB + claimType.name().toLowerCase())) continue;
+      String fileName =
+          String.format(
+              "%s-%s%s",
+              ExplanationOfBenefit.class.getSimpleName(),
+              claimType.name().toLowerCase(),
+              OUTPUT_FILE_EXTENSION);
+      Map<String, Function<Object, List<IBaseResource>>> outputs =
+          Collections.singletonMap(
+              fileName,
+              c ->
+                  Collections.<IBaseResource>singletonList(
+                      claimType.getTransformer().apply(metricRegistry, c)));
+      return new ExportTask(
+          taskName,
+          claimType.getEntityClass(),
+          claimType.getEntityIdAttribute().getName(),
+          claimType.getEntityLazyAttributes(),
+          job.isExcludeSamhsa(),
+          outputs);
+    }
+
+    throw new IllegalArgumentException("Unknown task: " + taskName);
+  }
+
+  /**
+   * Runs the specified task to completion (or until its job is no longer {@link
+   * BulkExportJob.Status#IN_PROGRESS}), picking up from the task's last checkpoint, if any.
+   *
+   * @param job the {@link BulkExportJob} that the task is part of
+   * @param task the {@link ExportTask} to run
+   */
+  private void runTask(BulkExportJob job, ExportTask task) {
+    Timer.Context timerTask =
+        metricRegistry.timer(MetricRegistry.name(getClass().getSimpleName(), "task")).time();
+    Meter resourcesWritten =
+        metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "resources_written"));
+    Path jobDirectory = getJobDirectory(job.getId());
+    Map<String, Writer> writers = new LinkedHashMap<>();
+    EntityManager entityManager = null;
+    try {
+      // Throw away anything that was written after the task's last checkpoint.
+      Map<String, Long> checkpointedLengths = job.getFileLengths(task.name);
+      for (String fileName : task.outputs.keySet()) {
+        Path file = jobDirectory.resolve(fileName);
+        try (FileChannel fileChannel =
+            FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+          fileChannel.truncate(checkpointedLengths.getOrDefault(fileName, 0L));
+        }
+        writers.put(
+            fileName,
+            Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND));
+      }
+
+      /*
+       * PostgreSQL will only use a server-side cursor for the ID query if it's run within a
+       * transaction. Nothing is ever written, so that transaction is just rolled back at the end.
+       */
+      entityManager = entityManagerFactory.createEntityManager();
+      entityManager.getTransaction().begin();
+      Session session = entityManager.unwrap(Session.class);
+      session.setDefaultReadOnly(true);
+      IParser parser = FHIR_CONTEXT.newJsonParser();
+
+      String lastId = job.getLastId(task.name).orElse(null);
+      ScrollableResults ids =
+          createIdsQuery(session, job, task, lastId)
+              .setFetchSize(ID_FETCH_SIZE)
+              .scroll(ScrollMode.FORWARD_ONLY);
+      try {
+        List<String> chunkIds = new ArrayList<>(CHUNK_SIZE);
+        boolean moreIds = true;
+        while (moreIds) {
+          moreIds = ids.next();
+          if (moreIds) chunkIds.add((String) ids.get(0));
+          if (chunkIds.isEmpty() || (moreIds && chunkIds.size() < CHUNK_SIZE)) continue;
+
+          if (job.getStatus() != BulkExportJob.Status.IN_PROGRESS) return;
+          for (Object record : findRecords(session, task, chunkIds)) {
+            if (task.excludeSamhsa && samhsaMatcher.testClaim(record)) continue;
+            for (Map.Entry<String, Function<Object, List<IBaseResource>>> output :
+                task.outputs.entrySet()) {
+              Writer writer = writers.get(output.getKey());
+              for (IBaseResource resource : output.getValue().apply(record)) {
+                parser.encodeResourceToWriter(resource, writer);
+                writer.write('\n');
+                resourcesWritten.mark();
+              }
+            }
+          }
+
+          lastId = chunkIds.get(chunkIds.size() - 1);
+          job.checkpoint(task.name, lastId, flushWriters(jobDirectory, writers), false);
+          job.save(jobDirectory);
+          chunkIds.clear();
+          session.clear();
+        }
+      } finally {
+        ids.close();
+      }
+
+      job.checkpoint(task.name, lastId, flushWriters(jobDirectory, writers), true);
+      job.save(jobDirectory);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      for (Writer writer : writers.values()) {
+        try {
+          writer.close();
+        } catch (IOException e) {
+          LOGGER.warn("Unable to close bulk export file.", e);
+        }
+      }
+      if (entityManager != null) {
+        if (entityManager.getTransaction().isActive()) entityManager.getTransaction().rollback();
+        entityManager.close();
+      }
+      timerTask.stop();
+    }
+  }
+
+  /**
+   * @param session the Hibernate {@link Session} to create the {@link Query} in
+   * @param job the {@link BulkExportJob} that the task is part of
+   * @param task the {@link ExportTask} to create the {@link Query} for
+   * @param lastId the ID of the last record that the task has already written out, if any
+   * @return a {@link Query} for the (ordered) IDs of all of the records that the task has yet to
+   *     write out
+   */
+  private static Query<?> createIdsQuery(
+      Session session, BulkExportJob job, ExportTask task, String lastId) {
+    StringBuilder hql = new StringBuilder();
+    hql.append(String.format("select e.%s from %s e where 1 = 1", task.idName, task.entityName));
+    if (lastId != null) hql.append(String.format(" and e.%s > :lastId", task.idName));
+    if (job.getSince().isPresent()) hql.append(" and e.lastUpdated >= :since");
+    hql.append(String.format(" order by e.%s", task.idName));
+
+    Query<?> query = session.createQuery(hql.toString());
+    if (lastId != null) query.setParameter("lastId", lastId);
+    if (job.getSince().isPresent()) query.setParameter("since", job.getSince().get());
+    return query;
+  }
+
+  /**
+   * @param session the Hibernate {@link Session} to run the {@link Query} in
+   * @param task the {@link ExportTask} to find the records for
+   * @param ids the IDs of the records to find
+   * @return the specified records, with all of their lines loaded, in ID order
+   */
+  private static List<?> findRecords(Session session, ExportTask task, List<String> ids) {
+    StringBuilder hql = new StringBuilder();
+    hql.append(String.format("select distinct e from %s e", task.entityName));
+    for (String lazyAttributeName : task.lazyAttributeNames)
+      hql.append(String.format(" left join fetch e.%s", lazyAttributeName));
+    hql.append(String.format(" where e.%1$s in (:ids) order by e.%1$s", task.idName));
+
+    return session.createQuery(hql.toString()).setParameterList("ids", ids).getResultList();
+  }
+
+  /**
+   * @param jobDirectory the directory that the output files are in
+   * @param writers the {@link Writer}s to flush, keyed by the names of their output files
+   * @return the length (in bytes) of each output file, after being flushed, keyed by file name
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private static Map<String, Long> flushWriters(Path jobDirectory, Map<String, Writer> writers)
+      throws IOException {
+    Map<String, Long> fileLengths = new LinkedHashMap<>();
+    for (Map.Entry<String, Writer> writer : writers.entrySet()) {
+      writer.getValue().flush();
+      fileLengths.put(writer.getKey(), Files.size(jobDirectory.resolve(writer.getKey())));
+    }
+    return fileLengths;
+  }
+
+  /** Describes one of a {@link BulkExportJob}'s tasks: the export of a single table. */
+  private static final class ExportTask {
+    private final String name;
+    private final String entityName;
+    private final String idName;
+    private final List<String> lazyAttributeNames;
+    private final boolean excludeSamhsa;
+    private final Map<String, Function<Object, List<IBaseResource>>> outputs;
+
+    /**
+     * Constructs a new {@link ExportTask}.
+     *
+     * @param name the name of the task
+     * @param entityClass the JPA entity {@link Class} of the table to export
+     * @param idName the name of the entity's ID field
+     * @param lazyAttributes the lazy {@link PluralAttribute}s of the entity that the transformers
+     *     will need
+     * @param excludeSamhsa <code>true</code> if records that {@link
+     *     SamhsaMatcher#testClaim(Object)} should be skipped, <code>false</code> if not
+     * @param outputs the transformers for each of the task's output files, keyed by file name
+     */
+    ExportTask(
+        String name,
+        Class<?> entityClass,
+        String idName,
+        Iterable<PluralAttribute<?, ?, ?>> lazyAttributes,
+        boolean excludeSamhsa,
+        Map<String, Function<Object, List<IBaseResource>>> outputs) {
+      this.name = name;
+      this.entityName = entityClass.getSimpleName();
+      this.idName = idName;
+      this.lazyAttributeNames = new ArrayList<>();
+      for (PluralAttribute<?, ?, ?> lazyAttribute : lazyAttributes)
+        lazyAttributeNames.add(lazyAttribute.getName());
+      this.excludeSamhsa = excludeSamhsa;
+      this.outputs = outputs;
+    }
+  }
+}
@@ -6,8 +6,11 @@ import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import gov.cms.bfd.model.codebook.data.CcwCodebookVariable;
 import gov.cms.bfd.model.rif.CarrierClaim;
 import gov.cms.bfd.model.rif.CarrierClaimLine;
+import gov.cms.bfd.model.rif.CompactValues;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit.ItemComponent;
@@ -52,9 +55,9 @@ final class CarrierClaimTransformer {
         ClaimType.CARRIER,
         claimGroup.getClaimGroupId().toPlainString(),
         MedicareSegment.PART_B,
-        Optional.of(claimGroup.getDateFrom()),
-        Optional.of(claimGroup.getDateThrough()),
-        Optional.of(claimGroup.getPaymentAmount()),
+        claimGroup.getDateFromEpochDay(),
+        claimGroup.getDateThroughEpochDay(),
+        claimGroup.getPaymentAmountCents(),
         claimGroup.getFinalAction());
 
     // map eob type codes into FHIR
@@ -64,8 +67,8 @@ final class CarrierClaimTransformer {
         Optional.of(claimGroup.getNearLineRecordIdCode()),
         Optional.of(claimGroup.getClaimTypeCode()));
 
-    TransformerUtils.addAdjudicationTotal(
-        eob, CcwCodebookVariable.PRPAYAMT, claimGroup.getPrimaryPayerPaidAmount());
+    TransformerUtils.addAdjudicationTotalFromCents(
+        eob, CcwCodebookVariable.PRPAYAMT, claimGroup.getPrimaryPayerPaidAmountCents());
 
     // Common group level fields between Carrier and DME
     TransformerUtils.mapEobCommonGroupCarrierDME(
@@ -82,34 +85,7 @@ final class CarrierClaimTransformer {
         claimGroup.getSubmittedChargeAmount(),
         claimGroup.getAllowedChargeAmount());
 
-    for (Diagnosis diagnosis :
-        TransformerUtils.extractDiagnoses1Thru12(
-            claimGroup.getDiagnosisPrincipalCode(),
-            claimGroup.getDiagnosisPrincipalCodeVersion(),
-            claimGroup.getDiagnosis1Code(),
-            claimGroup.getDiagnosis1CodeVersion(),
-            claimGroup.getDiagnosis2Code(),
-            claimGroup.getDiagnosis2CodeVersion(),
-            claimGroup.getDiagnosis3Code(),
-            claimGroup.getDiagnosis3CodeVersion(),
-            claimGroup.getDiagnosis4Code(),
-            claimGroup.getDiagnosis4CodeVersion(),
-            claimGroup.getDiagnosis5Code(),
-            claimGroup.getDiagnosis5CodeVersion(),
-            claimGroup.getDiagnosis6Code(),
-            claimGroup.getDiagnosis6CodeVersion(),
-            claimGroup.getDiagnosis7Code(),
-            claimGroup.getDiagnosis7CodeVersion(),
-            claimGroup.getDiagnosis8Code(),
-            claimGroup.getDiagnosis8CodeVersion(),
-            claimGroup.getDiagnosis9Code(),
-            claimGroup.getDiagnosis9CodeVersion(),
-            claimGroup.getDiagnosis10Code(),
-            claimGroup.getDiagnosis10CodeVersion(),
-            claimGroup.getDiagnosis11Code(),
-            claimGroup.getDiagnosis11CodeVersion(),
-            claimGroup.getDiagnosis12Code(),
-            claimGroup.getDiagnosis12CodeVersion()))
+    for (Diagnosis diagnosis : extractDiagnoses(claimGroup))
       TransformerUtils.addDiagnosisCode(eob, diagnosis);
 
     for (CarrierClaimLine claimLine : claimGroup.getLines()) {
@@ -192,7 +168,7 @@ final class CarrierClaimTransformer {
                     claimLine.getAnesthesiaUnitCount()));
       }
 
-      if (claimLine.getMtusCode().isPresent()) {
+      if (claimLine.getMtusCodeChar() != CompactValues.ABSENT_CHAR) {
         item.addExtension(
             TransformerUtils.createExtensionCoding(
                 eob, CcwCodebookVariable.CARR_LINE_MTUS_CD, claimLine.getMtusCode()));
@@ -211,8 +187,8 @@ final class CarrierClaimTransformer {
           claimGroup.getClaimId(),
           claimLine.getServiceCount(),
           claimLine.getPlaceOfServiceCode(),
-          claimLine.getFirstExpenseDate(),
-          claimLine.getLastExpenseDate(),
+          claimLine.getFirstExpenseDateEpochDay(),
+          claimLine.getLastExpenseDateEpochDay(),
           claimLine.getBeneficiaryPaymentAmount(),
           claimLine.getProviderPaymentAmount(),
           claimLine.getBeneficiaryPartBDeductAmount(),
@@ -262,4 +238,44 @@ final class CarrierClaimTransformer {
 
     return eob;
   }
+
+  /**
+   * @param claimGroup the {@link CarrierClaim} to extract the {@link Diagnosis}es from
+   * @return the {@link Diagnosis}es that can be extracted from the specified {@link CarrierClaim}
+   */
+  static List<Diagnosis> extractDiagnoses(CarrierClaim claimGroup) {
+    List<Diagnosis> diagnoses = new ArrayList<>();
+
+    for (Diagnosis diagnosis :
+        TransformerUtils.extractDiagnoses1Thru12(
+            claimGroup.getDiagnosisPrincipalCode(),
+            claimGroup.getDiagnosisPrincipalCodeVersion(),
+            claimGroup.getDiagnosis1Code(),
+            claimGroup.getDiagnosis1CodeVersion(),
+            claimGroup.getDiagnosis2Code(),
+            claimGroup.getDiagnosis2CodeVersion(),
+            claimGroup.getDiagnosis3Code(),
+            claimGroup.getDiagnosis3CodeVersion(),
+            claimGroup.getDiagnosis4Code(),
+            claimGroup.getDiagnosis4CodeVersion(),
+            claimGroup.getDiagnosis5Code(),
+            claimGroup.getDiagnosis5CodeVersion(),
+            claimGroup.getDiagnosis6Code(),
+            claimGroup.getDiagnosis6CodeVersion(),
+            claimGroup.getDiagnosis7Code(),
+            claimGroup.getDiagnosis7CodeVersion(),
+            claimGroup.getDiagnosis8Code(),
+            claimGroup.getDiagnosis8CodeVersion(),
+            claimGroup.getDiagnosis9Code(),
+            claimGroup.getDiagnosis9CodeVersion(),
+            claimGroup.getDiagnosis10Code(),
+            claimGroup.getDiagnosis10CodeVersion(),
+            claimGroup.getDiagnosis11Code(),
+            claimGroup.getDiagnosis11CodeVersion(),
+            claimGroup.getDiagnosis12Code(),
+            claimGroup.getDiagnosis12CodeVersion()))
+      diagnoses.add(diagnosis);
+
+    return diagnoses;
+  }
 }
@@ -0,0 +1,583 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import gov.cms.bfd.model.codebook.data.CcwCodebookVariable;
+import gov.cms.bfd.model.rif.ClaimFhirDocument;
+import gov.cms.bfd.model.rif.ClaimFhirDocument_;
+import gov.cms.bfd.model.rif.RifFileType;
+import gov.cms.bfd.server.war.FDADrugDataUtilityApp;
+import gov.cms.bfd.server.war.QueryLoggingListener;
+import gov.cms.bfd.server.war.QueryLoggingListener.QueryType;
+import gov.cms.bfd.server.war.ReplicaRoutingDataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnit;
+import javax.persistence.Table;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.hibernate.Session;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores and retrieves the precomputed FHIR JSON for individual claims/events, as {@link
+ * ClaimFhirDocument}s, so that {@link ExplanationOfBenefitResourceProvider} can skip loading and
+ * transforming the claims/events that have already been transformed once.
+ *
+ * <p>Documents are written the first time each claim/event is transformed (on the primary
+ * database, via {@link ReplicaRoutingDataSource#runOnPrimary(Runnable)}), and are only valid for
+ * the {@link #transformerVersion} that wrote them. By default, that's a hash of the transformers'
+ * classes and lookup tables (see {@link #computeTransformerVersion()}), so deploying a change to
+ * any of them effectively invalidates all of the documents, while deploying unrelated changes
+ * doesn't. The pipeline deletes a claim/event's document whenever it updates that
+ * claim/event, and documents are only written if the claim/event hasn't been updated since it was
+ * read.
+ *
+ * <p>The writes are made by a single background thread, so that searches never wait on the
+ * primary. At most {@link #MAX_PENDING_STORES} batches of documents are queued up for it: any more
+ * than that are just dropped (and counted), as they'll be written the next time those claims/events
+ * are transformed, anyways.
+ *
+ * <p>The documents are written here, lazily, rather than by the pipeline as each claim/event is
+ * loaded, because only this application has the transformers: the pipeline would have to
+ * transform every claim/event it loads (nearly all of which are never requested), with a copy of
+ * the transformers that could drift from the ones actually serving requests. Writing lazily only
+ * costs the primary one write per requested claim/event per {@link #transformerVersion}, bounded by
+ * the single writer thread.
+ */
+public final class ClaimFhirDocumentStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClaimFhirDocumentStore.class);
+
+  /** Shared, as {@link FhirContext}s are expensive to create (but the parsers are not). */
+  private static final FhirContext FHIR_CONTEXT = FhirContext.forDstu3();
+
+  private static final String SQL_DELETE =
+      "delete from \"ClaimFhirDocuments\" where \"claimType\" = ? and \"claimId\" = ?";
+  private static final String SQL_INSERT =
+      "insert into \"ClaimFhirDocuments\""
+          + " (\"claimType\", \"claimId\", \"transformerVersion\", \"document\")"
+          + " values (?, ?, ?, ?)";
+
+  /**
+   * The maximum number of {@link #store(ClaimType, List, List)} batches that may be waiting to be
+   * written at once, which bounds both the memory held by pending documents and the write load that
+   * this store can put on the primary.
+   */
+  static final int MAX_PENDING_STORES = 100;
+
+  /**
+   * The classes whose bytecode {@link #computeTransformerVersion()} hashes: everything that
+   * determines the FHIR that a claim/event is transformed into.
+   */
+  private static final List<Class<?>> TRANSFORMER_CLASSES =
+      Arrays.asList(
+          CarrierClaimTransformer.class,
+          DMEClaimTransformer.class,
+          HHAClaimTransformer.class,
+          HospiceClaimTransformer.class,
+          InpatientClaimTransformer.class,
+          OutpatientClaimTransformer.class,
+          PartDEventTransformer.class,
+          SNFClaimTransformer.class,
+          TransformerUtils.class,
+          TransformerConstants.class,
+          Diagnosis.class,
+          CCWProcedure.class,
+          IcdCode.class,
+          MedicareSegment.class,
+          ClaimType.class,
+          CcwCodebookVariable.class);
+
+  /**
+   * The lookup table resources (as read by {@link TransformerUtils}) that {@link
+   * #computeTransformerVersion()} hashes.
+   */
+  static final List<String> TRANSFORMER_RESOURCES =
+      Arrays.asList(
+          "DGNS_CD.txt",
+          "PRCDR_CD.txt",
+          "NPI_Coded_Display_Values_Tab.txt",
+          FDADrugDataUtilityApp.FDA_PRODUCTS_RESOURCE);
+
+  private final boolean enabled;
+  private final String transformerVersion;
+  private final MetricRegistry metricRegistry;
+  private final Meter hits;
+  private final Meter misses;
+  private final Meter stored;
+  private final Meter storeFailures;
+  private final Meter storeDrops;
+
+  private EntityManager entityManager;
+  private EntityManagerFactory entityManagerFactory;
+  private ExecutorService storeExecutor;
+  private int pendingStores;
+
+  /**
+   * Constructs a new {@link ClaimFhirDocumentStore}.
+   *
+   * @param metricRegistry the {@link MetricRegistry} to record the store's hits, misses, etc. in
+   * @param enabled <code>true</code> if documents should be read and written, <code>false</code>
+   *     if this store should do nothing at all
+   * @param transformerVersion an opaque identifier for the current version of the transformers
+   *     (and their lookup tables), at most 64 characters long, e.g. {@link
+   *     #computeTransformerVersion()}
+   */
+  public ClaimFhirDocumentStore(
+      MetricRegistry metricRegistry, boolean enabled, String transformerVersion) {
+    if (transformerVersion.length() > 64) throw new IllegalArgumentException(transformerVersion);
+
+    this.enabled = enabled;
+    this.transformerVersion = transformerVersion;
+    this.metricRegistry = metricRegistry;
+    this.hits = metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "hits"));
+    this.misses = metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "misses"));
+    this.stored = metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "stored"));
+    this.storeFailures =
+        metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "storeFailures"));
+    this.storeDrops =
+        metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "storeDrops"));
+  }
+
+  /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
+  @PersistenceContext
+  public void setEntityManager(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  /**
+   * @param entityManagerFactory the JPA {@link EntityManagerFactory} for the application's
+   *     database, which is used to create the {@link EntityManager}s that documents are written
+   *     with
+   */
+  @PersistenceUnit
+  public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+    this.entityManagerFactory = entityManagerFactory;
+  }
+
+  /**
+   * @return <code>true</code> if this store will read and write anything, <code>false</code> if
+   *     not
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @param claimIds the {@link ClaimType} and {@link ClaimType#getEntityIdAttribute()} value of
+   *     each claim/event to find the documents for
+   * @return the {@link EncodedExplanationOfBenefit}s for those of the specified claims/events that
+   *     have a current document, by {@link ClaimType} and then claim/event ID
+   */
+  public Map<ClaimType, Map<Object, EncodedExplanationOfBenefit>> find(
+      List<Map.Entry<ClaimType, Object>> claimIds) {
+    if (!enabled || claimIds.isEmpty()) return Collections.emptyMap();
+
+    CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<ClaimFhirDocument> criteria =
+        criteriaBuilder.createQuery(ClaimFhirDocument.class);
+    Root<ClaimFhirDocument> root = criteria.from(ClaimFhirDocument.class);
+    List<Predicate> claimTypePredicates = new ArrayList<>();
+    Map<ClaimType, List<Object>> claimIdsByType =
+        claimIds.stream()
+            .collect(
+                Collectors.groupingBy(
+                    Map.Entry::getKey,
+                    () -> new EnumMap<>(ClaimType.class),
+                    Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
+    for (Map.Entry<ClaimType, List<Object>> claimTypeIds : claimIdsByType.entrySet())
+      claimTypePredicates.add(
+          criteriaBuilder.and(
+              criteriaBuilder.equal(
+                  root.get(ClaimFhirDocument_.claimType), toRifFileType(claimTypeIds.getKey())),
+              root.get(ClaimFhirDocument_.claimId).in(claimTypeIds.getValue())));
+    criteria.where(
+        criteriaBuilder.equal(root.get(ClaimFhirDocument_.transformerVersion), transformerVersion),
+        criteriaBuilder.or(claimTypePredicates.toArray(new Predicate[claimTypePredicates.size()])));
+
+    String queryId = "eob_documents_by_ids";
+    List<ClaimFhirDocument> documents = null;
+    Timer.Context timerQuery =
+        metricRegistry
+            .timer(MetricRegistry.name(getClass().getSimpleName(), "query", queryId))
+            .time();
+    QueryLoggingListener.setQueryTag(QueryType.EOB_DOCUMENTS_BY_IDS);
+    try {
+      documents = entityManager.createQuery(criteria).getResultList();
+    } finally {
+      TransformerUtils.recordQueryInMdc(
+          queryId, timerQuery.stop(), documents == null ? 0 : documents.size());
+    }
+
+    Map<ClaimType, Map<Object, EncodedExplanationOfBenefit>> eobs = new EnumMap<>(ClaimType.class);
+    for (ClaimFhirDocument document : documents)
+      eobs.computeIfAbsent(ClaimType.valueOf(document.getClaimType().name()), t -> new HashMap<>())
+          .put(document.getClaimId(), new EncodedExplanationOfBenefit(gunzip(document)));
+    hits.mark(documents.size());
+    misses.mark(claimIds.size() - documents.size());
+    return eobs;
+  }
+
+  /**
+   * Queues up documents for the specified claims/events to be written out in the background,
+   * replacing any that they already have. If too many writes are already pending, the documents
+   * are dropped instead. Failures are logged, but otherwise ignored, as the documents are just an
+   * optimization.
+   *
+   * @param claimType the {@link ClaimType} of the claims/events to store documents for
+   * @param claims the claim/event entities to store documents for, which must have been read from
+   *     the database just now, as their documents will only be stored if they haven't been updated
+   *     since
+   * @param eobs the {@link ExplanationOfBenefit}s that the specified claims/events were transformed
+   *     into, in the same order
+   */
+  public void store(ClaimType claimType, List<?> claims, List<ExplanationOfBenefit> eobs) {
+    if (!enabled || claims.isEmpty()) return;
+    if (claims.size() != eobs.size()) throw new IllegalArgumentException();
+    if (!reservePendingStore()) {
+      storeDrops.mark(claims.size());
+      return;
+    }
+
+    /*
+     * Everything that's read from the entities and EOBs is read here, on the request's thread, as
+     * neither are safe to use once they've been handed back to the request.
+     */
+    List<String> claimIds = new ArrayList<>(claims.size());
+    List<Instant> lastUpdateds = new ArrayList<>(claims.size());
+    List<byte[]> documents = new ArrayList<>(eobs.size());
+    try {
+      IParser parser = FHIR_CONTEXT.newJsonParser();
+      for (int i = 0; i < claims.size(); i++) {
+        claimIds.add(
+            (String)
+                ExplanationOfBenefitResourceProvider.readAttribute(
+                    claims.get(i), claimType.getEntityIdAttribute()));
+        lastUpdateds.add(
+            (Instant)
+                ExplanationOfBenefitResourceProvider.readAttribute(
+                    claims.get(i), claimType.getEntityLastUpdatedAttribute()));
+        documents.add(gzip(parser.encodeResourceToString(eobs.get(i))));
+      }
+    } catch (RuntimeException e) {
+      releasePendingStore();
+      storeFailures.mark();
+      LOGGER.warn("Unable to encode {} claim documents.", claimType, e);
+      return;
+    }
+
+    try {
+      getStoreExecutor()
+          .execute(() -> runStore(claimType, claimIds, lastUpdateds, documents));
+    } catch (RejectedExecutionException e) {
+      // Only happens if this store has been closed.
+      releasePendingStore();
+      storeDrops.mark(claims.size());
+    }
+  }
+
+  /**
+   * Runs on the {@link #storeExecutor}'s thread, to write out a batch of documents queued up by
+   * {@link #store(ClaimType, List, List)}.
+   *
+   * @param claimType the {@link ClaimType} of the claims/events to store documents for
+   * @param claimIds the IDs of the claims/events to store documents for
+   * @param lastUpdateds the <code>lastUpdated</code> values that the specified claims/events had
+   *     when they were read, in the same order
+   * @param documents the gzipped JSON documents for the specified claims/events, in the same order
+   */
+  private void runStore(
+      ClaimType claimType,
+      List<String> claimIds,
+      List<Instant> lastUpdateds,
+      List<byte[]> documents) {
+    Timer.Context timerStore =
+        metricRegistry
+            .timer(
+                MetricRegistry.name(
+                    getClass().getSimpleName(), "store", claimType.name().toLowerCase()))
+            .time();
+    try {
+      ReplicaRoutingDataSource.runOnPrimary(
+          () -> storeOnPrimary(claimType, claimIds, lastUpdateds, documents));
+      stored.mark(claimIds.size());
+    } catch (RuntimeException e) {
+      storeFailures.mark();
+      LOGGER.warn("Unable to store {} claim documents.", claimType, e);
+    } finally {
+      timerStore.stop();
+      releasePendingStore();
+    }
+  }
+
+  /**
+   * @return <code>true</code> if there was room for another pending {@link #store(ClaimType, List,
+   *     List)} batch (which the caller must then {@link #releasePendingStore()} once it's done), or
+   *     <code>false</code> if there are already {@link #MAX_PENDING_STORES} of them
+   */
+  private synchronized boolean reservePendingStore() {
+    if (pendingStores >= MAX_PENDING_STORES) return false;
+    pendingStores++;
+    return true;
+  }
+
+  /** Releases a pending batch reserved by {@link #reservePendingStore()}. */
+  private synchronized void releasePendingStore() {
+    pendingStores--;
+    if (pendingStores == 0) notifyAll();
+  }
+
+  /**
+   * Waits for all of the documents queued up by {@link #store(ClaimType, List, List)} so far to be
+   * written (or to fail). Only intended for use by tests.
+   *
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  synchronized void awaitPendingStores() throws InterruptedException {
+    while (pendingStores > 0) wait();
+  }
+
+  /** @return the single-threaded executor that documents are written out on */
+  private synchronized ExecutorService getStoreExecutor() {
+    if (storeExecutor == null) {
+      /*
+       * The queue can't actually fill up, as reservePendingStore() caps the number of batches
+       * first, but is bounded anyways, to be safe.
+       */
+      storeExecutor =
+          new ThreadPoolExecutor(
+              1,
+              1,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(MAX_PENDING_STORES),
+              r -> {
+                Thread thread = new Thread(r, getClass().getSimpleName() + "-store");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    return storeExecutor;
+  }
+
+  /**
+   * Stops writing documents. Any that are still queued up are dropped, as they'll just be written
+   * the next time those claims/events are transformed.
+   */
+  public synchronized void close() {
+    if (storeExecutor == null) return;
+    int droppedStores = storeExecutor.shutdownNow().size();
+    pendingStores -= droppedStores;
+    if (pendingStores <= 0) notifyAll();
+  }
+
+  /**
+   * Implements {@link #store(ClaimType, List, List)}, which must be called within {@link
+   * ReplicaRoutingDataSource#runOnPrimary(Runnable)}. The claims/events are re-read first, and
+   * documents are only written for those whose <code>lastUpdated</code> values haven't changed, as
+   * the pipeline may have updated them (and deleted their old documents) since they were read.
+   *
+   * @param claimType the {@link ClaimType} of the claims/events to store documents for
+   * @param claimIds the IDs of the claims/events to store documents for
+   * @param lastUpdateds the <code>lastUpdated</code> values that the specified claims/events had
+   *     when they were read, in the same order
+   * @param documents the gzipped JSON documents for the specified claims/events, in the same order
+   */
+  private void storeOnPrimary(
+      ClaimType claimType,
+      List<String> claimIds,
+      List<Instant> lastUpdateds,
+      List<byte[]> documents) {
+    String claimTypeName = toRifFileType(claimType).name();
+    String selectSql =
+        String.format(
+            "select \"%s\", \"%s\" from %s where \"%s\" in (%s)",
+            claimType.getEntityIdAttribute().getName(),
+            claimType.getEntityLastUpdatedAttribute().getName(),
+            claimType.getEntityClass().getAnnotation(Table.class).name().replace('`', '"'),
+            claimType.getEntityIdAttribute().getName(),
+            String.join(", ", Collections.nCopies(claimIds.size(), "?")));
+
+    EntityManager writeEntityManager = entityManagerFactory.createEntityManager();
+    try {
+      writeEntityManager.getTransaction().begin();
+      writeEntityManager
+          .unwrap(Session.class)
+          .doWork(
+              connection -> {
+                Map<String, Timestamp> currentLastUpdateds = new HashMap<>();
+                try (PreparedStatement select = connection.prepareStatement(selectSql)) {
+                  for (int i = 0; i < claimIds.size(); i++)
+                    select.setString(i + 1, claimIds.get(i));
+                  try (ResultSet results = select.executeQuery()) {
+                    while (results.next())
+                      currentLastUpdateds.put(results.getString(1), results.getTimestamp(2));
+                  }
+                }
+
+                try (PreparedStatement delete = connection.prepareStatement(SQL_DELETE);
+                    PreparedStatement insert = connection.prepareStatement(SQL_INSERT)) {
+                  for (int i = 0; i < claimIds.size(); i++) {
+                    String claimId = claimIds.get(i);
+                    Instant lastUpdated = lastUpdateds.get(i);
+                    if (!currentLastUpdateds.containsKey(claimId)) continue;
+                    Timestamp currentLastUpdated = currentLastUpdateds.get(claimId);
+                    if (!Objects.equals(
+                        lastUpdated,
+                        currentLastUpdated != null ? currentLastUpdated.toInstant() : null))
+                      continue;
+
+                    delete.setString(1, claimTypeName);
+                    delete.setString(2, claimId);
+                    delete.addBatch();
+
+                    insert.setString(1, claimTypeName);
+                    insert.setString(2, claimId);
+                    insert.setString(3, transformerVersion);
+                    insert.setBytes(4, documents.get(i));
+                    insert.addBatch();
+                  }
+                  delete.executeBatch();
+                  insert.executeBatch();
+                }
+              });
+      writeEntityManager.getTransaction().commit();
+    } finally {
+      if (writeEntityManager.getTransaction().isActive())
+        writeEntityManager.getTransaction().rollback();
+      writeEntityManager.close();
+    }
+  }
+
+  /**
+   * @return the default {@link #transformerVersion} to use: a hex SHA-256 hash of the {@link
+   *     #TRANSFORMER_CLASSES} and {@link #TRANSFORMER_RESOURCES}
+   */
+  public static String computeTransformerVersion() {
+    return computeTransformerVersion(TRANSFORMER_RESOURCES);
+  }
+
+  /**
+   * @param resourceNames the lookup table resources to hash, along with the {@link
+   *     #TRANSFORMER_CLASSES}
+   * @return a hex SHA-256 hash of the {@link #TRANSFORMER_CLASSES} and the specified resources
+   *     (any of which that can't be found are hashed as just their name, and logged)
+   */
+  static String computeTransformerVersion(List<String> resourceNames) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    for (Class<?> transformerClass : TRANSFORMER_CLASSES)
+      digestResource(
+          digest,
+          transformerClass.getClassLoader(),
+          transformerClass.getName().replace('.', '/') + ".class");
+    for (String resourceName : resourceNames)
+      digestResource(digest, Thread.currentThread().getContextClassLoader(), resourceName);
+
+    StringBuilder version = new StringBuilder();
+    for (byte hashByte : digest.digest()) version.append(String.format("%02x", hashByte));
+    return version.toString();
+  }
+
+  /**
+   * @param digest the {@link MessageDigest} to add the specified resource's name and contents to
+   * @param classLoader the {@link ClassLoader} to read the resource from
+   * @param resourceName the name of the resource to digest
+   */
+  private static void digestResource(
+      MessageDigest digest, ClassLoader classLoader, String resourceName) {
+    digest.update(resourceName.getBytes(StandardCharsets.UTF_8));
+    try (InputStream resourceStream = classLoader.getResourceAsStream(resourceName)) {
+      if (resourceStream == null) {
+        LOGGER.warn("Transformer resource '{}' not found; not hashing it.", resourceName);
+        return;
+      }
+      byte[] buffer = new byte[8192];
+      int bytesRead;
+      while ((bytesRead = resourceStream.read(buffer)) >= 0) digest.update(buffer, 0, bytesRead);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @param claimType the {@link ClaimType} to convert
+   * @return the {@link RifFileType} with the same name as the specified {@link ClaimType}
+   */
+  private static RifFileType toRifFileType(ClaimType claimType) {
+    return RifFileType.valueOf(claimType.name());
+  }
+
+  /**
+   * @param json the FHIR JSON to compress
+   * @return the gzipped UTF-8 bytes of the specified JSON
+   */
+  static byte[] gzip(String json) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream gzipStream = new GZIPOutputStream(bytes)) {
+      gzipStream.write(json.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param document the {@link ClaimFhirDocument} to decompress
+   * @return the FHIR JSON from the specified {@link ClaimFhirDocument#getDocument()}
+   */
+  static String gunzip(ClaimFhirDocument document) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream gzipStream =
+        new GZIPInputStream(new ByteArrayInputStream(document.getDocument()))) {
+      byte[] buffer = new byte[8192];
+      int bytesRead;
+      while ((bytesRead = gzipStream.read(buffer)) >= 0) bytes.write(buffer, 0, bytesRead);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -18,6 +18,7 @@ import gov.cms.bfd.model.rif.PartDEvent;
 import gov.cms.bfd.model.rif.PartDEvent_;
 import gov.cms.bfd.model.rif.SNFClaim;
 import gov.cms.bfd.model.rif.SNFClaim_;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -40,6 +41,7 @@ public enum ClaimType {
       CarrierClaim.class,
       CarrierClaim_.claimId,
       CarrierClaim_.beneficiaryId,
+      CarrierClaim_.lastUpdated,
       CarrierClaimTransformer::transform,
       CarrierClaim_.lines),
 
@@ -47,6 +49,7 @@ public enum ClaimType {
       DMEClaim.class,
       DMEClaim_.claimId,
       DMEClaim_.beneficiaryId,
+      DMEClaim_.lastUpdated,
       DMEClaimTransformer::transform,
       DMEClaim_.lines),
 
@@ -54,6 +57,7 @@ public enum ClaimType {
       HHAClaim.class,
       HHAClaim_.claimId,
       HHAClaim_.beneficiaryId,
+      HHAClaim_.lastUpdated,
       HHAClaimTransformer::transform,
       HHAClaim_.lines),
 
@@ -61,6 +65,7 @@ public enum ClaimType {
       HospiceClaim.class,
       HospiceClaim_.claimId,
       HospiceClaim_.beneficiaryId,
+      HospiceClaim_.lastUpdated,
       HospiceClaimTransformer::transform,
       HospiceClaim_.lines),
 
@@ -68,6 +73,7 @@ public enum ClaimType {
       InpatientClaim.class,
       InpatientClaim_.claimId,
       InpatientClaim_.beneficiaryId,
+      InpatientClaim_.lastUpdated,
       InpatientClaimTransformer::transform,
       InpatientClaim_.lines),
 
@@ -75,6 +81,7 @@ public enum ClaimType {
       OutpatientClaim.class,
       OutpatientClaim_.claimId,
       OutpatientClaim_.beneficiaryId,
+      OutpatientClaim_.lastUpdated,
       OutpatientClaimTransformer::transform,
       OutpatientClaim_.lines),
 
@@ -82,18 +89,21 @@ public enum ClaimType {
       PartDEvent.class,
       PartDEvent_.eventId,
       PartDEvent_.beneficiaryId,
+      PartDEvent_.lastUpdated,
       PartDEventTransformer::transform),
 
   SNF(
       SNFClaim.class,
       SNFClaim_.claimId,
       SNFClaim_.beneficiaryId,
+      SNFClaim_.lastUpdated,
       SNFClaimTransformer::transform,
       SNFClaim_.lines);
 
   private final Class<?> entityClass;
   private final SingularAttribute<?, ?> entityIdAttribute;
   private final SingularAttribute<?, String> entityBeneficiaryIdAttribute;
+  private final SingularAttribute<?, Instant> entityLastUpdatedAttribute;
   private final BiFunction<MetricRegistry, Object, ExplanationOfBenefit> transformer;
   private final Collection<PluralAttribute<?, ?, ?>> entityLazyAttributes;
 
@@ -104,6 +114,8 @@ public enum ClaimType {
    * @param entityIdAttribute the value to use for {@link #getEntityIdAttribute()}
    * @param entityBeneficiaryIdAttribute the value to use for {@link
    *     #getEntityBeneficiaryIdAttribute()}
+   * @param entityLastUpdatedAttribute the value to use for {@link
+   *     #getEntityLastUpdatedAttribute()}
    * @param transformer the value to use for {@link #getTransformer()}
    * @param entityLazyAttributes the value to use for {@link #getEntityLazyAttributes()}
    */
@@ -111,11 +123,13 @@ public enum ClaimType {
       Class<?> entityClass,
       SingularAttribute<?, ?> entityIdAttribute,
       SingularAttribute<?, String> entityBeneficiaryIdAttribute,
+      SingularAttribute<?, Instant> entityLastUpdatedAttribute,
       BiFunction<MetricRegistry, Object, ExplanationOfBenefit> transformer,
       PluralAttribute<?, ?, ?>... entityLazyAttributes) {
     this.entityClass = entityClass;
     this.entityIdAttribute = entityIdAttribute;
     this.entityBeneficiaryIdAttribute = entityBeneficiaryIdAttribute;
+    this.entityLastUpdatedAttribute = entityLastUpdatedAttribute;
     this.transformer = transformer;
     this.entityLazyAttributes =
         entityLazyAttributes != null
@@ -144,6 +158,14 @@ public enum ClaimType {
     return entityBeneficiaryIdAttribute;
   }
 
+  /**
+   * @return the JPA {@link Entity} field that records when each entity was last loaded or updated,
+   *     as used by the <code>_lastUpdated</code> search parameter
+   */
+  public SingularAttribute<?, Instant> getEntityLastUpdatedAttribute() {
+    return entityLastUpdatedAttribute;
+  }
+
   /**
    * @return the {@link Function} to use to transform the JPA {@link Entity} instances into FHIR
    *     {@link ExplanationOfBenefit} instances
@@ -7,13 +7,15 @@ import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.ReferenceParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import gov.cms.bfd.model.rif.Beneficiary;
-import gov.cms.bfd.model.rif.Beneficiary_;
+import gov.cms.bfd.server.war.QueryLoggingListener;
+import gov.cms.bfd.server.war.QueryLoggingListener.QueryType;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
@@ -23,9 +25,6 @@ import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.Coverage;
 import org.hl7.fhir.dstu3.model.IdType;
@@ -43,6 +42,7 @@ public final class CoverageResourceProvider implements IResourceProvider {
 
   private EntityManager entityManager;
   private MetricRegistry metricRegistry;
+  private ResourceCache resourceCache;
 
   /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
   @PersistenceContext
@@ -56,6 +56,12 @@ public final class CoverageResourceProvider implements IResourceProvider {
     this.metricRegistry = metricRegistry;
   }
 
+  /** @param resourceCache the {@link ResourceCache} to use */
+  @Inject
+  public void setResourceCache(ResourceCache resourceCache) {
+    this.resourceCache = resourceCache;
+  }
+
   /** @see ca.uhn.fhir.rest.server.IResourceProvider#getResourceType() */
   @Override
   public Class<? extends IBaseResource> getResourceType() {
@@ -91,17 +97,24 @@ public final class CoverageResourceProvider implements IResourceProvider {
     if (!coverageIdSegment.isPresent()) throw new ResourceNotFoundException(coverageId);
     String coverageIdBeneficiaryIdText = coverageIdMatcher.group(2);
 
-    Beneficiary beneficiaryEntity;
-    try {
-      beneficiaryEntity = findBeneficiaryById(coverageIdBeneficiaryIdText);
-    } catch (NoResultException e) {
-      throw new ResourceNotFoundException(
-          new IdDt(Beneficiary.class.getSimpleName(), coverageIdBeneficiaryIdText));
-    }
-
-    Coverage coverage =
-        CoverageTransformer.transform(metricRegistry, coverageIdSegment.get(), beneficiaryEntity);
-    return coverage;
+    return resourceCache.get(
+        "Coverage/" + coverageIdText,
+        () -> {
+          Beneficiary beneficiaryEntity;
+          try {
+            beneficiaryEntity =
+                findBeneficiaryById(
+                    coverageIdBeneficiaryIdText,
+                    null,
+                    CoverageTransformer.selectProjection(coverageIdSegment.get()));
+          } catch (NoResultException e) {
+            throw new ResourceNotFoundException(
+                new IdDt(Beneficiary.class.getSimpleName(), coverageIdBeneficiaryIdText));
+          }
+
+          return CoverageTransformer.transform(
+              metricRegistry, coverageIdSegment.get(), beneficiaryEntity);
+        });
   }
 
   /**
@@ -116,6 +129,8 @@ public final class CoverageResourceProvider implements IResourceProvider {
    *     and find matches for
    * @param startIndex an {@link OptionalParam} for the startIndex (or offset) used to determine
    *     pagination
+   * @param lastUpdated an {@link OptionalParam} that, if specified, restricts the results to just
+   *     those {@link Coverage}s whose beneficiary was loaded or updated within the specified range
    * @param requestDetails a {@link RequestDetails} containing the details of the request URL, used
    *     to parse out pagination values
    * @return Returns a {@link List} of {@link Coverage}s, which may contain multiple matching
@@ -125,49 +140,68 @@ public final class CoverageResourceProvider implements IResourceProvider {
   public Bundle searchByBeneficiary(
       @RequiredParam(name = Coverage.SP_BENEFICIARY) ReferenceParam beneficiary,
       @OptionalParam(name = "startIndex") String startIndex,
+      @OptionalParam(name = "_lastUpdated") DateRangeParam lastUpdated,
       RequestDetails requestDetails) {
-    List<IBaseResource> coverages;
-    try {
-      Beneficiary beneficiaryEntity = findBeneficiaryById(beneficiary.getIdPart());
-      coverages = CoverageTransformer.transform(metricRegistry, beneficiaryEntity);
-    } catch (NoResultException e) {
-      coverages = new LinkedList<IBaseResource>();
-    }
+    List<IBaseResource> coverages =
+        resourceCache.getAll(
+            "Coverage?"
+                + Coverage.SP_BENEFICIARY
+                + "="
+                + beneficiary.getIdPart()
+                + TransformerUtils.createLastUpdatedCacheKey(lastUpdated),
+            () -> {
+              try {
+                Beneficiary beneficiaryEntity =
+                    findBeneficiaryById(
+                        beneficiary.getIdPart(),
+                        lastUpdated,
+                        CoverageTransformer.ALL_PARTS_PROJECTION);
+                return CoverageTransformer.transform(metricRegistry, beneficiaryEntity);
+              } catch (NoResultException e) {
+                return new LinkedList<IBaseResource>();
+              }
+            });
 
     PagingArguments pagingArgs = new PagingArguments(requestDetails);
     Bundle bundle =
         TransformerUtils.createBundle(
-            pagingArgs, "/Coverage?", Coverage.SP_BENEFICIARY, beneficiary.getIdPart(), coverages);
+            pagingArgs,
+            "/Coverage?",
+            Coverage.SP_BENEFICIARY,
+            beneficiary.getIdPart(),
+            lastUpdated,
+            coverages);
     return bundle;
   }
 
   /**
    * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} value to find a matching {@link
    *     Beneficiary} for
-   * @return the {@link Beneficiary} that matches the specified {@link
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @param projection the {@link BeneficiaryProjection} with the {@link Beneficiary} fields that
+   *     are needed by the transform that the result will be passed to
+   * @return the (partially-populated) {@link Beneficiary} that matches the specified {@link
    *     Beneficiary#getBeneficiaryId()} value
    * @throws NoResultException A {@link NoResultException} will be thrown if no matching {@link
    *     Beneficiary} can be found in the database.
    */
-  private Beneficiary findBeneficiaryById(String beneficiaryId) throws NoResultException {
-    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-    CriteriaQuery<Beneficiary> criteria = builder.createQuery(Beneficiary.class);
-    Root<Beneficiary> root = criteria.from(Beneficiary.class);
-    criteria.select(root);
-    criteria.where(builder.equal(root.get(Beneficiary_.beneficiaryId), beneficiaryId));
-
+  private Beneficiary findBeneficiaryById(
+      String beneficiaryId, DateRangeParam lastUpdated, BeneficiaryProjection projection)
+      throws NoResultException {
+    String queryId = "bene_by_id." + projection.getName();
     Beneficiary beneficiary = null;
     Long beneByIdQueryNanoSeconds = null;
     Timer.Context timerBeneQuery =
         metricRegistry
             .timer(MetricRegistry.name(getClass().getSimpleName(), "query", "bene_by_id"))
             .time();
+    QueryLoggingListener.setQueryTag(QueryType.BENE_BY_ID_OMIT_IDENTIFIERS);
     try {
-      beneficiary = entityManager.createQuery(criteria).getSingleResult();
+      beneficiary = projection.find(entityManager, beneficiaryId, lastUpdated);
     } finally {
       beneByIdQueryNanoSeconds = timerBeneQuery.stop();
       TransformerUtils.recordQueryInMdc(
-          "bene_by_id.include_", beneByIdQueryNanoSeconds, beneficiary == null ? 0 : 1);
+          queryId, beneByIdQueryNanoSeconds, beneficiary == null ? 0 : 1);
     }
 
     return beneficiary;
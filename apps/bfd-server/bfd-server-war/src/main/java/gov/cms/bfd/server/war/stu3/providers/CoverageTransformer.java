@@ -20,6 +20,189 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 
 /** Transforms CCW {@link Beneficiary} instances into FHIR {@link Coverage} resources. */
 final class CoverageTransformer {
+  /**
+   * The {@link Beneficiary} fields needed by {@link #transformPartA(MetricRegistry, Beneficiary)}.
+   */
+  static final BeneficiaryProjection PART_A_PROJECTION =
+      new BeneficiaryProjection(
+          "coverage_part_a",
+          "beneficiaryId",
+          "partATerminationCode",
+          "medicareCoverageStartDate",
+          "medicareEnrollmentStatusCode",
+          "entitlementCodeOriginal",
+          "entitlementCodeCurrent",
+          "endStageRenalDiseaseCode",
+          "entitlementBuyInJanInd",
+          "entitlementBuyInFebInd",
+          "entitlementBuyInMarInd",
+          "entitlementBuyInAprInd",
+          "entitlementBuyInMayInd",
+          "entitlementBuyInJunInd",
+          "entitlementBuyInJulInd",
+          "entitlementBuyInAugInd",
+          "entitlementBuyInSeptInd",
+          "entitlementBuyInOctInd",
+          "entitlementBuyInNovInd",
+          "entitlementBuyInDecInd");
+
+  /**
+   * The {@link Beneficiary} fields needed by {@link #transformPartB(MetricRegistry, Beneficiary)}.
+   */
+  static final BeneficiaryProjection PART_B_PROJECTION =
+      new BeneficiaryProjection(
+          "coverage_part_b",
+          "beneficiaryId",
+          "partBTerminationCode",
+          "medicareCoverageStartDate",
+          "medicareEnrollmentStatusCode",
+          "entitlementBuyInJanInd",
+          "entitlementBuyInFebInd",
+          "entitlementBuyInMarInd",
+          "entitlementBuyInAprInd",
+          "entitlementBuyInMayInd",
+          "entitlementBuyInJunInd",
+          "entitlementBuyInJulInd",
+          "entitlementBuyInAugInd",
+          "entitlementBuyInSeptInd",
+          "entitlementBuyInOctInd",
+          "entitlementBuyInNovInd",
+          "entitlementBuyInDecInd");
+
+  /**
+   * The {@link Beneficiary} fields needed by {@link #transformPartC(MetricRegistry, Beneficiary)}.
+   */
+  static final BeneficiaryProjection PART_C_PROJECTION =
+      new BeneficiaryProjection(
+          "coverage_part_c",
+          "beneficiaryId",
+          "partCContractNumberJanId",
+          "partCContractNumberFebId",
+          "partCContractNumberMarId",
+          "partCContractNumberAprId",
+          "partCContractNumberMayId",
+          "partCContractNumberJunId",
+          "partCContractNumberJulId",
+          "partCContractNumberAugId",
+          "partCContractNumberSeptId",
+          "partCContractNumberOctId",
+          "partCContractNumberNovId",
+          "partCContractNumberDecId",
+          "partCPbpNumberJanId",
+          "partCPbpNumberFebId",
+          "partCPbpNumberMarId",
+          "partCPbpNumberAprId",
+          "partCPbpNumberMayId",
+          "partCPbpNumberJunId",
+          "partCPbpNumberJulId",
+          "partCPbpNumberAugId",
+          "partCPbpNumberSeptId",
+          "partCPbpNumberOctId",
+          "partCPbpNumberNovId",
+          "partCPbpNumberDecId",
+          "partCPlanTypeJanCode",
+          "partCPlanTypeFebCode",
+          "partCPlanTypeMarCode",
+          "partCPlanTypeAprCode",
+          "partCPlanTypeMayCode",
+          "partCPlanTypeJunCode",
+          "partCPlanTypeJulCode",
+          "partCPlanTypeAugCode",
+          "partCPlanTypeSeptCode",
+          "partCPlanTypeOctCode",
+          "partCPlanTypeNovCode",
+          "partCPlanTypeDecCode",
+          "hmoIndicatorJanInd",
+          "hmoIndicatorFebInd",
+          "hmoIndicatorMarInd",
+          "hmoIndicatorAprInd",
+          "hmoIndicatorMayInd",
+          "hmoIndicatorJunInd",
+          "hmoIndicatorJulInd",
+          "hmoIndicatorAugInd",
+          "hmoIndicatorSeptInd",
+          "hmoIndicatorOctInd",
+          "hmoIndicatorNovInd",
+          "hmoIndicatorDecInd");
+
+  /**
+   * The {@link Beneficiary} fields needed by {@link #transformPartD(MetricRegistry, Beneficiary)}.
+   */
+  static final BeneficiaryProjection PART_D_PROJECTION =
+      new BeneficiaryProjection(
+          "coverage_part_d",
+          "beneficiaryId",
+          "medicareEnrollmentStatusCode",
+          "partDContractNumberJanId",
+          "partDContractNumberFebId",
+          "partDContractNumberMarId",
+          "partDContractNumberAprId",
+          "partDContractNumberMayId",
+          "partDContractNumberJunId",
+          "partDContractNumberJulId",
+          "partDContractNumberAugId",
+          "partDContractNumberSeptId",
+          "partDContractNumberOctId",
+          "partDContractNumberNovId",
+          "partDContractNumberDecId",
+          "partDPbpNumberJanId",
+          "partDPbpNumberFebId",
+          "partDPbpNumberMarId",
+          "partDPbpNumberAprId",
+          "partDPbpNumberMayId",
+          "partDPbpNumberJunId",
+          "partDPbpNumberJulId",
+          "partDPbpNumberAugId",
+          "partDPbpNumberSeptId",
+          "partDPbpNumberOctId",
+          "partDPbpNumberNovId",
+          "partDPbpNumberDecId",
+          "partDSegmentNumberJanId",
+          "partDSegmentNumberFebId",
+          "partDSegmentNumberMarId",
+          "partDSegmentNumberAprId",
+          "partDSegmentNumberMayId",
+          "partDSegmentNumberJunId",
+          "partDSegmentNumberJulId",
+          "partDSegmentNumberAugId",
+          "partDSegmentNumberSeptId",
+          "partDSegmentNumberOctId",
+          "partDSegmentNumberNovId",
+          "partDSegmentNumberDecId",
+          "partDLowIncomeCostShareGroupJanCode",
+          "partDLowIncomeCostShareGroupFebCode",
+          "partDLowIncomeCostShareGroupMarCode",
+          "partDLowIncomeCostShareGroupAprCode",
+          "partDLowIncomeCostShareGroupMayCode",
+          "partDLowIncomeCostShareGroupJunCode",
+          "partDLowIncomeCostShareGroupJulCode",
+          "partDLowIncomeCostShareGroupAugCode",
+          "partDLowIncomeCostShareGroupSeptCode",
+          "partDLowIncomeCostShareGroupOctCode",
+          "partDLowIncomeCostShareGroupNovCode",
+          "partDLowIncomeCostShareGroupDecCode",
+          "partDRetireeDrugSubsidyJanInd",
+          "partDRetireeDrugSubsidyFebInd",
+          "partDRetireeDrugSubsidyMarInd",
+          "partDRetireeDrugSubsidyAprInd",
+          "partDRetireeDrugSubsidyMayInd",
+          "partDRetireeDrugSubsidyJunInd",
+          "partDRetireeDrugSubsidyJulInd",
+          "partDRetireeDrugSubsidyAugInd",
+          "partDRetireeDrugSubsidySeptInd",
+          "partDRetireeDrugSubsidyOctInd",
+          "partDRetireeDrugSubsidyNovInd",
+          "partDRetireeDrugSubsidyDecInd");
+
+  /** The {@link Beneficiary} fields needed by {@link #transform(MetricRegistry, Beneficiary)}. */
+  static final BeneficiaryProjection ALL_PARTS_PROJECTION =
+      BeneficiaryProjection.union(
+          "coverage_all_parts",
+          PART_A_PROJECTION,
+          PART_B_PROJECTION,
+          PART_C_PROJECTION,
+          PART_D_PROJECTION);
+
   /**
    * @param metricRegistry the {@link MetricRegistry} to use
    * @param medicareSegment the {@link MedicareSegment} to generate a {@link Coverage} resource for
@@ -41,6 +224,22 @@ final class CoverageTransformer {
     else throw new BadCodeMonkeyException();
   }
 
+  /**
+   * @param medicareSegment the {@link MedicareSegment} to get the {@link BeneficiaryProjection} for
+   * @return the {@link BeneficiaryProjection} with the {@link Beneficiary} fields needed by {@link
+   *     #transform(MetricRegistry, MedicareSegment, Beneficiary)} for the specified {@link
+   *     MedicareSegment}
+   */
+  static BeneficiaryProjection selectProjection(MedicareSegment medicareSegment) {
+    Objects.requireNonNull(medicareSegment);
+
+    if (medicareSegment == MedicareSegment.PART_A) return PART_A_PROJECTION;
+    else if (medicareSegment == MedicareSegment.PART_B) return PART_B_PROJECTION;
+    else if (medicareSegment == MedicareSegment.PART_C) return PART_C_PROJECTION;
+    else if (medicareSegment == MedicareSegment.PART_D) return PART_D_PROJECTION;
+    else throw new BadCodeMonkeyException();
+  }
+
   /**
    * @param metricRegistry the {@link MetricRegistry} to use
    * @param beneficiary the CCW {@link Beneficiary} to generate the {@link Coverage}s for
@@ -4,9 +4,12 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import gov.cms.bfd.model.codebook.data.CcwCodebookVariable;
+import gov.cms.bfd.model.rif.CompactValues;
 import gov.cms.bfd.model.rif.DMEClaim;
 import gov.cms.bfd.model.rif.DMEClaimLine;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit.ItemComponent;
@@ -84,34 +87,7 @@ final class DMEClaimTransformer {
         claimGroup.getSubmittedChargeAmount(),
         claimGroup.getAllowedChargeAmount());
 
-    for (Diagnosis diagnosis :
-        TransformerUtils.extractDiagnoses1Thru12(
-            claimGroup.getDiagnosisPrincipalCode(),
-            claimGroup.getDiagnosisPrincipalCodeVersion(),
-            claimGroup.getDiagnosis1Code(),
-            claimGroup.getDiagnosis1CodeVersion(),
-            claimGroup.getDiagnosis2Code(),
-            claimGroup.getDiagnosis2CodeVersion(),
-            claimGroup.getDiagnosis3Code(),
-            claimGroup.getDiagnosis3CodeVersion(),
-            claimGroup.getDiagnosis4Code(),
-            claimGroup.getDiagnosis4CodeVersion(),
-            claimGroup.getDiagnosis5Code(),
-            claimGroup.getDiagnosis5CodeVersion(),
-            claimGroup.getDiagnosis6Code(),
-            claimGroup.getDiagnosis6CodeVersion(),
-            claimGroup.getDiagnosis7Code(),
-            claimGroup.getDiagnosis7CodeVersion(),
-            claimGroup.getDiagnosis8Code(),
-            claimGroup.getDiagnosis8CodeVersion(),
-            claimGroup.getDiagnosis9Code(),
-            claimGroup.getDiagnosis9CodeVersion(),
-            claimGroup.getDiagnosis10Code(),
-            claimGroup.getDiagnosis10CodeVersion(),
-            claimGroup.getDiagnosis11Code(),
-            claimGroup.getDiagnosis11CodeVersion(),
-            claimGroup.getDiagnosis12Code(),
-            claimGroup.getDiagnosis12CodeVersion()))
+    for (Diagnosis diagnosis : extractDiagnoses(claimGroup))
       TransformerUtils.addDiagnosisCode(eob, diagnosis);
 
     for (DMEClaimLine claimLine : claimGroup.getLines()) {
@@ -214,8 +190,8 @@ final class DMEClaimTransformer {
           claimGroup.getClaimId(),
           claimLine.getServiceCount(),
           claimLine.getPlaceOfServiceCode(),
-          claimLine.getFirstExpenseDate(),
-          claimLine.getLastExpenseDate(),
+          CompactValues.toEpochDay(claimLine.getFirstExpenseDate()),
+          CompactValues.toEpochDay(claimLine.getLastExpenseDate()),
           claimLine.getBeneficiaryPaymentAmount(),
           claimLine.getProviderPaymentAmount(),
           claimLine.getBeneficiaryPartBDeductAmount(),
@@ -264,4 +240,44 @@ final class DMEClaimTransformer {
     }
     return eob;
   }
+
+  /**
+   * @param claimGroup the {@link DMEClaim} to extract the {@link Diagnosis}es from
+   * @return the {@link Diagnosis}es that can be extracted from the specified {@link DMEClaim}
+   */
+  static List<Diagnosis> extractDiagnoses(DMEClaim claimGroup) {
+    List<Diagnosis> diagnoses = new ArrayList<>();
+
+    for (Diagnosis diagnosis :
+        TransformerUtils.extractDiagnoses1Thru12(
+            claimGroup.getDiagnosisPrincipalCode(),
+            claimGroup.getDiagnosisPrincipalCodeVersion(),
+            claimGroup.getDiagnosis1Code(),
+            claimGroup.getDiagnosis1CodeVersion(),
+            claimGroup.getDiagnosis2Code(),
+            claimGroup.getDiagnosis2CodeVersion(),
+            claimGroup.getDiagnosis3Code(),
+            claimGroup.getDiagnosis3CodeVersion(),
+            claimGroup.getDiagnosis4Code(),
+            claimGroup.getDiagnosis4CodeVersion(),
+            claimGroup.getDiagnosis5Code(),
+            claimGroup.getDiagnosis5CodeVersion(),
+            claimGroup.getDiagnosis6Code(),
+            claimGroup.getDiagnosis6CodeVersion(),
+            claimGroup.getDiagnosis7Code(),
+            claimGroup.getDiagnosis7CodeVersion(),
+            claimGroup.getDiagnosis8Code(),
+            claimGroup.getDiagnosis8CodeVersion(),
+            claimGroup.getDiagnosis9Code(),
+            claimGroup.getDiagnosis9CodeVersion(),
+            claimGroup.getDiagnosis10Code(),
+            claimGroup.getDiagnosis10CodeVersion(),
+            claimGroup.getDiagnosis11Code(),
+            claimGroup.getDiagnosis11CodeVersion(),
+            claimGroup.getDiagnosis12Code(),
+            claimGroup.getDiagnosis12CodeVersion()))
+      diagnoses.add(diagnosis);
+
+    return diagnoses;
+  }
 }
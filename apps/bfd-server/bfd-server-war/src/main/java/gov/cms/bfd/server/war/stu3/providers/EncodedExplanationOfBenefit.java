@@ -0,0 +1,44 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.annotation.ResourceDef;
+import gov.cms.bfd.server.war.StreamingBundleInterceptor;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+
+/**
+ * An {@link ExplanationOfBenefit} that has already been encoded as FHIR JSON (e.g. one loaded from
+ * the {@link ClaimFhirDocumentStore}), and so doesn't actually have any of its elements populated.
+ * These are only ever handed out as {@link StreamingBundle} entries, which {@link
+ * StreamingBundleInterceptor} writes out as-is for JSON responses, and otherwise {@link #decode()}s
+ * first.
+ */
+@ResourceDef(
+    name = "ExplanationOfBenefit",
+    profile = "http://hl7.org/fhir/Profile/ExplanationOfBenefit")
+public final class EncodedExplanationOfBenefit extends ExplanationOfBenefit {
+  private static final long serialVersionUID = 1L;
+
+  /** Shared, as {@link FhirContext}s are expensive to create (but the parsers are not). */
+  private static final FhirContext FHIR_CONTEXT = FhirContext.forDstu3();
+
+  private final String json;
+
+  /**
+   * Constructs a new {@link EncodedExplanationOfBenefit}.
+   *
+   * @param json the value to use for {@link #getJson()}
+   */
+  public EncodedExplanationOfBenefit(String json) {
+    this.json = json;
+  }
+
+  /** @return the (non-pretty-printed) FHIR JSON encoding of this {@link ExplanationOfBenefit} */
+  public String getJson() {
+    return json;
+  }
+
+  /** @return a regular {@link ExplanationOfBenefit}, parsed from {@link #getJson()} */
+  public ExplanationOfBenefit decode() {
+    return FHIR_CONTEXT.newJsonParser().parseResource(ExplanationOfBenefit.class, json);
+  }
+}
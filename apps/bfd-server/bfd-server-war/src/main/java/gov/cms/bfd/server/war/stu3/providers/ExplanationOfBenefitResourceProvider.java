@@ -7,36 +7,73 @@ import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
 import ca.uhn.fhir.rest.param.ReferenceParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
 import ca.uhn.fhir.rest.param.TokenOrListParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.BeneficiaryClaimIndex;
+import gov.cms.bfd.model.rif.BeneficiaryClaimIndex_;
+import gov.cms.bfd.model.rif.RifFileType;
+import gov.cms.bfd.server.war.QueryLoggingListener;
+import gov.cms.bfd.server.war.QueryLoggingListener.QueryType;
+import gov.cms.bfd.server.war.SpringConfiguration;
+import java.lang.reflect.Field;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnit;
+import javax.persistence.Table;
+import javax.persistence.Tuple;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.PluralAttribute;
+import org.hibernate.Hibernate;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
 import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Resource;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
@@ -45,6 +82,16 @@ import org.springframework.stereotype.Component;
  */
 @Component
 public final class ExplanationOfBenefitResourceProvider implements IResourceProvider {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(ExplanationOfBenefitResourceProvider.class);
+
+  /**
+   * The maximum number of beneficiaries that can be searched for at once, via {@link
+   * #findByPatient(ReferenceOrListParam, TokenAndListParam, String, String, DateRangeParam, String,
+   * RequestDetails)}. This keeps the <code>IN</code> lists in each claim type's query (and the
+   * responses) to a sane size.
+   */
+  static final int MAX_PATIENTS_PER_SEARCH = 500;
 
   /**
    * A {@link Pattern} that will match the {@link ExplanationOfBenefit#getId()}s used in this
@@ -52,9 +99,64 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
    */
   private static final Pattern EOB_ID_PATTERN = Pattern.compile("(\\p{Alpha}+)-(\\p{Alnum}+)");
 
+  /**
+   * The number of claims/events that {@link #findByPatientStreaming(String, Set, boolean,
+   * DateRangeParam, boolean)} loads from the database at a time.
+   */
+  static final int STREAMING_CHUNK_SIZE = 100;
+
+  /**
+   * Sorts claim/event IDs (as {@link ClaimType} and {@link ClaimType#getEntityIdAttribute()} value
+   * pairs) in the same order as {@link #compareByClaimIdThenClaimType(IBaseResource,
+   * IBaseResource)}. This has to be done in Java: the database's collation may not agree.
+   */
+  private static final Comparator<Map.Entry<ClaimType, Object>> CLAIM_ID_ORDER =
+      Comparator.comparing((Map.Entry<ClaimType, Object> c) -> String.valueOf(c.getValue()))
+          .thenComparing(Map.Entry::getKey);
+
+  /**
+   * The maximum number of per-{@link ClaimType} ID queries that {@link
+   * #findClaimIdsByPatient(String, Set, DateRangeParam)} will run concurrently, across all
+   * requests. Once this many are running, further queries are just run on the requesting threads,
+   * so that the ID queries can't take more than their share of the database connection pool.
+   */
+  static final int ID_QUERY_THREADS = 16;
+
+  /**
+   * The SQL used to check the progress of the pipeline's backfill of the {@link
+   * BeneficiaryClaimIndex} table, which it tracks in one <code>FixupProgress</code> row per
+   * partition of each claim table, named <code>"&lt;table&gt;.claimIndex#&lt;partition&gt;"
+   * </code> (see <code>ClaimIndexFixup</code> in the pipeline).
+   */
+  private static final String SQL_CLAIM_INDEX_PROGRESS =
+      "select \"fixupName\", \"completed\" from \"FixupProgress\""
+          + " where \"fixupName\" like '%.claimIndex#%'";
+
+  /**
+   * The minimum number of milliseconds to wait between checks of {@link #SQL_CLAIM_INDEX_PROGRESS},
+   * until the backfill is found to be complete (after which it's never checked again).
+   */
+  static final long CLAIM_INDEX_CHECK_MILLISECONDS = 60 * 1000;
+
   private EntityManager entityManager;
+  private EntityManagerFactory entityManagerFactory;
   private MetricRegistry metricRegistry;
   private SamhsaMatcher samhsaMatcher;
+  private ResourceCache resourceCache;
+  private ClaimFhirDocumentStore claimFhirDocumentStore;
+  private LinesFetchMode linesFetchMode = LinesFetchMode.JOIN;
+  private boolean streamingEnabled = false;
+  private boolean lazyPagingEnabled = false;
+  private boolean claimIndexEnabled = false;
+
+  /** Whether the {@link BeneficiaryClaimIndex} backfill has been found to be complete. */
+  private volatile boolean claimIndexBackfilled = false;
+
+  /** When {@link #isClaimIndexUsable()} should next check the backfill's progress. */
+  private volatile long nextClaimIndexCheck = 0;
+
+  /** Runs the per-{@link ClaimType} ID queries concurrently, and is created on first use. */
+  private ExecutorService idQueryExecutor;
 
   /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
   @PersistenceContext
@@ -62,6 +164,54 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
     this.entityManager = entityManager;
   }
 
+  /**
+   * @param entityManagerFactory the JPA {@link EntityManagerFactory} for the application's
+   *     database, which is used to create {@link EntityManager}s that span multiple queries
+   */
+  @PersistenceUnit
+  public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+    this.entityManagerFactory = entityManagerFactory;
+  }
+
+  /**
+   * @param linesFetchModeText the {@link LinesFetchMode#name()} of the {@link LinesFetchMode} to
+   *     use when searching for claims
+   */
+  @Value("${" + SpringConfiguration.PROP_EOB_LINES_FETCH_MODE + ":JOIN}")
+  public void setLinesFetchMode(String linesFetchModeText) {
+    this.linesFetchMode = LinesFetchMode.valueOf(linesFetchModeText.trim().toUpperCase());
+  }
+
+  /**
+   * @param streamingEnabledText <code>"true"</code> if unpaged searches should return {@link
+   *     StreamingBundle}s, which are transformed and written out one entry at a time
+   */
+  @Value("${" + SpringConfiguration.PROP_EOB_STREAMING_ENABLED + ":false}")
+  public void setStreamingEnabled(String streamingEnabledText) {
+    this.streamingEnabled = Boolean.parseBoolean(streamingEnabledText.trim());
+  }
+
+  /**
+   * @param lazyPagingEnabledText <code>"true"</code> if paged searches should only load and
+   *     transform the claims on the requested page, rather than all of the matching claims
+   */
+  @Value("${" + SpringConfiguration.PROP_EOB_PAGING_LAZY + ":false}")
+  public void setLazyPagingEnabled(String lazyPagingEnabledText) {
+    this.lazyPagingEnabled = Boolean.parseBoolean(lazyPagingEnabledText.trim());
+  }
+
+  /**
+   * @param claimIndexEnabledText <code>"true"</code> if lazily-paged searches should find and count
+   *     the matching claims/events via the {@link BeneficiaryClaimIndex} table, rather than by
+   *     querying each claim table (though it's still only used once the pipeline has finished
+   *     populating that table for any claims/events loaded before it was added: see {@link
+   *     #isClaimIndexUsable()})
+   */
+  @Value("${" + SpringConfiguration.PROP_EOB_CLAIM_INDEX_ENABLED + ":false}")
+  public void setClaimIndexEnabled(String claimIndexEnabledText) {
+    this.claimIndexEnabled = Boolean.parseBoolean(claimIndexEnabledText.trim());
+  }
+
   /** @param metricRegistry the {@link MetricRegistry} to use */
   @Inject
   public void setMetricRegistry(MetricRegistry metricRegistry) {
@@ -74,6 +224,18 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
     this.samhsaMatcher = samhsaMatcher;
   }
 
+  /** @param resourceCache the {@link ResourceCache} to use */
+  @Inject
+  public void setResourceCache(ResourceCache resourceCache) {
+    this.resourceCache = resourceCache;
+  }
+
+  /** @param claimFhirDocumentStore the {@link ClaimFhirDocumentStore} to use */
+  @Inject
+  public void setClaimFhirDocumentStore(ClaimFhirDocumentStore claimFhirDocumentStore) {
+    this.claimFhirDocumentStore = claimFhirDocumentStore;
+  }
+
   /** @see ca.uhn.fhir.rest.server.IResourceProvider#getResourceType() */
   @Override
   public Class<? extends IBaseResource> getResourceType() {
@@ -114,6 +276,11 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
     Root root = criteria.from(entityClass);
     eobIdType.get().getEntityLazyAttributes().stream().forEach(a -> root.fetch(a));
     criteria.select(root);
+    /*
+     * EOB IDs don't include the beneficiary, so (unlike the searches) this can't narrow things down
+     * to one partition if the claim tables have been partitioned. Instead, it looks the claim/event
+     * up in each partition's claim ID index, which is one index probe per partition.
+     */
     criteria.where(
         builder.equal(root.get(eobIdType.get().getEntityIdAttribute()), eobIdClaimIdText));
 
@@ -123,6 +290,7 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
         metricRegistry
             .timer(MetricRegistry.name(getClass().getSimpleName(), "query", "eob_by_id"))
             .time();
+    QueryLoggingListener.setQueryTag(getQueryType(eobIdType.get()));
     try {
       claimEntity = entityManager.createQuery(criteria).getSingleResult();
     } catch (NoResultException e) {
@@ -141,16 +309,26 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
    * Adds support for the FHIR "search" operation for {@link ExplanationOfBenefit}s, allowing users
    * to search by {@link ExplanationOfBenefit#getPatient()}.
    *
+   * <p>Multiple patients can be searched for at once (e.g. <code>patient=123,456</code>), up to
+   * {@link #MAX_PATIENTS_PER_SEARCH}. Such batch searches run just one query per claim type (rather
+   * than one per claim type per patient), and their results are grouped by patient, in the order
+   * that the patients were specified in.
+   *
    * <p>The {@link Search} annotation indicates that this method supports the search operation.
    * There may be many different methods annotated with this {@link Search} annotation, to support
    * many different search criteria.
    *
-   * @param patient a {@link ReferenceParam} for the {@link ExplanationOfBenefit#getPatient()} to
-   *     try and find matches for {@link ExplanationOfBenefit}s
+   * @param patient a {@link ReferenceOrListParam} for the {@link
+   *     ExplanationOfBenefit#getPatient()}(s) to try and find matches for {@link
+   *     ExplanationOfBenefit}s
    * @param startIndex an {@link OptionalParam} for the startIndex (or offset) used to determine
    *     pagination
    * @param excludeSamhsa an {@link OptionalParam} that, if <code>"true"</code>, will use {@link
    *     SamhsaMatcher} to filter out all SAMHSA-related claims from the results
+   * @param lastUpdated an {@link OptionalParam} that, if specified, restricts the results to just
+   *     those claims that were loaded or updated within the specified range
+   * @param total an {@link OptionalParam} that, if <code>"none"</code>, will leave the total (and
+   *     the "last" paging link) out of the results
    * @param requestDetails a {@link RequestDetails} containing the details of the request URL, used
    *     to parse out pagination values
    * @return Returns a {@link Bundle} of {@link ExplanationOfBenefit}s, which may contain multiple
@@ -158,20 +336,82 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
    */
   @Search
   public Bundle findByPatient(
-      @RequiredParam(name = ExplanationOfBenefit.SP_PATIENT) ReferenceParam patient,
+      @RequiredParam(name = ExplanationOfBenefit.SP_PATIENT) ReferenceOrListParam patient,
       @OptionalParam(name = "type") TokenAndListParam type,
       @OptionalParam(name = "startIndex") String startIndex,
       @OptionalParam(name = "excludeSAMHSA") String excludeSamhsa,
+      @OptionalParam(name = "_lastUpdated") DateRangeParam lastUpdated,
+      @OptionalParam(name = PagingArguments.PARAM_TOTAL) String total,
       RequestDetails requestDetails) {
     /*
-     * startIndex is an optional parameter here because it must be declared in the
-     * event it is passed in. However, it is not being used here because it is also
-     * contained within requestDetails and parsed out along with other parameters
-     * later.
+     * startIndex (and _total) are optional parameters here because they must be
+     * declared in the event they are passed in. However, they are not being used
+     * here because they are also contained within requestDetails and parsed out
+     * along with other parameters later.
      */
 
-    String beneficiaryId = patient.getIdPart();
+    List<String> beneficiaryIds =
+        patient.getValuesAsQueryTokens().stream()
+            .map(ReferenceParam::getIdPart)
+            .distinct()
+            .collect(Collectors.toList());
+    if (beneficiaryIds.size() > MAX_PATIENTS_PER_SEARCH)
+      throw new InvalidRequestException(
+          String.format(
+              "Unsupported query parameter value: at most %d '%s' values are supported.",
+              MAX_PATIENTS_PER_SEARCH, ExplanationOfBenefit.SP_PATIENT));
     Set<ClaimType> types = parseTypeParam(type);
+    boolean filterSamhsa = Boolean.parseBoolean(excludeSamhsa);
+    PagingArguments pagingArgs = new PagingArguments(requestDetails);
+
+    return findByPatient(beneficiaryIds, types, filterSamhsa, lastUpdated, pagingArgs);
+  }
+
+  /**
+   * Implements {@link #findByPatient(ReferenceOrListParam, TokenAndListParam, String, String,
+   * DateRangeParam, String, RequestDetails)}, once its parameters have been parsed.
+   *
+   * @param beneficiaryIds the {@link Beneficiary#getBeneficiaryId()}s to filter by
+   * @param types the {@link ClaimType}s to search for
+   * @param filterSamhsa <code>true</code> if all SAMHSA-related claims should be filtered out
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @param pagingArgs the {@link PagingArguments} for the request
+   * @return a {@link Bundle} of the matching {@link ExplanationOfBenefit}s
+   */
+  Bundle findByPatient(
+      List<String> beneficiaryIds,
+      Set<ClaimType> types,
+      boolean filterSamhsa,
+      DateRangeParam lastUpdated,
+      PagingArguments pagingArgs) {
+    if (beneficiaryIds.size() > 1) {
+      List<IBaseResource> eobs =
+          findEobsByPatients(beneficiaryIds, types, filterSamhsa, lastUpdated);
+      return TransformerUtils.createBundle(
+          pagingArgs,
+          "/ExplanationOfBenefit?",
+          ExplanationOfBenefit.SP_PATIENT,
+          String.join(",", beneficiaryIds),
+          lastUpdated,
+          eobs);
+    }
+    String beneficiaryId = beneficiaryIds.get(0);
+
+    /*
+     * Paged responses are already bounded in size, so only unpaged ones (which, for some
+     * beneficiaries, can run to tens of megabytes) are worth streaming.
+     */
+    if (streamingEnabled && !pagingArgs.isPagingRequested())
+      return findByPatientStreaming(
+          beneficiaryId, types, filterSamhsa, lastUpdated, pagingArgs.isTotalRequested());
+
+    /*
+     * Paged responses only need the claims on the requested page, which can be found without
+     * loading and transforming all of the others. SAMHSA filtering can only be applied to the full
+     * claims, though, so those searches still have to take the slow path.
+     */
+    if (lazyPagingEnabled && pagingArgs.isPagingRequested() && !filterSamhsa)
+      return findByPatientLazily(beneficiaryId, types, lastUpdated, pagingArgs);
 
     List<IBaseResource> eobs = new ArrayList<IBaseResource>();
     /*
@@ -180,49 +420,256 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
      * also not so inefficient that it's worth fixing.
      */
     if (types.contains(ClaimType.CARRIER))
-      eobs.addAll(
-          transformToEobs(
-              ClaimType.CARRIER, findClaimTypeByPatient(ClaimType.CARRIER, beneficiaryId)));
+      eobs.addAll(findEobsByPatient(ClaimType.CARRIER, beneficiaryId, filterSamhsa, lastUpdated));
     if (types.contains(ClaimType.DME))
-      eobs.addAll(
-          transformToEobs(ClaimType.DME, findClaimTypeByPatient(ClaimType.DME, beneficiaryId)));
+      eobs.addAll(findEobsByPatient(ClaimType.DME, beneficiaryId, filterSamhsa, lastUpdated));
     if (types.contains(ClaimType.HHA))
-      eobs.addAll(
-          transformToEobs(ClaimType.HHA, findClaimTypeByPatient(ClaimType.HHA, beneficiaryId)));
+      eobs.addAll(findEobsByPatient(ClaimType.HHA, beneficiaryId, filterSamhsa, lastUpdated));
     if (types.contains(ClaimType.HOSPICE))
-      eobs.addAll(
-          transformToEobs(
-              ClaimType.HOSPICE, findClaimTypeByPatient(ClaimType.HOSPICE, beneficiaryId)));
+      eobs.addAll(findEobsByPatient(ClaimType.HOSPICE, beneficiaryId, filterSamhsa, lastUpdated));
     if (types.contains(ClaimType.INPATIENT))
-      eobs.addAll(
-          transformToEobs(
-              ClaimType.INPATIENT, findClaimTypeByPatient(ClaimType.INPATIENT, beneficiaryId)));
+      eobs.addAll(findEobsByPatient(ClaimType.INPATIENT, beneficiaryId, filterSamhsa, lastUpdated));
     if (types.contains(ClaimType.OUTPATIENT))
       eobs.addAll(
-          transformToEobs(
-              ClaimType.OUTPATIENT, findClaimTypeByPatient(ClaimType.OUTPATIENT, beneficiaryId)));
+          findEobsByPatient(ClaimType.OUTPATIENT, beneficiaryId, filterSamhsa, lastUpdated));
     if (types.contains(ClaimType.PDE))
-      eobs.addAll(
-          transformToEobs(ClaimType.PDE, findClaimTypeByPatient(ClaimType.PDE, beneficiaryId)));
+      eobs.addAll(findEobsByPatient(ClaimType.PDE, beneficiaryId, filterSamhsa, lastUpdated));
     if (types.contains(ClaimType.SNF))
-      eobs.addAll(
-          transformToEobs(ClaimType.SNF, findClaimTypeByPatient(ClaimType.SNF, beneficiaryId)));
-
-    if (Boolean.parseBoolean(excludeSamhsa) == true) filterSamhsa(eobs);
+      eobs.addAll(findEobsByPatient(ClaimType.SNF, beneficiaryId, filterSamhsa, lastUpdated));
 
     eobs.sort(ExplanationOfBenefitResourceProvider::compareByClaimIdThenClaimType);
 
-    PagingArguments pagingArgs = new PagingArguments(requestDetails);
     Bundle bundle =
         TransformerUtils.createBundle(
             pagingArgs,
             "/ExplanationOfBenefit?",
             ExplanationOfBenefit.SP_PATIENT,
             beneficiaryId,
+            lastUpdated,
             eobs);
     return bundle;
   }
 
+  /**
+   * Implements the unpaged variant of {@link #findByPatient(ReferenceOrListParam,
+   * TokenAndListParam, String, String, DateRangeParam, String, RequestDetails)} for when {@link
+   * #streamingEnabled} is set. Only the IDs of the matching claims/events are queried up front.
+   * The claims/events themselves are then loaded {@link #STREAMING_CHUNK_SIZE} at a time (by a
+   * {@link ClaimStreamer}), and each one is transformed into an {@link ExplanationOfBenefit}, as
+   * the response is written out by {@link gov.cms.bfd.server.war.StreamingBundleInterceptor}. Only
+   * one chunk's worth of entities and resources is ever in memory. This bypasses the {@link
+   * ResourceCache}.
+   *
+   * <p>SAMHSA filtering needs the full claims/events. If a total is requested, the SAMHSA-related
+   * ones have to be found before anything is written, so they're all read an extra time, a chunk at
+   * a time. Otherwise, they're just skipped as they're written out.
+   *
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param types the {@link ClaimType}s to search for
+   * @param excludeSamhsa <code>true</code> if all SAMHSA-related claims should be filtered out
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @param totalRequested <code>false</code> if the client asked for the total to be left out
+   * @return a {@link StreamingBundle} for the matching {@link ExplanationOfBenefit}s
+   */
+  private Bundle findByPatientStreaming(
+      String beneficiaryId,
+      Set<ClaimType> types,
+      boolean excludeSamhsa,
+      DateRangeParam lastUpdated,
+      boolean totalRequested) {
+    List<Map.Entry<ClaimType, Object>> claimIds =
+        findClaimIdsByPatient(beneficiaryId, types, lastUpdated);
+    claimIds.sort(CLAIM_ID_ORDER);
+
+    boolean excludeSamhsaWhileStreaming = excludeSamhsa;
+    if (excludeSamhsa && totalRequested) {
+      List<Map.Entry<ClaimType, Object>> nonSamhsaClaimIds = new ArrayList<>(claimIds.size());
+      for (int start = 0; start < claimIds.size(); start += STREAMING_CHUNK_SIZE) {
+        List<Map.Entry<ClaimType, Object>> chunkClaimIds =
+            claimIds.subList(start, Math.min(start + STREAMING_CHUNK_SIZE, claimIds.size()));
+        Map<Map.Entry<ClaimType, Object>, Object> chunkClaims =
+            findClaimsByIds(beneficiaryId, chunkClaimIds);
+        for (Map.Entry<ClaimType, Object> claimId : chunkClaimIds) {
+          Object claim = chunkClaims.get(claimId);
+          if (claim != null && !samhsaMatcher.testClaim(claim)) nonSamhsaClaimIds.add(claimId);
+        }
+      }
+      claimIds = nonSamhsaClaimIds;
+      excludeSamhsaWhileStreaming = false;
+    }
+
+    ClaimStreamer claimStreamer =
+        new ClaimStreamer(beneficiaryId, claimIds, excludeSamhsaWhileStreaming);
+    List<Supplier<? extends Resource>> eobSuppliers = new ArrayList<>(claimIds.size());
+    for (int i = 0; i < claimIds.size(); i++) {
+      int index = i;
+      eobSuppliers.add(() -> claimStreamer.transform(index));
+    }
+
+    StreamingBundle bundle = new StreamingBundle(eobSuppliers);
+    if (totalRequested) bundle.setTotal(eobSuppliers.size());
+    return bundle;
+  }
+
+  /**
+   * Implements the paged variant of {@link #findByPatient(ReferenceOrListParam, TokenAndListParam,
+   * String, String, DateRangeParam, String, RequestDetails)} for when {@link #lazyPagingEnabled} is
+   * set. Rather than loading, transforming, and sorting every matching claim/event just to return
+   * one page of them, this:
+   *
+   * <ol>
+   *   <li>Queries just the IDs of the matching claims/events, which (without a <code>_lastUpdated
+   *       </code> filter) Postgres can answer straight from the <code>(beneficiaryId, claimId)
+   *       </code> indexes. This also provides the total. If {@link #isClaimIndexUsable()}, this
+   *       is a single query against the {@link BeneficiaryClaimIndex} table. Otherwise, it's one
+   *       query per claim table, which are run concurrently.
+   *   <li>Sorts those IDs in the same order as {@link #compareByClaimIdThenClaimType(IBaseResource,
+   *       IBaseResource)}, which has to be done in Java: the database's collation may not agree.
+   *   <li>Loads and transforms only the claims/events with the IDs on the requested page, skipping
+   *       any that already have a document in the {@link ClaimFhirDocumentStore} (and queueing
+   *       up documents to be stored in the background for those that don't).
+   * </ol>
+   *
+   * <p>This bypasses the {@link ResourceCache}, and doesn't support SAMHSA filtering.
+   *
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param types the {@link ClaimType}s to search for
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @param pagingArgs the {@link PagingArguments} for the request, which must be paged
+   * @return a {@link Bundle} with the requested page of matching {@link ExplanationOfBenefit}s
+   */
+  private Bundle findByPatientLazily(
+      String beneficiaryId,
+      Set<ClaimType> types,
+      DateRangeParam lastUpdated,
+      PagingArguments pagingArgs) {
+    List<Map.Entry<ClaimType, Object>> claimIds;
+    if (isClaimIndexUsable()) {
+      claimIds = findClaimIdsByPatientViaIndex(beneficiaryId, types, lastUpdated);
+    } else {
+      claimIds = findClaimIdsByPatient(beneficiaryId, types, lastUpdated);
+    }
+    claimIds.sort(CLAIM_ID_ORDER);
+
+    int startIndex = Math.min(pagingArgs.getStartIndex(), claimIds.size());
+    int endIndex = Math.min(startIndex + pagingArgs.getPageSize(), claimIds.size());
+    List<Map.Entry<ClaimType, Object>> pageClaimIds = claimIds.subList(startIndex, endIndex);
+
+    // Only the claims that don't already have a precomputed document need to be loaded.
+    boolean documentsEnabled = claimFhirDocumentStore != null && claimFhirDocumentStore.isEnabled();
+    Map<ClaimType, Map<Object, EncodedExplanationOfBenefit>> pageDocuments =
+        documentsEnabled ? claimFhirDocumentStore.find(pageClaimIds) : Collections.emptyMap();
+    Map<ClaimType, Map<Object, ExplanationOfBenefit>> pageEobs = new HashMap<>();
+    for (ClaimType claimType : ClaimType.values()) {
+      Map<Object, EncodedExplanationOfBenefit> claimTypeDocuments =
+          pageDocuments.getOrDefault(claimType, Collections.emptyMap());
+      List<Object> claimTypeIds =
+          pageClaimIds.stream()
+              .filter(c -> c.getKey() == claimType)
+              .map(Map.Entry::getValue)
+              .filter(c -> !claimTypeDocuments.containsKey(c))
+              .collect(Collectors.toList());
+      Map<Object, ExplanationOfBenefit> eobsById = new HashMap<>(claimTypeDocuments);
+      pageEobs.put(claimType, eobsById);
+      if (claimTypeIds.isEmpty()) continue;
+
+      List<Object> claims = findClaimsByIds(claimType, beneficiaryId, claimTypeIds);
+      List<ExplanationOfBenefit> claimEobs = transformToEobs(claimType, claims);
+      for (int i = 0; i < claims.size(); i++) {
+        Object claimId = readAttribute(claims.get(i), claimType.getEntityIdAttribute());
+        eobsById.put(claimId, claimEobs.get(i));
+      }
+      if (documentsEnabled) claimFhirDocumentStore.store(claimType, claims, claimEobs);
+    }
+
+    List<Resource> eobs = new ArrayList<>(pageClaimIds.size());
+    for (Map.Entry<ClaimType, Object> claimId : pageClaimIds) {
+      ExplanationOfBenefit eob =
+          pageEobs.getOrDefault(claimId.getKey(), Collections.emptyMap()).get(claimId.getValue());
+      /*
+       * The claim/event may have been deleted since its ID was queried, or (if the claim index is
+       * in use) the index may not have caught up with the pipeline yet. Leave it out, rather than
+       * returning an empty entry.
+       */
+      if (eob == null) {
+        metricRegistry
+            .meter(MetricRegistry.name(getClass().getSimpleName(), "lazy_paging", "missing_claims"))
+            .mark();
+        continue;
+      }
+      eobs.add(eob);
+    }
+
+    /*
+     * The precomputed documents can only be written out as-is by the StreamingBundleInterceptor,
+     * so the page has to be returned as a StreamingBundle when they're in use.
+     */
+    Bundle bundle;
+    if (documentsEnabled) {
+      List<Supplier<? extends Resource>> eobSuppliers = new ArrayList<>(eobs.size());
+      for (Resource eob : eobs) eobSuppliers.add(() -> eob);
+      bundle = new StreamingBundle(eobSuppliers);
+    } else {
+      bundle = TransformerUtils.addResourcesToBundle(new Bundle(), new ArrayList<>(eobs));
+    }
+    TransformerUtils.addPagingLinks(
+        pagingArgs,
+        bundle,
+        "/ExplanationOfBenefit?",
+        ExplanationOfBenefit.SP_PATIENT,
+        beneficiaryId,
+        lastUpdated,
+        claimIds.size());
+    if (pagingArgs.isTotalRequested()) bundle.setTotal(claimIds.size());
+    return bundle;
+  }
+
+  /**
+   * Implements the batch (multiple patient) variant of {@link #findByPatient(ReferenceOrListParam,
+   * TokenAndListParam, String, String, DateRangeParam, String, RequestDetails)}, which runs a
+   * single query for each {@link ClaimType}, no matter how many patients are being searched for.
+   * This bypasses the {@link ResourceCache}, as its entries are per-patient.
+   *
+   * @param beneficiaryIds the {@link Beneficiary#getBeneficiaryId()}s to filter by
+   * @param types the {@link ClaimType}s to search for
+   * @param excludeSamhsa <code>true</code> if all SAMHSA-related claims should be filtered out
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @return the matching {@link ExplanationOfBenefit}s, grouped by patient (in the same order as
+   *     the specified beneficiary IDs), and then sorted as per {@link
+   *     #compareByClaimIdThenClaimType(IBaseResource, IBaseResource)} within each patient
+   */
+  private List<IBaseResource> findEobsByPatients(
+      List<String> beneficiaryIds,
+      Set<ClaimType> types,
+      boolean excludeSamhsa,
+      DateRangeParam lastUpdated) {
+    List<Map.Entry<ClaimType, Object>> claims = new ArrayList<>();
+    for (ClaimType claimType : ClaimType.values()) {
+      if (!types.contains(claimType)) continue;
+      for (Object claim : findClaimTypeByPatients(claimType, beneficiaryIds, lastUpdated))
+        claims.add(new AbstractMap.SimpleImmutableEntry<>(claimType, claim));
+    }
+
+    if (excludeSamhsa) claims.removeIf(c -> samhsaMatcher.testClaim(c.getValue()));
+
+    Map<String, Integer> beneficiaryOrder = new HashMap<>();
+    for (String beneficiaryId : beneficiaryIds)
+      beneficiaryOrder.put(beneficiaryId, beneficiaryOrder.size());
+    claims.sort(
+        Comparator.comparing(
+                (Map.Entry<ClaimType, Object> c) ->
+                    beneficiaryOrder.get(
+                        readAttribute(
+                            c.getValue(), c.getKey().getEntityBeneficiaryIdAttribute())))
+            .thenComparing(
+                c -> String.valueOf(readAttribute(c.getValue(), c.getKey().getEntityIdAttribute())))
+            .thenComparing(Map.Entry::getKey));
+
+    return claims.stream()
+        .map(c -> c.getKey().getTransformer().apply(metricRegistry, c.getValue()))
+        .collect(Collectors.toList());
+  }
+
   /*
    * @param eob1 an {@link ExplanationOfBenefit} to be compared
    *
@@ -251,42 +698,525 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
   /**
    * @param claimType the {@link ClaimType} to find
    * @param patientId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param excludeSamhsa <code>true</code> if all SAMHSA-related claims should be filtered out
+   *     (before they're transformed, via {@link SamhsaMatcher#testClaim(Object)})
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @return the {@link ExplanationOfBenefit}s for the matching claim/event entities
+   */
+  private List<IBaseResource> findEobsByPatient(
+      ClaimType claimType, String patientId, boolean excludeSamhsa, DateRangeParam lastUpdated) {
+    return resourceCache.getAll(
+        String.format(
+            "ExplanationOfBenefit?%s=%s&type=%s%s%s",
+            ExplanationOfBenefit.SP_PATIENT,
+            patientId,
+            claimType.name().toLowerCase(),
+            excludeSamhsa ? "&excludeSAMHSA=true" : "",
+            TransformerUtils.createLastUpdatedCacheKey(lastUpdated)),
+        () -> {
+          List<Object> claims = findClaimTypeByPatient(claimType, patientId, lastUpdated);
+          if (excludeSamhsa)
+            claims =
+                claims.stream()
+                    .filter(c -> !samhsaMatcher.testClaim(c))
+                    .collect(Collectors.toList());
+          return transformToEobs(claimType, claims);
+        });
+  }
+
+  /**
+   * @param claimType the {@link ClaimType} to find
+   * @param patientId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
    * @return the matching claim/event entities
    */
+  <T> List<T> findClaimTypeByPatient(
+      ClaimType claimType, String patientId, DateRangeParam lastUpdated) {
+    return findClaimTypeByPatients(claimType, Collections.singletonList(patientId), lastUpdated);
+  }
+
+  /**
+   * @param claimType the {@link ClaimType} to find
+   * @param patientIds the {@link Beneficiary#getBeneficiaryId()}s to filter by
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @return the matching claim/event entities, for all of the specified patients
+   */
   @SuppressWarnings({"rawtypes", "unchecked"})
-  private <T> List<T> findClaimTypeByPatient(ClaimType claimType, String patientId) {
+  <T> List<T> findClaimTypeByPatients(
+      ClaimType claimType, List<String> patientIds, DateRangeParam lastUpdated) {
     CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
     CriteriaQuery criteria = criteriaBuilder.createQuery((Class) claimType.getEntityClass());
     Root root = criteria.from(claimType.getEntityClass());
-    claimType.getEntityLazyAttributes().stream().forEach(a -> root.fetch(a));
-    criteria.select(root).distinct(true);
+    if (linesFetchMode == LinesFetchMode.JOIN) {
+      claimType.getEntityLazyAttributes().stream().forEach(a -> root.fetch(a));
+      criteria.select(root).distinct(true);
+    } else {
+      criteria.select(root);
+    }
     criteria.where(
-        criteriaBuilder.equal(root.get(claimType.getEntityBeneficiaryIdAttribute()), patientId));
+        createPatientsPredicate(criteriaBuilder, root, claimType, patientIds, lastUpdated));
 
+    // Batch searches are recorded separately, as their latencies aren't comparable.
+    String queryId = patientIds.size() == 1 ? "eobs_by_bene_id" : "eobs_by_bene_ids";
+    String claimTypeQueryId = queryId + "." + claimType.name().toLowerCase();
     List claimEntities = null;
     Long eobsByBeneIdQueryNanoSeconds = null;
+    Timer.Context timerEobQuery =
+        metricRegistry
+            .timer(MetricRegistry.name(getClass().getSimpleName(), "query", claimTypeQueryId))
+            .time();
+    QueryLoggingListener.setQueryTag(getQueryType(claimType));
+    try {
+      if (linesFetchMode == LinesFetchMode.JOIN)
+        claimEntities = entityManager.createQuery(criteria).getResultList();
+      else claimEntities = findClaimsThenLines(claimType, criteria);
+    } finally {
+      eobsByBeneIdQueryNanoSeconds = timerEobQuery.stop();
+      TransformerUtils.recordQueryInMdc(
+          claimTypeQueryId,
+          eobsByBeneIdQueryNanoSeconds,
+          claimEntities == null ? 0 : claimEntities.size());
+    }
+
+    return claimEntities;
+  }
+
+  /**
+   * Runs {@link #findClaimIdsByPatient(ClaimType, String, DateRangeParam)} for each of the
+   * specified {@link ClaimType}s concurrently, as each is a separate (index-only) query against a
+   * separate table. The {@link MDC} entries recorded for each query are copied back onto the
+   * current thread, so that they still end up in the request's access log entry.
+   *
+   * @param patientId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param types the {@link ClaimType}s to search for
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @return the {@link ClaimType} and {@link ClaimType#getEntityIdAttribute()} value of each
+   *     matching claim/event, in no particular order
+   */
+  private List<Map.Entry<ClaimType, Object>> findClaimIdsByPatient(
+      String patientId, Set<ClaimType> types, DateRangeParam lastUpdated) {
+    Map<ClaimType, CompletableFuture<Map.Entry<List<Object>, Map<String, String>>>> futures =
+        new HashMap<>();
+    for (ClaimType claimType : ClaimType.values()) {
+      if (!types.contains(claimType)) continue;
+      futures.put(
+          claimType,
+          CompletableFuture.supplyAsync(
+              () -> {
+                // This may be run on the current thread, if all of the executor's threads are busy.
+                Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+                MDC.clear();
+                try {
+                  List<Object> claimIds = findClaimIdsByPatient(claimType, patientId, lastUpdated);
+                  return new AbstractMap.SimpleImmutableEntry<>(
+                      claimIds, MDC.getCopyOfContextMap());
+                } finally {
+                  if (previousMdc != null) MDC.setContextMap(previousMdc);
+                  else MDC.clear();
+                }
+              },
+              getIdQueryExecutor()));
+    }
+
+    List<Map.Entry<ClaimType, Object>> claimIds = new ArrayList<>();
+    for (ClaimType claimType : ClaimType.values()) {
+      if (!futures.containsKey(claimType)) continue;
+      Map.Entry<List<Object>, Map<String, String>> result;
+      try {
+        result = futures.get(claimType).join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+        throw e;
+      }
+      if (result.getValue() != null) result.getValue().forEach(MDC::put);
+      for (Object claimId : result.getKey())
+        claimIds.add(new AbstractMap.SimpleImmutableEntry<>(claimType, claimId));
+    }
+    return claimIds;
+  }
+
+  /**
+   * @return the executor that {@link #findClaimIdsByPatient(String, Set, DateRangeParam)} runs its
+   *     queries on, which runs them on the calling thread instead when all of its threads are busy
+   */
+  private synchronized ExecutorService getIdQueryExecutor() {
+    if (idQueryExecutor == null) {
+      AtomicInteger threadCount = new AtomicInteger(0);
+      idQueryExecutor =
+          new ThreadPoolExecutor(
+              0,
+              ID_QUERY_THREADS,
+              60L,
+              TimeUnit.SECONDS,
+              new SynchronousQueue<>(),
+              r -> {
+                Thread thread =
+                    new Thread(
+                        r, getClass().getSimpleName() + "-ids-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              },
+              new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    return idQueryExecutor;
+  }
+
+  /**
+   * @param claimType the {@link ClaimType} to find
+   * @param patientId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @return the {@link ClaimType#getEntityIdAttribute()} values of the matching claim/event
+   *     entities, in no particular order
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private List<Object> findClaimIdsByPatient(
+      ClaimType claimType, String patientId, DateRangeParam lastUpdated) {
+    CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+    CriteriaQuery criteria = criteriaBuilder.createQuery();
+    Root root = criteria.from(claimType.getEntityClass());
+    criteria.select(root.get(claimType.getEntityIdAttribute()));
+    criteria.where(
+        createPatientsPredicate(
+            criteriaBuilder, root, claimType, Collections.singletonList(patientId), lastUpdated));
+
+    String queryId = "eob_ids_by_bene_id." + claimType.name().toLowerCase();
+    List<Object> claimIds = null;
     Timer.Context timerEobQuery =
         metricRegistry
             .timer(
                 MetricRegistry.name(
-                    metricRegistry.getClass().getSimpleName(),
+                    getClass().getSimpleName(),
                     "query",
-                    "eobs_by_bene_id",
+                    "eob_ids_by_bene_id",
                     claimType.name().toLowerCase()))
             .time();
+    QueryLoggingListener.setQueryTag(getQueryType(claimType));
     try {
-      claimEntities = entityManager.createQuery(criteria).getResultList();
+      claimIds = entityManager.createQuery(criteria).getResultList();
     } finally {
-      eobsByBeneIdQueryNanoSeconds = timerEobQuery.stop();
       TransformerUtils.recordQueryInMdc(
-          String.format("eobs_by_bene_id.%s", claimType.name().toLowerCase()),
-          eobsByBeneIdQueryNanoSeconds,
-          claimEntities == null ? 0 : claimEntities.size());
+          queryId, timerEobQuery.stop(), claimIds == null ? 0 : claimIds.size());
     }
+    return claimIds;
+  }
+
+  /**
+   * Searches may only use the {@link BeneficiaryClaimIndex} table once {@link #claimIndexEnabled}
+   * is set <em>and</em> the pipeline has finished backfilling it for every claim table, as
+   * otherwise the searches would silently miss the older claims/events. Until then, the backfill's
+   * progress is checked (at most once every {@link #CLAIM_INDEX_CHECK_MILLISECONDS}), and each
+   * search that falls back to the per-table queries instead is counted in the <code>
+   * claim_index.fallbacks</code> meter.
+   *
+   * @return <code>true</code> if searches should find claims/events via the {@link
+   *     BeneficiaryClaimIndex} table, <code>false</code> if they should query each claim table
+   */
+  private boolean isClaimIndexUsable() {
+    if (!claimIndexEnabled) return false;
+    if (claimIndexBackfilled) return true;
+
+    long now = System.currentTimeMillis();
+    if (now >= nextClaimIndexCheck) {
+      nextClaimIndexCheck = now + CLAIM_INDEX_CHECK_MILLISECONDS;
+      claimIndexBackfilled = checkClaimIndexBackfilled();
+      if (claimIndexBackfilled) return true;
+    }
+
+    metricRegistry
+        .meter(MetricRegistry.name(getClass().getSimpleName(), "claim_index", "fallbacks"))
+        .mark();
+    return false;
+  }
+
+  /**
+   * @return <code>true</code> if the <code>FixupProgress</code> table shows that the {@link
+   *     BeneficiaryClaimIndex} backfill has been started and completed for every claim table,
+   *     <code>false</code> if not (or if that can't be determined)
+   */
+  private boolean checkClaimIndexBackfilled() {
+    List<?> progressRows;
+    try {
+      progressRows = entityManager.createNativeQuery(SQL_CLAIM_INDEX_PROGRESS).getResultList();
+    } catch (RuntimeException e) {
+      LOGGER.warn("Unable to check the claim index's backfill progress; not using it yet.", e);
+      return false;
+    }
+
+    Set<String> startedTables = new HashSet<>();
+    Set<String> incompleteTables = new HashSet<>();
+    for (Object progressRow : progressRows) {
+      Object[] columns = (Object[]) progressRow;
+      String tableName = String.valueOf(columns[0]);
+      tableName = tableName.substring(0, tableName.indexOf(".claimIndex#"));
+      startedTables.add(tableName);
+      if (!Boolean.TRUE.equals(columns[1])) incompleteTables.add(tableName);
+    }
+
+    List<String> pendingTables = new ArrayList<>();
+    for (ClaimType claimType : ClaimType.values()) {
+      String tableName =
+          claimType.getEntityClass().getAnnotation(Table.class).name().replace("`", "");
+      if (!startedTables.contains(tableName) || incompleteTables.contains(tableName))
+        pendingTables.add(tableName);
+    }
+
+    if (pendingTables.isEmpty()) {
+      LOGGER.info("Claim index backfill is complete; searches will now use the claim index.");
+      return true;
+    }
+    LOGGER.info(
+        "Claim index is enabled, but its backfill isn't complete for {}; searches will query each"
+            + " claim table instead, until it is.",
+        pendingTables);
+    return false;
+  }
+
+  /**
+   * @param patientId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param types the {@link ClaimType}s to search for
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @return the {@link ClaimType} and {@link ClaimType#getEntityIdAttribute()} value of each
+   *     matching claim/event, in no particular order, as found via the {@link
+   *     BeneficiaryClaimIndex} table
+   */
+  private List<Map.Entry<ClaimType, Object>> findClaimIdsByPatientViaIndex(
+      String patientId, Set<ClaimType> types, DateRangeParam lastUpdated) {
+    CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Tuple> criteria = criteriaBuilder.createTupleQuery();
+    Root<BeneficiaryClaimIndex> root = criteria.from(BeneficiaryClaimIndex.class);
+    criteria.multiselect(
+        root.get(BeneficiaryClaimIndex_.claimType), root.get(BeneficiaryClaimIndex_.claimId));
+
+    Predicate predicate =
+        criteriaBuilder.equal(root.get(BeneficiaryClaimIndex_.beneficiaryId), patientId);
+    if (types.size() < ClaimType.values().length)
+      predicate =
+          criteriaBuilder.and(
+              predicate,
+              root.get(BeneficiaryClaimIndex_.claimType)
+                  .in(
+                      types.stream()
+                          .map(t -> RifFileType.valueOf(t.name()))
+                          .collect(Collectors.toList())));
+    if (lastUpdated != null)
+      predicate =
+          criteriaBuilder.and(
+              predicate,
+              TransformerUtils.createLastUpdatedPredicate(
+                  criteriaBuilder, root.get(BeneficiaryClaimIndex_.lastUpdated), lastUpdated));
+    criteria.where(predicate);
+
+    String queryId = "eob_ids_by_bene_id.claim_index";
+    List<Tuple> results = null;
+    Timer.Context timerEobQuery =
+        metricRegistry
+            .timer(
+                MetricRegistry.name(
+                    getClass().getSimpleName(), "query", "eob_ids_by_bene_id", "claim_index"))
+            .time();
+    QueryLoggingListener.setQueryTag(QueryType.EOB_IDS_BY_BENE_ID_CLAIM_INDEX);
+    try {
+      results = entityManager.createQuery(criteria).getResultList();
+    } finally {
+      TransformerUtils.recordQueryInMdc(
+          queryId, timerEobQuery.stop(), results == null ? 0 : results.size());
+    }
+
+    List<Map.Entry<ClaimType, Object>> claimIds = new ArrayList<>(results.size());
+    for (Tuple result : results)
+      claimIds.add(
+          new AbstractMap.SimpleImmutableEntry<>(
+              ClaimType.valueOf(result.get(0, RifFileType.class).name()), result.get(1)));
+    return claimIds;
+  }
+
+  /**
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} that the claims/events belong
+   *     to
+   * @param claimIds the {@link ClaimType} and {@link ClaimType#getEntityIdAttribute()} value of
+   *     each claim/event to find
+   * @return the matching claim/event entities, keyed by their {@link ClaimType} and ID (in the
+   *     same form as the specified IDs), which will not include any that couldn't be found
+   */
+  private Map<Map.Entry<ClaimType, Object>, Object> findClaimsByIds(
+      String beneficiaryId, List<Map.Entry<ClaimType, Object>> claimIds) {
+    Map<Map.Entry<ClaimType, Object>, Object> claims = new HashMap<>(claimIds.size());
+    for (ClaimType claimType : ClaimType.values()) {
+      List<Object> claimTypeIds =
+          claimIds.stream()
+              .filter(c -> c.getKey() == claimType)
+              .map(Map.Entry::getValue)
+              .collect(Collectors.toList());
+      if (claimTypeIds.isEmpty()) continue;
+
+      for (Object claim : findClaimsByIds(claimType, beneficiaryId, claimTypeIds))
+        claims.put(
+            new AbstractMap.SimpleImmutableEntry<>(
+                claimType, readAttribute(claim, claimType.getEntityIdAttribute())),
+            claim);
+    }
+    return claims;
+  }
+
+  /**
+   * Finds the specified claims/events. These queries also filter by the beneficiary that they
+   * belong to, which is redundant with their IDs, but lets PostgreSQL search just the one partition
+   * of the claim tables when they've been partitioned (see <code>ClaimTablePartitioner</code>),
+   * rather than every one of them.
+   *
+   * @param claimType the {@link ClaimType} to find
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} that the claims/events belong
+   *     to
+   * @param claimIds the {@link ClaimType#getEntityIdAttribute()} values to find
+   * @return the matching claim/event entities, with all of their {@link
+   *     ClaimType#getEntityLazyAttributes()} loaded, in no particular order
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private List<Object> findClaimsByIds(
+      ClaimType claimType, String beneficiaryId, List<Object> claimIds) {
+    CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+    CriteriaQuery criteria = criteriaBuilder.createQuery((Class) claimType.getEntityClass());
+    Root root = criteria.from(claimType.getEntityClass());
+    claimType.getEntityLazyAttributes().stream().forEach(a -> root.fetch(a));
+    criteria.select(root).distinct(true);
+    criteria.where(
+        criteriaBuilder.equal(
+            root.get(claimType.getEntityBeneficiaryIdAttribute().getName()), beneficiaryId),
+        root.get(claimType.getEntityIdAttribute()).in(claimIds));
 
+    String queryId = "eobs_by_ids." + claimType.name().toLowerCase();
+    List<Object> claimEntities = null;
+    Timer.Context timerEobQuery =
+        metricRegistry
+            .timer(
+                MetricRegistry.name(
+                    getClass().getSimpleName(),
+                    "query",
+                    "eobs_by_ids",
+                    claimType.name().toLowerCase()))
+            .time();
+    QueryLoggingListener.setQueryTag(getQueryType(claimType));
+    try {
+      claimEntities = entityManager.createQuery(criteria).getResultList();
+    } finally {
+      TransformerUtils.recordQueryInMdc(
+          queryId, timerEobQuery.stop(), claimEntities == null ? 0 : claimEntities.size());
+    }
     return claimEntities;
   }
 
+  /**
+   * @param claimType the {@link ClaimType} being queried
+   * @return the {@link QueryType} to tag queries of the specified {@link ClaimType}'s table with,
+   *     which is the same one that {@link QueryLoggingListener} would classify them as from their
+   *     SQL
+   */
+  private static QueryType getQueryType(ClaimType claimType) {
+    switch (claimType) {
+      case CARRIER:
+        return QueryType.EOBS_BY_BENE_ID_CARRIER;
+      case DME:
+        return QueryType.EOBS_BY_BENE_ID_DME;
+      case HHA:
+        return QueryType.EOBS_BY_BENE_ID_HHA;
+      case HOSPICE:
+        return QueryType.EOBS_BY_BENE_ID_HOSPICE;
+      case INPATIENT:
+        return QueryType.EOBS_BY_BENE_ID_INPATIENT;
+      case OUTPATIENT:
+        return QueryType.EOBS_BY_BENE_ID_OUTPATIENT;
+      case PDE:
+        return QueryType.EOBS_BY_BENE_ID_PDE;
+      case SNF:
+        return QueryType.EOBS_BY_BENE_ID_SNF;
+      default:
+        throw new BadCodeMonkeyException();
+    }
+  }
+
+  /**
+   * @param criteriaBuilder the {@link CriteriaBuilder} being used to build the query
+   * @param root the query's {@link Root}, which must be for {@link ClaimType#getEntityClass()}
+   * @param claimType the {@link ClaimType} being queried
+   * @param patientIds the {@link Beneficiary#getBeneficiaryId()}s to filter by
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by, or <code>null</code>
+   * @return a {@link Predicate} that matches the specified patients' claims/events
+   */
+  private static Predicate createPatientsPredicate(
+      CriteriaBuilder criteriaBuilder,
+      Root<?> root,
+      ClaimType claimType,
+      List<String> patientIds,
+      DateRangeParam lastUpdated) {
+    Path<String> beneficiaryIdPath =
+        root.get(claimType.getEntityBeneficiaryIdAttribute().getName());
+    Predicate predicate =
+        patientIds.size() == 1
+            ? criteriaBuilder.equal(beneficiaryIdPath, patientIds.get(0))
+            : beneficiaryIdPath.in(patientIds);
+    if (lastUpdated != null)
+      predicate =
+          criteriaBuilder.and(
+              predicate,
+              TransformerUtils.createLastUpdatedPredicate(
+                  criteriaBuilder,
+                  root.get(claimType.getEntityLastUpdatedAttribute().getName()),
+                  lastUpdated));
+    return predicate;
+  }
+
+  /**
+   * Implements {@link LinesFetchMode#SUBSELECT} for {@link #findClaimTypeByPatients(ClaimType,
+   * List, DateRangeParam)}.
+   *
+   * @param claimType the {@link ClaimType} to find
+   * @param criteria the {@link CriteriaQuery} for the claim headers, which must not fetch-join
+   *     any of the {@link ClaimType#getEntityLazyAttributes()}
+   * @return the matching claim/event entities, with all of their {@link
+   *     ClaimType#getEntityLazyAttributes()} loaded
+   */
+  @SuppressWarnings("rawtypes")
+  private List findClaimsThenLines(ClaimType claimType, CriteriaQuery criteria) {
+    /*
+     * The shared EntityManager closes its session after each query, which would leave the
+     * claims detached before their lines could be loaded. Accordingly, both queries have to be
+     * run through the same (short-lived) EntityManager.
+     */
+    EntityManager claimsEntityManager = entityManagerFactory.createEntityManager();
+    try {
+      List claimEntities = claimsEntityManager.createQuery(criteria).getResultList();
+
+      /*
+       * The generated entities map their lines with Hibernate's SUBSELECT fetching, so
+       * initializing any one claim's lines will load the lines for all of the claims from the
+       * query above, via a single "... WHERE parentClaim IN (SELECT claimId ...)" query.
+       */
+      if (!claimEntities.isEmpty())
+        for (PluralAttribute<?, ?, ?> lazyAttribute : claimType.getEntityLazyAttributes())
+          Hibernate.initialize(readAttribute(claimEntities.get(0), lazyAttribute));
+
+      return claimEntities;
+    } finally {
+      claimsEntityManager.close();
+    }
+  }
+
+  /**
+   * @param entity the JPA entity to read the attribute's value from
+   * @param attribute the {@link Attribute} to read, which must be field-mapped
+   * @return the value of the specified attribute in the specified entity
+   */
+  static Object readAttribute(Object entity, Attribute<?, ?> attribute) {
+    if (!(attribute.getJavaMember() instanceof Field)) throw new BadCodeMonkeyException();
+    Field field = (Field) attribute.getJavaMember();
+    try {
+      field.setAccessible(true);
+      return field.get(entity);
+    } catch (IllegalAccessException e) {
+      throw new BadCodeMonkeyException(e);
+    }
+  }
+
   /**
    * @param claimType the {@link ClaimType} being transformed
    * @param claims the claims/events to transform
@@ -299,20 +1229,6 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
         .collect(Collectors.toList());
   }
 
-  /**
-   * Removes all SAMHSA-related claims from the specified {@link List} of {@link
-   * ExplanationOfBenefit} resources.
-   *
-   * @param eobs the {@link List} of {@link ExplanationOfBenefit} resources (i.e. claims) to filter
-   */
-  private void filterSamhsa(List<IBaseResource> eobs) {
-    ListIterator<IBaseResource> eobsIter = eobs.listIterator();
-    while (eobsIter.hasNext()) {
-      ExplanationOfBenefit eob = (ExplanationOfBenefit) eobsIter.next();
-      if (samhsaMatcher.test(eob)) eobsIter.remove();
-    }
-  }
-
   /**
    * @param type a {@link TokenAndListParam} for the "type" field in a search
    * @return The {@link ClaimType}s to be searched, as computed from the specified "type" {@link
@@ -369,4 +1285,86 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
 
     return claimTypes;
   }
+
+  /**
+   * Enumerates the strategies that {@link ExplanationOfBenefitResourceProvider} can use to load
+   * claims' lines when searching for claims.
+   */
+  public static enum LinesFetchMode {
+    /**
+     * Fetch-joins the lines along with the claim headers, in a single query. This returns one
+     * (wide) row per claim line, with the header columns duplicated in each of them.
+     */
+    JOIN,
+
+    /**
+     * Selects the claim headers first, then loads the lines for all of the returned claims in a
+     * single follow-up query.
+     */
+    SUBSELECT;
+  }
+
+  /**
+   * Loads and transforms the claims/events for a {@link StreamingBundle} returned by {@link
+   * #findByPatientStreaming(String, Set, boolean, DateRangeParam, boolean)}, one chunk of {@link
+   * #STREAMING_CHUNK_SIZE} at a time, as its entries are written out. Instances are not
+   * thread-safe, and expect their entries to be requested in order.
+   */
+  private final class ClaimStreamer {
+    private final String beneficiaryId;
+    private final List<Map.Entry<ClaimType, Object>> claimIds;
+    private final boolean excludeSamhsa;
+    private Map<Map.Entry<ClaimType, Object>, Object> chunkClaims;
+    private int chunkStart;
+
+    /**
+     * Constructs a new {@link ClaimStreamer}.
+     *
+     * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} that the claims/events belong
+     *     to
+     * @param claimIds the {@link ClaimType} and {@link ClaimType#getEntityIdAttribute()} value of
+     *     each claim/event to stream, in order
+     * @param excludeSamhsa <code>true</code> if SAMHSA-related claims should be skipped as they're
+     *     streamed
+     */
+    ClaimStreamer(
+        String beneficiaryId, List<Map.Entry<ClaimType, Object>> claimIds, boolean excludeSamhsa) {
+      this.beneficiaryId = beneficiaryId;
+      this.claimIds = claimIds;
+      this.excludeSamhsa = excludeSamhsa;
+      this.chunkClaims = Collections.emptyMap();
+      this.chunkStart = -1;
+    }
+
+    /**
+     * @param index the index (in {@link #claimIds}) of the claim/event to transform
+     * @return the {@link ExplanationOfBenefit} for the specified claim/event, or <code>null</code>
+     *     if it should be left out (because it's since been deleted, or is SAMHSA-related)
+     */
+    ExplanationOfBenefit transform(int index) {
+      int start = index - index % STREAMING_CHUNK_SIZE;
+      if (start != chunkStart) {
+        chunkClaims =
+            findClaimsByIds(
+                beneficiaryId,
+                claimIds.subList(start, Math.min(start + STREAMING_CHUNK_SIZE, claimIds.size())));
+        chunkStart = start;
+      }
+
+      Map.Entry<ClaimType, Object> claimId = claimIds.get(index);
+      Object claim = chunkClaims.remove(claimId);
+      if (claim == null) {
+        metricRegistry
+            .meter(
+                MetricRegistry.name(
+                    ExplanationOfBenefitResourceProvider.class.getSimpleName(),
+                    "streaming",
+                    "missing_claims"))
+            .mark();
+        return null;
+      }
+      if (excludeSamhsa && samhsaMatcher.testClaim(claim)) return null;
+      return claimId.getKey().getTransformer().apply(metricRegistry, claim);
+    }
+  }
 }
@@ -6,7 +6,9 @@ import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import gov.cms.bfd.model.codebook.data.CcwCodebookVariable;
 import gov.cms.bfd.model.rif.HospiceClaim;
 import gov.cms.bfd.model.rif.HospiceClaimLine;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import org.hl7.fhir.dstu3.model.Address;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
@@ -104,6 +106,66 @@ final class HospiceClaimTransformer {
         claimGroup.getPrimaryPayerPaidAmount(),
         claimGroup.getFiscalIntermediaryNumber());
 
+    for (Diagnosis diagnosis : extractDiagnoses(claimGroup))
+      TransformerUtils.addDiagnosisCode(eob, diagnosis);
+
+    for (HospiceClaimLine claimLine : claimGroup.getLines()) {
+      ItemComponent item = eob.addItem();
+      item.setSequence(claimLine.getLineNumber().intValue());
+
+      item.setLocation(new Address().setState((claimGroup.getProviderStateCode())));
+
+      TransformerUtils.mapHcpcs(
+          eob,
+          item,
+          Optional.empty(),
+          claimLine.getHcpcsCode(),
+          Arrays.asList(
+              claimLine.getHcpcsInitialModifierCode(), claimLine.getHcpcsSecondModifierCode()));
+
+      item.addAdjudication()
+          .setCategory(
+              TransformerUtils.createAdjudicationCategory(
+                  CcwCodebookVariable.REV_CNTR_PRVDR_PMT_AMT))
+          .setAmount(TransformerUtils.createMoney(claimLine.getProviderPaymentAmount()));
+
+      item.addAdjudication()
+          .setCategory(
+              TransformerUtils.createAdjudicationCategory(
+                  CcwCodebookVariable.REV_CNTR_BENE_PMT_AMT))
+          .setAmount(TransformerUtils.createMoney(claimLine.getBenficiaryPaymentAmount()));
+
+      // Common item level fields between Inpatient, Outpatient, HHA, Hospice and SNF
+      TransformerUtils.mapEobCommonItemRevenue(
+          item,
+          eob,
+          claimLine.getRevenueCenterCode(),
+          claimLine.getRateAmount(),
+          claimLine.getTotalChargeAmount(),
+          claimLine.getNonCoveredChargeAmount().get(),
+          claimLine.getUnitCount(),
+          claimLine.getNationalDrugCodeQuantity(),
+          claimLine.getNationalDrugCodeQualifierCode(),
+          claimLine.getRevenueCenterRenderingPhysicianNPI());
+
+      // Common item level fields between Outpatient, HHA and Hospice
+      TransformerUtils.mapEobCommonItemRevenueOutHHAHospice(
+          item, claimLine.getRevenueCenterDate(), claimLine.getPaymentAmount());
+
+      // Common group level field coinsurance between Inpatient, HHA, Hospice and SNF
+      TransformerUtils.mapEobCommonGroupInpHHAHospiceSNFCoinsurance(
+          eob, item, claimLine.getDeductibleCoinsuranceCd());
+    }
+    return eob;
+  }
+
+  /**
+   * @param claimGroup the {@link HospiceClaim} to extract the {@link Diagnosis}es from
+   * @return the {@link Diagnosis}es that can be extracted from the specified {@link HospiceClaim}
+   */
+  static List<Diagnosis> extractDiagnoses(HospiceClaim claimGroup) {
+    List<Diagnosis> diagnoses = new ArrayList<>();
+
     for (Diagnosis diagnosis :
         TransformerUtils.extractDiagnoses1Thru12(
             claimGroup.getDiagnosisPrincipalCode(),
@@ -132,7 +194,7 @@ final class HospiceClaimTransformer {
             claimGroup.getDiagnosis11CodeVersion(),
             claimGroup.getDiagnosis12Code(),
             claimGroup.getDiagnosis12CodeVersion()))
-      TransformerUtils.addDiagnosisCode(eob, diagnosis);
+      diagnoses.add(diagnosis);
 
     for (Diagnosis diagnosis :
         TransformerUtils.extractDiagnoses13Thru25(
@@ -162,7 +224,7 @@ final class HospiceClaimTransformer {
             claimGroup.getDiagnosis24CodeVersion(),
             claimGroup.getDiagnosis25Code(),
             claimGroup.getDiagnosis25CodeVersion()))
-      TransformerUtils.addDiagnosisCode(eob, diagnosis);
+      diagnoses.add(diagnosis);
 
     for (Diagnosis diagnosis :
         TransformerUtils.extractExternalDiagnoses1Thru12(
@@ -181,55 +243,8 @@ final class HospiceClaimTransformer {
             claimGroup.getDiagnosisExternal11Code(), claimGroup.getDiagnosisExternal11CodeVersion(),
             claimGroup.getDiagnosisExternal12Code(),
                 claimGroup.getDiagnosisExternal12CodeVersion()))
-      TransformerUtils.addDiagnosisCode(eob, diagnosis);
-
-    for (HospiceClaimLine claimLine : claimGroup.getLines()) {
-      ItemComponent item = eob.addItem();
-      item.setSequence(claimLine.getLineNumber().intValue());
-
-      item.setLocation(new Address().setState((claimGroup.getProviderStateCode())));
+      diagnoses.add(diagnosis);
 
-      TransformerUtils.mapHcpcs(
-          eob,
-          item,
-          Optional.empty(),
-          claimLine.getHcpcsCode(),
-          Arrays.asList(
-              claimLine.getHcpcsInitialModifierCode(), claimLine.getHcpcsSecondModifierCode()));
-
-      item.addAdjudication()
-          .setCategory(
-              TransformerUtils.createAdjudicationCategory(
-                  CcwCodebookVariable.REV_CNTR_PRVDR_PMT_AMT))
-          .setAmount(TransformerUtils.createMoney(claimLine.getProviderPaymentAmount()));
-
-      item.addAdjudication()
-          .setCategory(
-              TransformerUtils.createAdjudicationCategory(
-                  CcwCodebookVariable.REV_CNTR_BENE_PMT_AMT))
-          .setAmount(TransformerUtils.createMoney(claimLine.getBenficiaryPaymentAmount()));
-
-      // Common item level fields between Inpatient, Outpatient, HHA, Hospice and SNF
-      TransformerUtils.mapEobCommonItemRevenue(
-          item,
-          eob,
-          claimLine.getRevenueCenterCode(),
-          claimLine.getRateAmount(),
-          claimLine.getTotalChargeAmount(),
-          claimLine.getNonCoveredChargeAmount().get(),
-          claimLine.getUnitCount(),
-          claimLine.getNationalDrugCodeQuantity(),
-          claimLine.getNationalDrugCodeQualifierCode(),
-          claimLine.getRevenueCenterRenderingPhysicianNPI());
-
-      // Common item level fields between Outpatient, HHA and Hospice
-      TransformerUtils.mapEobCommonItemRevenueOutHHAHospice(
-          item, claimLine.getRevenueCenterDate(), claimLine.getPaymentAmount());
-
-      // Common group level field coinsurance between Inpatient, HHA, Hospice and SNF
-      TransformerUtils.mapEobCommonGroupInpHHAHospiceSNFCoinsurance(
-          eob, item, claimLine.getDeductibleCoinsuranceCd());
-    }
-    return eob;
+    return diagnoses;
   }
 }
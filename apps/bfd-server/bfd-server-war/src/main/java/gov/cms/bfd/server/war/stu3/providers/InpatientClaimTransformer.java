@@ -188,83 +188,8 @@ final class InpatientClaimTransformer {
     for (Diagnosis diagnosis : extractDiagnoses(claimGroup))
       TransformerUtils.addDiagnosisCode(eob, diagnosis);
 
-    for (CCWProcedure procedure :
-        TransformerUtils.extractCCWProcedures(
-            claimGroup.getProcedure1Code(),
-            claimGroup.getProcedure1CodeVersion(),
-            claimGroup.getProcedure1Date(),
-            claimGroup.getProcedure2Code(),
-            claimGroup.getProcedure2CodeVersion(),
-            claimGroup.getProcedure2Date(),
-            claimGroup.getProcedure3Code(),
-            claimGroup.getProcedure3CodeVersion(),
-            claimGroup.getProcedure3Date(),
-            claimGroup.getProcedure4Code(),
-            claimGroup.getProcedure4CodeVersion(),
-            claimGroup.getProcedure4Date(),
-            claimGroup.getProcedure5Code(),
-            claimGroup.getProcedure5CodeVersion(),
-            claimGroup.getProcedure5Date(),
-            claimGroup.getProcedure6Code(),
-            claimGroup.getProcedure6CodeVersion(),
-            claimGroup.getProcedure6Date(),
-            claimGroup.getProcedure7Code(),
-            claimGroup.getProcedure7CodeVersion(),
-            claimGroup.getProcedure7Date(),
-            claimGroup.getProcedure8Code(),
-            claimGroup.getProcedure8CodeVersion(),
-            claimGroup.getProcedure8Date(),
-            claimGroup.getProcedure9Code(),
-            claimGroup.getProcedure9CodeVersion(),
-            claimGroup.getProcedure9Date(),
-            claimGroup.getProcedure10Code(),
-            claimGroup.getProcedure10CodeVersion(),
-            claimGroup.getProcedure10Date(),
-            claimGroup.getProcedure11Code(),
-            claimGroup.getProcedure11CodeVersion(),
-            claimGroup.getProcedure11Date(),
-            claimGroup.getProcedure12Code(),
-            claimGroup.getProcedure12CodeVersion(),
-            claimGroup.getProcedure12Date(),
-            claimGroup.getProcedure13Code(),
-            claimGroup.getProcedure13CodeVersion(),
-            claimGroup.getProcedure13Date(),
-            claimGroup.getProcedure14Code(),
-            claimGroup.getProcedure14CodeVersion(),
-            claimGroup.getProcedure14Date(),
-            claimGroup.getProcedure15Code(),
-            claimGroup.getProcedure15CodeVersion(),
-            claimGroup.getProcedure15Date(),
-            claimGroup.getProcedure16Code(),
-            claimGroup.getProcedure16CodeVersion(),
-            claimGroup.getProcedure16Date(),
-            claimGroup.getProcedure17Code(),
-            claimGroup.getProcedure17CodeVersion(),
-            claimGroup.getProcedure17Date(),
-            claimGroup.getProcedure18Code(),
-            claimGroup.getProcedure18CodeVersion(),
-            claimGroup.getProcedure18Date(),
-            claimGroup.getProcedure19Code(),
-            claimGroup.getProcedure19CodeVersion(),
-            claimGroup.getProcedure19Date(),
-            claimGroup.getProcedure20Code(),
-            claimGroup.getProcedure20CodeVersion(),
-            claimGroup.getProcedure20Date(),
-            claimGroup.getProcedure21Code(),
-            claimGroup.getProcedure21CodeVersion(),
-            claimGroup.getProcedure21Date(),
-            claimGroup.getProcedure22Code(),
-            claimGroup.getProcedure22CodeVersion(),
-            claimGroup.getProcedure22Date(),
-            claimGroup.getProcedure23Code(),
-            claimGroup.getProcedure23CodeVersion(),
-            claimGroup.getProcedure23Date(),
-            claimGroup.getProcedure24Code(),
-            claimGroup.getProcedure24CodeVersion(),
-            claimGroup.getProcedure24Date(),
-            claimGroup.getProcedure25Code(),
-            claimGroup.getProcedure25CodeVersion(),
-            claimGroup.getProcedure25Date())) TransformerUtils.addProcedureCode(eob, procedure);
+    for (CCWProcedure procedure : extractProcedures(claimGroup))
+      TransformerUtils.addProcedureCode(eob, procedure);
 
     for (InpatientClaimLine claimLine : claimGroup.getLines()) {
       ItemComponent item = eob.addItem();
@@ -295,11 +220,96 @@ final class InpatientClaimTransformer {
     return eob;
   }
 
+  /**
+   * @param claimGroup the {@link InpatientClaim} to extract the {@link CCWProcedure}s from
+   * @return the {@link CCWProcedure}s that can be extracted from the specified {@link
+   *     InpatientClaim}
+   */
+  static List<CCWProcedure> extractProcedures(InpatientClaim claimGroup) {
+    return TransformerUtils.extractCCWProcedures(
+        claimGroup.getProcedure1Code(),
+        claimGroup.getProcedure1CodeVersion(),
+        claimGroup.getProcedure1Date(),
+        claimGroup.getProcedure2Code(),
+        claimGroup.getProcedure2CodeVersion(),
+        claimGroup.getProcedure2Date(),
+        claimGroup.getProcedure3Code(),
+        claimGroup.getProcedure3CodeVersion(),
+        claimGroup.getProcedure3Date(),
+        claimGroup.getProcedure4Code(),
+        claimGroup.getProcedure4CodeVersion(),
+        claimGroup.getProcedure4Date(),
+        claimGroup.getProcedure5Code(),
+        claimGroup.getProcedure5CodeVersion(),
+        claimGroup.getProcedure5Date(),
+        claimGroup.getProcedure6Code(),
+        claimGroup.getProcedure6CodeVersion(),
+        claimGroup.getProcedure6Date(),
+        claimGroup.getProcedure7Code(),
+        claimGroup.getProcedure7CodeVersion(),
+        claimGroup.getProcedure7Date(),
+        claimGroup.getProcedure8Code(),
+        claimGroup.getProcedure8CodeVersion(),
+        claimGroup.getProcedure8Date(),
+        claimGroup.getProcedure9Code(),
+        claimGroup.getProcedure9CodeVersion(),
+        claimGroup.getProcedure9Date(),
+        claimGroup.getProcedure10Code(),
+        claimGroup.getProcedure10CodeVersion(),
+        claimGroup.getProcedure10Date(),
+        claimGroup.getProcedure11Code(),
+        claimGroup.getProcedure11CodeVersion(),
+        claimGroup.getProcedure11Date(),
+        claimGroup.getProcedure12Code(),
+        claimGroup.getProcedure12CodeVersion(),
+        claimGroup.getProcedure12Date(),
+        claimGroup.getProcedure13Code(),
+        claimGroup.getProcedure13CodeVersion(),
+        claimGroup.getProcedure13Date(),
+        claimGroup.getProcedure14Code(),
+        claimGroup.getProcedure14CodeVersion(),
+        claimGroup.getProcedure14Date(),
+        claimGroup.getProcedure15Code(),
+        claimGroup.getProcedure15CodeVersion(),
+        claimGroup.getProcedure15Date(),
+        claimGroup.getProcedure16Code(),
+        claimGroup.getProcedure16CodeVersion(),
+        claimGroup.getProcedure16Date(),
+        claimGroup.getProcedure17Code(),
+        claimGroup.getProcedure17CodeVersion(),
+        claimGroup.getProcedure17Date(),
+        claimGroup.getProcedure18Code(),
+        claimGroup.getProcedure18CodeVersion(),
+        claimGroup.getProcedure18Date(),
+        claimGroup.getProcedure19Code(),
+        claimGroup.getProcedure19CodeVersion(),
+        claimGroup.getProcedure19Date(),
+        claimGroup.getProcedure20Code(),
+        claimGroup.getProcedure20CodeVersion(),
+        claimGroup.getProcedure20Date(),
+        claimGroup.getProcedure21Code(),
+        claimGroup.getProcedure21CodeVersion(),
+        claimGroup.getProcedure21Date(),
+        claimGroup.getProcedure22Code(),
+        claimGroup.getProcedure22CodeVersion(),
+        claimGroup.getProcedure22Date(),
+        claimGroup.getProcedure23Code(),
+        claimGroup.getProcedure23CodeVersion(),
+        claimGroup.getProcedure23Date(),
+        claimGroup.getProcedure24Code(),
+        claimGroup.getProcedure24CodeVersion(),
+        claimGroup.getProcedure24Date(),
+        claimGroup.getProcedure25Code(),
+        claimGroup.getProcedure25CodeVersion(),
+        claimGroup.getProcedure25Date());
+  }
+
   /**
    * @param claim the {@link InpatientClaim} to extract the {@link Diagnosis}es from
-   * @return the {@link Diagnosis}es that can be extracted from the specified {@link InpatientClaim}
+   * @return the {@link Diagnosis}es that can be extracted from the specified {@link
+   *     InpatientClaim}
    */
-  private static List<Diagnosis> extractDiagnoses(InpatientClaim claim) {
+  static List<Diagnosis> extractDiagnoses(InpatientClaim claim) {
     List<Diagnosis> diagnoses = new LinkedList<>();
 
     /*
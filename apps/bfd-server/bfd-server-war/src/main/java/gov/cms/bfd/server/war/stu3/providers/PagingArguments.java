@@ -17,16 +17,60 @@ public final class PagingArguments {
   private static final Logger LOGGER =
       LoggerFactory.getLogger(ExplanationOfBenefitResourceProvider.class);
 
+  /**
+   * The name of the (FHIR R4-style) search parameter that allows clients to opt out of receiving a
+   * <code>Bundle.total</code>, via <code>_total=none</code>.
+   */
+  public static final String PARAM_TOTAL = "_total";
+
   private final Optional<Integer> pageSize;
   private final Optional<Integer> startIndex;
+  private final boolean totalRequested;
   private final String serverBase;
 
   public PagingArguments(RequestDetails requestDetails) {
     pageSize = parseIntegerParameters(requestDetails, Constants.PARAM_COUNT);
     startIndex = parseIntegerParameters(requestDetails, "startIndex");
+    totalRequested = parseTotalParameter(requestDetails);
     serverBase = requestDetails.getServerBaseForRequest();
   }
 
+  /**
+   * Constructs a new {@link PagingArguments} from already-parsed values, for callers (e.g. tests)
+   * that don't have a {@link RequestDetails}.
+   *
+   * @param pageSize the <code>_count</code> value, if any
+   * @param startIndex the <code>startIndex</code> value, if any
+   * @param totalRequested the value to use for {@link #isTotalRequested()}
+   * @param serverBase the value to use for {@link #getServerBase()}
+   */
+  PagingArguments(
+      Optional<Integer> pageSize,
+      Optional<Integer> startIndex,
+      boolean totalRequested,
+      String serverBase) {
+    this.pageSize = pageSize;
+    this.startIndex = startIndex;
+    this.totalRequested = totalRequested;
+    this.serverBase = serverBase;
+  }
+
+  /**
+   * @param requestDetails the {@link RequestDetails} containing additional parameters for the URL
+   *     in need of parsing out
+   * @return <code>false</code> if the request specified <code>_total=none</code>, <code>true
+   *     </code> if it specified any other supported value or didn't specify one at all
+   * @throws InvalidRequestException HTTP 400: indicates an unsupported <code>_total</code> value
+   */
+  private static boolean parseTotalParameter(RequestDetails requestDetails) {
+    String[] totalValues = requestDetails.getParameters().get(PARAM_TOTAL);
+    if (totalValues == null || totalValues.length == 0) return true;
+    if ("none".equals(totalValues[0])) return false;
+    if ("accurate".equals(totalValues[0]) || "estimate".equals(totalValues[0])) return true;
+    throw new InvalidRequestException(
+        "Invalid argument in request URL: " + PARAM_TOTAL + ". Unsupported value.");
+  }
+
   /**
    * @param requestDetails the {@link RequestDetails} containing additional parameters for the URL
    *     in need of parsing out
@@ -94,6 +138,14 @@ public final class PagingArguments {
     return 0;
   }
 
+  /**
+   * @return Returns true if the response {@link org.hl7.fhir.dstu3.model.Bundle} should include a
+   *     total (the default), false if the client has opted out of it via <code>_total=none</code>.
+   */
+  public boolean isTotalRequested() {
+    return totalRequested;
+  }
+
   /** @return Returns the serverBase. */
   public String getServerBase() {
     return serverBase;
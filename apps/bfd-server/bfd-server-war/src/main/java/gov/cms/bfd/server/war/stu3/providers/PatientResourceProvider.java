@@ -7,6 +7,7 @@ import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
@@ -17,6 +18,8 @@ import gov.cms.bfd.model.rif.Beneficiary;
 import gov.cms.bfd.model.rif.BeneficiaryHistory;
 import gov.cms.bfd.model.rif.BeneficiaryHistory_;
 import gov.cms.bfd.model.rif.Beneficiary_;
+import gov.cms.bfd.server.war.QueryLoggingListener;
+import gov.cms.bfd.server.war.QueryLoggingListener.QueryType;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -59,6 +62,7 @@ public final class PatientResourceProvider implements IResourceProvider {
 
   private EntityManager entityManager;
   private MetricRegistry metricRegistry;
+  private ResourceCache resourceCache;
 
   /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
   @PersistenceContext
@@ -72,6 +76,12 @@ public final class PatientResourceProvider implements IResourceProvider {
     this.metricRegistry = metricRegistry;
   }
 
+  /** @param resourceCache the {@link ResourceCache} to use */
+  @Inject
+  public void setResourceCache(ResourceCache resourceCache) {
+    this.resourceCache = resourceCache;
+  }
+
   /** @see ca.uhn.fhir.rest.server.IResourceProvider#getResourceType() */
   @Override
   public Class<? extends IBaseResource> getResourceType() {
@@ -102,6 +112,34 @@ public final class PatientResourceProvider implements IResourceProvider {
 
     List<String> includeIdentifiersValues = returnIncludeIdentifiersValues(requestDetails);
 
+    return resourceCache.get(
+        String.format(
+            "Patient/%s?%s=%s",
+            beneIdText,
+            HEADER_NAME_INCLUDE_IDENTIFIERS,
+            String.join(",", includeIdentifiersValues)),
+        () -> queryDatabaseById(patientId, includeIdentifiersValues));
+  }
+
+  /**
+   * @param patientId the {@link IdType} of the {@link Patient} to find
+   * @param includeIdentifiersValues the validated {@link #HEADER_NAME_INCLUDE_IDENTIFIERS} values
+   *     for the request
+   * @return a FHIR {@link Patient} for the CCW {@link Beneficiary} that matches the specified ID
+   * @throws ResourceNotFoundException A {@link ResourceNotFoundException} will be thrown if no
+   *     matching {@link Beneficiary} can be found
+   */
+  private Patient queryDatabaseById(IdType patientId, List<String> includeIdentifiersValues) {
+    String beneIdText = patientId.getIdPart();
+
+    /*
+     * When no unhashed identifiers have been requested (by far the most common case), the
+     * histories aren't needed, so just the columns that the transform uses are selected, rather
+     * than the entire (very wide) Beneficiary.
+     */
+    boolean useProjection = !hasHICN(includeIdentifiersValues) && !hasMBI(includeIdentifiersValues);
+    BeneficiaryProjection projection = BeneficiaryTransformer.PATIENT_PROJECTION;
+
     CriteriaBuilder builder = entityManager.getCriteriaBuilder();
     CriteriaQuery<Beneficiary> criteria = builder.createQuery(Beneficiary.class);
     Root<Beneficiary> root = criteria.from(Beneficiary.class);
@@ -115,23 +153,30 @@ public final class PatientResourceProvider implements IResourceProvider {
     criteria.select(root);
     criteria.where(builder.equal(root.get(Beneficiary_.beneficiaryId), beneIdText));
 
+    String queryId =
+        useProjection
+            ? "bene_by_id." + projection.getName()
+            : "bene_by_id.include_" + String.join("_", includeIdentifiersValues);
     Beneficiary beneficiary = null;
     Long beneByIdQueryNanoSeconds = null;
     Timer.Context timerBeneQuery =
         metricRegistry
             .timer(MetricRegistry.name(getClass().getSimpleName(), "query", "bene_by_id"))
             .time();
+    QueryLoggingListener.setQueryTag(
+        useProjection
+            ? QueryType.BENE_BY_ID_OMIT_IDENTIFIERS
+            : QueryType.BENE_BY_ID_INCLUDE_IDENTIFIERS);
     try {
-      beneficiary = entityManager.createQuery(criteria).getSingleResult();
+      if (useProjection) beneficiary = projection.find(entityManager, beneIdText, null);
+      else beneficiary = entityManager.createQuery(criteria).getSingleResult();
     } catch (NoResultException e) {
       throw new ResourceNotFoundException(patientId);
     } finally {
       beneByIdQueryNanoSeconds = timerBeneQuery.stop();
 
       TransformerUtils.recordQueryInMdc(
-          String.format("bene_by_id.include_%s", String.join("_", includeIdentifiersValues)),
-          beneByIdQueryNanoSeconds,
-          beneficiary == null ? 0 : 1);
+          queryId, beneByIdQueryNanoSeconds, beneficiary == null ? 0 : 1);
     }
 
     // Null out the unhashed HICNs if we're not supposed to be returning them
@@ -161,6 +206,8 @@ public final class PatientResourceProvider implements IResourceProvider {
    *     Patient#getId()} to try and find a matching {@link Patient} for
    * @param startIndex an {@link OptionalParam} for the startIndex (or offset) used to determine
    *     pagination
+   * @param lastUpdated an {@link OptionalParam} that, if specified, restricts the results to just
+   *     those {@link Patient}s that were loaded or updated within the specified range
    * @param requestDetails a {@link RequestDetails} containing the details of the request URL, used
    *     to parse out pagination values
    * @return Returns a {@link List} of {@link Patient}s, which may contain multiple matching
@@ -170,6 +217,7 @@ public final class PatientResourceProvider implements IResourceProvider {
   public Bundle searchByLogicalId(
       @RequiredParam(name = Patient.SP_RES_ID) TokenParam logicalId,
       @OptionalParam(name = "startIndex") String startIndex,
+      @OptionalParam(name = "_lastUpdated") DateRangeParam lastUpdated,
       RequestDetails requestDetails) {
     if (logicalId.getQueryParameterQualifier() != null)
       throw new InvalidRequestException(
@@ -187,11 +235,17 @@ public final class PatientResourceProvider implements IResourceProvider {
     } catch (ResourceNotFoundException e) {
       patients = new LinkedList<>();
     }
+    if (lastUpdated != null) patients = filterByLastUpdated(patients, lastUpdated);
 
     PagingArguments pagingArgs = new PagingArguments(requestDetails);
     Bundle bundle =
         TransformerUtils.createBundle(
-            pagingArgs, "/Patient?", Patient.SP_RES_ID, logicalId.getValue(), patients);
+            pagingArgs,
+            "/Patient?",
+            Patient.SP_RES_ID,
+            logicalId.getValue(),
+            lastUpdated,
+            patients);
     return bundle;
   }
 
@@ -214,6 +268,8 @@ public final class PatientResourceProvider implements IResourceProvider {
    *     Patient#getIdentifier()} to try and find a matching {@link Patient} for
    * @param startIndex an {@link OptionalParam} for the startIndex (or offset) used to determine
    *     pagination
+   * @param lastUpdated an {@link OptionalParam} that, if specified, restricts the results to just
+   *     those {@link Patient}s that were loaded or updated within the specified range
    * @param requestDetails a {@link RequestDetails} containing the details of the request URL, used
    *     to parse out pagination values
    * @return Returns a {@link List} of {@link Patient}s, which may contain multiple matching
@@ -223,6 +279,7 @@ public final class PatientResourceProvider implements IResourceProvider {
   public Bundle searchByIdentifier(
       @RequiredParam(name = Patient.SP_IDENTIFIER) TokenParam identifier,
       @OptionalParam(name = "startIndex") String startIndex,
+      @OptionalParam(name = "_lastUpdated") DateRangeParam lastUpdated,
       RequestDetails requestDetails) {
     if (identifier.getQueryParameterQualifier() != null)
       throw new InvalidRequestException(
@@ -249,14 +306,67 @@ public final class PatientResourceProvider implements IResourceProvider {
     } catch (NoResultException e) {
       patients = new LinkedList<>();
     }
+    if (lastUpdated != null) patients = filterByLastUpdated(patients, lastUpdated);
 
     PagingArguments pagingArgs = new PagingArguments(requestDetails);
     Bundle bundle =
         TransformerUtils.createBundle(
-            pagingArgs, "/Patient?", Patient.SP_IDENTIFIER, identifier.getValue(), patients);
+            pagingArgs,
+            "/Patient?",
+            Patient.SP_IDENTIFIER,
+            identifier.getValue(),
+            lastUpdated,
+            patients);
     return bundle;
   }
 
+  /**
+   * Filters the specified {@link Patient}s down to just those whose {@link Beneficiary} was loaded
+   * or updated within the specified range. The {@link Patient}s themselves are usually cached, so
+   * this is checked via a separate (cheap, indexed) query, rather than being added to the queries
+   * that produce them.
+   *
+   * @param patients the {@link Patient}s to filter
+   * @param lastUpdated the <code>_lastUpdated</code> range to filter by
+   * @return the {@link Patient}s that match the specified range
+   */
+  private List<IBaseResource> filterByLastUpdated(
+      List<IBaseResource> patients, DateRangeParam lastUpdated) {
+    if (patients.isEmpty()) return patients;
+    List<String> beneIds =
+        patients.stream().map(p -> p.getIdElement().getIdPart()).collect(Collectors.toList());
+
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<String> criteria = builder.createQuery(String.class);
+    Root<Beneficiary> root = criteria.from(Beneficiary.class);
+    criteria.select(root.get(Beneficiary_.beneficiaryId));
+    criteria.where(
+        builder.and(
+            root.get(Beneficiary_.beneficiaryId).in(beneIds),
+            TransformerUtils.createLastUpdatedPredicate(
+                builder, root.get(Beneficiary_.lastUpdated), lastUpdated)));
+
+    List<String> matchingBeneIds = null;
+    Timer.Context timerBeneQuery =
+        metricRegistry
+            .timer(MetricRegistry.name(getClass().getSimpleName(), "query", "bene_last_updated"))
+            .time();
+    QueryLoggingListener.setQueryTag(QueryType.BENE_LAST_UPDATED);
+    try {
+      matchingBeneIds = entityManager.createQuery(criteria).getResultList();
+    } finally {
+      TransformerUtils.recordQueryInMdc(
+          "bene_last_updated",
+          timerBeneQuery.stop(),
+          matchingBeneIds == null ? 0 : matchingBeneIds.size());
+    }
+
+    List<String> matchingBeneIdsFinal = matchingBeneIds;
+    return patients.stream()
+        .filter(p -> matchingBeneIdsFinal.contains(p.getIdElement().getIdPart()))
+        .collect(Collectors.toList());
+  }
+
   /**
    * @param hicnHash the {@link Beneficiary#getHicn()} hash value to match
    * @return a FHIR {@link Patient} for the CCW {@link Beneficiary} that matches the specified
@@ -351,6 +461,7 @@ public final class PatientResourceProvider implements IResourceProvider {
     beneHistoryMatches.select(beneHistoryMatchesRoot.get(BeneficiaryHistory_.beneficiaryId));
     beneHistoryMatches.where(
         builder.equal(beneHistoryMatchesRoot.get(beneficiaryHistoryHashField), hash));
+    String historyQueryId = "bene_by_" + hashType + "." + hashType + "s_from_beneficiarieshistory";
     List<String> matchingIdsFromBeneHistory = null;
     Long hicnsFromHistoryQueryNanoSeconds = null;
     Timer.Context beneHistoryMatchesTimer =
@@ -362,12 +473,13 @@ public final class PatientResourceProvider implements IResourceProvider {
                     "bene_by_" + hashType,
                     hashType + "s_from_beneficiarieshistory"))
             .time();
+    QueryLoggingListener.setQueryTag(QueryType.BENE_BY_HICN_HISTORY);
     try {
       matchingIdsFromBeneHistory = entityManager.createQuery(beneHistoryMatches).getResultList();
     } finally {
       hicnsFromHistoryQueryNanoSeconds = beneHistoryMatchesTimer.stop();
       TransformerUtils.recordQueryInMdc(
-          "bene_by_" + hashType + "." + hashType + "s_from_beneficiarieshistory",
+          historyQueryId,
           hicnsFromHistoryQueryNanoSeconds,
           matchingIdsFromBeneHistory == null ? 0 : matchingIdsFromBeneHistory.size());
     }
@@ -393,6 +505,13 @@ public final class PatientResourceProvider implements IResourceProvider {
     } else {
       beneMatches.where(beneHashMatches);
     }
+    String benesQueryId =
+        "bene_by_"
+            + hashType
+            + ".bene_by_"
+            + hashType
+            + "_or_id.include_"
+            + String.join("_", includeIdentifiersValues);
     List<Beneficiary> matchingBenes = null;
     Long benesByHashOrIdQueryNanoSeconds = null;
     Timer.Context timerHicnQuery =
@@ -404,15 +523,17 @@ public final class PatientResourceProvider implements IResourceProvider {
                     "bene_by_" + hashType,
                     "bene_by_" + hashType + "_or_id"))
             .time();
+    QueryLoggingListener.setQueryTag(
+        hasHICN(includeIdentifiersValues) || hasMBI(includeIdentifiersValues)
+            ? QueryType.BENE_BY_HICN_OR_ID_INCLUDE_IDENTIFIERS
+            : QueryType.BENE_BY_HICN_OR_ID_OMIT_IDENTIFIERS);
     try {
       matchingBenes = entityManager.createQuery(beneMatches).getResultList();
     } finally {
       benesByHashOrIdQueryNanoSeconds = timerHicnQuery.stop();
 
       TransformerUtils.recordQueryInMdc(
-          String.format(
-              "bene_by_" + hashType + ".bene_by_" + hashType + "_or_id.include_%s",
-              String.join("_", includeIdentifiersValues)),
+          benesQueryId,
           benesByHashOrIdQueryNanoSeconds,
           matchingBenes == null ? 0 : matchingBenes.size());
     }
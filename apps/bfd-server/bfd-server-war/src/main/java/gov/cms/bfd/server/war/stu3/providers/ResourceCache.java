@@ -0,0 +1,300 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.server.war.ReplicaRoutingDataSource;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded, least-recently-used cache of transformed FHIR resources, which allows the resource
+ * providers to skip the database queries and transformations for the beneficiaries that are
+ * requested over and over again by our partner applications.
+ *
+ * <p>The data in our database only changes when the ETL pipeline loads a new data set. Rather than
+ * trying to track exactly which records were changed by a load, this cache just tracks the
+ * database's "load generation" and wholesale invalidates all of its entries whenever that changes.
+ * See {@link #checkGeneration()} for details.
+ *
+ * <p>Only resources that were read entirely from the primary database are cached: read replicas may
+ * lag behind the primary (where the load generation is checked), so anything read from one might
+ * already be stale, and would then be served until the next load.
+ *
+ * <p>Each entry is weighted by the number of resources that it holds, so the cache's size bound is
+ * roughly proportional to the memory it's using, even though a single beneficiary's {@link
+ * org.hl7.fhir.dstu3.model.ExplanationOfBenefit}s may number in the hundreds.
+ *
+ * <p>Resources are copied on the way into and out of the cache, as HAPI and the resource providers
+ * are free to modify the resources they're handed.
+ */
+public final class ResourceCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResourceCache.class);
+
+  /**
+   * The SQL used to read the database's "load generation": the sum of the <code>LoadGenerations
+   * </code> counters, which the pipeline increments in the same transaction as each of its writes
+   * to the data that we serve. It's durable and transactional, so it changes exactly when (and only
+   * once) new data becomes visible, and isn't reset by database restarts or failovers.
+   */
+  private static final String SQL_GENERATION =
+      "select sum(\"generation\") from \"LoadGenerations\"";
+
+  private final long maxResources;
+  private final long generationCheckMilliseconds;
+  private final Meter hits;
+  private final Meter misses;
+  private final Meter evictions;
+  private final Meter invalidations;
+  private final Meter replicaReads;
+
+  /** The cached entries, in least-recently-accessed-first order. Guarded by <code>this</code>. */
+  private final LinkedHashMap<String, List<Resource>> entries;
+
+  /** The sum of the {@link #weigh(List)}s of all {@link #entries}. Guarded by <code>this</code>. */
+  private long resourceCount;
+
+  /** The last-seen load generation. Guarded by <code>this</code>. */
+  private Object generation;
+
+  /**
+   * Incremented every time that the cache is invalidated, so that {@link #store(String, long, long,
+   * IBaseResource...)} can tell if the resources it's been handed may have been read before then.
+   * Guarded by <code>this</code>.
+   */
+  private long epoch;
+
+  /** When {@link #checkGeneration()} should next query the DB. Guarded by <code>this</code>. */
+  private long nextGenerationCheck;
+
+  private EntityManager entityManager;
+
+  /**
+   * Constructs a new {@link ResourceCache}.
+   *
+   * @param metricRegistry the {@link MetricRegistry} to record the cache's hits, misses, etc. in
+   * @param maxResources the maximum number of resources to cache, or <code>0</code> to disable the
+   *     cache entirely
+   * @param generationCheckSeconds the minimum number of seconds to wait between checks of the
+   *     database's load generation (which are only made once {@link
+   *     #setEntityManager(EntityManager)} has been called)
+   */
+  public ResourceCache(
+      MetricRegistry metricRegistry, long maxResources, long generationCheckSeconds) {
+    this.maxResources = maxResources;
+    this.generationCheckMilliseconds = generationCheckSeconds * 1000;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    this.resourceCount = 0;
+    this.generation = null;
+    this.epoch = 0;
+    this.nextGenerationCheck = 0;
+
+    this.hits = metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "hits"));
+    this.misses = metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "misses"));
+    this.evictions =
+        metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "evictions"));
+    this.invalidations =
+        metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "invalidations"));
+    this.replicaReads =
+        metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "replicaReads"));
+    metricRegistry.register(
+        MetricRegistry.name(getClass().getSimpleName(), "resources"),
+        (Gauge<Long>) this::getResourceCount);
+  }
+
+  /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
+  @PersistenceContext
+  public void setEntityManager(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  /** @return <code>true</code> if this cache will store anything, <code>false</code> if not */
+  public boolean isEnabled() {
+    return maxResources > 0;
+  }
+
+  /** @return the total number of resources currently stored in this cache */
+  public synchronized long getResourceCount() {
+    return resourceCount;
+  }
+
+  /**
+   * @param key the unique key for the resource, which must include the resource type, ID, and any
+   *     request options that change the resource's content
+   * @param loader the {@link Supplier} that will be used to produce the resource if it's not
+   *     already cached; any exceptions it throws will be passed through and nothing will be cached
+   * @return a copy of the cached resource, or the result from the specified {@link Supplier}
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Resource> T get(String key, Supplier<T> loader) {
+    long lookupEpoch = checkGeneration();
+    List<Resource> cachedResources = lookup(key);
+    if (cachedResources != null) return (T) cachedResources.get(0).copy();
+
+    long replicaConnections = ReplicaRoutingDataSource.getReplicaConnectionCount();
+    T resource = loader.get();
+    store(key, lookupEpoch, replicaConnections, resource);
+    return resource;
+  }
+
+  /**
+   * @param key the unique key for the resources, which must include the search criteria and any
+   *     request options that change the resources' content
+   * @param loader the {@link Supplier} that will be used to produce the resources if they're not
+   *     already cached; any exceptions it throws will be passed through and nothing will be cached
+   * @return copies of the cached resources, or the result from the specified {@link Supplier}
+   */
+  public List<IBaseResource> getAll(String key, Supplier<List<? extends IBaseResource>> loader) {
+    long lookupEpoch = checkGeneration();
+    List<Resource> cachedResources = lookup(key);
+    if (cachedResources != null) {
+      List<IBaseResource> resources = new ArrayList<>(cachedResources.size());
+      for (Resource cachedResource : cachedResources) resources.add(cachedResource.copy());
+      return resources;
+    }
+
+    long replicaConnections = ReplicaRoutingDataSource.getReplicaConnectionCount();
+    List<IBaseResource> resources = new ArrayList<>(loader.get());
+    store(
+        key,
+        lookupEpoch,
+        replicaConnections,
+        resources.toArray(new IBaseResource[resources.size()]));
+    return resources;
+  }
+
+  /** Removes all entries from this cache. */
+  public synchronized void invalidateAll() {
+    if (!entries.isEmpty()) invalidations.mark();
+    entries.clear();
+    resourceCount = 0;
+    epoch++;
+  }
+
+  /**
+   * @param key the key to look up
+   * @return the cached {@link List} of resources for the specified key, or <code>null</code> if
+   *     there isn't one
+   */
+  private List<Resource> lookup(String key) {
+    if (!isEnabled()) return null;
+
+    List<Resource> cachedResources;
+    synchronized (this) {
+      cachedResources = entries.get(key);
+    }
+    if (cachedResources != null) hits.mark();
+    else misses.mark();
+    return cachedResources;
+  }
+
+  /**
+   * Stores copies of the specified resources in this cache, evicting the least-recently-used
+   * entries as needed to make room for them. The resources will be dropped instead if the cache has
+   * been invalidated since they were looked up, as they may have been read from the database before
+   * the load that triggered that finished, or if any of them were read from a replica.
+   *
+   * @param key the key to store the resources under
+   * @param lookupEpoch the {@link #epoch} (as returned by {@link #checkGeneration()}) from before
+   *     the resources were looked up
+   * @param replicaConnections the {@link ReplicaRoutingDataSource#getReplicaConnectionCount()} from
+   *     before the resources were looked up
+   * @param resources the resources to store
+   */
+  private void store(
+      String key, long lookupEpoch, long replicaConnections, IBaseResource... resources) {
+    if (!isEnabled() || resources.length > maxResources) return;
+    if (ReplicaRoutingDataSource.getReplicaConnectionCount() != replicaConnections) {
+      replicaReads.mark();
+      return;
+    }
+
+    List<Resource> copies = new ArrayList<>(resources.length);
+    for (IBaseResource resource : resources) copies.add(((Resource) resource).copy());
+
+    synchronized (this) {
+      if (epoch != lookupEpoch) return;
+
+      List<Resource> replaced = entries.put(key, copies);
+      if (replaced != null) resourceCount -= weigh(replaced);
+      resourceCount += weigh(copies);
+
+      Iterator<Map.Entry<String, List<Resource>>> entriesIter = entries.entrySet().iterator();
+      while (resourceCount > maxResources && entriesIter.hasNext()) {
+        Map.Entry<String, List<Resource>> eldest = entriesIter.next();
+        if (eldest.getKey().equals(key)) continue;
+        resourceCount -= weigh(eldest.getValue());
+        entriesIter.remove();
+        evictions.mark();
+      }
+    }
+  }
+
+  /**
+   * @param resources a cached {@link List} of resources
+   * @return the weight of the specified cache entry, which is its number of resources (though empty
+   *     results are still counted, so that they can't accumulate without bound)
+   */
+  private static long weigh(List<Resource> resources) {
+    return Math.max(1, resources.size());
+  }
+
+  /**
+   * Checks the database's current load generation (at most once every {@link
+   * #generationCheckMilliseconds}) and invalidates all of this cache's entries if it has changed.
+   * See {@link #SQL_GENERATION} for details. This is always read from the primary database, which
+   * is the only one that the cached resources are read from.
+   *
+   * @return the current {@link #epoch}, after any invalidation
+   */
+  private long checkGeneration() {
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      if (entityManager == null || now < nextGenerationCheck) return epoch;
+      nextGenerationCheck = now + generationCheckMilliseconds;
+    }
+
+    Object currentGeneration;
+    try {
+      AtomicReference<Object> result = new AtomicReference<>();
+      ReplicaRoutingDataSource.runOnPrimary(
+          () -> result.set(entityManager.createNativeQuery(SQL_GENERATION).getSingleResult()));
+      currentGeneration = result.get();
+    } catch (RuntimeException e) {
+      // Can't tell if the data's changed, so err on the side of caution.
+      LOGGER.warn("Unable to determine database load generation.", e);
+      invalidateAll();
+      return getEpoch();
+    }
+
+    synchronized (this) {
+      if (!Objects.equals(generation, currentGeneration)) {
+        if (generation != null)
+          LOGGER.info(
+              "Database load generation changed from '{}' to '{}'. Invalidating cache.",
+              generation,
+              currentGeneration);
+        invalidateAll();
+        generation = currentGeneration;
+      }
+      return epoch;
+    }
+  }
+
+  /** @return the current {@link #epoch} */
+  private synchronized long getEpoch() {
+    return epoch;
+  }
+}
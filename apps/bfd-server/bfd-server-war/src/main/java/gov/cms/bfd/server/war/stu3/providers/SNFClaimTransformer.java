@@ -9,7 +9,9 @@ import gov.cms.bfd.model.rif.SNFClaim;
 import gov.cms.bfd.model.rif.SNFClaimLine;
 import gov.cms.bfd.server.war.stu3.providers.Diagnosis.DiagnosisLabel;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import org.hl7.fhir.dstu3.model.Address;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
@@ -156,13 +158,55 @@ final class SNFClaimTransformer {
         claimGroup.getPrimaryPayerPaidAmount(),
         claimGroup.getFiscalIntermediaryNumber());
 
+    for (Diagnosis diagnosis : extractDiagnoses(claimGroup))
+      TransformerUtils.addDiagnosisCode(eob, diagnosis);
+
+    for (CCWProcedure procedure : extractProcedures(claimGroup))
+      TransformerUtils.addProcedureCode(eob, procedure);
+
+    for (SNFClaimLine claimLine : claimGroup.getLines()) {
+      ItemComponent item = eob.addItem();
+      item.setSequence(claimLine.getLineNumber().intValue());
+
+      item.setLocation(new Address().setState((claimGroup.getProviderStateCode())));
+
+      TransformerUtils.mapHcpcs(
+          eob, item, Optional.empty(), claimLine.getHcpcsCode(), Collections.emptyList());
+
+      // Common item level fields between Inpatient, Outpatient, HHA, Hospice and SNF
+      TransformerUtils.mapEobCommonItemRevenue(
+          item,
+          eob,
+          claimLine.getRevenueCenter(),
+          claimLine.getRateAmount(),
+          claimLine.getTotalChargeAmount(),
+          claimLine.getNonCoveredChargeAmount(),
+          BigDecimal.valueOf(claimLine.getUnitCount()),
+          claimLine.getNationalDrugCodeQuantity(),
+          claimLine.getNationalDrugCodeQualifierCode(),
+          claimLine.getRevenueCenterRenderingPhysicianNPI());
+
+      // Common group level field coinsurance between Inpatient, HHA, Hospice and SNF
+      TransformerUtils.mapEobCommonGroupInpHHAHospiceSNFCoinsurance(
+          eob, item, claimLine.getDeductibleCoinsuranceCd());
+    }
+    return eob;
+  }
+
+  /**
+   * @param claimGroup the {@link SNFClaim} to extract the {@link Diagnosis}es from
+   * @return the {@link Diagnosis}es that can be extracted from the specified {@link SNFClaim}
+   */
+  static List<Diagnosis> extractDiagnoses(SNFClaim claimGroup) {
+    List<Diagnosis> diagnoses = new ArrayList<>();
+
     Optional<Diagnosis> admittingDiagnosis =
         Diagnosis.from(
             claimGroup.getDiagnosisAdmittingCode(),
             claimGroup.getDiagnosisAdmittingCodeVersion(),
             DiagnosisLabel.ADMITTING);
     if (admittingDiagnosis.isPresent()) {
-      TransformerUtils.addDiagnosisCode(eob, admittingDiagnosis.get());
+      diagnoses.add(admittingDiagnosis.get());
     }
 
     for (Diagnosis diagnosis :
@@ -193,7 +237,7 @@ final class SNFClaimTransformer {
             claimGroup.getDiagnosis11CodeVersion(),
             claimGroup.getDiagnosis12Code(),
             claimGroup.getDiagnosis12CodeVersion()))
-      TransformerUtils.addDiagnosisCode(eob, diagnosis);
+      diagnoses.add(diagnosis);
 
     for (Diagnosis diagnosis :
         TransformerUtils.extractDiagnoses13Thru25(
@@ -223,7 +267,7 @@ final class SNFClaimTransformer {
             claimGroup.getDiagnosis24CodeVersion(),
             claimGroup.getDiagnosis25Code(),
             claimGroup.getDiagnosis25CodeVersion()))
-      TransformerUtils.addDiagnosisCode(eob, diagnosis);
+      diagnoses.add(diagnosis);
 
     for (Diagnosis diagnosis :
         TransformerUtils.extractExternalDiagnoses1Thru12(
@@ -242,112 +286,91 @@ final class SNFClaimTransformer {
             claimGroup.getDiagnosisExternal11Code(), claimGroup.getDiagnosisExternal11CodeVersion(),
             claimGroup.getDiagnosisExternal12Code(),
                 claimGroup.getDiagnosisExternal12CodeVersion()))
-      TransformerUtils.addDiagnosisCode(eob, diagnosis);
-
-    for (CCWProcedure procedure :
-        TransformerUtils.extractCCWProcedures(
-            claimGroup.getProcedure1Code(),
-            claimGroup.getProcedure1CodeVersion(),
-            claimGroup.getProcedure1Date(),
-            claimGroup.getProcedure2Code(),
-            claimGroup.getProcedure2CodeVersion(),
-            claimGroup.getProcedure2Date(),
-            claimGroup.getProcedure3Code(),
-            claimGroup.getProcedure3CodeVersion(),
-            claimGroup.getProcedure3Date(),
-            claimGroup.getProcedure4Code(),
-            claimGroup.getProcedure4CodeVersion(),
-            claimGroup.getProcedure4Date(),
-            claimGroup.getProcedure5Code(),
-            claimGroup.getProcedure5CodeVersion(),
-            claimGroup.getProcedure5Date(),
-            claimGroup.getProcedure6Code(),
-            claimGroup.getProcedure6CodeVersion(),
-            claimGroup.getProcedure6Date(),
-            claimGroup.getProcedure7Code(),
-            claimGroup.getProcedure7CodeVersion(),
-            claimGroup.getProcedure7Date(),
-            claimGroup.getProcedure8Code(),
-            claimGroup.getProcedure8CodeVersion(),
-            claimGroup.getProcedure8Date(),
-            claimGroup.getProcedure9Code(),
-            claimGroup.getProcedure9CodeVersion(),
-            claimGroup.getProcedure9Date(),
-            claimGroup.getProcedure10Code(),
-            claimGroup.getProcedure10CodeVersion(),
-            claimGroup.getProcedure10Date(),
-            claimGroup.getProcedure11Code(),
-            claimGroup.getProcedure11CodeVersion(),
-            claimGroup.getProcedure11Date(),
-            claimGroup.getProcedure12Code(),
-            claimGroup.getProcedure12CodeVersion(),
-            claimGroup.getProcedure12Date(),
-            claimGroup.getProcedure13Code(),
-            claimGroup.getProcedure13CodeVersion(),
-            claimGroup.getProcedure13Date(),
-            claimGroup.getProcedure14Code(),
-            claimGroup.getProcedure14CodeVersion(),
-            claimGroup.getProcedure14Date(),
-            claimGroup.getProcedure15Code(),
-            claimGroup.getProcedure15CodeVersion(),
-            claimGroup.getProcedure15Date(),
-            claimGroup.getProcedure16Code(),
-            claimGroup.getProcedure16CodeVersion(),
-            claimGroup.getProcedure16Date(),
-            claimGroup.getProcedure17Code(),
-            claimGroup.getProcedure17CodeVersion(),
-            claimGroup.getProcedure17Date(),
-            claimGroup.getProcedure18Code(),
-            claimGroup.getProcedure18CodeVersion(),
-            claimGroup.getProcedure18Date(),
-            claimGroup.getProcedure19Code(),
-            claimGroup.getProcedure19CodeVersion(),
-            claimGroup.getProcedure19Date(),
-            claimGroup.getProcedure20Code(),
-            claimGroup.getProcedure20CodeVersion(),
-            claimGroup.getProcedure20Date(),
-            claimGroup.getProcedure21Code(),
-            claimGroup.getProcedure21CodeVersion(),
-            claimGroup.getProcedure21Date(),
-            claimGroup.getProcedure22Code(),
-            claimGroup.getProcedure22CodeVersion(),
-            claimGroup.getProcedure22Date(),
-            claimGroup.getProcedure23Code(),
-            claimGroup.getProcedure23CodeVersion(),
-            claimGroup.getProcedure23Date(),
-            claimGroup.getProcedure24Code(),
-            claimGroup.getProcedure24CodeVersion(),
-            claimGroup.getProcedure24Date(),
-            claimGroup.getProcedure25Code(),
-            claimGroup.getProcedure25CodeVersion(),
-            claimGroup.getProcedure25Date())) TransformerUtils.addProcedureCode(eob, procedure);
-
-    for (SNFClaimLine claimLine : claimGroup.getLines()) {
-      ItemComponent item = eob.addItem();
-      item.setSequence(claimLine.getLineNumber().intValue());
+      diagnoses.add(diagnosis);
 
-      item.setLocation(new Address().setState((claimGroup.getProviderStateCode())));
-
-      TransformerUtils.mapHcpcs(
-          eob, item, Optional.empty(), claimLine.getHcpcsCode(), Collections.emptyList());
-
-      // Common item level fields between Inpatient, Outpatient, HHA, Hospice and SNF
-      TransformerUtils.mapEobCommonItemRevenue(
-          item,
-          eob,
-          claimLine.getRevenueCenter(),
-          claimLine.getRateAmount(),
-          claimLine.getTotalChargeAmount(),
-          claimLine.getNonCoveredChargeAmount(),
-          BigDecimal.valueOf(claimLine.getUnitCount()),
-          claimLine.getNationalDrugCodeQuantity(),
-          claimLine.getNationalDrugCodeQualifierCode(),
-          claimLine.getRevenueCenterRenderingPhysicianNPI());
+    return diagnoses;
+  }
 
-      // Common group level field coinsurance between Inpatient, HHA, Hospice and SNF
-      TransformerUtils.mapEobCommonGroupInpHHAHospiceSNFCoinsurance(
-          eob, item, claimLine.getDeductibleCoinsuranceCd());
-    }
-    return eob;
+  /**
+   * @param claimGroup the {@link SNFClaim} to extract the {@link CCWProcedure}s from
+   * @return the {@link CCWProcedure}s that can be extracted from the specified {@link SNFClaim}
+   */
+  static List<CCWProcedure> extractProcedures(SNFClaim claimGroup) {
+    return TransformerUtils.extractCCWProcedures(
+        claimGroup.getProcedure1Code(),
+        claimGroup.getProcedure1CodeVersion(),
+        claimGroup.getProcedure1Date(),
+        claimGroup.getProcedure2Code(),
+        claimGroup.getProcedure2CodeVersion(),
+        claimGroup.getProcedure2Date(),
+        claimGroup.getProcedure3Code(),
+        claimGroup.getProcedure3CodeVersion(),
+        claimGroup.getProcedure3Date(),
+        claimGroup.getProcedure4Code(),
+        claimGroup.getProcedure4CodeVersion(),
+        claimGroup.getProcedure4Date(),
+        claimGroup.getProcedure5Code(),
+        claimGroup.getProcedure5CodeVersion(),
+        claimGroup.getProcedure5Date(),
+        claimGroup.getProcedure6Code(),
+        claimGroup.getProcedure6CodeVersion(),
+        claimGroup.getProcedure6Date(),
+        claimGroup.getProcedure7Code(),
+        claimGroup.getProcedure7CodeVersion(),
+        claimGroup.getProcedure7Date(),
+        claimGroup.getProcedure8Code(),
+        claimGroup.getProcedure8CodeVersion(),
+        claimGroup.getProcedure8Date(),
+        claimGroup.getProcedure9Code(),
+        claimGroup.getProcedure9CodeVersion(),
+        claimGroup.getProcedure9Date(),
+        claimGroup.getProcedure10Code(),
+        claimGroup.getProcedure10CodeVersion(),
+        claimGroup.getProcedure10Date(),
+        claimGroup.getProcedure11Code(),
+        claimGroup.getProcedure11CodeVersion(),
+        claimGroup.getProcedure11Date(),
+        claimGroup.getProcedure12Code(),
+        claimGroup.getProcedure12CodeVersion(),
+        claimGroup.getProcedure12Date(),
+        claimGroup.getProcedure13Code(),
+        claimGroup.getProcedure13CodeVersion(),
+        claimGroup.getProcedure13Date(),
+        claimGroup.getProcedure14Code(),
+        claimGroup.getProcedure14CodeVersion(),
+        claimGroup.getProcedure14Date(),
+        claimGroup.getProcedure15Code(),
+        claimGroup.getProcedure15CodeVersion(),
+        claimGroup.getProcedure15Date(),
+        claimGroup.getProcedure16Code(),
+        claimGroup.getProcedure16CodeVersion(),
+        claimGroup.getProcedure16Date(),
+        claimGroup.getProcedure17Code(),
+        claimGroup.getProcedure17CodeVersion(),
+        claimGroup.getProcedure17Date(),
+        claimGroup.getProcedure18Code(),
+        claimGroup.getProcedure18CodeVersion(),
+        claimGroup.getProcedure18Date(),
+        claimGroup.getProcedure19Code(),
+        claimGroup.getProcedure19CodeVersion(),
+        claimGroup.getProcedure19Date(),
+        claimGroup.getProcedure20Code(),
+        claimGroup.getProcedure20CodeVersion(),
+        claimGroup.getProcedure20Date(),
+        claimGroup.getProcedure21Code(),
+        claimGroup.getProcedure21CodeVersion(),
+        claimGroup.getProcedure21Date(),
+        claimGroup.getProcedure22Code(),
+        claimGroup.getProcedure22CodeVersion(),
+        claimGroup.getProcedure22Date(),
+        claimGroup.getProcedure23Code(),
+        claimGroup.getProcedure23CodeVersion(),
+        claimGroup.getProcedure23Date(),
+        claimGroup.getProcedure24Code(),
+        claimGroup.getProcedure24CodeVersion(),
+        claimGroup.getProcedure24Date(),
+        claimGroup.getProcedure25Code(),
+        claimGroup.getProcedure25CodeVersion(),
+        claimGroup.getProcedure25Date());
   }
 }
@@ -3,13 +3,31 @@ package gov.cms.bfd.server.war.stu3.providers;
 import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import com.justdavis.karl.misc.exceptions.unchecked.UncheckedIoException;
 import gov.cms.bfd.model.codebook.data.CcwCodebookVariable;
+import gov.cms.bfd.model.rif.CarrierClaim;
+import gov.cms.bfd.model.rif.CarrierClaimLine;
+import gov.cms.bfd.model.rif.DMEClaim;
+import gov.cms.bfd.model.rif.DMEClaimLine;
+import gov.cms.bfd.model.rif.HHAClaim;
+import gov.cms.bfd.model.rif.HHAClaimLine;
+import gov.cms.bfd.model.rif.HospiceClaim;
+import gov.cms.bfd.model.rif.HospiceClaimLine;
+import gov.cms.bfd.model.rif.InpatientClaim;
+import gov.cms.bfd.model.rif.InpatientClaimLine;
+import gov.cms.bfd.model.rif.OutpatientClaim;
+import gov.cms.bfd.model.rif.OutpatientClaimLine;
+import gov.cms.bfd.model.rif.PartDEvent;
+import gov.cms.bfd.model.rif.SNFClaim;
+import gov.cms.bfd.model.rif.SNFClaimLine;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.apache.commons.csv.CSVFormat;
@@ -29,6 +47,9 @@ import org.springframework.stereotype.Component;
  * <p>See <code>/bluebutton-data-server.git/dev/design-samhsa-filtering.md</code> for details on the
  * design of this feature.
  *
+ * <p>Claims can also be checked before they're transformed, via {@link #testClaim(Object)}, which
+ * is much cheaper for callers that would otherwise transform claims just to throw them away.
+ *
  * <p>This class is designed to be thread-safe, as it's expensive to construct and so should be used
  * as a singleton.
  */
@@ -40,12 +61,17 @@ public final class SamhsaMatcher implements Predicate<ExplanationOfBenefit> {
   private static final String DRG =
       TransformerUtils.calculateVariableReferenceUrl(CcwCodebookVariable.CLM_DRG_CD);
 
-  private final List<String> drgCodes;
-  private final List<String> cptCodes;
-  private final List<String> icd9ProcedureCodes;
-  private final List<String> icd9DiagnosisCodes;
-  private final List<String> icd10ProcedureCodes;
-  private final List<String> icd10DiagnosisCodes;
+  /*
+   * These are all hash sets, as they're checked against every code in every claim being filtered.
+   * (All of the matching is exact, after normalization, so there's no need for anything fancier,
+   * e.g. a prefix trie.)
+   */
+  private final Set<String> drgCodes;
+  private final Set<String> cptCodes;
+  private final Set<String> icd9ProcedureCodes;
+  private final Set<String> icd9DiagnosisCodes;
+  private final Set<String> icd10ProcedureCodes;
+  private final Set<String> icd10DiagnosisCodes;
 
   /**
    * Constructs a new {@link SamhsaMatcher}, loading the lists of SAMHSA-related codes from the
@@ -53,40 +79,41 @@ public final class SamhsaMatcher implements Predicate<ExplanationOfBenefit> {
    */
   public SamhsaMatcher() {
     this.drgCodes =
-        Collections.unmodifiableList(
+        Collections.unmodifiableSet(
             resourceCsvColumnToList("samhsa-related-codes/codes-drg.csv", "MS-DRGs").stream()
                 .map(SamhsaMatcher::normalizeDrgCode)
-                .collect(Collectors.toList()));
+                .collect(Collectors.toSet()));
     this.cptCodes =
-        Collections.unmodifiableList(
-            resourceCsvColumnToList("samhsa-related-codes/codes-cpt.csv", "CPT Code"));
+        Collections.unmodifiableSet(
+            new HashSet<>(
+                resourceCsvColumnToList("samhsa-related-codes/codes-cpt.csv", "CPT Code")));
     this.icd9ProcedureCodes =
-        Collections.unmodifiableList(
+        Collections.unmodifiableSet(
             resourceCsvColumnToList("samhsa-related-codes/codes-icd-9-procedure.csv", "ICD-9-CM")
                 .stream()
                 .map(SamhsaMatcher::normalizeIcd9Code)
-                .collect(Collectors.toList()));
+                .collect(Collectors.toSet()));
     this.icd9DiagnosisCodes =
-        Collections.unmodifiableList(
+        Collections.unmodifiableSet(
             resourceCsvColumnToList(
                     "samhsa-related-codes/codes-icd-9-diagnosis.csv", "ICD-9-CM Diagnosis Code")
                 .stream()
                 .map(SamhsaMatcher::normalizeIcd9Code)
-                .collect(Collectors.toList()));
+                .collect(Collectors.toSet()));
     this.icd10ProcedureCodes =
-        Collections.unmodifiableList(
+        Collections.unmodifiableSet(
             resourceCsvColumnToList(
                     "samhsa-related-codes/codes-icd-10-procedure.csv", "ICD-10-PCS Code")
                 .stream()
                 .map(SamhsaMatcher::normalizeIcd10Code)
-                .collect(Collectors.toList()));
+                .collect(Collectors.toSet()));
     this.icd10DiagnosisCodes =
-        Collections.unmodifiableList(
+        Collections.unmodifiableSet(
             resourceCsvColumnToList(
                     "samhsa-related-codes/codes-icd-10-diagnosis.csv", "ICD-10-CM Diagnosis Code")
                 .stream()
                 .map(SamhsaMatcher::normalizeIcd10Code)
-                .collect(Collectors.toList()));
+                .collect(Collectors.toSet()));
   }
 
   /**
@@ -94,8 +121,7 @@ public final class SamhsaMatcher implements Predicate<ExplanationOfBenefit> {
    * @param columnToReturn the name of the column to return from the CSV file
    * @return a {@link List} of values from the specified column of the specified CSV file
    */
-  private static List<String> resourceCsvColumnToList(
-      String csvResourceName, String columnToReturn) {
+  static List<String> resourceCsvColumnToList(String csvResourceName, String columnToReturn) {
     CSVParser csvParser = null;
     try (InputStream csvStream =
             Thread.currentThread().getContextClassLoader().getResourceAsStream(csvResourceName);
@@ -143,6 +169,87 @@ public final class SamhsaMatcher implements Predicate<ExplanationOfBenefit> {
     } else throw new BadCodeMonkeyException("Unsupported claim type: " + claimType);
   }
 
+  /**
+   * Checks the specified claim/event JPA entity for SAMHSA-related codes, without transforming it.
+   * This will always return the same result as {@link #test(ExplanationOfBenefit)} would for the
+   * transformed claim, as both check the {@link Diagnosis}es and {@link CCWProcedure}s that the
+   * claim transformers themselves extract, plus the same line-level codes that the transformers
+   * map.
+   *
+   * <p>Note that the {@link InpatientClaim} and {@link SNFClaim} transformers map the claim's DRG
+   * to a {@link DiagnosisComponent#getPackageCode()}, so those claims' DRGs are also checked
+   * against the {@link #drgCodes}, here.
+   *
+   * @param claim the claim/event JPA entity to check, e.g. a {@link CarrierClaim}
+   * @return <code>true</code> if the specified claim/event contains any known-SAMHSA-related
+   *     codes, <code>false</code> if it does not
+   */
+  public boolean testClaim(Object claim) {
+    if (claim instanceof CarrierClaim) {
+      CarrierClaim carrierClaim = (CarrierClaim) claim;
+      if (containsSamhsaIcdDiagnosis(CarrierClaimTransformer.extractDiagnoses(carrierClaim)))
+        return true;
+      for (CarrierClaimLine claimLine : carrierClaim.getLines()) {
+        if (isSamhsaLineDiagnosis(
+            claimLine.getDiagnosisCode(), claimLine.getDiagnosisCodeVersion())) return true;
+        if (isSamhsaHcpcsCode(claimLine.getHcpcsCode())) return true;
+      }
+      return false;
+    } else if (claim instanceof DMEClaim) {
+      DMEClaim dmeClaim = (DMEClaim) claim;
+      if (containsSamhsaIcdDiagnosis(DMEClaimTransformer.extractDiagnoses(dmeClaim))) return true;
+      for (DMEClaimLine claimLine : dmeClaim.getLines()) {
+        if (isSamhsaLineDiagnosis(
+            claimLine.getDiagnosisCode(), claimLine.getDiagnosisCodeVersion())) return true;
+        if (isSamhsaHcpcsCode(claimLine.getHcpcsCode())) return true;
+      }
+      return false;
+    } else if (claim instanceof HHAClaim) {
+      HHAClaim hhaClaim = (HHAClaim) claim;
+      if (containsSamhsaIcdDiagnosis(HHAClaimTransformer.extractDiagnoses(hhaClaim))) return true;
+      for (HHAClaimLine claimLine : hhaClaim.getLines())
+        if (isSamhsaHcpcsCode(claimLine.getHcpcsCode())) return true;
+      return false;
+    } else if (claim instanceof HospiceClaim) {
+      HospiceClaim hospiceClaim = (HospiceClaim) claim;
+      if (containsSamhsaIcdDiagnosis(HospiceClaimTransformer.extractDiagnoses(hospiceClaim)))
+        return true;
+      for (HospiceClaimLine claimLine : hospiceClaim.getLines())
+        if (isSamhsaHcpcsCode(claimLine.getHcpcsCode())) return true;
+      return false;
+    } else if (claim instanceof InpatientClaim) {
+      InpatientClaim inpatientClaim = (InpatientClaim) claim;
+      if (containsSamhsaIcdDiagnosis(InpatientClaimTransformer.extractDiagnoses(inpatientClaim)))
+        return true;
+      if (containsSamhsaIcdProcedure(InpatientClaimTransformer.extractProcedures(inpatientClaim)))
+        return true;
+      if (isSamhsaDrgCode(inpatientClaim.getDiagnosisRelatedGroupCd())) return true;
+      for (InpatientClaimLine claimLine : inpatientClaim.getLines())
+        if (isSamhsaHcpcsCode(claimLine.getHcpcsCode())) return true;
+      return false;
+    } else if (claim instanceof OutpatientClaim) {
+      OutpatientClaim outpatientClaim = (OutpatientClaim) claim;
+      if (containsSamhsaIcdDiagnosis(OutpatientClaimTransformer.extractDiagnoses(outpatientClaim)))
+        return true;
+      if (containsSamhsaIcdProcedure(OutpatientClaimTransformer.extractProcedures(outpatientClaim)))
+        return true;
+      for (OutpatientClaimLine claimLine : outpatientClaim.getLines())
+        if (isSamhsaHcpcsCode(claimLine.getHcpcsCode())) return true;
+      return false;
+    } else if (claim instanceof SNFClaim) {
+      SNFClaim snfClaim = (SNFClaim) claim;
+      if (containsSamhsaIcdDiagnosis(SNFClaimTransformer.extractDiagnoses(snfClaim))) return true;
+      if (containsSamhsaIcdProcedure(SNFClaimTransformer.extractProcedures(snfClaim))) return true;
+      if (isSamhsaDrgCode(snfClaim.getDiagnosisRelatedGroupCd())) return true;
+      for (SNFClaimLine claimLine : snfClaim.getLines())
+        if (isSamhsaHcpcsCode(claimLine.getHcpcsCode())) return true;
+      return false;
+    } else if (claim instanceof PartDEvent) {
+      // There are no SAMHSA fields in PDE claims
+      return false;
+    } else throw new BadCodeMonkeyException("Unsupported claim type: " + claim.getClass());
+  }
+
   /**
    * @param eob the {@link ClaimType#CARRIER} {@link ExplanationOfBenefit} to check
    * @return <code>true</code> if the specified {@link ClaimType#CARRIER} {@link
@@ -298,6 +405,83 @@ public final class SamhsaMatcher implements Predicate<ExplanationOfBenefit> {
     return procedure.stream().anyMatch(this::isSamhsaIcdProcedure);
   }
 
+  /**
+   * @param diagnoses the {@link Diagnosis}es to check
+   * @return <code>true</code> if any of the specified {@link Diagnosis}es match any of the {@link
+   *     #icd9DiagnosisCodes} or {@link #icd10DiagnosisCodes} entries (or have an unknown ICD
+   *     version), <code>false</code> if they all do not
+   */
+  private boolean containsSamhsaIcdDiagnosis(List<Diagnosis> diagnoses) {
+    for (Diagnosis diagnosis : diagnoses)
+      if (isSamhsaIcdCode(diagnosis, icd9DiagnosisCodes, icd10DiagnosisCodes)) return true;
+    return false;
+  }
+
+  /**
+   * @param procedures the {@link CCWProcedure}s to check
+   * @return <code>true</code> if any of the specified {@link CCWProcedure}s match any of the {@link
+   *     #icd9ProcedureCodes} or {@link #icd10ProcedureCodes} entries (or have an unknown ICD
+   *     version), <code>false</code> if they all do not
+   */
+  private boolean containsSamhsaIcdProcedure(List<CCWProcedure> procedures) {
+    for (CCWProcedure procedure : procedures)
+      if (isSamhsaIcdCode(procedure, icd9ProcedureCodes, icd10ProcedureCodes)) return true;
+    return false;
+  }
+
+  /**
+   * @param diagnosisCode the claim line's diagnosis code, if any
+   * @param diagnosisCodeVersion the claim line's diagnosis code ICD version, if any
+   * @return <code>true</code> if the specified line diagnosis is present and matches one of the
+   *     {@link #icd9DiagnosisCodes} or {@link #icd10DiagnosisCodes} entries (or has an unknown ICD
+   *     version), <code>false</code> if it does not
+   */
+  private boolean isSamhsaLineDiagnosis(
+      Optional<String> diagnosisCode, Optional<Character> diagnosisCodeVersion) {
+    Optional<Diagnosis> diagnosis = Diagnosis.from(diagnosisCode, diagnosisCodeVersion);
+    return diagnosis.isPresent()
+        && isSamhsaIcdCode(diagnosis.get(), icd9DiagnosisCodes, icd10DiagnosisCodes);
+  }
+
+  /**
+   * @param icdCode the {@link IcdCode} to check
+   * @param icd9Codes the normalized ICD-9 codes to match against
+   * @param icd10Codes the normalized ICD-10 codes to match against
+   * @return <code>true</code> if the specified {@link IcdCode} matches one of the specified codes
+   *     for its ICD version, or if its ICD version is unknown, <code>false</code> if it does not
+   */
+  private static boolean isSamhsaIcdCode(
+      IcdCode icdCode, Set<String> icd9Codes, Set<String> icd10Codes) {
+    String system = icdCode.getFhirSystem();
+    if (IcdCode.CODING_SYSTEM_ICD_9.equals(system)) {
+      return icd9Codes.contains(normalizeIcd9Code(icdCode.getCode()));
+    } else if (IcdCode.CODING_SYSTEM_ICD_10.equals(system)) {
+      return icd10Codes.contains(normalizeIcd10Code(icdCode.getCode()));
+    } else {
+      // Fail safe: if we don't know the ICD version, assume the code is SAMHSA.
+      return true;
+    }
+  }
+
+  /**
+   * @param hcpcsCode the claim line's HCPCS code, if any
+   * @return <code>true</code> if the specified HCPCS code is present and matches one of the {@link
+   *     #cptCodes} entries, <code>false</code> if it does not
+   */
+  private boolean isSamhsaHcpcsCode(Optional<String> hcpcsCode) {
+    return hcpcsCode.isPresent() && cptCodes.contains(normalizeHcpcsCode(hcpcsCode.get()));
+  }
+
+  /**
+   * @param diagnosisRelatedGroupCd the claim's DRG code, if any
+   * @return <code>true</code> if the specified DRG code is present and matches one of the {@link
+   *     #drgCodes} entries (exactly as {@link #isSamhsaDrgCode(Coding)} would for the transformed
+   *     claim), <code>false</code> if it does not
+   */
+  private boolean isSamhsaDrgCode(Optional<String> diagnosisRelatedGroupCd) {
+    return diagnosisRelatedGroupCd.isPresent() && drgCodes.contains(diagnosisRelatedGroupCd.get());
+  }
+
   /**
    * @param diagnosis the {@link DiagnosisComponent} to check
    * @return <code>true</code> if the specified {@link DiagnosisComponent} matches one of the {@link
@@ -411,12 +595,8 @@ public final class SamhsaMatcher implements Predicate<ExplanationOfBenefit> {
    * @return the specified ICD-9 code, but with whitespace trimmed, the first (if any) decimal point
    *     removed, and converted to all-caps
    */
-  private static String normalizeIcd9Code(String icd9Code) {
-    icd9Code = icd9Code.trim();
-    icd9Code = icd9Code.replaceFirst("\\.", "");
-    icd9Code = icd9Code.toUpperCase();
-
-    return icd9Code;
+  static String normalizeIcd9Code(String icd9Code) {
+    return normalizeCode(icd9Code, true);
   }
 
   /**
@@ -471,12 +651,8 @@ public final class SamhsaMatcher implements Predicate<ExplanationOfBenefit> {
    * @return the specified ICD-10 code, but with whitespace trimmed, the first (if any) decimal
    *     point removed, and converted to all-caps
    */
-  private static String normalizeIcd10Code(String icd10DiagnosisCode) {
-    icd10DiagnosisCode = icd10DiagnosisCode.trim();
-    icd10DiagnosisCode = icd10DiagnosisCode.replaceFirst("\\.", "");
-    icd10DiagnosisCode = icd10DiagnosisCode.toUpperCase();
-
-    return icd10DiagnosisCode;
+  static String normalizeIcd10Code(String icd10DiagnosisCode) {
+    return normalizeCode(icd10DiagnosisCode, true);
   }
 
   /**
@@ -525,10 +701,68 @@ public final class SamhsaMatcher implements Predicate<ExplanationOfBenefit> {
    * @param hcpcsCode the HCPCS code to normalize
    * @return the specified HCPCS code, but with whitespace trimmed and converted to all-caps
    */
-  private static String normalizeHcpcsCode(String hcpcsCode) {
-    hcpcsCode = hcpcsCode.trim();
-    hcpcsCode = hcpcsCode.toUpperCase();
+  static String normalizeHcpcsCode(String hcpcsCode) {
+    return normalizeCode(hcpcsCode, false);
+  }
 
-    return hcpcsCode;
+  /**
+   * Normalizes the specified code: trims whitespace, removes the first decimal point (if
+   * requested), and converts it to all-caps. This is called for every code in every claim being
+   * filtered, so it avoids regexes and only allocates if the code actually needs to be changed.
+   *
+   * @param code the code to normalize
+   * @param removeDecimalPoint <code>true</code> if the first (if any) decimal point in the code
+   *     should be removed, <code>false</code> if not
+   * @return the normalized code
+   */
+  static String normalizeCode(String code, boolean removeDecimalPoint) {
+    int start = 0;
+    int end = code.length();
+    while (start < end && code.charAt(start) <= ' ') start++;
+    while (end > start && code.charAt(end - 1) <= ' ') end--;
+
+    // Fast path: most codes are already normalized, aside from maybe some whitespace.
+    int firstChange = start;
+    while (firstChange < end) {
+      char c = code.charAt(firstChange);
+      if ((c == '.' && removeDecimalPoint) || (c >= 'a' && c <= 'z') || c > 0x7F) break;
+      firstChange++;
+    }
+    if (firstChange == end)
+      return start == 0 && end == code.length() ? code : code.substring(start, end);
+
+    StringBuilder normalizedCode = new StringBuilder(end - start);
+    normalizedCode.append(code, start, firstChange);
+    boolean decimalPointRemoved = !removeDecimalPoint;
+    for (int i = firstChange; i < end; i++) {
+      char c = code.charAt(i);
+      if (c == '.' && !decimalPointRemoved) {
+        decimalPointRemoved = true;
+        continue;
+      }
+
+      // Leave the (never expected) non-ASCII codes to the JDK's full case mapping rules.
+      if (c > 0x7F) return normalizeCodeSlowly(code, removeDecimalPoint);
+      if (c >= 'a' && c <= 'z') c = (char) (c - ('a' - 'A'));
+      normalizedCode.append(c);
+    }
+    return normalizedCode.toString();
+  }
+
+  /**
+   * The original (and much slower) implementation of {@link #normalizeCode(String, boolean)}, which
+   * is still used for any codes with non-ASCII characters.
+   *
+   * @param code the code to normalize
+   * @param removeDecimalPoint <code>true</code> if the first (if any) decimal point in the code
+   *     should be removed, <code>false</code> if not
+   * @return the normalized code
+   */
+  static String normalizeCodeSlowly(String code, boolean removeDecimalPoint) {
+    code = code.trim();
+    if (removeDecimalPoint) code = code.replaceFirst("\\.", "");
+    code = code.toUpperCase();
+
+    return code;
   }
 }
@@ -0,0 +1,215 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.health.HealthCheck;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.Beneficiary_;
+import java.util.Arrays;
+import java.util.List;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs a warm-up phase when the server starts, so that the first "real" requests after a deploy
+ * don't have to pay for all of the lazy, one-time initialization that's scattered throughout the
+ * application. Specifically, this will:
+ *
+ * <ul>
+ *   <li>Eagerly load all of the lookup tables used by {@link TransformerUtils}, along with the CCW
+ *       codebook data and the {@link SamhsaMatcher} code lists.
+ *   <li>Run the same criteria queries used by the resource providers for {@link Beneficiary}s and
+ *       each {@link ClaimType}, so that Hibernate's query plans get compiled and cached.
+ *   <li>Run the FHIR transformers over a (small) sample of the records actually present in the
+ *       database, so that the transformation code paths get JIT-warmed.
+ * </ul>
+ *
+ * <p>Until the warm-up has completed, the {@link #HEALTH_CHECK_NAME} health check will report as
+ * unhealthy, which allows load balancers to hold off on routing traffic to this instance.
+ */
+@Component
+public final class ServerWarmup {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ServerWarmup.class);
+
+  /** The {@link HealthCheckRegistry} name that this class' {@link HealthCheck} is registered as. */
+  public static final String HEALTH_CHECK_NAME = "warmup";
+
+  /**
+   * The beneficiary ID that will be used for the warm-up queries, which are run even if the
+   * database has no data in it. This should never match a real beneficiary.
+   */
+  private static final String WARMUP_BENE_ID = "-1";
+
+  private EntityManager entityManager;
+  private MetricRegistry metricRegistry;
+  private SamhsaMatcher samhsaMatcher;
+
+  private volatile boolean complete = false;
+  private volatile String completionMessage = null;
+
+  /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
+  @PersistenceContext
+  public void setEntityManager(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  /** @param metricRegistry the {@link MetricRegistry} to use */
+  @Inject
+  public void setMetricRegistry(MetricRegistry metricRegistry) {
+    this.metricRegistry = metricRegistry;
+  }
+
+  /** @param samhsaMatcher the {@link SamhsaMatcher} to use */
+  @Inject
+  public void setSamhsaMatcher(SamhsaMatcher samhsaMatcher) {
+    this.samhsaMatcher = samhsaMatcher;
+  }
+
+  /**
+   * @param healthCheckRegistry the {@link HealthCheckRegistry} to register this warm-up's {@link
+   *     HealthCheck} with
+   */
+  @Inject
+  public void setHealthCheckRegistry(HealthCheckRegistry healthCheckRegistry) {
+    healthCheckRegistry.register(
+        HEALTH_CHECK_NAME,
+        new HealthCheck() {
+          /** @see com.codahale.metrics.health.HealthCheck#check() */
+          @Override
+          protected Result check() throws Exception {
+            if (!complete) return Result.unhealthy("Server warm-up is still in progress.");
+            return Result.healthy(completionMessage);
+          }
+        });
+  }
+
+  /**
+   * @return <code>true</code> if the warm-up has finished (successfully or not), <code>false
+   *     </code> if it is still running or hasn't yet been started
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Runs the warm-up on a new background {@link Thread}, so that the rest of the server's startup
+   * isn't blocked by it.
+   */
+  public void startAsync() {
+    Thread warmupThread = new Thread(this::run, ServerWarmup.class.getSimpleName());
+    warmupThread.setDaemon(true);
+    warmupThread.start();
+  }
+
+  /** Marks the warm-up as complete without running it, e.g. when it has been disabled. */
+  public void skip() {
+    LOGGER.info("Server warm-up is disabled; skipping it.");
+    markComplete("Server warm-up was skipped.");
+  }
+
+  /**
+   * Runs the warm-up on the current {@link Thread}. Any failures will be logged but will otherwise
+   * not prevent the server from being marked ready: warm-up is an optimization, not a requirement.
+   */
+  public void run() {
+    LOGGER.info("Server warm-up: running...");
+    Timer.Context timerWarmup =
+        metricRegistry.timer(MetricRegistry.name(getClass().getSimpleName(), "warmup")).time();
+    try {
+      TransformerUtils.preloadLookupTables();
+      warmupBeneficiaries();
+      for (ClaimType claimType : ClaimType.values()) warmupClaimType(claimType);
+
+      long warmupMilliseconds = timerWarmup.stop() / 1000000;
+      LOGGER.info("Server warm-up: complete, after {} ms.", warmupMilliseconds);
+      markComplete(String.format("Server warm-up completed in %d ms.", warmupMilliseconds));
+    } catch (RuntimeException e) {
+      timerWarmup.stop();
+      LOGGER.warn("Server warm-up: failed. Server will be marked ready anyways.", e);
+      markComplete("Server warm-up failed: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @param message the value to report in this warm-up's {@link HealthCheck} result from now on
+   */
+  private void markComplete(String message) {
+    this.completionMessage = message;
+    this.complete = true;
+  }
+
+  /**
+   * Warms up the {@link Beneficiary} queries used by {@link PatientResourceProvider} and {@link
+   * CoverageResourceProvider}, along with their transformers.
+   */
+  private void warmupBeneficiaries() {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+
+    CriteriaQuery<Beneficiary> criteria = builder.createQuery(Beneficiary.class);
+    Root<Beneficiary> root = criteria.from(Beneficiary.class);
+    criteria.select(root);
+    criteria.where(builder.equal(root.get(Beneficiary_.beneficiaryId), WARMUP_BENE_ID));
+    entityManager.createQuery(criteria).getResultList();
+
+    CriteriaQuery<Beneficiary> sampleCriteria = builder.createQuery(Beneficiary.class);
+    sampleCriteria.select(sampleCriteria.from(Beneficiary.class));
+    List<Beneficiary> sampleBenes =
+        entityManager.createQuery(sampleCriteria).setMaxResults(1).getResultList();
+    for (Beneficiary sampleBene : sampleBenes) {
+      BeneficiaryTransformer.transform(metricRegistry, sampleBene, Arrays.asList(""));
+      CoverageTransformer.transform(metricRegistry, sampleBene);
+    }
+  }
+
+  /**
+   * Warms up the queries used by {@link ExplanationOfBenefitResourceProvider} for the specified
+   * {@link ClaimType}, along with its transformer and the {@link SamhsaMatcher}.
+   *
+   * @param claimType the {@link ClaimType} to warm up
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private void warmupClaimType(ClaimType claimType) {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+
+    // Same query shape as ExplanationOfBenefitResourceProvider.findClaimTypeByPatient(...).
+    CriteriaQuery criteria = builder.createQuery((Class) claimType.getEntityClass());
+    Root root = criteria.from(claimType.getEntityClass());
+    claimType.getEntityLazyAttributes().stream().forEach(a -> root.fetch(a));
+    criteria.select(root).distinct(true);
+    criteria.where(
+        builder.equal(root.get(claimType.getEntityBeneficiaryIdAttribute()), WARMUP_BENE_ID));
+    entityManager.createQuery(criteria).getResultList();
+
+    /*
+     * Find a sample claim to transform. This has to be done in two steps, as limiting the results
+     * of a query with collection fetches would force Hibernate to load the whole table into memory.
+     */
+    CriteriaQuery sampleIdCriteria = builder.createQuery();
+    Root sampleIdRoot = sampleIdCriteria.from(claimType.getEntityClass());
+    sampleIdCriteria.select(sampleIdRoot.get(claimType.getEntityIdAttribute()));
+    List<Object> sampleIds =
+        entityManager.createQuery(sampleIdCriteria).setMaxResults(1).getResultList();
+    if (sampleIds.isEmpty()) return;
+
+    // Same query shape as ExplanationOfBenefitResourceProvider.read(...).
+    CriteriaQuery sampleCriteria = builder.createQuery((Class) claimType.getEntityClass());
+    Root sampleRoot = sampleCriteria.from(claimType.getEntityClass());
+    claimType.getEntityLazyAttributes().stream().forEach(a -> sampleRoot.fetch(a));
+    sampleCriteria.select(sampleRoot);
+    sampleCriteria.where(
+        builder.equal(sampleRoot.get(claimType.getEntityIdAttribute()), sampleIds.get(0)));
+    for (Object claimEntity : entityManager.createQuery(sampleCriteria).getResultList()) {
+      ExplanationOfBenefit eob = claimType.getTransformer().apply(metricRegistry, claimEntity);
+      samhsaMatcher.test(eob);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.model.api.annotation.ResourceDef;
+import gov.cms.bfd.server.war.StreamingBundleInterceptor;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.function.Supplier;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Resource;
+
+/**
+ * A {@link Bundle} whose entries aren't actually stored in it, but are instead produced one at a
+ * time, as the response is written out by {@link StreamingBundleInterceptor}. This allows large
+ * search results to be written out without ever having all of the transformed resources in memory
+ * at once.
+ *
+ * <p>Aside from its entries, which must not be added directly, this {@link Bundle} should be
+ * populated as usual (e.g. {@link #setTotal(int)}, {@link #addLink()}, etc.).
+ */
+@ResourceDef(name = "Bundle", profile = "http://hl7.org/fhir/Profile/Bundle")
+public final class StreamingBundle extends Bundle {
+  private static final long serialVersionUID = 1L;
+
+  private final transient List<Supplier<? extends Resource>> entrySuppliers;
+
+  /**
+   * Constructs a new {@link StreamingBundle}.
+   *
+   * @param entrySuppliers the {@link Supplier}s that will produce each of this {@link Bundle}'s
+   *     entries' resources, in order, which must be a mutable {@link List}; any that produce <code>
+   *     null</code> (e.g. because the resource turned out to be missing) will be left out
+   */
+  public StreamingBundle(List<Supplier<? extends Resource>> entrySuppliers) {
+    this.entrySuppliers = entrySuppliers;
+  }
+
+  /**
+   * @return a {@link ListIterator} over the {@link Supplier}s for this {@link Bundle}'s entries'
+   *     resources, which callers should {@link ListIterator#set(Object)} to <code>null</code> after
+   *     each one has been written out, so that it can be garbage collected
+   */
+  public ListIterator<Supplier<? extends Resource>> entrySuppliers() {
+    return entrySuppliers.listIterator();
+  }
+
+  /**
+   * @return the number of entry suppliers in this {@link Bundle}, which is also its number of
+   *     entries unless some of them produce <code>null</code>
+   */
+  public int getEntrySupplierCount() {
+    return entrySuppliers.size();
+  }
+
+  /**
+   * Adds all of this {@link StreamingBundle}'s entries to it, as regular {@link
+   * BundleEntryComponent}s (decoding any {@link EncodedExplanationOfBenefit}s). This is only
+   * intended for use when a response has to be written out without streaming.
+   */
+  public void materialize() {
+    for (ListIterator<Supplier<? extends Resource>> entrySuppliersIter = entrySuppliers();
+        entrySuppliersIter.hasNext(); ) {
+      Resource resource = entrySuppliersIter.next().get();
+      entrySuppliersIter.remove();
+      if (resource == null) continue;
+      if (resource instanceof EncodedExplanationOfBenefit)
+        resource = ((EncodedExplanationOfBenefit) resource).decode();
+      addEntry().setResource(resource);
+    }
+  }
+}
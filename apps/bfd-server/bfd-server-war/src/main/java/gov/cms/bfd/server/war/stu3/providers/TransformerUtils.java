@@ -3,6 +3,7 @@ package gov.cms.bfd.server.war.stu3.providers;
 import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import com.codahale.metrics.MetricRegistry;
 import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
@@ -13,6 +14,7 @@ import gov.cms.bfd.model.rif.Beneficiary;
 import gov.cms.bfd.model.rif.CarrierClaim;
 import gov.cms.bfd.model.rif.CarrierClaimColumn;
 import gov.cms.bfd.model.rif.CarrierClaimLine;
+import gov.cms.bfd.model.rif.CompactValues;
 import gov.cms.bfd.model.rif.DMEClaim;
 import gov.cms.bfd.model.rif.DMEClaimColumn;
 import gov.cms.bfd.model.rif.DMEClaimLine;
@@ -32,6 +34,7 @@ import gov.cms.bfd.model.rif.SNFClaimColumn;
 import gov.cms.bfd.model.rif.SNFClaimLine;
 import gov.cms.bfd.model.rif.parse.InvalidRifValueException;
 import gov.cms.bfd.server.war.FDADrugDataUtilityApp;
+import gov.cms.bfd.server.war.QueryLoggingListener;
 import gov.cms.bfd.server.war.stu3.providers.BeneficiaryTransformer.CurrencyIdentifier;
 import gov.cms.bfd.server.war.stu3.providers.Diagnosis.DiagnosisLabel;
 import java.io.BufferedReader;
@@ -45,8 +48,12 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneRules;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -55,11 +62,15 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent;
@@ -113,6 +124,17 @@ import org.slf4j.MDC;
 public final class TransformerUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(TransformerUtils.class);
 
+  /**
+   * Formats the <code>_lastUpdated</code> bounds in paging links and cache keys. These always
+   * include milliseconds, so that HAPI parses them back with millisecond precision, and so into
+   * exactly the same (inclusive) bounds.
+   */
+  private static final DateTimeFormatter LAST_UPDATED_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+  /** The number of seconds in a day, as used by {@link #convertEpochDayToDate(int)}. */
+  private static final long SECONDS_PER_DAY = 24L * 60L * 60L;
+
   /**
    * Tracks the {@link CcwCodebookVariable}s that have already had code lookup failures due to
    * missing {@link Value} matches. Why track this? To ensure that we don't spam log events for
@@ -194,7 +216,21 @@ public final class TransformerUtils {
    */
   static void addAdjudicationTotal(
       ExplanationOfBenefit eob, CcwCodebookVariable categoryVariable, Number totalAmountValue) {
-    addAdjudicationTotal(eob, categoryVariable, Optional.of(totalAmountValue));
+    String extensionUrl = calculateVariableReferenceUrl(categoryVariable);
+    eob.addExtension(new Extension(extensionUrl, createMoney(totalAmountValue)));
+  }
+
+  /**
+   * @param eob the {@link ExplanationOfBenefit} that the adjudication total should be part of
+   * @param categoryVariable the {@link CcwCodebookVariable} to map to the adjudication's <code>
+   *     category</code>
+   * @param totalAmountCents the {@link Money#getValue()} for the adjudication total, in cents, as
+   *     read from a compact entity field (see {@link CompactValues})
+   */
+  static void addAdjudicationTotalFromCents(
+      ExplanationOfBenefit eob, CcwCodebookVariable categoryVariable, long totalAmountCents) {
+    String extensionUrl = calculateVariableReferenceUrl(categoryVariable);
+    eob.addExtension(new Extension(extensionUrl, createMoneyFromCents(totalAmountCents)));
   }
 
   /**
@@ -203,23 +239,34 @@ public final class TransformerUtils {
    */
   static Money createMoney(Optional<? extends Number> amountValue) {
     if (!amountValue.isPresent()) throw new IllegalArgumentException();
+    return createMoney(amountValue.get());
+  }
+
+  /**
+   * @param amountValue the value to use for {@link Money#getValue()}
+   * @return a new {@link Money} instance, with the specified {@link Money#getValue()}
+   */
+  static Money createMoney(Number amountValue) {
+    Objects.requireNonNull(amountValue);
 
     Money money = new Money();
     money.setSystem(TransformerConstants.CODING_MONEY);
     money.setCode(TransformerConstants.CODED_MONEY_USD);
 
-    if (amountValue.get() instanceof BigDecimal) money.setValue((BigDecimal) amountValue.get());
+    if (amountValue instanceof BigDecimal) money.setValue((BigDecimal) amountValue);
     else throw new BadCodeMonkeyException();
 
     return money;
   }
 
   /**
-   * @param amountValue the value to use for {@link Money#getValue()}
+   * @param amountCents the value to use for {@link Money#getValue()}, in cents, as read from a
+   *     compact entity field (see {@link CompactValues})
    * @return a new {@link Money} instance, with the specified {@link Money#getValue()}
    */
-  static Money createMoney(Number amountValue) {
-    return createMoney(Optional.of(amountValue));
+  static Money createMoneyFromCents(long amountCents) {
+    if (amountCents == CompactValues.ABSENT_CENTS) throw new IllegalArgumentException();
+    return createMoney(CompactValues.centsToDecimal(amountCents));
   }
 
   /**
@@ -667,6 +714,27 @@ public final class TransformerUtils {
     return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
   }
 
+  /**
+   * @param epochDay the {@link LocalDate#toEpochDay()} value to convert, as read from a compact
+   *     entity field (see {@link CompactValues})
+   * @return a {@link Date} version of the specified date, just as {@link #convertToDate(LocalDate)}
+   *     would return
+   */
+  static Date convertEpochDayToDate(int epochDay) {
+    if (epochDay == CompactValues.ABSENT_EPOCH_DAY) throw new IllegalArgumentException();
+
+    /*
+     * When the system TZ has a fixed offset (e.g. UTC, as our servers use), the start of the day
+     * can be computed directly, without the intermediate LocalDate, ZonedDateTime, and Instant.
+     */
+    ZoneRules zoneRules = ZoneId.systemDefault().getRules();
+    if (zoneRules.isFixedOffset()) {
+      long offsetSeconds = zoneRules.getOffset(Instant.EPOCH).getTotalSeconds();
+      return new Date((epochDay * SECONDS_PER_DAY - offsetSeconds) * 1000L);
+    }
+    return convertToDate(CompactValues.epochDayToDate(epochDay));
+  }
+
   /**
    * @param codingSystem the {@link Coding#getSystem()} to use
    * @param codingCode the {@link Coding#getCode()} to use
@@ -1233,6 +1301,22 @@ public final class TransformerUtils {
     validatePeriodDates(dateFrom.get(), dateThrough.get());
   }
 
+  /**
+   * validate the from/thru dates to ensure the from date is before or the same as the thru date
+   *
+   * @param dateFromEpochDay start date, as an epoch day or {@link CompactValues#ABSENT_EPOCH_DAY}
+   * @param dateThroughEpochDay through date to verify, as an epoch day or {@link
+   *     CompactValues#ABSENT_EPOCH_DAY}
+   */
+  static void validatePeriodEpochDays(int dateFromEpochDay, int dateThroughEpochDay) {
+    if (dateFromEpochDay == CompactValues.ABSENT_EPOCH_DAY) return;
+    if (dateThroughEpochDay == CompactValues.ABSENT_EPOCH_DAY) return;
+    if (dateFromEpochDay > dateThroughEpochDay)
+      validatePeriodDates(
+          CompactValues.epochDayToDate(dateFromEpochDay),
+          CompactValues.epochDayToDate(dateThroughEpochDay));
+  }
+
   /**
    * Adds field values to the benefit balance component that are common between the Inpatient and
    * SNF claim types.
@@ -1571,6 +1655,56 @@ public final class TransformerUtils {
     }
   }
 
+  /**
+   * Transforms the common group level header fields between all claim types, for those claim types
+   * whose entities store their dates and amounts as compact fields (see {@link CompactValues}).
+   *
+   * @param eob the {@link ExplanationOfBenefit} to modify
+   * @param claimId CLM_ID
+   * @param beneficiaryId BENE_ID
+   * @param claimType {@link ClaimType} to process
+   * @param claimGroupId CLM_GRP_ID
+   * @param coverageType {@link MedicareSegment}
+   * @param dateFromEpochDay CLM_FROM_DT, or {@link CompactValues#ABSENT_EPOCH_DAY}
+   * @param dateThroughEpochDay CLM_THRU_DT, or {@link CompactValues#ABSENT_EPOCH_DAY}
+   * @param paymentAmountCents CLM_PMT_AMT, or {@link CompactValues#ABSENT_CENTS}
+   * @param finalAction FINAL_ACTION
+   */
+  static void mapEobCommonClaimHeaderData(
+      ExplanationOfBenefit eob,
+      String claimId,
+      String beneficiaryId,
+      ClaimType claimType,
+      String claimGroupId,
+      MedicareSegment coverageType,
+      int dateFromEpochDay,
+      int dateThroughEpochDay,
+      long paymentAmountCents,
+      char finalAction) {
+    mapEobCommonClaimHeaderData(
+        eob,
+        claimId,
+        beneficiaryId,
+        claimType,
+        claimGroupId,
+        coverageType,
+        Optional.empty(),
+        Optional.empty(),
+        Optional.empty(),
+        finalAction);
+
+    if (dateFromEpochDay != CompactValues.ABSENT_EPOCH_DAY) {
+      validatePeriodEpochDays(dateFromEpochDay, dateThroughEpochDay);
+      eob.getBillablePeriod()
+          .setStart(convertEpochDayToDate(dateFromEpochDay), TemporalPrecisionEnum.DAY)
+          .setEnd(convertEpochDayToDate(dateThroughEpochDay), TemporalPrecisionEnum.DAY);
+    }
+
+    if (paymentAmountCents != CompactValues.ABSENT_CENTS) {
+      eob.getPayment().setAmount(createMoneyFromCents(paymentAmountCents));
+    }
+  }
+
   /**
    * Transforms the common group level data elements between the {@link CarrierClaim} and {@link
    * DMEClaim} claim types to FHIR. The method parameter fields from {@link CarrierClaim} and {@link
@@ -1654,8 +1788,10 @@ public final class TransformerUtils {
    * @param claimId CLM_ID,
    * @param serviceCount LINE_SRVC_CNT,
    * @param placeOfServiceCode LINE_PLACE_OF_SRVC_CD,
-   * @param firstExpenseDate LINE_1ST_EXPNS_DT,
-   * @param lastExpenseDate LINE_LAST_EXPNS_DT,
+   * @param firstExpenseEpochDay LINE_1ST_EXPNS_DT, as an epoch day or {@link
+   *     CompactValues#ABSENT_EPOCH_DAY}
+   * @param lastExpenseEpochDay LINE_LAST_EXPNS_DT, as an epoch day or {@link
+   *     CompactValues#ABSENT_EPOCH_DAY}
    * @param beneficiaryPaymentAmount LINE_BENE_PMT_AMT,
    * @param providerPaymentAmount LINE_PRVDR_PMT_AMT,
    * @param beneficiaryPartBDeductAmount LINE_BENE_PTB_DDCTBL_AMT,
@@ -1685,8 +1821,8 @@ public final class TransformerUtils {
       String claimId,
       BigDecimal serviceCount,
       String placeOfServiceCode,
-      Optional<LocalDate> firstExpenseDate,
-      Optional<LocalDate> lastExpenseDate,
+      int firstExpenseEpochDay,
+      int lastExpenseEpochDay,
       BigDecimal beneficiaryPaymentAmount,
       BigDecimal providerPaymentAmount,
       BigDecimal beneficiaryPartBDeductAmount,
@@ -1721,12 +1857,13 @@ public final class TransformerUtils {
       item.addExtension(createExtensionCoding(eob, CcwCodebookVariable.BETOS_CD, betosCode));
     }
 
-    if (firstExpenseDate.isPresent() && lastExpenseDate.isPresent()) {
-      validatePeriodDates(firstExpenseDate, lastExpenseDate);
+    if (firstExpenseEpochDay != CompactValues.ABSENT_EPOCH_DAY
+        && lastExpenseEpochDay != CompactValues.ABSENT_EPOCH_DAY) {
+      validatePeriodEpochDays(firstExpenseEpochDay, lastExpenseEpochDay);
       item.setServiced(
           new Period()
-              .setStart((convertToDate(firstExpenseDate.get())), TemporalPrecisionEnum.DAY)
-              .setEnd((convertToDate(lastExpenseDate.get())), TemporalPrecisionEnum.DAY));
+              .setStart(convertEpochDayToDate(firstExpenseEpochDay), TemporalPrecisionEnum.DAY)
+              .setEnd(convertEpochDayToDate(lastExpenseEpochDay), TemporalPrecisionEnum.DAY));
     }
 
     AdjudicationComponent adjudicationForPayment = item.addAdjudication();
@@ -2888,6 +3025,21 @@ public final class TransformerUtils {
     return ndcProductHashMap;
   }
 
+  /**
+   * Eagerly loads all of the lookup tables (ICD, procedure, NPI, and NDC codes, along with the CCW
+   * codebook data) that would otherwise only be loaded lazily, the first time they're needed. Those
+   * loads are slow, so it's best to run this at startup, rather than during a request.
+   */
+  public static void preloadLookupTables() {
+    if (icdMap == null) icdMap = readIcdCodeFile();
+    if (procedureMap == null) procedureMap = readProcedureCodeFile();
+    if (npiMap == null) npiMap = readNpiCodeFile();
+    if (ndcProductMap == null) ndcProductMap = readFDADrugCodeFile();
+
+    // Accessing any variable will trigger the (slow) unmarshalling of all the codebooks.
+    CcwCodebookVariable.BENE_ID.getVariable();
+  }
+
   /**
    * @param metricRegistry the {@link MetricRegistry} to use
    * @param rifRecord the RIF record (e.g. a {@link CarrierClaim} instance) to transform
@@ -2913,6 +3065,8 @@ public final class TransformerUtils {
    * @param resourceType the {@link String} the resource being provided by the paging link
    * @param identifier the {@link String} field the search is being performed on
    * @param value the {@link String} value of the identifier being searched for
+   * @param lastUpdated the <code>_lastUpdated</code> range that was searched for, or <code>null
+   *     </code>, which will be carried into the paging links
    * @param resources a list of {@link ExplanationOfBenefit}s, {@link Coverage}s, or {@link
    *     Patient}s, of which a portion or all will be added to the bundle based on the paging values
    * @return Returns a {@link Bundle} of either {@link ExplanationOfBenefit}s, {@link Coverage}s, or
@@ -2923,6 +3077,7 @@ public final class TransformerUtils {
       String resourceType,
       String identifier,
       String value,
+      DateRangeParam lastUpdated,
       List<IBaseResource> resources) {
     Bundle bundle = new Bundle();
     if (pagingArgs.isPagingRequested()) {
@@ -2937,12 +3092,12 @@ public final class TransformerUtils {
           resources.subList(pagingArgs.getStartIndex(), endIndex);
       bundle = TransformerUtils.addResourcesToBundle(bundle, resourcesSubList);
       TransformerUtils.addPagingLinks(
-          pagingArgs, bundle, resourceType, identifier, value, resources.size());
+          pagingArgs, bundle, resourceType, identifier, value, lastUpdated, resources.size());
     } else {
       bundle = TransformerUtils.addResourcesToBundle(bundle, resources);
     }
 
-    bundle.setTotal(resources.size());
+    if (pagingArgs.isTotalRequested()) bundle.setTotal(resources.size());
     return bundle;
   }
 
@@ -2969,6 +3124,8 @@ public final class TransformerUtils {
    * @param resource the {@link String} the resource being provided by the paging link
    * @param searchByDesc the {@link String} field the search is being performed on
    * @param identifier the {@link String} identifier being searched for
+   * @param lastUpdated the <code>_lastUpdated</code> range that was searched for, or <code>null
+   *     </code>, which will be carried into each of the links
    * @param numTotalResults the number of total resources matching the {@link
    *     Beneficiary#getBeneficiaryId()}
    */
@@ -2978,19 +3135,62 @@ public final class TransformerUtils {
       String resource,
       String searchByDesc,
       String identifier,
+      DateRangeParam lastUpdated,
       int numTotalResults) {
+    addPagingLinks(
+        pagingArgs,
+        bundle,
+        resource,
+        searchByDesc,
+        identifier,
+        lastUpdated,
+        pagingArgs.getStartIndex() + pagingArgs.getPageSize() < numTotalResults,
+        pagingArgs.isTotalRequested() ? Optional.of(numTotalResults) : Optional.empty());
+  }
+
+  /**
+   * @param pagingArgs a {@link PagingArguments} used to determine if paging is requested and the
+   *     parameters for doing so
+   * @param bundle the {@link Bundle} to which links are being added
+   * @param resource the {@link String} the resource being provided by the paging link
+   * @param searchByDesc the {@link String} field the search is being performed on
+   * @param identifier the {@link String} identifier being searched for
+   * @param lastUpdated the <code>_lastUpdated</code> range that was searched for, or <code>null
+   *     </code>, which will be carried into each of the links
+   * @param hasNextPage <code>true</code> if there are more matching resources after the current
+   *     page, <code>false</code> if not
+   * @param numTotalResults the number of total resources matching the {@link
+   *     Beneficiary#getBeneficiaryId()}, if known, which is required for the "last" link
+   */
+  public static void addPagingLinks(
+      PagingArguments pagingArgs,
+      Bundle bundle,
+      String resource,
+      String searchByDesc,
+      String identifier,
+      DateRangeParam lastUpdated,
+      boolean hasNextPage,
+      Optional<Integer> numTotalResults) {
 
     Integer pageSize = pagingArgs.getPageSize();
     Integer startIndex = pagingArgs.getStartIndex();
     String serverBase = pagingArgs.getServerBase();
+    boolean totalRequested = pagingArgs.isTotalRequested();
 
     bundle.addLink(
         new BundleLinkComponent()
             .setRelation(Constants.LINK_FIRST)
             .setUrl(
-                createPagingLink(serverBase + resource, searchByDesc, identifier, 0, pageSize)));
-
-    if (startIndex + pageSize < numTotalResults) {
+                createPagingLink(
+                    serverBase + resource,
+                    searchByDesc,
+                    identifier,
+                    lastUpdated,
+                    0,
+                    pageSize,
+                    totalRequested)));
+
+    if (hasNextPage) {
       bundle.addLink(
           new BundleLinkComponent()
               .setRelation(Constants.LINK_NEXT)
@@ -2999,8 +3199,10 @@ public final class TransformerUtils {
                       serverBase + resource,
                       searchByDesc,
                       identifier,
+                      lastUpdated,
                       startIndex + pageSize,
-                      pageSize)));
+                      pageSize,
+                      totalRequested)));
     }
 
     if (startIndex > 0) {
@@ -3012,17 +3214,22 @@ public final class TransformerUtils {
                       serverBase + resource,
                       searchByDesc,
                       identifier,
+                      lastUpdated,
                       Math.max(startIndex - pageSize, 0),
-                      pageSize)));
+                      pageSize,
+                      totalRequested)));
     }
 
+    // Without the total, there's no way to know where the last page starts.
+    if (!numTotalResults.isPresent()) return;
+
     /*
      * This formula rounds numTotalResults down to the nearest multiple of pageSize
      * that's less than and not equal to numTotalResults
      */
     int lastIndex;
     try {
-      lastIndex = (numTotalResults - 1) / pageSize * pageSize;
+      lastIndex = (numTotalResults.get() - 1) / pageSize * pageSize;
     } catch (ArithmeticException e) {
       throw new InvalidRequestException(String.format("Invalid pageSize '%s'", pageSize));
     }
@@ -3031,17 +3238,31 @@ public final class TransformerUtils {
             .setRelation(Constants.LINK_LAST)
             .setUrl(
                 createPagingLink(
-                    serverBase + resource, searchByDesc, identifier, lastIndex, pageSize)));
+                    serverBase + resource,
+                    searchByDesc,
+                    identifier,
+                    lastUpdated,
+                    lastIndex,
+                    pageSize,
+                    totalRequested)));
   }
 
   /** @return Returns the URL string for a paging link. */
   private static String createPagingLink(
-      String baseURL, String descriptor, String id, int startIndex, int theCount) {
+      String baseURL,
+      String descriptor,
+      String id,
+      DateRangeParam lastUpdated,
+      int startIndex,
+      int theCount,
+      boolean totalRequested) {
     StringBuilder b = new StringBuilder();
     b.append(baseURL);
     b.append(Constants.PARAM_COUNT + "=" + theCount);
     b.append("&startIndex=" + startIndex);
     b.append("&" + descriptor + "=" + id);
+    b.append(createLastUpdatedParams(lastUpdated));
+    if (!totalRequested) b.append("&" + PagingArguments.PARAM_TOTAL + "=none");
 
     return b.toString();
   }
@@ -3068,7 +3289,10 @@ public final class TransformerUtils {
   }
 
   /**
-   * Records the JPA query details in {@link MDC}.
+   * Records the JPA query details in {@link MDC}. Also clears any tag that was set (via {@link
+   * QueryLoggingListener#setQueryTag(QueryLoggingListener.QueryType)}) for the JPA query's SQL
+   * queries, so this should always be called (e.g. in a <code>finally</code> block) once the JPA
+   * query has been run.
    *
    * @param queryId an ID that identifies the type of JPA query being run, e.g. "bene_by_id"
    * @param queryDurationNanoseconds the JPA query's duration, in nanoseconds
@@ -3076,13 +3300,76 @@ public final class TransformerUtils {
    */
   public static void recordQueryInMdc(
       String queryId, long queryDurationNanoseconds, long recordCount) {
-    String keyPrefix = String.format("jpa_query.%s", queryId);
-    MDC.put(
-        String.format("%s.duration_nanoseconds", keyPrefix),
-        Long.toString(queryDurationNanoseconds));
+    QueryLoggingListener.clearQueryTag();
+
+    String keyPrefix = "jpa_query." + queryId;
+    MDC.put(keyPrefix + ".duration_nanoseconds", Long.toString(queryDurationNanoseconds));
     MDC.put(
-        String.format("%s.duration_milliseconds", keyPrefix),
-        Long.toString(queryDurationNanoseconds / 1000000));
-    MDC.put(String.format("%s.record_count", keyPrefix), Long.toString(recordCount));
+        keyPrefix + ".duration_milliseconds", Long.toString(queryDurationNanoseconds / 1000000));
+    MDC.put(keyPrefix + ".record_count", Long.toString(recordCount));
+  }
+
+  /**
+   * Creates a JPA {@link Predicate} for the FHIR <code>_lastUpdated</code> search parameter. Note
+   * that records loaded before the <code>lastUpdated</code> columns were added will have a null
+   * value there, and so will never match a <code>_lastUpdated</code> search.
+   *
+   * @param builder the {@link CriteriaBuilder} being used to build the query
+   * @param lastUpdatedPath the {@link Path} to the entity's <code>lastUpdated</code> field
+   * @param lastUpdated the <code>_lastUpdated</code> {@link DateRangeParam} to match
+   * @return a {@link Predicate} that will match only those entities whose <code>lastUpdated</code>
+   *     value falls within the specified range
+   */
+  public static Predicate createLastUpdatedPredicate(
+      CriteriaBuilder builder, Path<Instant> lastUpdatedPath, DateRangeParam lastUpdated) {
+    // HAPI's "AsInstant" bounds have already been adjusted to be inclusive.
+    Predicate predicate = builder.isNotNull(lastUpdatedPath);
+    Date lowerBound = lastUpdated.getLowerBoundAsInstant();
+    if (lowerBound != null)
+      predicate =
+          builder.and(
+              predicate, builder.greaterThanOrEqualTo(lastUpdatedPath, lowerBound.toInstant()));
+    Date upperBound = lastUpdated.getUpperBoundAsInstant();
+    if (upperBound != null)
+      predicate =
+          builder.and(
+              predicate, builder.lessThanOrEqualTo(lastUpdatedPath, upperBound.toInstant()));
+    return predicate;
+  }
+
+  /**
+   * @param lastUpdated the (possibly <code>null</code>) <code>_lastUpdated</code> {@link
+   *     DateRangeParam} for a search
+   * @return a {@link ResourceCache} key suffix that uniquely identifies the specified range, or an
+   *     empty {@link String} if there is none, which is the same as {@link
+   *     #createLastUpdatedParams(DateRangeParam)}
+   */
+  public static String createLastUpdatedCacheKey(DateRangeParam lastUpdated) {
+    return createLastUpdatedParams(lastUpdated);
+  }
+
+  /**
+   * @param lastUpdated the (possibly <code>null</code>) <code>_lastUpdated</code> {@link
+   *     DateRangeParam} for a search
+   * @return the URL query parameters (each starting with <code>&amp;</code>) for the specified
+   *     range, as its inclusive <code>ge</code>/<code>le</code> bounds, which HAPI will parse back
+   *     into exactly the same range, or an empty {@link String} if there is none
+   */
+  public static String createLastUpdatedParams(DateRangeParam lastUpdated) {
+    if (lastUpdated == null) return "";
+
+    // HAPI's "AsInstant" bounds have already been adjusted to be inclusive.
+    StringBuilder params = new StringBuilder();
+    Date lowerBound = lastUpdated.getLowerBoundAsInstant();
+    if (lowerBound != null)
+      params
+          .append("&_lastUpdated=ge")
+          .append(LAST_UPDATED_FORMATTER.format(lowerBound.toInstant()));
+    Date upperBound = lastUpdated.getUpperBoundAsInstant();
+    if (upperBound != null)
+      params
+          .append("&_lastUpdated=le")
+          .append(LAST_UPDATED_FORMATTER.format(upperBound.toInstant()));
+    return params.toString();
   }
 }
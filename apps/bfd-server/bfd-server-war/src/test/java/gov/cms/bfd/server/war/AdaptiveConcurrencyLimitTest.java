@@ -0,0 +1,123 @@
+package gov.cms.bfd.server.war;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link AdaptiveConcurrencyLimit}. */
+public final class AdaptiveConcurrencyLimitTest {
+  /**
+   * Verifies that {@link AdaptiveConcurrencyLimit} admits requests up to its limit, queues (only)
+   * as many as it's allowed to, and rejects the rest.
+   *
+   * @throws InterruptedException (indicates test failure)
+   */
+  @Test
+  public void admitsUpToLimit() throws InterruptedException {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 2, 10, 0);
+
+    Assert.assertTrue(limit.tryAcquire(0));
+    Assert.assertTrue(limit.tryAcquire(0));
+    Assert.assertEquals(2, limit.getInFlight());
+
+    // The limit has been reached, and there's no queue, so the next request should be rejected.
+    Assert.assertFalse(limit.tryAcquire(10));
+
+    limit.release(TimeUnit.MILLISECONDS.toNanos(10), 1);
+    Assert.assertEquals(1, limit.getInFlight());
+    Assert.assertTrue(limit.tryAcquire(0));
+  }
+
+  /**
+   * Verifies that {@link AdaptiveConcurrencyLimit} lets queued requests through once a slot frees
+   * up, and times them out if one doesn't.
+   *
+   * @throws InterruptedException (indicates test failure)
+   */
+  @Test
+  public void queuesBriefly() throws InterruptedException {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 1, 1);
+    Assert.assertTrue(limit.tryAcquire(0));
+
+    // Nothing will free up the slot, so this should time out.
+    long start = System.nanoTime();
+    Assert.assertFalse(limit.tryAcquire(50));
+    Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    Assert.assertEquals(0, limit.getQueued());
+
+    // Free up the slot from another thread while this one is waiting.
+    Thread releaser =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(50);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              limit.release(TimeUnit.MILLISECONDS.toNanos(10), 1);
+            });
+    releaser.start();
+    Assert.assertTrue(limit.tryAcquire(10 * 1000));
+    releaser.join();
+    Assert.assertEquals(1, limit.getInFlight());
+  }
+
+  /**
+   * Verifies that {@link AdaptiveConcurrencyLimit} raises its limit while busy requests stay fast,
+   * and cuts it once they slow down.
+   *
+   * @throws InterruptedException (indicates test failure)
+   */
+  @Test
+  public void adaptsToLatency() throws InterruptedException {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 10, 100, 0);
+
+    // Keep the limit fully used, with fast requests.
+    for (int i = 0; i < 50; i++) {
+      while (limit.tryAcquire(0)) {}
+      limit.release(TimeUnit.MILLISECONDS.toNanos(10), 1);
+    }
+    int raisedLimit = limit.getLimit();
+    Assert.assertTrue("Limit: " + raisedLimit, raisedLimit > 10);
+
+    // Now make the requests much slower.
+    for (int i = 0; i < 50; i++) {
+      while (limit.tryAcquire(0)) {}
+      limit.release(TimeUnit.MILLISECONDS.toNanos(100), 1);
+    }
+    Assert.assertTrue("Limit: " + limit.getLimit(), limit.getLimit() < raisedLimit);
+  }
+
+  /**
+   * Verifies that {@link AdaptiveConcurrencyLimit} doesn't cut its limit just because some requests
+   * return far more resources (and so take far longer) than others.
+   *
+   * @throws InterruptedException (indicates test failure)
+   */
+  @Test
+  public void normalizesByResultCount() throws InterruptedException {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 10, 100, 0);
+
+    // Keep the limit fully used, with a steady mix of small fast results and large slow ones.
+    for (int i = 0; i < 50; i++) {
+      while (limit.tryAcquire(0)) {}
+      if (i % 2 == 0) limit.release(TimeUnit.MILLISECONDS.toNanos(10), 1);
+      else limit.release(TimeUnit.MILLISECONDS.toNanos(500), 1000);
+    }
+    Assert.assertTrue("Limit: " + limit.getLimit(), limit.getLimit() > 10);
+  }
+
+  /**
+   * Verifies that {@link AdaptiveConcurrencyLimit#computeResultCountBucket(int)} groups result
+   * counts by power of two.
+   */
+  @Test
+  public void computeResultCountBucket() {
+    Assert.assertEquals(0, AdaptiveConcurrencyLimit.computeResultCountBucket(0));
+    Assert.assertEquals(1, AdaptiveConcurrencyLimit.computeResultCountBucket(1));
+    Assert.assertEquals(2, AdaptiveConcurrencyLimit.computeResultCountBucket(2));
+    Assert.assertEquals(2, AdaptiveConcurrencyLimit.computeResultCountBucket(3));
+    Assert.assertEquals(3, AdaptiveConcurrencyLimit.computeResultCountBucket(4));
+    Assert.assertEquals(31, AdaptiveConcurrencyLimit.computeResultCountBucket(Integer.MAX_VALUE));
+  }
+}
@@ -0,0 +1,32 @@
+package gov.cms.bfd.server.war;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link AdaptivePoolSizer}. */
+public final class AdaptivePoolSizerTest {
+  /**
+   * Verifies that {@link AdaptivePoolSizer#computePoolSize(int, int, int, int, int)} grows pools
+   * that have threads waiting on them, up to their upper bound.
+   */
+  @Test
+  public void growsSaturatedPools() {
+    Assert.assertEquals(7, AdaptivePoolSizer.computePoolSize(4, 3, -1, 2, 20));
+    Assert.assertEquals(20, AdaptivePoolSizer.computePoolSize(18, 10, 18, 2, 20));
+    Assert.assertEquals(20, AdaptivePoolSizer.computePoolSize(20, 10, 20, 2, 20));
+  }
+
+  /**
+   * Verifies that {@link AdaptivePoolSizer#computePoolSize(int, int, int, int, int)} shrinks pools
+   * that have been mostly idle, down to their lower bound, and leaves others alone.
+   */
+  @Test
+  public void shrinksIdlePools() {
+    Assert.assertEquals(9, AdaptivePoolSizer.computePoolSize(10, 0, 2, 2, 20));
+    Assert.assertEquals(2, AdaptivePoolSizer.computePoolSize(2, 0, 0, 2, 20));
+
+    // Pools that are busy enough (or haven't been watched for long enough) should be left alone.
+    Assert.assertEquals(10, AdaptivePoolSizer.computePoolSize(10, 0, 5, 2, 20));
+    Assert.assertEquals(10, AdaptivePoolSizer.computePoolSize(10, 0, -1, 2, 20));
+  }
+}
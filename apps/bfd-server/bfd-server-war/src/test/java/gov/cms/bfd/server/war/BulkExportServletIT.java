@@ -0,0 +1,275 @@
+package gov.cms.bfd.server.war;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.InpatientClaim;
+import gov.cms.bfd.model.rif.SNFClaim;
+import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
+import gov.cms.bfd.pipeline.rif.load.RifLoaderTestUtils;
+import gov.cms.bfd.server.war.stu3.providers.ClaimType;
+import gov.cms.bfd.server.war.stu3.providers.MedicareSegment;
+import gov.cms.bfd.server.war.stu3.providers.TransformerUtils;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Integration tests for {@link BulkExportServlet} (and the {@link
+ * gov.cms.bfd.server.war.stu3.providers.BulkExporter} behind it).
+ */
+public final class BulkExportServletIT {
+  /** The maximum amount of time to wait for an export job to complete. */
+  private static final long EXPORT_TIMEOUT_MILLISECONDS = 2 * 60 * 1000;
+
+  /** A SAMHSA-related DRG code, from <code>samhsa-related-codes/codes-drg.csv</code>. */
+  private static final String SAMHSA_DRG_CODE = "522";
+
+  /**
+   * Verifies that a system-level <code>$export</code> of all the supported resource types works as
+   * expected, producing one NDJSON line for each {@link Beneficiary}-derived and claim-derived
+   * resource in the database.
+   *
+   * @throws Exception (indicates test failure)
+   */
+  @Test
+  public void exportAll() throws Exception {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    long beneficiaryCount = loadedRecords.stream().filter(r -> r instanceof Beneficiary).count();
+    long claimCount =
+        loadedRecords.stream()
+            .filter(r -> Arrays.stream(ClaimType.values()).anyMatch(t -> isClaimType(t, r)))
+            .count();
+
+    try (CloseableHttpClient httpClient = createHttpClient()) {
+      String statusUrl = kickoff(httpClient, "");
+      JsonNode manifest = waitForManifest(httpClient, statusUrl);
+      Assert.assertFalse(manifest.get("requiresAccessToken").asBoolean());
+      Assert.assertEquals(0, manifest.get("error").size());
+
+      Map<String, Long> lineCounts = new HashMap<>();
+      for (JsonNode output : manifest.get("output")) {
+        String type = output.get("type").asText();
+        long fileLineCount = download(httpClient, output.get("url").asText()).split("\n").length;
+        lineCounts.merge(type, fileLineCount, Long::sum);
+      }
+
+      Assert.assertEquals(Long.valueOf(beneficiaryCount), lineCounts.get("Patient"));
+      Assert.assertEquals(
+          Long.valueOf(beneficiaryCount * MedicareSegment.values().length),
+          lineCounts.get("Coverage"));
+      Assert.assertEquals(Long.valueOf(claimCount), lineCounts.get("ExplanationOfBenefit"));
+    }
+  }
+
+  /**
+   * Verifies that <code>$export</code> respects the <code>_type</code> and <code>_since</code>
+   * parameters.
+   *
+   * @throws Exception (indicates test failure)
+   */
+  @Test
+  public void exportWithTypeAndSince() throws Exception {
+    ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+
+    try (CloseableHttpClient httpClient = createHttpClient()) {
+      // Only Patients should be exported.
+      JsonNode manifest = waitForManifest(httpClient, kickoff(httpClient, "?_type=Patient"));
+      Assert.assertEquals(1, manifest.get("output").size());
+      Assert.assertEquals("Patient", manifest.get("output").get(0).get("type").asText());
+
+      // Nothing was updated after the last export was started, so nothing should be exported.
+      String since = manifest.get("transactionTime").asText();
+      manifest = waitForManifest(httpClient, kickoff(httpClient, "?_since=" + since));
+      Assert.assertEquals(0, manifest.get("output").size());
+    }
+  }
+
+  /**
+   * Verifies that <code>$export</code> with <code>excludeSAMHSA=true</code> leaves out claims whose
+   * only SAMHSA-related code is their DRG.
+   *
+   * @throws Exception (indicates test failure)
+   */
+  @Test
+  public void exportExcludesDrgOnlySamhsaClaims() throws Exception {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    long claimCount =
+        loadedRecords.stream()
+            .filter(r -> Arrays.stream(ClaimType.values()).anyMatch(t -> isClaimType(t, r)))
+            .count();
+    InpatientClaim inpatientClaim =
+        loadedRecords.stream()
+            .filter(r -> r instanceof InpatientClaim)
+            .map(r -> (InpatientClaim) r)
+            .findFirst()
+            .get();
+    SNFClaim snfClaim =
+        loadedRecords.stream()
+            .filter(r -> r instanceof SNFClaim)
+            .map(r -> (SNFClaim) r)
+            .findFirst()
+            .get();
+
+    // Tweak the SAMPLE_A Inpatient and SNF claims' DRGs (only) such that they're SAMHSA-related.
+    EntityManagerFactory entityManagerFactory =
+        RifLoaderTestUtils.createEntityManagerFactory(ServerTestUtils.createRifLoaderOptions());
+    try {
+      EntityManager entityManager = entityManagerFactory.createEntityManager();
+      try {
+        entityManager.getTransaction().begin();
+        entityManager
+            .find(InpatientClaim.class, inpatientClaim.getClaimId())
+            .setDiagnosisRelatedGroupCd(Optional.of(SAMHSA_DRG_CODE));
+        entityManager
+            .find(SNFClaim.class, snfClaim.getClaimId())
+            .setDiagnosisRelatedGroupCd(Optional.of(SAMHSA_DRG_CODE));
+        entityManager.getTransaction().commit();
+      } finally {
+        if (entityManager.getTransaction().isActive()) entityManager.getTransaction().rollback();
+        entityManager.close();
+      }
+    } finally {
+      entityManagerFactory.close();
+    }
+
+    try (CloseableHttpClient httpClient = createHttpClient()) {
+      JsonNode manifest =
+          waitForManifest(
+              httpClient, kickoff(httpClient, "?_type=ExplanationOfBenefit&excludeSAMHSA=true"));
+      Assert.assertEquals(0, manifest.get("error").size());
+
+      long eobCount = 0;
+      for (JsonNode output : manifest.get("output")) {
+        String eobs = download(httpClient, output.get("url").asText());
+        eobCount += eobs.split("\n").length;
+        Assert.assertFalse(
+            eobs.contains(
+                TransformerUtils.buildEobId(ClaimType.INPATIENT, inpatientClaim.getClaimId())));
+        Assert.assertFalse(
+            eobs.contains(TransformerUtils.buildEobId(ClaimType.SNF, snfClaim.getClaimId())));
+      }
+      Assert.assertEquals(claimCount - 2, eobCount);
+    }
+  }
+
+  /**
+   * Verifies that <code>$export</code> rejects requests for unsupported resource types, and that
+   * export jobs can be cancelled.
+   *
+   * @throws Exception (indicates test failure)
+   */
+  @Test
+  public void rejectAndCancel() throws Exception {
+    try (CloseableHttpClient httpClient = createHttpClient()) {
+      HttpGet kickoffGet =
+          new HttpGet(
+              String.format(
+                  "%s/v1/fhir/$export?_type=Observation", ServerTestUtils.getServerBaseUrl()));
+      try (CloseableHttpResponse kickoffResponse = httpClient.execute(kickoffGet)) {
+        Assert.assertEquals(400, kickoffResponse.getStatusLine().getStatusCode());
+      }
+
+      String statusUrl = kickoff(httpClient, "");
+      try (CloseableHttpResponse deleteResponse = httpClient.execute(new HttpDelete(statusUrl))) {
+        Assert.assertEquals(202, deleteResponse.getStatusLine().getStatusCode());
+      }
+
+      // Cancellation is asynchronous, but the job should never report itself as complete.
+      try (CloseableHttpResponse statusResponse = httpClient.execute(new HttpGet(statusUrl))) {
+        Assert.assertNotEquals(200, statusResponse.getStatusLine().getStatusCode());
+      }
+    }
+  }
+
+  /**
+   * @param claimType the {@link ClaimType} to check against
+   * @param record the loaded record to check
+   * @return <code>true</code> if the specified record is of the specified {@link ClaimType}, <code>
+   *     false</code> if not
+   */
+  private static boolean isClaimType(ClaimType claimType, Object record) {
+    return claimType.getEntityClass().isInstance(record);
+  }
+
+  /** @return a new {@link CloseableHttpClient} that can talk to the test server */
+  private static CloseableHttpClient createHttpClient() {
+    return HttpClients.custom()
+        .setSSLContext(ServerTestUtils.createSslContext(Optional.of(ClientSslIdentity.TRUSTED)))
+        .build();
+  }
+
+  /**
+   * @param httpClient the {@link CloseableHttpClient} to use
+   * @param query the query string (if any) to append to the <code>$export</code> URL
+   * @return the status URL of the new export job
+   * @throws IOException (indicates test failure)
+   */
+  private static String kickoff(CloseableHttpClient httpClient, String query) throws IOException {
+    HttpGet kickoffGet =
+        new HttpGet(
+            String.format("%s/v1/fhir/$export%s", ServerTestUtils.getServerBaseUrl(), query));
+    try (CloseableHttpResponse kickoffResponse = httpClient.execute(kickoffGet)) {
+      Assert.assertEquals(202, kickoffResponse.getStatusLine().getStatusCode());
+      return kickoffResponse.getFirstHeader("Content-Location").getValue();
+    }
+  }
+
+  /**
+   * @param httpClient the {@link CloseableHttpClient} to use
+   * @param statusUrl the status URL of the export job to wait for
+   * @return the export job's completion manifest
+   * @throws Exception (indicates test failure)
+   */
+  private static JsonNode waitForManifest(CloseableHttpClient httpClient, String statusUrl)
+      throws Exception {
+    long timeout = System.currentTimeMillis() + EXPORT_TIMEOUT_MILLISECONDS;
+    while (System.currentTimeMillis() < timeout) {
+      try (CloseableHttpResponse statusResponse = httpClient.execute(new HttpGet(statusUrl))) {
+        int statusCode = statusResponse.getStatusLine().getStatusCode();
+        if (statusCode == 200)
+          return new ObjectMapper().readTree(statusResponse.getEntity().getContent());
+        Assert.assertEquals(202, statusCode);
+        Assert.assertNotNull(statusResponse.getFirstHeader("X-Progress"));
+      }
+      Thread.sleep(100);
+    }
+    throw new AssertionError("Export didn't complete in time: " + statusUrl);
+  }
+
+  /**
+   * @param httpClient the {@link CloseableHttpClient} to use
+   * @param url the URL of the export output file to download
+   * @return the contents of the specified file
+   * @throws IOException (indicates test failure)
+   */
+  private static String download(CloseableHttpClient httpClient, String url) throws IOException {
+    try (CloseableHttpResponse fileResponse = httpClient.execute(new HttpGet(url))) {
+      Assert.assertEquals(200, fileResponse.getStatusLine().getStatusCode());
+      return EntityUtils.toString(fileResponse.getEntity(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /** Ensures that {@link ServerTestUtils#cleanDatabaseServer()} is called after each test case. */
+  @After
+  public void cleanDatabaseServerAfterEachTestCase() {
+    ServerTestUtils.cleanDatabaseServer();
+  }
+}
@@ -0,0 +1,99 @@
+package gov.cms.bfd.server.war;
+
+import gov.cms.bfd.server.war.ConcurrencyLimitFilter.EndpointClass;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link ConcurrencyLimitFilter}. */
+public final class ConcurrencyLimitFilterTest {
+  /** The context path that the test requests are made against. */
+  private static final String CONTEXT_PATH = "/bfd";
+
+  /**
+   * Verifies that {@link EndpointClass#classify(HttpServletRequest)} puts each of the server's
+   * endpoints into the expected {@link EndpointClass}.
+   */
+  @Test
+  public void classify() {
+    Assert.assertEquals(EndpointClass.ADMIN, classify("/metrics/ping"));
+    Assert.assertEquals(EndpointClass.EOB, classify("/v1/fhir/ExplanationOfBenefit/"));
+    Assert.assertEquals(EndpointClass.DEFAULT, classify("/v1/fhir/Patient/1"));
+    Assert.assertEquals(EndpointClass.DEFAULT, classify("/v1/fhir/Coverage"));
+    Assert.assertEquals(EndpointClass.DEFAULT, classify("/v1/fhir/metadata"));
+  }
+
+  /**
+   * Verifies that {@link EndpointClass#classify(HttpServletRequest)} puts all of the bulk <code>
+   * $export</code> endpoints into {@link EndpointClass#EXPORT}, and that it isn't limited.
+   */
+  @Test
+  public void classifyExport() {
+    Assert.assertEquals(EndpointClass.EXPORT, classify(BulkExportServlet.KICKOFF_PATH));
+    Assert.assertEquals(EndpointClass.EXPORT, classify("/v1/fhir/Patient/$export"));
+    Assert.assertEquals(
+        EndpointClass.EXPORT,
+        classify(BulkExportServlet.EXPORT_PATH + BulkExportServlet.JOBS_PATH));
+    Assert.assertEquals(
+        EndpointClass.EXPORT,
+        classify(BulkExportServlet.EXPORT_PATH + BulkExportServlet.JOBS_PATH + "1234"));
+    Assert.assertEquals(
+        EndpointClass.EXPORT,
+        classify(
+            BulkExportServlet.EXPORT_PATH
+                + BulkExportServlet.JOBS_PATH
+                + "1234/ExplanationOfBenefit.ndjson"));
+    Assert.assertFalse(EndpointClass.EXPORT.isLimited());
+  }
+
+  /**
+   * Verifies that {@link ConcurrencyLimitFilter#getResourceCount(ServletRequest)} reads the count
+   * recorded by {@link OperationMetricsInterceptor}, and falls back to a single resource when there
+   * isn't one.
+   */
+  @Test
+  public void getResourceCount() {
+    Map<String, Object> attributes = new HashMap<>();
+    ServletRequest request =
+        (ServletRequest)
+            Proxy.newProxyInstance(
+                ServletRequest.class.getClassLoader(),
+                new Class<?>[] {ServletRequest.class},
+                (proxy, method, args) -> {
+                  if (method.getName().equals("getAttribute")) return attributes.get(args[0]);
+                  throw new UnsupportedOperationException(method.getName());
+                });
+
+    Assert.assertEquals(1, ConcurrencyLimitFilter.getResourceCount(request));
+    attributes.put(ConcurrencyLimitFilter.ATTRIBUTE_RESOURCE_COUNT, 42);
+    Assert.assertEquals(42, ConcurrencyLimitFilter.getResourceCount(request));
+  }
+
+  /**
+   * @param path the application-relative path of the request to classify
+   * @return the {@link EndpointClass} that {@link EndpointClass#classify(HttpServletRequest)}
+   *     returns for a request to the specified path
+   */
+  private static EndpointClass classify(String path) {
+    HttpServletRequest request =
+        (HttpServletRequest)
+            Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class},
+                (proxy, method, args) -> {
+                  switch (method.getName()) {
+                    case "getRequestURI":
+                      return CONTEXT_PATH + path;
+                    case "getContextPath":
+                      return CONTEXT_PATH;
+                    default:
+                      throw new UnsupportedOperationException(method.getName());
+                  }
+                });
+    return EndpointClass.classify(request);
+  }
+}
@@ -0,0 +1,89 @@
+package gov.cms.bfd.server.war;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import com.codahale.metrics.MetricRegistry;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import javax.persistence.PersistenceException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link ConnectionPoolSaturationInterceptor}. */
+public final class ConnectionPoolSaturationInterceptorTest {
+  /** The message of the exception that HikariCP throws when a connection request times out. */
+  private static final String HIKARI_TIMEOUT_MESSAGE =
+      "HikariPool-1 - Connection is not available, request timed out after 30000ms.";
+
+  /**
+   * Verifies that {@link ConnectionPoolSaturationInterceptor} turns connection pool timeouts (even
+   * when wrapped by other exceptions) into <code>503</code>s.
+   */
+  @Test
+  public void shedsPoolTimeouts() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    ConnectionPoolSaturationInterceptor interceptor =
+        new ConnectionPoolSaturationInterceptor(metricRegistry);
+
+    PersistenceException poolTimeout =
+        new PersistenceException(new SQLTransientConnectionException(HIKARI_TIMEOUT_MESSAGE));
+    BaseServerResponseException responseException =
+        interceptor.preProcessOutgoingException(null, poolTimeout, null);
+
+    Assert.assertNotNull(responseException);
+    Assert.assertEquals(503, responseException.getStatusCode());
+    Assert.assertEquals(
+        1,
+        metricRegistry
+            .meter(
+                MetricRegistry.name(
+                    ConnectionPoolSaturationInterceptor.class.getSimpleName(), "requests_shed"))
+            .getCount());
+  }
+
+  /**
+   * Verifies that {@link ConnectionPoolSaturationInterceptor} leaves all other exceptions alone.
+   */
+  @Test
+  public void ignoresOtherExceptions() {
+    ConnectionPoolSaturationInterceptor interceptor =
+        new ConnectionPoolSaturationInterceptor(new MetricRegistry());
+
+    Assert.assertNull(
+        interceptor.preProcessOutgoingException(
+            null, new PersistenceException(new SQLException("Syntax error")), null));
+    Assert.assertNull(
+        interceptor.preProcessOutgoingException(null, new IllegalStateException(), null));
+  }
+
+  /**
+   * Verifies that {@link ConnectionPoolSaturationInterceptor} leaves alone the other {@link
+   * SQLTransientConnectionException}s, which don't indicate that the pool is saturated: those from
+   * other sources, and HikariCP timeouts that happened because the database couldn't be reached.
+   */
+  @Test
+  public void ignoresOtherConnectionFailures() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    ConnectionPoolSaturationInterceptor interceptor =
+        new ConnectionPoolSaturationInterceptor(metricRegistry);
+
+    Assert.assertNull(
+        interceptor.preProcessOutgoingException(
+            null,
+            new PersistenceException(new SQLTransientConnectionException("Connection refused")),
+            null));
+    Assert.assertNull(
+        interceptor.preProcessOutgoingException(
+            null,
+            new PersistenceException(
+                new SQLTransientConnectionException(
+                    HIKARI_TIMEOUT_MESSAGE, new SQLException("Connection refused"))),
+            null));
+    Assert.assertEquals(
+        0,
+        metricRegistry
+            .meter(
+                MetricRegistry.name(
+                    ConnectionPoolSaturationInterceptor.class.getSimpleName(), "requests_shed"))
+            .getCount());
+  }
+}
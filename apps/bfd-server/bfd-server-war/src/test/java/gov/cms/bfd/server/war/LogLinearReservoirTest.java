@@ -0,0 +1,129 @@
+package gov.cms.bfd.server.war;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link LogLinearReservoir}. */
+public final class LogLinearReservoirTest {
+  /**
+   * Verifies that {@link LogLinearReservoir#bucketIndex(long)} and the bucket bounds methods agree
+   * with each other, and stay within the expected precision.
+   */
+  @Test
+  public void bucketsAreConsistent() {
+    for (long value = 0; value < 2 * LogLinearReservoir.SUB_BUCKET_COUNT; value++)
+      Assert.assertEquals(
+          value, LogLinearReservoir.bucketLowestValue(LogLinearReservoir.bucketIndex(value)));
+
+    for (long value :
+        new long[] {1000L, 123456789L, TimeUnit.HOURS.toNanos(1), LogLinearReservoir.MAX_VALUE}) {
+      int index = LogLinearReservoir.bucketIndex(value);
+      Assert.assertTrue(LogLinearReservoir.bucketLowestValue(index) <= value);
+      Assert.assertTrue(LogLinearReservoir.bucketHighestValue(index) >= value);
+      double error =
+          Math.abs(LogLinearReservoir.bucketMedianValue(index) - (double) value) / value;
+      Assert.assertTrue(error < 1.0 / LogLinearReservoir.SUB_BUCKET_COUNT);
+    }
+
+    for (int index = 0; index < LogLinearReservoir.BUCKET_COUNT - 1; index++)
+      Assert.assertEquals(
+          LogLinearReservoir.bucketHighestValue(index) + 1,
+          LogLinearReservoir.bucketLowestValue(index + 1));
+  }
+
+  /**
+   * Verifies that {@link LogLinearReservoir} reports accurate percentiles, even for rare outliers
+   * that a sampling reservoir would likely miss.
+   */
+  @Test
+  public void reportsAccurateTailPercentiles() {
+    LogLinearReservoir reservoir = new LogLinearReservoir();
+    for (int i = 1; i <= 100000; i++) reservoir.update(i <= 99900 ? 1000000L : 500000000L);
+
+    Snapshot snapshot = reservoir.getSnapshot();
+    Assert.assertEquals(100000, snapshot.size());
+    Assert.assertEquals(1000000.0, snapshot.getMedian(), 1000000.0 * 0.01);
+    Assert.assertEquals(1000000.0, snapshot.get99thPercentile(), 1000000.0 * 0.01);
+    Assert.assertEquals(500000000.0, snapshot.getValue(0.9995), 500000000.0 * 0.01);
+    Assert.assertEquals(500000000.0, snapshot.getMax(), 500000000.0 * 0.02);
+    Assert.assertEquals(1000000.0, snapshot.getMin(), 1000000.0 * 0.02);
+  }
+
+  /**
+   * Verifies that {@link LogLinearReservoir} caps values at {@link LogLinearReservoir#MAX_VALUE},
+   * but still tracks their full sum.
+   */
+  @Test
+  public void capsLargeValues() {
+    LogLinearReservoir reservoir = new LogLinearReservoir();
+    reservoir.update(Long.MAX_VALUE / 2);
+    reservoir.update(-5L);
+
+    LogLinearReservoir.LogLinearSnapshot snapshot =
+        (LogLinearReservoir.LogLinearSnapshot) reservoir.getSnapshot();
+    Assert.assertEquals(LogLinearReservoir.MAX_VALUE, snapshot.getMax());
+    Assert.assertEquals(0L, snapshot.getMin());
+    Assert.assertEquals(Long.MAX_VALUE / 2, snapshot.getSum());
+  }
+
+  /**
+   * Verifies that {@link LogLinearReservoir.LogLinearSnapshot#getValues()} returns every value for
+   * small snapshots, and a bounded, evenly-spaced sample of them for large ones.
+   */
+  @Test
+  public void getValuesIsBounded() {
+    LogLinearReservoir reservoir = new LogLinearReservoir();
+    for (int i = 0; i < 10; i++) reservoir.update(i);
+    Assert.assertArrayEquals(
+        new long[] {0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L}, reservoir.getSnapshot().getValues());
+
+    for (int i = 0; i < 100000; i++) reservoir.update(i % 2 == 0 ? 10L : 20L);
+    Snapshot snapshot = reservoir.getSnapshot();
+    long[] values = snapshot.getValues();
+    Assert.assertEquals(100010, snapshot.size());
+    Assert.assertEquals(LogLinearReservoir.LogLinearSnapshot.MAX_VALUES, values.length);
+    Assert.assertEquals(0L, values[0]);
+    Assert.assertEquals(10L, values[values.length / 4]);
+    Assert.assertEquals(20L, values[values.length - 1]);
+  }
+
+  /** Verifies that {@link LogLinearReservoir} forgets the values from older windows. */
+  @Test
+  public void forgetsOldWindows() {
+    ManualClock clock = new ManualClock();
+    LogLinearReservoir reservoir = new LogLinearReservoir(60, TimeUnit.SECONDS, clock);
+
+    reservoir.update(42L);
+    clock.advance(TimeUnit.SECONDS.toNanos(61));
+    reservoir.update(43L);
+    Assert.assertEquals(2, reservoir.getSnapshot().size());
+
+    clock.advance(TimeUnit.SECONDS.toNanos(61));
+    Snapshot snapshot = reservoir.getSnapshot();
+    Assert.assertEquals(1, snapshot.size());
+    Assert.assertEquals(43L, snapshot.getMax());
+
+    clock.advance(TimeUnit.SECONDS.toNanos(180));
+    Assert.assertEquals(0, reservoir.getSnapshot().size());
+    Assert.assertEquals(0.0, reservoir.getSnapshot().get99thPercentile(), 0.0);
+  }
+
+  /** A {@link Clock} that only moves when it's told to. */
+  private static final class ManualClock extends Clock {
+    private long tick = 0L;
+
+    /** @param nanos the number of nanoseconds to move this {@link Clock} forwards by */
+    void advance(long nanos) {
+      tick += nanos;
+    }
+
+    /** @see com.codahale.metrics.Clock#getTick() */
+    @Override
+    public long getTick() {
+      return tick;
+    }
+  }
+}
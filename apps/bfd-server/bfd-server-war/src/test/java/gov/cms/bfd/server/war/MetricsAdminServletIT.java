@@ -8,6 +8,7 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -52,4 +53,29 @@ public final class MetricsAdminServletIT {
       }
     }
   }
+
+  /**
+   * Verifies that the <code>/metrics/prometheus</code> endpoint (see {@link
+   * PrometheusMetricsServlet}) works as expected.
+   *
+   * @throws IOException (indicates test failure)
+   * @throws ClientProtocolException (indicates test failure)
+   */
+  @Test
+  public void prometheus() throws ClientProtocolException, IOException {
+    try (CloseableHttpClient httpClient =
+        HttpClients.custom()
+            .setSSLContext(ServerTestUtils.createSslContext(Optional.of(ClientSslIdentity.TRUSTED)))
+            .build(); ) {
+      HttpGet metricsGet =
+          new HttpGet(
+              String.format(
+                  "%s%s", ServerTestUtils.getServerBaseUrl(), PrometheusMetricsServlet.PATH));
+      try (CloseableHttpResponse metricsResponse = httpClient.execute(metricsGet); ) {
+        Assert.assertEquals(200, metricsResponse.getStatusLine().getStatusCode());
+        String metricsText = EntityUtils.toString(metricsResponse.getEntity());
+        Assert.assertTrue(metricsText.contains("# TYPE "));
+      }
+    }
+  }
 }
@@ -0,0 +1,117 @@
+package gov.cms.bfd.server.war;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link PrometheusMetricsServlet} (and {@link HistogramMetricRegistry}). */
+public final class PrometheusMetricsServletTest {
+  /**
+   * Verifies that {@link PrometheusMetricsServlet#computeName(String, String)} produces valid
+   * Prometheus metric names.
+   */
+  @Test
+  public void computeName() {
+    Assert.assertEquals(
+        "ExplanationOfBenefitResourceProvider_query_eobs_by_bene_id_carrier_seconds",
+        PrometheusMetricsServlet.computeName(
+            "ExplanationOfBenefitResourceProvider.query.eobs_by_bene_id.carrier", "_seconds"));
+    Assert.assertEquals(
+        "OperationMetricsInterceptor_Patient_search_type",
+        PrometheusMetricsServlet.computeName(
+            "OperationMetricsInterceptor.Patient.search-type", ""));
+    Assert.assertEquals(
+        "_1xx_responses", PrometheusMetricsServlet.computeName("1xx-responses", ""));
+  }
+
+  /**
+   * Verifies that {@link PrometheusMetricsServlet#writeMetrics(MetricRegistry, java.io.Writer)}
+   * exports each type of metric as expected.
+   *
+   * @throws IOException (indicates test failure)
+   */
+  @Test
+  public void writeMetrics() throws IOException {
+    MetricRegistry metricRegistry = new HistogramMetricRegistry();
+    metricRegistry.register("pool.size", (Gauge<Integer>) () -> 7);
+    metricRegistry.counter("requests.active").inc(3);
+    metricRegistry.meter("requests.shed").mark(2);
+    metricRegistry.histogram("response.resources").update(10);
+    for (int i = 0; i < 100; i++)
+      metricRegistry.timer("query.bene_by_id").update(250, TimeUnit.MILLISECONDS);
+
+    // The registry should hand back the same timer each time.
+    Assert.assertSame(
+        metricRegistry.timer("query.bene_by_id"), metricRegistry.timer("query.bene_by_id"));
+
+    StringWriter writer = new StringWriter();
+    PrometheusMetricsServlet.writeMetrics(metricRegistry, writer);
+    String metricsText = writer.toString();
+
+    Assert.assertTrue(metricsText.contains("# TYPE pool_size gauge\npool_size 7\n"));
+    Assert.assertTrue(metricsText.contains("# TYPE requests_active gauge\nrequests_active 3\n"));
+    Assert.assertTrue(
+        metricsText.contains("# TYPE requests_shed_total counter\nrequests_shed_total 2\n"));
+    Assert.assertTrue(metricsText.contains("# TYPE response_resources summary\n"));
+    Assert.assertTrue(metricsText.contains("response_resources_sum 10\n"));
+    Assert.assertTrue(metricsText.contains("response_resources_count 1\n"));
+    Assert.assertTrue(metricsText.contains("# TYPE query_bene_by_id_seconds summary\n"));
+    Assert.assertTrue(metricsText.contains("query_bene_by_id_seconds_sum 25\n"));
+    Assert.assertTrue(metricsText.contains("query_bene_by_id_seconds_count 100\n"));
+
+    String p99Prefix = "query_bene_by_id_seconds{quantile=\"0.99\"} ";
+    int p99Start = metricsText.indexOf(p99Prefix) + p99Prefix.length();
+    double p99 =
+        Double.parseDouble(metricsText.substring(p99Start, metricsText.indexOf('\n', p99Start)));
+    Assert.assertEquals(0.25, p99, 0.25 * 0.01);
+  }
+
+  /**
+   * Verifies that {@link PrometheusMetricsServlet#writeMetrics(MetricRegistry, java.io.Writer)}
+   * exports the metrics that are recorded separately for each {@link
+   * gov.cms.bfd.server.war.stu3.providers.ClaimType} as a single metric, with a {@link
+   * PrometheusMetricsServlet#LABEL_CLAIM_TYPE} label.
+   *
+   * @throws IOException (indicates test failure)
+   */
+  @Test
+  public void writeMetricsWithClaimTypeLabels() throws IOException {
+    MetricRegistry metricRegistry = new HistogramMetricRegistry();
+    metricRegistry.timer("query.eobs_by_bene_id.carrier").update(1, TimeUnit.SECONDS);
+    metricRegistry.timer("query.eobs_by_bene_id.pde").update(2, TimeUnit.SECONDS);
+    metricRegistry.timer("query.eobs_by_bene_id.pde").update(3, TimeUnit.SECONDS);
+
+    StringWriter writer = new StringWriter();
+    PrometheusMetricsServlet.writeMetrics(metricRegistry, writer);
+    String metricsText = writer.toString();
+
+    Assert.assertFalse(metricsText.contains("carrier_seconds"));
+    Assert.assertEquals(
+        metricsText.indexOf("# TYPE query_eobs_by_bene_id_seconds summary\n"),
+        metricsText.lastIndexOf("# TYPE query_eobs_by_bene_id_seconds summary\n"));
+    Assert.assertTrue(
+        metricsText.contains(
+            "query_eobs_by_bene_id_seconds{claim_type=\"carrier\",quantile=\"0.5\"} "));
+    Assert.assertTrue(
+        metricsText.contains("query_eobs_by_bene_id_seconds_sum{claim_type=\"carrier\"} 1\n"));
+    Assert.assertTrue(
+        metricsText.contains("query_eobs_by_bene_id_seconds_sum{claim_type=\"pde\"} 5\n"));
+    Assert.assertTrue(
+        metricsText.contains("query_eobs_by_bene_id_seconds_count{claim_type=\"pde\"} 2\n"));
+  }
+
+  /**
+   * Verifies that {@link HistogramMetricRegistry} won't return a metric of the wrong type for a
+   * name that's already in use.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void registryRejectsMismatchedTypes() {
+    MetricRegistry metricRegistry = new HistogramMetricRegistry();
+    metricRegistry.histogram("foo");
+    metricRegistry.timer("foo");
+  }
+}
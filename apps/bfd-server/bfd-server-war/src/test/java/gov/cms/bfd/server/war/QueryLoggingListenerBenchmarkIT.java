@@ -0,0 +1,93 @@
+package gov.cms.bfd.server.war;
+
+import java.util.Arrays;
+import java.util.List;
+import gov.cms.bfd.server.war.QueryLoggingListener.QueryType;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.StatementType;
+import org.jboss.logging.MDC;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A rough benchmark that compares the cost of {@link QueryLoggingListener#afterQuery(ExecutionInfo,
+ * List)} for untagged queries (which have to be classified from their SQL) against tagged ones
+ * (see {@link QueryLoggingListener#setQueryTag(QueryType)}), logging the average latency of each.
+ */
+public final class QueryLoggingListenerBenchmarkIT {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(QueryLoggingListenerBenchmarkIT.class);
+
+  /** The number of queries to "log" for each run, after a single warm-up run. */
+  private static final int ITERATIONS = 200000;
+
+  /** Clears the tag and {@link MDC} entries left behind by each test case. */
+  @After
+  public void cleanup() {
+    QueryLoggingListener.clearQueryTag();
+    MDC.clear();
+  }
+
+  /** Runs the benchmark for a (Hibernate-sized) beneficiary query. */
+  @Test
+  public void compareTaggedAndUntaggedQueries() {
+    /*
+     * Hibernate's generated queries select every column, which is what makes classifying them
+     * from their SQL expensive, so this approximates that.
+     */
+    StringBuilder sql = new StringBuilder("select ");
+    for (int i = 0; i < 200; i++)
+      sql.append("beneficiar0_.\"column")
+          .append(i)
+          .append("\" as column")
+          .append(i)
+          .append("_0_, ");
+    sql.append("beneficiar0_.\"hicn\" as hicn_0_ from \"Beneficiaries\" beneficiar0_");
+    sql.append(" where beneficiar0_.\"beneficiaryId\"=?");
+    List<QueryInfo> queryInfoList = Arrays.asList(new QueryInfo(sql.toString()));
+
+    ExecutionInfo execInfo = new ExecutionInfo();
+    execInfo.setDataSourceName("benchmark");
+    execInfo.setStatementType(StatementType.PREPARED);
+    execInfo.setSuccess(true);
+    execInfo.setElapsedTime(5);
+
+    QueryLoggingListener listener = new QueryLoggingListener();
+    long untaggedNanos = benchmark(listener, execInfo, queryInfoList);
+    Assert.assertNotNull(
+        MDC.get("database_query.bene_by_id.omit_hicns_and_mbis.duration_milliseconds"));
+
+    MDC.clear();
+    QueryLoggingListener.setQueryTag(QueryType.BENE_BY_ID_OMIT_IDENTIFIERS);
+    long taggedNanos = benchmark(listener, execInfo, queryInfoList);
+    Assert.assertNotNull(
+        MDC.get("database_query.bene_by_id.omit_hicns_and_mbis.duration_milliseconds"));
+
+    LOGGER.info(
+        "Query logging for {} queries: untagged took {} ns/query; tagged took {} ns/query.",
+        ITERATIONS,
+        untaggedNanos,
+        taggedNanos);
+  }
+
+  /**
+   * @param listener the {@link QueryLoggingListener} to benchmark
+   * @param execInfo the {@link ExecutionInfo} to pass to the listener
+   * @param queryInfoList the {@link QueryInfo}s to pass to the listener
+   * @return the average latency (in nanoseconds) of each {@link
+   *     QueryLoggingListener#afterQuery(ExecutionInfo, List)} call
+   */
+  private static long benchmark(
+      QueryLoggingListener listener, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    // Warm up.
+    for (int i = 0; i < ITERATIONS; i++) listener.afterQuery(execInfo, queryInfoList);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) listener.afterQuery(execInfo, queryInfoList);
+    return (System.nanoTime() - start) / ITERATIONS;
+  }
+}
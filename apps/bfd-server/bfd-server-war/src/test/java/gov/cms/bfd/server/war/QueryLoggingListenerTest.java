@@ -1,7 +1,10 @@
 package gov.cms.bfd.server.war;
 
 import gov.cms.bfd.server.war.QueryLoggingListener.QueryType;
+import java.util.Arrays;
+import net.ttddyy.dsproxy.ExecutionInfo;
 import net.ttddyy.dsproxy.QueryInfo;
+import org.jboss.logging.MDC;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -135,4 +138,43 @@ public final class QueryLoggingListenerTest {
             "select distinct snfclaim0_.\"claimId\" as claimId1_17_0_, lines1_.\"lineNumber\" as lineNumb1_16_1_, lines1_.\"parentClaim\" as parentCl2_16_1_, snfclaim0_.\"admissionTypeCd\" as admissio2_17_0_, snfclaim0_.\"attendingPhysicianNpi\" as attendin3_17_0_, snfclaim0_.\"attendingPhysicianUpin\" as attendin4_17_0_, snfclaim0_.\"beneficiaryDischargeDate\" as benefici5_17_0_, snfclaim0_.\"beneficiaryId\" as benefici6_17_0_, snfclaim0_.\"bloodDeductibleLiabilityAmount\" as bloodDed7_17_0_, snfclaim0_.\"bloodPintsFurnishedQty\" as bloodPin8_17_0_, snfclaim0_.\"claimAdmissionDate\" as claimAdm9_17_0_, snfclaim0_.\"claimFacilityTypeCode\" as claimFa10_17_0_, snfclaim0_.\"claimFrequencyCode\" as claimFr11_17_0_, snfclaim0_.\"claimGroupId\" as claimGr12_17_0_, snfclaim0_.\"claimNonPaymentReasonCode\" as claimNo13_17_0_, snfclaim0_.\"claimPPSCapitalDisproportionateShareAmt\" as claimPP14_17_0_, snfclaim0_.\"claimPPSCapitalExceptionAmount\" as claimPP15_17_0_, snfclaim0_.\"claimPPSCapitalFSPAmount\" as claimPP16_17_0_, snfclaim0_.\"claimPPSCapitalIMEAmount\" as claimPP17_17_0_, snfclaim0_.\"claimPPSCapitalOutlierAmount\" as claimPP18_17_0_, snfclaim0_.\"claimPPSOldCapitalHoldHarmlessAmount\" as claimPP19_17_0_, snfclaim0_.\"claimPrimaryPayerCode\" as claimPr20_17_0_, snfclaim0_.\"claimQueryCode\" as claimQu21_17_0_, snfclaim0_.\"claimServiceClassificationTypeCode\" as claimSe22_17_0_, snfclaim0_.\"claimTypeCode\" as claimTy23_17_0_, snfclaim0_.\"coinsuranceDayCount\" as coinsur24_17_0_, snfclaim0_.\"coveredCareThroughDate\" as covered25_17_0_, snfclaim0_.\"dateFrom\" as dateFro26_17_0_, snfclaim0_.\"dateThrough\" as dateThr27_17_0_, snfclaim0_.\"deductibleAmount\" as deducti28_17_0_, snfclaim0_.\"diagnosis10Code\" as diagnos29_17_0_, snfclaim0_.\"diagnosis10CodeVersion\" as diagnos30_17_0_, snfclaim0_.\"diagnosis11Code\" as diagnos31_17_0_, snfclaim0_.\"diagnosis11CodeVersion\" as diagnos32_17_0_, snfclaim0_.\"diagnosis12Code\" as diagnos33_17_0_, snfclaim0_.\"diagnosis12CodeVersion\" as diagnos34_17_0_, snfclaim0_.\"diagnosis13Code\" as diagnos35_17_0_, snfclaim0_.\"diagnosis13CodeVersion\" as diagnos36_17_0_, snfclaim0_.\"diagnosis14Code\" as diagnos37_17_0_, snfclaim0_.\"diagnosis14CodeVersion\" as diagnos38_17_0_, snfclaim0_.\"diagnosis15Code\" as diagnos39_17_0_, snfclaim0_.\"diagnosis15CodeVersion\" as diagnos40_17_0_, snfclaim0_.\"diagnosis16Code\" as diagnos41_17_0_, snfclaim0_.\"diagnosis16CodeVersion\" as diagnos42_17_0_, snfclaim0_.\"diagnosis17Code\" as diagnos43_17_0_, snfclaim0_.\"diagnosis17CodeVersion\" as diagnos44_17_0_, snfclaim0_.\"diagnosis18Code\" as diagnos45_17_0_, snfclaim0_.\"diagnosis18CodeVersion\" as diagnos46_17_0_, snfclaim0_.\"diagnosis19Code\" as diagnos47_17_0_, snfclaim0_.\"diagnosis19CodeVersion\" as diagnos48_17_0_, snfclaim0_.\"diagnosis1Code\" as diagnos49_17_0_, snfclaim0_.\"diagnosis1CodeVersion\" as diagnos50_17_0_, snfclaim0_.\"diagnosis20Code\" as diagnos51_17_0_, snfclaim0_.\"diagnosis20CodeVersion\" as diagnos52_17_0_, snfclaim0_.\"diagnosis21Code\" as diagnos53_17_0_, snfclaim0_.\"diagnosis21CodeVersion\" as diagnos54_17_0_, snfclaim0_.\"diagnosis22Code\" as diagnos55_17_0_, snfclaim0_.\"diagnosis22CodeVersion\" as diagnos56_17_0_, snfclaim0_.\"diagnosis23Code\" as diagnos57_17_0_, snfclaim0_.\"diagnosis23CodeVersion\" as diagnos58_17_0_, snfclaim0_.\"diagnosis24Code\" as diagnos59_17_0_, snfclaim0_.\"diagnosis24CodeVersion\" as diagnos60_17_0_, snfclaim0_.\"diagnosis25Code\" as diagnos61_17_0_, snfclaim0_.\"diagnosis25CodeVersion\" as diagnos62_17_0_, snfclaim0_.\"diagnosis2Code\" as diagnos63_17_0_, snfclaim0_.\"diagnosis2CodeVersion\" as diagnos64_17_0_, snfclaim0_.\"diagnosis3Code\" as diagnos65_17_0_, snfclaim0_.\"diagnosis3CodeVersion\" as diagnos66_17_0_, snfclaim0_.\"diagnosis4Code\" as diagnos67_17_0_, snfclaim0_.\"diagnosis4CodeVersion\" as diagnos68_17_0_, snfclaim0_.\"diagnosis5Code\" as diagnos69_17_0_, snfclaim0_.\"diagnosis5CodeVersion\" as diagnos70_17_0_, snfclaim0_.\"diagnosis6Code\" as diagnos71_17_0_, snfclaim0_.\"diagnosis6CodeVersion\" as diagnos72_17_0_, snfclaim0_.\"diagnosis7Code\" as diagnos73_17_0_, snfclaim0_.\"diagnosis7CodeVersion\" as diagnos74_17_0_, snfclaim0_.\"diagnosis8Code\" as diagnos75_17_0_, snfclaim0_.\"diagnosis8CodeVersion\" as diagnos76_17_0_, snfclaim0_.\"diagnosis9Code\" as diagnos77_17_0_, snfclaim0_.\"diagnosis9CodeVersion\" as diagnos78_17_0_, snfclaim0_.\"diagnosisAdmittingCode\" as diagnos79_17_0_, snfclaim0_.\"diagnosisAdmittingCodeVersion\" as diagnos80_17_0_, snfclaim0_.\"diagnosisExternal10Code\" as diagnos81_17_0_, snfclaim0_.\"diagnosisExternal10CodeVersion\" as diagnos82_17_0_, snfclaim0_.\"diagnosisExternal11Code\" as diagnos83_17_0_, snfclaim0_.\"diagnosisExternal11CodeVersion\" as diagnos84_17_0_, snfclaim0_.\"diagnosisExternal12Code\" as diagnos85_17_0_, snfclaim0_.\"diagnosisExternal12CodeVersion\" as diagnos86_17_0_, snfclaim0_.\"diagnosisExternal1Code\" as diagnos87_17_0_, snfclaim0_.\"diagnosisExternal1CodeVersion\" as diagnos88_17_0_, snfclaim0_.\"diagnosisExternal2Code\" as diagnos89_17_0_, snfclaim0_.\"diagnosisExternal2CodeVersion\" as diagnos90_17_0_, snfclaim0_.\"diagnosisExternal3Code\" as diagnos91_17_0_, snfclaim0_.\"diagnosisExternal3CodeVersion\" as diagnos92_17_0_, snfclaim0_.\"diagnosisExternal4Code\" as diagnos93_17_0_, snfclaim0_.\"diagnosisExternal4CodeVersion\" as diagnos94_17_0_, snfclaim0_.\"diagnosisExternal5Code\" as diagnos95_17_0_, snfclaim0_.\"diagnosisExternal5CodeVersion\" as diagnos96_17_0_, snfclaim0_.\"diagnosisExternal6Code\" as diagnos97_17_0_, snfclaim0_.\"diagnosisExternal6CodeVersion\" as diagnos98_17_0_, snfclaim0_.\"diagnosisExternal7Code\" as diagnos99_17_0_, snfclaim0_.\"diagnosisExternal7CodeVersion\" as diagno100_17_0_, snfclaim0_.\"diagnosisExternal8Code\" as diagno101_17_0_, snfclaim0_.\"diagnosisExternal8CodeVersion\" as diagno102_17_0_, snfclaim0_.\"diagnosisExternal9Code\" as diagno103_17_0_, snfclaim0_.\"diagnosisExternal9CodeVersion\" as diagno104_17_0_, snfclaim0_.\"diagnosisExternalFirstCode\" as diagno105_17_0_, snfclaim0_.\"diagnosisExternalFirstCodeVersion\" as diagno106_17_0_, snfclaim0_.\"diagnosisPrincipalCode\" as diagno107_17_0_, snfclaim0_.\"diagnosisPrincipalCodeVersion\" as diagno108_17_0_, snfclaim0_.\"diagnosisRelatedGroupCd\" as diagno109_17_0_, snfclaim0_.\"finalAction\" as finalA110_17_0_, snfclaim0_.\"fiscalIntermediaryClaimActionCode\" as fiscal111_17_0_, snfclaim0_.\"fiscalIntermediaryClaimProcessDate\" as fiscal112_17_0_, snfclaim0_.\"fiscalIntermediaryNumber\" as fiscal113_17_0_, snfclaim0_.\"mcoPaidSw\" as mcoPai114_17_0_, snfclaim0_.\"medicareBenefitsExhaustedDate\" as medica115_17_0_, snfclaim0_.\"nearLineRecordIdCode\" as nearLi116_17_0_, snfclaim0_.\"nonUtilizationDayCount\" as nonUti117_17_0_, snfclaim0_.\"noncoveredCharge\" as noncov118_17_0_, snfclaim0_.\"noncoveredStayFromDate\" as noncov119_17_0_, snfclaim0_.\"noncoveredStayThroughDate\" as noncov120_17_0_, snfclaim0_.\"operatingPhysicianNpi\" as operat121_17_0_, snfclaim0_.\"operatingPhysicianUpin\" as operat122_17_0_, snfclaim0_.\"organizationNpi\" as organi123_17_0_, snfclaim0_.\"otherPhysicianNpi\" as otherP124_17_0_, snfclaim0_.\"otherPhysicianUpin\" as otherP125_17_0_, snfclaim0_.\"partACoinsuranceLiabilityAmount\" as partAC126_17_0_, snfclaim0_.\"patientDischargeStatusCode\" as patien127_17_0_, snfclaim0_.\"patientStatusCd\" as patien128_17_0_, snfclaim0_.\"paymentAmount\" as paymen129_17_0_, snfclaim0_.\"primaryPayerPaidAmount\" as primar130_17_0_, snfclaim0_.\"procedure10Code\" as proced131_17_0_, snfclaim0_.\"procedure10CodeVersion\" as proced132_17_0_, snfclaim0_.\"procedure10Date\" as proced133_17_0_, snfclaim0_.\"procedure11Code\" as proced134_17_0_, snfclaim0_.\"procedure11CodeVersion\" as proced135_17_0_, snfclaim0_.\"procedure11Date\" as proced136_17_0_, snfclaim0_.\"procedure12Code\" as proced137_17_0_, snfclaim0_.\"procedure12CodeVersion\" as proced138_17_0_, snfclaim0_.\"procedure12Date\" as proced139_17_0_, snfclaim0_.\"procedure13Code\" as proced140_17_0_, snfclaim0_.\"procedure13CodeVersion\" as proced141_17_0_, snfclaim0_.\"procedure13Date\" as proced142_17_0_, snfclaim0_.\"procedure14Code\" as proced143_17_0_, snfclaim0_.\"procedure14CodeVersion\" as proced144_17_0_, snfclaim0_.\"procedure14Date\" as proced145_17_0_, snfclaim0_.\"procedure15Code\" as proced146_17_0_, snfclaim0_.\"procedure15CodeVersion\" as proced147_17_0_, snfclaim0_.\"procedure15Date\" as proced148_17_0_, snfclaim0_.\"procedure16Code\" as proced149_17_0_, snfclaim0_.\"procedure16CodeVersion\" as proced150_17_0_, snfclaim0_.\"procedure16Date\" as proced151_17_0_, snfclaim0_.\"procedure17Code\" as proced152_17_0_, snfclaim0_.\"procedure17CodeVersion\" as proced153_17_0_, snfclaim0_.\"procedure17Date\" as proced154_17_0_, snfclaim0_.\"procedure18Code\" as proced155_17_0_, snfclaim0_.\"procedure18CodeVersion\" as proced156_17_0_, snfclaim0_.\"procedure18Date\" as proced157_17_0_, snfclaim0_.\"procedure19Code\" as proced158_17_0_, snfclaim0_.\"procedure19CodeVersion\" as proced159_17_0_, snfclaim0_.\"procedure19Date\" as proced160_17_0_, snfclaim0_.\"procedure1Code\" as proced161_17_0_, snfclaim0_.\"procedure1CodeVersion\" as proced162_17_0_, snfclaim0_.\"procedure1Date\" as proced163_17_0_, snfclaim0_.\"procedure20Code\" as proced164_17_0_, snfclaim0_.\"procedure20CodeVersion\" as proced165_17_0_, snfclaim0_.\"procedure20Date\" as proced166_17_0_, snfclaim0_.\"procedure21Code\" as proced167_17_0_, snfclaim0_.\"procedure21CodeVersion\" as proced168_17_0_, snfclaim0_.\"procedure21Date\" as proced169_17_0_, snfclaim0_.\"procedure22Code\" as proced170_17_0_, snfclaim0_.\"procedure22CodeVersion\" as proced171_17_0_, snfclaim0_.\"procedure22Date\" as proced172_17_0_, snfclaim0_.\"procedure23Code\" as proced173_17_0_, snfclaim0_.\"procedure23CodeVersion\" as proced174_17_0_, snfclaim0_.\"procedure23Date\" as proced175_17_0_, snfclaim0_.\"procedure24Code\" as proced176_17_0_, snfclaim0_.\"procedure24CodeVersion\" as proced177_17_0_, snfclaim0_.\"procedure24Date\" as proced178_17_0_, snfclaim0_.\"procedure25Code\" as proced179_17_0_, snfclaim0_.\"procedure25CodeVersion\" as proced180_17_0_, snfclaim0_.\"procedure25Date\" as proced181_17_0_, snfclaim0_.\"procedure2Code\" as proced182_17_0_, snfclaim0_.\"procedure2CodeVersion\" as proced183_17_0_, snfclaim0_.\"procedure2Date\" as proced184_17_0_, snfclaim0_.\"procedure3Code\" as proced185_17_0_, snfclaim0_.\"procedure3CodeVersion\" as proced186_17_0_, snfclaim0_.\"procedure3Date\" as proced187_17_0_, snfclaim0_.\"procedure4Code\" as proced188_17_0_, snfclaim0_.\"procedure4CodeVersion\" as proced189_17_0_, snfclaim0_.\"procedure4Date\" as proced190_17_0_, snfclaim0_.\"procedure5Code\" as proced191_17_0_, snfclaim0_.\"procedure5CodeVersion\" as proced192_17_0_, snfclaim0_.\"procedure5Date\" as proced193_17_0_, snfclaim0_.\"procedure6Code\" as proced194_17_0_, snfclaim0_.\"procedure6CodeVersion\" as proced195_17_0_, snfclaim0_.\"procedure6Date\" as proced196_17_0_, snfclaim0_.\"procedure7Code\" as proced197_17_0_, snfclaim0_.\"procedure7CodeVersion\" as proced198_17_0_, snfclaim0_.\"procedure7Date\" as proced199_17_0_, snfclaim0_.\"procedure8Code\" as proced200_17_0_, snfclaim0_.\"procedure8CodeVersion\" as proced201_17_0_, snfclaim0_.\"procedure8Date\" as proced202_17_0_, snfclaim0_.\"procedure9Code\" as proced203_17_0_, snfclaim0_.\"procedure9CodeVersion\" as proced204_17_0_, snfclaim0_.\"procedure9Date\" as proced205_17_0_, snfclaim0_.\"prospectivePaymentCode\" as prospe206_17_0_, snfclaim0_.\"providerNumber\" as provid207_17_0_, snfclaim0_.\"providerStateCode\" as provid208_17_0_, snfclaim0_.\"qualifiedStayFromDate\" as qualif209_17_0_, snfclaim0_.\"qualifiedStayThroughDate\" as qualif210_17_0_, snfclaim0_.\"sourceAdmissionCd\" as source211_17_0_, snfclaim0_.\"totalChargeAmount\" as totalC212_17_0_, snfclaim0_.\"totalDeductionAmount\" as totalD213_17_0_, snfclaim0_.\"utilizationDayCount\" as utiliz214_17_0_, snfclaim0_.\"weeklyProcessDate\" as weekly215_17_0_, lines1_.\"deductibleCoinsuranceCd\" as deductib3_16_1_, lines1_.\"hcpcsCode\" as hcpcsCod4_16_1_, lines1_.\"nationalDrugCodeQualifierCode\" as national5_16_1_, lines1_.\"nationalDrugCodeQuantity\" as national6_16_1_, lines1_.\"nonCoveredChargeAmount\" as nonCover7_16_1_, lines1_.\"rateAmount\" as rateAmou8_16_1_, lines1_.\"revenueCenter\" as revenueC9_16_1_, lines1_.\"revenueCenterRenderingPhysicianNPI\" as revenue10_16_1_, lines1_.\"revenueCenterRenderingPhysicianUPIN\" as revenue11_16_1_, lines1_.\"totalChargeAmount\" as totalCh12_16_1_, lines1_.\"unitCount\" as unitCou13_16_1_, lines1_.\"parentClaim\" as parentCl2_16_0__, lines1_.\"lineNumber\" as lineNumb1_16_0__ from \"SNFClaims\" snfclaim0_ inner join \"SNFClaimLines\" lines1_ on snfclaim0_.\"claimId\"=lines1_.\"parentClaim\" where snfclaim0_.\"beneficiaryId\"=? order by lines1_.\"lineNumber\" asc");
     Assert.assertEquals(QueryType.EOBS_BY_BENE_ID_SNF, QueryType.computeQueryType(queryInfo));
   }
+
+  /**
+   * Verifies that {@link QueryLoggingListener} records tagged queries under their {@link
+   * QueryType}'s fixed ID, regardless of their SQL.
+   */
+  @Test
+  public void afterQuery_tagged() {
+    ExecutionInfo execInfo = new ExecutionInfo();
+    execInfo.setSuccess(true);
+    execInfo.setElapsedTime(5);
+
+    QueryLoggingListener.setQueryTag(QueryType.EOBS_BY_BENE_ID_CARRIER);
+    try {
+      new QueryLoggingListener()
+          .afterQuery(execInfo, Arrays.asList(new QueryInfo("blah blah foo")));
+    } finally {
+      QueryLoggingListener.clearQueryTag();
+    }
+
+    try {
+      Assert.assertEquals(
+          5L, MDC.get("database_query.eobs_by_bene_id.carrier.duration_milliseconds"));
+      Assert.assertNull(MDC.get("database_query.unknown.duration_milliseconds"));
+      Assert.assertNull(MDC.get("database_query.eobs_by_bene_id.carrier.query"));
+    } finally {
+      MDC.clear();
+    }
+  }
+
+  /**
+   * Verifies that the {@link QueryType}s that are only ever set as tags are never matched from SQL.
+   */
+  @Test
+  public void computeQueryType_tagOnly() {
+    QueryInfo queryInfo =
+        new QueryInfo(
+            "select beneficiar0_.\"beneficiaryId\" as col_0_0_ from \"Beneficiaries\" beneficiar0_ where beneficiar0_.\"lastUpdated\">=?");
+    Assert.assertNotEquals(QueryType.BENE_LAST_UPDATED, QueryType.computeQueryType(queryInfo));
+  }
 }
@@ -0,0 +1,334 @@
+package gov.cms.bfd.server.war;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sql.DataSource;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link ReplicaRoutingDataSource}, using local in-memory HSQL databases. */
+public final class ReplicaRoutingDataSourceTest {
+  /**
+   * Verifies that {@link ReplicaRoutingDataSource} sends connection requests to whichever replica
+   * has the fewest outstanding connections.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void routesToLeastOutstandingReplica() throws SQLException {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    ReplicaRoutingDataSource dataSource =
+        new ReplicaRoutingDataSource(
+            createHsqlDataSource("primary"),
+            Arrays.asList(createHsqlDataSource("replicaA"), createHsqlDataSource("replicaB")),
+            metricRegistry,
+            new HealthCheckRegistry());
+
+    try (Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection()) {
+      // Each replica should have been used once, and the primary not at all.
+      Assert.assertEquals(Arrays.asList(1, 1), dataSource.getOutstandingCounts());
+      Assert.assertNotEquals(getDatabaseUrl(first), getDatabaseUrl(second));
+      Assert.assertFalse(getDatabaseUrl(first).endsWith("primary"));
+      Assert.assertFalse(getDatabaseUrl(second).endsWith("primary"));
+
+      // Once one replica is freed up, it should be the one used next.
+      String firstUrl = getDatabaseUrl(first);
+      first.close();
+      try (Connection third = dataSource.getConnection()) {
+        Assert.assertEquals(firstUrl, getDatabaseUrl(third));
+        Assert.assertEquals(Arrays.asList(1, 1), dataSource.getOutstandingCounts());
+      }
+    }
+
+    // Closing connections (even more than once) shouldn't throw the counts off.
+    Assert.assertEquals(Arrays.asList(0, 0), dataSource.getOutstandingCounts());
+    Assert.assertEquals(
+        0,
+        metricRegistry
+            .meter(
+                MetricRegistry.name(
+                    ReplicaRoutingDataSource.class.getSimpleName(), "primaryFallbacks"))
+            .getCount());
+  }
+
+  /**
+   * Verifies that {@link ReplicaRoutingDataSource} falls back to the primary when its replicas
+   * can't provide connections, and reports those replicas as unhealthy.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void fallsBackToPrimary() throws SQLException {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    HealthCheckRegistry healthCheckRegistry = new HealthCheckRegistry();
+    JDBCDataSource brokenReplica = createHsqlDataSource("missing;ifexists=true");
+    ReplicaRoutingDataSource dataSource =
+        new ReplicaRoutingDataSource(
+            createHsqlDataSource("primary"),
+            Collections.singletonList(brokenReplica),
+            metricRegistry,
+            healthCheckRegistry);
+
+    try (Connection connection = dataSource.getConnection()) {
+      Assert.assertTrue(getDatabaseUrl(connection).endsWith("primary"));
+    }
+    Assert.assertEquals(Collections.singletonList(0), dataSource.getOutstandingCounts());
+    Assert.assertEquals(
+        1,
+        metricRegistry
+            .meter(
+                MetricRegistry.name(
+                    ReplicaRoutingDataSource.class.getSimpleName(), "primaryFallbacks"))
+            .getCount());
+    Assert.assertFalse(
+        healthCheckRegistry
+            .runHealthCheck(ReplicaRoutingDataSource.HEALTH_CHECK_NAME_PREFIX + 0)
+            .isHealthy());
+  }
+
+  /**
+   * Verifies that {@link ReplicaRoutingDataSource} skips (but does not mark unhealthy) a replica
+   * whose connection pool is saturated, and uses the other replicas instead.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void skipsSaturatedReplica() throws SQLException {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    HealthCheckRegistry healthCheckRegistry = new HealthCheckRegistry();
+    AtomicBoolean saturated = new AtomicBoolean(true);
+    ReplicaRoutingDataSource dataSource =
+        new ReplicaRoutingDataSource(
+            createHsqlDataSource("primary"),
+            Arrays.asList(
+                createSaturatableDataSource(createHsqlDataSource("replicaA"), saturated),
+                createHsqlDataSource("replicaB")),
+            metricRegistry,
+            healthCheckRegistry);
+
+    for (int i = 0; i < 2; i++) {
+      try (Connection connection = dataSource.getConnection()) {
+        Assert.assertTrue(getDatabaseUrl(connection).endsWith("replicaB"));
+      }
+    }
+    Assert.assertTrue(getReplicaPoolTimeouts(metricRegistry) > 0);
+    Assert.assertEquals(0, getPrimaryFallbacks(metricRegistry));
+
+    // Once the pool frees up, the replica should be used again right away.
+    saturated.set(false);
+    try (Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection()) {
+      Assert.assertNotEquals(getDatabaseUrl(first), getDatabaseUrl(second));
+    }
+    Assert.assertTrue(
+        healthCheckRegistry
+            .runHealthCheck(ReplicaRoutingDataSource.HEALTH_CHECK_NAME_PREFIX + 0)
+            .isHealthy());
+  }
+
+  /**
+   * Verifies that {@link ReplicaRoutingDataSource} bubbles up the pool timeout (rather than falling
+   * back to the primary) when all of its replicas' connection pools are saturated, and that it
+   * doesn't mark those replicas unhealthy.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void bubblesUpPoolTimeouts() throws SQLException {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    AtomicBoolean saturated = new AtomicBoolean(true);
+    ReplicaRoutingDataSource dataSource =
+        new ReplicaRoutingDataSource(
+            createHsqlDataSource("primary"),
+            Collections.singletonList(
+                createSaturatableDataSource(createHsqlDataSource("replicaA"), saturated)),
+            metricRegistry,
+            new HealthCheckRegistry());
+
+    try (Connection connection = dataSource.getConnection()) {
+      Assert.fail("Expected a pool timeout.");
+    } catch (SQLTransientConnectionException e) {
+      Assert.assertTrue(ConnectionPoolSaturationInterceptor.isPoolTimeout(e));
+    }
+    Assert.assertEquals(1, getReplicaPoolTimeouts(metricRegistry));
+    Assert.assertEquals(0, getPrimaryFallbacks(metricRegistry));
+    Assert.assertEquals(Collections.singletonList(0), dataSource.getOutstandingCounts());
+
+    // The replica wasn't benched, so it should be used as soon as its pool frees up.
+    saturated.set(false);
+    try (Connection connection = dataSource.getConnection()) {
+      Assert.assertTrue(getDatabaseUrl(connection).endsWith("replicaA"));
+    }
+  }
+
+  /**
+   * Verifies that {@link ReplicaRoutingDataSource#isPoolTimeout(Exception)} only matches pool
+   * timeouts that weren't caused by connection failures.
+   */
+  @Test
+  public void isPoolTimeout() {
+    String timeoutMessage =
+        "HikariPool-1 - Connection is not available, request timed out after 30000ms.";
+    Assert.assertTrue(
+        ReplicaRoutingDataSource.isPoolTimeout(
+            new SQLTransientConnectionException(timeoutMessage)));
+    Assert.assertFalse(
+        ReplicaRoutingDataSource.isPoolTimeout(
+            new SQLTransientConnectionException(timeoutMessage, new SQLException("refused"))));
+    Assert.assertFalse(ReplicaRoutingDataSource.isPoolTimeout(new SQLException("refused")));
+  }
+
+  /**
+   * Verifies that {@link ReplicaRoutingDataSource} just uses the primary when no replicas are
+   * configured.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void usesPrimaryWithoutReplicas() throws SQLException {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    ReplicaRoutingDataSource dataSource =
+        new ReplicaRoutingDataSource(
+            createHsqlDataSource("primary"),
+            Collections.emptyList(),
+            metricRegistry,
+            new HealthCheckRegistry());
+
+    try (Connection connection = dataSource.getConnection()) {
+      Assert.assertTrue(getDatabaseUrl(connection).endsWith("primary"));
+    }
+    Assert.assertEquals(
+        0,
+        metricRegistry
+            .meter(
+                MetricRegistry.name(
+                    ReplicaRoutingDataSource.class.getSimpleName(), "primaryFallbacks"))
+            .getCount());
+  }
+
+  /**
+   * Verifies that {@link ReplicaRoutingDataSource#runOnPrimary(Runnable)} sends connections to the
+   * primary, even when healthy replicas are available, and that only the replica connections are
+   * counted by {@link ReplicaRoutingDataSource#getReplicaConnectionCount()}.
+   *
+   * @throws SQLException (indicates test failure)
+   */
+  @Test
+  public void runOnPrimaryUsesPrimary() throws SQLException {
+    ReplicaRoutingDataSource dataSource =
+        new ReplicaRoutingDataSource(
+            createHsqlDataSource("primary"),
+            Collections.singletonList(createHsqlDataSource("replicaA")),
+            new MetricRegistry(),
+            new HealthCheckRegistry());
+
+    long replicaConnections = ReplicaRoutingDataSource.getReplicaConnectionCount();
+    List<String> databaseUrls = new ArrayList<>();
+    ReplicaRoutingDataSource.runOnPrimary(
+        () -> {
+          try (Connection connection = dataSource.getConnection()) {
+            databaseUrls.add(getDatabaseUrl(connection));
+          } catch (SQLException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+    Assert.assertEquals(1, databaseUrls.size());
+    Assert.assertTrue(databaseUrls.get(0).endsWith("primary"));
+    Assert.assertEquals(
+        replicaConnections, ReplicaRoutingDataSource.getReplicaConnectionCount());
+
+    // Once it's done, connections should go back to the replicas.
+    try (Connection connection = dataSource.getConnection()) {
+      Assert.assertTrue(getDatabaseUrl(connection).endsWith("replicaA"));
+    }
+    Assert.assertEquals(
+        replicaConnections + 1, ReplicaRoutingDataSource.getReplicaConnectionCount());
+  }
+
+  /**
+   * @param databaseName the name of the in-memory HSQL database to connect to
+   * @return a {@link JDBCDataSource} for the specified in-memory HSQL database
+   */
+  private static JDBCDataSource createHsqlDataSource(String databaseName) {
+    JDBCDataSource dataSource = new JDBCDataSource();
+    dataSource.setUrl(
+        String.format(
+            "jdbc:hsqldb:mem:%s-%s",
+            ReplicaRoutingDataSourceTest.class.getSimpleName(), databaseName));
+    dataSource.setUser("sa");
+    dataSource.setPassword("");
+    return dataSource;
+  }
+
+  /**
+   * @param dataSource the {@link DataSource} to wrap
+   * @param saturated while <code>true</code>, the returned {@link DataSource} will fail all
+   *     connection requests with the same {@link SQLTransientConnectionException} that HikariCP
+   *     throws when its pool is saturated
+   * @return a {@link DataSource} that simulates pool saturation on demand
+   */
+  private static DataSource createSaturatableDataSource(
+      DataSource dataSource, AtomicBoolean saturated) {
+    return (DataSource)
+        Proxy.newProxyInstance(
+            DataSource.class.getClassLoader(),
+            new Class<?>[] {DataSource.class},
+            (proxy, method, args) -> {
+              if ("getConnection".equals(method.getName()) && saturated.get())
+                throw new SQLTransientConnectionException(
+                    "Connection is not available, request timed out after 1ms.");
+              try {
+                return method.invoke(dataSource, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            });
+  }
+
+  /**
+   * @param metricRegistry the {@link MetricRegistry} that the {@link ReplicaRoutingDataSource} was
+   *     created with
+   * @return the count of the <code>primaryFallbacks</code> meter
+   */
+  private static long getPrimaryFallbacks(MetricRegistry metricRegistry) {
+    return metricRegistry
+        .meter(
+            MetricRegistry.name(ReplicaRoutingDataSource.class.getSimpleName(), "primaryFallbacks"))
+        .getCount();
+  }
+
+  /**
+   * @param metricRegistry the {@link MetricRegistry} that the {@link ReplicaRoutingDataSource} was
+   *     created with
+   * @return the count of the <code>replicaPoolTimeouts</code> meter
+   */
+  private static long getReplicaPoolTimeouts(MetricRegistry metricRegistry) {
+    return metricRegistry
+        .meter(
+            MetricRegistry.name(
+                ReplicaRoutingDataSource.class.getSimpleName(), "replicaPoolTimeouts"))
+        .getCount();
+  }
+
+  /**
+   * @param connection the {@link Connection} to check
+   * @return the JDBC URL of the database that the specified {@link Connection} (from a {@link
+   *     DataSource}) is connected to
+   * @throws SQLException (indicates test failure)
+   */
+  private static String getDatabaseUrl(Connection connection) throws SQLException {
+    return connection.getMetaData().getURL();
+  }
+}
@@ -291,6 +291,13 @@ public final class ServerTestUtils {
         entityManager.createQuery(query).executeUpdate();
       }
 
+      // Mark a new load generation, as the pipeline would, so the server's caches are invalidated.
+      entityManager
+          .createNativeQuery(
+              "update \"LoadGenerations\" set \"generation\" = \"generation\" + 1"
+                  + " where \"slot\" = 0")
+          .executeUpdate();
+
       /*
        * To be complete, we should also be resetting our sequences here. However, there isn't a
        * simple way to do that without hardcoding the sequence names, so I'm going to lean into my
@@ -0,0 +1,235 @@
+package gov.cms.bfd.server.war;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import gov.cms.bfd.server.war.stu3.providers.EncodedExplanationOfBenefit;
+import gov.cms.bfd.server.war.stu3.providers.StreamingBundle;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import com.codahale.metrics.MetricRegistry;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.servlet.http.HttpServletRequest;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Bundle.BundleType;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link StreamingBundleInterceptor}. */
+public final class StreamingBundleInterceptorTest {
+  private static final FhirContext FHIR_CONTEXT = FhirContext.forDstu3();
+
+  /**
+   * Verifies that {@link StreamingBundleInterceptor#writeBundle(IParser, EncodingEnum,
+   * StreamingBundle, java.io.Writer)} produces the same JSON as HAPI does for an equivalent regular
+   * {@link Bundle}.
+   */
+  @Test
+  public void writeBundleJson() throws IOException {
+    assertSameAsRegularBundle(EncodingEnum.JSON, 3, false);
+  }
+
+  /**
+   * Verifies that {@link StreamingBundleInterceptor#writeBundle(IParser, EncodingEnum,
+   * StreamingBundle, java.io.Writer)} produces the same XML as HAPI does for an equivalent regular
+   * {@link Bundle}.
+   */
+  @Test
+  public void writeBundleXml() throws IOException {
+    assertSameAsRegularBundle(EncodingEnum.XML, 3, false);
+  }
+
+  /**
+   * Verifies that {@link StreamingBundleInterceptor#writeBundle(IParser, EncodingEnum,
+   * StreamingBundle, java.io.Writer)} handles {@link Bundle}s without any entries.
+   */
+  @Test
+  public void writeEmptyBundle() throws IOException {
+    assertSameAsRegularBundle(EncodingEnum.JSON, 0, false);
+    assertSameAsRegularBundle(EncodingEnum.XML, 0, false);
+  }
+
+  /**
+   * Verifies that {@link StreamingBundleInterceptor#writeBundle(IParser, EncodingEnum,
+   * StreamingBundle, java.io.Writer)} handles {@link EncodedExplanationOfBenefit} entries, in both
+   * JSON (where they're written as-is) and XML (where they have to be decoded first).
+   */
+  @Test
+  public void writeBundleWithEncodedEntries() throws IOException {
+    assertSameAsRegularBundle(EncodingEnum.JSON, 3, true);
+    assertSameAsRegularBundle(EncodingEnum.XML, 3, true);
+  }
+
+  /**
+   * Verifies that {@link StreamingBundleInterceptor#writeBundle(IParser, EncodingEnum,
+   * StreamingBundle, java.io.Writer)} leaves out the entries whose suppliers produce <code>null
+   * </code>, including the first one.
+   */
+  @Test
+  public void writeBundleSkipsNullEntries() throws IOException {
+    for (EncodingEnum encoding : new EncodingEnum[] {EncodingEnum.JSON, EncodingEnum.XML}) {
+      List<Supplier<? extends Resource>> entrySuppliers = new ArrayList<>();
+      entrySuppliers.add(() -> null);
+      entrySuppliers.add(() -> createEob("carrier-1"));
+      entrySuppliers.add(() -> null);
+      entrySuppliers.add(() -> createEob("carrier-3"));
+      StreamingBundle streamingBundle = new StreamingBundle(entrySuppliers);
+      Bundle regularBundle = new Bundle();
+      regularBundle.addEntry().setResource(createEob("carrier-1"));
+      regularBundle.addEntry().setResource(createEob("carrier-3"));
+      for (Bundle bundle : new Bundle[] {streamingBundle, regularBundle})
+        bundle.setType(BundleType.SEARCHSET);
+
+      IParser parser = encoding.newParser(FHIR_CONTEXT);
+      StringWriter streamedText = new StringWriter();
+      StreamingBundleInterceptor.writeBundle(parser, encoding, streamingBundle, streamedText);
+      Assert.assertEquals(parser.encodeResourceToString(regularBundle), streamedText.toString());
+    }
+  }
+
+  /**
+   * Verifies that {@link StreamingBundleInterceptor#writeBundle(IParser, EncodingEnum,
+   * StreamingBundle, java.io.Writer)} bubbles up errors encountered part-way through the entries,
+   * and that it doesn't terminate the partially-written document when it does so.
+   */
+  @Test
+  public void writeBundleFailsPartWay() {
+    for (EncodingEnum encoding : new EncodingEnum[] {EncodingEnum.JSON, EncodingEnum.XML}) {
+      List<Supplier<? extends Resource>> entrySuppliers = new ArrayList<>();
+      entrySuppliers.add(() -> createEob("carrier-0"));
+      entrySuppliers.add(
+          () -> {
+            throw new IllegalStateException("boom");
+          });
+      entrySuppliers.add(() -> createEob("carrier-2"));
+      StreamingBundle streamingBundle = new StreamingBundle(entrySuppliers);
+      streamingBundle.setType(BundleType.SEARCHSET);
+
+      IParser parser = encoding.newParser(FHIR_CONTEXT);
+      StringWriter streamedText = new StringWriter();
+      try {
+        StreamingBundleInterceptor.writeBundle(parser, encoding, streamingBundle, streamedText);
+        Assert.fail("Expected the entry's failure to be bubbled up.");
+      } catch (IllegalStateException | IOException e) {
+        Assert.assertEquals("boom", e.getMessage());
+      }
+
+      Assert.assertTrue(streamedText.toString().contains("carrier-0"));
+      try {
+        parser.parseResource(Bundle.class, streamedText.toString());
+        Assert.fail("Partial output should not be a complete document: " + streamedText);
+      } catch (DataFormatException e) {
+        // Good: the truncation is detectable.
+      }
+    }
+  }
+
+  /**
+   * Verifies that, once a streamed response has failed part-way through, {@link
+   * StreamingBundleInterceptor} stops HAPI from appending an error response to it, and that {@link
+   * StreamingBundleInterceptor#rethrowStreamingFailure(HttpServletRequest)} then lets the failure
+   * escape the servlet (so that the container aborts the connection).
+   */
+  @Test
+  public void streamingFailureIsRethrown() throws Exception {
+    StreamingBundleInterceptor interceptor = new StreamingBundleInterceptor(new MetricRegistry());
+    HttpServletRequest request = createRequest();
+    InternalErrorException hapiException = new InternalErrorException("boom");
+
+    // Without a streaming failure, nothing should change.
+    Assert.assertTrue(interceptor.handleException(null, hapiException, request, null));
+    StreamingBundleInterceptor.rethrowStreamingFailure(request);
+
+    IllegalStateException failure = new IllegalStateException("boom");
+    request.setAttribute(StreamingBundleInterceptor.ATTRIBUTE_STREAMING_FAILURE, failure);
+    Assert.assertFalse(interceptor.handleException(null, hapiException, request, null));
+    try {
+      StreamingBundleInterceptor.rethrowStreamingFailure(request);
+      Assert.fail("Expected the streaming failure to be rethrown.");
+    } catch (IOException e) {
+      Assert.assertSame(failure, e.getCause());
+    }
+  }
+
+  /**
+   * @return a minimal {@link HttpServletRequest} that only supports getting and setting attributes
+   */
+  private static HttpServletRequest createRequest() {
+    Map<String, Object> attributes = new HashMap<>();
+    return (HttpServletRequest)
+        Proxy.newProxyInstance(
+            HttpServletRequest.class.getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "getAttribute":
+                  return attributes.get(args[0]);
+                case "setAttribute":
+                  attributes.put((String) args[0], args[1]);
+                  return null;
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  /**
+   * @param encoding the {@link EncodingEnum} to test
+   * @param entryCount the number of entries to include in the {@link Bundle}s
+   * @param encoded <code>true</code> if the {@link StreamingBundle}'s entries should be {@link
+   *     EncodedExplanationOfBenefit}s, <code>false</code> if they should be regular {@link
+   *     ExplanationOfBenefit}s
+   * @throws IOException (won't happen: only in-memory {@link java.io.Writer}s are used)
+   */
+  private static void assertSameAsRegularBundle(
+      EncodingEnum encoding, int entryCount, boolean encoded) throws IOException {
+    IParser jsonParser = FHIR_CONTEXT.newJsonParser();
+    List<Supplier<? extends Resource>> entrySuppliers = new ArrayList<>();
+    Bundle regularBundle = new Bundle();
+    for (int i = 0; i < entryCount; i++) {
+      String id = "carrier-" + i;
+      if (encoded) {
+        String json = jsonParser.encodeResourceToString(createEob(id));
+        entrySuppliers.add(() -> new EncodedExplanationOfBenefit(json));
+      } else {
+        entrySuppliers.add(() -> createEob(id));
+      }
+      regularBundle.addEntry().setResource(createEob(id));
+    }
+    StreamingBundle streamingBundle = new StreamingBundle(entrySuppliers);
+    for (Bundle bundle : new Bundle[] {streamingBundle, regularBundle}) {
+      bundle.setId("foo");
+      bundle.setType(BundleType.SEARCHSET);
+      bundle.setTotal(entryCount);
+      bundle.addLink().setRelation(Bundle.LINK_SELF).setUrl("http://localhost/foo");
+    }
+
+    IParser parser = encoding.newParser(FHIR_CONTEXT);
+    StringWriter streamedText = new StringWriter();
+    StreamingBundleInterceptor.writeBundle(parser, encoding, streamingBundle, streamedText);
+
+    Assert.assertEquals(parser.encodeResourceToString(regularBundle), streamedText.toString());
+    Assert.assertEquals(
+        entryCount,
+        parser.parseResource(Bundle.class, streamedText.toString()).getEntry().size());
+  }
+
+  /**
+   * @param id the {@link ExplanationOfBenefit#getId()} value to use
+   * @return a new {@link ExplanationOfBenefit}
+   */
+  private static ExplanationOfBenefit createEob(String id) {
+    ExplanationOfBenefit eob = new ExplanationOfBenefit();
+    eob.setId(id);
+    return eob;
+  }
+}
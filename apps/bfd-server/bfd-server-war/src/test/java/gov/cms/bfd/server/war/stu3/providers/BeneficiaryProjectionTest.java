@@ -0,0 +1,90 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.samples.StaticRifResource;
+import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
+import gov.cms.bfd.server.war.ServerTestUtils;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import org.hl7.fhir.dstu3.model.Coverage;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BeneficiaryProjection}, which mostly verify that the projections declared
+ * by the transformers include every {@link Beneficiary} field that those transformers actually use.
+ */
+public final class BeneficiaryProjectionTest {
+  /**
+   * Verifies that each {@link MedicareSegment}'s {@link CoverageTransformer} projection produces
+   * the same {@link Coverage} as the full {@link StaticRifResource#SAMPLE_A_BENES} {@link
+   * Beneficiary} does.
+   */
+  @Test
+  public void coverageProjectionsAreComplete() {
+    Beneficiary beneficiary = loadSampleABeneficiary();
+
+    for (MedicareSegment medicareSegment : MedicareSegment.values()) {
+      BeneficiaryProjection projection = CoverageTransformer.selectProjection(medicareSegment);
+      Coverage expected =
+          CoverageTransformer.transform(new MetricRegistry(), medicareSegment, beneficiary);
+      Coverage actual =
+          CoverageTransformer.transform(
+              new MetricRegistry(), medicareSegment, projection.copyOf(beneficiary));
+      Assert.assertTrue(projection.toString(), expected.equalsDeep(actual));
+
+      Coverage actualFromAll =
+          CoverageTransformer.transform(
+              new MetricRegistry(),
+              medicareSegment,
+              CoverageTransformer.ALL_PARTS_PROJECTION.copyOf(beneficiary));
+      Assert.assertTrue(medicareSegment.name(), expected.equalsDeep(actualFromAll));
+    }
+  }
+
+  /**
+   * Verifies that {@link BeneficiaryTransformer#PATIENT_PROJECTION} produces the same {@link
+   * Patient} as the full {@link StaticRifResource#SAMPLE_A_BENES} {@link Beneficiary} does, when no
+   * unhashed identifiers are requested.
+   */
+  @Test
+  public void patientProjectionIsComplete() {
+    Beneficiary beneficiary = loadSampleABeneficiary();
+    List<String> includeIdentifiersValues = Arrays.asList("");
+
+    // PatientResourceProvider always blanks these out when they weren't requested.
+    beneficiary.setHicnUnhashed(Optional.empty());
+    beneficiary.setMedicareBeneficiaryId(Optional.empty());
+
+    Patient expected =
+        BeneficiaryTransformer.transform(
+            new MetricRegistry(), beneficiary, includeIdentifiersValues);
+    Patient actual =
+        BeneficiaryTransformer.transform(
+            new MetricRegistry(),
+            BeneficiaryTransformer.PATIENT_PROJECTION.copyOf(beneficiary),
+            includeIdentifiersValues);
+    Assert.assertTrue(expected.equalsDeep(actual));
+  }
+
+  /** Verifies that {@link BeneficiaryProjection} rejects fields that don't exist. */
+  @Test(expected = BadCodeMonkeyException.class)
+  public void rejectsUnknownFields() {
+    new BeneficiaryProjection("bogus", "beneficiaryId", "notARealField");
+  }
+
+  /** @return the {@link StaticRifResource#SAMPLE_A_BENES} {@link Beneficiary} */
+  private static Beneficiary loadSampleABeneficiary() {
+    List<Object> parsedRecords =
+        ServerTestUtils.parseData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    return parsedRecords.stream()
+        .filter(r -> r instanceof Beneficiary)
+        .map(r -> (Beneficiary) r)
+        .findFirst()
+        .get();
+  }
+}
@@ -0,0 +1,163 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BulkExporter}. The exports themselves are covered by {@link
+ * gov.cms.bfd.server.war.BulkExportServletIT}.
+ */
+public final class BulkExporterTest {
+  private Path exportDirectory;
+
+  /**
+   * Creates a temporary export directory for each test case.
+   *
+   * @throws IOException (indicates test failure)
+   */
+  @Before
+  public void createExportDirectory() throws IOException {
+    exportDirectory = Files.createTempDirectory(BulkExporterTest.class.getSimpleName());
+  }
+
+  /**
+   * Deletes each test case's temporary export directory.
+   *
+   * @throws IOException (indicates test failure)
+   */
+  @After
+  public void deleteExportDirectory() throws IOException {
+    try (Stream<Path> files = Files.walk(exportDirectory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+        Files.delete(file);
+    }
+  }
+
+  /**
+   * Verifies that {@link BulkExporter#deleteExpiredJobs()} deletes the files of jobs older than the
+   * retention period, and only those.
+   */
+  @Test
+  public void deleteExpiredJobs() {
+    BulkExporter exporter = createExporter();
+    String expiredJobId = saveJob(Instant.now().minus(Duration.ofHours(25)));
+    String currentJobId = saveJob(Instant.now().minus(Duration.ofHours(23)));
+
+    Assert.assertEquals(1, exporter.deleteExpiredJobs());
+    Assert.assertFalse(Files.exists(exportDirectory.resolve(expiredJobId)));
+    Assert.assertTrue(Files.exists(exportDirectory.resolve(currentJobId)));
+
+    // Nothing else has expired, so nothing else should be deleted.
+    Assert.assertEquals(0, exporter.deleteExpiredJobs());
+    Assert.assertTrue(Files.exists(exportDirectory.resolve(currentJobId)));
+  }
+
+  /**
+   * Verifies that {@link BulkExporter#findJob(String)} treats expired jobs as not found, and
+   * deletes their files.
+   */
+  @Test
+  public void findExpiredJob() {
+    BulkExporter exporter = createExporter();
+    String expiredJobId = saveJob(Instant.now().minus(Duration.ofHours(25)));
+    String currentJobId = saveJob(Instant.now().minus(Duration.ofHours(23)));
+
+    Assert.assertFalse(exporter.findJob(expiredJobId).isPresent());
+    Assert.assertFalse(Files.exists(exportDirectory.resolve(expiredJobId)));
+    Assert.assertTrue(exporter.findJob(currentJobId).isPresent());
+  }
+
+  /**
+   * Verifies that {@link BulkExporter#setExportDirectory(String)} refuses to leave the export
+   * directory unconfigured.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void exportDirectoryRequired() {
+    new BulkExporter().setExportDirectory(" ");
+  }
+
+  /**
+   * Verifies that {@link BulkExporter#setExportDirectory(String)} creates a missing export
+   * directory that only its owner can access.
+   *
+   * @throws IOException (indicates test failure)
+   */
+  @Test
+  public void exportDirectoryCreated() throws IOException {
+    Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+    Path missingDirectory = exportDirectory.resolve("missing");
+
+    new BulkExporter().setExportDirectory(missingDirectory.toString());
+
+    Assert.assertTrue(Files.isDirectory(missingDirectory));
+    Assert.assertEquals(
+        PosixFilePermissions.fromString("rwx------"),
+        Files.getPosixFilePermissions(missingDirectory));
+  }
+
+  /**
+   * Verifies that {@link BulkExporter#setExportDirectory(String)} rejects an export directory that
+   * other users can access.
+   *
+   * @throws IOException (indicates test failure)
+   */
+  @Test(expected = IllegalStateException.class)
+  public void exportDirectoryInsecure() throws IOException {
+    Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+    Files.setPosixFilePermissions(exportDirectory, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+    new BulkExporter().setExportDirectory(exportDirectory.toString());
+  }
+
+  /** @return a new {@link BulkExporter} that uses the test's export directory */
+  private BulkExporter createExporter() {
+    BulkExporter exporter = new BulkExporter();
+    exporter.setExportDirectory(exportDirectory.toString());
+    exporter.setRetentionHours("24");
+    return exporter;
+  }
+
+  /**
+   * @param transactionTime the {@link BulkExportJob#getTransactionTime()} to use
+   * @return the {@link BulkExportJob#getId()} of a new, completed {@link BulkExportJob} that has
+   *     been saved to the test's export directory
+   */
+  private String saveJob(Instant transactionTime) {
+    BulkExportJob job =
+        new BulkExportJob(
+            UUID.randomUUID().toString(),
+            "http://localhost/v1/fhir/$export",
+            transactionTime,
+            Optional.empty(),
+            Collections.singleton(Patient.class.getSimpleName()),
+            false,
+            Arrays.asList("beneficiaries"));
+    job.setStatus(BulkExportJob.Status.COMPLETE, null);
+    Path jobDirectory = exportDirectory.resolve(job.getId());
+    try {
+      Files.createDirectories(jobDirectory);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    job.save(jobDirectory);
+    return job.getId();
+  }
+}
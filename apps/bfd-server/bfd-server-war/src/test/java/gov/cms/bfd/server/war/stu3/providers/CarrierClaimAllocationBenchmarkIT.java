@@ -0,0 +1,296 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.CarrierClaim;
+import gov.cms.bfd.model.rif.CarrierClaimLine;
+import gov.cms.bfd.model.rif.CompactValues;
+import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
+import gov.cms.bfd.server.war.ServerTestUtils;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.ToLongFunction;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A rough benchmark of the {@link CarrierClaimTransformer}'s handling of the compact fields of a
+ * {@link CarrierClaim} (see {@link CompactValues}). It measures how many bytes are allocated when:
+ *
+ * <ul>
+ *   <li>reading those fields through their boxed ({@link java.util.Optional}, {@link
+ *       java.math.BigDecimal}, and {@link java.time.LocalDate}) getters versus their raw primitive
+ *       getters,
+ *   <li>converting the claim's dates and amounts into their FHIR {@link java.util.Date}s and {@link
+ *       org.hl7.fhir.dstu3.model.Money}s from the boxed values versus from the raw values, as the
+ *       transformer now does, and
+ *   <li>running the whole transform, which is also timed.
+ * </ul>
+ *
+ * The results are logged, the raw getters are verified to not allocate at all, and the raw
+ * conversions are verified to allocate less than the boxed ones.
+ */
+public final class CarrierClaimAllocationBenchmarkIT {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(CarrierClaimAllocationBenchmarkIT.class);
+
+  /** The number of times to run each measured action, after a round of warm-up runs. */
+  private static final int ITERATIONS = 10000;
+
+  /** The number of lines that the benchmarked claim is padded out to. */
+  private static final int LINE_COUNT = 10;
+
+  /**
+   * Holds the most recent value passed to {@link #escape(Object)}, so that the JIT can't optimize
+   * away the allocation of those values (which, in the transformers, always escape into the FHIR
+   * resources).
+   */
+  private static final Object[] SINK = new Object[1];
+
+  /**
+   * Runs the benchmark against the {@link StaticRifResourceGroup#SAMPLE_A} {@link CarrierClaim},
+   * with its line repeated {@link #LINE_COUNT} times, so that the per-line costs dominate as they
+   * do for real claims.
+   */
+  @Test
+  public void compareAllocations() {
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+    Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+    allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+    CarrierClaim claim =
+        ServerTestUtils.parseData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()))
+            .stream()
+            .filter(r -> r instanceof CarrierClaim)
+            .map(r -> (CarrierClaim) r)
+            .findFirst()
+            .get();
+    CarrierClaimLine sampleLine = claim.getLines().get(0);
+    while (claim.getLines().size() < LINE_COUNT) claim.getLines().add(sampleLine);
+
+    MetricRegistry metricRegistry = new MetricRegistry();
+    long baselineBytes = measureAllocatedBytes(allocationBean, c -> 0L, claim);
+    long boxedBytes = measureAllocatedBytes(allocationBean, c -> readBoxed(c), claim);
+    long rawBytes = measureAllocatedBytes(allocationBean, c -> readRaw(c), claim);
+    long convertBoxedBytes = measureAllocatedBytes(allocationBean, c -> convertBoxed(c), claim);
+    long convertRawBytes = measureAllocatedBytes(allocationBean, c -> convertRaw(c), claim);
+    ToLongFunction<CarrierClaim> transform =
+        c -> CarrierClaimTransformer.transform(metricRegistry, c).getItem().size();
+    long transformBytes = measureAllocatedBytes(allocationBean, transform, claim);
+    long transformNanos = measureNanos(transform, claim);
+
+    LOGGER.info(
+        "Allocations per {}-line Carrier claim: reading compact fields via boxed getters took {}"
+            + " bytes; via raw getters took {} bytes; converting its dates and amounts to FHIR"
+            + " from boxed values took {} bytes; from raw values took {} bytes; the full"
+            + " transform took {} bytes and {} ns.",
+        claim.getLines().size(),
+        boxedBytes - baselineBytes,
+        rawBytes - baselineBytes,
+        convertBoxedBytes - baselineBytes,
+        convertRawBytes - baselineBytes,
+        transformBytes - baselineBytes,
+        transformNanos);
+    Assert.assertEquals(
+        "Raw getters shouldn't allocate.", 0L, Math.max(0L, rawBytes - baselineBytes));
+    Assert.assertTrue(boxedBytes > rawBytes);
+    Assert.assertTrue(convertBoxedBytes > convertRawBytes);
+  }
+
+  /**
+   * @param allocationBean the {@link com.sun.management.ThreadMXBean} to measure with
+   * @param action the action to measure
+   * @param claim the {@link CarrierClaim} to run the action against
+   * @return the average number of bytes allocated by the current thread per run of the action
+   */
+  private static long measureAllocatedBytes(
+      com.sun.management.ThreadMXBean allocationBean,
+      ToLongFunction<CarrierClaim> action,
+      CarrierClaim claim) {
+    long threadId = Thread.currentThread().getId();
+    long blackhole = 0L;
+
+    // Warm up, so that the JIT has done its thing (e.g. escape analysis) before measuring.
+    for (int i = 0; i < ITERATIONS; i++) blackhole += action.applyAsLong(claim);
+
+    long start = allocationBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < ITERATIONS; i++) blackhole += action.applyAsLong(claim);
+    long allocated = allocationBean.getThreadAllocatedBytes(threadId) - start;
+
+    // Use the results, so that the reads can't be optimized away.
+    if (blackhole == Long.MIN_VALUE) LOGGER.trace("Unlikely blackhole value.");
+    return allocated / ITERATIONS;
+  }
+
+  /**
+   * @param action the action to measure
+   * @param claim the {@link CarrierClaim} to run the action against
+   * @return the average number of nanoseconds taken per run of the action
+   */
+  private static long measureNanos(ToLongFunction<CarrierClaim> action, CarrierClaim claim) {
+    long blackhole = 0L;
+
+    // Warm up, so that the JIT has done its thing before measuring.
+    for (int i = 0; i < ITERATIONS; i++) blackhole += action.applyAsLong(claim);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) blackhole += action.applyAsLong(claim);
+    long elapsed = System.nanoTime() - start;
+
+    // Use the results, so that the runs can't be optimized away.
+    if (blackhole == Long.MIN_VALUE) LOGGER.trace("Unlikely blackhole value.");
+    return elapsed / ITERATIONS;
+  }
+
+  /**
+   * @param claim the {@link CarrierClaim} to convert
+   * @return a value derived from converting the claim's (and its lines') dates and amounts into
+   *     their FHIR representations, starting from their boxed getters (as the transformer used to)
+   */
+  private static long convertBoxed(CarrierClaim claim) {
+    long result = 0L;
+    Optional<LocalDate> dateFrom = Optional.of(claim.getDateFrom());
+    Optional<LocalDate> dateThrough = Optional.of(claim.getDateThrough());
+    result += escape(TransformerUtils.convertToDate(dateFrom.get()));
+    result += escape(TransformerUtils.convertToDate(dateThrough.get()));
+    result += escape(TransformerUtils.createMoney(Optional.of(claim.getPaymentAmount())));
+    result += escape(TransformerUtils.createMoney(claim.getPrimaryPayerPaidAmount()));
+
+    for (int i = 0; i < claim.getLines().size(); i++) {
+      CarrierClaimLine line = claim.getLines().get(i);
+      Optional<LocalDate> firstExpenseDate = line.getFirstExpenseDate();
+      Optional<LocalDate> lastExpenseDate = line.getLastExpenseDate();
+      if (firstExpenseDate.isPresent() && lastExpenseDate.isPresent()) {
+        result += escape(TransformerUtils.convertToDate(firstExpenseDate.get()));
+        result += escape(TransformerUtils.convertToDate(lastExpenseDate.get()));
+      }
+      result += escape(TransformerUtils.createMoney(line.getPaymentAmount()));
+      result += escape(TransformerUtils.createMoney(line.getPrimaryPayerPaidAmount()));
+    }
+    return result;
+  }
+
+  /**
+   * @param claim the {@link CarrierClaim} to convert
+   * @return a value derived from converting the claim's (and its lines') dates and amounts into
+   *     their FHIR representations, starting from their raw getters (as the transformer now does)
+   */
+  private static long convertRaw(CarrierClaim claim) {
+    long result = 0L;
+    result += escape(TransformerUtils.convertEpochDayToDate(claim.getDateFromEpochDay()));
+    result += escape(TransformerUtils.convertEpochDayToDate(claim.getDateThroughEpochDay()));
+    result += escape(TransformerUtils.createMoneyFromCents(claim.getPaymentAmountCents()));
+    result += escape(TransformerUtils.createMoneyFromCents(claim.getPrimaryPayerPaidAmountCents()));
+
+    for (int i = 0; i < claim.getLines().size(); i++) {
+      CarrierClaimLine line = claim.getLines().get(i);
+      int firstExpenseEpochDay = line.getFirstExpenseDateEpochDay();
+      int lastExpenseEpochDay = line.getLastExpenseDateEpochDay();
+      if (firstExpenseEpochDay != CompactValues.ABSENT_EPOCH_DAY
+          && lastExpenseEpochDay != CompactValues.ABSENT_EPOCH_DAY) {
+        result += escape(TransformerUtils.convertEpochDayToDate(firstExpenseEpochDay));
+        result += escape(TransformerUtils.convertEpochDayToDate(lastExpenseEpochDay));
+      }
+      result += escape(TransformerUtils.createMoneyFromCents(line.getPaymentAmountCents()));
+      result +=
+          escape(TransformerUtils.createMoneyFromCents(line.getPrimaryPayerPaidAmountCents()));
+    }
+    return result;
+  }
+
+  /**
+   * @param claim the {@link CarrierClaim} to read
+   * @return a value derived from the claim's (and its lines') compact fields, as read through
+   *     their boxed getters
+   */
+  private static long readBoxed(CarrierClaim claim) {
+    long result = 0L;
+    result += escape(claim.getDateFrom());
+    result += escape(claim.getDateThrough());
+    result += escape(claim.getPaymentAmount());
+    result += escape(claim.getPrimaryPayerPaidAmount());
+    result += escape(claim.getProviderPaymentAmount());
+    result += escape(claim.getBeneficiaryPaymentAmount());
+    result += escape(claim.getSubmittedChargeAmount());
+    result += escape(claim.getAllowedChargeAmount());
+    result += escape(claim.getBeneficiaryPartBDeductAmount());
+    result += escape(claim.getProviderAssignmentIndicator());
+    result += escape(claim.getDiagnosisPrincipalCodeVersion());
+
+    for (int i = 0; i < claim.getLines().size(); i++) {
+      CarrierClaimLine line = claim.getLines().get(i);
+      result += escape(line.getFirstExpenseDate());
+      result += escape(line.getLastExpenseDate());
+      result += escape(line.getPaymentAmount());
+      result += escape(line.getBeneficiaryPaymentAmount());
+      result += escape(line.getProviderPaymentAmount());
+      result += escape(line.getBeneficiaryPartBDeductAmount());
+      result += escape(line.getPrimaryPayerPaidAmount());
+      result += escape(line.getCoinsuranceAmount());
+      result += escape(line.getSubmittedChargeAmount());
+      result += escape(line.getAllowedChargeAmount());
+      result += escape(line.getPrimaryPayerCode());
+      result += escape(line.getPaymentCode());
+      result += escape(line.getServiceDeductibleCode());
+      result += escape(line.getMtusCode());
+      result += escape(line.getDiagnosisCodeVersion());
+    }
+    return result;
+  }
+
+  /**
+   * @param claim the {@link CarrierClaim} to read
+   * @return a value derived from the claim's (and its lines') compact fields, as read through
+   *     their raw getters
+   */
+  private static long readRaw(CarrierClaim claim) {
+    long result = 0L;
+    result += claim.getDateFromEpochDay();
+    result += claim.getDateThroughEpochDay();
+    result += Long.signum(claim.getPaymentAmountCents());
+    result += Long.signum(claim.getPrimaryPayerPaidAmountCents());
+    result += Long.signum(claim.getProviderPaymentAmountCents());
+    result += Long.signum(claim.getBeneficiaryPaymentAmountCents());
+    result += Long.signum(claim.getSubmittedChargeAmountCents());
+    result += Long.signum(claim.getAllowedChargeAmountCents());
+    result += Long.signum(claim.getBeneficiaryPartBDeductAmountCents());
+    result += claim.getProviderAssignmentIndicatorChar();
+    result += claim.getDiagnosisPrincipalCodeVersionChar();
+
+    for (int i = 0; i < claim.getLines().size(); i++) {
+      CarrierClaimLine line = claim.getLines().get(i);
+      result += line.getFirstExpenseDateEpochDay() != CompactValues.ABSENT_EPOCH_DAY ? 1 : 0;
+      result += line.getLastExpenseDateEpochDay() != CompactValues.ABSENT_EPOCH_DAY ? 1 : 0;
+      result += Long.signum(line.getPaymentAmountCents());
+      result += Long.signum(line.getBeneficiaryPaymentAmountCents());
+      result += Long.signum(line.getProviderPaymentAmountCents());
+      result += Long.signum(line.getBeneficiaryPartBDeductAmountCents());
+      result += Long.signum(line.getPrimaryPayerPaidAmountCents());
+      result += Long.signum(line.getCoinsuranceAmountCents());
+      result += Long.signum(line.getSubmittedChargeAmountCents());
+      result += Long.signum(line.getAllowedChargeAmountCents());
+      result += line.getPrimaryPayerCodeChar();
+      result += line.getPaymentCodeChar();
+      result += line.getServiceDeductibleCodeChar();
+      result += line.getMtusCodeChar();
+      result += line.getDiagnosisCodeVersionChar();
+    }
+    return result;
+  }
+
+  /**
+   * @param value the (boxed) value to make escape
+   * @return <code>1</code>
+   */
+  private static long escape(Object value) {
+    SINK[0] = value;
+    return 1L;
+  }
+}
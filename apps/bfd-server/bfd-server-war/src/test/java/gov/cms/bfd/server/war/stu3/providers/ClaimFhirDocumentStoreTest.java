@@ -0,0 +1,43 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ClaimFhirDocumentStore}. Its reads and writes are verified by {@link
+ * ExplanationOfBenefitResourceProviderFlagsIT}.
+ */
+public final class ClaimFhirDocumentStoreTest {
+  /**
+   * Verifies that {@link ClaimFhirDocumentStore#computeTransformerVersion()} returns the same,
+   * valid version every time.
+   */
+  @Test
+  public void computeTransformerVersionIsStable() {
+    String version = ClaimFhirDocumentStore.computeTransformerVersion();
+
+    Assert.assertTrue(version, version.matches("[0-9a-f]{64}"));
+    Assert.assertEquals(version, ClaimFhirDocumentStore.computeTransformerVersion());
+  }
+
+  /**
+   * Verifies that {@link ClaimFhirDocumentStore#computeTransformerVersion(List)} changes when the
+   * lookup table resources do, and tolerates missing resources.
+   */
+  @Test
+  public void computeTransformerVersionCoversResources() {
+    List<String> resourceNames = new ArrayList<>(ClaimFhirDocumentStore.TRANSFORMER_RESOURCES);
+    String version = ClaimFhirDocumentStore.computeTransformerVersion(resourceNames);
+    Assert.assertEquals(ClaimFhirDocumentStore.computeTransformerVersion(), version);
+
+    resourceNames.add("project.properties");
+    Assert.assertNotEquals(
+        version, ClaimFhirDocumentStore.computeTransformerVersion(resourceNames));
+
+    resourceNames.set(resourceNames.size() - 1, "no-such-resource.txt");
+    Assert.assertNotEquals(
+        version, ClaimFhirDocumentStore.computeTransformerVersion(resourceNames));
+  }
+}
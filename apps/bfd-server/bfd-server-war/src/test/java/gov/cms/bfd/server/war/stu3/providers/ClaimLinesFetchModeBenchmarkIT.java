@@ -0,0 +1,237 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
+import gov.cms.bfd.pipeline.rif.load.RifLoader;
+import gov.cms.bfd.server.war.ServerTestUtils;
+import gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider.LinesFetchMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.sql.DataSource;
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.MethodExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A rough benchmark that compares the {@link LinesFetchMode}s supported by {@link
+ * ExplanationOfBenefitResourceProvider}, logging the number of result set rows (and values) read
+ * and the average query latency of each, for each {@link ClaimType} with lines. The rows are
+ * counted by a JDBC proxy, so they're what the database actually sent.
+ *
+ * <p>Note that, by default, this runs against the small sample data set in an HSQL DB, where the
+ * latency numbers aren't terribly meaningful. For real numbers, run it against a copy of a
+ * production DB, via the <code>its.db.url</code> system property.
+ */
+public final class ClaimLinesFetchModeBenchmarkIT {
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(ClaimLinesFetchModeBenchmarkIT.class);
+
+  /** The number of times to run each query, after a single warm-up run. */
+  private static final int ITERATIONS = 100;
+
+  /** Counts the result set rows read during each warm-up run. */
+  private final ResultSetCounter resultSetCounter = new ResultSetCounter();
+
+  /**
+   * Runs the benchmark, and also verifies that both {@link LinesFetchMode}s return the same claims
+   * and lines.
+   */
+  @Test
+  public void compareLinesFetchModes() {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+
+    EntityManagerFactory entityManagerFactory = null;
+    EntityManager entityManager = null;
+    try {
+      // Count the result set rows (and values) that are actually read, via a JDBC proxy.
+      DataSource countingDataSource =
+          ProxyDataSourceBuilder.create(
+                  ServerTestUtils.createRifLoaderOptions().getDatabaseDataSource())
+              .proxyResultSet()
+              .methodListener(resultSetCounter)
+              .build();
+      entityManagerFactory = RifLoader.createEntityManagerFactory(countingDataSource);
+      entityManager = entityManagerFactory.createEntityManager();
+
+      ExplanationOfBenefitResourceProvider eobProvider = new ExplanationOfBenefitResourceProvider();
+      eobProvider.setEntityManager(entityManager);
+      eobProvider.setEntityManagerFactory(entityManagerFactory);
+      eobProvider.setMetricRegistry(new MetricRegistry());
+
+      for (ClaimType claimType : ClaimType.values()) {
+        if (claimType.getEntityLazyAttributes().isEmpty()) continue;
+
+        long[] joinResults =
+            benchmark(
+                eobProvider,
+                entityManager,
+                resultSetCounter,
+                LinesFetchMode.JOIN,
+                claimType,
+                beneficiary.getBeneficiaryId());
+        long[] subselectResults =
+            benchmark(
+                eobProvider,
+                entityManager,
+                resultSetCounter,
+                LinesFetchMode.SUBSELECT,
+                claimType,
+                beneficiary.getBeneficiaryId());
+
+        LOGGER.info(
+            "Lines fetch for {}: JOIN transferred {} rows ({} values) in {} us/query;"
+                + " SUBSELECT transferred {} rows ({} values) in {} us/query.",
+            claimType,
+            joinResults[2],
+            joinResults[3],
+            joinResults[4] / 1000,
+            subselectResults[2],
+            subselectResults[3],
+            subselectResults[4] / 1000);
+        Assert.assertEquals("Claim counts differ.", joinResults[0], subselectResults[0]);
+        Assert.assertEquals("Line counts differ.", joinResults[1], subselectResults[1]);
+      }
+    } finally {
+      if (entityManager != null) entityManager.close();
+      if (entityManagerFactory != null) entityManagerFactory.close();
+    }
+  }
+
+  /**
+   * @param eobProvider the {@link ExplanationOfBenefitResourceProvider} to benchmark
+   * @param entityManager the {@link EntityManager} that the {@link
+   *     ExplanationOfBenefitResourceProvider} uses, which will be cleared between runs
+   * @param resultSetCounter the {@link ResultSetCounter} for the {@link EntityManager}'s {@link
+   *     DataSource}
+   * @param linesFetchMode the {@link LinesFetchMode} to benchmark
+   * @param claimType the {@link ClaimType} to query for
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} to query for
+   * @return an array with the number of claims found, the number of lines found, the number of
+   *     result set rows and values read per query, and the average query latency (in nanoseconds)
+   */
+  private static long[] benchmark(
+      ExplanationOfBenefitResourceProvider eobProvider,
+      EntityManager entityManager,
+      ResultSetCounter resultSetCounter,
+      LinesFetchMode linesFetchMode,
+      ClaimType claimType,
+      String beneficiaryId) {
+    eobProvider.setLinesFetchMode(linesFetchMode.name());
+
+    // Warm up, and tally the results (the lines have already been fetched, in both modes).
+    resultSetCounter.start();
+    List<Object> claims = eobProvider.findClaimTypeByPatient(claimType, beneficiaryId, null);
+    long claimCount = claims.size();
+    long lineCount = 0;
+    for (Object claim : claims) {
+      for (PluralAttribute<?, ?, ?> lazyAttribute : claimType.getEntityLazyAttributes())
+        lineCount +=
+            ((Collection<?>)
+                    ExplanationOfBenefitResourceProvider.readAttribute(claim, lazyAttribute))
+                .size();
+    }
+    long rowsTransferred = resultSetCounter.getRows();
+    long valuesTransferred = resultSetCounter.getValues();
+    resultSetCounter.stop();
+    entityManager.clear();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      eobProvider.findClaimTypeByPatient(claimType, beneficiaryId, null);
+      entityManager.clear();
+    }
+    long averageNanos = (System.nanoTime() - start) / ITERATIONS;
+
+    return new long[] {claimCount, lineCount, rowsTransferred, valuesTransferred, averageNanos};
+  }
+
+  /**
+   * Ensures that each test case here starts with a clean/empty database, with the right schema.
+   * (The {@link EntityManagerFactory} created here is closed by the test itself.)
+   */
+  @After
+  public void cleanDatabaseServerAfterEachTestCase() {
+    ServerTestUtils.cleanDatabaseServer();
+  }
+
+  /**
+   * A datasource-proxy {@link MethodExecutionListener} that counts the rows read from {@link
+   * ResultSet}s (via {@link ResultSet#next()}), and the values in them, while it's started.
+   */
+  private static final class ResultSetCounter implements MethodExecutionListener {
+    private volatile boolean started = false;
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong values = new AtomicLong();
+
+    /** Resets the counts and starts counting. */
+    void start() {
+      rows.set(0);
+      values.set(0);
+      started = true;
+    }
+
+    /** Stops counting. */
+    void stop() {
+      started = false;
+    }
+
+    /** @return the number of rows read since {@link #start()} */
+    long getRows() {
+      return rows.get();
+    }
+
+    /** @return the number of values (columns) in the rows read since {@link #start()} */
+    long getValues() {
+      return values.get();
+    }
+
+    /**
+     * @see
+     *     net.ttddyy.dsproxy.listener.MethodExecutionListener#beforeMethod(net.ttddyy.dsproxy.listener.MethodExecutionContext)
+     */
+    @Override
+    public void beforeMethod(MethodExecutionContext executionContext) {
+      // Nothing to do here.
+    }
+
+    /**
+     * @see
+     *     net.ttddyy.dsproxy.listener.MethodExecutionListener#afterMethod(net.ttddyy.dsproxy.listener.MethodExecutionContext)
+     */
+    @Override
+    public void afterMethod(MethodExecutionContext executionContext) {
+      if (!started
+          || !(executionContext.getTarget() instanceof ResultSet)
+          || !"next".equals(executionContext.getMethod().getName())
+          || !Boolean.TRUE.equals(executionContext.getResult())) return;
+
+      rows.incrementAndGet();
+      try {
+        values.addAndGet(
+            ((ResultSet) executionContext.getTarget()).getMetaData().getColumnCount());
+      } catch (SQLException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
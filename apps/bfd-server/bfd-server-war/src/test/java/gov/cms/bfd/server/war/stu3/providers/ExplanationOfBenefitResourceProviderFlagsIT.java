@@ -0,0 +1,376 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
+import gov.cms.bfd.pipeline.rif.load.RifLoaderTestUtils;
+import gov.cms.bfd.server.war.ServerTestUtils;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Table;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.dstu3.model.Bundle.BundleLinkComponent;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration tests for the optional {@link ExplanationOfBenefitResourceProvider} search paths,
+ * which verify that each one returns exactly the same pages as the default path does.
+ *
+ * <p>The test server can only be run with one set of options at a time, so these tests call {@link
+ * ExplanationOfBenefitResourceProvider#findByPatient(List, Set, boolean,
+ * ca.uhn.fhir.rest.param.DateRangeParam, PagingArguments)} directly, against the same database
+ * that the test server uses, with each option enabled in turn. The regular searches through the
+ * test server are covered by {@link ExplanationOfBenefitResourceProviderIT}.
+ */
+public final class ExplanationOfBenefitResourceProviderFlagsIT {
+  /** The server base to use in the {@link PagingArguments}, and so in the paging links. */
+  private static final String SERVER_BASE = "https://localhost/v1/fhir";
+
+  /** The page sizes to run each search with, which cover partial, exact, and oversized pages. */
+  private static final int[] PAGE_SIZES = new int[] {1, 2, 3, 5, 8, 10, 100};
+
+  private static final FhirContext FHIR_CONTEXT = FhirContext.forDstu3();
+
+  /** Removes any claim index backfill progress, which isn't removed with the sample data. */
+  private static final String SQL_DELETE_CLAIM_INDEX_PROGRESS =
+      "delete from \"FixupProgress\" where \"fixupName\" like '%.claimIndex#%'";
+
+  private EntityManagerFactory entityManagerFactory;
+  private final List<EntityManager> entityManagers = new ArrayList<>();
+  private final List<ClaimFhirDocumentStore> claimFhirDocumentStores = new ArrayList<>();
+  private String beneficiaryId;
+
+  /** Enumerates the optional search paths of {@link ExplanationOfBenefitResourceProvider}. */
+  private static enum Flag {
+    /** Corresponds to {@link ExplanationOfBenefitResourceProvider#setLazyPagingEnabled(String)}. */
+    LAZY_PAGING,
+
+    /** Corresponds to {@link ExplanationOfBenefitResourceProvider#setStreamingEnabled(String)}. */
+    STREAMING,
+
+    /** Corresponds to {@link ExplanationOfBenefitResourceProvider#setClaimIndexEnabled(String)}. */
+    CLAIM_INDEX,
+
+    /** Corresponds to an enabled {@link ClaimFhirDocumentStore}. */
+    DOCUMENTS;
+  }
+
+  /** Loads the sample data that the searches are run against. */
+  @Before
+  public void loadData() {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    beneficiaryId =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> ((Beneficiary) r).getBeneficiaryId())
+            .findFirst()
+            .get();
+    entityManagerFactory =
+        RifLoaderTestUtils.createEntityManagerFactory(ServerTestUtils.createRifLoaderOptions());
+  }
+
+  /**
+   * Verifies that paged searches with {@link Flag#LAZY_PAGING} return the same pages as the default
+   * path.
+   */
+  @Test
+  public void lazyPagingMatchesDefault() {
+    assertSameResults(EnumSet.of(Flag.LAZY_PAGING));
+  }
+
+  /**
+   * Verifies that paged searches with {@link Flag#LAZY_PAGING} and {@link Flag#CLAIM_INDEX} (which
+   * only applies to lazy paging) return the same pages as the default path, once the claim index's
+   * backfill is complete (and so the claim index is actually used).
+   */
+  @Test
+  public void claimIndexMatchesDefault() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    setClaimIndexBackfilled(true);
+    assertSameResults(EnumSet.of(Flag.LAZY_PAGING, Flag.CLAIM_INDEX), metricRegistry);
+    Assert.assertEquals(0L, getClaimIndexFallbacks(metricRegistry));
+  }
+
+  /**
+   * Verifies that paged searches with {@link Flag#LAZY_PAGING} and {@link Flag#CLAIM_INDEX} fall
+   * back to the per-table queries (and so still return the same pages as the default path) while
+   * the claim index's backfill is incomplete.
+   */
+  @Test
+  public void claimIndexFallsBackUntilBackfilled() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    setClaimIndexBackfilled(false);
+    assertSameResults(EnumSet.of(Flag.LAZY_PAGING, Flag.CLAIM_INDEX), metricRegistry);
+    Assert.assertTrue(getClaimIndexFallbacks(metricRegistry) > 0);
+  }
+
+  /**
+   * Verifies that paged searches with {@link Flag#LAZY_PAGING} and {@link Flag#DOCUMENTS} (which
+   * only applies to lazy paging) return the same pages as the default path, both when the
+   * documents are first written and (once those background writes are done) when they're read
+   * back.
+   *
+   * @throws InterruptedException (indicates test failure)
+   */
+  @Test
+  public void documentsMatchDefault() throws InterruptedException {
+    assertSameResults(EnumSet.of(Flag.LAZY_PAGING, Flag.DOCUMENTS));
+    for (ClaimFhirDocumentStore claimFhirDocumentStore : claimFhirDocumentStores)
+      claimFhirDocumentStore.awaitPendingStores();
+    assertSameResults(EnumSet.of(Flag.LAZY_PAGING, Flag.DOCUMENTS));
+  }
+
+  /**
+   * Verifies that unpaged searches with {@link Flag#STREAMING} return the same results as the
+   * default path.
+   */
+  @Test
+  public void streamingMatchesDefault() {
+    assertSameResults(EnumSet.of(Flag.STREAMING));
+  }
+
+  /**
+   * Verifies that searches with all of the flags enabled at once return the same results as the
+   * default path.
+   */
+  @Test
+  public void allFlagsMatchDefault() {
+    setClaimIndexBackfilled(true);
+    assertSameResults(EnumSet.allOf(Flag.class));
+  }
+
+  /**
+   * Runs a variety of unpaged and paged searches (for all claim types and for a subset of them,
+   * with and without totals) against both the default {@link ExplanationOfBenefitResourceProvider}
+   * and one with the specified {@link Flag}s, and verifies that the results are the same.
+   *
+   * @param flags the {@link Flag}s to enable
+   */
+  private void assertSameResults(Set<Flag> flags) {
+    assertSameResults(flags, new MetricRegistry());
+  }
+
+  /**
+   * Runs a variety of unpaged and paged searches (for all claim types and for a subset of them,
+   * with and without totals) against both the default {@link ExplanationOfBenefitResourceProvider}
+   * and one with the specified {@link Flag}s, and verifies that the results are the same.
+   *
+   * @param flags the {@link Flag}s to enable
+   * @param flaggedMetricRegistry the {@link MetricRegistry} for the flagged provider to use
+   */
+  private void assertSameResults(Set<Flag> flags, MetricRegistry flaggedMetricRegistry) {
+    ExplanationOfBenefitResourceProvider defaultProvider =
+        createProvider(EnumSet.noneOf(Flag.class), new MetricRegistry());
+    ExplanationOfBenefitResourceProvider flaggedProvider =
+        createProvider(flags, flaggedMetricRegistry);
+
+    List<Set<ClaimType>> typeSets =
+        Arrays.asList(EnumSet.allOf(ClaimType.class), EnumSet.of(ClaimType.CARRIER, ClaimType.PDE));
+    for (Set<ClaimType> types : typeSets) {
+      for (boolean totalRequested : new boolean[] {true, false}) {
+        List<PagingArguments> searches = new ArrayList<>();
+        searches.add(
+            new PagingArguments(Optional.empty(), Optional.empty(), totalRequested, SERVER_BASE));
+
+        int resultCount = search(defaultProvider, types, searches.get(0)).getEntry().size();
+        for (int pageSize : PAGE_SIZES)
+          for (int startIndex = 0; startIndex <= resultCount; startIndex += pageSize)
+            searches.add(
+                new PagingArguments(
+                    Optional.of(pageSize), Optional.of(startIndex), totalRequested, SERVER_BASE));
+
+        for (PagingArguments search : searches) {
+          String description =
+              String.format(
+                  "flags=%s, types=%s, _count=%s, startIndex=%s, total=%s",
+                  flags,
+                  types,
+                  search.isPagingRequested() ? search.getPageSize() : "-",
+                  search.isPagingRequested() ? search.getStartIndex() : "-",
+                  totalRequested);
+          assertSameBundle(
+              description,
+              search(defaultProvider, types, search),
+              search(flaggedProvider, types, search));
+        }
+      }
+    }
+  }
+
+  /**
+   * @param provider the {@link ExplanationOfBenefitResourceProvider} to search with
+   * @param types the {@link ClaimType}s to search for
+   * @param pagingArgs the {@link PagingArguments} to search with
+   * @return the resulting {@link Bundle}
+   */
+  private Bundle search(
+      ExplanationOfBenefitResourceProvider provider,
+      Set<ClaimType> types,
+      PagingArguments pagingArgs) {
+    return provider.findByPatient(
+        Collections.singletonList(beneficiaryId), types, false, null, pagingArgs);
+  }
+
+  /**
+   * @param flags the {@link Flag}s to enable
+   * @param metricRegistry the {@link MetricRegistry} for the provider to use
+   * @return a new {@link ExplanationOfBenefitResourceProvider} with the specified {@link Flag}s
+   *     enabled, connected to the test database
+   */
+  private ExplanationOfBenefitResourceProvider createProvider(
+      Set<Flag> flags, MetricRegistry metricRegistry) {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    entityManagers.add(entityManager);
+
+    ClaimFhirDocumentStore claimFhirDocumentStore =
+        new ClaimFhirDocumentStore(
+            metricRegistry,
+            flags.contains(Flag.DOCUMENTS),
+            ExplanationOfBenefitResourceProviderFlagsIT.class.getSimpleName());
+    claimFhirDocumentStore.setEntityManager(entityManager);
+    claimFhirDocumentStore.setEntityManagerFactory(entityManagerFactory);
+    claimFhirDocumentStores.add(claimFhirDocumentStore);
+
+    ResourceCache resourceCache = new ResourceCache(metricRegistry, 0, 0, false);
+    resourceCache.setEntityManager(entityManager);
+
+    ExplanationOfBenefitResourceProvider provider = new ExplanationOfBenefitResourceProvider();
+    provider.setEntityManager(entityManager);
+    provider.setEntityManagerFactory(entityManagerFactory);
+    provider.setMetricRegistry(metricRegistry);
+    provider.setSamhsaFilterer(new SamhsaMatcher());
+    provider.setResourceCache(resourceCache);
+    provider.setClaimFhirDocumentStore(claimFhirDocumentStore);
+    provider.setLazyPagingEnabled("" + flags.contains(Flag.LAZY_PAGING));
+    provider.setStreamingEnabled("" + flags.contains(Flag.STREAMING));
+    provider.setClaimIndexEnabled("" + flags.contains(Flag.CLAIM_INDEX));
+    return provider;
+  }
+
+  /**
+   * Records the claim index's backfill as complete or not, as the pipeline would in the <code>
+   * FixupProgress</code> table (see {@link
+   * ExplanationOfBenefitResourceProvider#CLAIM_INDEX_CHECK_MILLISECONDS}).
+   *
+   * @param backfilled <code>true</code> to record a completed backfill for every claim table,
+   *     <code>false</code> to record none at all
+   */
+  private void setClaimIndexBackfilled(boolean backfilled) {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try {
+      entityManager.getTransaction().begin();
+      entityManager.createNativeQuery(SQL_DELETE_CLAIM_INDEX_PROGRESS).executeUpdate();
+      if (backfilled) {
+        for (ClaimType claimType : ClaimType.values()) {
+          String tableName =
+              claimType.getEntityClass().getAnnotation(Table.class).name().replace("`", "");
+          entityManager
+              .createNativeQuery(
+                  "insert into \"FixupProgress\" (\"fixupName\", \"completed\", \"rowsFixed\","
+                      + " \"lastUpdated\") values (?, true, 0, ?)")
+              .setParameter(1, tableName + ".claimIndex#00")
+              .setParameter(2, new Timestamp(System.currentTimeMillis()))
+              .executeUpdate();
+        }
+      }
+      entityManager.getTransaction().commit();
+    } finally {
+      if (entityManager.getTransaction().isActive()) entityManager.getTransaction().rollback();
+      entityManager.close();
+    }
+  }
+
+  /**
+   * @param metricRegistry the {@link MetricRegistry} that an {@link
+   *     ExplanationOfBenefitResourceProvider} was using
+   * @return the number of searches that the provider ran via the per-table queries, despite {@link
+   *     Flag#CLAIM_INDEX} being enabled
+   */
+  private static long getClaimIndexFallbacks(MetricRegistry metricRegistry) {
+    return metricRegistry
+        .meter(
+            MetricRegistry.name(
+                ExplanationOfBenefitResourceProvider.class.getSimpleName(),
+                "claim_index",
+                "fallbacks"))
+        .getCount();
+  }
+
+  /**
+   * Verifies that the specified {@link Bundle}s have the same total, links, and entries. {@link
+   * StreamingBundle}s (and any {@link EncodedExplanationOfBenefit} entries) are materialized first.
+   *
+   * @param description a description of the search, for assertion messages
+   * @param expected the {@link Bundle} returned by the default path
+   * @param actual the {@link Bundle} returned by the optional path being tested
+   */
+  private static void assertSameBundle(String description, Bundle expected, Bundle actual) {
+    Assert.assertEquals(description, expected.hasTotal(), actual.hasTotal());
+    if (expected.hasTotal())
+      Assert.assertEquals(description, expected.getTotal(), actual.getTotal());
+    Assert.assertEquals(description, describeLinks(expected), describeLinks(actual));
+    Assert.assertEquals(description, encodeEntries(expected), encodeEntries(actual));
+  }
+
+  /**
+   * @param bundle the {@link Bundle} to describe the links of
+   * @return a description of each of the specified {@link Bundle}'s links
+   */
+  private static List<String> describeLinks(Bundle bundle) {
+    List<String> links = new ArrayList<>();
+    for (BundleLinkComponent link : bundle.getLink())
+      links.add(link.getRelation() + ": " + link.getUrl());
+    return links;
+  }
+
+  /**
+   * @param bundle the {@link Bundle} to encode the entries of
+   * @return the JSON encoding of each of the specified {@link Bundle}'s entries' resources, in
+   *     order
+   */
+  private static List<String> encodeEntries(Bundle bundle) {
+    if (bundle instanceof StreamingBundle) ((StreamingBundle) bundle).materialize();
+
+    IParser parser = FHIR_CONTEXT.newJsonParser();
+    List<String> entries = new ArrayList<>();
+    for (BundleEntryComponent entry : bundle.getEntry()) {
+      Resource resource = entry.getResource();
+      if (resource instanceof EncodedExplanationOfBenefit)
+        resource = ((EncodedExplanationOfBenefit) resource).decode();
+      entries.add(parser.encodeResourceToString((ExplanationOfBenefit) resource));
+    }
+    return entries;
+  }
+
+  /** Closes the test's JPA resources and cleans the database after each test case. */
+  @After
+  public void cleanup() {
+    for (ClaimFhirDocumentStore claimFhirDocumentStore : claimFhirDocumentStores)
+      claimFhirDocumentStore.close();
+    claimFhirDocumentStores.clear();
+    for (EntityManager entityManager : entityManagers) entityManager.close();
+    entityManagers.clear();
+    if (entityManagerFactory != null) {
+      setClaimIndexBackfilled(false);
+      entityManagerFactory.close();
+    }
+    ServerTestUtils.cleanDatabaseServer();
+  }
+}
@@ -5,6 +5,9 @@ import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.gclient.StringClientParam;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ParamPrefixEnum;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import gov.cms.bfd.model.rif.Beneficiary;
@@ -24,6 +27,7 @@ import gov.cms.bfd.pipeline.rif.load.RifLoaderTestUtils;
 import gov.cms.bfd.server.war.ServerTestUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -1445,6 +1449,277 @@ public final class ExplanationOfBenefitResourceProviderIT {
         partDEvent, filterToClaimType(searchResults, ClaimType.PDE).get(0));
   }
 
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceParam)}
+   * works as expected for a {@link Patient} that does exist in the DB, when filtered by
+   * <code>_lastUpdated</code>.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientWithLastUpdated() throws FHIRException {
+    Date beforeLoad = new Date();
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+
+    // Everything was just loaded, so it should all have been updated since beforeLoad.
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .lastUpdated(
+                new DateRangeParam(
+                    new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, beforeLoad), null))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(
+        loadedRecords.stream()
+            .filter(r -> !(r instanceof Beneficiary))
+            .filter(r -> !(r instanceof BeneficiaryHistory))
+            .filter(r -> !(r instanceof MedicareBeneficiaryIdHistory))
+            .count(),
+        searchResults.getTotal());
+
+    // ... and nothing should have been updated before then.
+    searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .lastUpdated(
+                new DateRangeParam(null, new DateParam(ParamPrefixEnum.LESSTHAN, beforeLoad)))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(0, searchResults.getTotal());
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceOrListParam,
+   * ca.uhn.fhir.rest.param.TokenAndListParam, String, String,
+   * ca.uhn.fhir.rest.param.DateRangeParam, String, ca.uhn.fhir.rest.api.server.RequestDetails)}
+   * works as expected when searching for multiple {@link Patient}s at once, some of which don't
+   * exist in the DB.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByMultiplePatients() throws FHIRException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    Bundle singleSearchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .returnBundle(Bundle.class)
+            .execute();
+    Bundle batchSearchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(
+                ExplanationOfBenefit.PATIENT.hasAnyOfIds(
+                    "1234567890", beneficiary.getBeneficiaryId(), "1234567891"))
+            .returnBundle(Bundle.class)
+            .execute();
+
+    // The missing patients should have no effect on the results, which should be the same.
+    Assert.assertEquals(singleSearchResults.getTotal(), batchSearchResults.getTotal());
+    Assert.assertEquals(
+        singleSearchResults.getEntry().stream()
+            .map(e -> e.getResource().getIdElement().getIdPart())
+            .collect(Collectors.toList()),
+        batchSearchResults.getEntry().stream()
+            .map(e -> e.getResource().getIdElement().getIdPart())
+            .collect(Collectors.toList()));
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceOrListParam,
+   * ca.uhn.fhir.rest.param.TokenAndListParam, String, String,
+   * ca.uhn.fhir.rest.param.DateRangeParam, String, ca.uhn.fhir.rest.api.server.RequestDetails)}
+   * works as expected for a {@link Patient} that does exist in the DB, with paging and <code>
+   * _total=none</code>.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientWithPagingAndNoTotal() throws FHIRException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+
+    List<IBaseResource> combinedResults = new ArrayList<>();
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .and(new StringClientParam("_total").matches().value("none"))
+            .count(3)
+            .returnBundle(Bundle.class)
+            .execute();
+    searchResults.getEntry().forEach(e -> combinedResults.add(e.getResource()));
+
+    /*
+     * Verify that neither the total nor the last page link (which requires the total) are
+     * present, on this page or on any of the others.
+     */
+    Assert.assertEquals(3, searchResults.getEntry().size());
+    Assert.assertFalse(searchResults.hasTotal());
+    Assert.assertNotNull(searchResults.getLink(Constants.LINK_FIRST));
+    Assert.assertNull(searchResults.getLink(Constants.LINK_LAST));
+    while (searchResults.getLink(Constants.LINK_NEXT) != null) {
+      Assert.assertTrue(
+          searchResults.getLink(Constants.LINK_NEXT).getUrl().contains("_total=none"));
+      searchResults = fhirClient.loadPage().next(searchResults).execute();
+      Assert.assertFalse(searchResults.hasTotal());
+      Assert.assertNull(searchResults.getLink(Constants.LINK_LAST));
+      searchResults.getEntry().forEach(e -> combinedResults.add(e.getResource()));
+    }
+
+    // Verify that following the next links still produced every claim, exactly once.
+    Assert.assertEquals(
+        loadedRecords.stream()
+            .filter(r -> !(r instanceof Beneficiary))
+            .filter(r -> !(r instanceof BeneficiaryHistory))
+            .filter(r -> !(r instanceof MedicareBeneficiaryIdHistory))
+            .count(),
+        combinedResults.stream().map(r -> r.getIdElement().getIdPart()).distinct().count());
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceOrListParam,
+   * ca.uhn.fhir.rest.param.TokenAndListParam, String, String,
+   * ca.uhn.fhir.rest.param.DateRangeParam, String, ca.uhn.fhir.rest.api.server.RequestDetails)}
+   * carries the <code>_lastUpdated</code> range into its paging links, so that paging through a
+   * filtered search produces the same results as the unpaged search.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientWithLastUpdatedAndPaging() throws FHIRException {
+    Date beforeLoad = new Date();
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    DateRangeParam sinceLoad =
+        new DateRangeParam(new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, beforeLoad), null);
+
+    Bundle unpagedResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .lastUpdated(sinceLoad)
+            .returnBundle(Bundle.class)
+            .execute();
+    int pageSize = 3;
+    Assert.assertTrue(unpagedResults.getTotal() > pageSize);
+
+    List<String> combinedResults = new ArrayList<>();
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .lastUpdated(sinceLoad)
+            .count(pageSize)
+            .returnBundle(Bundle.class)
+            .execute();
+    searchResults.getEntry().forEach(e -> combinedResults.add(e.getResource().getId()));
+    assertPagingLinksHaveLastUpdated(searchResults);
+    while (searchResults.getLink(Constants.LINK_NEXT) != null) {
+      searchResults = fhirClient.loadPage().next(searchResults).execute();
+      Assert.assertEquals(unpagedResults.getTotal(), searchResults.getTotal());
+      assertPagingLinksHaveLastUpdated(searchResults);
+      searchResults.getEntry().forEach(e -> combinedResults.add(e.getResource().getId()));
+    }
+
+    // Following the next links should produce exactly the same claims as the unpaged search.
+    Assert.assertEquals(
+        unpagedResults.getEntry().stream()
+            .map(e -> e.getResource().getId())
+            .collect(Collectors.toList()),
+        combinedResults);
+
+    // ... and a range that excludes everything should stay empty on every linked page.
+    searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .lastUpdated(
+                new DateRangeParam(null, new DateParam(ParamPrefixEnum.LESSTHAN, beforeLoad)))
+            .count(pageSize)
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(0, searchResults.getTotal());
+    assertPagingLinksHaveLastUpdated(searchResults);
+    Bundle firstPage =
+        fhirClient
+            .loadPage()
+            .byUrl(searchResults.getLink(Constants.LINK_FIRST).getUrl())
+            .andReturnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(0, firstPage.getTotal());
+    Assert.assertEquals(0, firstPage.getEntry().size());
+  }
+
+  /**
+   * @param searchResults a page of search results for a search that specified a <code>_lastUpdated
+   *     </code> range
+   */
+  private static void assertPagingLinksHaveLastUpdated(Bundle searchResults) {
+    Assert.assertNotNull(searchResults.getLink(Constants.LINK_FIRST));
+    for (String relation :
+        Arrays.asList(
+            Constants.LINK_FIRST,
+            Constants.LINK_PREVIOUS,
+            Constants.LINK_NEXT,
+            Constants.LINK_LAST)) {
+      if (searchResults.getLink(relation) == null) continue;
+      Assert.assertTrue(
+          searchResults.getLink(relation).getUrl(),
+          searchResults.getLink(relation).getUrl().contains("_lastUpdated="));
+    }
+  }
+
   /** Ensures that {@link ServerTestUtils#cleanDatabaseServer()} is called after each test case. */
   @After
   public void cleanDatabaseServerAfterEachTestCase() {
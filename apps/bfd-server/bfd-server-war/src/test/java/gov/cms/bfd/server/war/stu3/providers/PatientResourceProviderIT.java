@@ -2,6 +2,9 @@ package gov.cms.bfd.server.war.stu3.providers;
 
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ParamPrefixEnum;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import gov.cms.bfd.model.rif.Beneficiary;
@@ -11,6 +14,7 @@ import gov.cms.bfd.model.rif.samples.StaticRifResource;
 import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
 import gov.cms.bfd.server.war.ServerTestUtils;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -327,6 +331,51 @@ public final class PatientResourceProviderIT {
     BeneficiaryTransformerTest.assertMatches(beneficiary, patientFromSearchResult);
   }
 
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.PatientResourceProvider#searchByLogicalId(ca.uhn.fhir.rest.param.TokenParam)}
+   * works as expected for a {@link Patient} that does exist in the DB, when filtered by
+   * <code>_lastUpdated</code>.
+   */
+  @Test
+  public void searchForExistingPatientByLogicalIdWithLastUpdated() {
+    Date beforeLoad = new Date();
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(Patient.class)
+            .where(
+                Patient.RES_ID.exactly().systemAndIdentifier(null, beneficiary.getBeneficiaryId()))
+            .lastUpdated(
+                new DateRangeParam(
+                    new DateParam(ParamPrefixEnum.GREATERTHAN_OR_EQUALS, beforeLoad), null))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(1, searchResults.getTotal());
+
+    searchResults =
+        fhirClient
+            .search()
+            .forResource(Patient.class)
+            .where(
+                Patient.RES_ID.exactly().systemAndIdentifier(null, beneficiary.getBeneficiaryId()))
+            .lastUpdated(
+                new DateRangeParam(null, new DateParam(ParamPrefixEnum.LESSTHAN, beforeLoad)))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(0, searchResults.getTotal());
+  }
+
   /**
    * Verifies that {@link
    * gov.cms.bfd.server.war.stu3.providers.PatientResourceProvider#searchByLogicalId(ca.uhn.fhir.rest.param.TokenParam)}
@@ -0,0 +1,239 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import gov.cms.bfd.server.war.ReplicaRoutingDataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.hl7.fhir.dstu3.model.Coverage;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link ResourceCache}. */
+public final class ResourceCacheTest {
+  /**
+   * Verifies that {@link ResourceCache#get(String, java.util.function.Supplier)} caches resources
+   * and records hits and misses as expected.
+   */
+  @Test
+  public void getCachesResources() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    ResourceCache cache = new ResourceCache(metricRegistry, 10, 60);
+    AtomicInteger loads = new AtomicInteger(0);
+
+    Patient first = cache.get("Patient/1", () -> createPatient("1", loads));
+    Patient second = cache.get("Patient/1", () -> createPatient("1", loads));
+
+    Assert.assertEquals(1, loads.get());
+    Assert.assertEquals("1", second.getIdElement().getIdPart());
+    Assert.assertNotSame(first, second);
+    Assert.assertEquals(1, metricRegistry.meter("ResourceCache.hits").getCount());
+    Assert.assertEquals(1, metricRegistry.meter("ResourceCache.misses").getCount());
+  }
+
+  /** Verifies that modifying a resource returned by {@link ResourceCache} doesn't affect others. */
+  @Test
+  public void returnedResourcesAreCopies() {
+    ResourceCache cache = new ResourceCache(new MetricRegistry(), 10, 60);
+    AtomicInteger loads = new AtomicInteger(0);
+
+    Patient first = cache.get("Patient/1", () -> createPatient("1", loads));
+    first.setId("2");
+
+    Patient second = cache.get("Patient/1", () -> createPatient("1", loads));
+    Assert.assertEquals("1", second.getIdElement().getIdPart());
+  }
+
+  /** Verifies that {@link ResourceCache} evicts the least-recently-used entries when it's full. */
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    ResourceCache cache = new ResourceCache(metricRegistry, 3, 60);
+    AtomicInteger loads = new AtomicInteger(0);
+
+    cache.getAll("Coverage?beneficiary=1", () -> createCoverages(2));
+    cache.get("Patient/1", () -> createPatient("1", loads));
+    cache.get("Patient/2", () -> createPatient("2", loads));
+    Assert.assertEquals(2, cache.getResourceCount());
+    Assert.assertEquals(1, metricRegistry.meter("ResourceCache.evictions").getCount());
+
+    // Patient/1 should still be cached, as it was used more recently than the Coverages.
+    cache.get("Patient/1", () -> createPatient("1", loads));
+    Assert.assertEquals(2, loads.get());
+  }
+
+  /** Verifies that {@link ResourceCache#invalidateAll()} empties the cache. */
+  @Test
+  public void invalidateAll() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    ResourceCache cache = new ResourceCache(metricRegistry, 10, 60);
+
+    List<IBaseResource> coverages =
+        cache.getAll("Coverage?beneficiary=1", () -> createCoverages(3));
+    Assert.assertEquals(3, coverages.size());
+    Assert.assertEquals(3, cache.getResourceCount());
+
+    cache.invalidateAll();
+    Assert.assertEquals(0, cache.getResourceCount());
+    Assert.assertEquals(1, metricRegistry.meter("ResourceCache.invalidations").getCount());
+  }
+
+  /**
+   * Verifies that resources which were loaded while the {@link ResourceCache} was being invalidated
+   * (e.g. because a new data set was loaded) aren't stored, as they may be stale.
+   */
+  @Test
+  public void invalidationDuringLoadDropsResources() {
+    ResourceCache cache = new ResourceCache(new MetricRegistry(), 10, 60);
+    AtomicInteger loads = new AtomicInteger(0);
+
+    cache.get(
+        "Patient/1",
+        () -> {
+          cache.invalidateAll();
+          return createPatient("1", loads);
+        });
+    Assert.assertEquals(0, cache.getResourceCount());
+
+    cache.get("Patient/1", () -> createPatient("1", loads));
+    Assert.assertEquals(2, loads.get());
+    Assert.assertEquals(1, cache.getResourceCount());
+  }
+
+  /** Verifies that a {@link ResourceCache} with a max size of <code>0</code> doesn't cache. */
+  @Test
+  public void disabled() {
+    ResourceCache cache = new ResourceCache(new MetricRegistry(), 0, 60);
+    AtomicInteger loads = new AtomicInteger(0);
+
+    cache.get("Patient/1", () -> createPatient("1", loads));
+    cache.get("Patient/1", () -> createPatient("1", loads));
+    Assert.assertFalse(cache.isEnabled());
+    Assert.assertEquals(2, loads.get());
+    Assert.assertEquals(0, cache.getResourceCount());
+  }
+
+  /**
+   * Verifies that {@link ResourceCache} invalidates its entries when the database's load generation
+   * changes, and only then.
+   */
+  @Test
+  public void generationChangeInvalidates() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    ResourceCache cache = new ResourceCache(metricRegistry, 10, 0);
+    AtomicLong generation = new AtomicLong(1);
+    cache.setEntityManager(createGenerationEntityManager(generation));
+    AtomicInteger loads = new AtomicInteger(0);
+
+    cache.get("Patient/1", () -> createPatient("1", loads));
+    cache.get("Patient/1", () -> createPatient("1", loads));
+    Assert.assertEquals(1, loads.get());
+
+    generation.incrementAndGet();
+    cache.get("Patient/1", () -> createPatient("1", loads));
+    Assert.assertEquals(2, loads.get());
+    Assert.assertEquals(1, metricRegistry.meter("ResourceCache.invalidations").getCount());
+
+    cache.get("Patient/1", () -> createPatient("1", loads));
+    Assert.assertEquals(2, loads.get());
+  }
+
+  /**
+   * Verifies that {@link ResourceCache} doesn't store resources that were (even partially) read
+   * from a replica database, as those may be older than the load generation that it's tracking.
+   */
+  @Test
+  public void replicaReadsAreNotCached() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    ResourceCache cache = new ResourceCache(metricRegistry, 10, 60);
+    JDBCDataSource replica = new JDBCDataSource();
+    replica.setUrl("jdbc:hsqldb:mem:" + ResourceCacheTest.class.getSimpleName() + "-replica");
+    replica.setUser("sa");
+    ReplicaRoutingDataSource dataSource =
+        new ReplicaRoutingDataSource(
+            new JDBCDataSource(),
+            Collections.singletonList(replica),
+            new MetricRegistry(),
+            new HealthCheckRegistry());
+    AtomicInteger loads = new AtomicInteger(0);
+
+    for (int i = 0; i < 2; i++)
+      cache.get(
+          "Patient/1",
+          () -> {
+            try (Connection connection = dataSource.getConnection()) {
+              return createPatient("1", loads);
+            } catch (SQLException e) {
+              throw new IllegalStateException(e);
+            }
+          });
+    Assert.assertEquals(2, loads.get());
+    Assert.assertEquals(0, cache.getResourceCount());
+    Assert.assertEquals(2, metricRegistry.meter("ResourceCache.replicaReads").getCount());
+
+    // Reads from the primary should still be cached.
+    cache.get("Patient/1", () -> createPatient("1", loads));
+    Assert.assertEquals(1, cache.getResourceCount());
+  }
+
+  /**
+   * @param generation the load generation value to report
+   * @return an {@link EntityManager} whose only supported query returns the current value of the
+   *     specified load generation
+   */
+  private static EntityManager createGenerationEntityManager(AtomicLong generation) {
+    Query query =
+        (Query)
+            Proxy.newProxyInstance(
+                ResourceCacheTest.class.getClassLoader(),
+                new Class<?>[] {Query.class},
+                (proxy, method, args) -> {
+                  if (method.getName().equals("getSingleResult")) return generation.get();
+                  throw new UnsupportedOperationException(method.getName());
+                });
+    return (EntityManager)
+        Proxy.newProxyInstance(
+            ResourceCacheTest.class.getClassLoader(),
+            new Class<?>[] {EntityManager.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("createNativeQuery")) return query;
+              throw new UnsupportedOperationException(method.getName());
+            });
+  }
+
+  /**
+   * @param id the {@link Patient#getId()} value to use
+   * @param loads the counter to increment
+   * @return a new {@link Patient}
+   */
+  private static Patient createPatient(String id, AtomicInteger loads) {
+    loads.incrementAndGet();
+    Patient patient = new Patient();
+    patient.setId(id);
+    return patient;
+  }
+
+  /**
+   * @param count the number of {@link Coverage}s to create
+   * @return a {@link List} of new {@link Coverage}s
+   */
+  private static List<Coverage> createCoverages(int count) {
+    Coverage[] coverages = new Coverage[count];
+    for (int i = 0; i < count; i++) {
+      coverages[i] = new Coverage();
+      coverages[i].setId("part-" + i + "-1");
+    }
+    return Arrays.asList(coverages);
+  }
+}
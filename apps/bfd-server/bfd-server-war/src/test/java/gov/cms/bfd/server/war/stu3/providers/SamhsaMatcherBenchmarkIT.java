@@ -0,0 +1,84 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A rough benchmark that compares the code lookups used by {@link SamhsaMatcher} against the
+ * original implementation (a {@link List} of codes, checked after regex-based normalization),
+ * logging the average latency of each, and verifying that both produce the same results.
+ */
+public final class SamhsaMatcherBenchmarkIT {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SamhsaMatcherBenchmarkIT.class);
+
+  /** The number of times to run through all of the test codes, after a single warm-up run. */
+  private static final int ITERATIONS = 20;
+
+  /** Runs the benchmark for the ICD-10 diagnosis codes, which is the largest code list. */
+  @Test
+  public void compareIcd10DiagnosisLookups() {
+    List<String> samhsaCodes =
+        SamhsaMatcher.resourceCsvColumnToList(
+                "samhsa-related-codes/codes-icd-10-diagnosis.csv", "ICD-10-CM Diagnosis Code")
+            .stream()
+            .map(c -> SamhsaMatcher.normalizeCode(c, true))
+            .collect(Collectors.toList());
+
+    /*
+     * Look up every SAMHSA code (in a couple of formats), along with a bunch of codes that won't
+     * match, as most claims' codes won't.
+     */
+    List<String> testCodes = new ArrayList<>();
+    for (String samhsaCode : samhsaCodes) {
+      testCodes.add(samhsaCode);
+      testCodes.add(samhsaCode.substring(0, 3) + "." + samhsaCode.substring(3).toLowerCase());
+      testCodes.add("Z" + samhsaCode.substring(1));
+      testCodes.add(samhsaCode + "9");
+    }
+
+    List<String> samhsaCodesList = new ArrayList<>(samhsaCodes);
+    Predicate<String> originalLookup =
+        c -> samhsaCodesList.contains(SamhsaMatcher.normalizeCodeSlowly(c, true));
+    HashSet<String> samhsaCodesSet = new HashSet<>(samhsaCodes);
+    Predicate<String> currentLookup =
+        c -> samhsaCodesSet.contains(SamhsaMatcher.normalizeCode(c, true));
+
+    long[] originalResults = benchmark(originalLookup, testCodes);
+    long[] currentResults = benchmark(currentLookup, testCodes);
+
+    LOGGER.info(
+        "SAMHSA ICD-10 diagnosis lookups for {} codes: original took {} ns/code;"
+            + " current took {} ns/code.",
+        testCodes.size(),
+        originalResults[1],
+        currentResults[1]);
+    Assert.assertEquals("Match counts differ.", originalResults[0], currentResults[0]);
+    for (String testCode : testCodes)
+      Assert.assertEquals(testCode, originalLookup.test(testCode), currentLookup.test(testCode));
+  }
+
+  /**
+   * @param lookup the code lookup implementation to benchmark
+   * @param testCodes the codes to look up
+   * @return an array with the number of test codes that matched, and the average lookup latency
+   *     (in nanoseconds)
+   */
+  private static long[] benchmark(Predicate<String> lookup, Collection<String> testCodes) {
+    // Warm up, and tally the results.
+    long matchCount = testCodes.stream().filter(lookup).count();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) for (String testCode : testCodes) lookup.test(testCode);
+    long averageNanos = (System.nanoTime() - start) / ((long) ITERATIONS * testCodes.size());
+
+    return new long[] {matchCount, averageNanos};
+  }
+}
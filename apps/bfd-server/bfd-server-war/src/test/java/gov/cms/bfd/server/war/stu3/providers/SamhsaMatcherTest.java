@@ -7,8 +7,12 @@ import gov.cms.bfd.model.rif.BeneficiaryHistory;
 import gov.cms.bfd.model.rif.MedicareBeneficiaryIdHistory;
 import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
 import gov.cms.bfd.server.war.ServerTestUtils;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.hl7.fhir.dstu3.model.Coding;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
@@ -665,6 +669,228 @@ public final class SamhsaMatcherTest {
     Assert.assertTrue(matcher.test(sampleEob));
   }
 
+  /**
+   * Verifies that {@link SamhsaMatcher#normalizeCode(String, boolean)} always produces the same
+   * results as the original regex-based implementation, {@link
+   * SamhsaMatcher#normalizeCodeSlowly(String, boolean)}.
+   */
+  @Test
+  public void normalizeCodeMatchesOriginal() {
+    List<String> codes =
+        new ArrayList<>(
+            Arrays.asList(
+                "",
+                " ",
+                ".",
+                "..",
+                "F1010",
+                "f10.10",
+                " 291.89 ",
+                "\t29189\n",
+                "2.9.1",
+                ". 291",
+                "291 .",
+                "hz2zzzz",
+                "4320f",
+                "\u00e9291",
+                "29\u00df1.0"));
+    codes.addAll(
+        SamhsaMatcher.resourceCsvColumnToList(
+            "samhsa-related-codes/codes-icd-10-diagnosis.csv", "ICD-10-CM Diagnosis Code"));
+
+    for (String code : codes) {
+      for (String variant : new String[] {code, code.toLowerCase(), " " + code + "."})
+        for (boolean removeDecimalPoint : new boolean[] {true, false})
+          Assert.assertEquals(
+              SamhsaMatcher.normalizeCodeSlowly(variant, removeDecimalPoint),
+              SamhsaMatcher.normalizeCode(variant, removeDecimalPoint));
+    }
+  }
+
+  /**
+   * Verifies that {@link SamhsaMatcher#testClaim(Object)} always agrees with {@link
+   * SamhsaMatcher#test(ExplanationOfBenefit)} for the transformed claim, for all of the (locally
+   * available) sample claims, both as-is and with various SAMHSA-related codes mixed in.
+   */
+  @Test
+  public void testClaimMatchesTest() {
+    SamhsaMatcher matcher = new SamhsaMatcher();
+
+    List<ClaimType> icdDiagnosisTypes =
+        Arrays.stream(ClaimType.values())
+            .filter(t -> t != ClaimType.PDE)
+            .collect(Collectors.toList());
+    List<ClaimType> icdProcedureTypes =
+        Arrays.asList(ClaimType.INPATIENT, ClaimType.OUTPATIENT, ClaimType.SNF);
+    List<ClaimType> drgTypes = Arrays.asList(ClaimType.INPATIENT, ClaimType.SNF);
+
+    List<ClaimModification> claimModifications = new ArrayList<>();
+    claimModifications.add(
+        new ClaimModification("unmodified", Arrays.asList(ClaimType.values()), c -> {}));
+    claimModifications.add(
+        new ClaimModification(
+            "ICD-9 diagnosis",
+            icdDiagnosisTypes,
+            c -> {
+              invokeSetter(c, "setDiagnosis2Code", SAMPLE_SAMHSA_ICD_9_DIAGNOSIS_CODE);
+              invokeSetter(c, "setDiagnosis2CodeVersion", '9');
+            }));
+    claimModifications.add(
+        new ClaimModification(
+            "ICD-10 diagnosis",
+            icdDiagnosisTypes,
+            c -> {
+              invokeSetter(c, "setDiagnosis2Code", SAMPLE_SAMHSA_ICD_10_DIAGNOSIS_CODE);
+              invokeSetter(c, "setDiagnosis2CodeVersion", '0');
+            }));
+    claimModifications.add(
+        new ClaimModification(
+            "unknown ICD version diagnosis",
+            icdDiagnosisTypes,
+            c -> {
+              invokeSetter(c, "setDiagnosis2Code", "A01");
+              invokeSetter(c, "setDiagnosis2CodeVersion", 'U');
+            }));
+    claimModifications.add(
+        new ClaimModification(
+            "ICD-9 procedure",
+            icdProcedureTypes,
+            c -> {
+              invokeSetter(c, "setProcedure1Code", SAMPLE_SAMHSA_ICD_9_PROCEDURE_CODE);
+              invokeSetter(c, "setProcedure1CodeVersion", '9');
+            }));
+    claimModifications.add(
+        new ClaimModification(
+            "ICD-10 procedure",
+            icdProcedureTypes,
+            c -> {
+              invokeSetter(c, "setProcedure1Code", SAMPLE_SAMHSA_ICD_10_PROCEDURE_CODE);
+              invokeSetter(c, "setProcedure1CodeVersion", '0');
+            }));
+    claimModifications.add(
+        new ClaimModification(
+            "CPT line procedure",
+            icdDiagnosisTypes,
+            c -> {
+              for (Object line : (List<?>) invokeGetter(c, "getLines"))
+                invokeSetter(line, "setHcpcsCode", SAMPLE_SAMHSA_CPT_CODE);
+            }));
+    claimModifications.add(
+        new ClaimModification(
+            "DRG",
+            drgTypes,
+            c -> invokeSetter(c, "setDiagnosisRelatedGroupCd", SAMPLE_SAMHSA_DRG_CODE)));
+
+    int samhsaClaimCount = 0;
+    for (StaticRifResourceGroup sampleGroup :
+        new StaticRifResourceGroup[] {
+          StaticRifResourceGroup.SAMPLE_A, StaticRifResourceGroup.SAMPLE_U
+        })
+      for (ClaimModification claimModification : claimModifications) {
+        // Parse the records fresh for each modification, so they don't accumulate.
+        List<Object> sampleRifRecords =
+            ServerTestUtils.parseData(Arrays.asList(sampleGroup.getResources()));
+        for (Object sampleRifRecord : sampleRifRecords) {
+          Optional<ClaimType> claimType =
+              Arrays.stream(ClaimType.values())
+                  .filter(t -> t.getEntityClass().isInstance(sampleRifRecord))
+                  .findAny();
+          if (!claimType.isPresent()) continue;
+          if (!claimModification.claimTypes.contains(claimType.get())) continue;
+
+          claimModification.modifier.accept(sampleRifRecord);
+          boolean entityResult = matcher.testClaim(sampleRifRecord);
+          boolean eobResult =
+              matcher.test(
+                  TransformerUtils.transformRifRecordToEob(new MetricRegistry(), sampleRifRecord));
+          Assert.assertEquals(
+              String.format(
+                  "Matchers disagree for '%s' %s.",
+                  claimModification.name, sampleRifRecord.getClass().getSimpleName()),
+              eobResult,
+              entityResult);
+          if (entityResult) samhsaClaimCount++;
+        }
+      }
+
+    // Make sure the modifications actually exercised the positive cases.
+    Assert.assertTrue(samhsaClaimCount > 0);
+  }
+
+  /**
+   * Verifies that {@link SamhsaMatcher#testClaim(Object)} flags {@link ClaimType#INPATIENT} and
+   * {@link ClaimType#SNF} claims whose only SAMHSA-related code is their DRG, just as {@link
+   * SamhsaMatcher#test(ExplanationOfBenefit)} does for the transformed claims.
+   */
+  @Test
+  public void testClaimMatchesDrgOnlyClaims() {
+    SamhsaMatcher matcher = new SamhsaMatcher();
+    List<Object> sampleRifRecords =
+        ServerTestUtils.parseData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+
+    for (ClaimType claimType : new ClaimType[] {ClaimType.INPATIENT, ClaimType.SNF}) {
+      Object claim =
+          sampleRifRecords.stream().filter(claimType.getEntityClass()::isInstance).findFirst().get();
+      Assert.assertFalse(claimType.name(), matcher.testClaim(claim));
+
+      invokeSetter(claim, "setDiagnosisRelatedGroupCd", SAMPLE_SAMHSA_DRG_CODE);
+      Assert.assertTrue(claimType.name(), matcher.testClaim(claim));
+      Assert.assertTrue(
+          claimType.name(),
+          matcher.test(TransformerUtils.transformRifRecordToEob(new MetricRegistry(), claim)));
+    }
+  }
+
+  /**
+   * A named modification to apply to sample claims of the specified {@link ClaimType}s, for {@link
+   * SamhsaMatcherTest#testClaimMatchesTest()}.
+   */
+  private static final class ClaimModification {
+    private final String name;
+    private final List<ClaimType> claimTypes;
+    private final Consumer<Object> modifier;
+
+    /**
+     * @param name a description of the modification, for assertion messages
+     * @param claimTypes the {@link ClaimType}s that the modification applies to, all of which must
+     *     have the fields that it modifies
+     * @param modifier the {@link Consumer} that applies the modification to a claim
+     */
+    ClaimModification(String name, List<ClaimType> claimTypes, Consumer<Object> modifier) {
+      this.name = name;
+      this.claimTypes = claimTypes;
+      this.modifier = modifier;
+    }
+  }
+
+  /**
+   * @param target the object to call the getter on
+   * @param getterName the name of the no-arg getter method to call
+   * @return the getter's result
+   */
+  private static Object invokeGetter(Object target, String getterName) {
+    try {
+      return target.getClass().getMethod(getterName).invoke(target);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Calls the specified {@link Optional}-accepting setter, which the specified object must have.
+   *
+   * @param target the object to call the setter on
+   * @param setterName the name of the setter method to call
+   * @param value the (non-<code>null</code>) value to pass, wrapped in an {@link Optional}
+   */
+  private static void invokeSetter(Object target, String setterName, Object value) {
+    try {
+      target.getClass().getMethod(setterName, Optional.class).invoke(target, Optional.of(value));
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   /**
    * @param claimType the {@link gov.cms.bfd.server.war.stu3.providers.ClaimType} to get a sample
    *     {@link ExplanationOfBenefit} for
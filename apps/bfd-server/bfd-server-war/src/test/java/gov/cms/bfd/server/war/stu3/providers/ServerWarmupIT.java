@@ -0,0 +1,127 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.health.HealthCheck;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
+import gov.cms.bfd.pipeline.rif.load.RifLoaderTestUtils;
+import gov.cms.bfd.server.war.ServerTestUtils;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaQuery;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration tests for {@link ServerWarmup}, which run it directly against the same database that
+ * the test server uses. Its failure handling is covered by {@link ServerWarmupTest}.
+ */
+public final class ServerWarmupIT {
+  private List<Object> loadedRecords;
+  private EntityManagerFactory entityManagerFactory;
+  private EntityManager entityManager;
+
+  /** Loads the sample data that the warm-up will find and transform. */
+  @Before
+  public void loadData() {
+    loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    entityManagerFactory =
+        RifLoaderTestUtils.createEntityManagerFactory(ServerTestUtils.createRifLoaderOptions());
+    entityManager = entityManagerFactory.createEntityManager();
+  }
+
+  /**
+   * Verifies that {@link ServerWarmup#run()} queries for {@link Beneficiary}s and for every {@link
+   * ClaimType}, runs the transformers over the sample records that it finds, and then marks the
+   * server as ready.
+   */
+  @Test
+  public void runsIntendedQueries() {
+    List<CriteriaQuery<?>> queries = new ArrayList<>();
+    MetricRegistry metricRegistry = new MetricRegistry();
+    HealthCheckRegistry healthCheckRegistry = new HealthCheckRegistry();
+    ServerWarmup warmup = new ServerWarmup();
+    warmup.setEntityManager(createRecordingEntityManager(entityManager, queries));
+    warmup.setMetricRegistry(metricRegistry);
+    warmup.setSamhsaMatcher(new SamhsaMatcher());
+    warmup.setHealthCheckRegistry(healthCheckRegistry);
+
+    warmup.run();
+
+    Assert.assertTrue(warmup.isComplete());
+    HealthCheck.Result result = healthCheckRegistry.runHealthCheck(ServerWarmup.HEALTH_CHECK_NAME);
+    Assert.assertTrue(result.isHealthy());
+    Assert.assertTrue(result.getMessage(), result.getMessage().contains("completed"));
+
+    Set<Class<?>> queriedEntityClasses =
+        queries.stream()
+            .flatMap(q -> q.getRoots().stream())
+            .map(r -> r.getJavaType())
+            .collect(Collectors.toSet());
+    Assert.assertTrue(queriedEntityClasses.contains(Beneficiary.class));
+    for (ClaimType claimType : ClaimType.values())
+      Assert.assertTrue(
+          claimType.name(), queriedEntityClasses.contains(claimType.getEntityClass()));
+
+    // Every kind of record that was loaded should have been run through its transformer.
+    Set<Class<?>> loadedEntityClasses =
+        loadedRecords.stream().map(r -> r.getClass()).collect(Collectors.toSet());
+    for (Class<?> loadedEntityClass : loadedEntityClasses) {
+      if (!loadedEntityClass.equals(Beneficiary.class)
+          && Arrays.stream(ClaimType.values())
+              .noneMatch(t -> t.getEntityClass().equals(loadedEntityClass))) continue;
+
+      String timerName =
+          MetricRegistry.name(loadedEntityClass.getSimpleName() + "Transformer", "transform");
+      Timer timer = metricRegistry.getTimers().get(timerName);
+      Assert.assertNotNull(timerName, timer);
+      Assert.assertEquals(timerName, 1L, timer.getCount());
+    }
+  }
+
+  /** Closes the {@link EntityManager} and removes the sample data. */
+  @After
+  public void cleanup() {
+    if (entityManager != null) entityManager.close();
+    if (entityManagerFactory != null) entityManagerFactory.close();
+    ServerTestUtils.cleanDatabaseServer();
+  }
+
+  /**
+   * @param delegate the real {@link EntityManager} to pass all calls through to
+   * @param queries the {@link List} to add each {@link CriteriaQuery} that's run to
+   * @return an {@link EntityManager} that behaves exactly like the specified one, but records the
+   *     {@link CriteriaQuery}s that are run through it
+   */
+  private static EntityManager createRecordingEntityManager(
+      EntityManager delegate, List<CriteriaQuery<?>> queries) {
+    return (EntityManager)
+        Proxy.newProxyInstance(
+            ServerWarmupIT.class.getClassLoader(),
+            new Class<?>[] {EntityManager.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("createQuery")
+                  && args.length == 1
+                  && args[0] instanceof CriteriaQuery)
+                queries.add((CriteriaQuery<?>) args[0]);
+
+              try {
+                return method.invoke(delegate, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            });
+  }
+}
@@ -0,0 +1,111 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import java.lang.reflect.Proxy;
+import javax.persistence.EntityManager;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ServerWarmup}'s failure handling. The queries that it runs are verified by
+ * {@link ServerWarmupIT}.
+ */
+public final class ServerWarmupTest {
+  /** The message of the exceptions thrown by {@link #createFailingEntityManager()}. */
+  private static final String FAILURE_MESSAGE = "database unavailable";
+
+  /**
+   * Verifies that {@link ServerWarmup#run()} marks the server as ready, rather than throwing, when
+   * the warm-up queries fail.
+   */
+  @Test
+  public void runToleratesFailure() {
+    HealthCheckRegistry healthCheckRegistry = new HealthCheckRegistry();
+    ServerWarmup warmup = createWarmup(healthCheckRegistry);
+    Assert.assertFalse(warmup.isComplete());
+    Assert.assertFalse(
+        healthCheckRegistry.runHealthCheck(ServerWarmup.HEALTH_CHECK_NAME).isHealthy());
+
+    warmup.run();
+
+    assertCompletedWithFailure(warmup, healthCheckRegistry);
+  }
+
+  /**
+   * Verifies that {@link ServerWarmup#startAsync()} (which is what server startup uses) returns
+   * immediately and still marks the server as ready when the warm-up queries fail.
+   *
+   * @throws InterruptedException (indicates test failure)
+   */
+  @Test
+  public void startAsyncToleratesFailure() throws InterruptedException {
+    HealthCheckRegistry healthCheckRegistry = new HealthCheckRegistry();
+    ServerWarmup warmup = createWarmup(healthCheckRegistry);
+
+    warmup.startAsync();
+    long deadline = System.currentTimeMillis() + 30 * 1000;
+    while (!warmup.isComplete() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+
+    assertCompletedWithFailure(warmup, healthCheckRegistry);
+  }
+
+  /**
+   * Verifies that {@link ServerWarmup#skip()} marks the server as ready without running any
+   * queries.
+   */
+  @Test
+  public void skip() {
+    HealthCheckRegistry healthCheckRegistry = new HealthCheckRegistry();
+    ServerWarmup warmup = createWarmup(healthCheckRegistry);
+
+    warmup.skip();
+
+    Assert.assertTrue(warmup.isComplete());
+    HealthCheck.Result result = healthCheckRegistry.runHealthCheck(ServerWarmup.HEALTH_CHECK_NAME);
+    Assert.assertTrue(result.isHealthy());
+    Assert.assertTrue(result.getMessage().contains("skipped"));
+  }
+
+  /**
+   * @param healthCheckRegistry the {@link HealthCheckRegistry} to register the {@link ServerWarmup}
+   *     with
+   * @return a new {@link ServerWarmup}, whose every database query will fail
+   */
+  private static ServerWarmup createWarmup(HealthCheckRegistry healthCheckRegistry) {
+    ServerWarmup warmup = new ServerWarmup();
+    warmup.setEntityManager(createFailingEntityManager());
+    warmup.setMetricRegistry(new MetricRegistry());
+    warmup.setSamhsaMatcher(new SamhsaMatcher());
+    warmup.setHealthCheckRegistry(healthCheckRegistry);
+    return warmup;
+  }
+
+  /**
+   * @return an {@link EntityManager} that throws a {@link RuntimeException} from every method, as
+   *     if the database were unreachable
+   */
+  private static EntityManager createFailingEntityManager() {
+    return (EntityManager)
+        Proxy.newProxyInstance(
+            ServerWarmupTest.class.getClassLoader(),
+            new Class<?>[] {EntityManager.class},
+            (proxy, method, args) -> {
+              throw new IllegalStateException(FAILURE_MESSAGE);
+            });
+  }
+
+  /**
+   * @param warmup the {@link ServerWarmup} to check
+   * @param healthCheckRegistry the {@link HealthCheckRegistry} that it was registered with
+   */
+  private static void assertCompletedWithFailure(
+      ServerWarmup warmup, HealthCheckRegistry healthCheckRegistry) {
+    Assert.assertTrue(warmup.isComplete());
+    HealthCheck.Result result = healthCheckRegistry.runHealthCheck(ServerWarmup.HEALTH_CHECK_NAME);
+    Assert.assertTrue(result.isHealthy());
+    Assert.assertTrue(result.getMessage().contains("failed"));
+    Assert.assertTrue(result.getMessage().contains(FAILURE_MESSAGE));
+  }
+}